@@ -29,6 +29,8 @@ import javax.jms.TextMessage;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.apache.activemq.store.kahadb.disk.journal.Journal.JournalDiskSyncStrategy;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -41,7 +43,11 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Implementation of {@link IInboundEventReceiver} that uses an ActiveMQ broker
- * to listen on a transport for messages.
+ * to listen on a transport for messages. By default each message is
+ * acknowledged individually as it is received. Consumers may instead use
+ * client acknowledgement or transacted sessions, in which case up to
+ * {@link #getBatchSize()} messages are drained per cycle and acknowledged or
+ * committed together once they have been handed off for processing.
  * 
  * @author Derek
  */
@@ -53,6 +59,29 @@ public class ActiveMQInboundEventReceiver extends InboundEventReceiver<byte[]> {
     /** Number of consumers reading messages from the queue */
     private static final int DEFAULT_NUM_CONSUMERS = 3;
 
+    /** Default number of messages drained per batch */
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Default number of messages prefetched by each consumer */
+    private static final int DEFAULT_PREFETCH_SIZE = 1000;
+
+    /**
+     * Determines how consumers acknowledge messages.
+     * 
+     * @author Derek
+     */
+    public static enum ConsumerMode {
+
+	/** Session acknowledges each message as it is received */
+	AutoAcknowledge,
+
+	/** Messages are acknowledged once per batch */
+	ClientAcknowledge,
+
+	/** Messages are consumed in a transaction committed once per batch */
+	Transacted;
+    }
+
     /** ActiveMQ broker service */
     private BrokerService brokerService;
 
@@ -71,6 +100,24 @@ public class ActiveMQInboundEventReceiver extends InboundEventReceiver<byte[]> {
     /** Number of consumers used to read messages from the queue */
     private int numConsumers = DEFAULT_NUM_CONSUMERS;
 
+    /** Acknowledgement mode used by consumers */
+    private ConsumerMode consumerMode = ConsumerMode.AutoAcknowledge;
+
+    /** Maximum number of messages acknowledged or committed together */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** Number of messages prefetched by each consumer */
+    private int prefetchSize = DEFAULT_PREFETCH_SIZE;
+
+    /** Indicates if broker persists messages */
+    private boolean persistent = true;
+
+    /** Indicates if KahaDB syncs journal to disk on every write (null for default) */
+    private Boolean journalDiskSyncs;
+
+    /** Indicates if KahaDB stores and dispatches queue messages concurrently (null for default) */
+    private Boolean concurrentStoreAndDispatch;
+
     /** List of consumers reading messages */
     private List<Consumer> consumers = new ArrayList<Consumer>();
 
@@ -113,6 +160,10 @@ public class ActiveMQInboundEventReceiver extends InboundEventReceiver<byte[]> {
 	    connector.setUri(new URI(getTransportUri()));
 	    brokerService.addConnector(connector);
 	    brokerService.setDataDirectory(getDataDirectory());
+	    brokerService.setPersistent(isPersistent());
+	    if (isPersistent() && ((getJournalDiskSyncs() != null) || (getConcurrentStoreAndDispatch() != null))) {
+		brokerService.setPersistenceAdapter(createKahaDbAdapter());
+	    }
 	    brokerService.setUseShutdownHook(false);
 	    brokerService.setUseJmx(false);
 	    brokerService.start();
@@ -122,6 +173,26 @@ public class ActiveMQInboundEventReceiver extends InboundEventReceiver<byte[]> {
 	}
     }
 
+    /**
+     * Create a KahaDB adapter with tuning settings applied. Uses the same
+     * directory as the broker default so existing stores are kept.
+     * 
+     * @return
+     */
+    protected KahaDBPersistenceAdapter createKahaDbAdapter() {
+	KahaDBPersistenceAdapter kahaDb = new KahaDBPersistenceAdapter();
+	kahaDb.setDirectory(new File(new File(getDataDirectory(), getBrokerName()), "KahaDB"));
+	if (getJournalDiskSyncs() != null) {
+	    JournalDiskSyncStrategy strategy = getJournalDiskSyncs() ? JournalDiskSyncStrategy.ALWAYS
+		    : JournalDiskSyncStrategy.NEVER;
+	    kahaDb.setJournalDiskSyncStrategy(strategy.name());
+	}
+	if (getConcurrentStoreAndDispatch() != null) {
+	    kahaDb.setConcurrentStoreAndDispatchQueues(getConcurrentStoreAndDispatch());
+	}
+	return kahaDb;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -157,7 +228,8 @@ public class ActiveMQInboundEventReceiver extends InboundEventReceiver<byte[]> {
 	    consumersPool.execute(consumer);
 	    consumers.add(consumer);
 	}
-	LOGGER.info("Created " + consumers.size() + " consumers for processing ActiveMQ messages.");
+	LOGGER.info("Created " + consumers.size() + " consumers for processing ActiveMQ messages using "
+		+ getConsumerMode().name() + " mode with prefetch of " + getPrefetchSize() + ".");
     }
 
     /*
@@ -223,12 +295,25 @@ public class ActiveMQInboundEventReceiver extends InboundEventReceiver<byte[]> {
 	    try {
 		// Create a VM connection to the broker.
 		ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory("vm://" + getBrokerName());
+		connectionFactory.getPrefetchPolicy().setQueuePrefetch(getPrefetchSize());
 		this.connection = connectionFactory.createConnection();
 		connection.setExceptionListener(this);
 		connection.start();
 
 		// Create a Session
-		this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		switch (getConsumerMode()) {
+		case Transacted: {
+		    this.session = connection.createSession(true, Session.SESSION_TRANSACTED);
+		    break;
+		}
+		case ClientAcknowledge: {
+		    this.session = connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+		    break;
+		}
+		default: {
+		    this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		}
+		}
 
 		Destination destination = session.createQueue(getQueueName());
 		this.consumer = session.createConsumer(destination);
@@ -254,23 +339,69 @@ public class ActiveMQInboundEventReceiver extends InboundEventReceiver<byte[]> {
 	 */
 	@Override
 	public void run() {
+	    if (getConsumerMode() == ConsumerMode.AutoAcknowledge) {
+		runUnbatched();
+	    } else {
+		runBatched();
+	    }
+	}
+
+	/**
+	 * Process messages one at a time, relying on the session to acknowledge
+	 * them.
+	 */
+	protected void runUnbatched() {
 	    while (true) {
 		try {
 		    Message message = consumer.receive();
 		    if (message == null) {
 			break;
 		    }
-		    if (message instanceof TextMessage) {
-			TextMessage textMessage = (TextMessage) message;
-			EventProcessingLogic.processRawPayload(ActiveMQInboundEventReceiver.this,
-				textMessage.getText().getBytes(), null);
-		    } else if (message instanceof BytesMessage) {
-			BytesMessage bytesMessage = (BytesMessage) message;
-			byte[] buffer = new byte[(int) bytesMessage.getBodyLength()];
-			bytesMessage.readBytes(buffer);
-			EventProcessingLogic.processRawPayload(ActiveMQInboundEventReceiver.this, buffer, null);
+		    processMessage(message);
+		} catch (Throwable e) {
+		    LOGGER.error("Error in ActiveMQ message processing.", e);
+		    return;
+		}
+	    }
+	}
+
+	/**
+	 * Block until a message is available, then drain any prefetched messages
+	 * up to the batch size and acknowledge or commit them together. If
+	 * processing fails, the batch is rolled back or recovered so the broker
+	 * redelivers it.
+	 */
+	protected void runBatched() {
+	    while (true) {
+		try {
+		    Message message = consumer.receive();
+		    if (message == null) {
+			break;
+		    }
+		    int count = 0;
+		    Message last = null;
+		    try {
+			while (message != null) {
+			    processMessage(message);
+			    last = message;
+			    if (++count >= getBatchSize()) {
+				break;
+			    }
+			    message = consumer.receiveNoWait();
+			}
+		    } catch (Throwable e) {
+			LOGGER.error("Error in ActiveMQ message processing. Batch will be redelivered.", e);
+			if (getConsumerMode() == ConsumerMode.Transacted) {
+			    session.rollback();
+			} else {
+			    session.recover();
+			}
+			continue;
+		    }
+		    if (getConsumerMode() == ConsumerMode.Transacted) {
+			session.commit();
 		    } else {
-			LOGGER.warn("Ignoring unknown JMS message type: " + message.getClass().getName());
+			last.acknowledge();
 		    }
 		} catch (Throwable e) {
 		    LOGGER.error("Error in ActiveMQ message processing.", e);
@@ -279,6 +410,27 @@ public class ActiveMQInboundEventReceiver extends InboundEventReceiver<byte[]> {
 	    }
 	}
 
+	/**
+	 * Decode the content of a message and hand it off for processing.
+	 * 
+	 * @param message
+	 * @throws JMSException
+	 */
+	protected void processMessage(Message message) throws JMSException {
+	    if (message instanceof TextMessage) {
+		TextMessage textMessage = (TextMessage) message;
+		EventProcessingLogic.processRawPayload(ActiveMQInboundEventReceiver.this,
+			textMessage.getText().getBytes(), null);
+	    } else if (message instanceof BytesMessage) {
+		BytesMessage bytesMessage = (BytesMessage) message;
+		byte[] buffer = new byte[(int) bytesMessage.getBodyLength()];
+		bytesMessage.readBytes(buffer);
+		EventProcessingLogic.processRawPayload(ActiveMQInboundEventReceiver.this, buffer, null);
+	    } else {
+		LOGGER.warn("Ignoring unknown JMS message type: " + message.getClass().getName());
+	    }
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -332,4 +484,52 @@ public class ActiveMQInboundEventReceiver extends InboundEventReceiver<byte[]> {
     public void setNumConsumers(int numConsumers) {
 	this.numConsumers = numConsumers;
     }
+
+    public ConsumerMode getConsumerMode() {
+	return consumerMode;
+    }
+
+    public void setConsumerMode(ConsumerMode consumerMode) {
+	this.consumerMode = consumerMode;
+    }
+
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+	this.batchSize = batchSize;
+    }
+
+    public int getPrefetchSize() {
+	return prefetchSize;
+    }
+
+    public void setPrefetchSize(int prefetchSize) {
+	this.prefetchSize = prefetchSize;
+    }
+
+    public boolean isPersistent() {
+	return persistent;
+    }
+
+    public void setPersistent(boolean persistent) {
+	this.persistent = persistent;
+    }
+
+    public Boolean getJournalDiskSyncs() {
+	return journalDiskSyncs;
+    }
+
+    public void setJournalDiskSyncs(Boolean journalDiskSyncs) {
+	this.journalDiskSyncs = journalDiskSyncs;
+    }
+
+    public Boolean getConcurrentStoreAndDispatch() {
+	return concurrentStoreAndDispatch;
+    }
+
+    public void setConcurrentStoreAndDispatch(Boolean concurrentStoreAndDispatch) {
+	this.concurrentStoreAndDispatch = concurrentStoreAndDispatch;
+    }
 }
\ No newline at end of file
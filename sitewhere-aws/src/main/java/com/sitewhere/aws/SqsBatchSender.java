@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.aws;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+
+/**
+ * Packs messages into SQS SendMessageBatch requests bounded by the SQS limits
+ * of ten entries and 256KB per request. Batches are sent when full or when
+ * they have been open longer than the maximum delay. Requests are sent with
+ * the asynchronous client and the number of requests in flight is bounded, so
+ * callers only block when the limit is reached. Entries that fail for reasons
+ * other than a bad request are retried with backoff.
+ * 
+ * @author Derek
+ */
+public class SqsBatchSender {
+
+    /** Static logger instance */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** Maximum number of entries in a SendMessageBatch request */
+    public static final int MAX_BATCH_ENTRIES = 10;
+
+    /** Maximum total payload of a SendMessageBatch request */
+    public static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    /** Delay before first retry of a failed entry */
+    private static final long INITIAL_RETRY_DELAY_MS = 100;
+
+    /** Longest delay between retries */
+    private static final long MAX_RETRY_DELAY_MS = 5000;
+
+    /** Asynchronous SQS client */
+    private AmazonSQSAsync sqs;
+
+    /** URL of queue messages are sent to */
+    private String queueUrl;
+
+    /** Maximum time in milliseconds a batch stays open */
+    private long maxBatchDelayMs;
+
+    /** Maximum number of requests awaiting a response */
+    private int maxInFlight;
+
+    /** Number of times a failed entry is resent */
+    private int maxRetries;
+
+    /** Batch currently being filled */
+    private Batch open;
+
+    /** Bounds requests awaiting a response */
+    private Semaphore permits;
+
+    /** Flushes expired batches and sends retries */
+    private ScheduledExecutorService scheduler;
+
+    /** Periodic flush task */
+    private ScheduledFuture<?> flushTask;
+
+    /** Number of requests awaiting a response */
+    private AtomicInteger inFlight = new AtomicInteger();
+
+    /** Number of retries waiting to be sent */
+    private AtomicInteger retriesPending = new AtomicInteger();
+
+    /** Number of requests sent */
+    private AtomicLong batchesSent = new AtomicLong();
+
+    /** Number of messages accepted */
+    private AtomicLong messagesSent = new AtomicLong();
+
+    /** Number of messages resent after a failure */
+    private AtomicLong messagesRetried = new AtomicLong();
+
+    /** Number of messages that could not be delivered */
+    private AtomicLong messagesFailed = new AtomicLong();
+
+    public SqsBatchSender(AmazonSQSAsync sqs, String queueUrl, long maxBatchDelayMs, int maxInFlight,
+	    int maxRetries) {
+	this.sqs = sqs;
+	this.queueUrl = queueUrl;
+	this.maxBatchDelayMs = maxBatchDelayMs;
+	this.maxInFlight = maxInFlight;
+	this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Start flush thread.
+     */
+    public void start() {
+	this.permits = new Semaphore(maxInFlight);
+	this.scheduler = Executors.newSingleThreadScheduledExecutor(new SchedulerThreadFactory());
+	this.flushTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+
+	    @Override
+	    public void run() {
+		flushExpired();
+	    }
+	}, maxBatchDelayMs, maxBatchDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a message to the open batch. Blocks if the maximum number of
+     * requests are already in flight.
+     * 
+     * @param body
+     * @throws InterruptedException
+     */
+    public void add(String body) throws InterruptedException {
+	int length = body.getBytes(StandardCharsets.UTF_8).length;
+	if (length > MAX_BATCH_BYTES) {
+	    messagesFailed.incrementAndGet();
+	    LOGGER.error("Dropping SQS message of " + length + " bytes. Messages are limited to " + MAX_BATCH_BYTES
+		    + " bytes.");
+	    return;
+	}
+	List<Batch> ready = new ArrayList<Batch>(2);
+	synchronized (this) {
+	    if ((open != null) && (!open.fits(length))) {
+		ready.add(open);
+		open = null;
+	    }
+	    if (open == null) {
+		open = new Batch();
+	    }
+	    open.add(new Entry(body, length));
+	    if (open.isFull()) {
+		ready.add(open);
+		open = null;
+	    }
+	}
+	for (Batch batch : ready) {
+	    submit(batch);
+	}
+    }
+
+    /**
+     * Send the open batch if it has been open longer than the maximum delay.
+     */
+    protected void flushExpired() {
+	Batch ready = null;
+	synchronized (this) {
+	    if ((open != null) && (open.getCreated() <= System.currentTimeMillis() - maxBatchDelayMs)) {
+		ready = open;
+		open = null;
+	    }
+	}
+	if (ready != null) {
+	    try {
+		submit(ready);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /**
+     * Send the open batch, then wait up to the given timeout for outstanding
+     * requests and retries before shutting down.
+     * 
+     * @param timeoutMs
+     */
+    public void stop(long timeoutMs) {
+	if (flushTask != null) {
+	    flushTask.cancel(false);
+	}
+	Batch remaining;
+	synchronized (this) {
+	    remaining = open;
+	    open = null;
+	}
+	long deadline = System.currentTimeMillis() + timeoutMs;
+	try {
+	    if (remaining != null) {
+		submit(remaining);
+	    }
+	    while (((inFlight.get() > 0) || (retriesPending.get() > 0)) && (System.currentTimeMillis() < deadline)) {
+		Thread.sleep(50);
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	if (scheduler != null) {
+	    scheduler.shutdownNow();
+	}
+	if ((inFlight.get() > 0) || (retriesPending.get() > 0)) {
+	    LOGGER.warn(inFlight.get() + " SQS batch request(s) and " + retriesPending.get()
+		    + " retries were outstanding at shutdown.");
+	}
+	LOGGER.info("SQS batch sender stopped. Sent " + getMessagesSent() + " messages in " + getBatchesSent()
+		+ " requests. Retried " + getMessagesRetried() + " messages. Failed " + getMessagesFailed()
+		+ " messages.");
+    }
+
+    /**
+     * Wait for a request slot and send a batch asynchronously.
+     * 
+     * @param batch
+     * @throws InterruptedException
+     */
+    protected void submit(final Batch batch) throws InterruptedException {
+	try {
+	    permits.acquire();
+	} catch (InterruptedException e) {
+	    messagesFailed.addAndGet(batch.getEntries().size());
+	    throw e;
+	}
+	inFlight.incrementAndGet();
+	List<SendMessageBatchRequestEntry> entries = new ArrayList<SendMessageBatchRequestEntry>(
+		batch.getEntries().size());
+	for (int i = 0; i < batch.getEntries().size(); i++) {
+	    entries.add(new SendMessageBatchRequestEntry(String.valueOf(i), batch.getEntries().get(i).getBody()));
+	}
+	SendMessageBatchRequest request = new SendMessageBatchRequest(queueUrl, entries);
+	try {
+	    sqs.sendMessageBatchAsync(request, new AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult>() {
+
+		@Override
+		public void onSuccess(SendMessageBatchRequest request, SendMessageBatchResult result) {
+		    try {
+			handleResult(batch, result);
+		    } finally {
+			complete();
+		    }
+		}
+
+		@Override
+		public void onError(Exception e) {
+		    try {
+			handleError(batch, e);
+		    } finally {
+			complete();
+		    }
+		}
+	    });
+	} catch (RuntimeException e) {
+	    try {
+		handleError(batch, e);
+	    } finally {
+		complete();
+	    }
+	}
+    }
+
+    /**
+     * Release the request slot held by a completed request. Called after the
+     * result has been handled so that any retry is counted as pending before
+     * the request stops counting as in flight.
+     */
+    protected void complete() {
+	batchesSent.incrementAndGet();
+	inFlight.decrementAndGet();
+	permits.release();
+    }
+
+    /**
+     * Record accepted entries and retry entries that failed for reasons other
+     * than a bad request.
+     * 
+     * @param batch
+     * @param result
+     */
+    protected void handleResult(Batch batch, SendMessageBatchResult result) {
+	messagesSent.addAndGet(result.getSuccessful().size());
+	if (result.getFailed().isEmpty()) {
+	    return;
+	}
+	List<Entry> retry = new ArrayList<Entry>(result.getFailed().size());
+	for (BatchResultErrorEntry error : result.getFailed()) {
+	    Entry entry = batch.getEntries().get(Integer.parseInt(error.getId()));
+	    if (Boolean.TRUE.equals(error.getSenderFault())) {
+		messagesFailed.incrementAndGet();
+		LOGGER.error("SQS rejected message (" + error.getCode() + "): " + error.getMessage());
+	    } else {
+		retry.add(entry);
+	    }
+	}
+	retry(retry, null);
+    }
+
+    /**
+     * Retry all entries of a request that failed, unless the failure was
+     * caused by a bad request.
+     * 
+     * @param batch
+     * @param e
+     */
+    protected void handleError(Batch batch, Exception e) {
+	if ((e instanceof AmazonServiceException)
+		&& (((AmazonServiceException) e).getErrorType() == ErrorType.Client)) {
+	    messagesFailed.addAndGet(batch.getEntries().size());
+	    LOGGER.error("SQS rejected batch of " + batch.getEntries().size() + " messages.", e);
+	    return;
+	}
+	retry(batch.getEntries(), e);
+    }
+
+    /**
+     * Schedule failed entries to be resent together after a backoff delay.
+     * Entries that have used up their retries are dropped.
+     * 
+     * @param entries
+     * @param cause
+     */
+    protected void retry(List<Entry> entries, Exception cause) {
+	final Batch batch = new Batch();
+	int attempt = 0;
+	for (Entry entry : entries) {
+	    if (entry.getAttempts() >= maxRetries) {
+		messagesFailed.incrementAndGet();
+		continue;
+	    }
+	    entry.setAttempts(entry.getAttempts() + 1);
+	    attempt = Math.max(attempt, entry.getAttempts());
+	    batch.add(entry);
+	}
+	int dropped = entries.size() - batch.getEntries().size();
+	if (dropped > 0) {
+	    LOGGER.error("Unable to deliver " + dropped + " SQS message(s) after " + maxRetries + " retries.", cause);
+	}
+	if (batch.getEntries().isEmpty()) {
+	    return;
+	}
+	messagesRetried.addAndGet(batch.getEntries().size());
+	long delay = Math.min(INITIAL_RETRY_DELAY_MS << (attempt - 1), MAX_RETRY_DELAY_MS);
+	retriesPending.incrementAndGet();
+	try {
+	    scheduler.schedule(new Runnable() {
+
+		@Override
+		public void run() {
+		    try {
+			submit(batch);
+		    } catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		    } finally {
+			retriesPending.decrementAndGet();
+		    }
+		}
+	    }, delay, TimeUnit.MILLISECONDS);
+	} catch (RejectedExecutionException e) {
+	    retriesPending.decrementAndGet();
+	    messagesFailed.addAndGet(batch.getEntries().size());
+	    LOGGER.error("Unable to retry " + batch.getEntries().size() + " SQS message(s) after shutdown.", cause);
+	}
+    }
+
+    public long getBatchesSent() {
+	return batchesSent.get();
+    }
+
+    public long getMessagesSent() {
+	return messagesSent.get();
+    }
+
+    public long getMessagesRetried() {
+	return messagesRetried.get();
+    }
+
+    public long getMessagesFailed() {
+	return messagesFailed.get();
+    }
+
+    public int getInFlight() {
+	return inFlight.get();
+    }
+
+    /**
+     * Message waiting to be sent.
+     * 
+     * @author Derek
+     */
+    protected static class Entry {
+
+	/** Message body */
+	private String body;
+
+	/** Size of body in bytes */
+	private int length;
+
+	/** Number of times message has been resent */
+	private int attempts;
+
+	public Entry(String body, int length) {
+	    this.body = body;
+	    this.length = length;
+	}
+
+	public String getBody() {
+	    return body;
+	}
+
+	public int getLength() {
+	    return length;
+	}
+
+	public int getAttempts() {
+	    return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+	    this.attempts = attempts;
+	}
+    }
+
+    /**
+     * Messages sent in a single SendMessageBatch request.
+     * 
+     * @author Derek
+     */
+    protected static class Batch {
+
+	/** Time batch was created */
+	private long created = System.currentTimeMillis();
+
+	/** Messages in batch */
+	private List<Entry> entries = new ArrayList<Entry>(MAX_BATCH_ENTRIES);
+
+	/** Total size of message bodies */
+	private int length;
+
+	/**
+	 * Indicates if a message of the given size can be added without
+	 * exceeding the request limits.
+	 *
+	 * @param length
+	 * @return
+	 */
+	public boolean fits(int length) {
+	    return (entries.size() < MAX_BATCH_ENTRIES) && (this.length + length <= MAX_BATCH_BYTES);
+	}
+
+	/**
+	 * Indicates if no more messages can be added.
+	 *
+	 * @return
+	 */
+	public boolean isFull() {
+	    return (entries.size() >= MAX_BATCH_ENTRIES) || (length >= MAX_BATCH_BYTES);
+	}
+
+	/**
+	 * Add a message to the batch.
+	 *
+	 * @param entry
+	 */
+	public void add(Entry entry) {
+	    entries.add(entry);
+	    length += entry.getLength();
+	}
+
+	public long getCreated() {
+	    return created;
+	}
+
+	public List<Entry> getEntries() {
+	    return entries;
+	}
+    }
+
+    /** Used for naming scheduler thread */
+    private class SchedulerThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere SQS Batch Flusher " + counter.incrementAndGet());
+	}
+    }
+}
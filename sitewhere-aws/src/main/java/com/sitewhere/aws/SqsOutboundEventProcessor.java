@@ -7,6 +7,11 @@
  */
 package com.sitewhere.aws;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -14,6 +19,7 @@ import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClient;
 import com.amazonaws.services.sqs.AmazonSQSClient;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
@@ -30,7 +36,10 @@ import com.sitewhere.spi.device.event.IDeviceStateChange;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
- * Outbound event processor that forwards events to Amazon SQS.
+ * Outbound event processor that forwards events to Amazon SQS. By default
+ * events are sent with the asynchronous client in SendMessageBatch requests
+ * (see {@link SqsBatchSender}) so that event processing does not wait on a
+ * round-trip per event. Each event is still delivered as a separate message.
  * 
  * @author Derek
  */
@@ -39,6 +48,18 @@ public class SqsOutboundEventProcessor extends FilteredOutboundEventProcessor {
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Default maximum time in milliseconds a batch stays open */
+    private static final long DEFAULT_MAX_BATCH_DELAY_MS = 100;
+
+    /** Default maximum number of batch requests awaiting a response */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 50;
+
+    /** Default number of times a failed message is resent */
+    private static final int DEFAULT_MAX_RETRIES = 3;
+
+    /** Max time in milliseconds to wait for outstanding batches on shutdown */
+    private static final long SHUTDOWN_TIMEOUT_MS = 10 * 1000;
+
     /** SQS client */
     private AmazonSQSClient sqs;
 
@@ -51,6 +72,27 @@ public class SqsOutboundEventProcessor extends FilteredOutboundEventProcessor {
     /** URL of queue to send message to */
     private String queueUrl;
 
+    /** Service endpoint used instead of the default region endpoint */
+    private String endpoint;
+
+    /** Indicates if events are sent in batches */
+    private boolean batchingEnabled = true;
+
+    /** Maximum time in milliseconds a batch stays open */
+    private long maxBatchDelayMs = DEFAULT_MAX_BATCH_DELAY_MS;
+
+    /** Maximum number of batch requests awaiting a response */
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /** Number of times a failed message is resent */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /** Executes requests for the asynchronous client */
+    private ExecutorService requestExecutor;
+
+    /** Sends batched events */
+    private SqsBatchSender batchSender;
+
     /*
      * (non-Javadoc)
      * 
@@ -74,9 +116,49 @@ public class SqsOutboundEventProcessor extends FilteredOutboundEventProcessor {
 	    throw new SiteWhereException("Amazon secret key not provided.");
 	}
 
-	sqs = new AmazonSQSClient(new BasicAWSCredentials(getAccessKey(), getSecretKey()), config);
-	Region usEast1 = Region.getRegion(Regions.US_EAST_1);
-	sqs.setRegion(usEast1);
+	BasicAWSCredentials credentials = new BasicAWSCredentials(getAccessKey(), getSecretKey());
+	if (isBatchingEnabled()) {
+	    this.requestExecutor = Executors.newFixedThreadPool(getMaxInFlight(), new RequestThreadFactory());
+	    AmazonSQSAsyncClient async = new AmazonSQSAsyncClient(credentials, config, requestExecutor);
+	    sqs = async;
+	    this.batchSender = new SqsBatchSender(async, getQueueUrl(), getMaxBatchDelayMs(), getMaxInFlight(),
+		    getMaxRetries());
+	} else {
+	    sqs = new AmazonSQSClient(credentials, config);
+	}
+	if (getEndpoint() != null) {
+	    sqs.setEndpoint(getEndpoint());
+	} else {
+	    Region usEast1 = Region.getRegion(Regions.US_EAST_1);
+	    sqs.setRegion(usEast1);
+	}
+	if (batchSender != null) {
+	    batchSender.start();
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#stop(
+     * com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	super.stop(monitor);
+	if (batchSender != null) {
+	    batchSender.stop(SHUTDOWN_TIMEOUT_MS);
+	    batchSender = null;
+	}
+	if (sqs != null) {
+	    sqs.shutdown();
+	    sqs = null;
+	}
+	if (requestExecutor != null) {
+	    requestExecutor.shutdownNow();
+	    requestExecutor = null;
+	}
     }
 
     /*
@@ -156,6 +238,15 @@ public class SqsOutboundEventProcessor extends FilteredOutboundEventProcessor {
      * @throws SiteWhereException
      */
     protected void sendSqsMessage(IDeviceEvent event) throws SiteWhereException {
+	if (batchSender != null) {
+	    try {
+		batchSender.add(MarshalUtils.marshalJsonAsString(event));
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new SiteWhereException("Interrupted while waiting to send SQS message.", e);
+	    }
+	    return;
+	}
 	SendMessageRequest message = new SendMessageRequest();
 	message.setMessageBody(MarshalUtils.marshalJsonAsString(event));
 	message.setQueueUrl(getQueueUrl());
@@ -204,4 +295,59 @@ public class SqsOutboundEventProcessor extends FilteredOutboundEventProcessor {
     public void setQueueUrl(String queueUrl) {
 	this.queueUrl = queueUrl;
     }
+
+    public String getEndpoint() {
+	return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+	this.endpoint = endpoint;
+    }
+
+    public boolean isBatchingEnabled() {
+	return batchingEnabled;
+    }
+
+    public void setBatchingEnabled(boolean batchingEnabled) {
+	this.batchingEnabled = batchingEnabled;
+    }
+
+    public long getMaxBatchDelayMs() {
+	return maxBatchDelayMs;
+    }
+
+    public void setMaxBatchDelayMs(long maxBatchDelayMs) {
+	this.maxBatchDelayMs = maxBatchDelayMs;
+    }
+
+    public int getMaxInFlight() {
+	return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+	this.maxInFlight = maxInFlight;
+    }
+
+    public int getMaxRetries() {
+	return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+	this.maxRetries = maxRetries;
+    }
+
+    public SqsBatchSender getBatchSender() {
+	return batchSender;
+    }
+
+    /** Used for naming asynchronous request threads */
+    private class RequestThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere SQS Sender " + counter.incrementAndGet());
+	}
+    }
 }
\ No newline at end of file
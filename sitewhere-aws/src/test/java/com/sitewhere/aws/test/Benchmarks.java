@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.aws.test;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.junit.Assume;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Skips tests annotated with {@link Benchmark} unless the
+ * <code>sitewhere.benchmark</code> system property is set to true.
+ * 
+ * @author Derek
+ */
+public class Benchmarks implements TestRule {
+
+    /** System property that enables benchmarks */
+    public static final String BENCHMARK_PROPERTY = "sitewhere.benchmark";
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.junit.rules.TestRule#apply(org.junit.runners.model.Statement,
+     * org.junit.runner.Description)
+     */
+    @Override
+    public Statement apply(final Statement base, Description description) {
+	if (description.getAnnotation(Benchmark.class) == null) {
+	    return base;
+	}
+	return new Statement() {
+
+	    @Override
+	    public void evaluate() throws Throwable {
+		Assume.assumeTrue(Boolean.getBoolean(BENCHMARK_PROPERTY));
+		base.evaluate();
+	    }
+	};
+    }
+
+    /**
+     * Marks a test as a benchmark.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    public static @interface Benchmark {
+    }
+}
\ No newline at end of file
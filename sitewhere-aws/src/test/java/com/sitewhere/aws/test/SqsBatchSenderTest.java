@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.aws.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClient;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.sitewhere.aws.SqsBatchSender;
+import com.sitewhere.aws.test.Benchmarks.Benchmark;
+
+/**
+ * Tests batching, retry and in-flight limits of {@link SqsBatchSender} against
+ * an in-process stand-in for the SQS client. The ElasticMQ test runs against a
+ * local SQS-compatible server when the 'sqs.endpoint' system property is set
+ * (e.g. http://localhost:9324).
+ * 
+ * @author Derek
+ */
+public class SqsBatchSenderTest {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Skips benchmarks unless enabled */
+    @Rule
+    public Benchmarks benchmarks = new Benchmarks();
+
+    /** Queue URL used with stand-in client */
+    private static final String QUEUE_URL = "http://localhost/queue/test";
+
+    @Test
+    public void testBatchesBoundedByCountAndSize() throws Exception {
+	FakeSqs sqs = new FakeSqs(0);
+	SqsBatchSender sender = new SqsBatchSender(sqs, QUEUE_URL, 50, 10, 3);
+	sender.start();
+	char[] large = new char[100 * 1024];
+	for (int i = 0; i < 1000; i++) {
+	    if ((i % 100) == 0) {
+		large[0] = (char) ('a' + (i / 100));
+		sender.add(new String(large));
+	    } else {
+		sender.add("event-" + i);
+	    }
+	}
+	sender.stop(5000);
+	sqs.shutdown();
+
+	assertEquals(1000, sqs.getDelivered().size());
+	assertEquals(1000, sender.getMessagesSent());
+	assertEquals(0, sender.getMessagesFailed());
+	for (SendMessageBatchRequest request : sqs.getRequests()) {
+	    assertTrue(request.getEntries().size() <= SqsBatchSender.MAX_BATCH_ENTRIES);
+	    assertTrue(getPayloadBytes(request) <= SqsBatchSender.MAX_BATCH_BYTES);
+	    assertEquals(QUEUE_URL, request.getQueueUrl());
+	}
+	assertTrue(sqs.getRequests().size() < 200);
+    }
+
+    @Test
+    public void testRetriesPartialFailures() throws Exception {
+	FakeSqs sqs = new FakeSqs(0);
+	SqsBatchSender sender = new SqsBatchSender(sqs, QUEUE_URL, 50, 10, 3);
+	sender.start();
+	for (int i = 0; i < 100; i++) {
+	    if ((i % 10) == 0) {
+		sender.add("flaky-" + i);
+	    } else if ((i % 25) == 0) {
+		sender.add("bad-" + i);
+	    } else {
+		sender.add("event-" + i);
+	    }
+	}
+	awaitSettled(sender, 100);
+	sender.stop(5000);
+	sqs.shutdown();
+
+	// Transient failures are resent once, sender faults are dropped.
+	assertEquals(98, sqs.getDelivered().size());
+	assertEquals(98, new HashSet<String>(sqs.getDelivered()).size());
+	assertTrue(sqs.getDelivered().contains("flaky-0"));
+	assertEquals(98, sender.getMessagesSent());
+	assertEquals(10, sender.getMessagesRetried());
+	assertEquals(2, sender.getMessagesFailed());
+    }
+
+    @Test
+    public void testRetriesFailedRequests() throws Exception {
+	FakeSqs sqs = new FakeSqs(0);
+	sqs.getErrorsRemaining().set(3);
+	SqsBatchSender sender = new SqsBatchSender(sqs, QUEUE_URL, 50, 1, 3);
+	sender.start();
+	for (int i = 0; i < 20; i++) {
+	    sender.add("event-" + i);
+	}
+	awaitSettled(sender, 20);
+	sender.stop(5000);
+	sqs.shutdown();
+
+	assertEquals(20, sqs.getDelivered().size());
+	assertEquals(0, sender.getMessagesFailed());
+	assertTrue(sender.getMessagesRetried() > 0);
+    }
+
+    @Test
+    public void testGivesUpAfterMaxRetries() throws Exception {
+	FakeSqs sqs = new FakeSqs(0);
+	sqs.getErrorsRemaining().set(Integer.MAX_VALUE);
+	SqsBatchSender sender = new SqsBatchSender(sqs, QUEUE_URL, 50, 1, 2);
+	sender.start();
+	for (int i = 0; i < 5; i++) {
+	    sender.add("event-" + i);
+	}
+	awaitSettled(sender, 5);
+	sender.stop(5000);
+	sqs.shutdown();
+
+	assertEquals(0, sqs.getDelivered().size());
+	assertEquals(10, sender.getMessagesRetried());
+	assertEquals(5, sender.getMessagesFailed());
+    }
+
+    @Test
+    public void testBoundsRequestsInFlight() throws Exception {
+	FakeSqs sqs = new FakeSqs(20);
+	SqsBatchSender sender = new SqsBatchSender(sqs, QUEUE_URL, 50, 3, 3);
+	sender.start();
+	for (int i = 0; i < 300; i++) {
+	    sender.add("event-" + i);
+	}
+	sender.stop(5000);
+	sqs.shutdown();
+
+	assertEquals(300, sqs.getDelivered().size());
+	assertTrue(sqs.getMaxConcurrent().get() <= 3);
+	assertTrue(sqs.getMaxConcurrent().get() > 1);
+    }
+
+    @Test
+    @Benchmark
+    public void benchmarkSendThroughput() throws Exception {
+	FakeSqs sqs = new FakeSqs(20);
+	SqsBatchSender sender = new SqsBatchSender(sqs, QUEUE_URL, 50, 10, 3);
+	sender.start();
+	long start = System.currentTimeMillis();
+	for (int i = 0; i < 10000; i++) {
+	    sender.add("event-" + i);
+	}
+	sender.stop(30000);
+	sqs.shutdown();
+
+	assertEquals(10000, sqs.getDelivered().size());
+	LOGGER.info("Sent 10000 messages in " + sqs.getRequests().size() + " requests with up to "
+		+ sqs.getMaxConcurrent().get() + " in flight in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    @Test
+    public void testElasticMq() throws Exception {
+	String endpoint = System.getProperty("sqs.endpoint");
+	Assume.assumeNotNull(endpoint);
+
+	ExecutorService executor = Executors.newFixedThreadPool(10);
+	AmazonSQSAsyncClient sqs = new AmazonSQSAsyncClient(new BasicAWSCredentials("x", "x"), executor);
+	sqs.setEndpoint(endpoint);
+	String queueUrl = sqs.createQueue("sitewhere-test-" + System.currentTimeMillis()).getQueueUrl();
+	try {
+	    SqsBatchSender sender = new SqsBatchSender(sqs, queueUrl, 50, 10, 3);
+	    sender.start();
+	    for (int i = 0; i < 250; i++) {
+		sender.add("event-" + i);
+	    }
+	    sender.stop(10000);
+	    assertEquals(250, sender.getMessagesSent());
+
+	    Set<String> received = new HashSet<String>();
+	    long deadline = System.currentTimeMillis() + 10000;
+	    while ((received.size() < 250) && (System.currentTimeMillis() < deadline)) {
+		ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl).withMaxNumberOfMessages(10);
+		for (Message message : sqs.receiveMessage(request).getMessages()) {
+		    received.add(message.getBody());
+		    sqs.deleteMessage(queueUrl, message.getReceiptHandle());
+		}
+	    }
+	    assertEquals(250, received.size());
+	} finally {
+	    sqs.deleteQueue(queueUrl);
+	    sqs.shutdown();
+	    executor.shutdownNow();
+	}
+    }
+
+    /**
+     * Wait until every message has either been accepted or given up on.
+     * 
+     * @param sender
+     * @param messages
+     * @throws InterruptedException
+     */
+    protected static void awaitSettled(SqsBatchSender sender, int messages) throws InterruptedException {
+	long deadline = System.currentTimeMillis() + 10000;
+	while (sender.getMessagesSent() + sender.getMessagesFailed() < messages) {
+	    assertTrue("Timed out waiting for messages to settle.", System.currentTimeMillis() < deadline);
+	    Thread.sleep(10);
+	}
+    }
+
+    /**
+     * Get total size of message bodies in a request.
+     * 
+     * @param request
+     * @return
+     */
+    protected static int getPayloadBytes(SendMessageBatchRequest request) {
+	int total = 0;
+	for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+	    total += entry.getMessageBody().getBytes(StandardCharsets.UTF_8).length;
+	}
+	return total;
+    }
+
+    /**
+     * Stand-in for the asynchronous SQS client. Messages starting with 'flaky'
+     * fail on the first attempt, messages starting with 'bad' are always
+     * rejected as sender faults.
+     */
+    private static class FakeSqs extends AmazonSQSAsyncClient {
+
+	/** Simulated request latency */
+	private long latencyMs;
+
+	/** Completes requests */
+	private ExecutorService executor = Executors.newCachedThreadPool();
+
+	/** Requests received */
+	private List<SendMessageBatchRequest> requests = Collections
+		.synchronizedList(new ArrayList<SendMessageBatchRequest>());
+
+	/** Message bodies accepted */
+	private List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+
+	/** Messages that have already failed once */
+	private Set<String> failedOnce = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/** Number of requests to fail entirely */
+	private AtomicInteger errorsRemaining = new AtomicInteger();
+
+	/** Requests currently executing */
+	private AtomicInteger concurrent = new AtomicInteger();
+
+	/** Most requests executing at once */
+	private AtomicInteger maxConcurrent = new AtomicInteger();
+
+	public FakeSqs(long latencyMs) {
+	    super(new BasicAWSCredentials("x", "x"));
+	    this.latencyMs = latencyMs;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.amazonaws.services.sqs.AmazonSQSAsyncClient#sendMessageBatchAsync(
+	 * com.amazonaws.services.sqs.model.SendMessageBatchRequest,
+	 * com.amazonaws.handlers.AsyncHandler)
+	 */
+	@Override
+	public Future<SendMessageBatchResult> sendMessageBatchAsync(final SendMessageBatchRequest request,
+		final AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> handler) {
+	    requests.add(request);
+	    return executor.submit(new Callable<SendMessageBatchResult>() {
+
+		@Override
+		public SendMessageBatchResult call() throws Exception {
+		    int current = concurrent.incrementAndGet();
+		    int max = maxConcurrent.get();
+		    while ((current > max) && (!maxConcurrent.compareAndSet(max, current))) {
+			max = maxConcurrent.get();
+		    }
+		    if (latencyMs > 0) {
+			Thread.sleep(latencyMs);
+		    }
+		    boolean error = errorsRemaining.getAndDecrement() > 0;
+		    SendMessageBatchResult result = error ? null : process(request);
+
+		    // Count request as complete before handler releases its slot.
+		    concurrent.decrementAndGet();
+		    if (error) {
+			AmazonClientException e = new AmazonClientException("Simulated failure.");
+			handler.onError(e);
+			throw e;
+		    }
+		    handler.onSuccess(request, result);
+		    return result;
+		}
+	    });
+	}
+
+	/**
+	 * Accept or fail each entry of a request.
+	 *
+	 * @param request
+	 * @return
+	 */
+	protected SendMessageBatchResult process(SendMessageBatchRequest request) {
+	    SendMessageBatchResult result = new SendMessageBatchResult();
+	    for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+		String body = entry.getMessageBody();
+		if (body.startsWith("bad")) {
+		    result.getFailed().add(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(true)
+			    .withCode("InvalidMessageContents").withMessage("Rejected."));
+		} else if (body.startsWith("flaky") && failedOnce.add(body)) {
+		    result.getFailed().add(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(false)
+			    .withCode("InternalError").withMessage("Try again."));
+		} else {
+		    delivered.add(body);
+		    result.getSuccessful().add(new SendMessageBatchResultEntry().withId(entry.getId()));
+		}
+	    }
+	    return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.amazonaws.AmazonWebServiceClient#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+	    super.shutdown();
+	    executor.shutdownNow();
+	}
+
+	public List<SendMessageBatchRequest> getRequests() {
+	    return requests;
+	}
+
+	public List<String> getDelivered() {
+	    return delivered;
+	}
+
+	public AtomicInteger getErrorsRemaining() {
+	    return errorsRemaining;
+	}
+
+	public AtomicInteger getMaxConcurrent() {
+	    return maxConcurrent;
+	}
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.azure.device.communication;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.qpid.amqp_1_0.client.Message;
+import org.apache.qpid.amqp_1_0.client.Sender;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.Outcome;
+import org.apache.qpid.amqp_1_0.type.Section;
+import org.apache.qpid.amqp_1_0.type.Symbol;
+import org.apache.qpid.amqp_1_0.type.messaging.Accepted;
+import org.apache.qpid.amqp_1_0.type.messaging.Data;
+import org.apache.qpid.amqp_1_0.type.messaging.MessageAnnotations;
+import org.apache.qpid.amqp_1_0.type.messaging.Properties;
+
+import com.sitewhere.azure.device.communication.client.Constants;
+import com.sitewhere.azure.device.communication.client.EventHubException;
+import com.sitewhere.azure.device.communication.client.EventHubSender;
+
+/**
+ * Packs marshaled events into JSON array messages bounded by the EventHub
+ * message size limit. Events are grouped by partition key so that all events
+ * for a key land on the same partition in order. Batches are sent when full or
+ * when they have been open longer than the maximum delay. Sends happen on a
+ * dedicated thread and outcomes are reported asynchronously, so callers only
+ * block when the queue of pending batches is full.
+ * 
+ * @author Derek
+ */
+public class EventHubBatchSender {
+
+    /** Static logger instance */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** Maximum size of a message accepted by EventHub */
+    public static final int MAX_MESSAGE_BYTES = 256 * 1024;
+
+    /** Bytes reserved for AMQP sections other than the body */
+    public static final int ENVELOPE_OVERHEAD_BYTES = 1024;
+
+    /** Content type set on batch messages */
+    private static final Symbol JSON_CONTENT_TYPE = Symbol.valueOf("application/json");
+
+    /** Annotation used by EventHub to choose a partition */
+    private static final Symbol PARTITION_KEY = Symbol.valueOf(Constants.PartitionKeyAnnotation);
+
+    /** Sender used to deliver messages */
+    private EventHubSender sender;
+
+    /** Maximum size of a batch body in bytes */
+    private int maxBatchBytes;
+
+    /** Maximum time in milliseconds a batch stays open */
+    private long maxBatchDelayMs;
+
+    /** Maximum number of batches waiting to be sent */
+    private int maxPendingBatches;
+
+    /** Open batches indexed by partition key */
+    private Map<String, Batch> open = new HashMap<String, Batch>();
+
+    /** Flushes batches that have been open too long */
+    private ScheduledExecutorService flusher;
+
+    /** Sends completed batches */
+    private ThreadPoolExecutor senderExecutor;
+
+    /** Number of batches awaiting an outcome */
+    private AtomicInteger inFlight = new AtomicInteger();
+
+    /** Number of batches accepted */
+    private AtomicLong batchesSent = new AtomicLong();
+
+    /** Number of events accepted */
+    private AtomicLong eventsSent = new AtomicLong();
+
+    /** Number of batches rejected or not sent */
+    private AtomicLong batchesFailed = new AtomicLong();
+
+    /** Number of events rejected or not sent */
+    private AtomicLong eventsFailed = new AtomicLong();
+
+    /** Total time between send and outcome for all batches */
+    private AtomicLong totalLatencyNanos = new AtomicLong();
+
+    /** Longest time between send and outcome */
+    private AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public EventHubBatchSender(EventHubSender sender, int maxBatchBytes, long maxBatchDelayMs,
+	    int maxPendingBatches) {
+	this.sender = sender;
+	this.maxBatchBytes = Math.min(maxBatchBytes, MAX_MESSAGE_BYTES - ENVELOPE_OVERHEAD_BYTES);
+	this.maxBatchDelayMs = maxBatchDelayMs;
+	this.maxPendingBatches = maxPendingBatches;
+    }
+
+    /**
+     * Start sender and flush threads.
+     */
+    public void start() {
+	this.senderExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+		new ArrayBlockingQueue<Runnable>(maxPendingBatches), new SenderThreadFactory(),
+		new ThreadPoolExecutor.CallerRunsPolicy());
+	this.flusher = Executors.newSingleThreadScheduledExecutor(new FlusherThreadFactory());
+	flusher.scheduleWithFixedDelay(new Runnable() {
+
+	    @Override
+	    public void run() {
+		flushExpired();
+	    }
+	}, maxBatchDelayMs, maxBatchDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a marshaled event to the open batch for its partition key. Events too
+     * large to fit in a batch on their own are dropped.
+     * 
+     * @param partitionKey
+     *            key used to route the batch or null to let EventHub choose
+     * @param json
+     */
+    public void add(String partitionKey, byte[] json) {
+	if (json.length + 2 > maxBatchBytes) {
+	    eventsFailed.incrementAndGet();
+	    LOGGER.error("Dropping EventHub event of " + json.length + " bytes. Batches are limited to " + maxBatchBytes
+		    + " bytes.");
+	    return;
+	}
+	List<Batch> ready = new ArrayList<Batch>(2);
+	synchronized (open) {
+	    Batch batch = open.get(partitionKey);
+	    if ((batch != null) && (!batch.fits(json.length))) {
+		ready.add(open.remove(partitionKey));
+		batch = null;
+	    }
+	    if (batch == null) {
+		batch = new Batch(partitionKey);
+		open.put(partitionKey, batch);
+	    }
+	    batch.add(json);
+	    if (!batch.fits(0)) {
+		ready.add(open.remove(partitionKey));
+	    }
+	}
+	for (Batch batch : ready) {
+	    submit(batch);
+	}
+    }
+
+    /**
+     * Send batches that have been open longer than the maximum delay.
+     */
+    protected void flushExpired() {
+	long cutoff = System.currentTimeMillis() - maxBatchDelayMs;
+	List<Batch> ready = new ArrayList<Batch>();
+	synchronized (open) {
+	    Iterator<Batch> it = open.values().iterator();
+	    while (it.hasNext()) {
+		Batch batch = it.next();
+		if (batch.getCreated() <= cutoff) {
+		    ready.add(batch);
+		    it.remove();
+		}
+	    }
+	}
+	for (Batch batch : ready) {
+	    submit(batch);
+	}
+    }
+
+    /**
+     * Send all open batches, then wait up to the given timeout for outstanding
+     * outcomes before shutting down.
+     * 
+     * @param timeoutMs
+     */
+    public void stop(long timeoutMs) {
+	if (flusher != null) {
+	    flusher.shutdownNow();
+	}
+	List<Batch> remaining;
+	synchronized (open) {
+	    remaining = new ArrayList<Batch>(open.values());
+	    open.clear();
+	}
+	for (Batch batch : remaining) {
+	    submit(batch);
+	}
+	long deadline = System.currentTimeMillis() + timeoutMs;
+	if (senderExecutor != null) {
+	    senderExecutor.shutdown();
+	    try {
+		senderExecutor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+		while ((inFlight.get() > 0) && (System.currentTimeMillis() < deadline)) {
+		    Thread.sleep(50);
+		}
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+	if (inFlight.get() > 0) {
+	    LOGGER.warn(inFlight.get() + " EventHub batch(es) had no outcome before shutdown.");
+	}
+	LOGGER.info("EventHub batch sender stopped. Sent " + getEventsSent() + " events in " + getBatchesSent()
+		+ " batches (avg latency " + getAverageLatencyMs() + "ms, max " + getMaxLatencyMs() + "ms). Failed "
+		+ getEventsFailed() + " events in " + getBatchesFailed() + " batches.");
+    }
+
+    /**
+     * Queue a batch for sending.
+     * 
+     * @param batch
+     */
+    protected void submit(final Batch batch) {
+	if (senderExecutor.isShutdown()) {
+	    transmit(batch);
+	    return;
+	}
+	senderExecutor.execute(new Runnable() {
+
+	    @Override
+	    public void run() {
+		transmit(batch);
+	    }
+	});
+    }
+
+    /**
+     * Build an AMQP message for a batch and send it, recording the outcome
+     * when it arrives.
+     * 
+     * @param batch
+     */
+    protected void transmit(final Batch batch) {
+	List<Section> sections = new ArrayList<Section>(3);
+	if (batch.getPartitionKey() != null) {
+	    Map<Symbol, Object> annotations = new HashMap<Symbol, Object>();
+	    annotations.put(PARTITION_KEY, batch.getPartitionKey());
+	    sections.add(new MessageAnnotations(annotations));
+	}
+	Properties properties = new Properties();
+	properties.setContentType(JSON_CONTENT_TYPE);
+	sections.add(properties);
+	sections.add(new Data(new Binary(batch.toByteArray())));
+
+	final long start = System.nanoTime();
+	inFlight.incrementAndGet();
+	try {
+	    send(new Message(sections), new Sender.OutcomeAction() {
+
+		@Override
+		public void onOutcome(Binary deliveryTag, Outcome outcome) {
+		    inFlight.decrementAndGet();
+		    recordOutcome(batch, outcome instanceof Accepted, System.nanoTime() - start);
+		    if (!(outcome instanceof Accepted)) {
+			LOGGER.error("EventHub rejected batch of " + batch.getCount() + " events: " + outcome);
+		    }
+		}
+	    });
+	} catch (EventHubException e) {
+	    inFlight.decrementAndGet();
+	    recordOutcome(batch, false, System.nanoTime() - start);
+	    LOGGER.error("Unable to send batch of " + batch.getCount() + " events to EventHub.", e);
+	}
+    }
+
+    /**
+     * Send a message via the underlying sender.
+     * 
+     * @param message
+     * @param action
+     * @throws EventHubException
+     */
+    protected void send(Message message, Sender.OutcomeAction action) throws EventHubException {
+	sender.send(message, action);
+    }
+
+    /**
+     * Update statistics for a completed batch.
+     * 
+     * @param batch
+     * @param accepted
+     * @param latencyNanos
+     */
+    protected void recordOutcome(Batch batch, boolean accepted, long latencyNanos) {
+	if (accepted) {
+	    batchesSent.incrementAndGet();
+	    eventsSent.addAndGet(batch.getCount());
+	} else {
+	    batchesFailed.incrementAndGet();
+	    eventsFailed.addAndGet(batch.getCount());
+	}
+	totalLatencyNanos.addAndGet(latencyNanos);
+	long max = maxLatencyNanos.get();
+	while ((latencyNanos > max) && (!maxLatencyNanos.compareAndSet(max, latencyNanos))) {
+	    max = maxLatencyNanos.get();
+	}
+    }
+
+    public long getBatchesSent() {
+	return batchesSent.get();
+    }
+
+    public long getEventsSent() {
+	return eventsSent.get();
+    }
+
+    public long getBatchesFailed() {
+	return batchesFailed.get();
+    }
+
+    public long getEventsFailed() {
+	return eventsFailed.get();
+    }
+
+    public int getInFlight() {
+	return inFlight.get();
+    }
+
+    public long getAverageLatencyMs() {
+	long completed = batchesSent.get() + batchesFailed.get();
+	return (completed == 0) ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.get() / completed);
+    }
+
+    public long getMaxLatencyMs() {
+	return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+    }
+
+    public int getMaxBatchBytes() {
+	return maxBatchBytes;
+    }
+
+    /**
+     * JSON array of events sharing a partition key.
+     * 
+     * @author Derek
+     */
+    protected class Batch {
+
+	/** Partition key */
+	private String partitionKey;
+
+	/** Time batch was created */
+	private long created = System.currentTimeMillis();
+
+	/** Number of events in batch */
+	private int count;
+
+	/** Array content */
+	private ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+
+	public Batch(String partitionKey) {
+	    this.partitionKey = partitionKey;
+	    buffer.write('[');
+	}
+
+	/**
+	 * Indicates if an event of the given size can be added without
+	 * exceeding the maximum batch size.
+	 * 
+	 * @param length
+	 * @return
+	 */
+	public boolean fits(int length) {
+	    return buffer.size() + length + 2 <= maxBatchBytes;
+	}
+
+	/**
+	 * Append an event to the array.
+	 * 
+	 * @param json
+	 */
+	public void add(byte[] json) {
+	    if (count > 0) {
+		buffer.write(',');
+	    }
+	    buffer.write(json, 0, json.length);
+	    count++;
+	}
+
+	/**
+	 * Get the closed JSON array.
+	 * 
+	 * @return
+	 */
+	public byte[] toByteArray() {
+	    buffer.write(']');
+	    return buffer.toByteArray();
+	}
+
+	public String getPartitionKey() {
+	    return partitionKey;
+	}
+
+	public long getCreated() {
+	    return created;
+	}
+
+	public int getCount() {
+	    return count;
+	}
+    }
+
+    /** Used for naming sender thread */
+    private class SenderThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere EventHub Batch Sender " + counter.incrementAndGet());
+	}
+    }
+
+    /** Used for naming flusher thread */
+    private class FlusherThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere EventHub Batch Flusher " + counter.incrementAndGet());
+	}
+    }
+}
\ No newline at end of file
@@ -28,6 +28,7 @@ import javax.naming.NamingException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.sitewhere.azure.device.communication.client.EventHubClient;
 import com.sitewhere.common.MarshalUtils;
 import com.sitewhere.device.event.processor.FilteredOutboundEventProcessor;
 import com.sitewhere.spi.SiteWhereException;
@@ -42,7 +43,10 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Implementation of {@link IOutboundEventProcessor} that sends events to an
- * EventHub running on Azure.
+ * EventHub running on Azure. By default each event is sent as a separate
+ * message. When batching is enabled, events are packed into JSON array messages
+ * (see {@link EventHubBatchSender}) routed by assignment token and sent
+ * asynchronously.
  * 
  * @author Derek
  */
@@ -51,6 +55,15 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundEventProcess
     /** Static logger instance */
     private static final Logger LOGGER = LogManager.getLogger();
 
+    /** Default maximum time in milliseconds a batch stays open */
+    private static final long DEFAULT_MAX_BATCH_DELAY_MS = 100;
+
+    /** Default maximum number of batches waiting to be sent */
+    private static final int DEFAULT_MAX_PENDING_BATCHES = 100;
+
+    /** Max time in milliseconds to wait for outstanding batches on shutdown */
+    private static final long SHUTDOWN_TIMEOUT_MS = 10 * 1000;
+
     /** SAS identity name */
     private String sasName;
 
@@ -70,6 +83,27 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundEventProcess
     private Session session;
     private MessageProducer sender;
 
+    /** Indicates if events are sent in batches */
+    private boolean batchingEnabled = false;
+
+    /** Maximum size of a batch in bytes */
+    private int maxBatchBytes = EventHubBatchSender.MAX_MESSAGE_BYTES - EventHubBatchSender.ENVELOPE_OVERHEAD_BYTES;
+
+    /** Maximum time in milliseconds a batch stays open */
+    private long maxBatchDelayMs = DEFAULT_MAX_BATCH_DELAY_MS;
+
+    /** Maximum number of batches waiting to be sent */
+    private int maxPendingBatches = DEFAULT_MAX_PENDING_BATCHES;
+
+    /** Indicates if assignment token is used as partition key */
+    private boolean partitionByAssignment = true;
+
+    /** Client used when batching */
+    private EventHubClient client;
+
+    /** Sends batched events */
+    private EventHubBatchSender batchSender;
+
     /*
      * (non-Javadoc)
      * 
@@ -85,6 +119,13 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundEventProcess
 	try {
 	    String key = URLEncoder.encode(getSasKey(), "UTF8");
 	    String connectionString = "amqps://" + getSasName() + ":" + key + "@" + getServiceBusName();
+	    if (isBatchingEnabled()) {
+		this.client = EventHubClient.create(connectionString, getEventHubName());
+		this.batchSender = new EventHubBatchSender(client.createPartitionSender(null), getMaxBatchBytes(),
+			getMaxBatchDelayMs(), getMaxPendingBatches());
+		batchSender.start();
+		return;
+	    }
 	    File file = File.createTempFile("eventhub", ".props");
 	    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
 	    writer.write("connectionfactory.SBCF = " + connectionString);
@@ -110,6 +151,8 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundEventProcess
 	    throw new SiteWhereException(e);
 	} catch (JMSException e) {
 	    throw new SiteWhereException(e);
+	} catch (Exception e) {
+	    throw new SiteWhereException("Unable to create EventHub sender.", e);
 	}
     }
 
@@ -123,6 +166,14 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundEventProcess
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.stop(monitor);
+	if (batchSender != null) {
+	    batchSender.stop(SHUTDOWN_TIMEOUT_MS);
+	    batchSender = null;
+	}
+	if (client != null) {
+	    client.close();
+	    client = null;
+	}
 	if (sender != null) {
 	    try {
 		sender.close();
@@ -211,6 +262,11 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundEventProcess
      * @throws SiteWhereException
      */
     protected void sendEvent(IDeviceEvent event) throws SiteWhereException {
+	if (batchSender != null) {
+	    String partitionKey = isPartitionByAssignment() ? event.getDeviceAssignmentToken() : null;
+	    batchSender.add(partitionKey, MarshalUtils.marshalJson(event));
+	    return;
+	}
 	try {
 	    BytesMessage message = session.createBytesMessage();
 	    message.writeBytes(MarshalUtils.marshalJson(event));
@@ -262,4 +318,48 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundEventProcess
     public void setEventHubName(String eventHubName) {
 	this.eventHubName = eventHubName;
     }
+
+    public boolean isBatchingEnabled() {
+	return batchingEnabled;
+    }
+
+    public void setBatchingEnabled(boolean batchingEnabled) {
+	this.batchingEnabled = batchingEnabled;
+    }
+
+    public int getMaxBatchBytes() {
+	return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(int maxBatchBytes) {
+	this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public long getMaxBatchDelayMs() {
+	return maxBatchDelayMs;
+    }
+
+    public void setMaxBatchDelayMs(long maxBatchDelayMs) {
+	this.maxBatchDelayMs = maxBatchDelayMs;
+    }
+
+    public int getMaxPendingBatches() {
+	return maxPendingBatches;
+    }
+
+    public void setMaxPendingBatches(int maxPendingBatches) {
+	this.maxPendingBatches = maxPendingBatches;
+    }
+
+    public boolean isPartitionByAssignment() {
+	return partitionByAssignment;
+    }
+
+    public void setPartitionByAssignment(boolean partitionByAssignment) {
+	this.partitionByAssignment = partitionByAssignment;
+    }
+
+    public EventHubBatchSender getBatchSender() {
+	return batchSender;
+    }
 }
\ No newline at end of file
@@ -32,6 +32,7 @@ public class Constants {
     public static final String EnqueueTimeFilterFormatString = "amqp.annotation.x-opt-enqueuedtimeutc > %d";
     public static final String ConsumerAddressFormatString = "%s/ConsumerGroups/%s/Partitions/%s";
     public static final String DestinationAddressFormatString = "%s/Partitions/%s";
+    public static final String PartitionKeyAnnotation = "x-opt-partition-key";
 
     public static final String SslScheme = "amqps";
     public static final int DefaultPort = 5672;
@@ -76,7 +76,33 @@ public class EventHubSender {
 	}
     }
 
+    /**
+     * Sends a prebuilt message without waiting for the outcome. The action is
+     * invoked once the service accepts or rejects the message.
+     *
+     * @param message
+     * @param action
+     * @throws EventHubException
+     */
+    public void send(Message message, Sender.OutcomeAction action) throws EventHubException {
+	try {
+	    if (this.sender == null) {
+		this.ensureSenderCreated();
+	    }
+	    this.sender.send(message, action);
+	} catch (LinkDetachedException e) {
+	    throw new EventHubException("Sender has been closed");
+	} catch (TimeoutException e) {
+	    throw new EventHubException("Timed out while waiting to get credit to send");
+	} catch (Exception e) {
+	    throw new EventHubException(e);
+	}
+    }
+
     public void close() {
+	if (this.sender == null) {
+	    return;
+	}
 	try {
 	    this.sender.close();
 	} catch (Sender.SenderClosingException e) {
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.azure.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.qpid.amqp_1_0.client.Message;
+import org.apache.qpid.amqp_1_0.client.Sender;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.Section;
+import org.apache.qpid.amqp_1_0.type.Symbol;
+import org.apache.qpid.amqp_1_0.type.messaging.Accepted;
+import org.apache.qpid.amqp_1_0.type.messaging.Data;
+import org.apache.qpid.amqp_1_0.type.messaging.MessageAnnotations;
+import org.apache.qpid.amqp_1_0.type.messaging.Rejected;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sitewhere.azure.device.communication.EventHubBatchSender;
+
+/**
+ * Tests batching behavior of {@link EventHubBatchSender} without a remote
+ * EventHub.
+ * 
+ * @author Derek
+ */
+public class EventHubBatchSenderTest {
+
+    /** Used to parse batch bodies */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testSizeBoundedBatches() throws Exception {
+	CapturingSender sender = new CapturingSender(EventHubBatchSender.MAX_MESSAGE_BYTES, true);
+	sender.start();
+	byte[] event = createEvent(1000);
+	for (int i = 0; i < 1000; i++) {
+	    sender.add("assignment-1", event);
+	}
+	sender.stop(5000);
+
+	int total = 0;
+	for (Message message : sender.getMessages()) {
+	    byte[] body = getBody(message);
+	    assertTrue(body.length <= sender.getMaxBatchBytes());
+	    JsonNode array = MAPPER.readTree(body);
+	    total += array.size();
+	    assertEquals("assignment-1", getPartitionKey(message));
+	}
+	assertEquals(1000, total);
+	assertTrue(sender.getMessages().size() > 1);
+	assertEquals(1000, sender.getEventsSent());
+	assertEquals(sender.getMessages().size(), sender.getBatchesSent());
+    }
+
+    @Test
+    public void testBatchesGroupedByPartitionKey() throws Exception {
+	CapturingSender sender = new CapturingSender(EventHubBatchSender.MAX_MESSAGE_BYTES, true);
+	sender.start();
+	for (int i = 0; i < 30; i++) {
+	    sender.add("assignment-" + (i % 3), createEvent(100));
+	}
+	sender.stop(5000);
+
+	assertEquals(3, sender.getMessages().size());
+	for (Message message : sender.getMessages()) {
+	    assertEquals(10, MAPPER.readTree(getBody(message)).size());
+	}
+    }
+
+    @Test
+    public void testFlushAfterDelay() throws Exception {
+	CapturingSender sender = new CapturingSender(EventHubBatchSender.MAX_MESSAGE_BYTES, true);
+	sender.start();
+	sender.add(null, createEvent(100));
+	long deadline = System.currentTimeMillis() + 5000;
+	while ((sender.getMessages().isEmpty()) && (System.currentTimeMillis() < deadline)) {
+	    Thread.sleep(10);
+	}
+	assertEquals(1, sender.getMessages().size());
+	assertEquals(null, getPartitionKey(sender.getMessages().get(0)));
+	sender.stop(5000);
+    }
+
+    @Test
+    public void testRejectedBatchesCounted() throws Exception {
+	CapturingSender sender = new CapturingSender(EventHubBatchSender.MAX_MESSAGE_BYTES, false);
+	sender.start();
+	for (int i = 0; i < 5; i++) {
+	    sender.add("assignment-1", createEvent(100));
+	}
+	sender.stop(5000);
+	assertEquals(1, sender.getBatchesFailed());
+	assertEquals(5, sender.getEventsFailed());
+	assertEquals(0, sender.getEventsSent());
+    }
+
+    @Test
+    public void testOversizedEventRejected() throws Exception {
+	CapturingSender sender = new CapturingSender(1000, true);
+	sender.start();
+	sender.add("assignment-1", createEvent(100));
+	sender.add("assignment-1", createEvent(1000));
+	sender.add("assignment-1", createEvent(100));
+	sender.stop(5000);
+	assertEquals(1, sender.getMessages().size());
+	assertEquals(2, sender.getEventsSent());
+	assertEquals(1, sender.getEventsFailed());
+	assertEquals(0, sender.getBatchesFailed());
+    }
+
+    /**
+     * Create a JSON object of roughly the given size.
+     * 
+     * @param size
+     * @return
+     */
+    protected byte[] createEvent(int size) {
+	StringBuilder json = new StringBuilder("{\"value\":\"");
+	while (json.length() < size - 2) {
+	    json.append('x');
+	}
+	json.append("\"}");
+	return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get body of a captured message.
+     * 
+     * @param message
+     * @return
+     */
+    protected byte[] getBody(Message message) {
+	for (Section section : message.getPayload()) {
+	    if (section instanceof Data) {
+		Binary binary = ((Data) section).getValue();
+		return Arrays.copyOfRange(binary.getArray(), binary.getArrayOffset(),
+			binary.getArrayOffset() + binary.getLength());
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Get partition key annotation of a captured message.
+     * 
+     * @param message
+     * @return
+     */
+    protected String getPartitionKey(Message message) {
+	for (Section section : message.getPayload()) {
+	    if (section instanceof MessageAnnotations) {
+		return (String) ((MessageAnnotations) section).getValue().get(Symbol.valueOf("x-opt-partition-key"));
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Batch sender that captures messages rather than sending them.
+     * 
+     * @author Derek
+     */
+    private static class CapturingSender extends EventHubBatchSender {
+
+	/** Captured messages */
+	private List<Message> messages = new ArrayList<Message>();
+
+	/** Indicates if messages should be accepted */
+	private boolean accept;
+
+	public CapturingSender(int maxBatchBytes, boolean accept) {
+	    super(null, maxBatchBytes, 50, 10);
+	    this.accept = accept;
+	}
+
+	@Override
+	protected void send(Message message, Sender.OutcomeAction action) {
+	    synchronized (messages) {
+		messages.add(message);
+	    }
+	    action.onOutcome(null, accept ? new Accepted() : new Rejected());
+	}
+
+	public List<Message> getMessages() {
+	    synchronized (messages) {
+		return new ArrayList<Message>(messages);
+	    }
+	}
+    }
+}
\ No newline at end of file
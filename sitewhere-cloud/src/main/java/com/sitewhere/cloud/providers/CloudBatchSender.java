@@ -0,0 +1,688 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.cloud.providers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Buffers items for a cloud provider by key (e.g. bucket or thing) and
+ * delivers them on a bounded pool of delivery threads so that a slow provider
+ * does not hold up outbound event processing. A batch is sent when it reaches
+ * the maximum size or has been open longer than the maximum delay. Only one
+ * batch per key is in flight at a time, including while it waits to be
+ * retried, so a retried batch can never overwrite newer items for the key.
+ * Items added meanwhile stay in the open batch, and full batches wait behind
+ * the one in flight. When the provider responds with HTTP 429, delivery for
+ * the key is paused for the time given by the Retry-After header and the batch
+ * is retried. Server errors and connection failures are retried with backoff.
+ * When too many batches are waiting for delivery, droppable items are dropped
+ * and other items are kept.
+ * 
+ * @author Derek
+ */
+public abstract class CloudBatchSender<T> {
+
+    /** Static logger instance */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** Delay before first retry when provider does not specify one */
+    private static final long INITIAL_RETRY_DELAY_MS = 1000;
+
+    /** Longest delay between retries */
+    private static final long MAX_RETRY_DELAY_MS = 60 * 1000;
+
+    /** Connect timeout for provider requests */
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    /** Read timeout for provider requests */
+    private static final int READ_TIMEOUT_MS = 15000;
+
+    /** Provider name used in thread names and log messages */
+    private String name;
+
+    /** Maximum number of items in a batch */
+    private int maxBatchSize;
+
+    /** Maximum time in milliseconds a batch stays open */
+    private long maxBatchDelayMs;
+
+    /** Number of threads delivering batches */
+    private int deliveryThreads;
+
+    /** Maximum number of batches waiting for delivery */
+    private int maxPendingBatches;
+
+    /** Number of times a failed batch is resent */
+    private int maxRetries;
+
+    /** Open batches indexed by key (also guards in flight and waiting) */
+    private Map<String, Batch<T>> open = new HashMap<String, Batch<T>>();
+
+    /** Keys with a batch being delivered or waiting to be retried */
+    private Set<String> inFlight = new HashSet<String>();
+
+    /** Full batches waiting behind the batch in flight, indexed by key */
+    private Map<String, Deque<Batch<T>>> waiting = new HashMap<String, Deque<Batch<T>>>();
+
+    /** Indicates open batches should be sent as soon as possible */
+    private volatile boolean stopping = false;
+
+    /** Time until which delivery is paused, indexed by key */
+    private ConcurrentMap<String, Long> pausedUntil = new ConcurrentHashMap<String, Long>();
+
+    /** Flushes expired batches and schedules retries */
+    private ScheduledExecutorService scheduler;
+
+    /** Delivers batches */
+    private ThreadPoolExecutor delivery;
+
+    /** Number of batches accepted but not yet delivered or dropped */
+    private AtomicInteger pending = new AtomicInteger();
+
+    /** Number of batches delivered */
+    private AtomicLong batchesSent = new AtomicLong();
+
+    /** Number of items delivered */
+    private AtomicLong itemsSent = new AtomicLong();
+
+    /** Number of items replaced by a newer item before delivery */
+    private AtomicLong itemsCoalesced = new AtomicLong();
+
+    /** Number of items resent after a failure */
+    private AtomicLong itemsRetried = new AtomicLong();
+
+    /** Number of items that could not be delivered */
+    private AtomicLong itemsDropped = new AtomicLong();
+
+    /** Number of rate limit responses from provider */
+    private AtomicLong rateLimited = new AtomicLong();
+
+    public CloudBatchSender(String name, int maxBatchSize, long maxBatchDelayMs, int deliveryThreads,
+	    int maxPendingBatches, int maxRetries) {
+	this.name = name;
+	this.maxBatchSize = maxBatchSize;
+	this.maxBatchDelayMs = maxBatchDelayMs;
+	this.deliveryThreads = deliveryThreads;
+	this.maxPendingBatches = maxPendingBatches;
+	this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Create an HTTP client that keeps a pool of connections open to the
+     * provider.
+     * 
+     * @param maxConnections
+     * @return
+     */
+    public static CloseableHttpClient createHttpClient(int maxConnections) {
+	PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+	connections.setMaxTotal(maxConnections);
+	connections.setDefaultMaxPerRoute(maxConnections);
+	RequestConfig config = RequestConfig.custom().setConnectTimeout(CONNECT_TIMEOUT_MS)
+		.setConnectionRequestTimeout(CONNECT_TIMEOUT_MS).setSocketTimeout(READ_TIMEOUT_MS).build();
+	return HttpClientBuilder.create().setConnectionManager(connections).setDefaultRequestConfig(config).build();
+    }
+
+    /**
+     * Start delivery and flush threads.
+     */
+    public void start() {
+	this.delivery = new ThreadPoolExecutor(deliveryThreads, deliveryThreads, 0L, TimeUnit.MILLISECONDS,
+		new LinkedBlockingQueue<Runnable>(), new DeliveryThreadFactory());
+	this.scheduler = Executors.newSingleThreadScheduledExecutor(new SchedulerThreadFactory());
+	scheduler.scheduleWithFixedDelay(new Runnable() {
+
+	    @Override
+	    public void run() {
+		flushExpired(false);
+	    }
+	}, maxBatchDelayMs, maxBatchDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add an item to the open batch for a key.
+     * 
+     * @param key
+     * @param item
+     */
+    public void add(String key, T item) {
+	Batch<T> ready = null;
+	synchronized (open) {
+	    Batch<T> batch = open.get(key);
+	    if (batch == null) {
+		batch = new Batch<T>(key);
+		open.put(key, batch);
+	    }
+	    Object coalescingKey = getCoalescingKey(item);
+	    if (coalescingKey != null) {
+		Iterator<T> it = batch.getItems().iterator();
+		while (it.hasNext()) {
+		    if (coalescingKey.equals(getCoalescingKey(it.next()))) {
+			it.remove();
+			itemsCoalesced.incrementAndGet();
+		    }
+		}
+	    }
+	    batch.getItems().add(item);
+	    if (batch.getItems().size() < maxBatchSize) {
+		return;
+	    }
+	    open.remove(key);
+	    if (inFlight.contains(key)) {
+		// Wait behind the batch in flight.
+		if (admit(batch)) {
+		    Deque<Batch<T>> queue = waiting.get(key);
+		    if (queue == null) {
+			queue = new ArrayDeque<Batch<T>>();
+			waiting.put(key, queue);
+		    }
+		    queue.add(batch);
+		}
+		return;
+	    }
+	    inFlight.add(key);
+	    ready = batch;
+	}
+	dispatch(ready);
+    }
+
+    /**
+     * Send batches that have been open longer than the maximum delay. Batches
+     * for keys that are paused or have a batch in flight stay open unless the
+     * sender is stopping, in which case they are sent once the batch in flight
+     * completes.
+     * 
+     * @param all
+     */
+    protected void flushExpired(boolean all) {
+	long cutoff = System.currentTimeMillis() - maxBatchDelayMs;
+	List<Batch<T>> ready = new ArrayList<Batch<T>>();
+	synchronized (open) {
+	    Iterator<Batch<T>> it = open.values().iterator();
+	    while (it.hasNext()) {
+		Batch<T> batch = it.next();
+		if (inFlight.contains(batch.getKey())) {
+		    continue;
+		}
+		if ((all) || ((batch.getCreated() <= cutoff) && (!isPaused(batch.getKey())))) {
+		    inFlight.add(batch.getKey());
+		    ready.add(batch);
+		    it.remove();
+		}
+	    }
+	}
+	for (Batch<T> batch : ready) {
+	    dispatch(batch);
+	}
+    }
+
+    /**
+     * Called once the batch in flight for a key has been delivered or dropped.
+     * Starts the next batch waiting for the key, or the open batch if it is
+     * due, and otherwise releases the key.
+     * 
+     * @param key
+     */
+    protected void completed(String key) {
+	while (true) {
+	    Batch<T> next = null;
+	    boolean admitted = true;
+	    synchronized (open) {
+		Deque<Batch<T>> queue = waiting.get(key);
+		if (queue != null) {
+		    next = queue.poll();
+		    if (queue.isEmpty()) {
+			waiting.remove(key);
+		    }
+		}
+		if (next == null) {
+		    Batch<T> batch = open.get(key);
+		    if ((batch != null) && ((stopping)
+			    || (batch.getCreated() <= System.currentTimeMillis() - maxBatchDelayMs))) {
+			next = open.remove(key);
+			admitted = admit(next);
+		    }
+		}
+		if (next == null) {
+		    inFlight.remove(key);
+		    return;
+		}
+	    }
+	    if (admitted) {
+		execute(next);
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Send all open batches, then wait up to the given timeout for pending
+     * batches before shutting down.
+     * 
+     * @param timeoutMs
+     */
+    public void stop(long timeoutMs) {
+	stopping = true;
+	flushExpired(true);
+	long deadline = System.currentTimeMillis() + timeoutMs;
+	try {
+	    while ((hasUndelivered()) && (System.currentTimeMillis() < deadline)) {
+		Thread.sleep(50);
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	if (scheduler != null) {
+	    scheduler.shutdownNow();
+	}
+	if (delivery != null) {
+	    delivery.shutdownNow();
+	}
+	if (hasUndelivered()) {
+	    LOGGER.warn(pending.get() + " " + name + " batch(es) were not delivered before shutdown.");
+	}
+	LOGGER.info(name + " sender stopped. Sent " + getItemsSent() + " items in " + getBatchesSent()
+		+ " requests. Coalesced " + getItemsCoalesced() + ", retried " + getItemsRetried() + ", dropped "
+		+ getItemsDropped() + " items. Rate limited " + getRateLimited() + " times.");
+    }
+
+    /**
+     * Indicates whether batches are pending or open batches are waiting for a
+     * batch in flight.
+     * 
+     * @return
+     */
+    protected boolean hasUndelivered() {
+	synchronized (open) {
+	    return (pending.get() > 0) || (!inFlight.isEmpty());
+	}
+    }
+
+    /**
+     * Queue a new batch for delivery. The caller has marked the key as in
+     * flight.
+     * 
+     * @param batch
+     */
+    protected void dispatch(Batch<T> batch) {
+	if (admit(batch)) {
+	    execute(batch);
+	} else {
+	    completed(batch.getKey());
+	}
+    }
+
+    /**
+     * Count a new batch as pending. If too many batches are pending, droppable
+     * items are dropped and the batch is only accepted if other items remain.
+     * 
+     * @param batch
+     * @return true if batch was accepted
+     */
+    protected boolean admit(Batch<T> batch) {
+	if (pending.incrementAndGet() <= maxPendingBatches) {
+	    return true;
+	}
+	List<T> kept = new ArrayList<T>();
+	for (T item : batch.getItems()) {
+	    if (!isDroppable(item)) {
+		kept.add(item);
+	    }
+	}
+	int dropped = batch.getItems().size() - kept.size();
+	if (dropped > 0) {
+	    itemsDropped.addAndGet(dropped);
+	    LOGGER.warn("Dropped " + dropped + " " + name + " item(s) for '" + batch.getKey()
+		    + "' because too many batches are waiting for delivery.");
+	}
+	if (kept.isEmpty()) {
+	    pending.decrementAndGet();
+	    return false;
+	}
+	batch.getItems().clear();
+	batch.getItems().addAll(kept);
+	return true;
+    }
+
+    /**
+     * Hand a pending batch to the delivery threads.
+     * 
+     * @param batch
+     */
+    protected void execute(final Batch<T> batch) {
+	try {
+	    delivery.execute(new Runnable() {
+
+		@Override
+		public void run() {
+		    deliver(batch);
+		}
+	    });
+	} catch (RejectedExecutionException e) {
+	    pending.decrementAndGet();
+	    drop(batch, "sender is shutting down", null);
+	}
+    }
+
+    /**
+     * Deliver a batch, scheduling a retry if delivery failed for a reason
+     * that may go away.
+     * 
+     * @param batch
+     */
+    protected void deliver(Batch<T> batch) {
+	long wait = getPausedUntil(batch.getKey()) - System.currentTimeMillis();
+	if (wait > 0) {
+	    schedule(batch, wait);
+	    return;
+	}
+	int size = batch.getItems().size();
+	try {
+	    try {
+		send(batch.getKey(), batch.getItems());
+	    } finally {
+		// Items removed by a partial send were delivered.
+		itemsSent.addAndGet(size - batch.getItems().size());
+	    }
+	    batchesSent.incrementAndGet();
+	    itemsSent.addAndGet(batch.getItems().size());
+	    pending.decrementAndGet();
+	    completed(batch.getKey());
+	} catch (HttpStatusCodeException e) {
+	    if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+		rateLimited.incrementAndGet();
+		long delay = getRetryAfter(e, batch.getAttempts());
+		pausedUntil.put(batch.getKey(), System.currentTimeMillis() + delay);
+		LOGGER.debug(name + " rate limit reached for '" + batch.getKey() + "'. Pausing for " + delay + "ms.");
+		retry(batch, delay, e);
+	    } else if (e.getStatusCode().is5xxServerError()) {
+		retry(batch, getBackoff(batch.getAttempts()), e);
+	    } else {
+		pending.decrementAndGet();
+		drop(batch, "provider returned " + e.getStatusCode(), e);
+	    }
+	} catch (ResourceAccessException e) {
+	    retry(batch, getBackoff(batch.getAttempts()), e);
+	} catch (Throwable t) {
+	    pending.decrementAndGet();
+	    drop(batch, "delivery failed", t);
+	}
+    }
+
+    /**
+     * Schedule a failed batch to be resent, or drop it if it has used up its
+     * retries.
+     * 
+     * @param batch
+     * @param delay
+     * @param cause
+     */
+    protected void retry(Batch<T> batch, long delay, Throwable cause) {
+	if (batch.getAttempts() >= maxRetries) {
+	    pending.decrementAndGet();
+	    drop(batch, "it failed after " + maxRetries + " retries", cause);
+	    return;
+	}
+	batch.setAttempts(batch.getAttempts() + 1);
+	itemsRetried.addAndGet(batch.getItems().size());
+	schedule(batch, delay);
+    }
+
+    /**
+     * Hand a pending batch to the delivery threads after a delay.
+     * 
+     * @param batch
+     * @param delay
+     */
+    protected void schedule(final Batch<T> batch, long delay) {
+	try {
+	    scheduler.schedule(new Runnable() {
+
+		@Override
+		public void run() {
+		    execute(batch);
+		}
+	    }, delay, TimeUnit.MILLISECONDS);
+	} catch (RejectedExecutionException e) {
+	    pending.decrementAndGet();
+	    drop(batch, "sender is shutting down", null);
+	}
+    }
+
+    /**
+     * Record that a batch could not be delivered.
+     * 
+     * @param batch
+     * @param reason
+     * @param cause
+     */
+    protected void drop(Batch<T> batch, String reason, Throwable cause) {
+	itemsDropped.addAndGet(batch.getItems().size());
+	LOGGER.warn("Dropped " + batch.getItems().size() + " " + name + " item(s) for '" + batch.getKey()
+		+ "' because " + reason + ".", cause);
+	completed(batch.getKey());
+    }
+
+    /**
+     * Indicates whether delivery for a key is paused by a rate limit.
+     * 
+     * @param key
+     * @return
+     */
+    protected boolean isPaused(String key) {
+	return getPausedUntil(key) > System.currentTimeMillis();
+    }
+
+    /**
+     * Get time until which delivery for a key is paused.
+     * 
+     * @param key
+     * @return
+     */
+    protected long getPausedUntil(String key) {
+	Long until = pausedUntil.get(key);
+	if (until == null) {
+	    return 0;
+	}
+	if (until <= System.currentTimeMillis()) {
+	    pausedUntil.remove(key, until);
+	}
+	return until;
+    }
+
+    /**
+     * Get delay requested by a rate limit response, falling back to backoff
+     * if the provider did not specify one.
+     * 
+     * @param e
+     * @param attempts
+     * @return
+     */
+    protected long getRetryAfter(HttpStatusCodeException e, int attempts) {
+	String header = (e.getResponseHeaders() != null) ? e.getResponseHeaders().getFirst("Retry-After") : null;
+	if (header != null) {
+	    try {
+		return Math.min(Long.parseLong(header.trim()) * 1000, MAX_RETRY_DELAY_MS);
+	    } catch (NumberFormatException nfe) {
+		LOGGER.debug("Ignoring Retry-After header that is not in seconds: " + header);
+	    }
+	}
+	return getBackoff(attempts);
+    }
+
+    /**
+     * Get delay before retrying a batch.
+     * 
+     * @param attempts
+     * @return
+     */
+    protected long getBackoff(int attempts) {
+	return Math.min(INITIAL_RETRY_DELAY_MS << Math.min(attempts, 16), MAX_RETRY_DELAY_MS);
+    }
+
+    /**
+     * Get key used to coalesce an item. A new item replaces waiting items for
+     * the same batch key that have an equal coalescing key. Items with a null
+     * coalescing key are never replaced.
+     * 
+     * @param item
+     * @return
+     */
+    protected Object getCoalescingKey(T item) {
+	return null;
+    }
+
+    /**
+     * Indicates whether an item may be dropped when too many batches are
+     * waiting for delivery.
+     * 
+     * @param item
+     * @return
+     */
+    protected boolean isDroppable(T item) {
+	return true;
+    }
+
+    /**
+     * Send a batch of items for a key to the provider. Spring
+     * {@link HttpStatusCodeException} and {@link ResourceAccessException}
+     * errors are retried as described above. Implementations that send items
+     * one at a time may remove delivered items from the list so that they are
+     * not resent on retry.
+     * 
+     * @param key
+     * @param items
+     * @throws SiteWhereException
+     */
+    protected abstract void send(String key, List<T> items) throws SiteWhereException;
+
+    public long getBatchesSent() {
+	return batchesSent.get();
+    }
+
+    public long getItemsSent() {
+	return itemsSent.get();
+    }
+
+    public long getItemsCoalesced() {
+	return itemsCoalesced.get();
+    }
+
+    public long getItemsRetried() {
+	return itemsRetried.get();
+    }
+
+    public long getItemsDropped() {
+	return itemsDropped.get();
+    }
+
+    public long getRateLimited() {
+	return rateLimited.get();
+    }
+
+    public int getPending() {
+	return pending.get();
+    }
+
+    /**
+     * Items waiting to be sent for a key.
+     * 
+     * @author Derek
+     */
+    protected static class Batch<T> {
+
+	/** Key items are sent to */
+	private String key;
+
+	/** Time batch was created */
+	private long created = System.currentTimeMillis();
+
+	/** Items in batch */
+	private List<T> items = new ArrayList<T>();
+
+	/** Number of times batch has been resent */
+	private int attempts;
+
+	public Batch(String key) {
+	    this.key = key;
+	}
+
+	public String getKey() {
+	    return key;
+	}
+
+	public long getCreated() {
+	    return created;
+	}
+
+	public List<T> getItems() {
+	    return items;
+	}
+
+	public int getAttempts() {
+	    return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+	    this.attempts = attempts;
+	}
+    }
+
+    /** Used for naming delivery threads */
+    private class DeliveryThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere " + name + " Sender " + counter.incrementAndGet());
+	}
+    }
+
+    /** Used for naming scheduler thread */
+    private class SchedulerThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere " + name + " Flusher " + counter.incrementAndGet());
+	}
+    }
+}
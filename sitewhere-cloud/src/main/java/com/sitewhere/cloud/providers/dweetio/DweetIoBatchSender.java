@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.cloud.providers.dweetio;
+
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import com.sitewhere.cloud.providers.CloudBatchSender;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+/**
+ * Sends events to dweet.io things. Dweet.io keeps the latest content for a
+ * thing and limits how often a thing may be updated, so events of the same type
+ * for a thing are coalesced and only the most recent one is sent each time the
+ * batch delay expires. Alerts are never coalesced and are not dropped when too
+ * many batches are waiting for delivery. Events are posted one at a
+ * time and removed once delivered so a rate limit response only resends the
+ * events that were not accepted.
+ * 
+ * @author Derek
+ */
+public class DweetIoBatchSender extends CloudBatchSender<IDeviceEvent> {
+
+    /** Client used to send requests */
+    private RestTemplate client;
+
+    /** Base URI for REST calls */
+    private String apiBase;
+
+    public DweetIoBatchSender(RestTemplate client, String apiBase, long maxBatchDelayMs, int deliveryThreads,
+	    int maxPendingBatches, int maxRetries) {
+	super("Dweet.io", Integer.MAX_VALUE, maxBatchDelayMs, deliveryThreads, maxPendingBatches, maxRetries);
+	this.client = client;
+	this.apiBase = apiBase;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.cloud.providers.CloudBatchSender#getCoalescingKey(java.lang.
+     * Object)
+     */
+    @Override
+    protected Object getCoalescingKey(IDeviceEvent event) {
+	if (event.getEventType() == DeviceEventType.Alert) {
+	    return null;
+	}
+	return event.getEventType();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.cloud.providers.CloudBatchSender#isDroppable(java.lang.Object)
+     */
+    @Override
+    protected boolean isDroppable(IDeviceEvent event) {
+	return event.getEventType() != DeviceEventType.Alert;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.cloud.providers.CloudBatchSender#send(java.lang.String,
+     * java.util.List)
+     */
+    @Override
+    protected void send(String thing, List<IDeviceEvent> events) throws SiteWhereException {
+	while (!events.isEmpty()) {
+	    ResponseEntity<String> response = client.postForEntity(apiBase + thing, events.get(0), String.class);
+	    if (response.getStatusCode() != HttpStatus.OK) {
+		throw new SiteWhereException("Unable to create dweet. Status code was: " + response.getStatusCode());
+	    }
+	    events.remove(0);
+	}
+    }
+}
@@ -7,13 +7,15 @@
  */
 package com.sitewhere.cloud.providers.dweetio;
 
+import java.io.IOException;
+
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.ResourceAccessException;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import com.sitewhere.cloud.providers.CloudBatchSender;
 import com.sitewhere.device.event.processor.FilteredOutboundEventProcessor;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.IDeviceAlert;
@@ -25,7 +27,9 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Implmentation of {@link IOutboundEventProcessor} that sends events to the
- * cloud provider at dweet.io.
+ * cloud provider at dweet.io. Events are sent on a separate pool of delivery
+ * threads. Within the batch delay only the latest event of each type is sent
+ * for a thing, while every alert is sent (see {@link DweetIoBatchSender}).
  * 
  * @author Derek
  */
@@ -37,9 +41,30 @@ public class DweetIoEventProcessor extends FilteredOutboundEventProcessor {
     /** Base URI for REST calls */
     private static final String API_BASE = "https://dweet.io:443/dweet/for/";
 
+    /** Max time in milliseconds to wait for pending dweets on shutdown */
+    private static final long SHUTDOWN_TIMEOUT_MS = 10 * 1000;
+
     /** Use Spring RestTemplate to send requests */
     private RestTemplate client;
 
+    /** Pooled HTTP client used by RestTemplate */
+    private CloseableHttpClient httpClient;
+
+    /** Coalesces and sends dweets */
+    private DweetIoBatchSender sender;
+
+    /** Minimum time in milliseconds between dweets for a thing */
+    private long maxBatchDelayMs = 1000;
+
+    /** Number of threads delivering dweets */
+    private int deliveryThreads = 2;
+
+    /** Maximum number of dweets waiting for delivery */
+    private int maxPendingBatches = 1000;
+
+    /** Number of times a failed dweet is resent */
+    private int maxRetries = 3;
+
     /*
      * (non-Javadoc)
      * 
@@ -52,7 +77,35 @@ public class DweetIoEventProcessor extends FilteredOutboundEventProcessor {
 	// Required for filters.
 	super.start(monitor);
 
-	this.client = new RestTemplate();
+	this.httpClient = CloudBatchSender.createHttpClient(getDeliveryThreads());
+	this.client = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+	this.sender = new DweetIoBatchSender(client, API_BASE, getMaxBatchDelayMs(), getDeliveryThreads(),
+		getMaxPendingBatches(), getMaxRetries());
+	sender.start();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#stop(
+     * com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	super.stop(monitor);
+	if (sender != null) {
+	    sender.stop(SHUTDOWN_TIMEOUT_MS);
+	    sender = null;
+	}
+	if (httpClient != null) {
+	    try {
+		httpClient.close();
+	    } catch (IOException e) {
+		LOGGER.warn("Error closing dweet.io HTTP client.", e);
+	    }
+	    httpClient = null;
+	}
     }
 
     /*
@@ -90,23 +143,13 @@ public class DweetIoEventProcessor extends FilteredOutboundEventProcessor {
     }
 
     /**
-     * Send a Dweet with the measurements information.
+     * Queue a Dweet with the event information for the assignment.
      * 
      * @param event
-     * @return
      * @throws SiteWhereException
      */
-    protected boolean sendDweet(IDeviceEvent event) throws SiteWhereException {
-	try {
-	    String url = API_BASE + event.getDeviceAssignmentToken();
-	    ResponseEntity<String> response = getClient().postForEntity(url, event, String.class);
-	    if (response.getStatusCode() == HttpStatus.OK) {
-		return true;
-	    }
-	    throw new SiteWhereException("Unable to create dweet. Status code was: " + response.getStatusCode());
-	} catch (ResourceAccessException e) {
-	    throw new SiteWhereException(e);
-	}
+    protected void sendDweet(IDeviceEvent event) throws SiteWhereException {
+	sender.add(event.getDeviceAssignmentToken(), event);
     }
 
     /*
@@ -126,4 +169,40 @@ public class DweetIoEventProcessor extends FilteredOutboundEventProcessor {
     public void setClient(RestTemplate client) {
 	this.client = client;
     }
+
+    public long getMaxBatchDelayMs() {
+	return maxBatchDelayMs;
+    }
+
+    public void setMaxBatchDelayMs(long maxBatchDelayMs) {
+	this.maxBatchDelayMs = maxBatchDelayMs;
+    }
+
+    public int getDeliveryThreads() {
+	return deliveryThreads;
+    }
+
+    public void setDeliveryThreads(int deliveryThreads) {
+	this.deliveryThreads = deliveryThreads;
+    }
+
+    public int getMaxPendingBatches() {
+	return maxPendingBatches;
+    }
+
+    public void setMaxPendingBatches(int maxPendingBatches) {
+	this.maxPendingBatches = maxPendingBatches;
+    }
+
+    public int getMaxRetries() {
+	return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+	this.maxRetries = maxRetries;
+    }
+
+    public DweetIoBatchSender getSender() {
+	return sender;
+    }
 }
\ No newline at end of file
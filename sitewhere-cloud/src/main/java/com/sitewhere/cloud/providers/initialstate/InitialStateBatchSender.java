@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.cloud.providers.initialstate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import com.sitewhere.cloud.providers.CloudBatchSender;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Sends events to InitialState.com buckets. Events for a bucket are buffered
+ * and posted together to the bulk events endpoint. Buckets are created on the
+ * delivery thread the first time events are sent to them.
+ * 
+ * @author Derek
+ */
+public class InitialStateBatchSender extends CloudBatchSender<EventCreateRequest> {
+
+    /** Header name for access key */
+    private static final String HEADER_ACCESS_KEY = "X-IS-AccessKey";
+
+    /** Header name for bucket key */
+    private static final String HEADER_BUCKET_KEY = "X-IS-BucketKey";
+
+    /** Client used to send requests */
+    private RestTemplate client;
+
+    /** Base URI for REST calls */
+    private String apiBase;
+
+    /** Account-specific key for using streaming APIs */
+    private String streamingAccessKey;
+
+    /** Bucket names indexed by bucket key */
+    private ConcurrentMap<String, String> bucketNames = new ConcurrentHashMap<String, String>();
+
+    /** Keys of buckets known to exist */
+    private Set<String> createdBuckets = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public InitialStateBatchSender(RestTemplate client, String apiBase, String streamingAccessKey, int maxBatchSize,
+	    long maxBatchDelayMs, int deliveryThreads, int maxPendingBatches, int maxRetries) {
+	super("InitialState", maxBatchSize, maxBatchDelayMs, deliveryThreads, maxPendingBatches, maxRetries);
+	this.client = client;
+	this.apiBase = apiBase;
+	this.streamingAccessKey = streamingAccessKey;
+    }
+
+    /**
+     * Register the name used if a bucket needs to be created.
+     * 
+     * @param bucketKey
+     * @param bucketName
+     */
+    public void registerBucket(String bucketKey, String bucketName) {
+	bucketNames.putIfAbsent(bucketKey, bucketName);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.cloud.providers.CloudBatchSender#send(java.lang.String,
+     * java.util.List)
+     */
+    @Override
+    protected void send(String bucketKey, List<EventCreateRequest> events) throws SiteWhereException {
+	if (!createdBuckets.contains(bucketKey)) {
+	    String name = bucketNames.get(bucketKey);
+	    createBucket(bucketKey, (name != null) ? name : bucketKey);
+	    createdBuckets.add(bucketKey);
+	}
+	createEvents(bucketKey, events);
+    }
+
+    /**
+     * Create a new InitialState bucket. Returns true if created, false if it
+     * already existed, and throws and exception on error.
+     * 
+     * @param bucketKey
+     * @param bucketName
+     * @return
+     * @throws SiteWhereException
+     */
+    protected boolean createBucket(String bucketKey, String bucketName) throws SiteWhereException {
+	BucketCreateRequest request = new BucketCreateRequest();
+	request.setBucketKey(bucketKey);
+	request.setBucketName(bucketName);
+
+	HttpHeaders headers = new HttpHeaders();
+	headers.add(HEADER_ACCESS_KEY, streamingAccessKey);
+	HttpEntity<BucketCreateRequest> entity = new HttpEntity<BucketCreateRequest>(request, headers);
+	ResponseEntity<String> response = client.exchange(apiBase + "buckets", HttpMethod.POST, entity, String.class);
+	if (response.getStatusCode() == HttpStatus.CREATED) {
+	    return true;
+	}
+	if (response.getStatusCode() == HttpStatus.NO_CONTENT) {
+	    return false;
+	}
+	throw new SiteWhereException("Unable to create bucket. Status code was: " + response.getStatusCode());
+    }
+
+    /**
+     * Send a batch of events to the given bucket.
+     * 
+     * @param bucketKey
+     * @param events
+     * @throws SiteWhereException
+     */
+    protected void createEvents(String bucketKey, List<EventCreateRequest> events) throws SiteWhereException {
+	HttpHeaders headers = new HttpHeaders();
+	headers.add(HEADER_ACCESS_KEY, streamingAccessKey);
+	headers.add(HEADER_BUCKET_KEY, bucketKey);
+	HttpEntity<List<EventCreateRequest>> entity = new HttpEntity<List<EventCreateRequest>>(events, headers);
+	ResponseEntity<String> response = client.exchange(apiBase + "events", HttpMethod.POST, entity, String.class);
+	if (response.getStatusCode() != HttpStatus.NO_CONTENT) {
+	    throw new SiteWhereException("Unable to create events. Status code was: " + response.getStatusCode());
+	}
+    }
+}
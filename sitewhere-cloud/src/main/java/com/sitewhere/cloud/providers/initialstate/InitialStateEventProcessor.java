@@ -7,29 +7,25 @@
  */
 package com.sitewhere.cloud.providers.initialstate;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.ResourceAccessException;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 import com.sitewhere.SiteWhere;
+import com.sitewhere.cloud.providers.CloudBatchSender;
 import com.sitewhere.device.event.processor.FilteredOutboundEventProcessor;
 import com.sitewhere.device.marshaling.DeviceAssignmentMarshalHelper;
 import com.sitewhere.rest.model.device.DeviceAssignment;
 import com.sitewhere.spi.SiteWhereException;
-import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.event.IDeviceAlert;
+import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.processor.IOutboundEventProcessor;
@@ -37,7 +33,9 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Implmentation of {@link IOutboundEventProcessor} that sends events to the
- * cloud provider at InitialState.com.
+ * cloud provider at InitialState.com. Events are buffered per bucket and sent
+ * in bulk on a separate pool of delivery threads (see
+ * {@link InitialStateBatchSender}).
  * 
  * @author Derek
  */
@@ -49,20 +47,38 @@ public class InitialStateEventProcessor extends FilteredOutboundEventProcessor {
     /** Base URI for REST calls */
     private static final String API_BASE = "https://groker.initialstate.com/api/";
 
-    /** Header name for access key */
-    private static final String HEADER_ACCESS_KEY = "X-IS-AccessKey";
-
-    /** Header name for bucket key */
-    private static final String HEADER_BUCKET_KEY = "X-IS-BucketKey";
+    /** Max time in milliseconds to wait for pending batches on shutdown */
+    private static final long SHUTDOWN_TIMEOUT_MS = 10 * 1000;
 
     /** Use Spring RestTemplate to send requests */
     private RestTemplate client;
 
+    /** Pooled HTTP client used by RestTemplate */
+    private CloseableHttpClient httpClient;
+
+    /** Buffers and sends events */
+    private InitialStateBatchSender sender;
+
     /** Account-specific key for using streaming APIs */
     private String streamingAccessKey;
 
+    /** Maximum number of events sent to a bucket in one request */
+    private int maxBatchSize = 100;
+
+    /** Maximum time in milliseconds events are buffered */
+    private long maxBatchDelayMs = 1000;
+
+    /** Number of threads delivering events */
+    private int deliveryThreads = 2;
+
+    /** Maximum number of batches waiting for delivery */
+    private int maxPendingBatches = 100;
+
+    /** Number of times a failed batch is resent */
+    private int maxRetries = 5;
+
     /** Cache of assignment tokens to detailed assignment information */
-    private Map<String, DeviceAssignment> assignmentsByToken = new HashMap<String, DeviceAssignment>();
+    private Map<String, DeviceAssignment> assignmentsByToken = new ConcurrentHashMap<String, DeviceAssignment>();
 
     /*
      * (non-Javadoc)
@@ -76,7 +92,35 @@ public class InitialStateEventProcessor extends FilteredOutboundEventProcessor {
 	// Required for filters.
 	super.start(monitor);
 
-	this.client = new RestTemplate();
+	this.httpClient = CloudBatchSender.createHttpClient(getDeliveryThreads());
+	this.client = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+	this.sender = new InitialStateBatchSender(client, API_BASE, getStreamingAccessKey(), getMaxBatchSize(),
+		getMaxBatchDelayMs(), getDeliveryThreads(), getMaxPendingBatches(), getMaxRetries());
+	sender.start();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#stop(
+     * com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	super.stop(monitor);
+	if (sender != null) {
+	    sender.stop(SHUTDOWN_TIMEOUT_MS);
+	    sender = null;
+	}
+	if (httpClient != null) {
+	    try {
+		httpClient.close();
+	    } catch (IOException e) {
+		LOGGER.warn("Error closing InitialState HTTP client.", e);
+	    }
+	    httpClient = null;
+	}
     }
 
     /*
@@ -88,17 +132,15 @@ public class InitialStateEventProcessor extends FilteredOutboundEventProcessor {
      */
     @Override
     public void onMeasurementsNotFiltered(IDeviceMeasurements measurements) throws SiteWhereException {
+	DeviceAssignment assignment = assureBucket(measurements.getDeviceAssignmentToken());
 	Map<String, Double> mx = measurements.getMeasurements();
-	List<EventCreateRequest> events = new ArrayList<EventCreateRequest>();
 	for (String name : mx.keySet()) {
 	    EventCreateRequest event = new EventCreateRequest();
 	    event.setKey(name);
 	    event.setValue(String.valueOf(mx.get(name)));
-	    event.setEpoch(((double) System.currentTimeMillis()) / ((double) 1000));
-	    events.add(event);
+	    event.setEpoch(getEpoch(measurements));
+	    sender.add(assignment.getToken(), event);
 	}
-	DeviceAssignment assignment = assureBucket(measurements.getDeviceAssignmentToken());
-	createEvents(assignment.getToken(), events);
     }
 
     /*
@@ -110,16 +152,13 @@ public class InitialStateEventProcessor extends FilteredOutboundEventProcessor {
      */
     @Override
     public void onLocationNotFiltered(IDeviceLocation location) throws SiteWhereException {
-	List<EventCreateRequest> events = new ArrayList<EventCreateRequest>();
-
 	EventCreateRequest event = new EventCreateRequest();
 	event.setKey("location");
 	event.setValue("" + location.getLatitude() + "," + location.getLongitude());
-	event.setEpoch(((double) System.currentTimeMillis()) / ((double) 1000));
-	events.add(event);
+	event.setEpoch(getEpoch(location));
 
 	DeviceAssignment assignment = assureBucket(location.getDeviceAssignmentToken());
-	createEvents(assignment.getToken(), events);
+	sender.add(assignment.getToken(), event);
     }
 
     /*
@@ -131,20 +170,30 @@ public class InitialStateEventProcessor extends FilteredOutboundEventProcessor {
      */
     @Override
     public void onAlertNotFiltered(IDeviceAlert alert) throws SiteWhereException {
-	List<EventCreateRequest> events = new ArrayList<EventCreateRequest>();
-
 	EventCreateRequest event = new EventCreateRequest();
 	event.setKey(alert.getType());
 	event.setValue(alert.getMessage());
-	event.setEpoch(((double) System.currentTimeMillis()) / ((double) 1000));
-	events.add(event);
+	event.setEpoch(getEpoch(alert));
 
 	DeviceAssignment assignment = assureBucket(alert.getDeviceAssignmentToken());
-	createEvents(assignment.getToken(), events);
+	sender.add(assignment.getToken(), event);
+    }
+
+    /**
+     * Get event time in seconds since epoch. Uses the event date so that
+     * buffering does not shift event times.
+     * 
+     * @param event
+     * @return
+     */
+    protected double getEpoch(IDeviceEvent event) {
+	long millis = (event.getEventDate() != null) ? event.getEventDate().getTime() : System.currentTimeMillis();
+	return ((double) millis) / ((double) 1000);
     }
 
     /**
-     * Assure that a bucket is created for the given assignment.
+     * Assure that a bucket is registered for the given assignment. The bucket
+     * is created on the delivery thread before events are first sent to it.
      * 
      * @param assignmentToken
      * @return
@@ -168,74 +217,12 @@ public class InitialStateEventProcessor extends FilteredOutboundEventProcessor {
 	DeviceAssignment converted = helper.convert(assignment,
 		SiteWhere.getServer().getAssetModuleManager(getTenant()));
 
-	createBucket(converted.getToken(),
+	sender.registerBucket(converted.getToken(),
 		converted.getAssetName() + " (" + converted.getDevice().getAssetName() + ")");
 	assignmentsByToken.put(assignmentToken, converted);
 	return converted;
     }
 
-    /**
-     * Create a new InitialState bucket. Returns true if created, false if it
-     * already existed, and throws and exception on error.
-     * 
-     * @param bucketKey
-     * @param bucketName
-     * @return
-     * @throws SiteWhereException
-     */
-    protected boolean createBucket(String bucketKey, String bucketName) throws SiteWhereException {
-	try {
-	    BucketCreateRequest request = new BucketCreateRequest();
-	    request.setBucketKey(bucketKey);
-	    request.setBucketName(bucketName);
-
-	    HttpHeaders headers = new HttpHeaders();
-	    headers.add(HEADER_ACCESS_KEY, getStreamingAccessKey());
-	    HttpEntity<BucketCreateRequest> entity = new HttpEntity<BucketCreateRequest>(request, headers);
-	    String url = API_BASE + "buckets";
-	    Map<String, String> vars = new HashMap<String, String>();
-	    ResponseEntity<String> response = getClient().exchange(url, HttpMethod.POST, entity, String.class, vars);
-	    if (response.getStatusCode() == HttpStatus.CREATED) {
-		return true;
-	    }
-	    if (response.getStatusCode() == HttpStatus.NO_CONTENT) {
-		return false;
-	    }
-	    throw new SiteWhereException("Unable to create bucket. Status code was: " + response.getStatusCode());
-	} catch (ResourceAccessException e) {
-	    if (e.getCause() instanceof SiteWhereSystemException) {
-		throw (SiteWhereSystemException) e.getCause();
-	    }
-	    throw new RuntimeException(e);
-	}
-    }
-
-    /**
-     * Send a batch of events to the given bucket.
-     * 
-     * @param bucketKey
-     * @param events
-     * @return
-     * @throws SiteWhereException
-     */
-    protected boolean createEvents(String bucketKey, List<EventCreateRequest> events) throws SiteWhereException {
-	try {
-	    HttpHeaders headers = new HttpHeaders();
-	    headers.add(HEADER_ACCESS_KEY, getStreamingAccessKey());
-	    headers.add(HEADER_BUCKET_KEY, bucketKey);
-	    HttpEntity<List<EventCreateRequest>> entity = new HttpEntity<List<EventCreateRequest>>(events, headers);
-	    String url = API_BASE + "events";
-	    Map<String, String> vars = new HashMap<String, String>();
-	    ResponseEntity<String> response = getClient().exchange(url, HttpMethod.POST, entity, String.class, vars);
-	    if (response.getStatusCode() == HttpStatus.NO_CONTENT) {
-		return true;
-	    }
-	    throw new SiteWhereException("Unable to create event. Status code was: " + response.getStatusCode());
-	} catch (ResourceAccessException e) {
-	    throw new SiteWhereException(e);
-	}
-    }
-
     @Override
     public Logger getLogger() {
 	return LOGGER;
@@ -256,4 +243,48 @@ public class InitialStateEventProcessor extends FilteredOutboundEventProcessor {
     public void setStreamingAccessKey(String streamingAccessKey) {
 	this.streamingAccessKey = streamingAccessKey;
     }
+
+    public int getMaxBatchSize() {
+	return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+	this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getMaxBatchDelayMs() {
+	return maxBatchDelayMs;
+    }
+
+    public void setMaxBatchDelayMs(long maxBatchDelayMs) {
+	this.maxBatchDelayMs = maxBatchDelayMs;
+    }
+
+    public int getDeliveryThreads() {
+	return deliveryThreads;
+    }
+
+    public void setDeliveryThreads(int deliveryThreads) {
+	this.deliveryThreads = deliveryThreads;
+    }
+
+    public int getMaxPendingBatches() {
+	return maxPendingBatches;
+    }
+
+    public void setMaxPendingBatches(int maxPendingBatches) {
+	this.maxPendingBatches = maxPendingBatches;
+    }
+
+    public int getMaxRetries() {
+	return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+	this.maxRetries = maxRetries;
+    }
+
+    public InitialStateBatchSender getSender() {
+	return sender;
+    }
 }
\ No newline at end of file
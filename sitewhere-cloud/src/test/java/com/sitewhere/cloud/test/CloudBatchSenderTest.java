@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.cloud.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sitewhere.cloud.providers.CloudBatchSender;
+import com.sitewhere.cloud.providers.dweetio.DweetIoBatchSender;
+import com.sitewhere.cloud.providers.initialstate.EventCreateRequest;
+import com.sitewhere.cloud.providers.initialstate.InitialStateBatchSender;
+import com.sitewhere.cloud.test.Benchmarks.Benchmark;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests batching, coalescing and rate limit handling of
+ * {@link CloudBatchSender} implementations against a local mock HTTP server.
+ * 
+ * @author Derek
+ */
+public class CloudBatchSenderTest {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Skips benchmarks unless enabled */
+    @Rule
+    public Benchmarks benchmarks = new Benchmarks();
+
+    /** Used to parse request bodies */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Mock provider */
+    private HttpServer server;
+
+    /** Handles requests to mock provider */
+    private MockProvider provider;
+
+    /** Pooled client */
+    private CloseableHttpClient httpClient;
+
+    /** Client used by senders */
+    private RestTemplate client;
+
+    /** Base URL of mock provider */
+    private String base;
+
+    @Before
+    public void setUp() throws Exception {
+	provider = new MockProvider();
+	server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+	server.createContext("/", provider);
+	server.setExecutor(Executors.newCachedThreadPool());
+	server.start();
+	base = "http://localhost:" + server.getAddress().getPort() + "/";
+	httpClient = CloudBatchSender.createHttpClient(4);
+	client = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	httpClient.close();
+	server.stop(0);
+    }
+
+    @Test
+    public void testInitialStateBulkEvents() throws Exception {
+	InitialStateBatchSender sender = new InitialStateBatchSender(client, base + "api/", "key", 50, 100, 2, 100, 3);
+	sender.start();
+	sender.registerBucket("bucket-a", "Bucket A");
+	sender.registerBucket("bucket-b", "Bucket B");
+	for (int i = 0; i < 120; i++) {
+	    sender.add((i % 2) == 0 ? "bucket-a" : "bucket-b", createEvent(i));
+	}
+	sender.stop(5000);
+
+	int buckets = 0;
+	int events = 0;
+	int requests = 0;
+	for (Request request : provider.getRequests()) {
+	    assertEquals("key", request.accessKey);
+	    if (request.path.equals("/api/buckets")) {
+		buckets++;
+	    } else {
+		assertEquals("/api/events", request.path);
+		assertTrue(request.bucketKey.startsWith("bucket-"));
+		assertTrue(request.body.size() <= 50);
+		events += request.body.size();
+		requests++;
+	    }
+	}
+	assertEquals(2, buckets);
+	assertEquals(120, events);
+	assertTrue(requests <= 4);
+	assertEquals(120, sender.getItemsSent());
+	assertEquals(0, sender.getItemsDropped());
+    }
+
+    @Test
+    public void testHonorsRetryAfter() throws Exception {
+	provider.script(429, 204);
+	InitialStateBatchSender sender = new InitialStateBatchSender(client, base + "api/", "key", 10, 50, 2, 100, 3);
+	sender.start();
+	sender.registerBucket("bucket-a", "Bucket A");
+	long start = System.currentTimeMillis();
+	for (int i = 0; i < 10; i++) {
+	    sender.add("bucket-a", createEvent(i));
+	}
+	sender.stop(5000);
+
+	assertEquals(1, sender.getRateLimited());
+	assertEquals(10, sender.getItemsSent());
+	Request last = provider.getRequests().get(provider.getRequests().size() - 1);
+	assertEquals("/api/events", last.path);
+	assertTrue(last.received - start >= 1000);
+    }
+
+    @Test
+    public void testRetriesServerErrors() throws Exception {
+	provider.script(204, 500, 503, 204);
+	InitialStateBatchSender sender = new InitialStateBatchSender(client, base + "api/", "key", 10, 50, 1, 100, 3);
+	sender.start();
+	for (int i = 0; i < 10; i++) {
+	    sender.add("bucket-a", createEvent(i));
+	}
+	sender.stop(10000);
+
+	assertEquals(10, sender.getItemsSent());
+	assertEquals(20, sender.getItemsRetried());
+	assertEquals(0, sender.getItemsDropped());
+    }
+
+    @Test
+    public void testDropsClientErrors() throws Exception {
+	provider.script(204, 400);
+	InitialStateBatchSender sender = new InitialStateBatchSender(client, base + "api/", "key", 10, 50, 1, 100, 3);
+	sender.start();
+	for (int i = 0; i < 10; i++) {
+	    sender.add("bucket-a", createEvent(i));
+	}
+	sender.stop(5000);
+
+	assertEquals(0, sender.getItemsSent());
+	assertEquals(0, sender.getItemsRetried());
+	assertEquals(10, sender.getItemsDropped());
+    }
+
+    @Test
+    public void testDweetCoalescesPerThing() throws Exception {
+	DweetIoBatchSender sender = new DweetIoBatchSender(client, base + "dweet/for/", 200, 2, 100, 3);
+	sender.start();
+	for (int i = 0; i < 50; i++) {
+	    sender.add("thing-" + (i % 2), createMeasurements("thing-" + (i % 2), i));
+	}
+	sender.stop(5000);
+
+	assertEquals(2, provider.getRequests().size());
+	assertEquals(48, sender.getItemsCoalesced());
+	for (Request request : provider.getRequests()) {
+	    double seq = request.body.get("measurements").get("seq").asDouble();
+	    assertEquals(request.path.endsWith("thing-0") ? 48.0 : 49.0, seq, 0);
+	}
+    }
+
+    @Test
+    public void testDweetSendsEveryAlert() throws Exception {
+	provider.script(200, 429);
+	DweetIoBatchSender sender = new DweetIoBatchSender(client, base + "dweet/for/", 200, 1, 100, 3);
+	sender.start();
+	sender.add("thing", createMeasurements("thing", 1));
+	sender.add("thing", createAlert("thing", "first"));
+	sender.add("thing", createAlert("thing", "second"));
+	sender.add("thing", createMeasurements("thing", 2));
+	sender.stop(5000);
+
+	// Alert accepted before the rate limit is not resent.
+	assertEquals(1, sender.getItemsCoalesced());
+	assertEquals(1, sender.getRateLimited());
+	assertEquals(3, sender.getItemsSent());
+	assertEquals(3, provider.getRequests().size());
+	assertEquals("first", provider.getRequests().get(0).body.get("message").asText());
+	assertEquals("second", provider.getRequests().get(1).body.get("message").asText());
+	assertEquals(2.0, provider.getRequests().get(2).body.get("measurements").get("seq").asDouble(), 0);
+    }
+
+    @Test
+    public void testRetryDoesNotOverwriteNewerDweet() throws Exception {
+	provider.script(500);
+	DweetIoBatchSender sender = new DweetIoBatchSender(client, base + "dweet/for/", 50, 2, 100, 3);
+	sender.start();
+	sender.add("thing", createMeasurements("thing", 1));
+
+	// Newer value arrives while the first one waits to be retried.
+	Thread.sleep(300);
+	sender.add("thing", createMeasurements("thing", 2));
+	Thread.sleep(300);
+	assertEquals(0, provider.getRequests().size());
+	sender.stop(5000);
+
+	assertEquals(2, provider.getRequests().size());
+	assertEquals(1.0, provider.getRequests().get(0).body.get("measurements").get("seq").asDouble(), 0);
+	assertEquals(2.0, provider.getRequests().get(1).body.get("measurements").get("seq").asDouble(), 0);
+	assertEquals(0, sender.getItemsDropped());
+    }
+
+    @Test
+    public void testAlertsSurvivePendingLimit() throws Exception {
+	provider.setLatencyMs(100);
+	DweetIoBatchSender sender = new DweetIoBatchSender(client, base + "dweet/for/", 60000, 1, 1, 3);
+	sender.start();
+	for (int i = 0; i < 5; i++) {
+	    sender.add("thing-" + i, createMeasurements("thing-" + i, i));
+	    sender.add("thing-" + i, createAlert("thing-" + i, "alert-" + i));
+	}
+	sender.stop(5000);
+
+	int alerts = 0;
+	int measurements = 0;
+	for (Request request : provider.getRequests()) {
+	    if (request.body.has("message")) {
+		alerts++;
+	    } else {
+		measurements++;
+	    }
+	}
+	assertEquals(5, alerts);
+	assertTrue(sender.getItemsDropped() > 0);
+	assertEquals(5, measurements + sender.getItemsDropped());
+    }
+
+    @Test
+    @Benchmark
+    public void benchmarkSlowProviderDoesNotBlockCaller() throws Exception {
+	provider.setLatencyMs(500);
+	InitialStateBatchSender sender = new InitialStateBatchSender(client, base + "api/", "key", 10, 50, 2, 20, 3);
+	sender.start();
+	long start = System.currentTimeMillis();
+	for (int i = 0; i < 1000; i++) {
+	    sender.add("bucket-" + (i % 10), createEvent(i));
+	}
+	long elapsed = System.currentTimeMillis() - start;
+	sender.stop(100);
+
+	assertTrue(elapsed < 500);
+	assertTrue(sender.getItemsDropped() > 0);
+	LOGGER.info("Queued 1000 events for slow provider in " + elapsed + "ms, dropped "
+		+ sender.getItemsDropped() + " over pending limit.");
+    }
+
+    /**
+     * Create an InitialState event.
+     * 
+     * @param seq
+     * @return
+     */
+    protected static EventCreateRequest createEvent(int seq) {
+	EventCreateRequest event = new EventCreateRequest();
+	event.setKey("seq");
+	event.setValue(String.valueOf(seq));
+	event.setEpoch(seq);
+	return event;
+    }
+
+    /**
+     * Create a measurements event.
+     * 
+     * @param assignment
+     * @param seq
+     * @return
+     */
+    protected static DeviceMeasurements createMeasurements(String assignment, int seq) {
+	DeviceMeasurements mxs = new DeviceMeasurements();
+	mxs.setDeviceAssignmentToken(assignment);
+	mxs.setEventDate(new Date());
+	mxs.addOrReplaceMeasurement("seq", (double) seq);
+	return mxs;
+    }
+
+    /**
+     * Create an alert event.
+     * 
+     * @param assignment
+     * @param message
+     * @return
+     */
+    protected static DeviceAlert createAlert(String assignment, String message) {
+	DeviceAlert alert = new DeviceAlert();
+	alert.setDeviceAssignmentToken(assignment);
+	alert.setEventDate(new Date());
+	alert.setType("test");
+	alert.setMessage(message);
+	return alert;
+    }
+
+    /**
+     * Request received by mock provider.
+     */
+    private static class Request {
+
+	/** Request path */
+	private String path;
+
+	/** Access key header */
+	private String accessKey;
+
+	/** Bucket key header */
+	private String bucketKey;
+
+	/** Parsed body */
+	private JsonNode body;
+
+	/** Time received */
+	private long received = System.currentTimeMillis();
+    }
+
+    /**
+     * Records successful requests and answers with scripted status codes.
+     * Responds with the success code for the path once the script is used up.
+     */
+    private static class MockProvider implements HttpHandler {
+
+	/** Status codes to return in order */
+	private ConcurrentLinkedQueue<Integer> script = new ConcurrentLinkedQueue<Integer>();
+
+	/** Requests that were accepted */
+	private List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+
+	/** Time to wait before responding */
+	private volatile long latencyMs;
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.
+	 * HttpExchange)
+	 */
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+	    Request request = new Request();
+	    request.path = exchange.getRequestURI().getPath();
+	    request.accessKey = exchange.getRequestHeaders().getFirst("X-IS-AccessKey");
+	    request.bucketKey = exchange.getRequestHeaders().getFirst("X-IS-BucketKey");
+	    InputStream in = exchange.getRequestBody();
+	    request.body = MAPPER.readTree(IOUtils.toByteArray(in));
+	    if (latencyMs > 0) {
+		try {
+		    Thread.sleep(latencyMs);
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	    Integer status = script.poll();
+	    if (status == null) {
+		status = request.path.startsWith("/dweet") ? 200 : (request.path.endsWith("buckets") ? 201 : 204);
+	    }
+	    if (status < 300) {
+		requests.add(request);
+	    }
+	    if (status == 429) {
+		exchange.getResponseHeaders().add("Retry-After", "1");
+	    }
+	    exchange.sendResponseHeaders(status, -1);
+	    exchange.close();
+	}
+
+	/**
+	 * Set status codes returned for the next requests.
+	 *
+	 * @param codes
+	 */
+	public void script(Integer... codes) {
+	    Collections.addAll(script, codes);
+	}
+
+	public List<Request> getRequests() {
+	    return requests;
+	}
+
+	public void setLatencyMs(long latencyMs) {
+	    this.latencyMs = latencyMs;
+	}
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.device.charting;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.sitewhere.spi.device.charting.ISampledChartSeries;
+
+/**
+ * Sampled chart series implementation.
+ * 
+ * @author Derek
+ */
+@JsonInclude(Include.NON_NULL)
+public class SampledChartSeries implements ISampledChartSeries {
+
+    /** Serial version UID */
+    private static final long serialVersionUID = -4127903371282046618L;
+
+    /** Measurement id */
+    private String measurementId;
+
+    /** Number of source values */
+    private long sourceCount;
+
+    /** Point times */
+    private long[] times;
+
+    /** Point values */
+    private double[] values;
+
+    /** Point minimum values */
+    private double[] mins;
+
+    /** Point maximum values */
+    private double[] maxs;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.charting.ISampledChartSeries#getMeasurementId()
+     */
+    @Override
+    public String getMeasurementId() {
+	return measurementId;
+    }
+
+    public void setMeasurementId(String measurementId) {
+	this.measurementId = measurementId;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.charting.ISampledChartSeries#getSourceCount()
+     */
+    @Override
+    public long getSourceCount() {
+	return sourceCount;
+    }
+
+    public void setSourceCount(long sourceCount) {
+	this.sourceCount = sourceCount;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.charting.ISampledChartSeries#getTimes()
+     */
+    @Override
+    public long[] getTimes() {
+	return times;
+    }
+
+    public void setTimes(long[] times) {
+	this.times = times;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.charting.ISampledChartSeries#getValues()
+     */
+    @Override
+    public double[] getValues() {
+	return values;
+    }
+
+    public void setValues(double[] values) {
+	this.values = values;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.charting.ISampledChartSeries#getMins()
+     */
+    @Override
+    public double[] getMins() {
+	return mins;
+    }
+
+    public void setMins(double[] mins) {
+	this.mins = mins;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.charting.ISampledChartSeries#getMaxs()
+     */
+    @Override
+    public double[] getMaxs() {
+	return maxs;
+    }
+
+    public void setMaxs(double[] maxs) {
+	this.maxs = maxs;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.device.communication;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.sitewhere.spi.device.command.RegistrationFailureReason;
+import com.sitewhere.spi.device.command.RegistrationSuccessReason;
+import com.sitewhere.spi.device.communication.IDeviceRegistrationResult;
+
+/**
+ * Model object for the outcome of a device registration.
+ * 
+ * @author Derek
+ */
+@JsonInclude(Include.NON_NULL)
+public class DeviceRegistrationResult implements IDeviceRegistrationResult, Serializable {
+
+    /** Serial version UID */
+    private static final long serialVersionUID = -1981543062409528402L;
+
+    /** Hardware id of device */
+    private String hardwareId;
+
+    /** Indicates registration succeeded */
+    private boolean successful;
+
+    /** Reason for success */
+    private RegistrationSuccessReason successReason;
+
+    /** Reason for failure */
+    private RegistrationFailureReason failureReason;
+
+    /** Message explaining failure */
+    private String errorMessage;
+
+    /** Token for current assignment */
+    private String assignmentToken;
+
+    public DeviceRegistrationResult() {
+    }
+
+    public DeviceRegistrationResult(String hardwareId) {
+	this.hardwareId = hardwareId;
+    }
+
+    /**
+     * Mark the registration as successful.
+     * 
+     * @param reason
+     * @param assignmentToken
+     */
+    public void succeeded(RegistrationSuccessReason reason, String assignmentToken) {
+	this.successful = true;
+	this.successReason = reason;
+	this.failureReason = null;
+	this.errorMessage = null;
+	this.assignmentToken = assignmentToken;
+    }
+
+    /**
+     * Mark the registration as failed.
+     * 
+     * @param reason
+     * @param errorMessage
+     */
+    public void failed(RegistrationFailureReason reason, String errorMessage) {
+	this.successful = false;
+	this.successReason = null;
+	this.failureReason = reason;
+	this.errorMessage = errorMessage;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.communication.IDeviceRegistrationResult#
+     * getHardwareId()
+     */
+    @Override
+    public String getHardwareId() {
+	return hardwareId;
+    }
+
+    public void setHardwareId(String hardwareId) {
+	this.hardwareId = hardwareId;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.communication.IDeviceRegistrationResult#
+     * isSuccessful()
+     */
+    @Override
+    public boolean isSuccessful() {
+	return successful;
+    }
+
+    public void setSuccessful(boolean successful) {
+	this.successful = successful;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.communication.IDeviceRegistrationResult#
+     * getSuccessReason()
+     */
+    @Override
+    public RegistrationSuccessReason getSuccessReason() {
+	return successReason;
+    }
+
+    public void setSuccessReason(RegistrationSuccessReason successReason) {
+	this.successReason = successReason;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.communication.IDeviceRegistrationResult#
+     * getFailureReason()
+     */
+    @Override
+    public RegistrationFailureReason getFailureReason() {
+	return failureReason;
+    }
+
+    public void setFailureReason(RegistrationFailureReason failureReason) {
+	this.failureReason = failureReason;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.communication.IDeviceRegistrationResult#
+     * getErrorMessage()
+     */
+    @Override
+    public String getErrorMessage() {
+	return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+	this.errorMessage = errorMessage;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.communication.IDeviceRegistrationResult#
+     * getAssignmentToken()
+     */
+    @Override
+    public String getAssignmentToken() {
+	return assignmentToken;
+    }
+
+    public void setAssignmentToken(String assignmentToken) {
+	this.assignmentToken = assignmentToken;
+    }
+}
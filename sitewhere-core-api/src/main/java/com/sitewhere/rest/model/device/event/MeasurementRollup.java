@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.device.event;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.sitewhere.rest.model.datatype.JsonDateSerializer;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
+
+/**
+ * Model object for a measurement rollup.
+ * 
+ * @author Derek
+ */
+@JsonInclude(Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MeasurementRollup implements IMeasurementRollup, Serializable {
+
+    /** Serial version UID */
+    private static final long serialVersionUID = 6338209384920188437L;
+
+    /** Assignment token */
+    private String deviceAssignmentToken;
+
+    /** Aggregated measurement name */
+    private String measurementName;
+
+    /** Window size in seconds */
+    private long windowSize;
+
+    /** Window start */
+    private Date windowStart;
+
+    /** Window end */
+    private Date windowEnd;
+
+    /** Number of values */
+    private long count;
+
+    /** Minimum value */
+    private double min;
+
+    /** Maximum value */
+    private double max;
+
+    /** Sum of values */
+    private double sum;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.event.IMeasurementRollup#getDeviceAssignmentToken
+     * ()
+     */
+    public String getDeviceAssignmentToken() {
+	return deviceAssignmentToken;
+    }
+
+    public void setDeviceAssignmentToken(String deviceAssignmentToken) {
+	this.deviceAssignmentToken = deviceAssignmentToken;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IMeasurementRollup#getMeasurementName()
+     */
+    public String getMeasurementName() {
+	return measurementName;
+    }
+
+    public void setMeasurementName(String measurementName) {
+	this.measurementName = measurementName;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IMeasurementRollup#getWindowSize()
+     */
+    public long getWindowSize() {
+	return windowSize;
+    }
+
+    public void setWindowSize(long windowSize) {
+	this.windowSize = windowSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IMeasurementRollup#getWindowStart()
+     */
+    @JsonSerialize(using = JsonDateSerializer.class)
+    public Date getWindowStart() {
+	return windowStart;
+    }
+
+    public void setWindowStart(Date windowStart) {
+	this.windowStart = windowStart;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IMeasurementRollup#getWindowEnd()
+     */
+    @JsonSerialize(using = JsonDateSerializer.class)
+    public Date getWindowEnd() {
+	return windowEnd;
+    }
+
+    public void setWindowEnd(Date windowEnd) {
+	this.windowEnd = windowEnd;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IMeasurementRollup#getCount()
+     */
+    public long getCount() {
+	return count;
+    }
+
+    public void setCount(long count) {
+	this.count = count;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IMeasurementRollup#getMin()
+     */
+    public double getMin() {
+	return min;
+    }
+
+    public void setMin(double min) {
+	this.min = min;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IMeasurementRollup#getMax()
+     */
+    public double getMax() {
+	return max;
+    }
+
+    public void setMax(double max) {
+	this.max = max;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IMeasurementRollup#getSum()
+     */
+    public double getSum() {
+	return sum;
+    }
+
+    public void setSum(double sum) {
+	this.sum = sum;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IMeasurementRollup#getAverage()
+     */
+    public double getAverage() {
+	return (count > 0) ? (sum / count) : 0;
+    }
+}
\ No newline at end of file
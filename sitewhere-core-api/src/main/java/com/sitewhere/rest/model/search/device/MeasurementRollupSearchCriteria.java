@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.search.device;
+
+import java.util.Date;
+
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
+import com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria;
+
+/**
+ * Default implementation of {@link IMeasurementRollupSearchCriteria}.
+ * 
+ * @author Derek
+ */
+public class MeasurementRollupSearchCriteria extends DateRangeSearchCriteria
+	implements IMeasurementRollupSearchCriteria {
+
+    /** Only return results for the given measurement name */
+    private String measurementName;
+
+    /** Only return results with the given window size */
+    private Long windowSize;
+
+    public MeasurementRollupSearchCriteria(int pageNumber, int pageSize, Date startDate, Date endDate) {
+	super(pageNumber, pageSize, startDate, endDate);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria#
+     * getMeasurementName()
+     */
+    public String getMeasurementName() {
+	return measurementName;
+    }
+
+    public void setMeasurementName(String measurementName) {
+	this.measurementName = measurementName;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria#
+     * getWindowSize()
+     */
+    public Long getWindowSize() {
+	return windowSize;
+    }
+
+    public void setWindowSize(Long windowSize) {
+	this.windowSize = windowSize;
+    }
+}
\ No newline at end of file
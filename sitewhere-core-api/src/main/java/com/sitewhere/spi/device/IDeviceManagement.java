@@ -68,6 +68,17 @@ public interface IDeviceManagement extends ITenantLifecycleComponent {
      */
     public IDeviceSpecification getDeviceSpecificationByToken(String token) throws SiteWhereException;
 
+    /**
+     * Gets device specifications for a list of tokens in a single request
+     * where the underlying store supports it. Tokens with no matching
+     * specification are skipped.
+     * 
+     * @param tokens
+     * @return
+     * @throws SiteWhereException
+     */
+    public List<IDeviceSpecification> getDeviceSpecificationsByTokens(List<String> tokens) throws SiteWhereException;
+
     /**
      * Update an existing device specification.
      * 
@@ -170,6 +181,17 @@ public interface IDeviceManagement extends ITenantLifecycleComponent {
      */
     public IDevice createDevice(IDeviceCreateRequest device) throws SiteWhereException;
 
+    /**
+     * Create many devices in as few requests to the underlying store as
+     * possible. Requests for hardware ids that are already in use are skipped
+     * rather than failing the batch.
+     * 
+     * @param requests
+     * @return devices that were created
+     * @throws SiteWhereException
+     */
+    public List<IDevice> createDevices(List<IDeviceCreateRequest> requests) throws SiteWhereException;
+
     /**
      * Gets a device by unique hardware id.
      * 
@@ -179,6 +201,17 @@ public interface IDeviceManagement extends ITenantLifecycleComponent {
      */
     public IDevice getDeviceByHardwareId(String hardwareId) throws SiteWhereException;
 
+    /**
+     * Gets devices for a list of hardware ids in a single request where the
+     * underlying store supports it. Hardware ids with no matching device are
+     * skipped.
+     * 
+     * @param hardwareIds
+     * @return
+     * @throws SiteWhereException
+     */
+    public List<IDevice> getDevicesByHardwareIds(List<String> hardwareIds) throws SiteWhereException;
+
     /**
      * Update device information.
      * 
@@ -249,6 +282,18 @@ public interface IDeviceManagement extends ITenantLifecycleComponent {
      */
     public IDeviceAssignment createDeviceAssignment(IDeviceAssignmentCreateRequest request) throws SiteWhereException;
 
+    /**
+     * Create assignments for many devices in as few requests to the underlying
+     * store as possible. Requests for devices that do not exist or are already
+     * assigned are skipped rather than failing the batch.
+     * 
+     * @param requests
+     * @return assignments that were created
+     * @throws SiteWhereException
+     */
+    public List<IDeviceAssignment> createDeviceAssignments(List<IDeviceAssignmentCreateRequest> requests)
+	    throws SiteWhereException;
+
     /**
      * Get a device assignment by unique token.
      * 
@@ -258,6 +303,17 @@ public interface IDeviceManagement extends ITenantLifecycleComponent {
      */
     public IDeviceAssignment getDeviceAssignmentByToken(String token) throws SiteWhereException;
 
+    /**
+     * Gets device assignments for a list of tokens in a single request where
+     * the underlying store supports it. Tokens with no matching assignment are
+     * skipped.
+     * 
+     * @param tokens
+     * @return
+     * @throws SiteWhereException
+     */
+    public List<IDeviceAssignment> getDeviceAssignmentsByTokens(List<String> tokens) throws SiteWhereException;
+
     /**
      * Delete a device assignment. Depending on 'force' flag the assignment will
      * be marked for delete or actually be deleted.
@@ -462,6 +518,16 @@ public interface IDeviceManagement extends ITenantLifecycleComponent {
      */
     public ISite getSiteByToken(String token) throws SiteWhereException;
 
+    /**
+     * Gets sites for a list of tokens in a single request where the underlying
+     * store supports it. Tokens with no matching site are skipped.
+     * 
+     * @param tokens
+     * @return
+     * @throws SiteWhereException
+     */
+    public List<ISite> getSitesByTokens(List<String> tokens) throws SiteWhereException;
+
     /**
      * Get a list of all sites.
      * 
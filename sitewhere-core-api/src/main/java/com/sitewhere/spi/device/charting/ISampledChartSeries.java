@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device.charting;
+
+import java.io.Serializable;
+
+/**
+ * Chart series for a measurement that has been reduced to a bounded number of
+ * points. Values are held in parallel primitive arrays indexed by point.
+ * 
+ * @author Derek
+ */
+public interface ISampledChartSeries extends Serializable {
+
+    /**
+     * Get id a measurement represented by the series.
+     * 
+     * @return
+     */
+    public String getMeasurementId();
+
+    /**
+     * Get number of values in the source data before sampling.
+     * 
+     * @return
+     */
+    public long getSourceCount();
+
+    /**
+     * Get point times in milliseconds, in ascending order.
+     * 
+     * @return
+     */
+    public long[] getTimes();
+
+    /**
+     * Get value for each point.
+     * 
+     * @return
+     */
+    public double[] getValues();
+
+    /**
+     * Get minimum value for each point. Null if series was not sampled into
+     * buckets.
+     * 
+     * @return
+     */
+    public double[] getMins();
+
+    /**
+     * Get maximum value for each point. Null if series was not sampled into
+     * buckets.
+     * 
+     * @return
+     */
+    public double[] getMaxs();
+}
\ No newline at end of file
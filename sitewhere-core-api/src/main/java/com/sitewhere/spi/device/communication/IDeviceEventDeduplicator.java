@@ -1,6 +1,7 @@
 package com.sitewhere.spi.device.communication;
 
 import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.server.lifecycle.ITenantLifecycleComponent;
 
 /**
@@ -20,4 +21,13 @@ public interface IDeviceEventDeduplicator extends ITenantLifecycleComponent {
      * @throws SiteWhereException
      */
     public boolean isDuplicate(IDecodedDeviceRequest<?> request) throws SiteWhereException;
+
+    /**
+     * Called after an event has been persisted so that it can be taken into
+     * account by later duplicate checks.
+     * 
+     * @param event
+     * @throws SiteWhereException
+     */
+    public void onEventPersisted(IDeviceEvent event) throws SiteWhereException;
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device.communication;
+
+import com.sitewhere.spi.device.command.RegistrationFailureReason;
+import com.sitewhere.spi.device.command.RegistrationSuccessReason;
+
+/**
+ * Outcome of handling a registration request for a single device.
+ * 
+ * @author Derek
+ */
+public interface IDeviceRegistrationResult {
+
+    /**
+     * Get hardware id of device the request applied to.
+     * 
+     * @return
+     */
+    public String getHardwareId();
+
+    /**
+     * Indicates whether the device is registered and assigned.
+     * 
+     * @return
+     */
+    public boolean isSuccessful();
+
+    /**
+     * Get reason for a successful registration.
+     * 
+     * @return
+     */
+    public RegistrationSuccessReason getSuccessReason();
+
+    /**
+     * Get reason for a failed registration if it is one that is reported to
+     * the device.
+     * 
+     * @return
+     */
+    public RegistrationFailureReason getFailureReason();
+
+    /**
+     * Get message explaining a failed registration.
+     * 
+     * @return
+     */
+    public String getErrorMessage();
+
+    /**
+     * Get token for current assignment of a registered device.
+     * 
+     * @return
+     */
+    public String getAssignmentToken();
+}
@@ -34,6 +34,13 @@ public interface IInboundEventSource<T> extends ITenantLifecycleComponent {
      */
     public void setDeviceEventDecoder(IDeviceEventDecoder<T> decoder);
 
+    /**
+     * Get the device event deduplicator.
+     * 
+     * @return
+     */
+    public IDeviceEventDeduplicator getDeviceEventDeduplicator();
+
     /**
      * Set the device event deduplicator.
      * 
@@ -7,6 +7,8 @@
  */
 package com.sitewhere.spi.device.communication;
 
+import java.util.List;
+
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.request.IDeviceMappingCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
@@ -52,6 +54,20 @@ public interface IRegistrationManager extends ITenantLifecycleComponent {
      */
     public void handleDeviceRegistration(IDeviceRegistrationRequest request) throws SiteWhereException;
 
+    /**
+     * Handle registration of many devices at once. Lookups and creation of
+     * devices and assignments are batched. Requests for the same hardware id
+     * are coalesced so that one result is returned per device.
+     * 
+     * @param requests
+     * @param acknowledge
+     *            indicates whether acknowledgement commands are sent to devices
+     * @return
+     * @throws SiteWhereException
+     */
+    public List<IDeviceRegistrationResult> handleDeviceRegistrations(List<IDeviceRegistrationRequest> requests,
+	    boolean acknowledge) throws SiteWhereException;
+
     /**
      * Handle mapping of a device to a path on a composite device.
      * 
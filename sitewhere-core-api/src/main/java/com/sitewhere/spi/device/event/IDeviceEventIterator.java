@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device.event;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Iterates over device events as they are read from the underlying store so
+ * that large result sets can be processed without loading them into memory.
+ * Iterators must be closed when no longer needed to release the resources
+ * held by the store.
+ * 
+ * @author Derek
+ */
+public interface IDeviceEventIterator {
+
+    /**
+     * Indicates whether more events are available.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    public boolean hasNext() throws SiteWhereException;
+
+    /**
+     * Get the next event.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceEvent next() throws SiteWhereException;
+
+    /**
+     * Release resources held by the iterator.
+     * 
+     * @throws SiteWhereException
+     */
+    public void close() throws SiteWhereException;
+}
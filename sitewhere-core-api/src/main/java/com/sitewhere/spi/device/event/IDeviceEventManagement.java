@@ -22,6 +22,7 @@ import com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceStreamDataCreateRequest;
 import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 import com.sitewhere.spi.search.ISearchResults;
+import com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria;
 import com.sitewhere.spi.server.lifecycle.ITenantLifecycleComponent;
 
 /**
@@ -87,6 +88,34 @@ public interface IDeviceEventManagement extends ITenantLifecycleComponent {
     public ISearchResults<IDeviceEvent> listDeviceEvents(String assignmentToken, IDateRangeSearchCriteria criteria)
 	    throws SiteWhereException;
 
+    /**
+     * Iterate over events for an assignment that meet the search criteria. If
+     * type is null, events of all types are returned. Events are returned
+     * newest first. A page size of zero returns all matching events.
+     * 
+     * @param assignmentToken
+     * @param type
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceEventIterator iterateDeviceEvents(String assignmentToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException;
+
+    /**
+     * Iterate over events of a given type for a site that meet the search
+     * criteria. Events are returned newest first. A page size of zero returns
+     * all matching events.
+     * 
+     * @param siteToken
+     * @param type
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceEventIterator iterateDeviceEventsForSite(String siteToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException;
+
     /**
      * Add measurements for a given device assignment.
      * 
@@ -120,6 +149,29 @@ public interface IDeviceEventManagement extends ITenantLifecycleComponent {
     public ISearchResults<IDeviceMeasurements> listDeviceMeasurementsForSite(String siteToken,
 	    IDateRangeSearchCriteria criteria) throws SiteWhereException;
 
+    /**
+     * Add measurement rollups for a given device assignment. Rollups are not
+     * dispatched for outbound processing.
+     * 
+     * @param assignmentToken
+     * @param rollups
+     * @throws SiteWhereException
+     */
+    public void addMeasurementRollups(String assignmentToken, List<IMeasurementRollup> rollups)
+	    throws SiteWhereException;
+
+    /**
+     * List measurement rollups for an assignment based on criteria. Results are
+     * ordered by window end, most recent first.
+     * 
+     * @param assignmentToken
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    public ISearchResults<IMeasurementRollup> listMeasurementRollups(String assignmentToken,
+	    IMeasurementRollupSearchCriteria criteria) throws SiteWhereException;
+
     /**
      * Add location for a given device assignment.
      * 
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device.event;
+
+import java.util.Date;
+
+/**
+ * Aggregate of the values for a single measurement name over a time window.
+ * Rollups are stored apart from device events so they are not dispatched for
+ * outbound processing and do not appear in measurement listings.
+ * 
+ * @author Derek
+ */
+public interface IMeasurementRollup {
+
+    /**
+     * Get token for assignment measurements belong to.
+     * 
+     * @return
+     */
+    public String getDeviceAssignmentToken();
+
+    /**
+     * Get name of aggregated measurement.
+     * 
+     * @return
+     */
+    public String getMeasurementName();
+
+    /**
+     * Get window size in seconds.
+     * 
+     * @return
+     */
+    public long getWindowSize();
+
+    /**
+     * Get start of window (inclusive).
+     * 
+     * @return
+     */
+    public Date getWindowStart();
+
+    /**
+     * Get end of window (exclusive).
+     * 
+     * @return
+     */
+    public Date getWindowEnd();
+
+    /**
+     * Get number of values in window.
+     * 
+     * @return
+     */
+    public long getCount();
+
+    /**
+     * Get minimum value in window.
+     * 
+     * @return
+     */
+    public double getMin();
+
+    /**
+     * Get maximum value in window.
+     * 
+     * @return
+     */
+    public double getMax();
+
+    /**
+     * Get sum of values in window.
+     * 
+     * @return
+     */
+    public double getSum();
+
+    /**
+     * Get average value in window.
+     * 
+     * @return
+     */
+    public double getAverage();
+}
\ No newline at end of file
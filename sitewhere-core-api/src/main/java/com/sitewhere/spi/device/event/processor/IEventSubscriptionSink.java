@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device.event.processor;
+
+import java.util.List;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+/**
+ * Delivers events pushed to a live event subscriber such as a Server-Sent
+ * Events connection.
+ * 
+ * @author Derek
+ */
+public interface IEventSubscriptionSink {
+
+    /**
+     * Send a batch of events to the subscriber. An exception indicates the
+     * subscriber is no longer reachable and the subscription is removed.
+     * 
+     * @param events
+     * @throws SiteWhereException
+     */
+    public void send(List<IDeviceEvent> events) throws SiteWhereException;
+
+    /**
+     * Called when the subscription has been removed.
+     */
+    public void close();
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.search.device;
+
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+
+/**
+ * Criteria available for filtering measurement rollup search results. Dates
+ * are matched against the end of the rollup window.
+ * 
+ * @author Derek
+ */
+public interface IMeasurementRollupSearchCriteria extends IDateRangeSearchCriteria {
+
+    /**
+     * Only return rollups for the given measurement name.
+     * 
+     * @return
+     */
+    public String getMeasurementName();
+
+    /**
+     * Only return rollups with the given window size in seconds.
+     * 
+     * @return
+     */
+    public Long getWindowSize();
+}
\ No newline at end of file
@@ -19,6 +19,7 @@ import java.util.concurrent.Executors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.sitewhere.device.presence.PresenceDeadlineIndex;
 import com.sitewhere.rest.model.device.DeviceAssignmentState;
 import com.sitewhere.rest.model.device.event.DeviceAlert;
 import com.sitewhere.rest.model.device.event.DeviceEvent;
@@ -196,8 +197,12 @@ public class AssignmentStateManager extends TenantLifecycleComponent implements
 			DeviceAssignmentState state = (assignment.getState() != null)
 				? DeviceAssignmentState.copy(assignment.getState()) : new DeviceAssignmentState();
 			List<IDeviceEvent> events = working.get(key);
-			mergeEvents(state, events);
+			boolean interacted = mergeEvents(state, events);
 			getDeviceManagement().updateDeviceAssignmentState(key, state);
+			if (interacted) {
+			    PresenceDeadlineIndex.getInstance(getTenant()).touch(key,
+				    state.getLastInteractionDate().getTime());
+			}
 		    } catch (SiteWhereException e) {
 			LOGGER.error("Unable to update device assignment state.", e);
 		    } catch (Throwable t) {
@@ -222,24 +227,30 @@ public class AssignmentStateManager extends TenantLifecycleComponent implements
 	 * 
 	 * @param state
 	 * @param events
+	 * @return true if any event counted as an interaction
 	 * @throws SiteWhereException
 	 */
-	protected void mergeEvents(DeviceAssignmentState state, List<IDeviceEvent> events) throws SiteWhereException {
+	protected boolean mergeEvents(DeviceAssignmentState state, List<IDeviceEvent> events)
+		throws SiteWhereException {
+	    boolean interacted = false;
 	    for (IDeviceEvent event : events) {
 		switch (event.getEventType()) {
 		case Location: {
 		    updateWithLocation(state, (IDeviceLocation) event);
 		    state.setPresenceMissingDate(null);
+		    interacted = true;
 		    break;
 		}
 		case Measurements: {
 		    updateWithMeasurements(state, (IDeviceMeasurements) event);
 		    state.setPresenceMissingDate(null);
+		    interacted = true;
 		    break;
 		}
 		case Alert: {
 		    updateWithAlert(state, (IDeviceAlert) event);
 		    state.setPresenceMissingDate(null);
+		    interacted = true;
 		    break;
 		}
 		case StateChange: {
@@ -251,6 +262,7 @@ public class AssignmentStateManager extends TenantLifecycleComponent implements
 		}
 		}
 	    }
+	    return interacted;
 	}
 
 	/**
@@ -13,17 +13,20 @@ import com.sitewhere.server.lifecycle.LifecycleComponentDecorator;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.command.IDeviceCommand;
+import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
 import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceEventBatch;
 import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
 import com.sitewhere.spi.device.event.IDeviceEventManagement;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
 import com.sitewhere.spi.device.event.IDeviceStreamData;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
 import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
@@ -34,6 +37,7 @@ import com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceStreamDataCreateRequest;
 import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 import com.sitewhere.spi.search.ISearchResults;
+import com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria;
 import com.sitewhere.spi.tenant.ITenant;
 
 /**
@@ -149,6 +153,34 @@ public class DeviceEventManagementDecorator extends LifecycleComponentDecorator
 	return delegate.listDeviceEvents(assignmentToken, criteria);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.event.IDeviceEventManagement#iterateDeviceEvents(
+     * java.lang.String, com.sitewhere.spi.device.event.DeviceEventType,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public IDeviceEventIterator iterateDeviceEvents(String assignmentToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	return delegate.iterateDeviceEvents(assignmentToken, type, criteria);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * iterateDeviceEventsForSite(java.lang.String,
+     * com.sitewhere.spi.device.event.DeviceEventType,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public IDeviceEventIterator iterateDeviceEventsForSite(String siteToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	return delegate.iterateDeviceEventsForSite(siteToken, type, criteria);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -188,6 +220,31 @@ public class DeviceEventManagementDecorator extends LifecycleComponentDecorator
 	return delegate.listDeviceMeasurementsForSite(siteToken, criteria);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * addMeasurementRollups(java.lang.String, java.util.List)
+     */
+    @Override
+    public void addMeasurementRollups(String assignmentToken, List<IMeasurementRollup> rollups)
+	    throws SiteWhereException {
+	delegate.addMeasurementRollups(assignmentToken, rollups);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * listMeasurementRollups(java.lang.String,
+     * com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria)
+     */
+    @Override
+    public ISearchResults<IMeasurementRollup> listMeasurementRollups(String assignmentToken,
+	    IMeasurementRollupSearchCriteria criteria) throws SiteWhereException {
+	return delegate.listMeasurementRollups(assignmentToken, criteria);
+    }
+
     /*
      * (non-Javadoc)
      * 
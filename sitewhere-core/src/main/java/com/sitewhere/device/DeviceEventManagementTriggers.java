@@ -14,10 +14,13 @@ import com.sitewhere.SiteWhere;
 import com.sitewhere.core.SiteWherePersistence;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.command.IDeviceCommand;
+import com.sitewhere.spi.device.communication.IDeviceCommunication;
+import com.sitewhere.spi.device.communication.IInboundEventSource;
 import com.sitewhere.spi.device.communication.IOutboundProcessingStrategy;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceEventBatch;
 import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
 import com.sitewhere.spi.device.event.IDeviceEventManagement;
@@ -74,6 +77,7 @@ public class DeviceEventManagementTriggers extends DeviceEventManagementDecorato
     public IDeviceMeasurements addDeviceMeasurements(String assignmentToken, IDeviceMeasurementsCreateRequest request)
 	    throws SiteWhereException {
 	IDeviceMeasurements result = super.addDeviceMeasurements(assignmentToken, request);
+	onEventPersisted(result);
 	if (getOutboundProcessingStrategy().getLifecycleStatus() == LifecycleStatus.Started) {
 	    getOutboundProcessingStrategy().onMeasurements(result);
 	} else {
@@ -94,6 +98,7 @@ public class DeviceEventManagementTriggers extends DeviceEventManagementDecorato
     public IDeviceLocation addDeviceLocation(String assignmentToken, IDeviceLocationCreateRequest request)
 	    throws SiteWhereException {
 	IDeviceLocation result = super.addDeviceLocation(assignmentToken, request);
+	onEventPersisted(result);
 	if (getOutboundProcessingStrategy().getLifecycleStatus() == LifecycleStatus.Started) {
 	    getOutboundProcessingStrategy().onLocation(result);
 	}
@@ -112,6 +117,7 @@ public class DeviceEventManagementTriggers extends DeviceEventManagementDecorato
     public IDeviceAlert addDeviceAlert(String assignmentToken, IDeviceAlertCreateRequest request)
 	    throws SiteWhereException {
 	IDeviceAlert result = super.addDeviceAlert(assignmentToken, request);
+	onEventPersisted(result);
 	if (getOutboundProcessingStrategy().getLifecycleStatus() == LifecycleStatus.Started) {
 	    getOutboundProcessingStrategy().onAlert(result);
 	}
@@ -130,6 +136,7 @@ public class DeviceEventManagementTriggers extends DeviceEventManagementDecorato
     public IDeviceStateChange addDeviceStateChange(String assignmentToken, IDeviceStateChangeCreateRequest request)
 	    throws SiteWhereException {
 	IDeviceStateChange result = super.addDeviceStateChange(assignmentToken, request);
+	onEventPersisted(result);
 	if (getOutboundProcessingStrategy().getLifecycleStatus() == LifecycleStatus.Started) {
 	    getOutboundProcessingStrategy().onStateChange(result);
 	}
@@ -167,12 +174,34 @@ public class DeviceEventManagementTriggers extends DeviceEventManagementDecorato
     public IDeviceCommandResponse addDeviceCommandResponse(String assignmentToken,
 	    IDeviceCommandResponseCreateRequest request) throws SiteWhereException {
 	IDeviceCommandResponse result = super.addDeviceCommandResponse(assignmentToken, request);
+	onEventPersisted(result);
 	if (getOutboundProcessingStrategy().getLifecycleStatus() == LifecycleStatus.Started) {
 	    getOutboundProcessingStrategy().onCommandResponse(result);
 	}
 	return result;
     }
 
+    /**
+     * Let event deduplicators record an event that carries an alternate id.
+     * 
+     * @param event
+     * @throws SiteWhereException
+     */
+    protected void onEventPersisted(IDeviceEvent event) throws SiteWhereException {
+	if (event.getAlternateId() == null) {
+	    return;
+	}
+	IDeviceCommunication communication = SiteWhere.getServer().getDeviceCommunication(getTenant());
+	if ((communication == null) || (communication.getInboundEventSources() == null)) {
+	    return;
+	}
+	for (IInboundEventSource<?> source : communication.getInboundEventSources()) {
+	    if (source.getDeviceEventDeduplicator() != null) {
+		source.getDeviceEventDeduplicator().onEventPersisted(event);
+	    }
+	}
+    }
+
     /**
      * Handle case where outbound processing is not available to save event.
      * 
@@ -100,6 +100,11 @@ public class DeviceManagementDecorator extends LifecycleComponentDecorator imple
 	return delegate.getDeviceSpecificationByToken(token);
     }
 
+    @Override
+    public List<IDeviceSpecification> getDeviceSpecificationsByTokens(List<String> tokens) throws SiteWhereException {
+	return delegate.getDeviceSpecificationsByTokens(tokens);
+    }
+
     @Override
     public IDeviceSpecification updateDeviceSpecification(String token, IDeviceSpecificationCreateRequest request)
 	    throws SiteWhereException {
@@ -149,11 +154,21 @@ public class DeviceManagementDecorator extends LifecycleComponentDecorator imple
 	return delegate.createDevice(device);
     }
 
+    @Override
+    public List<IDevice> createDevices(List<IDeviceCreateRequest> requests) throws SiteWhereException {
+	return delegate.createDevices(requests);
+    }
+
     @Override
     public IDevice getDeviceByHardwareId(String hardwareId) throws SiteWhereException {
 	return delegate.getDeviceByHardwareId(hardwareId);
     }
 
+    @Override
+    public List<IDevice> getDevicesByHardwareIds(List<String> hardwareIds) throws SiteWhereException {
+	return delegate.getDevicesByHardwareIds(hardwareIds);
+    }
+
     @Override
     public IDevice updateDevice(String hardwareId, IDeviceCreateRequest request) throws SiteWhereException {
 	return delegate.updateDevice(hardwareId, request);
@@ -191,11 +206,22 @@ public class DeviceManagementDecorator extends LifecycleComponentDecorator imple
 	return delegate.createDeviceAssignment(request);
     }
 
+    @Override
+    public List<IDeviceAssignment> createDeviceAssignments(List<IDeviceAssignmentCreateRequest> requests)
+	    throws SiteWhereException {
+	return delegate.createDeviceAssignments(requests);
+    }
+
     @Override
     public IDeviceAssignment getDeviceAssignmentByToken(String token) throws SiteWhereException {
 	return delegate.getDeviceAssignmentByToken(token);
     }
 
+    @Override
+    public List<IDeviceAssignment> getDeviceAssignmentsByTokens(List<String> tokens) throws SiteWhereException {
+	return delegate.getDeviceAssignmentsByTokens(tokens);
+    }
+
     @Override
     public IDeviceAssignment deleteDeviceAssignment(String token, boolean force) throws SiteWhereException {
 	return delegate.deleteDeviceAssignment(token, force);
@@ -301,6 +327,11 @@ public class DeviceManagementDecorator extends LifecycleComponentDecorator imple
 	return delegate.getSiteByToken(token);
     }
 
+    @Override
+    public List<ISite> getSitesByTokens(List<String> tokens) throws SiteWhereException {
+	return delegate.getSitesByTokens(tokens);
+    }
+
     @Override
     public ISearchResults<ISite> listSites(ISearchCriteria criteria) throws SiteWhereException {
 	return delegate.listSites(criteria);
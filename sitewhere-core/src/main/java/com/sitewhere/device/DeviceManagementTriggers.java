@@ -7,18 +7,37 @@
  */
 package com.sitewhere.device;
 
+import java.util.List;
+
 import com.sitewhere.SiteWhere;
+import com.sitewhere.device.communication.decoder.composite.DeviceContextCache;
+import com.sitewhere.device.group.DeviceGroupIndex;
+import com.sitewhere.device.presence.PresenceDeadlineIndex;
+import com.sitewhere.geospatial.ZoneIndex;
 import com.sitewhere.rest.model.device.event.request.DeviceStateChangeCreateRequest;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.common.IMetadataProvider;
+import com.sitewhere.spi.device.DeviceAssignmentStatus;
+import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
+import com.sitewhere.spi.device.IDeviceElementMapping;
 import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.device.IZone;
 import com.sitewhere.spi.device.batch.IBatchOperation;
 import com.sitewhere.spi.device.event.state.StateChangeCategory;
 import com.sitewhere.spi.device.event.state.StateChangeType;
+import com.sitewhere.spi.device.group.IDeviceGroup;
+import com.sitewhere.spi.device.group.IDeviceGroupElement;
 import com.sitewhere.spi.device.request.IBatchCommandInvocationRequest;
 import com.sitewhere.spi.device.request.IBatchOperationCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceGroupElementCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceSpecificationCreateRequest;
+import com.sitewhere.spi.device.request.IZoneCreateRequest;
 
 /**
  * Adds triggers for processing related to device management API calls.
@@ -31,6 +50,125 @@ public class DeviceManagementTriggers extends DeviceManagementDecorator {
 	super(delegate);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#
+     * updateDeviceSpecification(java.lang.String,
+     * com.sitewhere.spi.device.request.IDeviceSpecificationCreateRequest)
+     */
+    @Override
+    public IDeviceSpecification updateDeviceSpecification(String token, IDeviceSpecificationCreateRequest request)
+	    throws SiteWhereException {
+	IDeviceSpecification updated = super.updateDeviceSpecification(token, request);
+	DeviceContextCache.onSpecificationChanged(getTenant(), token);
+	return updated;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#
+     * deleteDeviceSpecification(java.lang.String, boolean)
+     */
+    @Override
+    public IDeviceSpecification deleteDeviceSpecification(String token, boolean force) throws SiteWhereException {
+	IDeviceSpecification deleted = super.deleteDeviceSpecification(token, force);
+	DeviceContextCache.onSpecificationChanged(getTenant(), token);
+	return deleted;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#createDevice(com.sitewhere
+     * .spi.device.request.IDeviceCreateRequest)
+     */
+    @Override
+    public IDevice createDevice(IDeviceCreateRequest device) throws SiteWhereException {
+	IDevice created = super.createDevice(device);
+	SpecificationDeviceIndex.getInstance(getTenant()).onDeviceChanged(created);
+	return created;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#createDevices(java.util.
+     * List)
+     */
+    @Override
+    public List<IDevice> createDevices(List<IDeviceCreateRequest> requests) throws SiteWhereException {
+	List<IDevice> created = super.createDevices(requests);
+	SpecificationDeviceIndex index = SpecificationDeviceIndex.getInstance(getTenant());
+	for (IDevice device : created) {
+	    index.onDeviceChanged(device);
+	}
+	return created;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#updateDevice(java.lang.
+     * String, com.sitewhere.spi.device.request.IDeviceCreateRequest)
+     */
+    @Override
+    public IDevice updateDevice(String hardwareId, IDeviceCreateRequest request) throws SiteWhereException {
+	IDevice updated = super.updateDevice(hardwareId, request);
+	SpecificationDeviceIndex.getInstance(getTenant()).onDeviceChanged(updated);
+	DeviceContextCache.onDeviceChanged(getTenant(), hardwareId);
+	return updated;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#
+     * createDeviceElementMapping(java.lang.String,
+     * com.sitewhere.spi.device.IDeviceElementMapping)
+     */
+    @Override
+    public IDevice createDeviceElementMapping(String hardwareId, IDeviceElementMapping mapping)
+	    throws SiteWhereException {
+	IDevice updated = super.createDeviceElementMapping(hardwareId, mapping);
+	SpecificationDeviceIndex.getInstance(getTenant()).onDeviceChanged(updated);
+	DeviceContextCache.onDeviceChanged(getTenant(), hardwareId);
+	return updated;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#
+     * deleteDeviceElementMapping(java.lang.String, java.lang.String)
+     */
+    @Override
+    public IDevice deleteDeviceElementMapping(String hardwareId, String path) throws SiteWhereException {
+	IDevice updated = super.deleteDeviceElementMapping(hardwareId, path);
+	SpecificationDeviceIndex.getInstance(getTenant()).onDeviceChanged(updated);
+	DeviceContextCache.onDeviceChanged(getTenant(), hardwareId);
+	return updated;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#deleteDevice(java.lang.
+     * String, boolean)
+     */
+    @Override
+    public IDevice deleteDevice(String hardwareId, boolean force) throws SiteWhereException {
+	IDevice deleted = super.deleteDevice(hardwareId, force);
+	DeviceContextCache.onDeviceChanged(getTenant(), hardwareId);
+	if (deleted != null) {
+	    SpecificationDeviceIndex.getInstance(getTenant()).onDeviceDeleted(deleted);
+	}
+	return deleted;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -41,12 +179,34 @@ public class DeviceManagementTriggers extends DeviceManagementDecorator {
     @Override
     public IDeviceAssignment createDeviceAssignment(IDeviceAssignmentCreateRequest request) throws SiteWhereException {
 	IDeviceAssignment created = super.createDeviceAssignment(request);
+	refreshIndexedDevice(created);
 	DeviceStateChangeCreateRequest state = new DeviceStateChangeCreateRequest(StateChangeCategory.Assignment,
 		StateChangeType.Assignment_Created, null, null);
 	SiteWhere.getServer().getDeviceEventManagement(getTenant()).addDeviceStateChange(created.getToken(), state);
 	return created;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#createDeviceAssignments(
+     * java.util.List)
+     */
+    @Override
+    public List<IDeviceAssignment> createDeviceAssignments(List<IDeviceAssignmentCreateRequest> requests)
+	    throws SiteWhereException {
+	List<IDeviceAssignment> created = super.createDeviceAssignments(requests);
+	for (IDeviceAssignment assignment : created) {
+	    refreshIndexedDevice(assignment);
+	    DeviceStateChangeCreateRequest state = new DeviceStateChangeCreateRequest(StateChangeCategory.Assignment,
+		    StateChangeType.Assignment_Created, null, null);
+	    SiteWhere.getServer().getDeviceEventManagement(getTenant()).addDeviceStateChange(assignment.getToken(),
+		    state);
+	}
+	return created;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -58,6 +218,7 @@ public class DeviceManagementTriggers extends DeviceManagementDecorator {
     public IDeviceAssignment updateDeviceAssignmentMetadata(String token, IMetadataProvider metadata)
 	    throws SiteWhereException {
 	IDeviceAssignment updated = super.updateDeviceAssignmentMetadata(token, metadata);
+	SpecificationDeviceIndex.getInstance(getTenant()).onAssignmentChanged(updated);
 	DeviceStateChangeCreateRequest state = new DeviceStateChangeCreateRequest(StateChangeCategory.Assignment,
 		StateChangeType.Assignment_Updated, null, null);
 	SiteWhere.getServer().getDeviceEventManagement(getTenant()).addDeviceStateChange(updated.getToken(), state);
@@ -74,12 +235,80 @@ public class DeviceManagementTriggers extends DeviceManagementDecorator {
     @Override
     public IDeviceAssignment endDeviceAssignment(String token) throws SiteWhereException {
 	IDeviceAssignment updated = super.endDeviceAssignment(token);
+	refreshIndexedDevice(updated);
+	PresenceDeadlineIndex.getInstance(getTenant()).remove(updated.getToken());
 	DeviceStateChangeCreateRequest state = new DeviceStateChangeCreateRequest(StateChangeCategory.Assignment,
 		StateChangeType.Assignment_Released, null, null);
 	SiteWhere.getServer().getDeviceEventManagement(getTenant()).addDeviceStateChange(updated.getToken(), state);
 	return updated;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#deleteDeviceAssignment(
+     * java.lang.String, boolean)
+     */
+    @Override
+    public IDeviceAssignment deleteDeviceAssignment(String token, boolean force) throws SiteWhereException {
+	IDeviceAssignment deleted = super.deleteDeviceAssignment(token, force);
+	if (deleted != null) {
+	    refreshIndexedDevice(deleted);
+	    PresenceDeadlineIndex.getInstance(getTenant()).remove(deleted.getToken());
+	}
+	return deleted;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#
+     * updateDeviceAssignmentStatus(java.lang.String,
+     * com.sitewhere.spi.device.DeviceAssignmentStatus)
+     */
+    @Override
+    public IDeviceAssignment updateDeviceAssignmentStatus(String token, DeviceAssignmentStatus status)
+	    throws SiteWhereException {
+	IDeviceAssignment updated = super.updateDeviceAssignmentStatus(token, status);
+	SpecificationDeviceIndex.getInstance(getTenant()).onAssignmentChanged(updated);
+	return updated;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#
+     * updateDeviceAssignmentState(java.lang.String,
+     * com.sitewhere.spi.device.IDeviceAssignmentState)
+     */
+    @Override
+    public IDeviceAssignment updateDeviceAssignmentState(String token, IDeviceAssignmentState state)
+	    throws SiteWhereException {
+	IDeviceAssignment updated = super.updateDeviceAssignmentState(token, state);
+	SpecificationDeviceIndex.getInstance(getTenant()).onAssignmentChanged(updated);
+	return updated;
+    }
+
+    /**
+     * Reload the device for an assignment whose current assignment changed if
+     * the device is held in the specification index. Cached decoder contexts
+     * for the device are dropped.
+     * 
+     * @param assignment
+     * @throws SiteWhereException
+     */
+    protected void refreshIndexedDevice(IDeviceAssignment assignment) throws SiteWhereException {
+	DeviceContextCache.onDeviceChanged(getTenant(), assignment.getDeviceHardwareId());
+	SpecificationDeviceIndex index = SpecificationDeviceIndex.getInstance(getTenant());
+	if (index.isIndexed(assignment.getDeviceHardwareId())) {
+	    IDevice device = super.getDeviceByHardwareId(assignment.getDeviceHardwareId());
+	    if (device != null) {
+		index.onDeviceChanged(device);
+	    }
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -108,4 +337,94 @@ public class DeviceManagementTriggers extends DeviceManagementDecorator {
 	SiteWhere.getServer().getDeviceCommunication(getTenant()).getBatchOperationManager().process(operation);
 	return operation;
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#createZone(com.sitewhere.
+     * spi.device.ISite, com.sitewhere.spi.device.request.IZoneCreateRequest)
+     */
+    @Override
+    public IZone createZone(ISite site, IZoneCreateRequest request) throws SiteWhereException {
+	IZone zone = super.createZone(site, request);
+	ZoneIndex.getInstance(getTenant()).onZoneChanged(zone);
+	return zone;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#updateZone(java.lang.
+     * String, com.sitewhere.spi.device.request.IZoneCreateRequest)
+     */
+    @Override
+    public IZone updateZone(String token, IZoneCreateRequest request) throws SiteWhereException {
+	IZone zone = super.updateZone(token, request);
+	ZoneIndex.getInstance(getTenant()).onZoneChanged(zone);
+	return zone;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#deleteZone(java.lang.
+     * String, boolean)
+     */
+    @Override
+    public IZone deleteZone(String zoneToken, boolean force) throws SiteWhereException {
+	IZone zone = super.deleteZone(zoneToken, force);
+	if (zone != null) {
+	    ZoneIndex.getInstance(getTenant()).onZoneChanged(zone);
+	}
+	return zone;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#deleteDeviceGroup(java.
+     * lang.String, boolean)
+     */
+    @Override
+    public IDeviceGroup deleteDeviceGroup(String token, boolean force) throws SiteWhereException {
+	IDeviceGroup group = super.deleteDeviceGroup(token, force);
+	DeviceGroupIndex.getInstance(getTenant()).onGroupDeleted(token);
+	return group;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#addDeviceGroupElements(
+     * java.lang.String, java.util.List, boolean)
+     */
+    @Override
+    public List<IDeviceGroupElement> addDeviceGroupElements(String groupToken,
+	    List<IDeviceGroupElementCreateRequest> elements, boolean ignoreDuplicates) throws SiteWhereException {
+	DeviceGroupIndex index = DeviceGroupIndex.getInstance(getTenant());
+	index.assertNoCycles(groupToken, elements);
+	List<IDeviceGroupElement> added = super.addDeviceGroupElements(groupToken, elements, ignoreDuplicates);
+	index.onElementsAdded(groupToken, added);
+	return added;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#removeDeviceGroupElements(
+     * java.lang.String, java.util.List)
+     */
+    @Override
+    public List<IDeviceGroupElement> removeDeviceGroupElements(String groupToken,
+	    List<IDeviceGroupElementCreateRequest> elements) throws SiteWhereException {
+	List<IDeviceGroupElement> removed = super.removeDeviceGroupElements(groupToken, elements);
+	DeviceGroupIndex.getInstance(getTenant()).onElementsRemoved(groupToken, removed);
+	return removed;
+    }
 }
\ No newline at end of file
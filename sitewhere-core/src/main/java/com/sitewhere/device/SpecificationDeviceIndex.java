@@ -0,0 +1,446 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.SiteWhere;
+import com.sitewhere.rest.model.search.device.DeviceSearchCriteria;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.tenant.ITenant;
+
+/**
+ * Index of devices by specification token for a tenant. The devices for a
+ * specification are listed when first requested and kept current by
+ * {@link DeviceManagementTriggers} as devices and assignments change on this
+ * instance. Devices registered through other instances are picked up by a
+ * background task that lists only devices created since its last check, so
+ * event routing never waits on a listing after the first one. Indexes are
+ * released when the tenant engine stops.
+ * 
+ * @author Derek
+ */
+public class SpecificationDeviceIndex {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Default interval between checks for new devices in milliseconds */
+    private static final long DEFAULT_REFRESH_INTERVAL = 60 * 1000;
+
+    /** Indexes by tenant id */
+    private static ConcurrentMap<String, SpecificationDeviceIndex> INDEXES = new ConcurrentHashMap<String, SpecificationDeviceIndex>();
+
+    /** Tenant whose devices are indexed */
+    private ITenant tenant;
+
+    /** Interval between checks for new devices in milliseconds */
+    private long refreshInterval;
+
+    /** Checks for devices created through other instances */
+    private ScheduledExecutorService refresher;
+
+    /** Indexed specifications by token */
+    private ConcurrentMap<String, SpecificationEntry> specifications = new ConcurrentHashMap<String, SpecificationEntry>();
+
+    /** Specification tokens by hardware id for indexed devices */
+    private ConcurrentMap<String, String> deviceSpecifications = new ConcurrentHashMap<String, String>();
+
+    public SpecificationDeviceIndex(ITenant tenant) {
+	this(tenant, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    public SpecificationDeviceIndex(ITenant tenant, long refreshInterval) {
+	this.tenant = tenant;
+	this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Get the specification index for a tenant.
+     * 
+     * @param tenant
+     * @return
+     */
+    public static SpecificationDeviceIndex getInstance(ITenant tenant) {
+	SpecificationDeviceIndex index = INDEXES.get(tenant.getId());
+	if (index == null) {
+	    index = new SpecificationDeviceIndex(tenant);
+	    SpecificationDeviceIndex existing = INDEXES.putIfAbsent(tenant.getId(), index);
+	    if (existing != null) {
+		index = existing;
+	    } else {
+		index.start();
+	    }
+	}
+	return index;
+    }
+
+    /**
+     * Release the specification index for a tenant.
+     * 
+     * @param tenant
+     */
+    public static void release(ITenant tenant) {
+	SpecificationDeviceIndex index = INDEXES.remove(tenant.getId());
+	if (index != null) {
+	    index.stop();
+	}
+    }
+
+    /**
+     * Start checking for devices created through other instances.
+     */
+    public void start() {
+	refresher = Executors.newSingleThreadScheduledExecutor(new RefresherThreadFactory());
+	refresher.scheduleWithFixedDelay(new Runnable() {
+
+	    @Override
+	    public void run() {
+		refresh(System.currentTimeMillis());
+	    }
+	}, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop checking for new devices.
+     */
+    public void stop() {
+	if (refresher != null) {
+	    refresher.shutdownNow();
+	}
+    }
+
+    /**
+     * Get targets for all devices that use a specification, listing them if the
+     * specification has not been indexed yet.
+     * 
+     * @param specificationToken
+     * @return
+     * @throws SiteWhereException
+     */
+    public Collection<Target> getTargets(String specificationToken) throws SiteWhereException {
+	return getTargets(specificationToken, System.currentTimeMillis());
+    }
+
+    /**
+     * Get targets for all devices that use a specification as of the given
+     * time.
+     * 
+     * @param specificationToken
+     * @param now
+     * @return
+     * @throws SiteWhereException
+     */
+    protected Collection<Target> getTargets(String specificationToken, long now) throws SiteWhereException {
+	SpecificationEntry entry = specifications.get(specificationToken);
+	if (entry == null) {
+	    SpecificationEntry created = new SpecificationEntry();
+	    entry = specifications.putIfAbsent(specificationToken, created);
+	    if (entry == null) {
+		entry = created;
+	    }
+	}
+	if (!entry.loaded) {
+	    synchronized (entry) {
+		if (!entry.loaded) {
+		    entry.refreshing.set(true);
+		    load(specificationToken, entry, now);
+		}
+	    }
+	}
+	return entry.targets.values();
+    }
+
+    /**
+     * List devices for a specification into its entry. Devices changed or
+     * removed by triggers while the listing runs keep the values applied by the
+     * triggers.
+     * 
+     * @param specificationToken
+     * @param entry
+     * @param now
+     * @throws SiteWhereException
+     */
+    private void load(String specificationToken, SpecificationEntry entry, long now) throws SiteWhereException {
+	try {
+	    entry.changed.clear();
+	    for (IDevice device : listDevices(specificationToken)) {
+		if (!entry.changed.contains(device.getHardwareId())) {
+		    entry.targets.put(device.getHardwareId(), new Target(device));
+		    deviceSpecifications.put(device.getHardwareId(), specificationToken);
+		}
+	    }
+	    entry.checkedAt = now;
+	    entry.loaded = true;
+	} finally {
+	    entry.refreshing.set(false);
+	}
+    }
+
+    /**
+     * Add devices created since the last check to each loaded specification.
+     * Devices already indexed are left alone since triggers keep them current.
+     * The window overlaps the previous check by one interval to allow for
+     * clock differences between instances.
+     * 
+     * @param now
+     */
+    protected void refresh(long now) {
+	for (Map.Entry<String, SpecificationEntry> current : specifications.entrySet()) {
+	    SpecificationEntry entry = current.getValue();
+	    if ((!entry.loaded) || (!entry.refreshing.compareAndSet(false, true))) {
+		continue;
+	    }
+	    try {
+		entry.changed.clear();
+		Date since = new Date(entry.checkedAt - refreshInterval);
+		int added = 0;
+		for (IDevice device : listDevicesCreatedSince(current.getKey(), since)) {
+		    String hardwareId = device.getHardwareId();
+		    if ((device.isDeleted()) || (entry.changed.contains(hardwareId))) {
+			continue;
+		    }
+		    if (entry.targets.putIfAbsent(hardwareId, new Target(device)) == null) {
+			deviceSpecifications.put(hardwareId, current.getKey());
+			added++;
+		    }
+		}
+		entry.checkedAt = now;
+		if (added > 0) {
+		    LOGGER.debug("Indexed " + added + " device(s) created elsewhere for specification '"
+			    + current.getKey() + "'.");
+		}
+	    } catch (Throwable t) {
+		LOGGER.error("Unable to check for new devices for specification. Keeping current list.", t);
+	    } finally {
+		entry.refreshing.set(false);
+	    }
+	}
+    }
+
+    /**
+     * List all devices that use a specification.
+     * 
+     * @param specificationToken
+     * @return
+     * @throws SiteWhereException
+     */
+    protected Collection<IDevice> listDevices(String specificationToken) throws SiteWhereException {
+	DeviceSearchCriteria criteria = new DeviceSearchCriteria(specificationToken, null, false, 1, 0, null, null);
+	return SiteWhere.getServer().getDeviceManagement(tenant).listDevices(false, criteria).getResults();
+    }
+
+    /**
+     * List devices that use a specification and were created on or after the
+     * given date.
+     * 
+     * @param specificationToken
+     * @param since
+     * @return
+     * @throws SiteWhereException
+     */
+    protected Collection<IDevice> listDevicesCreatedSince(String specificationToken, Date since)
+	    throws SiteWhereException {
+	DeviceSearchCriteria criteria = new DeviceSearchCriteria(specificationToken, null, false, 1, 0, since, null);
+	return SiteWhere.getServer().getDeviceManagement(tenant).listDevices(false, criteria).getResults();
+    }
+
+    /**
+     * Indicates whether a device belongs to an indexed specification.
+     * 
+     * @param hardwareId
+     * @return
+     */
+    public boolean isIndexed(String hardwareId) {
+	return deviceSpecifications.containsKey(hardwareId);
+    }
+
+    /**
+     * Called when a device is created or updated.
+     * 
+     * @param device
+     */
+    public void onDeviceChanged(IDevice device) {
+	if (device.isDeleted()) {
+	    onDeviceDeleted(device);
+	    return;
+	}
+	String previous = deviceSpecifications.remove(device.getHardwareId());
+	if ((previous != null) && (!previous.equals(device.getSpecificationToken()))) {
+	    removeTarget(previous, device.getHardwareId());
+	}
+	SpecificationEntry entry = specifications.get(device.getSpecificationToken());
+	if (entry != null) {
+	    entry.markChanged(device.getHardwareId());
+	    entry.targets.put(device.getHardwareId(), new Target(device));
+	    deviceSpecifications.put(device.getHardwareId(), device.getSpecificationToken());
+	}
+    }
+
+    /**
+     * Called when a device is deleted.
+     * 
+     * @param device
+     */
+    public void onDeviceDeleted(IDevice device) {
+	String previous = deviceSpecifications.remove(device.getHardwareId());
+	removeTarget((previous != null) ? previous : device.getSpecificationToken(), device.getHardwareId());
+    }
+
+    /**
+     * Called when assignment metadata, status or state is updated. Replaces the
+     * cached assignment if it is current for an indexed device.
+     * 
+     * @param assignment
+     */
+    public void onAssignmentChanged(IDeviceAssignment assignment) {
+	String specificationToken = deviceSpecifications.get(assignment.getDeviceHardwareId());
+	if (specificationToken == null) {
+	    return;
+	}
+	SpecificationEntry entry = specifications.get(specificationToken);
+	if (entry == null) {
+	    return;
+	}
+	Target target = entry.targets.get(assignment.getDeviceHardwareId());
+	if ((target != null) && (assignment.getToken().equals(target.getDevice().getAssignmentToken()))) {
+	    target.setAssignment(assignment);
+	}
+    }
+
+    /**
+     * Remove a device from a specification entry.
+     * 
+     * @param specificationToken
+     * @param hardwareId
+     */
+    protected void removeTarget(String specificationToken, String hardwareId) {
+	SpecificationEntry entry = specifications.get(specificationToken);
+	if (entry != null) {
+	    entry.markChanged(hardwareId);
+	    entry.targets.remove(hardwareId);
+	}
+    }
+
+    /**
+     * Discard all indexed specifications.
+     */
+    public void clear() {
+	specifications.clear();
+	deviceSpecifications.clear();
+    }
+
+    /**
+     * Device that uses an indexed specification along with its current
+     * assignment, which is loaded on first use.
+     * 
+     * @author Derek
+     */
+    public class Target {
+
+	/** Indexed device */
+	private final IDevice device;
+
+	/** Current assignment */
+	private volatile IDeviceAssignment assignment;
+
+	/** Indicates whether assignment has been loaded */
+	private volatile boolean assignmentLoaded;
+
+	public Target(IDevice device) {
+	    this.device = device;
+	}
+
+	/**
+	 * Get the current assignment for the device or null if not assigned.
+	 * 
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public IDeviceAssignment getAssignment() throws SiteWhereException {
+	    if (!assignmentLoaded) {
+		if (device.getAssignmentToken() != null) {
+		    assignment = SiteWhere.getServer().getDeviceManagement(tenant)
+			    .getDeviceAssignmentByToken(device.getAssignmentToken());
+		}
+		assignmentLoaded = true;
+	    }
+	    return assignment;
+	}
+
+	protected void setAssignment(IDeviceAssignment assignment) {
+	    this.assignment = assignment;
+	    this.assignmentLoaded = true;
+	}
+
+	public IDevice getDevice() {
+	    return device;
+	}
+    }
+
+    /**
+     * Devices indexed for a specification.
+     * 
+     * @author Derek
+     */
+    private static class SpecificationEntry {
+
+	/** Targets by hardware id */
+	final ConcurrentMap<String, Target> targets = new ConcurrentHashMap<String, Target>();
+
+	/** Hardware ids changed or removed while the entry was loading */
+	final Set<String> changed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/** Indicates whether a listing is in progress */
+	final AtomicBoolean refreshing = new AtomicBoolean();
+
+	/** Indicates whether the initial listing has completed */
+	volatile boolean loaded;
+
+	/** Time of the last completed listing or check for new devices */
+	volatile long checkedAt;
+
+	/**
+	 * Record a change applied by a trigger so that a listing in progress
+	 * does not overwrite it.
+	 * 
+	 * @param hardwareId
+	 */
+	void markChanged(String hardwareId) {
+	    if (refreshing.get()) {
+		changed.add(hardwareId);
+	    }
+	}
+    }
+
+    /** Used for naming refresh thread */
+    private class RefresherThreadFactory implements ThreadFactory {
+
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, "SiteWhere Specification Index " + tenant.getId());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+}
\ No newline at end of file
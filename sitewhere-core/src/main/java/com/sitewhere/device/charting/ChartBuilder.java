@@ -9,7 +9,6 @@ package com.sitewhere.device.charting;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -17,8 +16,13 @@ import java.util.Map;
 
 import com.sitewhere.rest.model.device.charting.ChartEntry;
 import com.sitewhere.rest.model.device.charting.ChartSeries;
+import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.charting.IChartSeries;
+import com.sitewhere.spi.device.charting.ISampledChartSeries;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
 
 /**
  * Builds chart series from measurements.
@@ -27,8 +31,11 @@ import com.sitewhere.spi.device.event.IDeviceMeasurements;
  */
 public class ChartBuilder {
 
-    /** Map of measurement names to series */
-    private Map<String, IChartSeries<Double>> seriesByMeasurementName;
+    /** Map of measurement names to series data */
+    private Map<String, SeriesBuffer> buffersByMeasurementName;
+
+    /** Map of measurement names to sampled series data */
+    private Map<String, SeriesAccumulator> accumulatorsByMeasurementName = new HashMap<String, SeriesAccumulator>();
 
     /**
      * Process measurements into a list of charts series.
@@ -37,48 +44,163 @@ public class ChartBuilder {
      * @return
      */
     public List<IChartSeries<Double>> process(List<IDeviceMeasurements> matches, String[] measurementIds) {
-	seriesByMeasurementName = new HashMap<String, IChartSeries<Double>>();
-	List<String> mxids = null;
-	if ((measurementIds != null) && (measurementIds.length > 0)) {
-	    mxids = Arrays.asList(measurementIds);
+	collectRaw(matches, measurementIds);
+
+	List<IChartSeries<Double>> results = new ArrayList<IChartSeries<Double>>();
+	for (Map.Entry<String, SeriesBuffer> entry : buffersByMeasurementName.entrySet()) {
+	    SeriesBuffer buffer = entry.getValue();
+	    ChartSeries<Double> series = new ChartSeries<Double>();
+	    series.setMeasurementId(entry.getKey());
+	    for (int i = 0; i < buffer.size(); i++) {
+		ChartEntry<Double> seriesEntry = new ChartEntry<Double>();
+		seriesEntry.setValue(buffer.getValue(i));
+		seriesEntry.setMeasurementDate(new Date(buffer.getTime(i)));
+		series.getEntries().add(seriesEntry);
+	    }
+	    results.add(series);
 	}
+	return results;
+    }
 
-	// Add all measurements.
-	for (IDeviceMeasurements measurements : matches) {
-	    for (String key : measurements.getMeasurements().keySet()) {
-		addSeriesEntry(key, measurements.getMeasurement(key), measurements.getEventDate());
+    /**
+     * Read measurements from an iterator and reduce them to series of at most
+     * the given number of points. Each series keeps up to maxRaw raw values and
+     * summarizes values into time buckets beyond that, so every event in the
+     * range is represented in bounded memory. The iterator is closed when done.
+     * 
+     * @param events
+     * @param measurementIds
+     * @param maxPoints
+     * @param maxRaw
+     * @param method
+     * @return
+     * @throws SiteWhereException
+     */
+    public List<ISampledChartSeries> processSampled(IDeviceEventIterator events, String[] measurementIds,
+	    int maxPoints, int maxRaw, SamplingMethod method) throws SiteWhereException {
+	List<String> mxids = getMeasurementIds(measurementIds);
+	try {
+	    while (events.hasNext()) {
+		IDeviceEvent event = events.next();
+		if (!(event instanceof IDeviceMeasurements)) {
+		    continue;
+		}
+		long time = event.getEventDate().getTime();
+		for (Map.Entry<String, Double> entry : ((IDeviceMeasurements) event).getMeasurements().entrySet()) {
+		    if ((entry.getValue() == null) || ((mxids != null) && (!mxids.contains(entry.getKey())))) {
+			continue;
+		    }
+		    getAccumulator(entry.getKey(), maxRaw).add(time, entry.getValue());
+		}
 	    }
+	} finally {
+	    events.close();
 	}
-	// Sort entries by date.
-	List<IChartSeries<Double>> results = new ArrayList<IChartSeries<Double>>();
-	for (IChartSeries<Double> series : seriesByMeasurementName.values()) {
-	    if ((mxids == null) || (mxids.contains(series.getMeasurementId()))) {
-		Collections.sort(series.getEntries());
-		results.add(series);
+	return sampleAccumulated(maxPoints, method);
+    }
+
+    /**
+     * Add a page of measurement rollups to the series being sampled. Each
+     * rollup contributes its average, minimum, maximum and sample count so
+     * bucketed results match sampling the raw data. Call
+     * {@link #sampleAccumulated(int, SamplingMethod)} once all pages are added.
+     * 
+     * @param rollups
+     * @param measurementIds
+     * @param maxRaw
+     */
+    public void addRollups(List<IMeasurementRollup> rollups, String[] measurementIds, int maxRaw) {
+	List<String> mxids = getMeasurementIds(measurementIds);
+	for (IMeasurementRollup rollup : rollups) {
+	    if ((rollup.getCount() == 0) || ((mxids != null) && (!mxids.contains(rollup.getMeasurementName())))) {
+		continue;
 	    }
+	    getAccumulator(rollup.getMeasurementName(), maxRaw).add(rollup.getWindowStart().getTime(),
+		    rollup.getAverage(), rollup.getMin(), rollup.getMax(), rollup.getCount());
+	}
+    }
+
+    /**
+     * Sample all series added through the accumulating methods.
+     * 
+     * @param maxPoints
+     * @param method
+     * @return
+     */
+    public List<ISampledChartSeries> sampleAccumulated(int maxPoints, SamplingMethod method) {
+	List<ISampledChartSeries> results = new ArrayList<ISampledChartSeries>();
+	for (Map.Entry<String, SeriesAccumulator> entry : accumulatorsByMeasurementName.entrySet()) {
+	    results.add(SeriesSampler.sample(entry.getKey(), entry.getValue().getBuffer(), maxPoints, method));
 	}
 	return results;
     }
 
     /**
-     * Add a new measurement entry. Create a new series if one does not already
+     * Collect raw measurement values into sorted buffers.
+     * 
+     * @param matches
+     * @param measurementIds
+     */
+    protected void collectRaw(List<IDeviceMeasurements> matches, String[] measurementIds) {
+	buffersByMeasurementName = new HashMap<String, SeriesBuffer>();
+	List<String> mxids = getMeasurementIds(measurementIds);
+	for (IDeviceMeasurements measurements : matches) {
+	    long time = measurements.getEventDate().getTime();
+	    for (Map.Entry<String, Double> entry : measurements.getMeasurements().entrySet()) {
+		if ((entry.getValue() == null) || ((mxids != null) && (!mxids.contains(entry.getKey())))) {
+		    continue;
+		}
+		getBuffer(entry.getKey()).add(time, entry.getValue());
+	    }
+	}
+	for (SeriesBuffer buffer : buffersByMeasurementName.values()) {
+	    buffer.sort();
+	}
+    }
+
+    /**
+     * Get buffer for a measurement. Create a new buffer if one does not already
      * exist.
      * 
      * @param key
-     * @param value
-     * @param date
+     * @return
+     */
+    protected SeriesBuffer getBuffer(String key) {
+	SeriesBuffer buffer = buffersByMeasurementName.get(key);
+	if (buffer == null) {
+	    buffer = new SeriesBuffer();
+	    buffersByMeasurementName.put(key, buffer);
+	}
+	return buffer;
+    }
+
+    /**
+     * Get accumulator for a measurement. Create a new accumulator if one does
+     * not already exist.
+     * 
+     * @param key
+     * @param maxRaw
+     * @return
      */
-    protected void addSeriesEntry(String key, Double value, Date date) {
-	IChartSeries<Double> series = seriesByMeasurementName.get(key);
-	if (series == null) {
-	    ChartSeries<Double> newSeries = new ChartSeries<Double>();
-	    newSeries.setMeasurementId(key);
-	    seriesByMeasurementName.put(key, newSeries);
-	    series = newSeries;
+    protected SeriesAccumulator getAccumulator(String key, int maxRaw) {
+	SeriesAccumulator accumulator = accumulatorsByMeasurementName.get(key);
+	if (accumulator == null) {
+	    accumulator = new SeriesAccumulator(maxRaw);
+	    accumulatorsByMeasurementName.put(key, accumulator);
+	}
+	return accumulator;
+    }
+
+    /**
+     * Get list of requested measurement ids or null for all.
+     * 
+     * @param measurementIds
+     * @return
+     */
+    protected List<String> getMeasurementIds(String[] measurementIds) {
+	if ((measurementIds != null) && (measurementIds.length > 0)) {
+	    return Arrays.asList(measurementIds);
 	}
-	ChartEntry<Double> seriesEntry = new ChartEntry<Double>();
-	seriesEntry.setValue(value);
-	seriesEntry.setMeasurementDate(date);
-	series.getEntries().add(seriesEntry);
+	return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.charting;
+
+/**
+ * Methods used to reduce a chart series to a requested number of points.
+ * 
+ * @author Derek
+ */
+public enum SamplingMethod {
+
+    /** Largest-Triangle-Three-Buckets selection of representative points */
+    Lttb,
+
+    /** Fixed time buckets with min, max and average for each */
+    Buckets;
+
+    /**
+     * Get method by name, ignoring case. Defaults to {@link #Lttb}.
+     * 
+     * @param name
+     * @return
+     */
+    public static SamplingMethod fromName(String name) {
+	if (name != null) {
+	    for (SamplingMethod method : values()) {
+		if (method.name().equalsIgnoreCase(name)) {
+		    return method;
+		}
+	    }
+	}
+	return Lttb;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.charting;
+
+/**
+ * Collects the points of a series read newest first in bounded memory. Raw
+ * points are kept until their number exceeds the raw limit. After that, points
+ * are summarized into a fixed number of equal time buckets that end at the
+ * newest point. When an older point falls past the last bucket, adjacent
+ * buckets are merged in pairs and the bucket width doubles, so the whole range
+ * is covered no matter how many points are read.
+ *
+ * @author Derek
+ */
+public class SeriesAccumulator {
+
+    /** Maximum number of raw points kept before bucketing */
+    private int maxRaw;
+
+    /** Number of buckets used once raw limit is exceeded */
+    private int capacity;
+
+    /** Raw points */
+    private SeriesBuffer raw = new SeriesBuffer();
+
+    /** Indicates whether points are being summarized into buckets */
+    private boolean bucketed = false;
+
+    /** Exclusive end time of the newest bucket */
+    private long anchor;
+
+    /** Bucket width in milliseconds */
+    private long width;
+
+    /** Sum of values weighted by count for each bucket */
+    private double[] sums;
+
+    /** Minimum value for each bucket */
+    private double[] mins;
+
+    /** Maximum value for each bucket */
+    private double[] maxs;
+
+    /** Number of samples in each bucket */
+    private long[] counts;
+
+    public SeriesAccumulator(int maxRaw) {
+	this.maxRaw = Math.max(maxRaw, 2);
+	this.capacity = this.maxRaw + (this.maxRaw % 2);
+    }
+
+    /**
+     * Add a raw value.
+     *
+     * @param time
+     * @param value
+     */
+    public void add(long time, double value) {
+	add(time, value, value, value, 1);
+    }
+
+    /**
+     * Add a point that summarizes one or more samples.
+     *
+     * @param time
+     * @param value
+     * @param min
+     * @param max
+     * @param count
+     */
+    public void add(long time, double value, double min, double max, long count) {
+	if (!bucketed) {
+	    raw.add(time, value, min, max, count);
+	    if (raw.size() > maxRaw) {
+		startBuckets();
+	    }
+	    return;
+	}
+	addToBucket(time, value, min, max, count);
+    }
+
+    /**
+     * Move raw points into buckets. The initial width lets the raw points fill
+     * half of the buckets so older points can be added before merging.
+     */
+    protected void startBuckets() {
+	raw.sort();
+	long oldest = raw.getTime(0);
+	anchor = raw.getTime(raw.size() - 1) + 1;
+	width = Math.max(1, ((anchor - oldest) + (capacity / 2) - 1) / (capacity / 2));
+	sums = new double[capacity];
+	mins = new double[capacity];
+	maxs = new double[capacity];
+	counts = new long[capacity];
+	bucketed = true;
+	for (int i = 0; i < raw.size(); i++) {
+	    addToBucket(raw.getTime(i), raw.getValue(i), raw.getMin(i), raw.getMax(i), raw.getCount(i));
+	}
+	raw = null;
+    }
+
+    /**
+     * Add a point to the bucket covering its time, merging buckets until one
+     * does. Points newer than the anchor are added to the newest bucket.
+     *
+     * @param time
+     * @param value
+     * @param min
+     * @param max
+     * @param count
+     */
+    protected void addToBucket(long time, double value, double min, double max, long count) {
+	long offset = Math.max(0, anchor - 1 - time);
+	while (offset / width >= capacity) {
+	    merge();
+	}
+	int index = (int) (offset / width);
+	if (counts[index] == 0) {
+	    mins[index] = min;
+	    maxs[index] = max;
+	} else {
+	    mins[index] = Math.min(mins[index], min);
+	    maxs[index] = Math.max(maxs[index], max);
+	}
+	sums[index] += value * count;
+	counts[index] += count;
+    }
+
+    /**
+     * Merge adjacent buckets in pairs and double the bucket width.
+     */
+    protected void merge() {
+	for (int i = 0; i < capacity / 2; i++) {
+	    int first = 2 * i;
+	    int second = first + 1;
+	    long count = counts[first] + counts[second];
+	    double min = (counts[first] == 0) ? mins[second]
+		    : ((counts[second] == 0) ? mins[first] : Math.min(mins[first], mins[second]));
+	    double max = (counts[first] == 0) ? maxs[second]
+		    : ((counts[second] == 0) ? maxs[first] : Math.max(maxs[first], maxs[second]));
+	    sums[i] = sums[first] + sums[second];
+	    counts[i] = count;
+	    mins[i] = min;
+	    maxs[i] = max;
+	}
+	for (int i = capacity / 2; i < capacity; i++) {
+	    sums[i] = 0;
+	    counts[i] = 0;
+	}
+	width *= 2;
+    }
+
+    /**
+     * Get collected points in ascending time order. Once bucketed, each
+     * non-empty bucket contributes a point at its start time with the average,
+     * minimum, maximum and sample count of the bucket.
+     *
+     * @return
+     */
+    public SeriesBuffer getBuffer() {
+	if (!bucketed) {
+	    raw.sort();
+	    return raw;
+	}
+	SeriesBuffer buffer = new SeriesBuffer();
+	for (int i = capacity - 1; i >= 0; i--) {
+	    if (counts[i] > 0) {
+		buffer.add(anchor - ((i + 1) * width), sums[i] / counts[i], mins[i], maxs[i], counts[i]);
+	    }
+	}
+	return buffer;
+    }
+
+    public boolean isBucketed() {
+	return bucketed;
+    }
+
+    public long getWidth() {
+	return width;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.charting;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Growable primitive arrays holding the points of a single measurement
+ * series. Each point carries a value along with the minimum, maximum and
+ * number of samples it represents so that raw values and pre-aggregated
+ * rollups can be sampled the same way.
+ * 
+ * @author Derek
+ */
+public class SeriesBuffer {
+
+    /** Initial array capacity */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Point times */
+    private long[] times = new long[INITIAL_CAPACITY];
+
+    /** Point values */
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    /** Point minimum values */
+    private double[] mins = new double[INITIAL_CAPACITY];
+
+    /** Point maximum values */
+    private double[] maxs = new double[INITIAL_CAPACITY];
+
+    /** Number of samples for each point */
+    private long[] counts = new long[INITIAL_CAPACITY];
+
+    /** Number of points */
+    private int size;
+
+    /** Number of samples across all points */
+    private long sampleCount;
+
+    /**
+     * Add a raw value.
+     * 
+     * @param time
+     * @param value
+     */
+    public void add(long time, double value) {
+	add(time, value, value, value, 1);
+    }
+
+    /**
+     * Add a point that summarizes one or more samples.
+     * 
+     * @param time
+     * @param value
+     * @param min
+     * @param max
+     * @param count
+     */
+    public void add(long time, double value, double min, double max, long count) {
+	if (size == times.length) {
+	    int capacity = size * 2;
+	    times = Arrays.copyOf(times, capacity);
+	    values = Arrays.copyOf(values, capacity);
+	    mins = Arrays.copyOf(mins, capacity);
+	    maxs = Arrays.copyOf(maxs, capacity);
+	    counts = Arrays.copyOf(counts, capacity);
+	}
+	times[size] = time;
+	values[size] = value;
+	mins[size] = min;
+	maxs[size] = max;
+	counts[size] = count;
+	size++;
+	sampleCount += count;
+    }
+
+    /**
+     * Order points by ascending time. Data listed newest first is reversed in
+     * place rather than sorted.
+     */
+    public void sort() {
+	boolean ascending = true;
+	boolean descending = true;
+	for (int i = 1; i < size; i++) {
+	    if (times[i] < times[i - 1]) {
+		ascending = false;
+	    } else if (times[i] > times[i - 1]) {
+		descending = false;
+	    }
+	}
+	if (ascending) {
+	    return;
+	}
+	if (descending) {
+	    for (int i = 0, j = size - 1; i < j; i++, j--) {
+		swap(i, j);
+	    }
+	    return;
+	}
+	// Mixed order is uncommon, so sort an index rather than the arrays.
+	Integer[] order = new Integer[size];
+	for (int i = 0; i < size; i++) {
+	    order[i] = i;
+	}
+	final long[] sortTimes = times;
+	Arrays.sort(order, new Comparator<Integer>() {
+
+	    @Override
+	    public int compare(Integer a, Integer b) {
+		return Long.compare(sortTimes[a], sortTimes[b]);
+	    }
+	});
+	long[] newTimes = new long[times.length];
+	double[] newValues = new double[times.length];
+	double[] newMins = new double[times.length];
+	double[] newMaxs = new double[times.length];
+	long[] newCounts = new long[times.length];
+	for (int i = 0; i < size; i++) {
+	    int from = order[i];
+	    newTimes[i] = times[from];
+	    newValues[i] = values[from];
+	    newMins[i] = mins[from];
+	    newMaxs[i] = maxs[from];
+	    newCounts[i] = counts[from];
+	}
+	times = newTimes;
+	values = newValues;
+	mins = newMins;
+	maxs = newMaxs;
+	counts = newCounts;
+    }
+
+    /**
+     * Swap two points.
+     * 
+     * @param i
+     * @param j
+     */
+    protected void swap(int i, int j) {
+	long time = times[i];
+	times[i] = times[j];
+	times[j] = time;
+	double value = values[i];
+	values[i] = values[j];
+	values[j] = value;
+	double min = mins[i];
+	mins[i] = mins[j];
+	mins[j] = min;
+	double max = maxs[i];
+	maxs[i] = maxs[j];
+	maxs[j] = max;
+	long count = counts[i];
+	counts[i] = counts[j];
+	counts[j] = count;
+    }
+
+    public int size() {
+	return size;
+    }
+
+    public long getSampleCount() {
+	return sampleCount;
+    }
+
+    public long getTime(int index) {
+	return times[index];
+    }
+
+    public double getValue(int index) {
+	return values[index];
+    }
+
+    public double getMin(int index) {
+	return mins[index];
+    }
+
+    public double getMax(int index) {
+	return maxs[index];
+    }
+
+    public long getCount(int index) {
+	return counts[index];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.charting;
+
+import com.sitewhere.rest.model.device.charting.SampledChartSeries;
+
+/**
+ * Reduces a sorted {@link SeriesBuffer} to a bounded number of points.
+ * 
+ * @author Derek
+ */
+public class SeriesSampler {
+
+    /**
+     * Sample a series using the given method.
+     * 
+     * @param measurementId
+     * @param buffer
+     * @param maxPoints
+     * @param method
+     * @return
+     */
+    public static SampledChartSeries sample(String measurementId, SeriesBuffer buffer, int maxPoints,
+	    SamplingMethod method) {
+	SampledChartSeries series = (method == SamplingMethod.Buckets) ? buckets(buffer, maxPoints)
+		: lttb(buffer, maxPoints);
+	series.setMeasurementId(measurementId);
+	series.setSourceCount(buffer.getSampleCount());
+	return series;
+    }
+
+    /**
+     * Select representative points with the Largest-Triangle-Three-Buckets
+     * algorithm. The first and last points are always kept and each bucket in
+     * between contributes the point forming the largest triangle with the
+     * previously selected point and the average of the next bucket.
+     * 
+     * @param buffer
+     * @param maxPoints
+     * @return
+     */
+    public static SampledChartSeries lttb(SeriesBuffer buffer, int maxPoints) {
+	int size = buffer.size();
+	if ((maxPoints >= size) || (maxPoints < 3)) {
+	    int[] all = new int[size];
+	    for (int i = 0; i < size; i++) {
+		all[i] = i;
+	    }
+	    return select(buffer, all, all.length);
+	}
+	int[] selected = new int[maxPoints];
+	int count = 0;
+	long origin = buffer.getTime(0);
+	double every = (double) (size - 2) / (maxPoints - 2);
+	int a = 0;
+	selected[count++] = a;
+	for (int i = 0; i < maxPoints - 2; i++) {
+	    // Average of next bucket.
+	    int avgStart = (int) Math.floor((i + 1) * every) + 1;
+	    int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, size);
+	    double avgX = 0;
+	    double avgY = 0;
+	    for (int j = avgStart; j < avgEnd; j++) {
+		avgX += buffer.getTime(j) - origin;
+		avgY += buffer.getValue(j);
+	    }
+	    int avgLength = avgEnd - avgStart;
+	    avgX /= avgLength;
+	    avgY /= avgLength;
+
+	    // Point in current bucket forming largest triangle.
+	    int rangeStart = (int) Math.floor(i * every) + 1;
+	    int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+	    double ax = buffer.getTime(a) - origin;
+	    double ay = buffer.getValue(a);
+	    double maxArea = -1;
+	    int next = rangeStart;
+	    for (int j = rangeStart; j < rangeEnd; j++) {
+		double area = Math.abs(((ax - avgX) * (buffer.getValue(j) - ay))
+			- ((ax - (buffer.getTime(j) - origin)) * (avgY - ay)));
+		if (area > maxArea) {
+		    maxArea = area;
+		    next = j;
+		}
+	    }
+	    selected[count++] = next;
+	    a = next;
+	}
+	selected[count++] = size - 1;
+	return select(buffer, selected, count);
+    }
+
+    /**
+     * Divide the time range into equal buckets and compute the minimum,
+     * maximum and average value of each. Empty buckets are omitted. Points that
+     * already summarize several samples are weighted by their sample count.
+     * 
+     * @param buffer
+     * @param maxPoints
+     * @return
+     */
+    public static SampledChartSeries buckets(SeriesBuffer buffer, int maxPoints) {
+	int size = buffer.size();
+	SampledChartSeries series = new SampledChartSeries();
+	if (size == 0) {
+	    series.setTimes(new long[0]);
+	    series.setValues(new double[0]);
+	    series.setMins(new double[0]);
+	    series.setMaxs(new double[0]);
+	    return series;
+	}
+	int buckets = Math.max(1, Math.min(maxPoints, size));
+	long start = buffer.getTime(0);
+	long range = buffer.getTime(size - 1) - start + 1;
+	long width = Math.max(1, (range + buckets - 1) / buckets);
+
+	long[] times = new long[buckets];
+	double[] sums = new double[buckets];
+	double[] mins = new double[buckets];
+	double[] maxs = new double[buckets];
+	long[] counts = new long[buckets];
+	int used = 0;
+	int current = -1;
+	for (int i = 0; i < size; i++) {
+	    int bucket = (int) Math.min(buckets - 1, (buffer.getTime(i) - start) / width);
+	    if (bucket != current) {
+		current = bucket;
+		times[used] = start + (bucket * width);
+		sums[used] = 0;
+		mins[used] = buffer.getMin(i);
+		maxs[used] = buffer.getMax(i);
+		counts[used] = 0;
+		used++;
+	    }
+	    int slot = used - 1;
+	    long count = buffer.getCount(i);
+	    sums[slot] += buffer.getValue(i) * count;
+	    counts[slot] += count;
+	    mins[slot] = Math.min(mins[slot], buffer.getMin(i));
+	    maxs[slot] = Math.max(maxs[slot], buffer.getMax(i));
+	}
+	double[] averages = new double[used];
+	for (int i = 0; i < used; i++) {
+	    averages[i] = (counts[i] > 0) ? (sums[i] / counts[i]) : 0;
+	}
+	series.setTimes(trim(times, used));
+	series.setValues(averages);
+	series.setMins(trim(mins, used));
+	series.setMaxs(trim(maxs, used));
+	return series;
+    }
+
+    /**
+     * Create a series from selected point indexes.
+     * 
+     * @param buffer
+     * @param indexes
+     * @param count
+     * @return
+     */
+    protected static SampledChartSeries select(SeriesBuffer buffer, int[] indexes, int count) {
+	long[] times = new long[count];
+	double[] values = new double[count];
+	for (int i = 0; i < count; i++) {
+	    times[i] = buffer.getTime(indexes[i]);
+	    values[i] = buffer.getValue(indexes[i]);
+	}
+	SampledChartSeries series = new SampledChartSeries();
+	series.setTimes(times);
+	series.setValues(values);
+	return series;
+    }
+
+    protected static long[] trim(long[] values, int length) {
+	if (values.length == length) {
+	    return values;
+	}
+	long[] trimmed = new long[length];
+	System.arraycopy(values, 0, trimmed, 0, length);
+	return trimmed;
+    }
+
+    protected static double[] trim(double[] values, int length) {
+	if (values.length == length) {
+	    return values;
+	}
+	double[] trimmed = new double[length];
+	System.arraycopy(values, 0, trimmed, 0, length);
+	return trimmed;
+    }
+}
\ No newline at end of file
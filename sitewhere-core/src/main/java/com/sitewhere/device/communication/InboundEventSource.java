@@ -308,6 +308,13 @@ public class InboundEventSource<T> extends TenantLifecycleComponent implements I
 	this.deviceEventDeduplicator = deviceEventDeduplicator;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.communication.IInboundEventSource#
+     * getDeviceEventDeduplicator()
+     */
+    @Override
     public IDeviceEventDeduplicator getDeviceEventDeduplicator() {
 	return deviceEventDeduplicator;
     }
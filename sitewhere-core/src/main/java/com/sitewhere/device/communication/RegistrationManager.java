@@ -7,14 +7,32 @@
  */
 package com.sitewhere.device.communication;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.google.common.util.concurrent.RateLimiter;
 import com.sitewhere.SiteWhere;
 import com.sitewhere.rest.model.device.DeviceElementMapping;
 import com.sitewhere.rest.model.device.command.DeviceMappingAckCommand;
 import com.sitewhere.rest.model.device.command.RegistrationAckCommand;
 import com.sitewhere.rest.model.device.command.RegistrationFailureCommand;
+import com.sitewhere.rest.model.device.communication.DeviceRegistrationResult;
 import com.sitewhere.rest.model.device.request.DeviceAssignmentCreateRequest;
 import com.sitewhere.rest.model.device.request.DeviceCreateRequest;
 import com.sitewhere.rest.model.search.SearchCriteria;
@@ -22,20 +40,32 @@ import com.sitewhere.server.lifecycle.TenantLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.DeviceAssignmentType;
 import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceSpecification;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.command.DeviceMappingResult;
 import com.sitewhere.spi.device.command.RegistrationFailureReason;
 import com.sitewhere.spi.device.command.RegistrationSuccessReason;
+import com.sitewhere.spi.device.communication.IDeviceRegistrationResult;
 import com.sitewhere.spi.device.communication.IRegistrationManager;
 import com.sitewhere.spi.device.event.request.IDeviceMappingCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
+import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceCreateRequest;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 /**
- * Base logic for {@link IRegistrationManager} implementations.
+ * Base logic for {@link IRegistrationManager} implementations. Registration
+ * requests from devices are queued and handled in batches so that lookups and
+ * creation of devices and assignments are done with a few bulk requests rather
+ * than several requests per device. Responses sent back to devices are queued
+ * and rate limited on a separate thread so that a wave of registrations does
+ * not flood the command destinations or hold up batches. On stop, queued
+ * registrations and responses are processed for up to the shutdown wait time
+ * and any left over are dropped and logged.
  * 
  * @author Derek
  */
@@ -44,6 +74,24 @@ public class RegistrationManager extends TenantLifecycleComponent implements IRe
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Default maximum number of registrations handled in one batch */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Default maximum time a registration waits for a batch to fill */
+    public static final long DEFAULT_MAX_BATCH_WAIT_MS = 250;
+
+    /** Default maximum number of registrations waiting to be processed */
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 10000;
+
+    /** Default maximum registration responses sent per second */
+    public static final double DEFAULT_ACK_RATE_LIMIT = 500;
+
+    /** Default maximum time to wait for queued work on stop */
+    public static final long DEFAULT_SHUTDOWN_WAIT_MS = 10000;
+
+    /** Interval at which queue workers check whether they are stopping */
+    private static final long POLL_INTERVAL_MS = 100;
+
     /** Indicates if new devices can register with the system */
     private boolean allowNewDevices = true;
 
@@ -53,6 +101,42 @@ public class RegistrationManager extends TenantLifecycleComponent implements IRe
     /** Token used if autoAssignSite is enabled */
     private String autoAssignSiteToken = null;
 
+    /** Maximum number of registrations handled in one batch */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** Maximum time a registration waits for a batch to fill */
+    private long maxBatchWaitMs = DEFAULT_MAX_BATCH_WAIT_MS;
+
+    /** Maximum number of registrations waiting to be processed */
+    private int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+
+    /** Maximum registration responses sent per second (0 for unlimited) */
+    private double ackRateLimit = DEFAULT_ACK_RATE_LIMIT;
+
+    /** Maximum time to wait for queued work on stop */
+    private long shutdownWaitMs = DEFAULT_SHUTDOWN_WAIT_MS;
+
+    /** Registrations waiting to be processed (null if not batching) */
+    private volatile BlockingQueue<IDeviceRegistrationRequest> queue;
+
+    /** Runs the registration batcher */
+    private ExecutorService batcher;
+
+    /** Processes queued registrations */
+    private RegistrationBatcher batcherTask;
+
+    /** Responses waiting to be sent (null if not started) */
+    private volatile BlockingQueue<IDeviceRegistrationResult> acks;
+
+    /** Runs the response sender */
+    private ExecutorService acknowledger;
+
+    /** Sends queued responses */
+    private Acknowledger acknowledgerTask;
+
+    /** Limits rate of registration responses (null for unlimited) */
+    private volatile RateLimiter ackLimiter;
+
     public RegistrationManager() {
 	super(LifecycleComponentType.RegistrationManager);
     }
@@ -66,70 +150,281 @@ public class RegistrationManager extends TenantLifecycleComponent implements IRe
      */
     @Override
     public void handleDeviceRegistration(IDeviceRegistrationRequest request) throws SiteWhereException {
-	LOGGER.debug("Handling device registration request.");
-	IDevice device = SiteWhere.getServer().getDeviceManagement(getTenant())
-		.getDeviceByHardwareId(request.getHardwareId());
-	IDeviceSpecification specification = SiteWhere.getServer().getDeviceManagement(getTenant())
-		.getDeviceSpecificationByToken(request.getSpecificationToken());
-
-	// If a site token is passed, verify it is valid.
-	if (request.getSiteToken() != null) {
-	    if (SiteWhere.getServer().getDeviceManagement(getTenant()).getSiteByToken(request.getSiteToken()) == null) {
+	BlockingQueue<IDeviceRegistrationRequest> pending = queue;
+	if (pending == null) {
+	    handleDeviceRegistrations(Collections.singletonList(request), true);
+	    return;
+	}
+	try {
+	    pending.put(request);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while queueing device registration.", e);
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.communication.IRegistrationManager#
+     * handleDeviceRegistrations(java.util.List, boolean)
+     */
+    @Override
+    public List<IDeviceRegistrationResult> handleDeviceRegistrations(List<IDeviceRegistrationRequest> requests,
+	    boolean acknowledge) throws SiteWhereException {
+	LOGGER.debug("Handling " + requests.size() + " device registration requests.");
+	IDeviceManagement management = getDeviceManagement();
+
+	// Coalesce requests for the same device so the latest request wins.
+	Map<String, Registration> registrations = new LinkedHashMap<String, Registration>();
+	Set<String> specificationTokens = new HashSet<String>();
+	Set<String> siteTokens = new HashSet<String>();
+	for (IDeviceRegistrationRequest request : requests) {
+	    if (request.getHardwareId() == null) {
+		continue;
+	    }
+	    registrations.put(request.getHardwareId(), new Registration(request));
+	    if (request.getSpecificationToken() != null) {
+		specificationTokens.add(request.getSpecificationToken());
+	    }
+	    if (request.getSiteToken() != null) {
+		siteTokens.add(request.getSiteToken());
+	    }
+	}
+
+	// Load everything the requests refer to with one request per type.
+	Map<String, IDevice> devices = indexDevices(
+		management.getDevicesByHardwareIds(new ArrayList<String>(registrations.keySet())));
+	Set<String> specifications = new HashSet<String>();
+	for (IDeviceSpecification specification : management
+		.getDeviceSpecificationsByTokens(new ArrayList<String>(specificationTokens))) {
+	    specifications.add(specification.getToken());
+	}
+	Set<String> sites = new HashSet<String>();
+	for (ISite site : management.getSitesByTokens(new ArrayList<String>(siteTokens))) {
+	    sites.add(site.getToken());
+	}
+
+	// Decide what needs to be created or updated for each device.
+	List<IDeviceCreateRequest> creates = new ArrayList<IDeviceCreateRequest>();
+	for (Registration registration : registrations.values()) {
+	    IDeviceRegistrationRequest request = registration.request;
+	    if ((request.getSiteToken() != null) && (!sites.contains(request.getSiteToken()))) {
 		LOGGER.warn("Ignoring device registration request because of invalid site token.");
-		return;
+		registration.result.failed(null, "Invalid site token.");
+		continue;
+	    }
+	    IDevice device = devices.get(request.getHardwareId());
+	    if (device == null) {
+		DeviceCreateRequest create = prepareNewDevice(registration, specifications);
+		if (create != null) {
+		    creates.add(create);
+		}
+	    } else if (!device.getSpecificationToken().equals(request.getSpecificationToken())) {
+		LOGGER.info("Found existing device registration, but specification does not match.");
+		registration.invalidSpecification();
+	    } else {
+		registration.device = updateMetadataIfChanged(device, request);
 	    }
 	}
-	// Create device if it does not already exist.
-	if (device == null) {
-	    if (!isAllowNewDevices()) {
-		LOGGER.warn("Ignoring device registration request since new devices are not allowed.");
-		return;
+
+	// Create new devices. Devices registered concurrently are reloaded.
+	if (!creates.isEmpty()) {
+	    LOGGER.debug("Creating " + creates.size() + " new devices as part of registration.");
+	    Map<String, IDevice> created = indexDevices(management.createDevices(creates));
+	    List<String> skipped = new ArrayList<String>();
+	    for (IDeviceCreateRequest create : creates) {
+		IDevice device = created.get(create.getHardwareId());
+		if (device != null) {
+		    registrations.get(create.getHardwareId()).device = device;
+		    registrations.get(create.getHardwareId()).newRegistration = true;
+		} else {
+		    skipped.add(create.getHardwareId());
+		}
 	    }
-	    if (specification == null) {
-		sendInvalidSpecification(request.getHardwareId());
-		return;
+	    for (IDevice device : management.getDevicesByHardwareIds(skipped)) {
+		registrations.get(device.getHardwareId()).device = device;
 	    }
-	    if ((!isAutoAssignSite()) && (request.getSiteToken() == null)) {
-		sendSiteTokenRequired(request.getHardwareId());
-		return;
+	}
+
+	// Make sure devices are assigned.
+	List<IDeviceAssignmentCreateRequest> assigns = new ArrayList<IDeviceAssignmentCreateRequest>();
+	for (Registration registration : registrations.values()) {
+	    if ((registration.device != null) && (registration.device.getAssignmentToken() == null)) {
+		DeviceAssignmentCreateRequest assnCreate = new DeviceAssignmentCreateRequest();
+		assnCreate.setDeviceHardwareId(registration.device.getHardwareId());
+		assnCreate.setAssignmentType(DeviceAssignmentType.Unassociated);
+		assigns.add(assnCreate);
 	    }
-	    if (isAutoAssignSite() && (getAutoAssignSiteToken() == null)) {
-		updateAutoAssignToFirstSite();
-		if (getAutoAssignSiteToken() == null) {
-		    throw new SiteWhereException("Unable to register device. No sites are configured.");
+	}
+	Map<String, String> assignmentTokens = new HashMap<String, String>();
+	if (!assigns.isEmpty()) {
+	    LOGGER.debug("Creating " + assigns.size() + " assignments as part of registration.");
+	    List<String> skipped = new ArrayList<String>();
+	    Map<String, IDeviceAssignment> created = new HashMap<String, IDeviceAssignment>();
+	    for (IDeviceAssignment assignment : management.createDeviceAssignments(assigns)) {
+		created.put(assignment.getDeviceHardwareId(), assignment);
+	    }
+	    for (IDeviceAssignmentCreateRequest assign : assigns) {
+		IDeviceAssignment assignment = created.get(assign.getDeviceHardwareId());
+		if (assignment != null) {
+		    assignmentTokens.put(assign.getDeviceHardwareId(), assignment.getToken());
+		} else {
+		    skipped.add(assign.getDeviceHardwareId());
 		}
 	    }
-	    String siteToken = (request.getSiteToken() != null) ? request.getSiteToken() : getAutoAssignSiteToken();
-	    LOGGER.debug("Creating new device as part of registration.");
-	    DeviceCreateRequest deviceCreate = new DeviceCreateRequest();
-	    deviceCreate.setHardwareId(request.getHardwareId());
-	    deviceCreate.setSpecificationToken(request.getSpecificationToken());
-	    deviceCreate.setSiteToken(siteToken);
-	    deviceCreate.setComments("Device created by on-demand registration.");
-	    deviceCreate.setMetadata(request.getMetadata());
-	    device = SiteWhere.getServer().getDeviceManagement(getTenant()).createDevice(deviceCreate);
-	} else if (!device.getSpecificationToken().equals(request.getSpecificationToken())) {
-	    LOGGER.info("Found existing device registration, but specification does not match.");
-	    sendInvalidSpecification(request.getHardwareId());
-	    return;
-	} else {
-	    LOGGER.info("Found existing device registration. Updating metadata.");
-	    DeviceCreateRequest deviceUpdate = new DeviceCreateRequest();
-	    deviceUpdate.setMetadata(request.getMetadata());
-	    device = SiteWhere.getServer().getDeviceManagement(getTenant()).updateDevice(request.getHardwareId(),
-		    deviceUpdate);
+	    for (IDevice device : management.getDevicesByHardwareIds(skipped)) {
+		assignmentTokens.put(device.getHardwareId(), device.getAssignmentToken());
+	    }
+	}
+
+	List<IDeviceRegistrationResult> results = new ArrayList<IDeviceRegistrationResult>();
+	for (Registration registration : registrations.values()) {
+	    if (registration.device != null) {
+		String token = (registration.device.getAssignmentToken() != null)
+			? registration.device.getAssignmentToken()
+			: assignmentTokens.get(registration.device.getHardwareId());
+		if (token != null) {
+		    registration.result.succeeded((registration.newRegistration)
+			    ? RegistrationSuccessReason.NewRegistration : RegistrationSuccessReason.AlreadyRegistered,
+			    token);
+		} else {
+		    registration.result.failed(null, "Unable to assign device.");
+		}
+	    }
+	    results.add(registration.result);
+	}
+	if (acknowledge) {
+	    sendAcknowledgements(registrations.values());
+	}
+	return results;
+    }
+
+    /**
+     * Validate a registration for a device that does not exist yet and build
+     * the request for creating it. Returns null if the device can not be
+     * created.
+     * 
+     * @param registration
+     * @param specifications
+     * @return
+     * @throws SiteWhereException
+     */
+    protected DeviceCreateRequest prepareNewDevice(Registration registration, Set<String> specifications)
+	    throws SiteWhereException {
+	IDeviceRegistrationRequest request = registration.request;
+	if (!isAllowNewDevices()) {
+	    LOGGER.warn("Ignoring device registration request since new devices are not allowed.");
+	    registration.result.failed(RegistrationFailureReason.NewDevicesNotAllowed,
+		    "Registration manager does not allow new devices to be created.");
+	    return null;
+	}
+	if (!specifications.contains(request.getSpecificationToken())) {
+	    registration.invalidSpecification();
+	    return null;
+	}
+	if ((!isAutoAssignSite()) && (request.getSiteToken() == null)) {
+	    registration.result.failed(RegistrationFailureReason.SiteTokenRequired,
+		    "Automatic site assignment disabled. Site token required.");
+	    registration.notify = true;
+	    return null;
+	}
+	if (isAutoAssignSite() && (getAutoAssignSiteToken() == null)) {
+	    updateAutoAssignToFirstSite();
+	    if (getAutoAssignSiteToken() == null) {
+		registration.result.failed(null, "Unable to register device. No sites are configured.");
+		return null;
+	    }
+	}
+	String siteToken = (request.getSiteToken() != null) ? request.getSiteToken() : getAutoAssignSiteToken();
+	DeviceCreateRequest deviceCreate = new DeviceCreateRequest();
+	deviceCreate.setHardwareId(request.getHardwareId());
+	deviceCreate.setSpecificationToken(request.getSpecificationToken());
+	deviceCreate.setSiteToken(siteToken);
+	deviceCreate.setComments("Device created by on-demand registration.");
+	deviceCreate.setMetadata(request.getMetadata());
+	return deviceCreate;
+    }
+
+    /**
+     * Update metadata for an existing device if the registration request
+     * carries different values. Repeated registrations with unchanged
+     * metadata do not write to the datastore.
+     * 
+     * @param device
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IDevice updateMetadataIfChanged(IDevice device, IDeviceRegistrationRequest request)
+	    throws SiteWhereException {
+	if ((request.getMetadata() == null) || (request.getMetadata().equals(device.getMetadata()))) {
+	    return device;
+	}
+	LOGGER.info("Found existing device registration. Updating metadata.");
+	DeviceCreateRequest deviceUpdate = new DeviceCreateRequest();
+	deviceUpdate.setMetadata(request.getMetadata());
+	return getDeviceManagement().updateDevice(request.getHardwareId(), deviceUpdate);
+    }
+
+    /**
+     * Send registration results to devices. While started, results are queued
+     * for the response sender so that rate limiting does not block the caller.
+     * Otherwise they are sent directly.
+     * 
+     * @param registrations
+     */
+    protected void sendAcknowledgements(Collection<Registration> registrations) {
+	BlockingQueue<IDeviceRegistrationResult> pending = acks;
+	int dropped = 0;
+	for (Registration registration : registrations) {
+	    IDeviceRegistrationResult result = registration.result;
+	    if ((!result.isSuccessful()) && (!registration.notify)) {
+		continue;
+	    }
+	    if (pending == null) {
+		sendAcknowledgement(result);
+	    } else if (!pending.offer(result)) {
+		dropped++;
+	    }
 	}
+	if (dropped > 0) {
+	    LOGGER.warn("Dropped " + dropped + " registration responses because the response queue is full.");
+	}
+    }
 
-	// Make sure device is assigned.
-	if (device.getAssignmentToken() == null) {
-	    LOGGER.debug("Handling unassigned device for registration.");
-	    DeviceAssignmentCreateRequest assnCreate = new DeviceAssignmentCreateRequest();
-	    assnCreate.setDeviceHardwareId(device.getHardwareId());
-	    assnCreate.setAssignmentType(DeviceAssignmentType.Unassociated);
-	    SiteWhere.getServer().getDeviceManagement(getTenant()).createDeviceAssignment(assnCreate);
+    /**
+     * Send the response for a registration result to the device.
+     * 
+     * @param result
+     */
+    protected void sendAcknowledgement(IDeviceRegistrationResult result) {
+	try {
+	    if (result.isSuccessful()) {
+		sendRegistrationAck(result.getHardwareId(),
+			result.getSuccessReason() == RegistrationSuccessReason.NewRegistration);
+	    } else if (result.getFailureReason() == RegistrationFailureReason.SiteTokenRequired) {
+		sendSiteTokenRequired(result.getHardwareId());
+	    } else {
+		sendInvalidSpecification(result.getHardwareId());
+	    }
+	} catch (SiteWhereException e) {
+	    LOGGER.warn("Unable to send registration response to device " + result.getHardwareId() + ".", e);
 	}
-	boolean isNewRegistration = (device != null);
-	sendRegistrationAck(request.getHardwareId(), isNewRegistration);
+    }
+
+    /**
+     * Index devices by hardware id.
+     * 
+     * @param devices
+     * @return
+     */
+    protected static Map<String, IDevice> indexDevices(List<IDevice> devices) {
+	Map<String, IDevice> index = new HashMap<String, IDevice>();
+	for (IDevice device : devices) {
+	    index.put(device.getHardwareId(), device);
+	}
+	return index;
     }
 
     /**
@@ -202,8 +497,7 @@ public class RegistrationManager extends TenantLifecycleComponent implements IRe
 	mapping.setDeviceElementSchemaPath(request.getMappingPath());
 	DeviceMappingAckCommand command = new DeviceMappingAckCommand();
 	try {
-	    SiteWhere.getServer().getDeviceManagement(getTenant())
-		    .createDeviceElementMapping(request.getCompositeDeviceHardwareId(), mapping);
+	    getDeviceManagement().createDeviceElementMapping(request.getCompositeDeviceHardwareId(), mapping);
 	    command.setResult(DeviceMappingResult.MappingCreated);
 	} catch (SiteWhereException e) {
 	    command.setResult(DeviceMappingResult.MappingFailedDueToExisting);
@@ -220,12 +514,26 @@ public class RegistrationManager extends TenantLifecycleComponent implements IRe
      */
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	this.ackLimiter = (getAckRateLimit() > 0) ? RateLimiter.create(getAckRateLimit()) : null;
+	BlockingQueue<IDeviceRegistrationResult> responses = new ArrayBlockingQueue<IDeviceRegistrationResult>(
+		getMaxQueueSize());
+	acknowledgerTask = new Acknowledger(responses);
+	acknowledger = Executors.newSingleThreadExecutor(new WorkerThreadFactory("Acknowledger"));
+	acknowledger.execute(acknowledgerTask);
+	this.acks = responses;
+	if (getBatchSize() > 1) {
+	    BlockingQueue<IDeviceRegistrationRequest> pending = new ArrayBlockingQueue<IDeviceRegistrationRequest>(
+		    getMaxQueueSize());
+	    batcherTask = new RegistrationBatcher(pending);
+	    batcher = Executors.newSingleThreadExecutor(new WorkerThreadFactory("Batcher"));
+	    batcher.execute(batcherTask);
+	    this.queue = pending;
+	}
 	if (isAutoAssignSite()) {
 	    if (getAutoAssignSiteToken() == null) {
 		updateAutoAssignToFirstSite();
 	    } else {
-		ISite site = SiteWhere.getServer().getDeviceManagement(getTenant())
-			.getSiteByToken(getAutoAssignSiteToken());
+		ISite site = getDeviceManagement().getSiteByToken(getAutoAssignSiteToken());
 		if (site == null) {
 		    throw new SiteWhereException("Registration manager auto assignment site token is invalid.");
 		}
@@ -233,6 +541,62 @@ public class RegistrationManager extends TenantLifecycleComponent implements IRe
 	}
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponent#stop(com.sitewhere.spi.
+     * server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	long deadline = System.currentTimeMillis() + getShutdownWaitMs();
+
+	// Stop accepting registrations, then finish those already queued.
+	this.queue = null;
+	if (batcher != null) {
+	    finish(batcher, batcherTask, deadline, "registrations");
+	    batcher = null;
+	    batcherTask = null;
+	}
+
+	// Responses for finished batches are queued by now.
+	if (acknowledger != null) {
+	    finish(acknowledger, acknowledgerTask, deadline, "registration responses");
+	    this.acks = null;
+	    acknowledger = null;
+	    acknowledgerTask = null;
+	}
+    }
+
+    /**
+     * Let a queue worker process what is already queued, waiting until the
+     * deadline. If it does not finish in time, the worker stops after the item
+     * it is working on and the rest of the queue is dropped and logged. The
+     * worker thread is not interrupted so that a batch is never cut off midway.
+     * 
+     * @param executor
+     * @param worker
+     * @param deadline
+     * @param description
+     */
+    protected void finish(ExecutorService executor, QueueWorker<?> worker, long deadline, String description) {
+	worker.drain();
+	executor.shutdown();
+	boolean finished = false;
+	try {
+	    finished = executor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()),
+		    TimeUnit.MILLISECONDS);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	int dropped = (finished) ? 0 : worker.abandon();
+	if (dropped > 0) {
+	    LOGGER.warn("Dropped " + dropped + " queued " + description + " that were not processed within "
+		    + getShutdownWaitMs() + "ms of stopping.");
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -243,14 +607,23 @@ public class RegistrationManager extends TenantLifecycleComponent implements IRe
 	return LOGGER;
     }
 
+    /**
+     * Get device management implementation for the tenant.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IDeviceManagement getDeviceManagement() throws SiteWhereException {
+	return SiteWhere.getServer().getDeviceManagement(getTenant());
+    }
+
     /**
      * Update token for auto-assigned site to first site in list.
      * 
      * @throws SiteWhereException
      */
     protected void updateAutoAssignToFirstSite() throws SiteWhereException {
-	ISearchResults<ISite> sites = SiteWhere.getServer().getDeviceManagement(getTenant())
-		.listSites(new SearchCriteria(1, 1));
+	ISearchResults<ISite> sites = getDeviceManagement().listSites(new SearchCriteria(1, 1));
 	if (sites.getResults().isEmpty()) {
 	    LOGGER.warn("Registration manager configured for auto-assign site, but no sites were found.");
 	    setAutoAssignSiteToken(null);
@@ -259,6 +632,46 @@ public class RegistrationManager extends TenantLifecycleComponent implements IRe
 	}
     }
 
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+	this.batchSize = batchSize;
+    }
+
+    public long getMaxBatchWaitMs() {
+	return maxBatchWaitMs;
+    }
+
+    public void setMaxBatchWaitMs(long maxBatchWaitMs) {
+	this.maxBatchWaitMs = maxBatchWaitMs;
+    }
+
+    public int getMaxQueueSize() {
+	return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(int maxQueueSize) {
+	this.maxQueueSize = maxQueueSize;
+    }
+
+    public double getAckRateLimit() {
+	return ackRateLimit;
+    }
+
+    public void setAckRateLimit(double ackRateLimit) {
+	this.ackRateLimit = ackRateLimit;
+    }
+
+    public long getShutdownWaitMs() {
+	return shutdownWaitMs;
+    }
+
+    public void setShutdownWaitMs(long shutdownWaitMs) {
+	this.shutdownWaitMs = shutdownWaitMs;
+    }
+
     public boolean isAllowNewDevices() {
 	return allowNewDevices;
     }
@@ -282,4 +695,212 @@ public class RegistrationManager extends TenantLifecycleComponent implements IRe
     public void setAutoAssignSiteToken(String autoAssignSiteToken) {
 	this.autoAssignSiteToken = autoAssignSiteToken;
     }
-}
\ No newline at end of file
+
+    /**
+     * Registration request being processed along with its outcome.
+     * 
+     * @author Derek
+     */
+    protected static class Registration {
+
+	/** Request being processed */
+	private IDeviceRegistrationRequest request;
+
+	/** Result reported for request */
+	private DeviceRegistrationResult result;
+
+	/** Registered device */
+	private IDevice device;
+
+	/** Indicates device was created by this registration */
+	private boolean newRegistration = false;
+
+	/** Indicates failure is reported to the device */
+	private boolean notify = false;
+
+	public Registration(IDeviceRegistrationRequest request) {
+	    this.request = request;
+	    this.result = new DeviceRegistrationResult(request.getHardwareId());
+	}
+
+	/**
+	 * Mark registration as failed because of a specification that is not
+	 * valid or does not match the existing device.
+	 */
+	public void invalidSpecification() {
+	    result.failed(RegistrationFailureReason.InvalidSpecificationToken,
+		    "Specification token passed in registration was invalid.");
+	    notify = true;
+	}
+    }
+
+    /**
+     * Takes items from a queue and processes them until asked to drain, then
+     * exits once the queue is empty. An abandoned worker exits after the item
+     * it is working on.
+     * 
+     * @author Derek
+     */
+    private abstract class QueueWorker<T> implements Runnable {
+
+	/** Queue of pending items */
+	protected BlockingQueue<T> pending;
+
+	/** Indicates worker should exit once queue is empty */
+	private volatile boolean draining = false;
+
+	/** Indicates worker should exit as soon as possible */
+	private volatile boolean abandoned = false;
+
+	public QueueWorker(BlockingQueue<T> pending) {
+	    this.pending = pending;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+	    while (!abandoned) {
+		try {
+		    T next = pending.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		    if (next != null) {
+			process(next);
+		    } else if (draining) {
+			return;
+		    }
+		} catch (InterruptedException e) {
+		    return;
+		}
+	    }
+	}
+
+	/**
+	 * Process an item taken from the queue.
+	 * 
+	 * @param next
+	 * @throws InterruptedException
+	 */
+	protected abstract void process(T next) throws InterruptedException;
+
+	/**
+	 * Exit once the queue is empty.
+	 */
+	public void drain() {
+	    draining = true;
+	}
+
+	/**
+	 * Exit after the current item and discard the rest of the queue.
+	 * 
+	 * @return number of items discarded
+	 */
+	public int abandon() {
+	    abandoned = true;
+	    List<T> dropped = new ArrayList<T>();
+	    pending.drainTo(dropped);
+	    return dropped.size();
+	}
+
+	public boolean isDraining() {
+	    return draining;
+	}
+    }
+
+    /**
+     * Takes queued registration requests and processes them in batches. A
+     * batch is processed when it is full or when the oldest request has waited
+     * for the maximum batch wait time.
+     * 
+     * @author Derek
+     */
+    private class RegistrationBatcher extends QueueWorker<IDeviceRegistrationRequest> {
+
+	public RegistrationBatcher(BlockingQueue<IDeviceRegistrationRequest> pending) {
+	    super(pending);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.device.communication.RegistrationManager.QueueWorker#
+	 * process(java.lang.Object)
+	 */
+	@Override
+	protected void process(IDeviceRegistrationRequest first) throws InterruptedException {
+	    List<IDeviceRegistrationRequest> batch = new ArrayList<IDeviceRegistrationRequest>();
+	    batch.add(first);
+	    long deadline = System.currentTimeMillis() + getMaxBatchWaitMs();
+	    while (batch.size() < getBatchSize()) {
+		if (pending.drainTo(batch, getBatchSize() - batch.size()) > 0) {
+		    continue;
+		}
+
+		// No more requests will arrive once draining.
+		long remaining = (isDraining()) ? 0 : deadline - System.currentTimeMillis();
+		if (remaining <= 0) {
+		    break;
+		}
+
+		// Wait in short intervals so a drain is noticed promptly.
+		IDeviceRegistrationRequest next = pending.poll(Math.min(remaining, POLL_INTERVAL_MS),
+			TimeUnit.MILLISECONDS);
+		if (next != null) {
+		    batch.add(next);
+		}
+	    }
+	    try {
+		handleDeviceRegistrations(batch, true);
+	    } catch (Throwable t) {
+		LOGGER.error("Unable to process batch of " + batch.size() + " device registrations.", t);
+	    }
+	}
+    }
+
+    /**
+     * Sends queued registration responses to devices, limiting the rate at
+     * which commands are delivered if configured.
+     * 
+     * @author Derek
+     */
+    private class Acknowledger extends QueueWorker<IDeviceRegistrationResult> {
+
+	public Acknowledger(BlockingQueue<IDeviceRegistrationResult> pending) {
+	    super(pending);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.device.communication.RegistrationManager.QueueWorker#
+	 * process(java.lang.Object)
+	 */
+	@Override
+	protected void process(IDeviceRegistrationResult result) throws InterruptedException {
+	    RateLimiter limiter = ackLimiter;
+	    if (limiter != null) {
+		limiter.acquire();
+	    }
+	    sendAcknowledgement(result);
+	}
+    }
+
+    /** Used for naming registration manager threads */
+    private class WorkerThreadFactory implements ThreadFactory {
+
+	/** Suffix for thread name */
+	private String role;
+
+	public WorkerThreadFactory(String role) {
+	    this.role = role;
+	}
+
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, "SiteWhere RegistrationManager(" + getTenant().getId() + ") " + role);
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+}
@@ -7,10 +7,17 @@
  */
 package com.sitewhere.device.communication.coap;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.californium.core.network.config.NetworkConfig;
 
+import com.sitewhere.SiteWhere;
 import com.sitewhere.device.communication.InboundEventReceiver;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.communication.IInboundEventReceiver;
@@ -18,7 +25,11 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Implementation of {@link IInboundEventReceiver} that starts a CoAP server
- * using the Eclipse Californium implementation.
+ * using the Eclipse Californium implementation. Block-wise transfers are
+ * handled by the Californium stack, so payloads larger than a single datagram
+ * (such as event batches) are reassembled before delivery. When asynchronous
+ * delivery is enabled, requests are acknowledged immediately and processed by a
+ * bounded worker pool.
  * 
  * @author Derek
  */
@@ -33,15 +44,48 @@ public class CoapServerEventReceiver extends InboundEventReceiver<byte[]> {
     /** Default hostname */
     private static final String DEFAULT_HOSTNAME = "localhost";
 
+    /** Default number of worker threads for asynchronous delivery */
+    private static final int DEFAULT_NUM_WORKERS = 5;
+
+    /** Default number of requests queued for workers */
+    private static final int DEFAULT_MAX_QUEUED_REQUESTS = 1000;
+
+    /** Default block size used for block-wise transfers */
+    private static final int DEFAULT_PREFERRED_BLOCK_SIZE = 512;
+
+    /** Default maximum message size before block-wise transfer is used */
+    private static final int DEFAULT_MAX_MESSAGE_SIZE = 1024;
+
+    /** Max time in seconds to wait for workers to finish on shutdown */
+    private static final int WORKER_SHUTDOWN_SECS = 10;
+
     /** Hostname for binding socket */
     private String hostname = DEFAULT_HOSTNAME;
 
     /** Port for binding socket */
     private int port = COAP_PORT;
 
+    /** Indicates if requests are processed by a worker pool */
+    private boolean asyncDelivery = false;
+
+    /** Number of worker threads for asynchronous delivery */
+    private int numWorkers = DEFAULT_NUM_WORKERS;
+
+    /** Number of requests queued for workers before rejecting */
+    private int maxQueuedRequests = DEFAULT_MAX_QUEUED_REQUESTS;
+
+    /** Block size used for block-wise transfers */
+    private int preferredBlockSize = DEFAULT_PREFERRED_BLOCK_SIZE;
+
+    /** Maximum message size before block-wise transfer is used */
+    private int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+
     /** Customized SiteWhere CoAP server */
     private SiteWhereCoapServer server;
 
+    /** Workers used for asynchronous delivery */
+    private ThreadPoolExecutor workers;
+
     /*
      * (non-Javadoc)
      * 
@@ -52,7 +96,16 @@ public class CoapServerEventReceiver extends InboundEventReceiver<byte[]> {
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	if (server == null) {
-	    server = new SiteWhereCoapServer(this, getHostname(), getPort());
+	    if (isAsyncDelivery()) {
+		workers = new ThreadPoolExecutor(getNumWorkers(), getNumWorkers(), 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(getMaxQueuedRequests()), new WorkerThreadFactory());
+	    }
+	    NetworkConfig config = NetworkConfig.createStandardWithoutFile();
+	    config.setInt(NetworkConfig.Keys.COAP_PORT, getPort());
+	    config.setInt(NetworkConfig.Keys.PREFERRED_BLOCK_SIZE, getPreferredBlockSize());
+	    config.setInt(NetworkConfig.Keys.MAX_MESSAGE_SIZE, getMaxMessageSize());
+	    server = new SiteWhereCoapServer(this, getHostname(), getPort(), config, workers,
+		    SiteWhere.getServer().getMetricRegistry());
 	}
 	server.start();
     }
@@ -66,7 +119,22 @@ public class CoapServerEventReceiver extends InboundEventReceiver<byte[]> {
      */
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
-	server.stop();
+	if (server != null) {
+	    server.stop();
+	    server.destroy();
+	    server = null;
+	}
+	if (workers != null) {
+	    workers.shutdown();
+	    try {
+		if (!workers.awaitTermination(WORKER_SHUTDOWN_SECS, TimeUnit.SECONDS)) {
+		    LOGGER.warn("CoAP workers did not finish processing before shutdown.");
+		}
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    workers = null;
+	}
     }
 
     /*
@@ -98,6 +166,46 @@ public class CoapServerEventReceiver extends InboundEventReceiver<byte[]> {
 	this.server = server;
     }
 
+    public boolean isAsyncDelivery() {
+	return asyncDelivery;
+    }
+
+    public void setAsyncDelivery(boolean asyncDelivery) {
+	this.asyncDelivery = asyncDelivery;
+    }
+
+    public int getNumWorkers() {
+	return numWorkers;
+    }
+
+    public void setNumWorkers(int numWorkers) {
+	this.numWorkers = numWorkers;
+    }
+
+    public int getMaxQueuedRequests() {
+	return maxQueuedRequests;
+    }
+
+    public void setMaxQueuedRequests(int maxQueuedRequests) {
+	this.maxQueuedRequests = maxQueuedRequests;
+    }
+
+    public int getPreferredBlockSize() {
+	return preferredBlockSize;
+    }
+
+    public void setPreferredBlockSize(int preferredBlockSize) {
+	this.preferredBlockSize = preferredBlockSize;
+    }
+
+    public int getMaxMessageSize() {
+	return maxMessageSize;
+    }
+
+    public void setMaxMessageSize(int maxMessageSize) {
+	this.maxMessageSize = maxMessageSize;
+    }
+
     public String getHostname() {
 	return hostname;
     }
@@ -113,4 +221,15 @@ public class CoapServerEventReceiver extends InboundEventReceiver<byte[]> {
     public void setPort(int port) {
 	this.port = port;
     }
+
+    /** Used for naming CoAP worker threads */
+    private class WorkerThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere CoAP Worker " + counter.incrementAndGet());
+	}
+    }
 }
\ No newline at end of file
@@ -8,10 +8,13 @@
 package com.sitewhere.device.communication.coap;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.eclipse.californium.core.CoapServer;
 import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.config.NetworkConfig;
 
+import com.codahale.metrics.MetricRegistry;
 import com.sitewhere.spi.device.communication.IInboundEventReceiver;
 
 /**
@@ -27,4 +30,12 @@ public class SiteWhereCoapServer extends CoapServer {
 	InetSocketAddress bindToAddress = new InetSocketAddress(hostname, port);
 	addEndpoint(new CoapEndpoint(bindToAddress));
     }
+
+    public SiteWhereCoapServer(IInboundEventReceiver<byte[]> receiver, String hostname, int port,
+	    NetworkConfig config, ThreadPoolExecutor workers, MetricRegistry metrics) {
+	super(config);
+	setMessageDeliverer(new SiteWhereMessageDeliverer(receiver, workers, metrics));
+	InetSocketAddress bindToAddress = new InetSocketAddress(hostname, port);
+	addEndpoint(new CoapEndpoint(bindToAddress, config));
+    }
 }
\ No newline at end of file
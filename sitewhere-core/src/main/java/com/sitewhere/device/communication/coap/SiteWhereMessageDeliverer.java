@@ -7,9 +7,12 @@
  */
 package com.sitewhere.device.communication.coap;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -19,6 +22,9 @@ import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.Exchange;
 import org.eclipse.californium.core.server.MessageDeliverer;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.sitewhere.SiteWhere;
 import com.sitewhere.device.communication.EventProcessingLogic;
 import com.sitewhere.rest.model.device.communication.DeviceRequest.Type;
@@ -29,7 +35,11 @@ import com.sitewhere.spi.device.communication.IInboundEventReceiver;
 import com.sitewhere.spi.tenant.ITenant;
 
 /**
- * Take care of all SiteWhere message handling.
+ * Take care of all SiteWhere message handling. If a worker pool is provided,
+ * requests are handed off to it and acknowledged immediately so that decoding
+ * and enqueueing happen off the Californium protocol threads. The final
+ * response is then sent as a separate response. Request rate, latency and
+ * failures are tracked per resource when a metric registry is available.
  * 
  * @author Derek
  */
@@ -44,11 +54,36 @@ public class SiteWhereMessageDeliverer implements MessageDeliverer {
     /** Indicates device hardware id (detected from URI) */
     private static final String META_HARDWARE_ID = "hardwareId";
 
+    /** Event type passed in metadata for batch payloads */
+    public static final String EVENT_TYPE_BATCH = "DeviceEventBatch";
+
+    /** Seconds a client should wait before retrying when workers are busy */
+    private static final long BUSY_RETRY_SECONDS = 5;
+
     /** Receiver that handles incoming events */
     private IInboundEventReceiver<byte[]> eventReceiver;
 
+    /** Worker pool for asynchronous delivery (null for synchronous) */
+    private ThreadPoolExecutor workers;
+
+    /** Registry for per-resource metrics (may be null) */
+    private MetricRegistry metrics;
+
+    /** Meter for requests rejected because workers were busy */
+    private Meter rejected;
+
     public SiteWhereMessageDeliverer(IInboundEventReceiver<byte[]> eventReceiver) {
+	this(eventReceiver, null, null);
+    }
+
+    public SiteWhereMessageDeliverer(IInboundEventReceiver<byte[]> eventReceiver, ThreadPoolExecutor workers,
+	    MetricRegistry metrics) {
 	this.eventReceiver = eventReceiver;
+	this.workers = workers;
+	this.metrics = metrics;
+	if (metrics != null) {
+	    this.rejected = metrics.meter(getMetricName("all", "rejected"));
+	}
     }
 
     /*
@@ -59,10 +94,94 @@ public class SiteWhereMessageDeliverer implements MessageDeliverer {
      * eclipse. californium.core.network.Exchange)
      */
     @Override
-    public void deliverRequest(Exchange exchange) {
+    public void deliverRequest(final Exchange exchange) {
+	if (workers == null) {
+	    handleRequest(exchange);
+	    return;
+	}
+	if (workers.getQueue().remainingCapacity() == 0) {
+	    rejectBusy(exchange);
+	    return;
+	}
+	exchange.sendAccept();
+	try {
+	    workers.execute(new Runnable() {
+
+		@Override
+		public void run() {
+		    handleRequest(exchange);
+		}
+	    });
+	} catch (RejectedExecutionException e) {
+	    rejectBusy(exchange);
+	}
+    }
+
+    /**
+     * Handle a request, recording metrics for the resource it targets.
+     * 
+     * @param exchange
+     */
+    protected void handleRequest(Exchange exchange) {
 	OptionSet options = exchange.getRequest().getOptions();
-	List<String> paths = options.getUriPath();
-	handleTenantRequest(getEventReceiver().getTenant(), paths, exchange);
+	List<String> paths = new ArrayList<String>(options.getUriPath());
+	if (metrics == null) {
+	    handleTenantRequest(getEventReceiver().getTenant(), paths, exchange);
+	    return;
+	}
+	String resource = getResourceName(paths);
+	Timer.Context timer = metrics.timer(getMetricName(resource, "requests")).time();
+	try {
+	    handleTenantRequest(getEventReceiver().getTenant(), paths, exchange);
+	} finally {
+	    timer.stop();
+	    Response response = exchange.getResponse();
+	    if ((response == null) || (!ResponseCode.isSuccess(response.getCode()))) {
+		metrics.meter(getMetricName(resource, "failures")).mark();
+	    }
+	}
+    }
+
+    /**
+     * Reply that the server is too busy to handle the request.
+     * 
+     * @param exchange
+     */
+    protected void rejectBusy(Exchange exchange) {
+	if (rejected != null) {
+	    rejected.mark();
+	}
+	Response response = new Response(ResponseCode.SERVICE_UNAVAILABLE);
+	response.setPayload("Server is busy. Retry later.");
+	response.getOptions().setMaxAge(BUSY_RETRY_SECONDS);
+	exchange.sendResponse(response);
+    }
+
+    /**
+     * Get name of resource used for metrics based on request path. Device
+     * operations are grouped by operation rather than by device.
+     * 
+     * @param paths
+     * @return
+     */
+    protected String getResourceName(List<String> paths) {
+	if (paths.size() > 2) {
+	    return paths.get(0) + "." + paths.get(2);
+	} else if (paths.size() > 0) {
+	    return paths.get(0);
+	}
+	return "root";
+    }
+
+    /**
+     * Get fully-qualified metric name for a resource handled by this receiver.
+     * 
+     * @param resource
+     * @param metric
+     * @return
+     */
+    protected String getMetricName(String resource, String metric) {
+	return MetricRegistry.name("coap", getEventReceiver().getTenant().getId(), resource, metric);
     }
 
     /**
@@ -73,6 +192,10 @@ public class SiteWhereMessageDeliverer implements MessageDeliverer {
      * @param exchange
      */
     protected void handleTenantRequest(ITenant tenant, List<String> paths, Exchange exchange) {
+	if (paths.isEmpty()) {
+	    createAndSendResponse(ResponseCode.BAD_REQUEST, "No tenant resource type specified.", exchange);
+	    return;
+	}
 	String resourceType = paths.remove(0);
 	if ("devices".equals(resourceType)) {
 	    handleGlobalDeviceRequest(tenant, paths, exchange);
@@ -143,6 +266,10 @@ public class SiteWhereMessageDeliverer implements MessageDeliverer {
 		handleDeviceLocations(tenant, device, paths, exchange);
 	    } else if ("acks".equals(operation)) {
 		handleDeviceAcks(tenant, device, paths, exchange);
+	    } else if ("batch".equals(operation)) {
+		handleDeviceBatch(tenant, device, paths, exchange);
+	    } else {
+		createAndSendResponse(ResponseCode.BAD_REQUEST, "Unknown device request type: " + operation, exchange);
 	    }
 	} else {
 	    createAndSendResponse(ResponseCode.BAD_REQUEST, "No device request type specified.", exchange);
@@ -158,25 +285,7 @@ public class SiteWhereMessageDeliverer implements MessageDeliverer {
      * @param exchange
      */
     protected void handleDeviceMeasurements(ITenant tenant, IDevice device, List<String> paths, Exchange exchange) {
-	Map<String, Object> metadata = new HashMap<String, Object>();
-	metadata.put(META_EVENT_TYPE, Type.DeviceMeasurements.name());
-	metadata.put(META_HARDWARE_ID, device.getHardwareId());
-	switch (exchange.getRequest().getCode()) {
-	case POST: {
-	    try {
-		EventProcessingLogic.processRawPayloadWithExceptionHandling(getEventReceiver(),
-			exchange.getRequest().getPayload(), metadata);
-		createAndSendResponse(ResponseCode.CONTENT, "Device measurements created successfully.", exchange);
-	    } catch (EventDecodeException e) {
-		LOGGER.error("Unable to decode CoAP measurements payload.", e);
-		createAndSendResponse(ResponseCode.BAD_REQUEST, "Unable to parse payload.", exchange);
-	    }
-	    break;
-	}
-	default: {
-	    createAndSendResponse(ResponseCode.BAD_REQUEST, "Device measurements operation not available.", exchange);
-	}
-	}
+	handleDeviceEvent(device, Type.DeviceMeasurements.name(), "measurements", "Device measurements", exchange);
     }
 
     /**
@@ -188,25 +297,7 @@ public class SiteWhereMessageDeliverer implements MessageDeliverer {
      * @param exchange
      */
     protected void handleDeviceAlerts(ITenant tenant, IDevice device, List<String> paths, Exchange exchange) {
-	Map<String, Object> metadata = new HashMap<String, Object>();
-	metadata.put(META_EVENT_TYPE, Type.DeviceAlert.name());
-	metadata.put(META_HARDWARE_ID, device.getHardwareId());
-	switch (exchange.getRequest().getCode()) {
-	case POST: {
-	    try {
-		EventProcessingLogic.processRawPayloadWithExceptionHandling(getEventReceiver(),
-			exchange.getRequest().getPayload(), metadata);
-		createAndSendResponse(ResponseCode.CONTENT, "Device alert created successfully.", exchange);
-	    } catch (EventDecodeException e) {
-		LOGGER.error("Unable to decode CoAP alert payload.", e);
-		createAndSendResponse(ResponseCode.BAD_REQUEST, "Unable to parse payload.", exchange);
-	    }
-	    break;
-	}
-	default: {
-	    createAndSendResponse(ResponseCode.BAD_REQUEST, "Device alert operation not available.", exchange);
-	}
-	}
+	handleDeviceEvent(device, Type.DeviceAlert.name(), "alert", "Device alert", exchange);
     }
 
     /**
@@ -218,25 +309,7 @@ public class SiteWhereMessageDeliverer implements MessageDeliverer {
      * @param exchange
      */
     protected void handleDeviceLocations(ITenant tenant, IDevice device, List<String> paths, Exchange exchange) {
-	Map<String, Object> metadata = new HashMap<String, Object>();
-	metadata.put(META_EVENT_TYPE, Type.DeviceLocation.name());
-	metadata.put(META_HARDWARE_ID, device.getHardwareId());
-	switch (exchange.getRequest().getCode()) {
-	case POST: {
-	    try {
-		EventProcessingLogic.processRawPayloadWithExceptionHandling(getEventReceiver(),
-			exchange.getRequest().getPayload(), metadata);
-		createAndSendResponse(ResponseCode.CONTENT, "Device location created successfully.", exchange);
-	    } catch (EventDecodeException e) {
-		LOGGER.error("Unable to decode CoAP location payload.", e);
-		createAndSendResponse(ResponseCode.BAD_REQUEST, "Unable to parse payload.", exchange);
-	    }
-	    break;
-	}
-	default: {
-	    createAndSendResponse(ResponseCode.BAD_REQUEST, "Device location operation not available.", exchange);
-	}
-	}
+	handleDeviceEvent(device, Type.DeviceLocation.name(), "location", "Device location", exchange);
     }
 
     /**
@@ -248,23 +321,52 @@ public class SiteWhereMessageDeliverer implements MessageDeliverer {
      * @param exchange
      */
     protected void handleDeviceAcks(ITenant tenant, IDevice device, List<String> paths, Exchange exchange) {
-	Map<String, Object> metadata = new HashMap<String, Object>();
-	metadata.put(META_EVENT_TYPE, Type.Acknowledge.name());
-	metadata.put(META_HARDWARE_ID, device.getHardwareId());
+	handleDeviceEvent(device, Type.Acknowledge.name(), "acknowledgement", "Device acknowledgement", exchange);
+    }
+
+    /**
+     * Handle a batch of events for a device. Large batches may be sent using
+     * CoAP block-wise transfers, which are reassembled before delivery.
+     * 
+     * @param tenant
+     * @param device
+     * @param paths
+     * @param exchange
+     */
+    protected void handleDeviceBatch(ITenant tenant, IDevice device, List<String> paths, Exchange exchange) {
+	handleDeviceEvent(device, EVENT_TYPE_BATCH, "batch", "Device event batch", exchange);
+    }
+
+    /**
+     * Pass the payload for a device event to the event receiver.
+     * 
+     * @param device
+     * @param eventType
+     * @param description
+     *            short description used in log messages
+     * @param label
+     *            prefix used in response messages
+     * @param exchange
+     */
+    protected void handleDeviceEvent(IDevice device, String eventType, String description, String label,
+	    Exchange exchange) {
 	switch (exchange.getRequest().getCode()) {
 	case POST: {
+	    Map<String, Object> metadata = new HashMap<String, Object>(4);
+	    metadata.put(META_EVENT_TYPE, eventType);
+	    metadata.put(META_HARDWARE_ID, device.getHardwareId());
 	    try {
 		EventProcessingLogic.processRawPayloadWithExceptionHandling(getEventReceiver(),
 			exchange.getRequest().getPayload(), metadata);
-		createAndSendResponse(ResponseCode.CONTENT, "Device acknowledgement created successfully.", exchange);
+		createAndSendResponse(ResponseCode.CONTENT, label + " created successfully.", exchange);
 	    } catch (EventDecodeException e) {
-		LOGGER.error("Unable to decode CoAP acknowledgement payload.", e);
+		LOGGER.error("Unable to decode CoAP " + description + " payload.", e);
 		createAndSendResponse(ResponseCode.BAD_REQUEST, "Unable to parse payload.", exchange);
 	    }
 	    break;
 	}
 	default: {
-	    createAndSendResponse(ResponseCode.BAD_REQUEST, "Device location operation not available.", exchange);
+	    createAndSendResponse(ResponseCode.BAD_REQUEST, label + " operation not available.", exchange);
 	}
 	}
     }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.communication.decoder.composite;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only view of event source metadata with device context metadata laid
+ * over it. Lookups check the context first, so passing metadata to a delegate
+ * decoder does not copy the event source metadata for each message.
+ * 
+ * @author Derek
+ */
+public class CombinedMetadata extends AbstractMap<String, Object> {
+
+    /** Metadata from event source */
+    private Map<String, Object> source;
+
+    /** Metadata from device context */
+    private Map<String, Object> context;
+
+    /** Merged entries created if the view is iterated */
+    private Set<Map.Entry<String, Object>> entries;
+
+    public CombinedMetadata(Map<String, Object> source, Map<String, Object> context) {
+	this.source = source;
+	this.context = context;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.AbstractMap#get(java.lang.Object)
+     */
+    @Override
+    public Object get(Object key) {
+	if (context.containsKey(key)) {
+	    return context.get(key);
+	}
+	return source.get(key);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.AbstractMap#containsKey(java.lang.Object)
+     */
+    @Override
+    public boolean containsKey(Object key) {
+	return context.containsKey(key) || source.containsKey(key);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.AbstractMap#entrySet()
+     */
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+	if (entries == null) {
+	    Map<String, Object> merged = new HashMap<String, Object>(source);
+	    merged.putAll(context);
+	    entries = merged.entrySet();
+	}
+	return entries;
+    }
+}
@@ -1,7 +1,6 @@
 package com.sitewhere.device.communication.decoder.composite;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -10,7 +9,6 @@ import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.communication.EventDecodeException;
 import com.sitewhere.spi.device.communication.ICompositeDeviceEventDecoder;
 import com.sitewhere.spi.device.communication.IDecodedDeviceRequest;
-import com.sitewhere.spi.device.communication.IDeviceEventDecoder;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
@@ -18,6 +16,8 @@ import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
  * Basic logic for a composite decoder. Extracts metadata from initial payload,
  * looks up device management data to build a context, then loops through a list
  * of potential decoders, returning the first one that applies to the context.
+ * The device, specification and chosen decoder are cached by hardware id, so
+ * decoder choices should only depend on the device and its specification.
  * 
  * @author Derek
  *
@@ -26,6 +26,9 @@ import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 public abstract class CompositeDeviceEventDecoder<T> extends TenantLifecycleComponent
 	implements ICompositeDeviceEventDecoder<T> {
 
+    /** Device context and decoder choice by hardware id */
+    private DeviceContextCache<T> contextCache = new DeviceContextCache<T>();
+
     public CompositeDeviceEventDecoder() {
 	super(LifecycleComponentType.DeviceEventDecoder);
     }
@@ -53,37 +56,57 @@ public abstract class CompositeDeviceEventDecoder<T> extends TenantLifecycleComp
 
 	// Parse metadata from payload.
 	IMessageMetadata<T> metadata = getMetadataExtractor().extractMetadata(payload, eventSourceMetadata);
-	getLogger().info("Extracted payload metadata: HardwareId: " + metadata.getHardwareId() + " Payload: "
-		+ metadata.getPayload().toString());
+	if (getLogger().isDebugEnabled()) {
+	    getLogger().debug("Extracted payload metadata: HardwareId: " + metadata.getHardwareId());
+	}
 
 	try {
-	    IDeviceContext<T> context = buildContext(metadata);
-	    getLogger().debug("Built context: Device: " + context.getDevice() + " Specification: "
-		    + context.getDeviceSpecification());
-
-	    // Add context metadata to event source metadata.
-	    Map<String, Object> combined = new HashMap<String, Object>();
-	    if (eventSourceMetadata != null) {
-		combined.putAll(eventSourceMetadata);
+	    DeviceContextCache.Entry<T> entry = getContextCache().get(metadata.getHardwareId());
+	    T decodable = metadata.getPayload();
+	    if (entry == null) {
+		long loadedAt = getContextCache().getGeneration();
+		IDeviceContext<T> context = buildContext(metadata);
+		entry = getContextCache().put(context.getDevice(), context.getDeviceSpecification(),
+			chooseDecoder(context), loadedAt);
+		decodable = context.getPayload();
 	    }
-	    combined.put(IDeviceEventDecoder.META_DEVICE, context.getDevice());
-	    combined.put(IDeviceEventDecoder.META_DEVICE_SPECIFICATION, context.getDeviceSpecification());
 
-	    // Loop through choices and use first one that applies.
-	    for (ICompositeDeviceEventDecoder.IDecoderChoice<T> choice : getDecoderChoices()) {
+	    // Handle case where no choices apply.
+	    if (entry.getChoice() == null) {
+		return new ArrayList<IDecodedDeviceRequest<?>>();
+	    }
 
-		if (choice.appliesTo(context)) {
-		    return choice.getDeviceEventDecoder().decode(context.getPayload(), combined);
-		}
+	    // Add context metadata to event source metadata.
+	    Map<String, Object> combined = entry.getMetadata();
+	    if ((eventSourceMetadata != null) && (!eventSourceMetadata.isEmpty())) {
+		combined = new CombinedMetadata(eventSourceMetadata, combined);
 	    }
+	    return entry.getChoice().getDeviceEventDecoder().decode(decodable, combined);
 	} catch (SiteWhereException e) {
 	    throw new EventDecodeException("Exception in composite decoder.", e);
 	} catch (Throwable t) {
 	    throw new EventDecodeException("Unhandled exception in composite decoder.", t);
 	}
+    }
 
-	// Handle case where no choices apply.
-	return new ArrayList<IDecodedDeviceRequest<?>>();
+    /**
+     * Loop through choices and return the first one that applies to the
+     * context.
+     * 
+     * @param context
+     * @return
+     */
+    protected ICompositeDeviceEventDecoder.IDecoderChoice<T> chooseDecoder(IDeviceContext<T> context) {
+	if (getLogger().isDebugEnabled()) {
+	    getLogger().debug("Built context: Device: " + context.getDevice() + " Specification: "
+		    + context.getDeviceSpecification());
+	}
+	for (ICompositeDeviceEventDecoder.IDecoderChoice<T> choice : getDecoderChoices()) {
+	    if (choice.appliesTo(context)) {
+		return choice;
+	    }
+	}
+	return null;
     }
 
     /*
@@ -107,6 +130,9 @@ public abstract class CompositeDeviceEventDecoder<T> extends TenantLifecycleComp
 	for (ICompositeDeviceEventDecoder.IDecoderChoice<T> choice : getDecoderChoices()) {
 	    startNestedComponent(choice, monitor, "Composite decoder delegate startup failed.", true);
 	}
+
+	getContextCache().clear();
+	DeviceContextCache.register(getTenant(), getContextCache());
     }
 
     /*
@@ -118,6 +144,8 @@ public abstract class CompositeDeviceEventDecoder<T> extends TenantLifecycleComp
      */
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	DeviceContextCache.unregister(getTenant(), getContextCache());
+	getContextCache().clear();
 	if (getMetadataExtractor() != null) {
 	    getMetadataExtractor().lifecycleStop(monitor);
 	}
@@ -125,4 +153,12 @@ public abstract class CompositeDeviceEventDecoder<T> extends TenantLifecycleComp
 	    choice.lifecycleStop(monitor);
 	}
     }
-}
\ No newline at end of file
+
+    public DeviceContextCache<T> getContextCache() {
+	return contextCache;
+    }
+
+    public void setContextCache(DeviceContextCache<T> contextCache) {
+	this.contextCache = contextCache;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.communication.decoder.composite;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sitewhere.device.DeviceManagementTriggers;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.communication.ICompositeDeviceEventDecoder.IDecoderChoice;
+import com.sitewhere.spi.device.communication.IDeviceEventDecoder;
+import com.sitewhere.spi.tenant.ITenant;
+
+/**
+ * Caches the device, specification and chosen decoder by hardware id for a
+ * composite decoder so that decoding a payload does not hit the datastore or
+ * evaluate decoder choices. Caches register with their tenant while the
+ * decoder is running and {@link DeviceManagementTriggers} drops entries when
+ * devices, assignments or specifications change. Changes made on other
+ * instances are not seen by the triggers, so entries also expire after a time
+ * to live. When the cache is full, the oldest of a few sampled entries is
+ * evicted to make room.
+ * 
+ * @author Derek
+ * 
+ * @param <T>
+ */
+public class DeviceContextCache<T> {
+
+    /** Default maximum number of cached devices */
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    /** Default milliseconds an entry is used before it is reloaded */
+    public static final long DEFAULT_TIME_TO_LIVE_MS = 60 * 1000;
+
+    /** Number of entries sampled when choosing one to evict */
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    /** Registered caches by tenant id */
+    private static ConcurrentMap<String, Set<DeviceContextCache<?>>> CACHES = new ConcurrentHashMap<String, Set<DeviceContextCache<?>>>();
+
+    /** Entries by hardware id */
+    private ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<String, Entry<T>>();
+
+    /** Incremented on every invalidation */
+    private AtomicLong generation = new AtomicLong();
+
+    /** Maximum number of cached devices */
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /** Milliseconds an entry is used before it is reloaded */
+    private long timeToLive = DEFAULT_TIME_TO_LIVE_MS;
+
+    /**
+     * Register a cache to be invalidated when tenant data changes.
+     * 
+     * @param tenant
+     * @param cache
+     */
+    public static void register(ITenant tenant, DeviceContextCache<?> cache) {
+	Set<DeviceContextCache<?>> caches = CACHES.get(tenant.getId());
+	if (caches == null) {
+	    caches = Collections.newSetFromMap(new ConcurrentHashMap<DeviceContextCache<?>, Boolean>());
+	    Set<DeviceContextCache<?>> existing = CACHES.putIfAbsent(tenant.getId(), caches);
+	    if (existing != null) {
+		caches = existing;
+	    }
+	}
+	caches.add(cache);
+    }
+
+    /**
+     * Stop invalidating a cache.
+     * 
+     * @param tenant
+     * @param cache
+     */
+    public static void unregister(ITenant tenant, DeviceContextCache<?> cache) {
+	Set<DeviceContextCache<?>> caches = CACHES.get(tenant.getId());
+	if (caches != null) {
+	    caches.remove(cache);
+	}
+    }
+
+    /**
+     * Called when a device or its current assignment changes.
+     * 
+     * @param tenant
+     * @param hardwareId
+     */
+    public static void onDeviceChanged(ITenant tenant, String hardwareId) {
+	Set<DeviceContextCache<?>> caches = CACHES.get(tenant.getId());
+	if (caches != null) {
+	    for (DeviceContextCache<?> cache : caches) {
+		cache.invalidateDevice(hardwareId);
+	    }
+	}
+    }
+
+    /**
+     * Called when a device specification changes.
+     * 
+     * @param tenant
+     * @param token
+     */
+    public static void onSpecificationChanged(ITenant tenant, String token) {
+	Set<DeviceContextCache<?>> caches = CACHES.get(tenant.getId());
+	if (caches != null) {
+	    for (DeviceContextCache<?> cache : caches) {
+		cache.invalidateSpecification(token);
+	    }
+	}
+    }
+
+    /**
+     * Get cached entry for a device.
+     * 
+     * @param hardwareId
+     * @return
+     */
+    public Entry<T> get(String hardwareId) {
+	return get(hardwareId, System.currentTimeMillis());
+    }
+
+    /**
+     * Get cached entry for a device, dropping it if it has expired.
+     * 
+     * @param hardwareId
+     * @param now
+     * @return
+     */
+    public Entry<T> get(String hardwareId, long now) {
+	Entry<T> entry = entries.get(hardwareId);
+	if ((entry != null) && (now - entry.getCreated() >= getTimeToLive())) {
+	    entries.remove(hardwareId, entry);
+	    return null;
+	}
+	return entry;
+    }
+
+    /**
+     * Get current generation. Read before loading data for an entry and pass to
+     * {@link #put(IDevice, IDeviceSpecification, IDecoderChoice, long)} so that
+     * data loaded before an invalidation is not cached.
+     * 
+     * @return
+     */
+    public long getGeneration() {
+	return generation.get();
+    }
+
+    /**
+     * Create an entry and cache it if nothing was invalidated since the data
+     * was loaded. An existing entry is evicted if the cache is full.
+     * 
+     * @param device
+     * @param specification
+     * @param choice
+     * @param loadedAt
+     * @return
+     */
+    public Entry<T> put(IDevice device, IDeviceSpecification specification, IDecoderChoice<T> choice,
+	    long loadedAt) {
+	Entry<T> entry = new Entry<T>(device, specification, choice, System.currentTimeMillis());
+	if (generation.get() != loadedAt) {
+	    return entry;
+	}
+	if ((entries.size() >= getMaxEntries()) && (!entries.containsKey(device.getHardwareId()))) {
+	    evict();
+	}
+	entries.put(device.getHardwareId(), entry);
+
+	// Drop entry if an invalidation raced the put.
+	if (generation.get() != loadedAt) {
+	    entries.remove(device.getHardwareId(), entry);
+	}
+	return entry;
+    }
+
+    /**
+     * Evict the oldest of a few entries. Entries are sampled rather than
+     * scanned so that a put on a full cache stays cheap.
+     */
+    protected void evict() {
+	Map.Entry<String, Entry<T>> oldest = null;
+	Iterator<Map.Entry<String, Entry<T>>> it = entries.entrySet().iterator();
+	for (int i = 0; (i < EVICTION_SAMPLE_SIZE) && it.hasNext(); i++) {
+	    Map.Entry<String, Entry<T>> candidate = it.next();
+	    if ((oldest == null) || (candidate.getValue().getCreated() < oldest.getValue().getCreated())) {
+		oldest = candidate;
+	    }
+	}
+	if (oldest != null) {
+	    entries.remove(oldest.getKey(), oldest.getValue());
+	}
+    }
+
+    /**
+     * Drop cached entry for a device.
+     * 
+     * @param hardwareId
+     */
+    public void invalidateDevice(String hardwareId) {
+	generation.incrementAndGet();
+	entries.remove(hardwareId);
+    }
+
+    /**
+     * Drop cached entries for all devices that use a specification.
+     * 
+     * @param token
+     */
+    public void invalidateSpecification(String token) {
+	generation.incrementAndGet();
+	Iterator<Entry<T>> it = entries.values().iterator();
+	while (it.hasNext()) {
+	    IDeviceSpecification specification = it.next().getSpecification();
+	    if ((specification == null) || (token.equals(specification.getToken()))) {
+		it.remove();
+	    }
+	}
+    }
+
+    /**
+     * Drop all cached entries.
+     */
+    public void clear() {
+	generation.incrementAndGet();
+	entries.clear();
+    }
+
+    public int size() {
+	return entries.size();
+    }
+
+    public int getMaxEntries() {
+	return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+	this.maxEntries = maxEntries;
+    }
+
+    public long getTimeToLive() {
+	return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+	this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Cached context for a device along with the metadata passed to the
+     * chosen decoder.
+     * 
+     * @author Derek
+     * 
+     * @param <T>
+     */
+    public static class Entry<T> {
+
+	/** Device */
+	private IDevice device;
+
+	/** Device specification */
+	private IDeviceSpecification specification;
+
+	/** Chosen decoder (null if no choice applies) */
+	private IDecoderChoice<T> choice;
+
+	/** Device context metadata passed to decoder */
+	private Map<String, Object> metadata;
+
+	/** Time entry was created */
+	private long created;
+
+	public Entry(IDevice device, IDeviceSpecification specification, IDecoderChoice<T> choice, long created) {
+	    this.device = device;
+	    this.specification = specification;
+	    this.choice = choice;
+	    this.created = created;
+	    Map<String, Object> context = new HashMap<String, Object>();
+	    context.put(IDeviceEventDecoder.META_DEVICE, device);
+	    context.put(IDeviceEventDecoder.META_DEVICE_SPECIFICATION, specification);
+	    this.metadata = Collections.unmodifiableMap(context);
+	}
+
+	public IDevice getDevice() {
+	    return device;
+	}
+
+	public IDeviceSpecification getSpecification() {
+	    return specification;
+	}
+
+	public IDecoderChoice<T> getChoice() {
+	    return choice;
+	}
+
+	public Map<String, Object> getMetadata() {
+	    return metadata;
+	}
+
+	public long getCreated() {
+	    return created;
+	}
+    }
+}
@@ -44,17 +44,49 @@ public class AlternateIdDeduplicator extends TenantLifecycleComponent implements
      */
     @Override
     public boolean isDuplicate(IDecodedDeviceRequest<?> request) throws SiteWhereException {
+	String alternateId = getAlternateId(request);
+	if (alternateId != null) {
+	    return isStored(alternateId);
+	}
+	return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.communication.IDeviceEventDeduplicator#
+     * onEventPersisted(com.sitewhere.spi.device.event.IDeviceEvent)
+     */
+    @Override
+    public void onEventPersisted(IDeviceEvent event) throws SiteWhereException {
+    }
+
+    /**
+     * Get the alternate id for an event request or null if not present.
+     * 
+     * @param request
+     * @return
+     */
+    protected String getAlternateId(IDecodedDeviceRequest<?> request) {
 	if (request.getRequest() instanceof IDeviceEventCreateRequest) {
-	    String alternateId = ((IDeviceEventCreateRequest) request.getRequest()).getAlternateId();
-	    if (alternateId != null) {
-		IDeviceEvent existing = SiteWhere.getServer().getDeviceEventManagement(getTenant())
-			.getDeviceEventByAlternateId(alternateId);
-		if (existing != null) {
-		    LOGGER.info("Found event with same alternate id. Will be treated as duplicate.");
-		    return true;
-		}
-		return false;
-	    }
+	    return ((IDeviceEventCreateRequest) request.getRequest()).getAlternateId();
+	}
+	return null;
+    }
+
+    /**
+     * Check the datastore for an event with the given alternate id.
+     * 
+     * @param alternateId
+     * @return
+     * @throws SiteWhereException
+     */
+    protected boolean isStored(String alternateId) throws SiteWhereException {
+	IDeviceEvent existing = SiteWhere.getServer().getDeviceEventManagement(getTenant())
+		.getDeviceEventByAlternateId(alternateId);
+	if (existing != null) {
+	    LOGGER.info("Found event with same alternate id. Will be treated as duplicate.");
+	    return true;
 	}
 	return false;
     }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.communication.deduplicator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Remembers ids seen within a time window. A pair of Bloom filters gives a
+ * probabilistic answer for every id seen in the last one to two windows, and a
+ * bounded LRU of the most recent ids gives an exact answer for the ids most
+ * likely to be repeated. Checking an id does not record it, so callers add ids
+ * only once the work they guard has completed. Ids that were never added are
+ * reported as new only after the filter has been recording for a full window,
+ * since before then ids added earlier may be missing. Ids that hit the filters
+ * but not the LRU, or that miss before the window is covered, are reported as
+ * unknown and must be checked elsewhere.
+ * 
+ * @author Derek
+ */
+public class RecentIdFilter {
+
+    /** Result of checking an id */
+    public static enum Result {
+
+	/** Id is in the recent id cache */
+	Recent,
+
+	/** Id has not been seen within the window */
+	New,
+
+	/** Id may have been seen within the window */
+	Unknown;
+    }
+
+    /** Window length in milliseconds */
+    private long windowMs;
+
+    /** Expected number of ids added per window */
+    private int expectedIds;
+
+    /** Acceptable false positive probability */
+    private double falsePositiveRate;
+
+    /** Filter receiving ids for the current window */
+    private BloomFilter<CharSequence> current;
+
+    /** Filter holding ids from the previous window */
+    private BloomFilter<CharSequence> previous;
+
+    /** Start of the current window */
+    private long windowStart;
+
+    /** Time at which the filter started recording */
+    private long coveredFrom;
+
+    /** Most recently seen ids */
+    private Map<String, Boolean> recent;
+
+    public RecentIdFilter(long windowMs, int expectedIds, double falsePositiveRate, final int recentIds) {
+	this.windowMs = windowMs;
+	this.expectedIds = expectedIds;
+	this.falsePositiveRate = falsePositiveRate;
+	this.current = createFilter();
+	this.previous = createFilter();
+	this.recent = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+
+	    /** Serial version UID */
+	    private static final long serialVersionUID = -5183540414374312213L;
+
+	    /*
+	     * (non-Javadoc)
+	     * 
+	     * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+	     */
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+		return size() > recentIds;
+	    }
+	};
+    }
+
+    /**
+     * Check whether an id has been added without recording it.
+     * 
+     * @param id
+     * @param now
+     * @return
+     */
+    public synchronized Result check(String id, long now) {
+	rotate(now);
+	if (recent.get(id) != null) {
+	    return Result.Recent;
+	}
+	if (current.mightContain(id) || previous.mightContain(id)) {
+	    return Result.Unknown;
+	}
+	return isCovered(now) ? Result.New : Result.Unknown;
+    }
+
+    /**
+     * Record an id for later checks.
+     * 
+     * @param id
+     * @param now
+     */
+    public synchronized void add(String id, long now) {
+	rotate(now);
+	recent.put(id, Boolean.TRUE);
+	current.put(id);
+    }
+
+    /**
+     * Indicates whether the filter has been recording for a full window, so
+     * that a miss means the id was not added within the window.
+     * 
+     * @param now
+     * @return
+     */
+    public synchronized boolean isCovered(long now) {
+	return (coveredFrom != 0) && (now - coveredFrom >= windowMs);
+    }
+
+    /**
+     * Start a new window if the current one has ended. Two windows are kept so
+     * that ids are remembered for at least one full window.
+     * 
+     * @param now
+     */
+    protected void rotate(long now) {
+	if (windowStart == 0) {
+	    windowStart = now;
+	    coveredFrom = now;
+	} else if (now - windowStart >= windowMs) {
+	    previous = (now - windowStart >= 2 * windowMs) ? createFilter() : current;
+	    current = createFilter();
+	    windowStart = now;
+	}
+    }
+
+    /**
+     * Create an empty filter sized for one window.
+     * 
+     * @return
+     */
+    protected BloomFilter<CharSequence> createFilter() {
+	return BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8), expectedIds, falsePositiveRate);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.communication.deduplicator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.sitewhere.SiteWhere;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.communication.IDecodedDeviceRequest;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
+
+/**
+ * Extends {@link AlternateIdDeduplicator} with an in-memory {@link RecentIdFilter}
+ * so that most alternate ids are resolved without a datastore query. Ids are
+ * recorded when the event is persisted rather than when it is received, so an
+ * event that fails before it is stored is not dropped when redelivered. Ids
+ * persisted recently are treated as duplicates and ids that match the Bloom
+ * filters without being in the recent id cache fall back to the datastore. A
+ * miss is only trusted once the filter has been recording for a full window;
+ * until then (for instance after a restart) misses also fall back to the
+ * datastore. Duplicates of events older than the window, or of events stored
+ * by another instance, are not detected once the window is covered.
+ * 
+ * @author Derek
+ */
+public class WindowedAlternateIdDeduplicator extends AlternateIdDeduplicator {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Default window length in seconds */
+    private static final int DEFAULT_WINDOW = 3600;
+
+    /** Default expected ids per window */
+    private static final int DEFAULT_EXPECTED_IDS = 100000;
+
+    /** Default false positive rate */
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    /** Default number of recent ids held exactly */
+    private static final int DEFAULT_RECENT_ID_CACHE_SIZE = 10000;
+
+    /** Window length in seconds */
+    private int window = DEFAULT_WINDOW;
+
+    /** Expected number of ids per window */
+    private int expectedIds = DEFAULT_EXPECTED_IDS;
+
+    /** Acceptable false positive rate for Bloom filters */
+    private double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+
+    /** Number of recent ids held exactly */
+    private int recentIdCacheSize = DEFAULT_RECENT_ID_CACHE_SIZE;
+
+    /** In-memory filter for recent ids */
+    private RecentIdFilter filter;
+
+    /** Ids found in recent id cache */
+    private Meter recentHits;
+
+    /** Ids resolved as new without a datastore query */
+    private Meter filterMisses;
+
+    /** Ids checked against the datastore */
+    private Meter storeFallbacks;
+
+    /** Ids found in the datastore */
+    private Meter storeHits;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponent#start(com.sitewhere.spi
+     * .server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if ((getFalsePositiveRate() <= 0) || (getFalsePositiveRate() >= 1)) {
+	    throw new SiteWhereException("False positive rate must be between 0 and 1.");
+	}
+	this.filter = new RecentIdFilter(getWindow() * 1000L, getExpectedIds(), getFalsePositiveRate(),
+		getRecentIdCacheSize());
+
+	MetricRegistry metrics = SiteWhere.getServer().getMetricRegistry();
+	this.recentHits = metrics.meter(getMetricName("recentHits"));
+	this.filterMisses = metrics.meter(getMetricName("filterMisses"));
+	this.storeFallbacks = metrics.meter(getMetricName("storeFallbacks"));
+	this.storeHits = metrics.meter(getMetricName("storeHits"));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.communication.deduplicator.
+     * AlternateIdDeduplicator#isDuplicate(com.sitewhere.spi.device.
+     * communication.IDecodedDeviceRequest)
+     */
+    @Override
+    public boolean isDuplicate(IDecodedDeviceRequest<?> request) throws SiteWhereException {
+	String alternateId = getAlternateId(request);
+	if (alternateId == null) {
+	    return false;
+	}
+	switch (filter.check(alternateId, System.currentTimeMillis())) {
+	case Recent: {
+	    recentHits.mark();
+	    LOGGER.info("Found recent event with same alternate id. Will be treated as duplicate.");
+	    return true;
+	}
+	case New: {
+	    filterMisses.mark();
+	    return false;
+	}
+	default: {
+	    storeFallbacks.mark();
+	    boolean stored = isStored(alternateId);
+	    if (stored) {
+		storeHits.mark();
+	    }
+	    return stored;
+	}
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.communication.deduplicator.
+     * AlternateIdDeduplicator#onEventPersisted(com.sitewhere.spi.device.event.
+     * IDeviceEvent)
+     */
+    @Override
+    public void onEventPersisted(IDeviceEvent event) throws SiteWhereException {
+	if ((filter != null) && (event.getAlternateId() != null)) {
+	    filter.add(event.getAlternateId(), System.currentTimeMillis());
+	}
+    }
+
+    /**
+     * Get name used to register a metric for the tenant.
+     * 
+     * @param metric
+     * @return
+     */
+    protected String getMetricName(String metric) {
+	return MetricRegistry.name("deduplicator", getTenant().getId(), metric);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.communication.deduplicator.
+     * AlternateIdDeduplicator#getLogger()
+     */
+    @Override
+    public Logger getLogger() {
+	return LOGGER;
+    }
+
+    public int getWindow() {
+	return window;
+    }
+
+    public void setWindow(int window) {
+	this.window = window;
+    }
+
+    public int getExpectedIds() {
+	return expectedIds;
+    }
+
+    public void setExpectedIds(int expectedIds) {
+	this.expectedIds = expectedIds;
+    }
+
+    public double getFalsePositiveRate() {
+	return falsePositiveRate;
+    }
+
+    public void setFalsePositiveRate(double falsePositiveRate) {
+	this.falsePositiveRate = falsePositiveRate;
+    }
+
+    public int getRecentIdCacheSize() {
+	return recentIdCacheSize;
+    }
+
+    public void setRecentIdCacheSize(int recentIdCacheSize) {
+	this.recentIdCacheSize = recentIdCacheSize;
+    }
+}
\ No newline at end of file
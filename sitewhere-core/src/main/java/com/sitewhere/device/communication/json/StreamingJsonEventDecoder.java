@@ -0,0 +1,759 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.communication.json;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+import com.sitewhere.rest.model.device.communication.DecodedDeviceRequest;
+import com.sitewhere.rest.model.device.communication.DeviceRequest.Type;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceCommandResponseCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceEventCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceRegistrationRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceStreamDataCreateRequest;
+import com.sitewhere.rest.model.device.request.DeviceMappingCreateRequest;
+import com.sitewhere.rest.model.device.request.DeviceStreamCreateRequest;
+import com.sitewhere.server.lifecycle.TenantLifecycleComponent;
+import com.sitewhere.spi.device.communication.EventDecodeException;
+import com.sitewhere.spi.device.communication.IDecodedDeviceRequest;
+import com.sitewhere.spi.device.communication.IDeviceEventDecoder;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.device.event.AlertSource;
+import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
+
+/**
+ * Event decoder that reads JSON payloads at the token level using the Jackson
+ * streaming API and builds event create requests directly rather than binding
+ * to an intermediate object model first. Accepts the same formats as
+ * {@link JsonDeviceRequestDecoder} and {@link JsonBatchEventDecoder}:
+ * <ul>
+ * <li>A single device request object with <code>hardwareId</code>,
+ * <code>type</code> and <code>request</code> fields.</li>
+ * <li>A batch object with <code>hardwareId</code> and
+ * <code>measurements</code>, <code>locations</code> and/or
+ * <code>alerts</code> arrays.</li>
+ * <li>A JSON array containing any mix of the above, allowing a gateway to send
+ * events for many hardware ids in a single payload.</li>
+ * </ul>
+ * Measurements, locations and alerts are parsed without any intermediate
+ * objects. Less common request types are bound via the Jackson data binder.
+ * 
+ * @author Derek
+ */
+public class StreamingJsonEventDecoder extends TenantLifecycleComponent implements IDeviceEventDecoder<byte[]> {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Field that holds hardware id */
+    private static final String FIELD_HARDWARE_ID = "hardwareId";
+
+    /** Field that holds originator */
+    private static final String FIELD_ORIGINATOR = "originator";
+
+    /** Field that holds request type */
+    private static final String FIELD_TYPE = "type";
+
+    /** Field that holds request body */
+    private static final String FIELD_REQUEST = "request";
+
+    /** Field that holds batch measurements */
+    private static final String FIELD_MEASUREMENTS = "measurements";
+
+    /** Field that holds batch locations */
+    private static final String FIELD_LOCATIONS = "locations";
+
+    /** Field that holds batch alerts */
+    private static final String FIELD_ALERTS = "alerts";
+
+    /** Used for data binding of less common request types */
+    private static ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Date format is not thread safe, so one instance is kept per thread */
+    private static final ThreadLocal<StdDateFormat> DATE_FORMAT = new ThreadLocal<StdDateFormat>() {
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.ThreadLocal#initialValue()
+	 */
+	@Override
+	protected StdDateFormat initialValue() {
+	    return new StdDateFormat();
+	}
+    };
+
+    public StreamingJsonEventDecoder() {
+	super(LifecycleComponentType.DeviceEventDecoder);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.communication.IDeviceEventDecoder#decode(java.
+     * lang.Object, java.util.Map)
+     */
+    @Override
+    public List<IDecodedDeviceRequest<?>> decode(byte[] payload, Map<String, Object> metadata)
+	    throws EventDecodeException {
+	List<IDecodedDeviceRequest<?>> events = new ArrayList<IDecodedDeviceRequest<?>>();
+	JsonParser parser = null;
+	try {
+	    parser = MAPPER.getFactory().createParser(payload);
+	    JsonToken token = parser.nextToken();
+	    if (token == JsonToken.START_ARRAY) {
+		while (nextArrayObject(parser, "payload")) {
+		    parseEnvelope(parser, events);
+		}
+	    } else if (token == JsonToken.START_OBJECT) {
+		parseEnvelope(parser, events);
+	    } else {
+		throw new JsonMappingException("Payload must be a JSON object or array.", parser.getCurrentLocation());
+	    }
+	    return events;
+	} catch (IOException e) {
+	    throw new EventDecodeException(e);
+	} finally {
+	    if (parser != null) {
+		try {
+		    parser.close();
+		} catch (IOException e) {
+		    LOGGER.warn("Unable to close JSON parser.", e);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Parse a top-level object which may be either a single device request or a
+     * batch of events for one hardware id. Parser is positioned on the
+     * START_OBJECT token.
+     * 
+     * @param parser
+     * @param events
+     * @throws IOException
+     */
+    protected void parseEnvelope(JsonParser parser, List<IDecodedDeviceRequest<?>> events) throws IOException {
+	String hardwareId = null;
+	String originator = null;
+	Type type = null;
+	int batchStart = events.size();
+	while (parser.nextToken() == JsonToken.FIELD_NAME) {
+	    String field = parser.getCurrentName();
+	    JsonToken value = parser.nextToken();
+	    if (FIELD_HARDWARE_ID.equals(field)) {
+		hardwareId = parseString(parser, field);
+	    } else if (FIELD_ORIGINATOR.equals(field)) {
+		originator = parseString(parser, field);
+	    } else if (FIELD_TYPE.equals(field)) {
+		type = parseType(parser);
+	    } else if (FIELD_REQUEST.equals(field)) {
+		if (type == null) {
+		    // Type not known yet, so buffer request and parse it once
+		    // the remainder of the envelope has been read.
+		    JsonNode request = parser.readValueAsTree();
+		    finishBufferedEnvelope(parser, hardwareId, originator, request, events, batchStart);
+		    return;
+		}
+		events.add(new DecodedDeviceRequest<Object>(hardwareId, originator, parseRequest(parser, type)));
+	    } else if (FIELD_MEASUREMENTS.equals(field)) {
+		expectArray(parser, value, field);
+		while (nextArrayObject(parser, field)) {
+		    events.add(new DecodedDeviceRequest<Object>(hardwareId, originator, parseMeasurements(parser)));
+		}
+	    } else if (FIELD_LOCATIONS.equals(field)) {
+		expectArray(parser, value, field);
+		while (nextArrayObject(parser, field)) {
+		    events.add(new DecodedDeviceRequest<Object>(hardwareId, originator, parseLocation(parser)));
+		}
+	    } else if (FIELD_ALERTS.equals(field)) {
+		expectArray(parser, value, field);
+		while (nextArrayObject(parser, field)) {
+		    events.add(new DecodedDeviceRequest<Object>(hardwareId, originator, parseAlert(parser)));
+		}
+	    } else {
+		parser.skipChildren();
+	    }
+	}
+	applyEnvelopeFields(events, batchStart, hardwareId, originator);
+    }
+
+    /**
+     * Complete an envelope where the request body arrived before the type
+     * indicator.
+     * 
+     * @param parser
+     * @param hardwareId
+     * @param originator
+     * @param request
+     * @param events
+     * @param batchStart
+     * @throws IOException
+     */
+    protected void finishBufferedEnvelope(JsonParser parser, String hardwareId, String originator, JsonNode request,
+	    List<IDecodedDeviceRequest<?>> events, int batchStart) throws IOException {
+	Type type = null;
+	while (parser.nextToken() == JsonToken.FIELD_NAME) {
+	    String field = parser.getCurrentName();
+	    parser.nextToken();
+	    if (FIELD_HARDWARE_ID.equals(field)) {
+		hardwareId = parseString(parser, field);
+	    } else if (FIELD_ORIGINATOR.equals(field)) {
+		originator = parseString(parser, field);
+	    } else if (FIELD_TYPE.equals(field)) {
+		type = parseType(parser);
+	    } else {
+		parser.skipChildren();
+	    }
+	}
+	if (type == null) {
+	    throw new JsonMappingException("Event type is required.", parser.getCurrentLocation());
+	}
+	JsonParser nested = request.traverse(MAPPER);
+	try {
+	    nested.nextToken();
+	    events.add(new DecodedDeviceRequest<Object>(hardwareId, originator, parseRequest(nested, type)));
+	} finally {
+	    nested.close();
+	}
+	applyEnvelopeFields(events, batchStart, hardwareId, originator);
+    }
+
+    /**
+     * Fields in an envelope may appear after the events they apply to, so
+     * hardware id and originator are applied to all requests parsed from the
+     * envelope once it has been fully read.
+     * 
+     * @param events
+     * @param start
+     * @param hardwareId
+     * @param originator
+     * @throws JsonMappingException
+     */
+    protected void applyEnvelopeFields(List<IDecodedDeviceRequest<?>> events, int start, String hardwareId,
+	    String originator) throws JsonMappingException {
+	if ((hardwareId == null) && (events.size() > start)) {
+	    throw new JsonMappingException("Hardware id is missing.");
+	}
+	for (int i = start; i < events.size(); i++) {
+	    DecodedDeviceRequest<?> decoded = (DecodedDeviceRequest<?>) events.get(i);
+	    decoded.setHardwareId(hardwareId);
+	    decoded.setOriginator(originator);
+	}
+    }
+
+    /**
+     * Parse a request body based on type indicator. Parser is positioned on the
+     * START_OBJECT token of the request.
+     * 
+     * @param parser
+     * @param type
+     * @return
+     * @throws IOException
+     */
+    protected Object parseRequest(JsonParser parser, Type type) throws IOException {
+	if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+	    throw new JsonMappingException("Request is missing.", parser.getCurrentLocation());
+	}
+	switch (type) {
+	case DeviceMeasurements: {
+	    return parseMeasurements(parser);
+	}
+	case DeviceLocation: {
+	    return parseLocation(parser);
+	}
+	case DeviceAlert: {
+	    return parseAlert(parser);
+	}
+	case RegisterDevice: {
+	    return parser.readValueAs(DeviceRegistrationRequest.class);
+	}
+	case Acknowledge: {
+	    return parser.readValueAs(DeviceCommandResponseCreateRequest.class);
+	}
+	case DeviceStream: {
+	    return parser.readValueAs(DeviceStreamCreateRequest.class);
+	}
+	case DeviceStreamData: {
+	    return parser.readValueAs(DeviceStreamDataCreateRequest.class);
+	}
+	case MapDevice: {
+	    return parser.readValueAs(DeviceMappingCreateRequest.class);
+	}
+	default: {
+	    throw new JsonMappingException("Unhandled event type: " + type.name());
+	}
+	}
+    }
+
+    /**
+     * Parse a measurements request. Boolean values are converted to 1.0 or 0.0
+     * and String values are added as metadata to match the behavior of
+     * {@link JsonDeviceRequestMarshaler}.
+     * 
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    protected DeviceMeasurementsCreateRequest parseMeasurements(JsonParser parser) throws IOException {
+	DeviceMeasurementsCreateRequest mxs = new DeviceMeasurementsCreateRequest();
+	while (parser.nextToken() == JsonToken.FIELD_NAME) {
+	    String field = parser.getCurrentName();
+	    JsonToken value = parser.nextToken();
+	    if (FIELD_MEASUREMENTS.equals(field)) {
+		if (value == JsonToken.VALUE_NULL) {
+		    continue;
+		}
+		expectObject(parser, value, field);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+		    String mxName = parser.getCurrentName();
+		    switch (parser.nextToken()) {
+		    case VALUE_NUMBER_FLOAT:
+		    case VALUE_NUMBER_INT: {
+			mxs.addOrReplaceMeasurement(mxName, parser.getDoubleValue());
+			break;
+		    }
+		    case VALUE_TRUE: {
+			mxs.addOrReplaceMeasurement(mxName, 1.0);
+			break;
+		    }
+		    case VALUE_FALSE: {
+			mxs.addOrReplaceMeasurement(mxName, 0.0);
+			break;
+		    }
+		    case VALUE_STRING: {
+			addMetadata(mxs, mxName, parser.getText());
+			break;
+		    }
+		    default: {
+			parser.skipChildren();
+		    }
+		    }
+		}
+	    } else if (!parseCommonField(parser, field, mxs)) {
+		parser.skipChildren();
+	    }
+	}
+	return mxs;
+    }
+
+    /**
+     * Parse a location request.
+     * 
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    protected DeviceLocationCreateRequest parseLocation(JsonParser parser) throws IOException {
+	DeviceLocationCreateRequest location = new DeviceLocationCreateRequest();
+	while (parser.nextToken() == JsonToken.FIELD_NAME) {
+	    String field = parser.getCurrentName();
+	    parser.nextToken();
+	    if ("latitude".equals(field)) {
+		location.setLatitude(parseDouble(parser));
+	    } else if ("longitude".equals(field)) {
+		location.setLongitude(parseDouble(parser));
+	    } else if ("elevation".equals(field)) {
+		location.setElevation(parseDouble(parser));
+	    } else if (!parseCommonField(parser, field, location)) {
+		parser.skipChildren();
+	    }
+	}
+	return location;
+    }
+
+    /**
+     * Parse an alert request.
+     * 
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    protected DeviceAlertCreateRequest parseAlert(JsonParser parser) throws IOException {
+	DeviceAlertCreateRequest alert = new DeviceAlertCreateRequest();
+	while (parser.nextToken() == JsonToken.FIELD_NAME) {
+	    String field = parser.getCurrentName();
+	    parser.nextToken();
+	    if ("type".equals(field)) {
+		alert.setType(parseString(parser, field));
+	    } else if ("message".equals(field)) {
+		alert.setMessage(parseString(parser, field));
+	    } else if ("level".equals(field)) {
+		alert.setLevel(parseEnum(parser, AlertLevel.class));
+	    } else if ("source".equals(field)) {
+		alert.setSource(parseEnum(parser, AlertSource.class));
+	    } else if (!parseCommonField(parser, field, alert)) {
+		parser.skipChildren();
+	    }
+	}
+	return alert;
+    }
+
+    /**
+     * Parse fields common to all event create requests.
+     * 
+     * @param parser
+     * @param field
+     * @param request
+     * @return true if field was handled
+     * @throws IOException
+     */
+    protected boolean parseCommonField(JsonParser parser, String field, DeviceEventCreateRequest request)
+	    throws IOException {
+	if ("eventDate".equals(field)) {
+	    request.setEventDate(parseDate(parser));
+	    return true;
+	} else if ("alternateId".equals(field)) {
+	    request.setAlternateId(parseString(parser, field));
+	    return true;
+	} else if ("updateState".equals(field)) {
+	    expectScalar(parser, field);
+	    request.setUpdateState(parser.getValueAsBoolean());
+	    return true;
+	} else if ("metadata".equals(field)) {
+	    if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+		return true;
+	    }
+	    expectObject(parser, parser.getCurrentToken(), field);
+	    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+		String name = parser.getCurrentName();
+		parser.nextToken();
+		addMetadata(request, name, parseString(parser, field + "." + name));
+	    }
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Add a metadata entry, creating the map on first use.
+     * 
+     * @param request
+     * @param name
+     * @param value
+     */
+    protected void addMetadata(DeviceEventCreateRequest request, String name, String value) {
+	if (request.getMetadata() == null) {
+	    request.setMetadata(new HashMap<String, String>());
+	}
+	request.getMetadata().put(name, value);
+    }
+
+    /**
+     * Parse request type indicator.
+     * 
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    protected Type parseType(JsonParser parser) throws IOException {
+	try {
+	    return Type.valueOf(parser.getText());
+	} catch (IllegalArgumentException e) {
+	    throw new JsonMappingException("Event type is not valid.", parser.getCurrentLocation());
+	}
+    }
+
+    /**
+     * Parse a nullable value as a string. Numbers and booleans are converted
+     * to their text form.
+     * 
+     * @param parser
+     * @param field
+     * @return
+     * @throws IOException
+     */
+    protected String parseString(JsonParser parser, String field) throws IOException {
+	if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+	    return null;
+	}
+	expectScalar(parser, field);
+	return parser.getText();
+    }
+
+    /**
+     * Parse a nullable double value.
+     * 
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    protected Double parseDouble(JsonParser parser) throws IOException {
+	switch (parser.getCurrentToken()) {
+	case VALUE_NULL: {
+	    return null;
+	}
+	case VALUE_STRING: {
+	    try {
+		return Double.parseDouble(parser.getText());
+	    } catch (NumberFormatException e) {
+		throw new JsonMappingException("Invalid numeric value: " + parser.getText(),
+			parser.getCurrentLocation());
+	    }
+	}
+	default: {
+	    return parser.getDoubleValue();
+	}
+	}
+    }
+
+    /**
+     * Parse a date expressed either as epoch milliseconds or in one of the
+     * formats accepted by the Jackson data binder. ISO-8601 timestamps as
+     * written by SiteWhere are parsed directly. Other formats fall back to a
+     * per-thread Jackson date format.
+     * 
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    protected Date parseDate(JsonParser parser) throws IOException {
+	switch (parser.getCurrentToken()) {
+	case VALUE_NULL: {
+	    return null;
+	}
+	case VALUE_NUMBER_INT: {
+	    return new Date(parser.getLongValue());
+	}
+	default: {
+	    String text = parser.getText();
+	    long millis = parseIsoDate(text);
+	    if (millis != Long.MIN_VALUE) {
+		return new Date(millis);
+	    }
+	    try {
+		return DATE_FORMAT.get().parse(text);
+	    } catch (ParseException e) {
+		throw new JsonMappingException("Invalid date value: " + text, parser.getCurrentLocation(), e);
+	    }
+	}
+	}
+    }
+
+    /**
+     * Parse an ISO-8601 timestamp of the form
+     * <code>yyyy-MM-ddTHH:mm:ss[.SSS](Z|+HHMM|+HH:MM)</code> to epoch
+     * milliseconds. Returns {@link Long#MIN_VALUE} if the value is not in that
+     * form.
+     * 
+     * @param text
+     * @return
+     */
+    protected static long parseIsoDate(String text) {
+	int length = text.length();
+	if ((length < 20) || (text.charAt(4) != '-') || (text.charAt(7) != '-') || (text.charAt(10) != 'T')
+		|| (text.charAt(13) != ':') || (text.charAt(16) != ':')) {
+	    return Long.MIN_VALUE;
+	}
+	int year = digits(text, 0, 4);
+	int month = digits(text, 5, 2);
+	int day = digits(text, 8, 2);
+	int hour = digits(text, 11, 2);
+	int minute = digits(text, 14, 2);
+	int second = digits(text, 17, 2);
+	if ((year < 0) || (month < 1) || (month > 12) || (day < 1) || (day > 31) || (hour < 0) || (hour > 23)
+		|| (minute < 0) || (minute > 59) || (second < 0) || (second > 59)) {
+	    return Long.MIN_VALUE;
+	}
+
+	// Fractional seconds, keeping millisecond precision.
+	int pos = 19;
+	int millis = 0;
+	if (text.charAt(pos) == '.') {
+	    pos++;
+	    int start = pos;
+	    while ((pos < length) && Character.isDigit(text.charAt(pos))) {
+		if (pos - start < 3) {
+		    millis = millis * 10 + (text.charAt(pos) - '0');
+		}
+		pos++;
+	    }
+	    if (pos == start) {
+		return Long.MIN_VALUE;
+	    }
+	    for (int i = pos - start; i < 3; i++) {
+		millis *= 10;
+	    }
+	}
+
+	// Time zone offset.
+	if (pos >= length) {
+	    return Long.MIN_VALUE;
+	}
+	int offsetMinutes = 0;
+	char zone = text.charAt(pos);
+	if (zone == 'Z') {
+	    pos++;
+	} else if ((zone == '+') || (zone == '-')) {
+	    int hours = digits(text, pos + 1, 2);
+	    int minutesAt = ((pos + 3 < length) && (text.charAt(pos + 3) == ':')) ? pos + 4 : pos + 3;
+	    int minutes = digits(text, minutesAt, 2);
+	    if ((hours < 0) || (minutes < 0)) {
+		return Long.MIN_VALUE;
+	    }
+	    offsetMinutes = (hours * 60 + minutes) * ((zone == '-') ? -1 : 1);
+	    pos = minutesAt + 2;
+	} else {
+	    return Long.MIN_VALUE;
+	}
+	if (pos != length) {
+	    return Long.MIN_VALUE;
+	}
+
+	// Days since epoch for the proleptic Gregorian calendar.
+	int y = (month <= 2) ? year - 1 : year;
+	int era = y / 400;
+	int yoe = y - era * 400;
+	int doy = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+	int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+	long days = (long) era * 146097 + doe - 719468;
+	long seconds = days * 86400 + hour * 3600 + minute * 60 + second - offsetMinutes * 60;
+	return seconds * 1000 + millis;
+    }
+
+    /**
+     * Parse a fixed number of decimal digits. Returns -1 if any character is
+     * not a digit.
+     * 
+     * @param text
+     * @param start
+     * @param count
+     * @return
+     */
+    protected static int digits(String text, int start, int count) {
+	if (start + count > text.length()) {
+	    return -1;
+	}
+	int value = 0;
+	for (int i = start; i < start + count; i++) {
+	    char c = text.charAt(i);
+	    if ((c < '0') || (c > '9')) {
+		return -1;
+	    }
+	    value = value * 10 + (c - '0');
+	}
+	return value;
+    }
+
+    /**
+     * Parse an enum value by name.
+     * 
+     * @param parser
+     * @param type
+     * @return
+     * @throws IOException
+     */
+    protected <E extends Enum<E>> E parseEnum(JsonParser parser, Class<E> type) throws IOException {
+	if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+	    return null;
+	}
+	try {
+	    return Enum.valueOf(type, parser.getText());
+	} catch (IllegalArgumentException e) {
+	    throw new JsonMappingException("Invalid value for " + type.getSimpleName() + ": " + parser.getText(),
+		    parser.getCurrentLocation());
+	}
+    }
+
+    /**
+     * Verify that the current token starts an array.
+     * 
+     * @param parser
+     * @param token
+     * @param field
+     * @throws JsonProcessingException
+     */
+    protected void expectArray(JsonParser parser, JsonToken token, String field) throws JsonProcessingException {
+	if (token != JsonToken.START_ARRAY) {
+	    throw new JsonMappingException("Expected array for '" + field + "'.", parser.getCurrentLocation());
+	}
+    }
+
+    /**
+     * Advance to the next element of an array. Returns true if positioned on
+     * the START_OBJECT token of an element or false once the end of the array
+     * is reached. Elements that are not objects are rejected rather than
+     * skipped so that malformed payloads are reported.
+     * 
+     * @param parser
+     * @param field
+     * @return
+     * @throws IOException
+     */
+    protected boolean nextArrayObject(JsonParser parser, String field) throws IOException {
+	JsonToken token = parser.nextToken();
+	if (token == JsonToken.END_ARRAY) {
+	    return false;
+	}
+	if (token != JsonToken.START_OBJECT) {
+	    throw new JsonMappingException("Expected object in '" + field + "' array but found " + token + ".",
+		    parser.getCurrentLocation());
+	}
+	return true;
+    }
+
+    /**
+     * Verify that the current token is a scalar value rather than an object or
+     * array, which would otherwise be read as a null value and leave the parser
+     * inside the nested structure.
+     * 
+     * @param parser
+     * @param field
+     * @throws JsonProcessingException
+     */
+    protected void expectScalar(JsonParser parser, String field) throws JsonProcessingException {
+	JsonToken token = parser.getCurrentToken();
+	if ((token == null) || (!token.isScalarValue())) {
+	    throw new JsonMappingException("Expected value for '" + field + "' but found " + token + ".",
+		    parser.getCurrentLocation());
+	}
+    }
+
+    /**
+     * Verify that the current token starts an object.
+     * 
+     * @param parser
+     * @param token
+     * @param field
+     * @throws JsonProcessingException
+     */
+    protected void expectObject(JsonParser parser, JsonToken token, String field) throws JsonProcessingException {
+	if (token != JsonToken.START_OBJECT) {
+	    throw new JsonMappingException("Expected object for '" + field + "'.", parser.getCurrentLocation());
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+     */
+    @Override
+    public Logger getLogger() {
+	return LOGGER;
+    }
+}
\ No newline at end of file
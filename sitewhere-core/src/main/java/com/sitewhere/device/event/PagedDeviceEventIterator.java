@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event;
+
+import java.util.Date;
+import java.util.Iterator;
+
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
+
+/**
+ * Implements {@link IDeviceEventIterator} on top of the paged list methods of
+ * {@link IDeviceEventManagement} for stores that can not expose a cursor. Only
+ * one page of events is held in memory at a time. If no end date is given, the
+ * end date is fixed when the iterator is created so that events added while
+ * iterating do not shift later pages.
+ * 
+ * @author Derek
+ */
+public class PagedDeviceEventIterator implements IDeviceEventIterator {
+
+    /** Default number of events loaded per page */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    /** Event management implementation */
+    private IDeviceEventManagement events;
+
+    /** Site or assignment token */
+    private String token;
+
+    /** Indicates whether token is for a site */
+    private boolean forSite;
+
+    /** Event type or null for all types */
+    private DeviceEventType type;
+
+    /** Original search criteria */
+    private IDateRangeSearchCriteria criteria;
+
+    /** End date used for all pages */
+    private Date endDate;
+
+    /** Number of events loaded per page */
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    /** Last page number loaded */
+    private int pageNumber = 0;
+
+    /** Indicates whether the last page has been loaded */
+    private boolean lastPage = false;
+
+    /** Events from the current page */
+    private Iterator<? extends IDeviceEvent> current;
+
+    protected PagedDeviceEventIterator(IDeviceEventManagement events, String token, boolean forSite,
+	    DeviceEventType type, IDateRangeSearchCriteria criteria) {
+	this.events = events;
+	this.token = token;
+	this.forSite = forSite;
+	this.type = type;
+	this.criteria = criteria;
+	this.endDate = (criteria.getEndDate() != null) ? criteria.getEndDate() : new Date();
+    }
+
+    /**
+     * Create an iterator over events for an assignment.
+     * 
+     * @param events
+     * @param assignmentToken
+     * @param type
+     * @param criteria
+     * @return
+     */
+    public static PagedDeviceEventIterator forAssignment(IDeviceEventManagement events, String assignmentToken,
+	    DeviceEventType type, IDateRangeSearchCriteria criteria) {
+	return new PagedDeviceEventIterator(events, assignmentToken, false, type, criteria);
+    }
+
+    /**
+     * Create an iterator over events for a site.
+     * 
+     * @param events
+     * @param siteToken
+     * @param type
+     * @param criteria
+     * @return
+     */
+    public static PagedDeviceEventIterator forSite(IDeviceEventManagement events, String siteToken,
+	    DeviceEventType type, IDateRangeSearchCriteria criteria) {
+	return new PagedDeviceEventIterator(events, siteToken, true, type, criteria);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventIterator#hasNext()
+     */
+    @Override
+    public boolean hasNext() throws SiteWhereException {
+	while ((current == null) || (!current.hasNext())) {
+	    if (lastPage) {
+		return false;
+	    }
+	    loadPage();
+	}
+	return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventIterator#next()
+     */
+    @Override
+    public IDeviceEvent next() throws SiteWhereException {
+	if (!hasNext()) {
+	    throw new SiteWhereException("No more events available.");
+	}
+	return current.next();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventIterator#close()
+     */
+    @Override
+    public void close() throws SiteWhereException {
+	current = null;
+	lastPage = true;
+    }
+
+    /**
+     * Load the next page of events. If the original criteria request a single
+     * page, only that page is loaded.
+     * 
+     * @throws SiteWhereException
+     */
+    protected void loadPage() throws SiteWhereException {
+	ISearchResults<? extends IDeviceEvent> results;
+	if (criteria.getPageSize() > 0) {
+	    results = list(new DateRangeSearchCriteria(criteria.getPageNumber(), criteria.getPageSize(),
+		    criteria.getStartDate(), endDate));
+	    lastPage = true;
+	} else {
+	    pageNumber++;
+	    results = list(new DateRangeSearchCriteria(pageNumber, getPageSize(), criteria.getStartDate(), endDate));
+	    lastPage = results.getResults().size() < getPageSize();
+	}
+	current = results.getResults().iterator();
+    }
+
+    /**
+     * List events of the requested type using the given criteria.
+     * 
+     * @param page
+     * @return
+     * @throws SiteWhereException
+     */
+    protected ISearchResults<? extends IDeviceEvent> list(IDateRangeSearchCriteria page) throws SiteWhereException {
+	if (forSite) {
+	    if (type == null) {
+		throw new SiteWhereException("Event type is required for listing site events.");
+	    }
+	    switch (type) {
+	    case Measurements:
+		return events.listDeviceMeasurementsForSite(token, page);
+	    case Location:
+		return events.listDeviceLocationsForSite(token, page);
+	    case Alert:
+		return events.listDeviceAlertsForSite(token, page);
+	    case CommandInvocation:
+		return events.listDeviceCommandInvocationsForSite(token, page);
+	    case CommandResponse:
+		return events.listDeviceCommandResponsesForSite(token, page);
+	    case StateChange:
+		return events.listDeviceStateChangesForSite(token, page);
+	    default:
+		throw new SiteWhereException("Listing site events of type '" + type + "' is not supported.");
+	    }
+	}
+	if (type == null) {
+	    return events.listDeviceEvents(token, page);
+	}
+	switch (type) {
+	case Measurements:
+	    return events.listDeviceMeasurements(token, page);
+	case Location:
+	    return events.listDeviceLocations(token, page);
+	case Alert:
+	    return events.listDeviceAlerts(token, page);
+	case CommandInvocation:
+	    return events.listDeviceCommandInvocations(token, page);
+	case CommandResponse:
+	    return events.listDeviceCommandResponses(token, page);
+	case StateChange:
+	    return events.listDeviceStateChanges(token, page);
+	default:
+	    throw new SiteWhereException("Listing assignment events of type '" + type + "' is not supported.");
+	}
+    }
+
+    public int getPageSize() {
+	return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+	this.pageSize = pageSize;
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.aggregation;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.SiteWhere;
+import com.sitewhere.device.event.processor.FilteredOutboundEventProcessor;
+import com.sitewhere.rest.model.device.event.MeasurementRollup;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
+import com.sitewhere.spi.device.event.processor.IOutboundEventProcessor;
+import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
+
+/**
+ * Implementation of {@link IOutboundEventProcessor} that computes count, min,
+ * max, sum and average for each measurement name of each assignment over
+ * tumbling or sliding event-time windows. When a window closes, the aggregate
+ * is stored as an {@link IMeasurementRollup} apart from device events, so it is
+ * not processed again as an outbound event and is queried separately from raw
+ * measurements.
+ * 
+ * Windows close when event time for the series passes the window end by the
+ * allowed lateness. Series that stop receiving events are advanced by wall
+ * clock time so their last windows are not held open indefinitely.
+ * 
+ * @author Derek
+ */
+public class MeasurementAggregationProcessor extends FilteredOutboundEventProcessor {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Separates assignment token and measurement name in series keys */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /** Window size in seconds */
+    private long windowSize = 60;
+
+    /** Window slide in seconds (defaults to window size) */
+    private Long windowSlide;
+
+    /** Seconds a value may arrive after the latest event time */
+    private long allowedLateness = 5;
+
+    /** Comma-delimited list of measurement names to aggregate (all if null) */
+    private String measurementNames;
+
+    /** Parsed measurement names */
+    private Set<String> names;
+
+    /** Aggregators by series key */
+    private ConcurrentMap<String, Series> series;
+
+    /** Executor that closes windows for idle series */
+    private ScheduledExecutorService sweeper;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#start
+     * (com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	// Required for filters.
+	super.start(monitor);
+
+	long slide = getSlide();
+	if ((windowSize <= 0) || (slide <= 0) || (slide > windowSize) || ((windowSize % slide) != 0)) {
+	    throw new SiteWhereException("Measurement aggregation window size (" + windowSize
+		    + ") must be a positive multiple of window slide (" + slide + ").");
+	}
+	this.names = null;
+	if ((measurementNames != null) && (measurementNames.trim().length() > 0)) {
+	    names = new HashSet<String>();
+	    for (String name : measurementNames.split(",")) {
+		if (name.trim().length() > 0) {
+		    names.add(name.trim());
+		}
+	    }
+	}
+	this.series = new ConcurrentHashMap<String, Series>();
+	this.sweeper = Executors.newSingleThreadScheduledExecutor(new SweeperThreadFactory());
+	sweeper.scheduleWithFixedDelay(new Runnable() {
+
+	    @Override
+	    public void run() {
+		sweep();
+	    }
+	}, slide, slide, TimeUnit.SECONDS);
+
+	LOGGER.info("Starting measurement aggregation with " + windowSize + "s windows sliding every " + slide + "s.");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#stop(
+     * com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (sweeper != null) {
+	    sweeper.shutdownNow();
+	    sweeper = null;
+	}
+	super.stop(monitor);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+     */
+    @Override
+    public Logger getLogger() {
+	return LOGGER;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#
+     * onMeasurementsNotFiltered(com.sitewhere.spi.device.event.
+     * IDeviceMeasurements)
+     */
+    @Override
+    public void onMeasurementsNotFiltered(IDeviceMeasurements measurements) throws SiteWhereException {
+	long eventTime = (measurements.getEventDate() != null) ? measurements.getEventDate().getTime()
+		: System.currentTimeMillis();
+	String assignmentToken = measurements.getDeviceAssignmentToken();
+	List<WindowAggregate> closed = new ArrayList<WindowAggregate>();
+	for (Map.Entry<String, Double> entry : measurements.getMeasurements().entrySet()) {
+	    if ((entry.getValue() == null) || ((names != null) && (!names.contains(entry.getKey())))) {
+		continue;
+	    }
+	    String key = assignmentToken + KEY_SEPARATOR + entry.getKey();
+	    while (true) {
+		Series current = getSeries(key);
+		synchronized (current) {
+		    if (current.isRetired()) {
+			continue;
+		    }
+		    current.getAggregator().add(eventTime, entry.getValue(), closed);
+		    current.setLastUpdated(System.currentTimeMillis());
+		}
+		break;
+	    }
+	    persist(assignmentToken, entry.getKey(), closed);
+	    closed.clear();
+	}
+    }
+
+    /**
+     * Get or create series for a key.
+     * 
+     * @param key
+     * @return
+     */
+    protected Series getSeries(String key) {
+	Series current = series.get(key);
+	if (current == null) {
+	    long slide = getSlide() * 1000;
+	    current = new Series(new WindowAggregator(windowSize * 1000, slide, allowedLateness * 1000));
+	    Series existing = series.putIfAbsent(key, current);
+	    if (existing != null) {
+		current = existing;
+	    }
+	}
+	return current;
+    }
+
+    /**
+     * Close windows for series that have not received values, advancing their
+     * event time by the wall clock time since the last value. Series with no
+     * open windows are removed.
+     */
+    protected void sweep() {
+	long now = System.currentTimeMillis();
+	List<WindowAggregate> closed = new ArrayList<WindowAggregate>();
+	for (Map.Entry<String, Series> entry : series.entrySet()) {
+	    Series current = entry.getValue();
+	    synchronized (current) {
+		WindowAggregator aggregator = current.getAggregator();
+		long idle = now - current.getLastUpdated();
+		aggregator.advance(aggregator.getMaxEventTime() + idle - (allowedLateness * 1000), closed);
+		if (aggregator.isEmpty() && (idle > getSlide() * 1000)) {
+		    current.setRetired(true);
+		    series.remove(entry.getKey(), current);
+		}
+	    }
+	    if (!closed.isEmpty()) {
+		int split = entry.getKey().indexOf(KEY_SEPARATOR);
+		try {
+		    persist(entry.getKey().substring(0, split), entry.getKey().substring(split + 1), closed);
+		} catch (Throwable t) {
+		    LOGGER.error("Unable to store measurement rollups for " + entry.getKey().replace(KEY_SEPARATOR, '/')
+			    + ".", t);
+		}
+		closed.clear();
+	    }
+	}
+    }
+
+    /**
+     * Store closed windows as measurement rollups.
+     * 
+     * @param assignmentToken
+     * @param name
+     * @param closed
+     * @throws SiteWhereException
+     */
+    protected void persist(String assignmentToken, String name, List<WindowAggregate> closed)
+	    throws SiteWhereException {
+	if (closed.isEmpty()) {
+	    return;
+	}
+	List<IMeasurementRollup> rollups = new ArrayList<IMeasurementRollup>();
+	for (WindowAggregate window : closed) {
+	    MeasurementRollup rollup = new MeasurementRollup();
+	    rollup.setDeviceAssignmentToken(assignmentToken);
+	    rollup.setMeasurementName(name);
+	    rollup.setWindowSize(windowSize);
+	    rollup.setWindowStart(new Date(window.getStart()));
+	    rollup.setWindowEnd(new Date(window.getEnd()));
+	    rollup.setCount(window.getCount());
+	    rollup.setMin(window.getMin());
+	    rollup.setMax(window.getMax());
+	    rollup.setSum(window.getSum());
+	    rollups.add(rollup);
+	}
+	SiteWhere.getServer().getDeviceEventManagement(getTenant()).addMeasurementRollups(assignmentToken, rollups);
+    }
+
+    /**
+     * Get window slide in seconds.
+     * 
+     * @return
+     */
+    protected long getSlide() {
+	return (windowSlide != null) ? windowSlide : windowSize;
+    }
+
+    public long getWindowSize() {
+	return windowSize;
+    }
+
+    public void setWindowSize(long windowSize) {
+	this.windowSize = windowSize;
+    }
+
+    public Long getWindowSlide() {
+	return windowSlide;
+    }
+
+    public void setWindowSlide(Long windowSlide) {
+	this.windowSlide = windowSlide;
+    }
+
+    public long getAllowedLateness() {
+	return allowedLateness;
+    }
+
+    public void setAllowedLateness(long allowedLateness) {
+	this.allowedLateness = allowedLateness;
+    }
+
+    public String getMeasurementNames() {
+	return measurementNames;
+    }
+
+    public void setMeasurementNames(String measurementNames) {
+	this.measurementNames = measurementNames;
+    }
+
+    /**
+     * Aggregator for a single assignment and measurement name.
+     * 
+     * @author Derek
+     */
+    private static class Series {
+
+	/** Window aggregator */
+	private WindowAggregator aggregator;
+
+	/** Wall clock time of last value */
+	private long lastUpdated = System.currentTimeMillis();
+
+	/** Set once series is removed so concurrent writers create a new one */
+	private boolean retired;
+
+	public Series(WindowAggregator aggregator) {
+	    this.aggregator = aggregator;
+	}
+
+	public WindowAggregator getAggregator() {
+	    return aggregator;
+	}
+
+	public long getLastUpdated() {
+	    return lastUpdated;
+	}
+
+	public void setLastUpdated(long lastUpdated) {
+	    this.lastUpdated = lastUpdated;
+	}
+
+	public boolean isRetired() {
+	    return retired;
+	}
+
+	public void setRetired(boolean retired) {
+	    this.retired = retired;
+	}
+    }
+
+    /** Used for naming measurement aggregation sweeper threads */
+    private class SweeperThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere Measurement Aggregation Sweeper " + counter.incrementAndGet());
+	}
+    }
+}
\ No newline at end of file
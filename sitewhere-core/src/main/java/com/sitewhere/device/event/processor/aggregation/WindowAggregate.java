@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.aggregation;
+
+/**
+ * Aggregate values for a window that has closed.
+ * 
+ * @author Derek
+ */
+public class WindowAggregate {
+
+    /** Window start in milliseconds (inclusive) */
+    private long start;
+
+    /** Window end in milliseconds (exclusive) */
+    private long end;
+
+    /** Number of values */
+    private long count;
+
+    /** Minimum value */
+    private double min;
+
+    /** Maximum value */
+    private double max;
+
+    /** Sum of values */
+    private double sum;
+
+    public WindowAggregate(long start, long end, long count, double min, double max, double sum) {
+	this.start = start;
+	this.end = end;
+	this.count = count;
+	this.min = min;
+	this.max = max;
+	this.sum = sum;
+    }
+
+    public long getStart() {
+	return start;
+    }
+
+    public long getEnd() {
+	return end;
+    }
+
+    public long getCount() {
+	return count;
+    }
+
+    public double getMin() {
+	return min;
+    }
+
+    public double getMax() {
+	return max;
+    }
+
+    public double getSum() {
+	return sum;
+    }
+
+    public double getAverage() {
+	return (count > 0) ? (sum / count) : 0;
+    }
+}
\ No newline at end of file
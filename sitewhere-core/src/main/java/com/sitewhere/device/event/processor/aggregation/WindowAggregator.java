@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.aggregation;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Event-time window aggregator for a single series of values. Time is divided
+ * into panes the length of the window slide and each window covers a fixed
+ * number of consecutive panes, so tumbling windows are the case where slide
+ * equals size. Pane aggregates are kept in a ring of primitive arrays sized
+ * for the window plus allowed lateness, so adding a value never allocates.
+ * 
+ * The watermark trails the latest event time by the allowed lateness. Windows
+ * ending at or before the watermark are emitted and values that would fall in
+ * an emitted window are dropped. This class is not thread safe.
+ * 
+ * @author Derek
+ */
+public class WindowAggregator {
+
+    /** Marks an unused pane slot */
+    private static final long NO_PANE = Long.MIN_VALUE;
+
+    /** Window size in milliseconds */
+    private long size;
+
+    /** Window slide (pane length) in milliseconds */
+    private long slide;
+
+    /** Allowed lateness in milliseconds */
+    private long lateness;
+
+    /** Number of panes in a window */
+    private int panesPerWindow;
+
+    /** Pane id held in each slot */
+    private long[] paneIds;
+
+    /** Value count for each slot */
+    private long[] counts;
+
+    /** Minimum value for each slot */
+    private double[] mins;
+
+    /** Maximum value for each slot */
+    private double[] maxs;
+
+    /** Sum of values for each slot */
+    private double[] sums;
+
+    /** Latest event time seen */
+    private long maxEventTime = Long.MIN_VALUE;
+
+    /** Last pane of the most recently closed window */
+    private long lastClosedPane = NO_PANE;
+
+    /** Number of values dropped for being late */
+    private long dropped;
+
+    public WindowAggregator(long size, long slide, long lateness) {
+	if ((size <= 0) || (slide <= 0) || (slide > size) || ((size % slide) != 0)) {
+	    throw new IllegalArgumentException("Window size must be a positive multiple of slide.");
+	}
+	this.size = size;
+	this.slide = slide;
+	this.lateness = Math.max(0, lateness);
+	this.panesPerWindow = (int) (size / slide);
+	int capacity = panesPerWindow + (int) ((this.lateness + slide - 1) / slide) + 2;
+	this.paneIds = new long[capacity];
+	this.counts = new long[capacity];
+	this.mins = new double[capacity];
+	this.maxs = new double[capacity];
+	this.sums = new double[capacity];
+	Arrays.fill(paneIds, NO_PANE);
+    }
+
+    /**
+     * Add a value, appending any windows closed by the advancing watermark.
+     * 
+     * @param eventTime
+     * @param value
+     * @param closed
+     * @return false if value was dropped for being late
+     */
+    public boolean add(long eventTime, double value, List<WindowAggregate> closed) {
+	long pane = Math.floorDiv(eventTime, slide);
+	if ((lastClosedPane != NO_PANE) && (pane <= lastClosedPane)) {
+	    dropped++;
+	    return false;
+	}
+	if (lastClosedPane == NO_PANE) {
+	    lastClosedPane = pane - 1;
+	}
+	if (eventTime > maxEventTime) {
+	    maxEventTime = eventTime;
+	    advance(eventTime - lateness, closed);
+	}
+	int slot = slot(pane);
+	if (paneIds[slot] != pane) {
+	    paneIds[slot] = pane;
+	    counts[slot] = 1;
+	    mins[slot] = value;
+	    maxs[slot] = value;
+	    sums[slot] = value;
+	} else {
+	    counts[slot]++;
+	    mins[slot] = Math.min(mins[slot], value);
+	    maxs[slot] = Math.max(maxs[slot], value);
+	    sums[slot] += value;
+	}
+	return true;
+    }
+
+    /**
+     * Advance the watermark, appending all non-empty windows that end at or
+     * before it.
+     * 
+     * @param watermark
+     * @param closed
+     */
+    public void advance(long watermark, List<WindowAggregate> closed) {
+	if (lastClosedPane == NO_PANE) {
+	    return;
+	}
+	long target = Math.floorDiv(watermark, slide) - 1;
+	long pane = lastClosedPane + 1;
+	while (pane <= target) {
+	    // Skip over windows that contain no values.
+	    long next = nextPaneFrom(pane - panesPerWindow + 1);
+	    if (next == NO_PANE) {
+		break;
+	    }
+	    if (next > pane) {
+		pane = next;
+		continue;
+	    }
+	    emit(pane, closed);
+	    release(pane - panesPerWindow + 1);
+	    lastClosedPane = pane;
+	    pane++;
+	}
+	lastClosedPane = Math.max(lastClosedPane, target);
+    }
+
+    /**
+     * Append the window ending with the given pane.
+     * 
+     * @param lastPane
+     * @param closed
+     */
+    protected void emit(long lastPane, List<WindowAggregate> closed) {
+	long count = 0;
+	double min = Double.POSITIVE_INFINITY;
+	double max = Double.NEGATIVE_INFINITY;
+	double sum = 0;
+	for (long pane = lastPane - panesPerWindow + 1; pane <= lastPane; pane++) {
+	    int slot = slot(pane);
+	    if (paneIds[slot] == pane) {
+		count += counts[slot];
+		min = Math.min(min, mins[slot]);
+		max = Math.max(max, maxs[slot]);
+		sum += sums[slot];
+	    }
+	}
+	if (count > 0) {
+	    long end = (lastPane + 1) * slide;
+	    closed.add(new WindowAggregate(end - size, end, count, min, max, sum));
+	}
+    }
+
+    /**
+     * Free the slot for a pane that no open window covers.
+     * 
+     * @param pane
+     */
+    protected void release(long pane) {
+	int slot = slot(pane);
+	if (paneIds[slot] == pane) {
+	    paneIds[slot] = NO_PANE;
+	    counts[slot] = 0;
+	}
+    }
+
+    /**
+     * Find the earliest held pane at or after the given pane.
+     * 
+     * @param from
+     * @return
+     */
+    protected long nextPaneFrom(long from) {
+	long next = NO_PANE;
+	for (int i = 0; i < paneIds.length; i++) {
+	    if ((paneIds[i] != NO_PANE) && (paneIds[i] >= from) && ((next == NO_PANE) || (paneIds[i] < next))) {
+		next = paneIds[i];
+	    }
+	}
+	return next;
+    }
+
+    /**
+     * Get ring slot for a pane.
+     * 
+     * @param pane
+     * @return
+     */
+    protected int slot(long pane) {
+	return (int) Math.floorMod(pane, (long) paneIds.length);
+    }
+
+    /**
+     * Indicates if no values are waiting for a window to close.
+     * 
+     * @return
+     */
+    public boolean isEmpty() {
+	for (int i = 0; i < paneIds.length; i++) {
+	    if (paneIds[i] != NO_PANE) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    public long getMaxEventTime() {
+	return maxEventTime;
+    }
+
+    public long getDropped() {
+	return dropped;
+    }
+}
\ No newline at end of file
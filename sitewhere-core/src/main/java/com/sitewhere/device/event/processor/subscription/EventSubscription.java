@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+import com.sitewhere.spi.device.event.processor.IEventSubscriptionSink;
+
+/**
+ * A live subscriber to events for a tenant. Events matching the subscription
+ * criteria are held in a bounded buffer until they are delivered to the sink.
+ * When the subscriber falls behind and the buffer is full, measurements are
+ * coalesced into a single event per assignment holding the latest value for
+ * each measurement name. Other events make room by pushing the oldest
+ * buffered event out, which is coalesced if it is a measurement and dropped
+ * otherwise. The time a send to the sink started is tracked so that a
+ * subscriber that stops reading can be detected and evicted.
+ * 
+ * @author Derek
+ */
+public class EventSubscription {
+
+    /** Unique subscription id */
+    private String id;
+
+    /** Only deliver events for this site (null for all) */
+    private String siteToken;
+
+    /** Only deliver events for this assignment (null for all) */
+    private String assignmentToken;
+
+    /** Only deliver events of these types (null or empty for all) */
+    private Set<DeviceEventType> eventTypes;
+
+    /** Maximum number of buffered events */
+    private int capacity;
+
+    /** Sink that events are delivered to */
+    private IEventSubscriptionSink sink;
+
+    /** Events waiting to be delivered */
+    private ArrayDeque<IDeviceEvent> buffer;
+
+    /** Coalesced measurements by assignment token */
+    private Map<String, DeviceMeasurements> coalesced = new LinkedHashMap<String, DeviceMeasurements>();
+
+    /** Indicates a delivery is scheduled or running */
+    private AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** Time the current send to the sink started (0 if not sending) */
+    private long sendStarted;
+
+    /** Indicates the current send has exceeded the send timeout */
+    private boolean stalled = false;
+
+    /** Indicates subscription has been closed */
+    private volatile boolean closed = false;
+
+    /** Number of events delivered */
+    private long deliveredCount;
+
+    /** Number of measurements merged into coalesced events */
+    private long coalescedCount;
+
+    /** Number of events dropped */
+    private long droppedCount;
+
+    public EventSubscription(String id, String siteToken, String assignmentToken, Set<DeviceEventType> eventTypes,
+	    int capacity, IEventSubscriptionSink sink) {
+	if (capacity <= 0) {
+	    throw new IllegalArgumentException("Subscription buffer size must be positive.");
+	}
+	this.id = id;
+	this.siteToken = siteToken;
+	this.assignmentToken = assignmentToken;
+	this.eventTypes = eventTypes;
+	this.capacity = capacity;
+	this.sink = sink;
+	this.buffer = new ArrayDeque<IDeviceEvent>(Math.min(capacity, 64));
+    }
+
+    /**
+     * Indicates whether an event matches the subscription criteria.
+     * 
+     * @param event
+     * @return
+     */
+    public boolean matches(IDeviceEvent event) {
+	if ((siteToken != null) && (!siteToken.equals(event.getSiteToken()))) {
+	    return false;
+	}
+	if ((assignmentToken != null) && (!assignmentToken.equals(event.getDeviceAssignmentToken()))) {
+	    return false;
+	}
+	if ((eventTypes != null) && (!eventTypes.isEmpty()) && (!eventTypes.contains(event.getEventType()))) {
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Add an event to the buffer, coalescing or dropping events if the
+     * subscriber has fallen behind.
+     * 
+     * @param event
+     */
+    public synchronized void offer(IDeviceEvent event) {
+	if (closed) {
+	    return;
+	}
+	if (buffer.size() < capacity) {
+	    buffer.add(event);
+	    return;
+	}
+	if (event instanceof IDeviceMeasurements) {
+	    coalesce((IDeviceMeasurements) event);
+	    return;
+	}
+	IDeviceEvent oldest = buffer.poll();
+	if (oldest instanceof IDeviceMeasurements) {
+	    coalesce((IDeviceMeasurements) oldest);
+	} else {
+	    droppedCount++;
+	}
+	buffer.add(event);
+    }
+
+    /**
+     * Merge measurements into the coalesced event for the assignment. Values
+     * from events older than the coalesced event only fill in measurement
+     * names that are not already present.
+     * 
+     * @param mxs
+     */
+    protected void coalesce(IDeviceMeasurements mxs) {
+	String key = mxs.getDeviceAssignmentToken();
+	DeviceMeasurements merged = coalesced.get(key);
+	if (merged == null) {
+	    if (coalesced.size() >= capacity) {
+		droppedCount++;
+		return;
+	    }
+	    merged = new DeviceMeasurements();
+	    copyHeader(mxs, merged);
+	    merged.getMeasurements().putAll(mxs.getMeasurements());
+	    coalesced.put(key, merged);
+	    return;
+	}
+	boolean newer = (merged.getEventDate() == null) || (mxs.getEventDate() == null)
+		|| (!mxs.getEventDate().before(merged.getEventDate()));
+	if (newer) {
+	    copyHeader(mxs, merged);
+	    merged.getMeasurements().putAll(mxs.getMeasurements());
+	} else {
+	    for (Map.Entry<String, Double> entry : mxs.getMeasurements().entrySet()) {
+		if (!merged.getMeasurements().containsKey(entry.getKey())) {
+		    merged.addOrReplaceMeasurement(entry.getKey(), entry.getValue());
+		}
+	    }
+	}
+	coalescedCount++;
+    }
+
+    /**
+     * Copy identifying fields from an event into a coalesced event.
+     * 
+     * @param source
+     * @param target
+     */
+    protected void copyHeader(IDeviceMeasurements source, DeviceMeasurements target) {
+	target.setId(source.getId());
+	target.setAlternateId(source.getAlternateId());
+	target.setSiteToken(source.getSiteToken());
+	target.setDeviceAssignmentToken(source.getDeviceAssignmentToken());
+	target.setAssignmentType(source.getAssignmentType());
+	target.setAssetModuleId(source.getAssetModuleId());
+	target.setAssetId(source.getAssetId());
+	target.setEventDate(source.getEventDate());
+	target.setReceivedDate(source.getReceivedDate());
+    }
+
+    /**
+     * Remove up to the given number of events for delivery. Buffered events are
+     * returned before coalesced measurements.
+     * 
+     * @param max
+     * @return
+     */
+    public synchronized List<IDeviceEvent> drain(int max) {
+	List<IDeviceEvent> events = new ArrayList<IDeviceEvent>(Math.min(max, getPendingCount()));
+	while ((events.size() < max) && (!buffer.isEmpty())) {
+	    events.add(buffer.poll());
+	}
+	Iterator<DeviceMeasurements> it = coalesced.values().iterator();
+	while ((events.size() < max) && (it.hasNext())) {
+	    events.add(it.next());
+	    it.remove();
+	}
+	deliveredCount += events.size();
+	return events;
+    }
+
+    /**
+     * Get number of events waiting for delivery.
+     * 
+     * @return
+     */
+    public synchronized int getPendingCount() {
+	return buffer.size() + coalesced.size();
+    }
+
+    /**
+     * Record that a send to the sink is starting.
+     * 
+     * @param now
+     */
+    public synchronized void beginSend(long now) {
+	sendStarted = now;
+    }
+
+    /**
+     * Record that a send to the sink has finished.
+     * 
+     * @return true if the send had been marked as stalled
+     */
+    public synchronized boolean endSend() {
+	sendStarted = 0;
+	boolean wasStalled = stalled;
+	stalled = false;
+	return wasStalled;
+    }
+
+    /**
+     * Mark the current send as stalled if it started more than the given
+     * timeout ago. A send is only marked once.
+     * 
+     * @param now
+     * @param timeout
+     * @return true if the send was marked as stalled by this call
+     */
+    public synchronized boolean markStalled(long now, long timeout) {
+	if ((sendStarted == 0) || (stalled) || ((now - sendStarted) < timeout)) {
+	    return false;
+	}
+	stalled = true;
+	return true;
+    }
+
+    /**
+     * Mark the subscription closed and release buffered events.
+     */
+    public synchronized void close() {
+	closed = true;
+	buffer.clear();
+	coalesced.clear();
+    }
+
+    public boolean isClosed() {
+	return closed;
+    }
+
+    public String getId() {
+	return id;
+    }
+
+    public String getSiteToken() {
+	return siteToken;
+    }
+
+    public String getAssignmentToken() {
+	return assignmentToken;
+    }
+
+    public Set<DeviceEventType> getEventTypes() {
+	return eventTypes;
+    }
+
+    public int getCapacity() {
+	return capacity;
+    }
+
+    public IEventSubscriptionSink getSink() {
+	return sink;
+    }
+
+    public AtomicBoolean getScheduled() {
+	return scheduled;
+    }
+
+    public synchronized long getDeliveredCount() {
+	return deliveredCount;
+    }
+
+    public synchronized long getCoalescedCount() {
+	return coalescedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+	return droppedCount;
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.subscription;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.processor.IEventSubscriptionSink;
+import com.sitewhere.spi.tenant.ITenant;
+
+/**
+ * Fans out events for a tenant to live subscribers. Subscriptions are indexed
+ * by assignment and site so that publishing an event only visits subscribers
+ * that can match it. Delivery to each subscriber happens on a small shared
+ * thread pool, one batch at a time, so slow subscribers do not hold up event
+ * processing or other subscribers. Sends to a sink may block if the client
+ * stops reading, so a watchdog evicts any subscriber whose send runs longer
+ * than the send timeout and adds a delivery thread in place of the blocked one
+ * until its send returns.
+ * 
+ * @author Derek
+ */
+public class EventSubscriptionManager {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Default number of delivery threads */
+    public static final int DEFAULT_DELIVERY_THREADS = 2;
+
+    /** Default maximum events sent to a subscriber at once */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Default time in milliseconds a send may block before eviction */
+    public static final long DEFAULT_SEND_TIMEOUT_MS = 10 * 1000;
+
+    /** Smallest interval in milliseconds between stalled send checks */
+    private static final long MIN_WATCHDOG_INTERVAL_MS = 10;
+
+    /** Managers by tenant id */
+    private static ConcurrentMap<String, EventSubscriptionManager> MANAGERS = new ConcurrentHashMap<String, EventSubscriptionManager>();
+
+    /** Tenant id used in thread names */
+    private String tenantId;
+
+    /** Subscriptions by id */
+    private ConcurrentMap<String, EventSubscription> subscriptions = new ConcurrentHashMap<String, EventSubscription>();
+
+    /** Subscriptions filtered by assignment */
+    private ConcurrentMap<String, Set<EventSubscription>> byAssignment = new ConcurrentHashMap<String, Set<EventSubscription>>();
+
+    /** Subscriptions filtered by site but not assignment */
+    private ConcurrentMap<String, Set<EventSubscription>> bySite = new ConcurrentHashMap<String, Set<EventSubscription>>();
+
+    /** Subscriptions without site or assignment filter */
+    private Set<EventSubscription> unfiltered = newSubscriptionSet();
+
+    /** Delivers events to subscribers (null if not started) */
+    private volatile ThreadPoolExecutor delivery;
+
+    /** Evicts subscribers with stalled sends (null if not started) */
+    private ScheduledExecutorService watchdog;
+
+    /** Maximum events sent to a subscriber at once */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** Time in milliseconds a send may block before eviction */
+    private long sendTimeout = DEFAULT_SEND_TIMEOUT_MS;
+
+    public EventSubscriptionManager(String tenantId) {
+	this.tenantId = tenantId;
+    }
+
+    /**
+     * Get the subscription manager for a tenant.
+     * 
+     * @param tenant
+     * @return
+     */
+    public static EventSubscriptionManager getInstance(ITenant tenant) {
+	EventSubscriptionManager manager = MANAGERS.get(tenant.getId());
+	if (manager == null) {
+	    manager = new EventSubscriptionManager(tenant.getId());
+	    EventSubscriptionManager existing = MANAGERS.putIfAbsent(tenant.getId(), manager);
+	    if (existing != null) {
+		manager = existing;
+	    }
+	}
+	return manager;
+    }
+
+    /**
+     * Start accepting subscriptions using the default send timeout.
+     * 
+     * @param threads
+     * @param batchSize
+     */
+    public void start(int threads, int batchSize) {
+	start(threads, batchSize, DEFAULT_SEND_TIMEOUT_MS);
+    }
+
+    /**
+     * Start accepting subscriptions.
+     * 
+     * @param threads
+     * @param batchSize
+     * @param sendTimeout
+     */
+    public synchronized void start(int threads, int batchSize, long sendTimeout) {
+	shutdownExecutors();
+	this.batchSize = batchSize;
+	this.sendTimeout = sendTimeout;
+	this.delivery = new ThreadPoolExecutor(threads, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+		new LinkedBlockingQueue<Runnable>(), new DeliveryThreadFactory(tenantId));
+	this.watchdog = Executors.newSingleThreadScheduledExecutor(new WatchdogThreadFactory(tenantId));
+	long interval = Math.max(MIN_WATCHDOG_INTERVAL_MS, sendTimeout / 4);
+	watchdog.scheduleWithFixedDelay(new Watchdog(), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Close all subscriptions and stop delivering events.
+     */
+    public void stop() {
+	synchronized (this) {
+	    shutdownExecutors();
+	}
+	for (EventSubscription subscription : new ArrayList<EventSubscription>(subscriptions.values())) {
+	    unsubscribe(subscription);
+	}
+    }
+
+    /**
+     * Stop delivery and watchdog threads if running.
+     */
+    protected void shutdownExecutors() {
+	if (delivery != null) {
+	    delivery.shutdownNow();
+	    delivery = null;
+	}
+	if (watchdog != null) {
+	    watchdog.shutdownNow();
+	    watchdog = null;
+	}
+    }
+
+    /**
+     * Indicates whether the manager is accepting subscriptions.
+     * 
+     * @return
+     */
+    public boolean isStarted() {
+	return delivery != null;
+    }
+
+    /**
+     * Add a subscription. Null criteria match all events.
+     * 
+     * @param siteToken
+     * @param assignmentToken
+     * @param eventTypes
+     * @param bufferSize
+     * @param sink
+     * @return
+     * @throws SiteWhereException
+     */
+    public synchronized EventSubscription subscribe(String siteToken, String assignmentToken,
+	    Set<DeviceEventType> eventTypes, int bufferSize, IEventSubscriptionSink sink) throws SiteWhereException {
+	if (!isStarted()) {
+	    throw new SiteWhereException(
+		    "Event subscriptions are not available. Add an event subscription processor to the tenant.");
+	}
+	EventSubscription subscription = new EventSubscription(UUID.randomUUID().toString(), siteToken,
+		assignmentToken, eventTypes, bufferSize, sink);
+	subscriptions.put(subscription.getId(), subscription);
+	if (assignmentToken != null) {
+	    getOrCreate(byAssignment, assignmentToken).add(subscription);
+	} else if (siteToken != null) {
+	    getOrCreate(bySite, siteToken).add(subscription);
+	} else {
+	    unfiltered.add(subscription);
+	}
+	return subscription;
+    }
+
+    /**
+     * Remove a subscription and close its sink. The sink is closed outside of
+     * the lock since closing may call back into the manager.
+     * 
+     * @param subscription
+     */
+    public void unsubscribe(EventSubscription subscription) {
+	synchronized (this) {
+	    if (subscriptions.remove(subscription.getId()) == null) {
+		return;
+	    }
+	    if (subscription.getAssignmentToken() != null) {
+		remove(byAssignment, subscription.getAssignmentToken(), subscription);
+	    } else if (subscription.getSiteToken() != null) {
+		remove(bySite, subscription.getSiteToken(), subscription);
+	    } else {
+		unfiltered.remove(subscription);
+	    }
+	}
+	subscription.close();
+	try {
+	    subscription.getSink().close();
+	} catch (Throwable t) {
+	    LOGGER.debug("Unable to close subscription sink.", t);
+	}
+    }
+
+    /**
+     * Offer an event to all matching subscriptions.
+     * 
+     * @param event
+     */
+    public void publish(IDeviceEvent event) {
+	if (subscriptions.isEmpty()) {
+	    return;
+	}
+	offer(unfiltered, event);
+	if (event.getDeviceAssignmentToken() != null) {
+	    offer(byAssignment.get(event.getDeviceAssignmentToken()), event);
+	}
+	if (event.getSiteToken() != null) {
+	    offer(bySite.get(event.getSiteToken()), event);
+	}
+    }
+
+    /**
+     * Offer an event to each matching subscription in a group and schedule
+     * delivery.
+     * 
+     * @param group
+     * @param event
+     */
+    protected void offer(Collection<EventSubscription> group, IDeviceEvent event) {
+	if (group == null) {
+	    return;
+	}
+	for (EventSubscription subscription : group) {
+	    if (subscription.matches(event)) {
+		subscription.offer(event);
+		schedule(subscription);
+	    }
+	}
+    }
+
+    /**
+     * Schedule delivery for a subscription unless one is already pending.
+     * 
+     * @param subscription
+     */
+    protected void schedule(EventSubscription subscription) {
+	ThreadPoolExecutor executor = delivery;
+	if ((executor == null) || (!subscription.getScheduled().compareAndSet(false, true))) {
+	    return;
+	}
+	try {
+	    executor.execute(new Delivery(executor, subscription));
+	} catch (RejectedExecutionException e) {
+	    subscription.getScheduled().set(false);
+	}
+    }
+
+    /**
+     * Evict subscribers whose current send has run longer than the send
+     * timeout. Each evicted send holds a delivery thread until it returns, so
+     * a thread is added to the pool for as long as it is blocked.
+     */
+    protected void evictStalled() {
+	ThreadPoolExecutor executor = delivery;
+	if (executor == null) {
+	    return;
+	}
+	long now = System.currentTimeMillis();
+	for (EventSubscription subscription : subscriptions.values()) {
+	    if (subscription.markStalled(now, getSendTimeout())) {
+		LOGGER.warn("Evicting subscription " + subscription.getId() + " after send blocked for more than "
+			+ getSendTimeout() + "ms.");
+		resizeDelivery(executor, 1);
+		unsubscribe(subscription);
+	    }
+	}
+    }
+
+    /**
+     * Adjust the number of core delivery threads.
+     * 
+     * @param executor
+     * @param delta
+     */
+    protected synchronized void resizeDelivery(ThreadPoolExecutor executor, int delta) {
+	if (!executor.isShutdown()) {
+	    executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+	}
+    }
+
+    /**
+     * Get number of active subscriptions.
+     * 
+     * @return
+     */
+    public int getSubscriptionCount() {
+	return subscriptions.size();
+    }
+
+    /**
+     * Get a subscription set from an index, creating it if necessary.
+     * 
+     * @param index
+     * @param key
+     * @return
+     */
+    protected static Set<EventSubscription> getOrCreate(ConcurrentMap<String, Set<EventSubscription>> index,
+	    String key) {
+	Set<EventSubscription> group = index.get(key);
+	if (group == null) {
+	    group = newSubscriptionSet();
+	    index.put(key, group);
+	}
+	return group;
+    }
+
+    /**
+     * Remove a subscription from an index, dropping empty sets.
+     * 
+     * @param index
+     * @param key
+     * @param subscription
+     */
+    protected static void remove(ConcurrentMap<String, Set<EventSubscription>> index, String key,
+	    EventSubscription subscription) {
+	Set<EventSubscription> group = index.get(key);
+	if (group != null) {
+	    group.remove(subscription);
+	    if (group.isEmpty()) {
+		index.remove(key);
+	    }
+	}
+    }
+
+    /**
+     * Create a set that may be iterated while subscriptions are changing.
+     * 
+     * @return
+     */
+    protected static Set<EventSubscription> newSubscriptionSet() {
+	return Collections.newSetFromMap(new ConcurrentHashMap<EventSubscription, Boolean>());
+    }
+
+    /**
+     * Get number of core delivery threads, including threads added in place of
+     * stalled sends.
+     * 
+     * @return
+     */
+    public int getDeliveryThreadCount() {
+	ThreadPoolExecutor executor = delivery;
+	return (executor != null) ? executor.getCorePoolSize() : 0;
+    }
+
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    public long getSendTimeout() {
+	return sendTimeout;
+    }
+
+    /**
+     * Sends one batch of events to a subscriber, then reschedules itself if
+     * more events are waiting so that busy subscribers share the pool fairly.
+     * 
+     * @author Derek
+     */
+    private class Delivery implements Runnable {
+
+	/** Executor running the delivery */
+	private ThreadPoolExecutor executor;
+
+	/** Subscription being delivered */
+	private EventSubscription subscription;
+
+	public Delivery(ThreadPoolExecutor executor, EventSubscription subscription) {
+	    this.executor = executor;
+	    this.subscription = subscription;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+	    List<IDeviceEvent> events = subscription.drain(getBatchSize());
+	    try {
+		if (!events.isEmpty()) {
+		    subscription.beginSend(System.currentTimeMillis());
+		    try {
+			subscription.getSink().send(events);
+		    } finally {
+			if (subscription.endSend()) {
+			    resizeDelivery(executor, -1);
+			}
+		    }
+		}
+	    } catch (Throwable t) {
+		LOGGER.debug("Removing subscription " + subscription.getId() + " after delivery failed.", t);
+		unsubscribe(subscription);
+		return;
+	    } finally {
+		subscription.getScheduled().set(false);
+	    }
+	    if ((!subscription.isClosed()) && (subscription.getPendingCount() > 0)) {
+		schedule(subscription);
+	    }
+	}
+    }
+
+    /**
+     * Periodically checks for stalled sends.
+     * 
+     * @author Derek
+     */
+    private class Watchdog implements Runnable {
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+	    try {
+		evictStalled();
+	    } catch (Throwable t) {
+		LOGGER.error("Unable to check subscriptions for stalled sends.", t);
+	    }
+	}
+    }
+
+    /** Used for naming subscription delivery threads */
+    private class DeliveryThreadFactory implements ThreadFactory {
+
+	/** Tenant id used in thread names */
+	private String name;
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public DeliveryThreadFactory(String name) {
+	    this.name = name;
+	}
+
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, "SiteWhere Subscriptions(" + name + ") " + counter.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+
+    /** Used for naming subscription watchdog thread */
+    private class WatchdogThreadFactory implements ThreadFactory {
+
+	/** Tenant id used in thread name */
+	private String name;
+
+	public WatchdogThreadFactory(String name) {
+	    this.name = name;
+	}
+
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, "SiteWhere Subscription Watchdog(" + name + ")");
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+}
\ No newline at end of file
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.subscription;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.device.event.processor.FilteredOutboundEventProcessor;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceAlert;
+import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
+import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+import com.sitewhere.spi.device.event.IDeviceStateChange;
+import com.sitewhere.spi.device.event.processor.IOutboundEventProcessor;
+import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
+
+/**
+ * Implementation of {@link IOutboundEventProcessor} that pushes events to live
+ * subscribers registered with the tenant {@link EventSubscriptionManager}.
+ * Subscriptions are only accepted while the processor is running.
+ * 
+ * @author Derek
+ */
+public class EventSubscriptionProcessor extends FilteredOutboundEventProcessor {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Number of threads delivering events to subscribers */
+    private int deliveryThreads = EventSubscriptionManager.DEFAULT_DELIVERY_THREADS;
+
+    /** Maximum events sent to a subscriber at once */
+    private int batchSize = EventSubscriptionManager.DEFAULT_BATCH_SIZE;
+
+    /** Time in milliseconds a send may block before the subscriber is evicted */
+    private long sendTimeout = EventSubscriptionManager.DEFAULT_SEND_TIMEOUT_MS;
+
+    /** Subscription manager for tenant */
+    private volatile EventSubscriptionManager manager;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#start
+     * (com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	// Required for filters.
+	super.start(monitor);
+
+	if ((deliveryThreads <= 0) || (batchSize <= 0) || (sendTimeout <= 0)) {
+	    throw new SiteWhereException(
+		    "Event subscription delivery threads, batch size and send timeout must be positive.");
+	}
+	this.manager = EventSubscriptionManager.getInstance(getTenant());
+	manager.start(deliveryThreads, batchSize, sendTimeout);
+	LOGGER.info("Accepting event subscriptions with " + deliveryThreads + " delivery threads.");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#stop(
+     * com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (manager != null) {
+	    manager.stop();
+	    manager = null;
+	}
+	super.stop(monitor);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+     */
+    @Override
+    public Logger getLogger() {
+	return LOGGER;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#
+     * onMeasurementsNotFiltered(com.sitewhere.spi.device.event.
+     * IDeviceMeasurements)
+     */
+    @Override
+    public void onMeasurementsNotFiltered(IDeviceMeasurements measurements) throws SiteWhereException {
+	publish(measurements);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#
+     * onLocationNotFiltered(com.sitewhere.spi.device.event.IDeviceLocation)
+     */
+    @Override
+    public void onLocationNotFiltered(IDeviceLocation location) throws SiteWhereException {
+	publish(location);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#
+     * onAlertNotFiltered(com.sitewhere.spi.device.event.IDeviceAlert)
+     */
+    @Override
+    public void onAlertNotFiltered(IDeviceAlert alert) throws SiteWhereException {
+	publish(alert);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#
+     * onStateChangeNotFiltered(com.sitewhere.spi.device.event.
+     * IDeviceStateChange)
+     */
+    @Override
+    public void onStateChangeNotFiltered(IDeviceStateChange state) throws SiteWhereException {
+	publish(state);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#
+     * onCommandInvocationNotFiltered(com.sitewhere.spi.device.event.
+     * IDeviceCommandInvocation)
+     */
+    @Override
+    public void onCommandInvocationNotFiltered(IDeviceCommandInvocation invocation) throws SiteWhereException {
+	publish(invocation);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#
+     * onCommandResponseNotFiltered(com.sitewhere.spi.device.event.
+     * IDeviceCommandResponse)
+     */
+    @Override
+    public void onCommandResponseNotFiltered(IDeviceCommandResponse response) throws SiteWhereException {
+	publish(response);
+    }
+
+    /**
+     * Pass an event to the subscription manager if running.
+     * 
+     * @param event
+     */
+    protected void publish(IDeviceEvent event) {
+	EventSubscriptionManager current = manager;
+	if (current != null) {
+	    current.publish(event);
+	}
+    }
+
+    public int getDeliveryThreads() {
+	return deliveryThreads;
+    }
+
+    public void setDeliveryThreads(int deliveryThreads) {
+	this.deliveryThreads = deliveryThreads;
+    }
+
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+	this.batchSize = batchSize;
+    }
+
+    public long getSendTimeout() {
+	return sendTimeout;
+    }
+
+    public void setSendTimeout(long sendTimeout) {
+	this.sendTimeout = sendTimeout;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.group;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.SiteWhere;
+import com.sitewhere.rest.model.search.SearchCriteria;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.group.GroupElementType;
+import com.sitewhere.spi.device.group.IDeviceGroupElement;
+import com.sitewhere.spi.device.request.IDeviceGroupElementCreateRequest;
+import com.sitewhere.spi.tenant.ITenant;
+
+/**
+ * Holds the flattened device membership of device groups for a tenant. The
+ * direct elements of each group are listed when first needed and then
+ * maintained as elements are added and removed on this instance. Groups are
+ * listed again once the refresh interval has passed so that changes made
+ * through other instances are picked up. The hardware ids of all devices
+ * reachable from a group, including through nested groups, are materialized as
+ * a sorted array that is rebuilt in memory when the group or one of its
+ * descendants changes. Datastore queries run outside of the index lock.
+ * Indexes are released when the tenant engine stops.
+ * 
+ * @author Derek
+ */
+public class DeviceGroupIndex {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Default interval between listings of a group in milliseconds */
+    private static final long DEFAULT_REFRESH_INTERVAL = 60 * 1000;
+
+    /** Group indexes by tenant id */
+    private static ConcurrentMap<String, DeviceGroupIndex> INDEXES = new ConcurrentHashMap<String, DeviceGroupIndex>();
+
+    /** Tenant whose groups are indexed */
+    private ITenant tenant;
+
+    /** Interval between listings of a group in milliseconds */
+    private long refreshInterval;
+
+    /** Loaded groups by token */
+    private Map<String, GroupNode> groups = new HashMap<String, GroupNode>();
+
+    /** Tokens of loaded groups that directly contain a group */
+    private Map<String, Set<String>> parents = new HashMap<String, Set<String>>();
+
+    /** Count of changes applied to each group by triggers */
+    private Map<String, Integer> versions = new HashMap<String, Integer>();
+
+    /** Count of invalidations of flattened membership */
+    private long invalidations;
+
+    public DeviceGroupIndex(ITenant tenant) {
+	this(tenant, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    public DeviceGroupIndex(ITenant tenant, long refreshInterval) {
+	this.tenant = tenant;
+	this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Get the group index for a tenant.
+     * 
+     * @param tenant
+     * @return
+     */
+    public static DeviceGroupIndex getInstance(ITenant tenant) {
+	DeviceGroupIndex index = INDEXES.get(tenant.getId());
+	if (index == null) {
+	    index = new DeviceGroupIndex(tenant);
+	    DeviceGroupIndex existing = INDEXES.putIfAbsent(tenant.getId(), index);
+	    if (existing != null) {
+		index = existing;
+	    }
+	}
+	return index;
+    }
+
+    /**
+     * Release the group index for a tenant.
+     * 
+     * @param tenant
+     */
+    public static void release(ITenant tenant) {
+	INDEXES.remove(tenant.getId());
+    }
+
+    /**
+     * Get the sorted hardware ids of all devices in a group and its nested
+     * groups.
+     * 
+     * @param groupToken
+     * @return
+     * @throws SiteWhereException
+     */
+    public String[] getDeviceHardwareIds(String groupToken) throws SiteWhereException {
+	return getDeviceHardwareIds(groupToken, System.currentTimeMillis());
+    }
+
+    /**
+     * Get the sorted hardware ids of all devices in a group and its nested
+     * groups as of the given time. The flattened array is cached unless the
+     * index was invalidated while it was being built.
+     * 
+     * @param groupToken
+     * @param now
+     * @return
+     * @throws SiteWhereException
+     */
+    protected String[] getDeviceHardwareIds(String groupToken, long now) throws SiteWhereException {
+	GroupNode node = getNode(groupToken, now);
+	String[] flattened = node.flattened;
+	if ((flattened != null) && (now - node.flattenedAt < refreshInterval)) {
+	    return flattened;
+	}
+	long invalidated;
+	synchronized (this) {
+	    invalidated = invalidations;
+	}
+	Set<String> devices = new HashSet<String>();
+	long oldest = collectDevices(groupToken, devices, new HashSet<String>(), now);
+	String[] sorted = devices.toArray(new String[devices.size()]);
+	Arrays.sort(sorted);
+	synchronized (this) {
+	    GroupNode current = groups.get(groupToken);
+	    if ((current != null) && (invalidations == invalidated)) {
+		current.flattenedAt = oldest;
+		current.flattened = sorted;
+	    }
+	}
+	return sorted;
+    }
+
+    /**
+     * Verify that adding elements to a group will not create a cycle.
+     * 
+     * @param groupToken
+     * @param elements
+     * @throws SiteWhereException
+     */
+    public void assertNoCycles(String groupToken, List<IDeviceGroupElementCreateRequest> elements)
+	    throws SiteWhereException {
+	long now = System.currentTimeMillis();
+	for (IDeviceGroupElementCreateRequest element : elements) {
+	    if (element.getType() != GroupElementType.Group) {
+		continue;
+	    }
+	    if (groupToken.equals(element.getElementId())
+		    || getDescendants(element.getElementId(), now).contains(groupToken)) {
+		throw new SiteWhereException("Adding group '" + element.getElementId() + "' to group '" + groupToken
+			+ "' would create a cycle.");
+	    }
+	}
+    }
+
+    /**
+     * Called after elements are added to a group.
+     * 
+     * @param groupToken
+     * @param elements
+     */
+    public synchronized void onElementsAdded(String groupToken, List<IDeviceGroupElement> elements) {
+	markChanged(groupToken);
+	GroupNode node = groups.get(groupToken);
+	if (node == null) {
+	    return;
+	}
+	for (IDeviceGroupElement element : elements) {
+	    node.add(element);
+	    if (element.getType() == GroupElementType.Group) {
+		addParent(element.getElementId(), groupToken);
+	    }
+	}
+	invalidate(groupToken, new HashSet<String>());
+    }
+
+    /**
+     * Called after elements are removed from a group.
+     * 
+     * @param groupToken
+     * @param elements
+     */
+    public synchronized void onElementsRemoved(String groupToken, List<IDeviceGroupElement> elements) {
+	markChanged(groupToken);
+	GroupNode node = groups.get(groupToken);
+	if (node == null) {
+	    return;
+	}
+	invalidate(groupToken, new HashSet<String>());
+	for (IDeviceGroupElement element : elements) {
+	    node.remove(element);
+	    if ((element.getType() == GroupElementType.Group) && (!node.groups.containsKey(element.getElementId()))) {
+		Set<String> childParents = parents.get(element.getElementId());
+		if (childParents != null) {
+		    childParents.remove(groupToken);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Called after a group is deleted. Groups that contain it are rebuilt without
+     * its devices.
+     * 
+     * @param groupToken
+     */
+    public synchronized void onGroupDeleted(String groupToken) {
+	markChanged(groupToken);
+	invalidate(groupToken, new HashSet<String>());
+	GroupNode node = groups.remove(groupToken);
+	if (node != null) {
+	    removeChildLinks(groupToken, node);
+	}
+	Set<String> groupParents = parents.remove(groupToken);
+	if (groupParents != null) {
+	    for (String parent : groupParents) {
+		GroupNode parentNode = groups.get(parent);
+		if (parentNode != null) {
+		    parentNode.groups.remove(groupToken);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Discard all indexed groups.
+     */
+    public synchronized void clear() {
+	groups.clear();
+	parents.clear();
+	invalidations++;
+    }
+
+    /**
+     * Get the node for a group, listing its elements if not already loaded or
+     * if the listing is out of date. The listing runs without holding the
+     * index lock and is repeated if a trigger changes the group meanwhile. If
+     * a refresh fails, the current node is kept until the next interval.
+     * 
+     * @param groupToken
+     * @param now
+     * @return
+     * @throws SiteWhereException
+     */
+    private GroupNode getNode(String groupToken, long now) throws SiteWhereException {
+	while (true) {
+	    GroupNode node;
+	    int version;
+	    synchronized (this) {
+		node = groups.get(groupToken);
+		if ((node != null) && (now - node.loadedAt < refreshInterval)) {
+		    return node;
+		}
+		version = getVersion(groupToken);
+	    }
+	    List<IDeviceGroupElement> elements;
+	    try {
+		elements = listElements(groupToken);
+	    } catch (SiteWhereException e) {
+		if (node == null) {
+		    throw e;
+		}
+		LOGGER.error("Unable to refresh elements for device group. Keeping current elements.", e);
+		synchronized (this) {
+		    node.loadedAt = now;
+		}
+		return node;
+	    }
+	    synchronized (this) {
+		if (getVersion(groupToken) != version) {
+		    continue;
+		}
+		GroupNode current = groups.get(groupToken);
+		if ((current != null) && (current != node)) {
+		    return current;
+		}
+		GroupNode loaded = new GroupNode(now);
+		for (IDeviceGroupElement element : elements) {
+		    loaded.add(element);
+		}
+		if (current != null) {
+		    removeChildLinks(groupToken, current);
+		    invalidate(groupToken, new HashSet<String>());
+		}
+		for (String child : loaded.groups.keySet()) {
+		    addParent(child, groupToken);
+		}
+		groups.put(groupToken, loaded);
+		return loaded;
+	    }
+	}
+    }
+
+    /**
+     * List the direct elements of a group.
+     * 
+     * @param groupToken
+     * @return
+     * @throws SiteWhereException
+     */
+    protected List<IDeviceGroupElement> listElements(String groupToken) throws SiteWhereException {
+	return SiteWhere.getServer().getDeviceManagement(tenant)
+		.listDeviceGroupElements(groupToken, SearchCriteria.ALL).getResults();
+    }
+
+    /**
+     * Add hardware ids for all devices reachable from a group. Groups already
+     * visited are skipped so that cycles created outside of the triggers cannot
+     * cause infinite recursion.
+     * 
+     * @param groupToken
+     * @param devices
+     * @param visited
+     * @param now
+     * @return time of the oldest listing the devices were collected from
+     * @throws SiteWhereException
+     */
+    protected long collectDevices(String groupToken, Set<String> devices, Set<String> visited, long now)
+	    throws SiteWhereException {
+	if (!visited.add(groupToken)) {
+	    return Long.MAX_VALUE;
+	}
+	GroupNode node = getNode(groupToken, now);
+	List<String> children;
+	long oldest;
+	synchronized (this) {
+	    String[] flattened = node.flattened;
+	    if ((flattened != null) && (now - node.flattenedAt < refreshInterval)) {
+		devices.addAll(Arrays.asList(flattened));
+		return node.flattenedAt;
+	    }
+	    devices.addAll(node.devices.keySet());
+	    children = new ArrayList<String>(node.groups.keySet());
+	    oldest = node.loadedAt;
+	}
+	for (String child : children) {
+	    oldest = Math.min(oldest, collectDevices(child, devices, visited, now));
+	}
+	return oldest;
+    }
+
+    /**
+     * Get tokens for all groups nested in a group.
+     * 
+     * @param groupToken
+     * @param now
+     * @return
+     * @throws SiteWhereException
+     */
+    protected Set<String> getDescendants(String groupToken, long now) throws SiteWhereException {
+	Set<String> visited = new HashSet<String>();
+	List<String> pending = new ArrayList<String>();
+	pending.add(groupToken);
+	while (!pending.isEmpty()) {
+	    String current = pending.remove(pending.size() - 1);
+	    GroupNode node = getNode(current, now);
+	    List<String> children;
+	    synchronized (this) {
+		children = new ArrayList<String>(node.groups.keySet());
+	    }
+	    for (String child : children) {
+		if (visited.add(child)) {
+		    pending.add(child);
+		}
+	    }
+	}
+	return visited;
+    }
+
+    /**
+     * Discard the flattened membership of a group and every group containing
+     * it.
+     * 
+     * @param groupToken
+     * @param visited
+     */
+    protected void invalidate(String groupToken, Set<String> visited) {
+	if (!visited.add(groupToken)) {
+	    return;
+	}
+	invalidations++;
+	GroupNode node = groups.get(groupToken);
+	if (node != null) {
+	    node.flattened = null;
+	}
+	Set<String> groupParents = parents.get(groupToken);
+	if (groupParents != null) {
+	    for (String parent : groupParents) {
+		invalidate(parent, visited);
+	    }
+	}
+    }
+
+    /**
+     * Record a change applied by a trigger so that a listing in progress for
+     * the group is repeated.
+     * 
+     * @param groupToken
+     */
+    protected void markChanged(String groupToken) {
+	versions.put(groupToken, getVersion(groupToken) + 1);
+    }
+
+    /**
+     * Get count of changes applied to a group by triggers.
+     * 
+     * @param groupToken
+     * @return
+     */
+    protected int getVersion(String groupToken) {
+	Integer version = versions.get(groupToken);
+	return (version == null) ? 0 : version;
+    }
+
+    /**
+     * Remove the parent links from the nested groups of a node.
+     * 
+     * @param groupToken
+     * @param node
+     */
+    protected void removeChildLinks(String groupToken, GroupNode node) {
+	for (String child : node.groups.keySet()) {
+	    Set<String> childParents = parents.get(child);
+	    if (childParents != null) {
+		childParents.remove(groupToken);
+	    }
+	}
+    }
+
+    /**
+     * Record that a group directly contains another group.
+     * 
+     * @param child
+     * @param parent
+     */
+    protected void addParent(String child, String parent) {
+	Set<String> groupParents = parents.get(child);
+	if (groupParents == null) {
+	    groupParents = new HashSet<String>();
+	    parents.put(child, groupParents);
+	}
+	groupParents.add(parent);
+    }
+
+    /**
+     * Direct elements of a group along with its flattened membership.
+     * 
+     * @author Derek
+     */
+    private static class GroupNode {
+
+	/** Time the elements were listed */
+	long loadedAt;
+
+	/** Count of direct elements by device hardware id */
+	final Map<String, Integer> devices = new HashMap<String, Integer>();
+
+	/** Count of direct elements by nested group token */
+	final Map<String, Integer> groups = new HashMap<String, Integer>();
+
+	/** Sorted hardware ids of all devices reachable from the group */
+	volatile String[] flattened;
+
+	/** Time of the oldest listing the flattened ids were built from */
+	volatile long flattenedAt;
+
+	GroupNode(long loadedAt) {
+	    this.loadedAt = loadedAt;
+	}
+
+	/**
+	 * Add a direct element.
+	 * 
+	 * @param element
+	 */
+	void add(IDeviceGroupElement element) {
+	    Map<String, Integer> counts = (element.getType() == GroupElementType.Group) ? groups : devices;
+	    Integer count = counts.get(element.getElementId());
+	    counts.put(element.getElementId(), (count == null) ? 1 : count + 1);
+	}
+
+	/**
+	 * Remove a direct element.
+	 * 
+	 * @param element
+	 */
+	void remove(IDeviceGroupElement element) {
+	    Map<String, Integer> counts = (element.getType() == GroupElementType.Group) ? groups : devices;
+	    Integer count = counts.get(element.getElementId());
+	    if ((count == null) || (count <= 1)) {
+		counts.remove(element.getElementId());
+	    } else {
+		counts.put(element.getElementId(), count - 1);
+	    }
+	}
+    }
+}
\ No newline at end of file
@@ -8,17 +8,17 @@
 package com.sitewhere.device.group;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import com.sitewhere.SiteWhere;
 import com.sitewhere.rest.model.search.SearchCriteria;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.group.IDeviceGroup;
-import com.sitewhere.spi.device.group.IDeviceGroupElement;
 import com.sitewhere.spi.search.ISearchCriteria;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.search.device.IDeviceSearchCriteria;
@@ -44,32 +44,9 @@ public class DeviceGroupUtils {
 	Collection<IDevice> devices = getDevicesInGroup(groupToken, tenant);
 	List<IDevice> matches = new ArrayList<IDevice>();
 	for (IDevice device : devices) {
-
-	    // Handle filter by specification.
-	    if (criteria.getSpecificationToken() != null) {
-		if (!device.getSpecificationToken().equals(criteria.getSpecificationToken())) {
-		    continue;
-		}
-	    }
-
-	    // Handle filter by site.
-	    if (criteria.getSiteToken() != null) {
-		if (!device.getSiteToken().equals(criteria.getSiteToken())) {
-		    continue;
-		}
-	    }
-
-	    // Handle exclude assigned.
-	    if (criteria.isExcludeAssigned() && (device.getAssignmentToken() != null)) {
-		continue;
-	    }
-	    if ((criteria.getStartDate() != null) && (device.getCreatedDate().before(criteria.getStartDate()))) {
-		continue;
+	    if (matches(device, criteria)) {
+		matches.add(device);
 	    }
-	    if ((criteria.getEndDate() != null) && (device.getCreatedDate().after(criteria.getEndDate()))) {
-		continue;
-	    }
-	    matches.add(device);
 	}
 	return matches;
     }
@@ -83,26 +60,8 @@ public class DeviceGroupUtils {
      * @throws SiteWhereException
      */
     public static Collection<IDevice> getDevicesInGroup(String groupToken, ITenant tenant) throws SiteWhereException {
-	Map<String, IDevice> devices = new HashMap<String, IDevice>();
-	ISearchResults<IDeviceGroupElement> elements = SiteWhere.getServer().getDeviceManagement(tenant)
-		.listDeviceGroupElements(groupToken, SearchCriteria.ALL);
-	for (IDeviceGroupElement element : elements.getResults()) {
-	    switch (element.getType()) {
-	    case Device: {
-		devices.put(element.getElementId(), SiteWhere.getServer().getDeviceManagement(tenant)
-			.getDeviceByHardwareId(element.getElementId()));
-		break;
-	    }
-	    case Group: {
-		Collection<IDevice> subDevices = getDevicesInGroup(element.getElementId(), tenant);
-		for (IDevice subDevice : subDevices) {
-		    devices.put(subDevice.getHardwareId(), subDevice);
-		}
-		break;
-	    }
-	    }
-	}
-	return devices.values();
+	String[] hardwareIds = DeviceGroupIndex.getInstance(tenant).getDeviceHardwareIds(groupToken);
+	return SiteWhere.getServer().getDeviceManagement(tenant).getDevicesByHardwareIds(Arrays.asList(hardwareIds));
     }
 
     /**
@@ -116,16 +75,58 @@ public class DeviceGroupUtils {
      */
     public static Collection<IDevice> getDevicesInGroupsWithRole(String groupRole, IDeviceSearchCriteria criteria,
 	    ITenant tenant) throws SiteWhereException {
-	Map<String, IDevice> devices = new HashMap<String, IDevice>();
 	ISearchCriteria groupCriteria = new SearchCriteria(1, 0);
 	ISearchResults<IDeviceGroup> groups = SiteWhere.getServer().getDeviceManagement(tenant)
 		.listDeviceGroupsWithRole(groupRole, false, groupCriteria);
+	DeviceGroupIndex index = DeviceGroupIndex.getInstance(tenant);
+	Set<String> hardwareIds = new TreeSet<String>();
 	for (IDeviceGroup group : groups.getResults()) {
-	    List<IDevice> groupDevices = getDevicesInGroup(group.getToken(), criteria, tenant);
-	    for (IDevice groupDevice : groupDevices) {
-		devices.put(groupDevice.getHardwareId(), groupDevice);
+	    hardwareIds.addAll(Arrays.asList(index.getDeviceHardwareIds(group.getToken())));
+	}
+	List<IDevice> devices = SiteWhere.getServer().getDeviceManagement(tenant)
+		.getDevicesByHardwareIds(new ArrayList<String>(hardwareIds));
+	List<IDevice> matches = new ArrayList<IDevice>();
+	for (IDevice device : devices) {
+	    if (matches(device, criteria)) {
+		matches.add(device);
+	    }
+	}
+	return matches;
+    }
+
+    /**
+     * Indicates whether a device matches the given criteria.
+     * 
+     * @param device
+     * @param criteria
+     * @return
+     */
+    protected static boolean matches(IDevice device, IDeviceSearchCriteria criteria) {
+
+	// Handle filter by specification.
+	if (criteria.getSpecificationToken() != null) {
+	    if (!device.getSpecificationToken().equals(criteria.getSpecificationToken())) {
+		return false;
+	    }
+	}
+
+	// Handle filter by site.
+	if (criteria.getSiteToken() != null) {
+	    if (!device.getSiteToken().equals(criteria.getSiteToken())) {
+		return false;
 	    }
 	}
-	return devices.values();
+
+	// Handle exclude assigned.
+	if (criteria.isExcludeAssigned() && (device.getAssignmentToken() != null)) {
+	    return false;
+	}
+	if ((criteria.getStartDate() != null) && (device.getCreatedDate().before(criteria.getStartDate()))) {
+	    return false;
+	}
+	if ((criteria.getEndDate() != null) && (device.getCreatedDate().after(criteria.getEndDate()))) {
+	    return false;
+	}
+	return true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.marshaling;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.asset.IAsset;
+import com.sitewhere.spi.asset.IAssetModuleManager;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.ISite;
+
+/**
+ * Resolves entities referenced by objects being marshaled. Keys referenced by a
+ * page of results can be prefetched with a single multi-get per entity type so
+ * that converting each row does not issue its own lookups. Keys that were not
+ * prefetched are loaded individually on first use. Every result, including
+ * misses, is remembered for the life of the resolver, so a resolver should not
+ * outlive the request it was created for.
+ * 
+ * @author Derek
+ */
+public class BatchReferenceResolver {
+
+    /** Device management implementation */
+    private IDeviceManagement deviceManagement;
+
+    /** Asset module manager */
+    private IAssetModuleManager assetModuleManager;
+
+    /** Resolved sites by token */
+    private Map<String, ISite> sites = new HashMap<String, ISite>();
+
+    /** Resolved specifications by token */
+    private Map<String, IDeviceSpecification> specifications = new HashMap<String, IDeviceSpecification>();
+
+    /** Resolved devices by hardware id */
+    private Map<String, IDevice> devices = new HashMap<String, IDevice>();
+
+    /** Resolved assignments by token */
+    private Map<String, IDeviceAssignment> assignments = new HashMap<String, IDeviceAssignment>();
+
+    /** Resolved assets by asset module id and asset id */
+    private Map<String, IAsset> assets = new HashMap<String, IAsset>();
+
+    public BatchReferenceResolver(IDeviceManagement deviceManagement, IAssetModuleManager assetModuleManager) {
+	this.deviceManagement = deviceManagement;
+	this.assetModuleManager = assetModuleManager;
+    }
+
+    /**
+     * Load sites for all tokens not already resolved.
+     * 
+     * @param tokens
+     * @throws SiteWhereException
+     */
+    public void prefetchSites(Collection<String> tokens) throws SiteWhereException {
+	List<String> missing = getUnresolved(tokens, sites);
+	if (missing.size() > 0) {
+	    for (ISite site : getDeviceManagement().getSitesByTokens(missing)) {
+		sites.put(site.getToken(), site);
+	    }
+	    markMissing(missing, sites);
+	}
+    }
+
+    /**
+     * Load device specifications for all tokens not already resolved.
+     * 
+     * @param tokens
+     * @throws SiteWhereException
+     */
+    public void prefetchDeviceSpecifications(Collection<String> tokens) throws SiteWhereException {
+	List<String> missing = getUnresolved(tokens, specifications);
+	if (missing.size() > 0) {
+	    for (IDeviceSpecification specification : getDeviceManagement().getDeviceSpecificationsByTokens(missing)) {
+		specifications.put(specification.getToken(), specification);
+	    }
+	    markMissing(missing, specifications);
+	}
+    }
+
+    /**
+     * Load devices for all hardware ids not already resolved.
+     * 
+     * @param hardwareIds
+     * @throws SiteWhereException
+     */
+    public void prefetchDevices(Collection<String> hardwareIds) throws SiteWhereException {
+	List<String> missing = getUnresolved(hardwareIds, devices);
+	if (missing.size() > 0) {
+	    for (IDevice device : getDeviceManagement().getDevicesByHardwareIds(missing)) {
+		devices.put(device.getHardwareId(), device);
+	    }
+	    markMissing(missing, devices);
+	}
+    }
+
+    /**
+     * Load device assignments for all tokens not already resolved.
+     * 
+     * @param tokens
+     * @throws SiteWhereException
+     */
+    public void prefetchDeviceAssignments(Collection<String> tokens) throws SiteWhereException {
+	List<String> missing = getUnresolved(tokens, assignments);
+	if (missing.size() > 0) {
+	    for (IDeviceAssignment assignment : getDeviceManagement().getDeviceAssignmentsByTokens(missing)) {
+		assignments.put(assignment.getToken(), assignment);
+	    }
+	    markMissing(missing, assignments);
+	}
+    }
+
+    /**
+     * Get a site by token.
+     * 
+     * @param token
+     * @return
+     * @throws SiteWhereException
+     */
+    public ISite getSite(String token) throws SiteWhereException {
+	if (!sites.containsKey(token)) {
+	    sites.put(token, getDeviceManagement().getSiteByToken(token));
+	}
+	return sites.get(token);
+    }
+
+    /**
+     * Get a device specification by token.
+     * 
+     * @param token
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceSpecification getDeviceSpecification(String token) throws SiteWhereException {
+	if (!specifications.containsKey(token)) {
+	    specifications.put(token, getDeviceManagement().getDeviceSpecificationByToken(token));
+	}
+	return specifications.get(token);
+    }
+
+    /**
+     * Get a device by hardware id.
+     * 
+     * @param hardwareId
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDevice getDevice(String hardwareId) throws SiteWhereException {
+	if (!devices.containsKey(hardwareId)) {
+	    devices.put(hardwareId, getDeviceManagement().getDeviceByHardwareId(hardwareId));
+	}
+	return devices.get(hardwareId);
+    }
+
+    /**
+     * Get a device assignment by token.
+     * 
+     * @param token
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceAssignment getDeviceAssignment(String token) throws SiteWhereException {
+	if (!assignments.containsKey(token)) {
+	    assignments.put(token, getDeviceManagement().getDeviceAssignmentByToken(token));
+	}
+	return assignments.get(token);
+    }
+
+    /**
+     * Get an asset from an asset module. Asset modules do not support
+     * multi-gets, so assets are only remembered after the first lookup.
+     * 
+     * @param assetModuleId
+     * @param assetId
+     * @return
+     * @throws SiteWhereException
+     */
+    public IAsset getAsset(String assetModuleId, String assetId) throws SiteWhereException {
+	String key = assetModuleId + ":" + assetId;
+	if (!assets.containsKey(key)) {
+	    assets.put(key, getAssetModuleManager().getAssetById(assetModuleId, assetId));
+	}
+	return assets.get(key);
+    }
+
+    /**
+     * Get distinct non-null keys that have not been resolved.
+     * 
+     * @param keys
+     * @param resolved
+     * @return
+     */
+    protected static List<String> getUnresolved(Collection<String> keys, Map<String, ?> resolved) {
+	Set<String> unresolved = new LinkedHashSet<String>();
+	for (String key : keys) {
+	    if ((key != null) && (!resolved.containsKey(key))) {
+		unresolved.add(key);
+	    }
+	}
+	return new ArrayList<String>(unresolved);
+    }
+
+    /**
+     * Record keys that were requested but not found so they are not looked up
+     * again individually.
+     * 
+     * @param keys
+     * @param resolved
+     */
+    protected static <T> void markMissing(List<String> keys, Map<String, T> resolved) {
+	for (String key : keys) {
+	    if (!resolved.containsKey(key)) {
+		resolved.put(key, null);
+	    }
+	}
+    }
+
+    public IDeviceManagement getDeviceManagement() {
+	return deviceManagement;
+    }
+
+    public IAssetModuleManager getAssetModuleManager() {
+	return assetModuleManager;
+    }
+}
\ No newline at end of file
@@ -7,6 +7,10 @@
  */
 package com.sitewhere.device.marshaling;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -67,6 +71,75 @@ public class DeviceAssignmentMarshalHelper {
      * @throws SiteWhereException
      */
     public DeviceAssignment convert(IDeviceAssignment source, IAssetModuleManager manager) throws SiteWhereException {
+	return convert(source, new BatchReferenceResolver(getDeviceManagement(), manager));
+    }
+
+    /**
+     * Convert a page of SPI objects into model objects for marshaling.
+     * Referenced entities are prefetched so that each row does not require its
+     * own lookups.
+     * 
+     * @param sources
+     * @param manager
+     * @return
+     * @throws SiteWhereException
+     */
+    public List<DeviceAssignment> convert(Collection<? extends IDeviceAssignment> sources, IAssetModuleManager manager)
+	    throws SiteWhereException {
+	BatchReferenceResolver resolver = new BatchReferenceResolver(getDeviceManagement(), manager);
+	prefetch(sources, resolver);
+	List<DeviceAssignment> results = new ArrayList<DeviceAssignment>();
+	for (IDeviceAssignment source : sources) {
+	    results.add(convert(source, resolver));
+	}
+	return results;
+    }
+
+    /**
+     * Prefetch entities referenced by a list of assignments based on the
+     * current settings.
+     * 
+     * @param sources
+     * @param resolver
+     * @throws SiteWhereException
+     */
+    public void prefetch(Collection<? extends IDeviceAssignment> sources, BatchReferenceResolver resolver)
+	    throws SiteWhereException {
+	if (isIncludeSite()) {
+	    List<String> tokens = new ArrayList<String>();
+	    for (IDeviceAssignment source : sources) {
+		tokens.add(source.getSiteToken());
+	    }
+	    resolver.prefetchSites(tokens);
+	}
+	if (isIncludeDevice()) {
+	    List<String> hardwareIds = new ArrayList<String>();
+	    for (IDeviceAssignment source : sources) {
+		hardwareIds.add(source.getDeviceHardwareId());
+	    }
+	    resolver.prefetchDevices(hardwareIds);
+	    List<IDevice> devices = new ArrayList<IDevice>();
+	    for (String hardwareId : hardwareIds) {
+		IDevice device = resolver.getDevice(hardwareId);
+		if (device != null) {
+		    devices.add(device);
+		}
+	    }
+	    getDeviceHelper().prefetch(devices, resolver);
+	}
+    }
+
+    /**
+     * Convert the SPI object into a model object, resolving references with the
+     * given resolver.
+     * 
+     * @param source
+     * @param resolver
+     * @return
+     * @throws SiteWhereException
+     */
+    public DeviceAssignment convert(IDeviceAssignment source, BatchReferenceResolver resolver)
+	    throws SiteWhereException {
 	DeviceAssignment result = new DeviceAssignment();
 	result.setToken(source.getToken());
 	result.setActiveDate(source.getActiveDate());
@@ -80,7 +153,7 @@ public class DeviceAssignmentMarshalHelper {
 	    result.setState(DeviceAssignmentState.copy(source.getState()));
 	}
 	if (source.getAssignmentType() != DeviceAssignmentType.Unassociated) {
-	    IAsset asset = manager.getAssetById(source.getAssetModuleId(), source.getAssetId());
+	    IAsset asset = resolver.getAsset(source.getAssetModuleId(), source.getAssetId());
 	    if (asset != null) {
 		result.setAssetName(asset.getName());
 		result.setAssetImageUrl(asset.getImageUrl());
@@ -97,14 +170,14 @@ public class DeviceAssignmentMarshalHelper {
 	}
 	result.setSiteToken(source.getSiteToken());
 	if (isIncludeSite()) {
-	    ISite site = getDeviceManagement().getSiteForAssignment(source);
+	    ISite site = resolver.getSite(source.getSiteToken());
 	    result.setSite(Site.copy(site));
 	}
 	result.setDeviceHardwareId(source.getDeviceHardwareId());
 	if (isIncludeDevice()) {
-	    IDevice device = getDeviceManagement().getDeviceForAssignment(source);
+	    IDevice device = resolver.getDevice(source.getDeviceHardwareId());
 	    if (device != null) {
-		result.setDevice(getDeviceHelper().convert(device, manager));
+		result.setDevice(getDeviceHelper().convert(device, resolver));
 	    } else {
 		LOGGER.error("Assignment references invalid hardware id.");
 	    }
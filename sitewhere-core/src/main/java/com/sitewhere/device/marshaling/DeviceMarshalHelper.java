@@ -7,6 +7,10 @@
  */
 package com.sitewhere.device.marshaling;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -79,6 +83,82 @@ public class DeviceMarshalHelper {
      * @throws SiteWhereException
      */
     public Device convert(IDevice source, IAssetModuleManager manager) throws SiteWhereException {
+	return convert(source, new BatchReferenceResolver(getDeviceManagement(tenant), manager));
+    }
+
+    /**
+     * Convert a page of SPI objects into model objects for marshaling.
+     * Referenced entities are prefetched so that each row does not require its
+     * own lookups.
+     * 
+     * @param sources
+     * @param manager
+     * @return
+     * @throws SiteWhereException
+     */
+    public List<Device> convert(Collection<? extends IDevice> sources, IAssetModuleManager manager)
+	    throws SiteWhereException {
+	BatchReferenceResolver resolver = new BatchReferenceResolver(getDeviceManagement(tenant), manager);
+	prefetch(sources, resolver);
+	List<Device> results = new ArrayList<Device>();
+	for (IDevice source : sources) {
+	    results.add(convert(source, resolver));
+	}
+	return results;
+    }
+
+    /**
+     * Prefetch entities referenced by a list of devices based on the current
+     * settings.
+     * 
+     * @param sources
+     * @param resolver
+     * @throws SiteWhereException
+     */
+    public void prefetch(Collection<? extends IDevice> sources, BatchReferenceResolver resolver)
+	    throws SiteWhereException {
+	List<String> specifications = new ArrayList<String>();
+	List<String> assignments = new ArrayList<String>();
+	List<String> sites = new ArrayList<String>();
+	List<String> nested = new ArrayList<String>();
+	for (IDevice source : sources) {
+	    specifications.add(source.getSpecificationToken());
+	    assignments.add(source.getAssignmentToken());
+	    sites.add(source.getSiteToken());
+	    for (IDeviceElementMapping mapping : source.getDeviceElementMappings()) {
+		nested.add(mapping.getHardwareId());
+	    }
+	}
+	resolver.prefetchDeviceSpecifications(specifications);
+	if (isIncludeAssignment()) {
+	    resolver.prefetchDeviceAssignments(assignments);
+	}
+	if (isIncludeSite()) {
+	    resolver.prefetchSites(sites);
+	}
+	if (isIncludeNested() && (nested.size() > 0)) {
+	    resolver.prefetchDevices(nested);
+	    List<IDevice> devices = new ArrayList<IDevice>();
+	    for (String hardwareId : nested) {
+		IDevice device = resolver.getDevice(hardwareId);
+		if (device != null) {
+		    devices.add(device);
+		}
+	    }
+	    getNestedHelper().prefetch(devices, resolver);
+	}
+    }
+
+    /**
+     * Convert an IDevice SPI object into a model object, resolving references
+     * with the given resolver.
+     * 
+     * @param source
+     * @param resolver
+     * @return
+     * @throws SiteWhereException
+     */
+    public Device convert(IDevice source, BatchReferenceResolver resolver) throws SiteWhereException {
 	Device result = new Device();
 	result.setHardwareId(source.getHardwareId());
 	result.setSiteToken(source.getSiteToken());
@@ -90,24 +170,23 @@ public class DeviceMarshalHelper {
 	for (IDeviceElementMapping mapping : source.getDeviceElementMappings()) {
 	    DeviceElementMapping cnvMapping = DeviceElementMapping.copy(mapping);
 	    if (isIncludeNested()) {
-		IDevice device = getDeviceManagement(tenant).getDeviceByHardwareId(mapping.getHardwareId());
-		cnvMapping.setDevice(getNestedHelper().convert(device, manager));
+		IDevice device = resolver.getDevice(mapping.getHardwareId());
+		cnvMapping.setDevice(getNestedHelper().convert(device, resolver));
 	    }
 	    result.getDeviceElementMappings().add(cnvMapping);
 	}
 
 	// Look up specification information.
 	if (source.getSpecificationToken() != null) {
-	    IDeviceSpecification spec = getDeviceManagement(tenant)
-		    .getDeviceSpecificationByToken(source.getSpecificationToken());
+	    IDeviceSpecification spec = resolver.getDeviceSpecification(source.getSpecificationToken());
 	    if (spec == null) {
 		throw new SiteWhereException("Device references non-existent specification.");
 	    }
 	    if (includeSpecification) {
-		result.setSpecification(getSpecificationHelper().convert(spec, manager));
+		result.setSpecification(getSpecificationHelper().convert(spec, resolver.getAssetModuleManager()));
 	    } else {
 		result.setSpecificationToken(source.getSpecificationToken());
-		HardwareAsset asset = (HardwareAsset) manager.getAssetById(spec.getAssetModuleId(), spec.getAssetId());
+		HardwareAsset asset = (HardwareAsset) resolver.getAsset(spec.getAssetModuleId(), spec.getAssetId());
 		if (asset != null) {
 		    result.setAssetId(asset.getId());
 		    result.setAssetName(asset.getName());
@@ -120,11 +199,11 @@ public class DeviceMarshalHelper {
 	if (source.getAssignmentToken() != null) {
 	    if (includeAssignment) {
 		try {
-		    IDeviceAssignment assignment = getDeviceManagement(tenant).getCurrentDeviceAssignment(source);
+		    IDeviceAssignment assignment = resolver.getDeviceAssignment(source.getAssignmentToken());
 		    if (assignment == null) {
 			throw new SiteWhereException("Device contains an invalid assignment reference.");
 		    }
-		    result.setAssignment(getAssignmentHelper().convert(assignment, manager));
+		    result.setAssignment(getAssignmentHelper().convert(assignment, resolver));
 		} catch (SiteWhereException e) {
 		    LOGGER.warn("Device has token for non-existent assignment.");
 		}
@@ -134,7 +213,7 @@ public class DeviceMarshalHelper {
 	}
 	if (source.getSiteToken() != null) {
 	    if (includeSite) {
-		ISite site = getDeviceManagement(tenant).getSiteByToken(source.getSiteToken());
+		ISite site = resolver.getSite(source.getSiteToken());
 		if (site == null) {
 		    throw new SiteWhereException("Device contains an invalid site reference.");
 		}
@@ -26,7 +26,9 @@ import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
 import com.sitewhere.rest.model.search.SearchCriteria;
 import com.sitewhere.server.lifecycle.TenantLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.communication.IDecodedDeviceRequest;
@@ -42,7 +44,10 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 /**
- * Monitors assignment state to detect device presence information.
+ * Monitors assignment state to detect device presence information. Last
+ * interaction dates are tracked in a {@link PresenceDeadlineIndex} fed by the
+ * assignment state manager so that missing devices are detected shortly after
+ * their deadline passes without polling the datastore.
  * 
  * @author Derek
  */
@@ -54,6 +59,15 @@ public class DevicePresenceManager extends TenantLifecycleComponent implements I
     /** Default presence check interval (10 min) */
     private static final String DEFAULT_PRESENCE_CHECK_INTERVAL = "10m";
 
+    /** Maximum time in milliseconds to wait between deadline checks */
+    private static final long MAX_DEADLINE_WAIT = 1000;
+
+    /** Initial time in milliseconds to wait before retrying interaction load */
+    private static final long INITIAL_LOAD_RETRY_WAIT = 5 * 1000;
+
+    /** Maximum time in milliseconds to wait before retrying interaction load */
+    private static final long MAX_LOAD_RETRY_WAIT = 5 * 60 * 1000;
+
     /** Default presence missing interval (1 hour) */
     private static final String DEFAULT_PRESENCE_MISSING_INTERVAL = "8h";
 
@@ -63,7 +77,10 @@ public class DevicePresenceManager extends TenantLifecycleComponent implements I
 	    .appendSeparator(" ").appendMinutes().appendSuffix("m").appendSeparator(" ").appendSeconds()
 	    .appendSuffix("s").toFormatter();
 
-    /** Presence check interval */
+    /**
+     * Presence check interval. No longer used since expiry is driven by the
+     * deadline index, but kept so existing configurations still load.
+     */
     private String presenceCheckInterval = DEFAULT_PRESENCE_CHECK_INTERVAL;
 
     /** Presence missing interval */
@@ -83,6 +100,9 @@ public class DevicePresenceManager extends TenantLifecycleComponent implements I
     /** Inbound processing strategy for tenant */
     private IInboundProcessingStrategy inbound;
 
+    /** Index of last interaction dates for tenant assignments */
+    private PresenceDeadlineIndex index;
+
     public DevicePresenceManager() {
 	super(LifecycleComponentType.DevicePresenceManager);
     }
@@ -97,6 +117,8 @@ public class DevicePresenceManager extends TenantLifecycleComponent implements I
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	this.devices = SiteWhere.getServer().getDeviceManagement(getTenant());
 	this.inbound = SiteWhere.getServer().getEventProcessing(getTenant()).getInboundProcessingStrategy();
+	this.index = PresenceDeadlineIndex.getInstance(getTenant());
+	index.setEnabled(true);
 
 	this.executor = Executors.newSingleThreadExecutor();
 	executor.execute(new PresenceChecker());
@@ -114,6 +136,10 @@ public class DevicePresenceManager extends TenantLifecycleComponent implements I
 	if (executor != null) {
 	    executor.shutdownNow();
 	}
+	if (index != null) {
+	    index.setEnabled(false);
+	    index.clear();
+	}
     }
 
     /*
@@ -127,7 +153,23 @@ public class DevicePresenceManager extends TenantLifecycleComponent implements I
     }
 
     /**
-     * Thread that checks for device presence.
+     * Parse an interval expressed as an ISO8601 period or in the short format
+     * used for logging.
+     * 
+     * @param value
+     * @return
+     */
+    protected static Period parseInterval(String value) {
+	try {
+	    return Period.parse(value, ISOPeriodFormat.standard());
+	} catch (IllegalArgumentException e) {
+	    return PERIOD_FORMATTER.parsePeriod(value);
+	}
+    }
+
+    /**
+     * Thread that waits for the earliest presence deadline in the index and
+     * sends presence events for assignments that have expired.
      * 
      * @author Derek
      */
@@ -135,66 +177,113 @@ public class DevicePresenceManager extends TenantLifecycleComponent implements I
 
 	@Override
 	public void run() {
+	    Period missingInterval = parseInterval(getPresenceMissingInterval());
+	    long missingIntervalMs = missingInterval.toStandardSeconds().getSeconds() * 1000L;
 
-	    Period missingInterval;
-	    try {
-		missingInterval = Period.parse(getPresenceMissingInterval(), ISOPeriodFormat.standard());
-	    } catch (IllegalArgumentException e) {
-		missingInterval = PERIOD_FORMATTER.parsePeriod(getPresenceMissingInterval());
-	    }
-	    int missingIntervalSecs = missingInterval.toStandardSeconds().getSeconds();
-
-	    Period checkInterval;
-	    try {
-		checkInterval = Period.parse(getPresenceCheckInterval(), ISOPeriodFormat.standard());
-	    } catch (IllegalArgumentException e) {
-		checkInterval = PERIOD_FORMATTER.parsePeriod(getPresenceCheckInterval());
-	    }
-	    int checkIntervalSecs = checkInterval.toStandardSeconds().getSeconds();
-
-	    LOGGER.info("Presence manager checking every " + PERIOD_FORMATTER.print(checkInterval) + " ("
-		    + checkIntervalSecs + " seconds) " + "for devices with last interaction date of more than "
-		    + PERIOD_FORMATTER.print(missingInterval) + " (" + missingIntervalSecs + " seconds) " + ".");
+	    LOGGER.info("Presence manager tracking devices with last interaction date of more than "
+		    + PERIOD_FORMATTER.print(missingInterval) + " (" + (missingIntervalMs / 1000) + " seconds) " + ".");
 
+	    boolean loaded = false;
+	    long loadRetryWait = INITIAL_LOAD_RETRY_WAIT;
+	    long nextLoad = 0;
 	    while (true) {
+		// Retry until existing interaction dates have been loaded.
+		if ((!loaded) && (System.currentTimeMillis() >= nextLoad)) {
+		    try {
+			loadInteractions();
+			loaded = true;
+		    } catch (Throwable e) {
+			LOGGER.error("Unable to load assignment interaction dates for presence index. Retrying in "
+				+ (loadRetryWait / 1000) + " seconds.", e);
+			nextLoad = System.currentTimeMillis() + loadRetryWait;
+			loadRetryWait = Math.min(loadRetryWait * 2, MAX_LOAD_RETRY_WAIT);
+		    }
+		}
 
-		try {
-		    // Loop through all sites and detect presence changes.
-		    List<ISite> sites = devices.listSites(SearchCriteria.ALL).getResults();
-		    for (ISite site : sites) {
-			// Calculate time window for presence calculation.
-			Date endDate = new Date(System.currentTimeMillis() - (missingIntervalSecs * 1000));
-			DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(1, 0, null, endDate);
-			ISearchResults<IDeviceAssignment> missing = devices
-				.getDeviceAssignmentsWithLastInteraction(site.getToken(), criteria);
-			if (missing.getNumResults() > 0) {
-			    LOGGER.debug("Presence manager for '" + site.getName() + "' creating "
-				    + missing.getNumResults() + " events for non-present devices.");
-			}
-			for (IDeviceAssignment assignment : missing.getResults()) {
-			    DeviceStateChangeCreateRequest create = new DeviceStateChangeCreateRequest(
-				    StateChangeCategory.Presence, StateChangeType.Presence_Updated,
-				    PresenceState.PRESENT.name(), PresenceState.NOT_PRESENT.name());
-			    create.setUpdateState(true);
-
-			    // Only send an event if the strategy permits it.
-			    if (getPresenceNotificationStrategy().shouldGenerateEvent(assignment, create)) {
-				IDecodedDeviceRequest<IDeviceStateChangeCreateRequest> decoded = new DecodedDeviceRequest<IDeviceStateChangeCreateRequest>(
-					assignment.getDeviceHardwareId(), null, create);
-				inbound.processDeviceStateChange(decoded);
-			    }
-			}
+		long cutoff = System.currentTimeMillis() - missingIntervalMs;
+		List<String> expired = index.pollExpired(cutoff);
+		if (expired.size() > 0) {
+		    LOGGER.debug("Presence manager checking " + expired.size() + " expired assignments.");
+		}
+		for (String token : expired) {
+		    try {
+			checkPresence(token, cutoff);
+		    } catch (SiteWhereException e) {
+			LOGGER.error("Error processing presence for assignment '" + token + "'.", e);
 		    }
-		} catch (SiteWhereException e) {
-		    LOGGER.error("Error processing presence query.", e);
 		}
 
+		// Sleep until the next deadline, waking periodically for new entries.
+		long wait = MAX_DEADLINE_WAIT;
+		long earliest = index.getEarliest();
+		if (earliest >= 0) {
+		    wait = Math.max(1, Math.min(wait, earliest + missingIntervalMs - System.currentTimeMillis()));
+		}
 		try {
-		    Thread.sleep(checkIntervalSecs * 1000);
+		    Thread.sleep(wait);
 		} catch (InterruptedException e) {
 		    LOGGER.info("Presence check thread shut down.");
+		    return;
+		}
+	    }
+	}
+
+	/**
+	 * Load last interaction dates for all present assignments into the index.
+	 * Only done at startup (retried until it succeeds), after which the index
+	 * is kept current by the assignment state manager.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	protected void loadInteractions() throws SiteWhereException {
+	    DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(1, 0, null, new Date());
+	    List<ISite> sites = devices.listSites(SearchCriteria.ALL).getResults();
+	    for (ISite site : sites) {
+		ISearchResults<IDeviceAssignment> matches = devices
+			.getDeviceAssignmentsWithLastInteraction(site.getToken(), criteria);
+		for (IDeviceAssignment assignment : matches.getResults()) {
+		    IDeviceAssignmentState state = assignment.getState();
+		    if ((state != null) && (state.getLastInteractionDate() != null)
+			    && (state.getPresenceMissingDate() == null)) {
+			index.touch(assignment.getToken(), state.getLastInteractionDate().getTime());
+		    }
 		}
 	    }
+	    LOGGER.info("Presence manager tracking " + index.size() + " assignments.");
+	}
+
+	/**
+	 * Verify an expired assignment against its stored state and send a presence
+	 * event if it is still missing.
+	 * 
+	 * @param token
+	 * @param cutoff
+	 * @throws SiteWhereException
+	 */
+	protected void checkPresence(String token, long cutoff) throws SiteWhereException {
+	    IDeviceAssignment assignment = devices.getDeviceAssignmentByToken(token);
+	    if ((assignment == null) || (assignment.getStatus() == DeviceAssignmentStatus.Released)) {
+		return;
+	    }
+
+	    // Interaction may have been recorded by another instance.
+	    IDeviceAssignmentState state = assignment.getState();
+	    if ((state != null) && (state.getLastInteractionDate() != null)
+		    && (state.getLastInteractionDate().getTime() > cutoff)) {
+		index.touch(token, state.getLastInteractionDate().getTime());
+		return;
+	    }
+
+	    DeviceStateChangeCreateRequest create = new DeviceStateChangeCreateRequest(StateChangeCategory.Presence,
+		    StateChangeType.Presence_Updated, PresenceState.PRESENT.name(), PresenceState.NOT_PRESENT.name());
+	    create.setUpdateState(true);
+
+	    // Only send an event if the strategy permits it.
+	    if (getPresenceNotificationStrategy().shouldGenerateEvent(assignment, create)) {
+		IDecodedDeviceRequest<IDeviceStateChangeCreateRequest> decoded = new DecodedDeviceRequest<IDeviceStateChangeCreateRequest>(
+			assignment.getDeviceHardwareId(), null, create);
+		inbound.processDeviceStateChange(decoded);
+	    }
 	}
     }
 
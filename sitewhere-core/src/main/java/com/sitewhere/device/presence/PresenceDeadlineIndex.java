@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.presence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.sitewhere.spi.tenant.ITenant;
+
+/**
+ * Tracks the last interaction time for device assignments in a tenant so that
+ * assignments whose devices have gone quiet can be found without querying the
+ * datastore. Each tracked assignment has at most one entry in a heap ordered by
+ * interaction time. Interactions only move an assignment forward in time, so a
+ * touch updates the tracked time in place and the heap entry is pushed back to
+ * the new time when it reaches the head. Both operations are O(log n).
+ * 
+ * @author Derek
+ */
+public class PresenceDeadlineIndex {
+
+    /** Deadline indexes by tenant id */
+    private static ConcurrentMap<String, PresenceDeadlineIndex> INDEXES = new ConcurrentHashMap<String, PresenceDeadlineIndex>();
+
+    /** Tracked assignments by token */
+    private Map<String, Tracked> tracked = new HashMap<String, Tracked>();
+
+    /** Heap of tracked assignments ordered by queued interaction time */
+    private PriorityQueue<Deadline> heap = new PriorityQueue<Deadline>();
+
+    /** Indicates whether interactions are being recorded */
+    private volatile boolean enabled = false;
+
+    /**
+     * Get the deadline index for a tenant.
+     * 
+     * @param tenant
+     * @return
+     */
+    public static PresenceDeadlineIndex getInstance(ITenant tenant) {
+	PresenceDeadlineIndex index = INDEXES.get(tenant.getId());
+	if (index == null) {
+	    index = new PresenceDeadlineIndex();
+	    PresenceDeadlineIndex existing = INDEXES.putIfAbsent(tenant.getId(), index);
+	    if (existing != null) {
+		index = existing;
+	    }
+	}
+	return index;
+    }
+
+    /**
+     * Record an interaction for an assignment. Ignored unless the index has been
+     * enabled by a presence manager.
+     * 
+     * @param token
+     * @param time
+     */
+    public void touch(String token, long time) {
+	if (!enabled) {
+	    return;
+	}
+	synchronized (this) {
+	    Tracked entry = tracked.get(token);
+	    if (entry == null) {
+		entry = new Tracked();
+		entry.lastInteraction = time;
+		entry.queued = new Deadline(token, time);
+		tracked.put(token, entry);
+		heap.add(entry.queued);
+	    } else if (time > entry.lastInteraction) {
+		entry.lastInteraction = time;
+	    }
+	}
+    }
+
+    /**
+     * Stop tracking an assignment.
+     * 
+     * @param token
+     */
+    public synchronized void remove(String token) {
+	tracked.remove(token);
+    }
+
+    /**
+     * Remove and return tokens for all assignments whose last interaction is at
+     * or before the cutoff. Returned assignments are no longer tracked until
+     * they are touched again.
+     * 
+     * @param cutoff
+     * @return
+     */
+    public synchronized List<String> pollExpired(long cutoff) {
+	List<String> expired = new ArrayList<String>();
+	while (!heap.isEmpty() && (heap.peek().time <= cutoff)) {
+	    Deadline head = heap.poll();
+	    Tracked entry = tracked.get(head.token);
+	    if ((entry == null) || (entry.queued != head)) {
+		continue;
+	    }
+	    if (entry.lastInteraction > cutoff) {
+		head.time = entry.lastInteraction;
+		heap.add(head);
+	    } else {
+		tracked.remove(head.token);
+		expired.add(head.token);
+	    }
+	}
+	return expired;
+    }
+
+    /**
+     * Get the earliest queued interaction time or -1 if nothing is tracked. The
+     * value may be earlier than the true earliest interaction if assignments
+     * were touched since they were queued.
+     * 
+     * @return
+     */
+    public synchronized long getEarliest() {
+	while (!heap.isEmpty() && !isCurrent(heap.peek())) {
+	    heap.poll();
+	}
+	return heap.isEmpty() ? -1 : heap.peek().time;
+    }
+
+    /**
+     * Indicates whether a heap entry is the current entry for its assignment.
+     * Entries for removed assignments are discarded lazily.
+     * 
+     * @param deadline
+     * @return
+     */
+    private boolean isCurrent(Deadline deadline) {
+	Tracked entry = tracked.get(deadline.token);
+	return (entry != null) && (entry.queued == deadline);
+    }
+
+    /**
+     * Get number of tracked assignments.
+     * 
+     * @return
+     */
+    public synchronized int size() {
+	return tracked.size();
+    }
+
+    /**
+     * Stop tracking all assignments.
+     */
+    public synchronized void clear() {
+	tracked.clear();
+	heap.clear();
+    }
+
+    public boolean isEnabled() {
+	return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+	this.enabled = enabled;
+    }
+
+    /**
+     * Latest known interaction for an assignment.
+     * 
+     * @author Derek
+     */
+    private static class Tracked {
+
+	/** Latest interaction time */
+	long lastInteraction;
+
+	/** Entry queued in the heap */
+	Deadline queued;
+    }
+
+    /**
+     * Heap entry for an assignment.
+     * 
+     * @author Derek
+     */
+    private static class Deadline implements Comparable<Deadline> {
+
+	/** Assignment token */
+	final String token;
+
+	/** Interaction time when queued */
+	long time;
+
+	Deadline(String token, long time) {
+	    this.token = token;
+	    this.time = time;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	 */
+	@Override
+	public int compareTo(Deadline other) {
+	    return (time < other.time) ? -1 : ((time == other.time) ? 0 : 1);
+	}
+    }
+}
\ No newline at end of file
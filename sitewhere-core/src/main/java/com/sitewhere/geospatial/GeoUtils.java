@@ -25,6 +25,9 @@ import com.vividsolutions.jts.geom.Polygon;
  */
 public class GeoUtils {
 
+    /** Factory is thread safe and may be shared */
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+
     /**
      * Creates a JTS point from a device location.
      * 
@@ -32,8 +35,7 @@ public class GeoUtils {
      * @return
      */
     public static Point createPointForLocation(IDeviceLocation location) {
-	GeometryFactory fact = new GeometryFactory();
-	return fact.createPoint(new Coordinate(location.getLongitude(), location.getLatitude()));
+	return FACTORY.createPoint(new Coordinate(location.getLongitude(), location.getLatitude()));
     }
 
     /**
@@ -61,8 +63,7 @@ public class GeoUtils {
 	ILocation loc = locations.get(0);
 	coords[locations.size()] = new Coordinate(loc.getLongitude(), loc.getLatitude());
 
-	GeometryFactory fact = new GeometryFactory();
-	LinearRing linear = new GeometryFactory().createLinearRing(coords);
-	return new Polygon(linear, null, fact);
+	LinearRing linear = FACTORY.createLinearRing(coords);
+	return new Polygon(linear, null, FACTORY);
     }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.geospatial;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.spi.device.IZone;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Immutable spatial index over the zones for a site. Zone envelopes are stored
+ * in an STR-tree so a point only needs exact containment tests against zones
+ * whose bounding box covers it. Exact tests use prepared geometries, which
+ * cache the structures needed for fast repeated point-in-polygon checks.
+ * 
+ * @author Derek
+ */
+public class SiteZoneIndex {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Tree of zone envelopes */
+    private STRtree tree = new STRtree();
+
+    /** Indexed zones by token */
+    private Map<String, IndexedZone> zonesByToken = new HashMap<String, IndexedZone>();
+
+    public SiteZoneIndex(List<? extends IZone> zones) {
+	for (IZone zone : zones) {
+	    if ((zone.getCoordinates() == null) || (zone.getCoordinates().size() < 3)) {
+		LOGGER.warn("Skipping zone with too few coordinates to form a polygon: " + zone.getToken());
+		continue;
+	    }
+	    try {
+		Polygon polygon = GeoUtils.createPolygonForZone(zone);
+		IndexedZone indexed = new IndexedZone(zone, PreparedGeometryFactory.prepare(polygon));
+		tree.insert(polygon.getEnvelopeInternal(), indexed);
+		zonesByToken.put(zone.getToken(), indexed);
+	    } catch (IllegalArgumentException e) {
+		LOGGER.warn("Skipping zone with invalid polygon: " + zone.getToken(), e);
+	    }
+	}
+	tree.build();
+    }
+
+    /**
+     * Get all zones that contain the given point.
+     * 
+     * @param point
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public List<IZone> getZonesContaining(Point point) {
+	List<IndexedZone> candidates = tree.query(point.getEnvelopeInternal());
+	if (candidates.isEmpty()) {
+	    return Collections.emptyList();
+	}
+	List<IZone> matches = new ArrayList<IZone>(candidates.size());
+	for (IndexedZone candidate : candidates) {
+	    if (candidate.getGeometry().contains(point)) {
+		matches.add(candidate.getZone());
+	    }
+	}
+	return matches;
+    }
+
+    /**
+     * Indicates if a zone is part of the index.
+     * 
+     * @param zoneToken
+     * @return
+     */
+    public boolean isIndexed(String zoneToken) {
+	return zonesByToken.containsKey(zoneToken);
+    }
+
+    /**
+     * Get prepared geometry for an indexed zone.
+     * 
+     * @param zoneToken
+     * @return geometry or null if zone is not indexed
+     */
+    public PreparedGeometry getGeometry(String zoneToken) {
+	IndexedZone indexed = zonesByToken.get(zoneToken);
+	return (indexed != null) ? indexed.getGeometry() : null;
+    }
+
+    /**
+     * Get all indexed zones.
+     * 
+     * @return
+     */
+    public Collection<IZone> getZones() {
+	List<IZone> zones = new ArrayList<IZone>(zonesByToken.size());
+	for (IndexedZone indexed : zonesByToken.values()) {
+	    zones.add(indexed.getZone());
+	}
+	return zones;
+    }
+
+    /**
+     * Get number of indexed zones.
+     * 
+     * @return
+     */
+    public int size() {
+	return zonesByToken.size();
+    }
+
+    /**
+     * Zone paired with its prepared geometry.
+     * 
+     * @author Derek
+     */
+    private static class IndexedZone {
+
+	/** Zone */
+	private IZone zone;
+
+	/** Prepared zone polygon */
+	private PreparedGeometry geometry;
+
+	public IndexedZone(IZone zone, PreparedGeometry geometry) {
+	    this.zone = zone;
+	    this.geometry = geometry;
+	}
+
+	public IZone getZone() {
+	    return zone;
+	}
+
+	public PreparedGeometry getGeometry() {
+	    return geometry;
+	}
+    }
+}
\ No newline at end of file
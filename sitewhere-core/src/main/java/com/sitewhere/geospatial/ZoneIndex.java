@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.geospatial;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sitewhere.SiteWhere;
+import com.sitewhere.rest.model.search.SearchCriteria;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IZone;
+import com.sitewhere.spi.tenant.ITenant;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+
+/**
+ * Holds a {@link SiteZoneIndex} for each site in a tenant. Site indexes are
+ * built lazily from the zones in device management and discarded when a zone
+ * in the site is created, updated or deleted so the next lookup rebuilds them.
+ * Site indexes are also rebuilt once the refresh interval has passed so that
+ * changes made through other instances are picked up. Indexes are released when
+ * the tenant engine stops.
+ * 
+ * @author Derek
+ */
+public class ZoneIndex {
+
+    /** Default interval between listings of a site in milliseconds */
+    private static final long DEFAULT_REFRESH_INTERVAL = 60 * 1000;
+
+    /** Zone indexes by tenant id */
+    private static ConcurrentMap<String, ZoneIndex> INDEXES = new ConcurrentHashMap<String, ZoneIndex>();
+
+    /** Tenant whose zones are indexed */
+    private ITenant tenant;
+
+    /** Interval between listings of a site in milliseconds */
+    private long refreshInterval;
+
+    /** Indexes by site token */
+    private ConcurrentMap<String, CachedSite> sites = new ConcurrentHashMap<String, CachedSite>();
+
+    /** Site tokens by zone token */
+    private ConcurrentMap<String, String> zoneSites = new ConcurrentHashMap<String, String>();
+
+    /** Incremented on every invalidation to detect stale rebuilds */
+    private AtomicLong generation = new AtomicLong();
+
+    public ZoneIndex(ITenant tenant) {
+	this(tenant, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    public ZoneIndex(ITenant tenant, long refreshInterval) {
+	this.tenant = tenant;
+	this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Get the zone index for a tenant.
+     * 
+     * @param tenant
+     * @return
+     */
+    public static ZoneIndex getInstance(ITenant tenant) {
+	ZoneIndex index = INDEXES.get(tenant.getId());
+	if (index == null) {
+	    index = new ZoneIndex(tenant);
+	    ZoneIndex existing = INDEXES.putIfAbsent(tenant.getId(), index);
+	    if (existing != null) {
+		index = existing;
+	    }
+	}
+	return index;
+    }
+
+    /**
+     * Release the zone index for a tenant.
+     * 
+     * @param tenant
+     */
+    public static void release(ITenant tenant) {
+	INDEXES.remove(tenant.getId());
+    }
+
+    /**
+     * Get the index for a site, building it if necessary.
+     * 
+     * @param siteToken
+     * @return
+     * @throws SiteWhereException
+     */
+    public SiteZoneIndex getSiteIndex(String siteToken) throws SiteWhereException {
+	return getSiteIndex(siteToken, System.currentTimeMillis());
+    }
+
+    /**
+     * Get the index for a site as of the given time, building it if it is
+     * missing or older than the refresh interval.
+     * 
+     * @param siteToken
+     * @param now
+     * @return
+     * @throws SiteWhereException
+     */
+    protected SiteZoneIndex getSiteIndex(String siteToken, long now) throws SiteWhereException {
+	CachedSite cached = sites.get(siteToken);
+	if ((cached != null) && (now - cached.builtAt < refreshInterval)) {
+	    return cached.index;
+	}
+	long start = generation.get();
+	SiteZoneIndex index = new SiteZoneIndex(listZones(siteToken));
+	for (IZone zone : index.getZones()) {
+	    zoneSites.put(zone.getToken(), siteToken);
+	}
+
+	// Do not cache if zones changed while the index was being built.
+	if (generation.get() == start) {
+	    sites.put(siteToken, new CachedSite(index, now));
+	}
+	return index;
+    }
+
+    /**
+     * Get prepared geometry for a zone, loading the index for its site if
+     * necessary.
+     * 
+     * @param zoneToken
+     * @return
+     * @throws SiteWhereException
+     */
+    public PreparedGeometry getZoneGeometry(String zoneToken) throws SiteWhereException {
+	String siteToken = zoneSites.get(zoneToken);
+	if (siteToken == null) {
+	    IZone zone = getZone(zoneToken);
+	    if (zone == null) {
+		throw new SiteWhereException("Invalid zone token: " + zoneToken);
+	    }
+	    siteToken = zone.getSiteToken();
+	}
+	PreparedGeometry geometry = getSiteIndex(siteToken).getGeometry(zoneToken);
+	if (geometry == null) {
+	    throw new SiteWhereException("Zone does not have a valid polygon: " + zoneToken);
+	}
+	return geometry;
+    }
+
+    /**
+     * List all zones for a site.
+     * 
+     * @param siteToken
+     * @return
+     * @throws SiteWhereException
+     */
+    protected List<IZone> listZones(String siteToken) throws SiteWhereException {
+	return SiteWhere.getServer().getDeviceManagement(tenant).listZones(siteToken, SearchCriteria.ALL)
+		.getResults();
+    }
+
+    /**
+     * Get a zone by token.
+     * 
+     * @param zoneToken
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IZone getZone(String zoneToken) throws SiteWhereException {
+	return SiteWhere.getServer().getDeviceManagement(tenant).getZone(zoneToken);
+    }
+
+    /**
+     * Called when a zone is created, updated or deleted.
+     * 
+     * @param zone
+     */
+    public void onZoneChanged(IZone zone) {
+	generation.incrementAndGet();
+	zoneSites.remove(zone.getToken());
+	sites.remove(zone.getSiteToken());
+    }
+
+    /**
+     * Discard all site indexes.
+     */
+    public void clear() {
+	generation.incrementAndGet();
+	zoneSites.clear();
+	sites.clear();
+    }
+
+    /**
+     * Site index along with the time it was built.
+     * 
+     * @author Derek
+     */
+    private static class CachedSite {
+
+	/** Index for site */
+	private SiteZoneIndex index;
+
+	/** Time index was built */
+	private long builtAt;
+
+	public CachedSite(SiteZoneIndex index, long builtAt) {
+	    this.index = index;
+	    this.builtAt = builtAt;
+	}
+    }
+}
\ No newline at end of file
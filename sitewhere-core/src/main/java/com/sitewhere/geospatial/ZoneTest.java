@@ -33,6 +33,9 @@ public class ZoneTest {
     /** Message to use if test is met */
     private String alertMessage;
 
+    /** Seconds condition must hold before alert fires */
+    private long dwellTime;
+
     public String getZoneToken() {
 	return zoneToken;
     }
@@ -72,4 +75,12 @@ public class ZoneTest {
     public void setAlertMessage(String alertMessage) {
 	this.alertMessage = alertMessage;
     }
+
+    public long getDwellTime() {
+	return dwellTime;
+    }
+
+    public void setDwellTime(long dwellTime) {
+	this.dwellTime = dwellTime;
+    }
 }
\ No newline at end of file
@@ -9,15 +9,29 @@ package com.sitewhere.geospatial;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.hazelcast.core.IMap;
 import com.sitewhere.SiteWhere;
 import com.sitewhere.device.event.processor.FilteredOutboundEventProcessor;
+import com.sitewhere.rest.model.device.event.DeviceEventBatch;
 import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IZone;
@@ -25,13 +39,23 @@ import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.processor.IOutboundEventProcessor;
 import com.sitewhere.spi.geospatial.ZoneContainment;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
-import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.Point;
 
 /**
  * Implementation of {@link IOutboundEventProcessor} that performs a series of
  * tests for whether a location is inside or outside of zones, firing alerts if
  * the criteria is met.
  * 
+ * By default, the last known containment for each assignment is tracked and
+ * alerts only fire when a device enters or exits a zone, or after it has
+ * dwelled in the matching state for the configured time. Containment state is
+ * kept in memory unless distributed state is enabled, in which case it is
+ * held in a Hazelcast map so it is shared across instances. Alerts are queued
+ * and written in per-assignment batches by a background flusher rather than
+ * being persisted on the outbound processing thread. Alerts from a batch that
+ * fails to write are queued again for the next flush until the maximum number
+ * of attempts is reached.
+ * 
  * @author Derek
  */
 public class ZoneTestEventProcessor extends FilteredOutboundEventProcessor {
@@ -39,12 +63,45 @@ public class ZoneTestEventProcessor extends FilteredOutboundEventProcessor {
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
-    /** Map of polygons by zone token */
-    private Map<String, Polygon> zoneMap = new HashMap<String, Polygon>();
+    /** Number of locks used to serialize in-memory state updates */
+    private static final int LOCK_STRIPES = 64;
 
     /** List of tests to perform */
     private List<ZoneTest> zoneTests = new ArrayList<ZoneTest>();
 
+    /** Indicates if alerts only fire on containment transitions */
+    private boolean transitionsOnly = true;
+
+    /** Indicates if containment state is stored in Hazelcast */
+    private boolean distributedState = false;
+
+    /** Interval in milliseconds between alert flushes */
+    private long alertFlushInterval = 250;
+
+    /** Maximum number of alerts written per flush cycle */
+    private int maxAlertBatchSize = 500;
+
+    /** Maximum number of alerts queued before writes happen inline */
+    private int maxQueuedAlerts = 10000;
+
+    /** Maximum number of times an alert write is attempted */
+    private int maxAlertAttempts = 5;
+
+    /** Containment state by assignment token */
+    private ConcurrentMap<String, ZoneTransitionState> states;
+
+    /** Hazelcast map if state is distributed */
+    private IMap<String, ZoneTransitionState> distributedStates;
+
+    /** Locks for in-memory state updates */
+    private ReentrantLock[] locks;
+
+    /** Alerts waiting to be written */
+    private BlockingQueue<PendingAlert> pendingAlerts;
+
+    /** Executor that flushes pending alerts */
+    private ScheduledExecutorService flusher;
+
     /*
      * (non-Javadoc)
      * 
@@ -57,7 +114,72 @@ public class ZoneTestEventProcessor extends FilteredOutboundEventProcessor {
 	// Required for filters.
 	super.start(monitor);
 
-	LOGGER.info("Starting zone test processor with " + zoneTests.size() + " tests.");
+	if (distributedState) {
+	    this.distributedStates = SiteWhere.getServer().getHazelcastConfiguration().getHazelcastInstance()
+		    .getMap(getStateMapName());
+	    this.states = distributedStates;
+	} else {
+	    this.distributedStates = null;
+	    this.states = new ConcurrentHashMap<String, ZoneTransitionState>();
+	    this.locks = new ReentrantLock[LOCK_STRIPES];
+	    for (int i = 0; i < LOCK_STRIPES; i++) {
+		locks[i] = new ReentrantLock();
+	    }
+	}
+
+	startAlertFlusher();
+	LOGGER.info("Starting zone test processor with " + zoneTests.size() + " tests"
+		+ (transitionsOnly ? " (alerting on transitions)." : "."));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.event.processor.FilteredOutboundEventProcessor#stop(
+     * com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	stopAlertFlusher();
+	super.stop(monitor);
+    }
+
+    /**
+     * Create the alert queue and start flushing it in the background.
+     */
+    protected void startAlertFlusher() {
+	this.pendingAlerts = new LinkedBlockingQueue<PendingAlert>(maxQueuedAlerts);
+	this.flusher = Executors.newSingleThreadScheduledExecutor(new FlusherThreadFactory());
+	flusher.scheduleWithFixedDelay(new Runnable() {
+
+	    @Override
+	    public void run() {
+		flushAlerts();
+	    }
+	}, alertFlushInterval, alertFlushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the background flusher and write any alerts still queued.
+     */
+    protected void stopAlertFlusher() {
+	if (flusher != null) {
+	    flusher.shutdown();
+	    try {
+		flusher.awaitTermination(alertFlushInterval * 4, TimeUnit.MILLISECONDS);
+	    } catch (InterruptedException e) {
+		LOGGER.warn("Interrupted waiting for zone alert flusher to stop.");
+	    }
+	    flusher = null;
+	}
+	if (pendingAlerts != null) {
+	    flushAlerts();
+	    if (!pendingAlerts.isEmpty()) {
+		LOGGER.error("Unable to store " + pendingAlerts.size() + " zone alert(s) before stopping.");
+		pendingAlerts.clear();
+	    }
+	}
     }
 
     /*
@@ -78,42 +200,229 @@ public class ZoneTestEventProcessor extends FilteredOutboundEventProcessor {
      */
     @Override
     public void onLocationNotFiltered(IDeviceLocation location) throws SiteWhereException {
-	for (ZoneTest test : zoneTests) {
-	    Polygon poly = getZonePolygon(test.getZoneToken());
-	    ZoneContainment containment = (poly.contains(GeoUtils.createPointForLocation(location)))
-		    ? ZoneContainment.Inside : ZoneContainment.Outside;
-	    if (test.getCondition() == containment) {
-		DeviceAlertCreateRequest alert = new DeviceAlertCreateRequest();
-		alert.setType(test.getAlertType());
-		alert.setLevel(test.getAlertLevel());
-		alert.setMessage(test.getAlertMessage());
-		alert.setUpdateState(false);
-		alert.setEventDate(new Date());
-		SiteWhere.getServer().getDeviceEventManagement(getTenant())
-			.addDeviceAlert(location.getDeviceAssignmentToken(), alert);
+	if (zoneTests.isEmpty()) {
+	    return;
+	}
+	boolean[] inside = testContainment(location);
+	if (!transitionsOnly) {
+	    for (int i = 0; i < zoneTests.size(); i++) {
+		ZoneTest test = zoneTests.get(i);
+		if (inside[i] == (test.getCondition() == ZoneContainment.Inside)) {
+		    queueAlert(location, test);
+		}
+	    }
+	    return;
+	}
+
+	String key = location.getDeviceAssignmentToken();
+	long eventDate = (location.getEventDate() != null) ? location.getEventDate().getTime()
+		: System.currentTimeMillis();
+	List<ZoneTest> fired = new ArrayList<ZoneTest>();
+	lockState(key);
+	try {
+	    ZoneTransitionState state = states.get(key);
+	    if ((state == null) || (!state.isCompatible(zoneTests.size()))) {
+		state = new ZoneTransitionState(zoneTests.size());
+	    } else if (eventDate < state.getLastEventDate()) {
+		// Ignore locations that arrive out of order.
+		return;
+	    }
+	    for (int i = 0; i < zoneTests.size(); i++) {
+		ZoneTest test = zoneTests.get(i);
+		if (state.update(i, inside[i], test.getCondition() == ZoneContainment.Inside,
+			test.getDwellTime() * 1000, eventDate)) {
+		    fired.add(test);
+		}
 	    }
+	    state.setLastEventDate(eventDate);
+	    states.put(key, state);
+	} finally {
+	    unlockState(key);
+	}
+	for (ZoneTest test : fired) {
+	    queueAlert(location, test);
 	}
     }
 
     /**
-     * Get cached zone polygon or try to load from datastore.
+     * Determine whether a location is inside the zone for each test.
      * 
-     * @param token
+     * @param location
      * @return
      * @throws SiteWhereException
      */
-    protected Polygon getZonePolygon(String token) throws SiteWhereException {
-	Polygon poly = zoneMap.get(token);
-	if (poly != null) {
-	    return poly;
+    protected boolean[] testContainment(IDeviceLocation location) throws SiteWhereException {
+	ZoneIndex index = ZoneIndex.getInstance(getTenant());
+	Point point = GeoUtils.createPointForLocation(location);
+
+	// Resolve all zones in the site containing the point with a single query.
+	SiteZoneIndex siteIndex = null;
+	Set<String> containing = new HashSet<String>();
+	if (location.getSiteToken() != null) {
+	    siteIndex = index.getSiteIndex(location.getSiteToken());
+	    for (IZone zone : siteIndex.getZonesContaining(point)) {
+		containing.add(zone.getToken());
+	    }
 	}
-	IZone zone = SiteWhere.getServer().getDeviceManagement(getTenant()).getZone(token);
-	if (zone != null) {
-	    poly = GeoUtils.createPolygonForZone(zone);
-	    zoneMap.put(token, poly);
-	    return poly;
+	boolean[] inside = new boolean[zoneTests.size()];
+	for (int i = 0; i < zoneTests.size(); i++) {
+	    String zoneToken = zoneTests.get(i).getZoneToken();
+	    if ((siteIndex != null) && (siteIndex.isIndexed(zoneToken))) {
+		inside[i] = containing.contains(zoneToken);
+	    } else {
+		inside[i] = index.getZoneGeometry(zoneToken).contains(point);
+	    }
 	}
-	throw new SiteWhereException("Invalid zone token in " + ZoneTestEventProcessor.class.getName() + ": " + token);
+	return inside;
+    }
+
+    /**
+     * Queue an alert for a zone test that was met. If the queue is full, the
+     * alert is written on the calling thread.
+     * 
+     * @param location
+     * @param test
+     * @throws SiteWhereException
+     */
+    protected void queueAlert(IDeviceLocation location, ZoneTest test) throws SiteWhereException {
+	DeviceAlertCreateRequest alert = new DeviceAlertCreateRequest();
+	alert.setType(test.getAlertType());
+	alert.setLevel(test.getAlertLevel());
+	alert.setMessage(test.getAlertMessage());
+	alert.setUpdateState(false);
+	alert.setEventDate(new Date());
+	if (!pendingAlerts.offer(new PendingAlert(location.getDeviceAssignmentToken(), alert))) {
+	    SiteWhere.getServer().getDeviceEventManagement(getTenant())
+		    .addDeviceAlert(location.getDeviceAssignmentToken(), alert);
+	}
+    }
+
+    /**
+     * Write all pending alerts, grouped into a batch per assignment. Alerts
+     * from batches that fail are queued again once the queue has been drained
+     * so they are retried on the next flush rather than in a tight loop.
+     */
+    protected void flushAlerts() {
+	List<PendingAlert> drained = new ArrayList<PendingAlert>();
+	List<PendingAlert> retries = new ArrayList<PendingAlert>();
+	while (pendingAlerts.drainTo(drained, maxAlertBatchSize) > 0) {
+	    Map<String, List<PendingAlert>> byAssignment = new LinkedHashMap<String, List<PendingAlert>>();
+	    for (PendingAlert pending : drained) {
+		List<PendingAlert> alerts = byAssignment.get(pending.getAssignmentToken());
+		if (alerts == null) {
+		    alerts = new ArrayList<PendingAlert>();
+		    byAssignment.put(pending.getAssignmentToken(), alerts);
+		}
+		alerts.add(pending);
+	    }
+	    for (Map.Entry<String, List<PendingAlert>> entry : byAssignment.entrySet()) {
+		DeviceEventBatch batch = new DeviceEventBatch();
+		for (PendingAlert pending : entry.getValue()) {
+		    batch.getAlerts().add(pending.getAlert());
+		}
+		try {
+		    storeAlerts(entry.getKey(), batch);
+		} catch (Throwable t) {
+		    LOGGER.error("Unable to store " + batch.getAlerts().size() + " zone alert(s) for assignment "
+			    + entry.getKey() + ".", t);
+		    addRetries(entry.getValue(), retries);
+		}
+	    }
+	    drained.clear();
+	}
+	int dropped = 0;
+	for (PendingAlert retry : retries) {
+	    if (!pendingAlerts.offer(retry)) {
+		dropped++;
+	    }
+	}
+	if (dropped > 0) {
+	    LOGGER.error("Dropped " + dropped + " zone alert(s) because the alert queue is full.");
+	}
+    }
+
+    /**
+     * Collect alerts from a failed write that may be attempted again.
+     * 
+     * @param failed
+     * @param retries
+     */
+    protected void addRetries(List<PendingAlert> failed, List<PendingAlert> retries) {
+	int dropped = 0;
+	for (PendingAlert pending : failed) {
+	    if (pending.incrementAttempts() < maxAlertAttempts) {
+		retries.add(pending);
+	    } else {
+		dropped++;
+	    }
+	}
+	if (dropped > 0) {
+	    LOGGER.error("Dropped " + dropped + " zone alert(s) for assignment " + failed.get(0).getAssignmentToken()
+		    + " after " + maxAlertAttempts + " failed attempts.");
+	}
+    }
+
+    /**
+     * Write a batch of alerts for an assignment.
+     * 
+     * @param assignmentToken
+     * @param batch
+     * @throws SiteWhereException
+     */
+    protected void storeAlerts(String assignmentToken, DeviceEventBatch batch) throws SiteWhereException {
+	SiteWhere.getServer().getDeviceEventManagement(getTenant()).addDeviceEventBatch(assignmentToken, batch);
+    }
+
+    /**
+     * Lock containment state for an assignment.
+     * 
+     * @param assignmentToken
+     */
+    protected void lockState(String assignmentToken) {
+	if (distributedStates != null) {
+	    distributedStates.lock(assignmentToken);
+	} else {
+	    getLock(assignmentToken).lock();
+	}
+    }
+
+    /**
+     * Unlock containment state for an assignment.
+     * 
+     * @param assignmentToken
+     */
+    protected void unlockState(String assignmentToken) {
+	if (distributedStates != null) {
+	    distributedStates.unlock(assignmentToken);
+	} else {
+	    getLock(assignmentToken).unlock();
+	}
+    }
+
+    /**
+     * Get lock stripe for an assignment.
+     * 
+     * @param assignmentToken
+     * @return
+     */
+    protected ReentrantLock getLock(String assignmentToken) {
+	return locks[(assignmentToken.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    /**
+     * Get name of Hazelcast map used for distributed state. The name is derived
+     * from the zone tests so that instances with the same configuration share
+     * state while other zone test processors do not.
+     * 
+     * @return
+     */
+    protected String getStateMapName() {
+	StringBuilder tests = new StringBuilder();
+	for (ZoneTest test : zoneTests) {
+	    tests.append(test.getZoneToken()).append('/').append(test.getCondition()).append(';');
+	}
+	return ZoneTestEventProcessor.class.getName() + ":" + getTenant().getId() + ":"
+		+ Integer.toHexString(tests.toString().hashCode());
     }
 
     public List<ZoneTest> getZoneTests() {
@@ -123,4 +432,102 @@ public class ZoneTestEventProcessor extends FilteredOutboundEventProcessor {
     public void setZoneTests(List<ZoneTest> zoneTests) {
 	this.zoneTests = zoneTests;
     }
+
+    public boolean isTransitionsOnly() {
+	return transitionsOnly;
+    }
+
+    public void setTransitionsOnly(boolean transitionsOnly) {
+	this.transitionsOnly = transitionsOnly;
+    }
+
+    public boolean isDistributedState() {
+	return distributedState;
+    }
+
+    public void setDistributedState(boolean distributedState) {
+	this.distributedState = distributedState;
+    }
+
+    public long getAlertFlushInterval() {
+	return alertFlushInterval;
+    }
+
+    public void setAlertFlushInterval(long alertFlushInterval) {
+	this.alertFlushInterval = alertFlushInterval;
+    }
+
+    public int getMaxAlertBatchSize() {
+	return maxAlertBatchSize;
+    }
+
+    public void setMaxAlertBatchSize(int maxAlertBatchSize) {
+	this.maxAlertBatchSize = maxAlertBatchSize;
+    }
+
+    public int getMaxQueuedAlerts() {
+	return maxQueuedAlerts;
+    }
+
+    public void setMaxQueuedAlerts(int maxQueuedAlerts) {
+	this.maxQueuedAlerts = maxQueuedAlerts;
+    }
+
+    public int getMaxAlertAttempts() {
+	return maxAlertAttempts;
+    }
+
+    public void setMaxAlertAttempts(int maxAlertAttempts) {
+	this.maxAlertAttempts = maxAlertAttempts;
+    }
+
+    /**
+     * Alert waiting to be written for an assignment.
+     * 
+     * @author Derek
+     */
+    private static class PendingAlert {
+
+	/** Assignment token */
+	private String assignmentToken;
+
+	/** Alert to create */
+	private DeviceAlertCreateRequest alert;
+
+	/** Number of failed attempts to write alert */
+	private int attempts;
+
+	public PendingAlert(String assignmentToken, DeviceAlertCreateRequest alert) {
+	    this.assignmentToken = assignmentToken;
+	    this.alert = alert;
+	}
+
+	public String getAssignmentToken() {
+	    return assignmentToken;
+	}
+
+	public DeviceAlertCreateRequest getAlert() {
+	    return alert;
+	}
+
+	/**
+	 * Record a failed attempt to write the alert.
+	 * 
+	 * @return number of failed attempts
+	 */
+	public int incrementAttempts() {
+	    return ++attempts;
+	}
+    }
+
+    /** Used for naming zone alert flusher threads */
+    private class FlusherThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere Zone Alert Flusher " + counter.incrementAndGet());
+	}
+    }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.geospatial;
+
+import java.io.Serializable;
+
+/**
+ * Last known zone containment for a single device assignment. Holds one slot
+ * per zone test so that state for an assignment is a few small arrays rather
+ * than a map of objects.
+ * 
+ * @author Derek
+ */
+public class ZoneTransitionState implements Serializable {
+
+    /** Serial version UID */
+    private static final long serialVersionUID = -2714180957421394436L;
+
+    /** Flag set once containment has been observed */
+    private static final byte KNOWN = 0x01;
+
+    /** Flag set if last location was inside the zone */
+    private static final byte INSIDE = 0x02;
+
+    /** Flag set once an alert has fired for the current containment */
+    private static final byte ALERTED = 0x04;
+
+    /** Flags for each zone test */
+    private byte[] flags;
+
+    /** Time containment last changed for each zone test */
+    private long[] since;
+
+    /** Date of last location processed */
+    private long lastEventDate;
+
+    public ZoneTransitionState(int testCount) {
+	this.flags = new byte[testCount];
+	this.since = new long[testCount];
+    }
+
+    /**
+     * Update containment for a zone test and indicate whether an alert should
+     * fire. An alert fires once per period in which the containment matches
+     * the condition, after the containment has held for the dwell time.
+     * Containment observed for the first time counts as a transition.
+     * 
+     * @param index
+     * @param inside
+     * @param alertOnInside
+     * @param dwellMs
+     * @param eventDate
+     * @return
+     */
+    public boolean update(int index, boolean inside, boolean alertOnInside, long dwellMs, long eventDate) {
+	byte current = flags[index];
+	boolean wasInside = (current & INSIDE) != 0;
+	if (((current & KNOWN) == 0) || (wasInside != inside)) {
+	    current = (byte) (KNOWN | (inside ? INSIDE : 0));
+	    since[index] = eventDate;
+	}
+	boolean fire = false;
+	if ((inside == alertOnInside) && ((current & ALERTED) == 0) && ((eventDate - since[index]) >= dwellMs)) {
+	    current |= ALERTED;
+	    fire = true;
+	}
+	flags[index] = current;
+	return fire;
+    }
+
+    /**
+     * Indicates if state was created for the given number of tests.
+     * 
+     * @param testCount
+     * @return
+     */
+    public boolean isCompatible(int testCount) {
+	return flags.length == testCount;
+    }
+
+    public long getLastEventDate() {
+	return lastEventDate;
+    }
+
+    public void setLastEventDate(long lastEventDate) {
+	this.lastEventDate = lastEventDate;
+    }
+}
\ No newline at end of file
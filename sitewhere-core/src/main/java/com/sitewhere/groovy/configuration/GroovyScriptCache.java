@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.groovy.configuration;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import groovy.lang.Binding;
+import groovy.lang.Script;
+import groovy.util.GroovyScriptEngine;
+import groovy.util.ResourceConnector;
+import groovy.util.ResourceException;
+import groovy.util.ScriptException;
+
+/**
+ * Caches compiled script classes by resource path along with the version
+ * (last modified time) of the resource they were compiled from, so running a
+ * cached script does not require resolving the resource each time. Every run
+ * creates a new {@link Script} instance bound to the caller's binding, so
+ * neither binding variables nor <code>@Field</code> state carry over between
+ * runs. The resource version is checked at most once per check interval and
+ * the script is recompiled if it has changed.
+ * 
+ * @author Derek
+ */
+public class GroovyScriptCache {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Engine used to compile scripts */
+    private GroovyScriptEngine engine;
+
+    /** Connector used to check resource versions */
+    private ResourceConnector connector;
+
+    /** Minimum milliseconds between resource version checks */
+    private long checkInterval;
+
+    /** Compiled scripts by resource path */
+    private ConcurrentMap<String, CompiledScript> scripts = new ConcurrentHashMap<String, CompiledScript>();
+
+    public GroovyScriptCache(GroovyScriptEngine engine, ResourceConnector connector, long checkInterval) {
+	this.engine = engine;
+	this.connector = connector;
+	this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Run a cached script with the given binding.
+     * 
+     * @param path
+     * @param binding
+     * @return
+     * @throws ResourceException
+     * @throws ScriptException
+     */
+    public Object run(String path, Binding binding) throws ResourceException, ScriptException {
+	Script script = InvokerHelper.createScript(getScript(path).getScriptClass(), binding);
+	return script.run();
+    }
+
+    /**
+     * Get compiled script for a path, compiling if missing or stale.
+     * 
+     * @param path
+     * @return
+     * @throws ResourceException
+     * @throws ScriptException
+     */
+    protected CompiledScript getScript(String path) throws ResourceException, ScriptException {
+	CompiledScript script = scripts.get(path);
+	long now = System.currentTimeMillis();
+	if ((script != null) && (now < script.getNextCheck())) {
+	    return script;
+	}
+	long version = connector.getResourceConnection(path).getLastModified();
+	if ((script != null) && (script.getVersion() == version)) {
+	    script.setNextCheck(now + checkInterval);
+	    return script;
+	}
+	return compile(path, version);
+    }
+
+    /**
+     * Compile a script and add it to the cache.
+     * 
+     * @param path
+     * @param version
+     * @return
+     * @throws ResourceException
+     * @throws ScriptException
+     */
+    @SuppressWarnings("unchecked")
+    protected synchronized CompiledScript compile(String path, long version)
+	    throws ResourceException, ScriptException {
+	CompiledScript script = scripts.get(path);
+	if ((script != null) && (script.getVersion() == version)) {
+	    return script;
+	}
+	Class<? extends Script> clazz = (Class<? extends Script>) engine.loadScriptByName(path);
+	script = new CompiledScript(clazz, version, System.currentTimeMillis() + checkInterval);
+	scripts.put(path, script);
+	LOGGER.debug("Compiled Groovy script '" + path + "' (version " + version + ").");
+	return script;
+    }
+
+    /**
+     * Remove a script from the cache.
+     * 
+     * @param path
+     */
+    public void invalidate(String path) {
+	scripts.remove(path);
+    }
+
+    /**
+     * Remove all scripts from the cache.
+     */
+    public void clear() {
+	scripts.clear();
+    }
+
+    /**
+     * Compiled script class with the resource version it was built from.
+     * 
+     * @author Derek
+     */
+    private static class CompiledScript {
+
+	/** Compiled script class */
+	private Class<? extends Script> scriptClass;
+
+	/** Version of resource script was compiled from */
+	private long version;
+
+	/** Time after which the resource version should be checked */
+	private volatile long nextCheck;
+
+	public CompiledScript(Class<? extends Script> scriptClass, long version, long nextCheck) {
+	    this.scriptClass = scriptClass;
+	    this.version = version;
+	    this.nextCheck = nextCheck;
+	}
+
+	public Class<? extends Script> getScriptClass() {
+	    return scriptClass;
+	}
+
+	public long getVersion() {
+	    return version;
+	}
+
+	public long getNextCheck() {
+	    return nextCheck;
+	}
+
+	public void setNextCheck(long nextCheck) {
+	    this.nextCheck = nextCheck;
+	}
+    }
+}
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.sitewhere.groovy.configuration;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
 
 import com.sitewhere.groovy.TenantResourceConnector;
 import com.sitewhere.server.lifecycle.TenantLifecycleComponent;
@@ -10,7 +11,11 @@ import com.sitewhere.spi.server.groovy.ITenantGroovyConfiguration;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
+import groovy.lang.Binding;
+import groovy.transform.CompileStatic;
 import groovy.util.GroovyScriptEngine;
+import groovy.util.ResourceException;
+import groovy.util.ScriptException;
 
 /**
  * Provides common Groovy configuration for tenant components.
@@ -34,6 +39,15 @@ public class TenantGroovyConfiguration extends TenantLifecycleComponent implemen
     /** Field for setting GSE debug flag */
     private boolean debug = false;
 
+    /** Indicates if scripts are compiled with static type checking */
+    private boolean compileStatic = false;
+
+    /** Minimum milliseconds between checks for updated script resources */
+    private long scriptCheckInterval = 5000;
+
+    /** Cache of compiled scripts */
+    private GroovyScriptCache scriptCache;
+
     public TenantGroovyConfiguration() {
 	super(LifecycleComponentType.Other);
     }
@@ -52,8 +66,27 @@ public class TenantGroovyConfiguration extends TenantLifecycleComponent implemen
 
 	groovyScriptEngine.getConfig().setVerbose(isVerbose());
 	groovyScriptEngine.getConfig().setDebug(isDebug());
-	LOGGER.info(
-		"Tenant Groovy script engine configured with (verbose:" + isVerbose() + ") (debug:" + isDebug() + ").");
+
+	// Script cache decides when to recompile, so engine should not delay it.
+	groovyScriptEngine.getConfig().setMinimumRecompilationInterval(0);
+	if (isCompileStatic()) {
+	    groovyScriptEngine.getConfig().addCompilationCustomizers(new ASTTransformationCustomizer(CompileStatic.class));
+	}
+	scriptCache = new GroovyScriptCache(groovyScriptEngine, resourceConnector, getScriptCheckInterval());
+	LOGGER.info("Tenant Groovy script engine configured with (verbose:" + isVerbose() + ") (debug:" + isDebug()
+		+ ") (compileStatic:" + isCompileStatic() + ").");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponent#stop(com.sitewhere.spi.
+     * server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	invalidateScripts();
     }
 
     /*
@@ -70,6 +103,30 @@ public class TenantGroovyConfiguration extends TenantLifecycleComponent implemen
 	this.groovyScriptEngine = groovyScriptEngine;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.server.groovy.ITenantGroovyConfiguration#run(java.
+     * lang.String, groovy.lang.Binding)
+     */
+    @Override
+    public Object run(String scriptPath, Binding binding) throws ResourceException, ScriptException {
+	return scriptCache.run(scriptPath, binding);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.server.groovy.ITenantGroovyConfiguration#
+     * invalidateScripts()
+     */
+    @Override
+    public void invalidateScripts() {
+	if (scriptCache != null) {
+	    scriptCache.clear();
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -95,4 +152,20 @@ public class TenantGroovyConfiguration extends TenantLifecycleComponent implemen
     public void setDebug(boolean debug) {
 	this.debug = debug;
     }
+
+    public boolean isCompileStatic() {
+	return compileStatic;
+    }
+
+    public void setCompileStatic(boolean compileStatic) {
+	this.compileStatic = compileStatic;
+    }
+
+    public long getScriptCheckInterval() {
+	return scriptCheckInterval;
+    }
+
+    public void setScriptCheckInterval(long scriptCheckInterval) {
+	this.scriptCheckInterval = scriptCheckInterval;
+    }
 }
\ No newline at end of file
@@ -58,8 +58,7 @@ public class GroovyCommandExecutionEncoder extends TenantLifecycleComponent
 	    binding.setVariable(IGroovyVariables.VAR_NESTING_CONTEXT, nested);
 	    binding.setVariable(IGroovyVariables.VAR_ASSIGNMENT, assignment);
 	    binding.setVariable(IGroovyVariables.VAR_LOGGER, LOGGER);
-	    return (byte[]) SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).getGroovyScriptEngine()
-		    .run(getScriptPath(), binding);
+	    return (byte[]) SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).run(getScriptPath(), binding);
 	} catch (ResourceException e) {
 	    throw new EventDecodeException("Unable to access Groovy decoder script.", e);
 	} catch (ScriptException e) {
@@ -104,8 +104,8 @@ public class GroovyCommandRouter extends TenantLifecycleComponent implements IOu
 	    binding.setVariable(IGroovyVariables.VAR_ASSIGNMENT, assignment);
 	    binding.setVariable(IGroovyVariables.VAR_LOGGER, LOGGER);
 	    LOGGER.debug("About to route command using script '" + getScriptPath() + "'");
-	    String target = (String) SiteWhere.getServer().getTenantGroovyConfiguration(getTenant())
-		    .getGroovyScriptEngine().run(getScriptPath(), binding);
+	    String target = (String) SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).run(getScriptPath(),
+		    binding);
 	    if (target != null) {
 		for (ICommandDestination<?, ?> destination : getCommandDestinations()) {
 		    if (target.equals(destination.getDestinationId())) {
@@ -44,6 +44,12 @@ public class GroovyEventDecoder extends TenantLifecycleComponent implements IDev
     /** Path to script used for decoder */
     private String scriptPath;
 
+    /** Supports building device management entities */
+    private DeviceManagementRequestBuilder deviceBuilder;
+
+    /** Supports building various types of device events */
+    private DeviceEventRequestBuilder eventsBuilder;
+
     public GroovyEventDecoder() {
 	super(LifecycleComponentType.DeviceEventDecoder);
     }
@@ -62,18 +68,14 @@ public class GroovyEventDecoder extends TenantLifecycleComponent implements IDev
 	try {
 	    Binding binding = new Binding();
 	    List<IDecodedDeviceRequest<?>> events = new ArrayList<IDecodedDeviceRequest<?>>();
-	    binding.setVariable(IGroovyVariables.VAR_DEVICE_MANAGEMENT_BUILDER,
-		    new DeviceManagementRequestBuilder(SiteWhere.getServer().getDeviceManagement(getTenant())));
-	    binding.setVariable(IGroovyVariables.VAR_EVENT_MANAGEMENT_BUILDER,
-		    new DeviceEventRequestBuilder(SiteWhere.getServer().getDeviceManagement(getTenant()),
-			    SiteWhere.getServer().getDeviceEventManagement(getTenant())));
+	    binding.setVariable(IGroovyVariables.VAR_DEVICE_MANAGEMENT_BUILDER, deviceBuilder);
+	    binding.setVariable(IGroovyVariables.VAR_EVENT_MANAGEMENT_BUILDER, eventsBuilder);
 	    binding.setVariable(IGroovyVariables.VAR_DECODED_EVENTS, events);
 	    binding.setVariable(IGroovyVariables.VAR_PAYLOAD, payload);
 	    binding.setVariable(IGroovyVariables.VAR_PAYLOAD_METADATA, metadata);
 	    binding.setVariable(IGroovyVariables.VAR_LOGGER, LOGGER);
 	    LOGGER.debug("About to execute '" + getScriptPath() + "' with payload: " + payload);
-	    SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).getGroovyScriptEngine().run(getScriptPath(),
-		    binding);
+	    SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).run(getScriptPath(), binding);
 	    return (List<IDecodedDeviceRequest<?>>) binding.getVariable(IGroovyVariables.VAR_DECODED_EVENTS);
 	} catch (ResourceException e) {
 	    throw new EventDecodeException("Unable to access Groovy decoder script.", e);
@@ -94,6 +96,9 @@ public class GroovyEventDecoder extends TenantLifecycleComponent implements IDev
      */
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	this.deviceBuilder = new DeviceManagementRequestBuilder(SiteWhere.getServer().getDeviceManagement(getTenant()));
+	this.eventsBuilder = new DeviceEventRequestBuilder(SiteWhere.getServer().getDeviceManagement(getTenant()),
+		SiteWhere.getServer().getDeviceEventManagement(getTenant()));
     }
 
     /*
@@ -64,8 +64,7 @@ public class GroovyJsonDecoder extends TenantLifecycleComponent implements IDevi
 	    binding.setVariable(IGroovyVariables.VAR_PAYLOAD, payload);
 	    binding.setVariable(IGroovyVariables.VAR_LOGGER, LOGGER);
 	    LOGGER.debug("About to execute '" + getScriptPath() + "' with payload: " + payload);
-	    SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).getGroovyScriptEngine().run(getScriptPath(),
-		    binding);
+	    SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).run(getScriptPath(), binding);
 	    return (List<IDecodedDeviceRequest<?>>) binding.getVariable(IGroovyVariables.VAR_DECODED_EVENTS);
 	} catch (ResourceException e) {
 	    throw new EventDecodeException("Unable to access Groovy decoder script.", e);
@@ -56,8 +56,7 @@ public class GroovyParameterExtractor<T> extends TenantLifecycleComponent
 	    binding.setVariable(IGroovyVariables.VAR_NESTING_CONTEXT, nesting);
 	    binding.setVariable(IGroovyVariables.VAR_ASSIGNMENT, assignment);
 	    binding.setVariable(IGroovyVariables.VAR_LOGGER, LOGGER);
-	    return (T) SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).getGroovyScriptEngine()
-		    .run(getScriptPath(), binding);
+	    return (T) SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).run(getScriptPath(), binding);
 	} catch (ResourceException e) {
 	    throw new EventDecodeException("Unable to access Groovy decoder script.", e);
 	} catch (ScriptException e) {
@@ -59,8 +59,7 @@ public class GroovyStringCommandExecutionEncoder extends TenantLifecycleComponen
 	    binding.setVariable(IGroovyVariables.VAR_NESTING_CONTEXT, nested);
 	    binding.setVariable(IGroovyVariables.VAR_ASSIGNMENT, assignment);
 	    binding.setVariable(IGroovyVariables.VAR_LOGGER, LOGGER);
-	    return (String) SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).getGroovyScriptEngine()
-		    .run(getScriptPath(), binding);
+	    return (String) SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).run(getScriptPath(), binding);
 	} catch (ResourceException e) {
 	    throw new EventDecodeException("Unable to access Groovy decoder script.", e);
 	} catch (ScriptException e) {
@@ -59,7 +59,7 @@ public class GroovyMessageMetadataExtractor extends TenantLifecycleComponent
 	    binding.setVariable(IGroovyVariables.VAR_LOGGER, LOGGER);
 	    LOGGER.debug("About to execute '" + getScriptPath() + "' with payload: " + payload);
 	    return (IMessageMetadata<byte[]>) SiteWhere.getServer().getTenantGroovyConfiguration(getTenant())
-		    .getGroovyScriptEngine().run(getScriptPath(), binding);
+		    .run(getScriptPath(), binding);
 	} catch (ResourceException e) {
 	    throw new EventDecodeException("Unable to access Groovy metadata extractor script.", e);
 	} catch (ScriptException e) {
@@ -20,6 +20,8 @@ import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.communication.EventDecodeException;
 import com.sitewhere.spi.device.communication.IDecodedDeviceRequest;
 import com.sitewhere.spi.device.communication.IDeviceEventDeduplicator;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 import groovy.lang.Binding;
@@ -41,10 +43,29 @@ public class GroovyEventDeduplicator extends TenantLifecycleComponent implements
     /** Path to script used for decoder */
     private String scriptPath;
 
+    /** Supports building device management entities */
+    private DeviceManagementRequestBuilder deviceBuilder;
+
+    /** Supports building various types of device events */
+    private DeviceEventRequestBuilder eventsBuilder;
+
     public GroovyEventDeduplicator() {
 	super(LifecycleComponentType.DeviceEventDeduplicator);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start(com.
+     * sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	this.deviceBuilder = new DeviceManagementRequestBuilder(SiteWhere.getServer().getDeviceManagement(getTenant()));
+	this.eventsBuilder = new DeviceEventRequestBuilder(SiteWhere.getServer().getDeviceManagement(getTenant()),
+		SiteWhere.getServer().getDeviceEventManagement(getTenant()));
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -55,16 +76,13 @@ public class GroovyEventDeduplicator extends TenantLifecycleComponent implements
     public boolean isDuplicate(IDecodedDeviceRequest<?> request) throws SiteWhereException {
 	try {
 	    Binding binding = new Binding();
-	    binding.setVariable(IGroovyVariables.VAR_DEVICE_MANAGEMENT_BUILDER,
-		    new DeviceManagementRequestBuilder(SiteWhere.getServer().getDeviceManagement(getTenant())));
-	    binding.setVariable(IGroovyVariables.VAR_EVENT_MANAGEMENT_BUILDER,
-		    new DeviceEventRequestBuilder(SiteWhere.getServer().getDeviceManagement(getTenant()),
-			    SiteWhere.getServer().getDeviceEventManagement(getTenant())));
+	    binding.setVariable(IGroovyVariables.VAR_DEVICE_MANAGEMENT_BUILDER, deviceBuilder);
+	    binding.setVariable(IGroovyVariables.VAR_EVENT_MANAGEMENT_BUILDER, eventsBuilder);
 	    binding.setVariable(IGroovyVariables.VAR_DECODED_DEVICE_REQUEST, request);
 	    binding.setVariable(IGroovyVariables.VAR_LOGGER, LOGGER);
 	    LOGGER.debug("About to execute '" + getScriptPath() + "' for event request: " + request);
 	    Boolean isDuplicate = (Boolean) SiteWhere.getServer().getTenantGroovyConfiguration(getTenant())
-		    .getGroovyScriptEngine().run(getScriptPath(), binding);
+		    .run(getScriptPath(), binding);
 	    return isDuplicate;
 	} catch (ResourceException e) {
 	    throw new EventDecodeException("Unable to access Groovy deduplicator script.", e);
@@ -77,6 +95,16 @@ public class GroovyEventDeduplicator extends TenantLifecycleComponent implements
 	}
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.communication.IDeviceEventDeduplicator#
+     * onEventPersisted(com.sitewhere.spi.device.event.IDeviceEvent)
+     */
+    @Override
+    public void onEventPersisted(IDeviceEvent event) throws SiteWhereException {
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -151,8 +151,7 @@ public class GroovyEventProcessor extends FilteredOutboundEventProcessor {
 	binding.setVariable("eventBuilder", eventsBuilder);
 
 	try {
-	    SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).getGroovyScriptEngine().run(getScriptPath(),
-		    binding);
+	    SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).run(getScriptPath(), binding);
 	} catch (ResourceException e) {
 	    throw new SiteWhereException("Unable to access Groovy script. " + e.getMessage(), e);
 	} catch (ScriptException e) {
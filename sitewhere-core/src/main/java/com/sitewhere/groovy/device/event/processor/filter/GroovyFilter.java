@@ -74,8 +74,7 @@ public class GroovyFilter extends DeviceEventFilter {
 	binding.setVariable("assignment", assignment);
 
 	try {
-	    Object result = SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).getGroovyScriptEngine()
-		    .run(getScriptPath(), binding);
+	    Object result = SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).run(getScriptPath(), binding);
 	    if (!(result instanceof Boolean)) {
 		throw new SiteWhereException("Groovy filter script returned non-boolean result.");
 	    }
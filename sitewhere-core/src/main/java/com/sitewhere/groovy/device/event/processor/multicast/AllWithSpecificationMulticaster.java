@@ -9,33 +9,30 @@ package com.sitewhere.groovy.device.event.processor.multicast;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.sitewhere.SiteWhere;
-import com.sitewhere.rest.model.search.device.DeviceSearchCriteria;
+import com.sitewhere.device.SpecificationDeviceIndex;
 import com.sitewhere.server.lifecycle.TenantLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
-import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.processor.multicast.IDeviceEventMulticaster;
-import com.sitewhere.spi.search.ISearchResults;
+import com.sitewhere.spi.server.groovy.ITenantGroovyConfiguration;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
-import com.sitewhere.spi.tenant.ITenant;
 
 import groovy.lang.Binding;
 import groovy.util.ResourceException;
 import groovy.util.ScriptException;
 
 /**
- * Routes events to all devices that use a given specification. The list of
- * devices is cached and refreshed at an interval to improve performance.
+ * Routes events to all devices that use a given specification. Devices are
+ * read from the {@link SpecificationDeviceIndex}, which is kept current as
+ * devices and assignments change.
  * 
  * @author Derek
  *
@@ -47,21 +44,12 @@ public abstract class AllWithSpecificationMulticaster<T> extends TenantLifecycle
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
-    /** Interval between refreshing list of devices with specification */
-    private static final long REFRESH_INTERVAL_SECS = 60;
-
     /** Token for specification */
     private String specificationToken;
 
     /** Path to filtering script */
     private String scriptPath;
 
-    /** Executor for refresh thread */
-    private ExecutorService executor;
-
-    /** Cached list of matches that determine routes */
-    private List<IDevice> matches = new ArrayList<IDevice>();
-
     public AllWithSpecificationMulticaster() {
 	super(LifecycleComponentType.OutboundEventProcessorFilter);
     }
@@ -78,8 +66,9 @@ public abstract class AllWithSpecificationMulticaster<T> extends TenantLifecycle
 	if (getSpecificationToken() == null) {
 	    throw new RuntimeException("No specification token supplied.");
 	}
-	executor = Executors.newSingleThreadExecutor();
-	executor.execute(new UpdateThread());
+
+	// Load devices for specification before the first event is routed.
+	SpecificationDeviceIndex.getInstance(getTenant()).getTargets(getSpecificationToken());
     }
 
     /*
@@ -93,10 +82,12 @@ public abstract class AllWithSpecificationMulticaster<T> extends TenantLifecycle
     public List<T> calculateRoutes(IDeviceEvent event, IDevice device, IDeviceAssignment assignment)
 	    throws SiteWhereException {
 	List<T> routes = new ArrayList<T>();
-	IDeviceManagement dm = SiteWhere.getServer().getDeviceManagement(getTenant());
-	for (IDevice targetDevice : matches) {
+	ITenantGroovyConfiguration groovy = SiteWhere.getServer().getTenantGroovyConfiguration(getTenant());
+	for (SpecificationDeviceIndex.Target target : SpecificationDeviceIndex.getInstance(getTenant())
+		.getTargets(getSpecificationToken())) {
 	    if (getScriptPath() != null) {
-		IDeviceAssignment targetAssignment = dm.getDeviceAssignmentByToken(targetDevice.getAssignmentToken());
+		IDevice targetDevice = target.getDevice();
+		IDeviceAssignment targetAssignment = target.getAssignment();
 		Binding binding = new Binding();
 		binding.setVariable("logger", getLogger());
 		binding.setVariable("event", event);
@@ -107,8 +98,7 @@ public abstract class AllWithSpecificationMulticaster<T> extends TenantLifecycle
 		    binding.setVariable("targetDevice", targetDevice);
 		}
 		try {
-		    Object result = SiteWhere.getServer().getTenantGroovyConfiguration(getTenant())
-			    .getGroovyScriptEngine().run(getScriptPath(), binding);
+		    Object result = groovy.run(getScriptPath(), binding);
 		    if (result != null) {
 			routes.add(convertRoute(result));
 		    }
@@ -156,35 +146,4 @@ public abstract class AllWithSpecificationMulticaster<T> extends TenantLifecycle
     public void setScriptPath(String scriptPath) {
 	this.scriptPath = scriptPath;
     }
-
-    /**
-     * Thread that updates the list of devices with specification.
-     * 
-     * @author Derek
-     */
-    private class UpdateThread implements Runnable {
-
-	@Override
-	public void run() {
-	    while (true) {
-		try {
-		    ITenant tenant = AllWithSpecificationMulticaster.this.getTenant();
-		    String token = AllWithSpecificationMulticaster.this.getSpecificationToken();
-		    DeviceSearchCriteria criteria = new DeviceSearchCriteria(token, null, false, 1, 0, null, null);
-		    ISearchResults<IDevice> results = SiteWhere.getServer().getDeviceManagement(tenant)
-			    .listDevices(false, criteria);
-		    matches = results.getResults();
-		    LOGGER.debug("Found " + matches.size() + " matches for routing.");
-		} catch (SiteWhereException e) {
-		    LOGGER.error("Unable to list devices for specification.", e);
-		}
-		try {
-		    Thread.sleep(REFRESH_INTERVAL_SECS * 1000);
-		} catch (InterruptedException e) {
-		    LOGGER.info("Update thread shutting down.");
-		    return;
-		}
-	    }
-	}
-    }
 }
\ No newline at end of file
@@ -57,8 +57,7 @@ public class GroovyRouteBuilder extends TenantLifecycleComponent implements IRou
 	binding.setVariable("device", device);
 	binding.setVariable("assignment", assignment);
 	try {
-	    Object result = SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).getGroovyScriptEngine()
-		    .run(getScriptPath(), binding);
+	    Object result = SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).run(getScriptPath(), binding);
 	    if (!(result instanceof String)) {
 		throw new SiteWhereException("Groovy route builder expected script to return a String.");
 	    }
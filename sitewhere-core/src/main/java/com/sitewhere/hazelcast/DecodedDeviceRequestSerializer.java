@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hazelcast;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import com.sitewhere.rest.model.device.communication.DecodedDeviceRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceCommandResponseCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceEventCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceStreamDataCreateRequest;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.device.event.AlertSource;
+
+/**
+ * Hazelcast {@link StreamSerializer} for {@link DecodedDeviceRequest} passed
+ * between instances on the inbound event queue. The common event request types
+ * are written field by field behind a one byte tag rather than with Java
+ * serialization. Any other request type is delegated to Hazelcast's default
+ * handling.
+ * 
+ * @author Derek
+ */
+@SuppressWarnings("rawtypes")
+public class DecodedDeviceRequestSerializer implements StreamSerializer<DecodedDeviceRequest> {
+
+    /** Unique type id for serializer */
+    public static final int TYPE_ID = 1001;
+
+    /** Tag for a missing request */
+    private static final byte TAG_NULL = 0;
+
+    /** Tag for measurements */
+    private static final byte TAG_MEASUREMENTS = 1;
+
+    /** Tag for location */
+    private static final byte TAG_LOCATION = 2;
+
+    /** Tag for alert */
+    private static final byte TAG_ALERT = 3;
+
+    /** Tag for command response */
+    private static final byte TAG_COMMAND_RESPONSE = 4;
+
+    /** Tag for stream data */
+    private static final byte TAG_STREAM_DATA = 5;
+
+    /** Tag for request written by default serialization */
+    private static final byte TAG_OBJECT = 127;
+
+    /**
+     * Register the serializer with a Hazelcast serialization configuration.
+     * Every member sharing the queue must register it.
+     * 
+     * @param serial
+     */
+    public static void register(SerializationConfig serial) {
+	SerializerConfig config = new SerializerConfig();
+	config.setTypeClass(DecodedDeviceRequest.class);
+	config.setImplementation(new DecodedDeviceRequestSerializer());
+	serial.addSerializerConfig(config);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.hazelcast.nio.serialization.StreamSerializer#write(com.hazelcast.
+     * nio.ObjectDataOutput, java.lang.Object)
+     */
+    @Override
+    public void write(ObjectDataOutput out, DecodedDeviceRequest decoded) throws IOException {
+	out.writeUTF(decoded.getHardwareId());
+	out.writeUTF(decoded.getOriginator());
+	Object request = decoded.getRequest();
+	if (request == null) {
+	    out.writeByte(TAG_NULL);
+	} else if (request.getClass() == DeviceMeasurementsCreateRequest.class) {
+	    DeviceMeasurementsCreateRequest mxs = (DeviceMeasurementsCreateRequest) request;
+	    out.writeByte(TAG_MEASUREMENTS);
+	    writeEventFields(out, mxs);
+	    Map<String, Double> measurements = mxs.getMeasurements();
+	    out.writeInt(measurements.size());
+	    for (Map.Entry<String, Double> entry : measurements.entrySet()) {
+		out.writeUTF(entry.getKey());
+		writeDouble(out, entry.getValue());
+	    }
+	} else if (request.getClass() == DeviceLocationCreateRequest.class) {
+	    DeviceLocationCreateRequest location = (DeviceLocationCreateRequest) request;
+	    out.writeByte(TAG_LOCATION);
+	    writeEventFields(out, location);
+	    writeDouble(out, location.getLatitude());
+	    writeDouble(out, location.getLongitude());
+	    writeDouble(out, location.getElevation());
+	} else if (request.getClass() == DeviceAlertCreateRequest.class) {
+	    DeviceAlertCreateRequest alert = (DeviceAlertCreateRequest) request;
+	    out.writeByte(TAG_ALERT);
+	    writeEventFields(out, alert);
+	    out.writeUTF((alert.getSource() != null) ? alert.getSource().name() : null);
+	    out.writeUTF((alert.getLevel() != null) ? alert.getLevel().name() : null);
+	    out.writeUTF(alert.getType());
+	    out.writeUTF(alert.getMessage());
+	} else if (request.getClass() == DeviceCommandResponseCreateRequest.class) {
+	    DeviceCommandResponseCreateRequest response = (DeviceCommandResponseCreateRequest) request;
+	    out.writeByte(TAG_COMMAND_RESPONSE);
+	    writeEventFields(out, response);
+	    out.writeUTF(response.getOriginatingEventId());
+	    out.writeUTF(response.getResponseEventId());
+	    out.writeUTF(response.getResponse());
+	} else if (request.getClass() == DeviceStreamDataCreateRequest.class) {
+	    DeviceStreamDataCreateRequest data = (DeviceStreamDataCreateRequest) request;
+	    out.writeByte(TAG_STREAM_DATA);
+	    writeEventFields(out, data);
+	    out.writeUTF(data.getStreamId());
+	    out.writeLong(data.getSequenceNumber());
+	    out.writeByteArray(data.getData());
+	} else {
+	    out.writeByte(TAG_OBJECT);
+	    out.writeObject(request);
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.hazelcast.nio.serialization.StreamSerializer#read(com.hazelcast.
+     * nio.ObjectDataInput)
+     */
+    @Override
+    public DecodedDeviceRequest read(ObjectDataInput in) throws IOException {
+	DecodedDeviceRequest<Object> decoded = new DecodedDeviceRequest<Object>();
+	decoded.setHardwareId(in.readUTF());
+	decoded.setOriginator(in.readUTF());
+	byte tag = in.readByte();
+	switch (tag) {
+	case TAG_NULL: {
+	    break;
+	}
+	case TAG_MEASUREMENTS: {
+	    DeviceMeasurementsCreateRequest mxs = new DeviceMeasurementsCreateRequest();
+	    readEventFields(in, mxs);
+	    int count = in.readInt();
+	    for (int i = 0; i < count; i++) {
+		mxs.addOrReplaceMeasurement(in.readUTF(), readDouble(in));
+	    }
+	    decoded.setRequest(mxs);
+	    break;
+	}
+	case TAG_LOCATION: {
+	    DeviceLocationCreateRequest location = new DeviceLocationCreateRequest();
+	    readEventFields(in, location);
+	    location.setLatitude(readDouble(in));
+	    location.setLongitude(readDouble(in));
+	    location.setElevation(readDouble(in));
+	    decoded.setRequest(location);
+	    break;
+	}
+	case TAG_ALERT: {
+	    DeviceAlertCreateRequest alert = new DeviceAlertCreateRequest();
+	    readEventFields(in, alert);
+	    String source = in.readUTF();
+	    alert.setSource((source != null) ? AlertSource.valueOf(source) : null);
+	    String level = in.readUTF();
+	    alert.setLevel((level != null) ? AlertLevel.valueOf(level) : null);
+	    alert.setType(in.readUTF());
+	    alert.setMessage(in.readUTF());
+	    decoded.setRequest(alert);
+	    break;
+	}
+	case TAG_COMMAND_RESPONSE: {
+	    DeviceCommandResponseCreateRequest response = new DeviceCommandResponseCreateRequest();
+	    readEventFields(in, response);
+	    response.setOriginatingEventId(in.readUTF());
+	    response.setResponseEventId(in.readUTF());
+	    response.setResponse(in.readUTF());
+	    decoded.setRequest(response);
+	    break;
+	}
+	case TAG_STREAM_DATA: {
+	    DeviceStreamDataCreateRequest data = new DeviceStreamDataCreateRequest();
+	    readEventFields(in, data);
+	    data.setStreamId(in.readUTF());
+	    data.setSequenceNumber(in.readLong());
+	    data.setData(in.readByteArray());
+	    decoded.setRequest(data);
+	    break;
+	}
+	case TAG_OBJECT: {
+	    decoded.setRequest(in.readObject());
+	    break;
+	}
+	default: {
+	    throw new IOException("Unknown decoded request tag: " + tag);
+	}
+	}
+	return decoded;
+    }
+
+    /**
+     * Write fields common to all event create requests.
+     * 
+     * @param out
+     * @param request
+     * @throws IOException
+     */
+    protected void writeEventFields(ObjectDataOutput out, DeviceEventCreateRequest request) throws IOException {
+	out.writeUTF(request.getAlternateId());
+	out.writeLong((request.getEventDate() != null) ? request.getEventDate().getTime() : Long.MIN_VALUE);
+	out.writeBoolean(request.isUpdateState());
+	Map<String, String> metadata = request.getMetadata();
+	out.writeInt((metadata != null) ? metadata.size() : -1);
+	if (metadata != null) {
+	    for (Map.Entry<String, String> entry : metadata.entrySet()) {
+		out.writeUTF(entry.getKey());
+		out.writeUTF(entry.getValue());
+	    }
+	}
+    }
+
+    /**
+     * Read fields common to all event create requests.
+     * 
+     * @param in
+     * @param request
+     * @throws IOException
+     */
+    protected void readEventFields(ObjectDataInput in, DeviceEventCreateRequest request) throws IOException {
+	request.setAlternateId(in.readUTF());
+	long eventDate = in.readLong();
+	request.setEventDate((eventDate != Long.MIN_VALUE) ? new Date(eventDate) : null);
+	request.setUpdateState(in.readBoolean());
+	int count = in.readInt();
+	if (count >= 0) {
+	    Map<String, String> metadata = new HashMap<String, String>();
+	    for (int i = 0; i < count; i++) {
+		metadata.put(in.readUTF(), in.readUTF());
+	    }
+	    request.setMetadata(metadata);
+	} else {
+	    request.setMetadata(null);
+	}
+    }
+
+    /**
+     * Write a value that may be null.
+     * 
+     * @param out
+     * @param value
+     * @throws IOException
+     */
+    protected void writeDouble(ObjectDataOutput out, Double value) throws IOException {
+	out.writeBoolean(value != null);
+	if (value != null) {
+	    out.writeDouble(value);
+	}
+    }
+
+    /**
+     * Read a value that may be null.
+     * 
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    protected Double readDouble(ObjectDataInput in) throws IOException {
+	return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.hazelcast.nio.serialization.Serializer#getTypeId()
+     */
+    @Override
+    public int getTypeId() {
+	return TYPE_ID;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.hazelcast.nio.serialization.Serializer#destroy()
+     */
+    @Override
+    public void destroy() {
+    }
+}
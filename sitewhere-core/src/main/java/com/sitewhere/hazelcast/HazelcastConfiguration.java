@@ -152,7 +152,7 @@ public class HazelcastConfiguration extends LifecycleComponent implements IHazel
 	    serial = new SerializationConfig();
 	    config.setSerializationConfig(serial);
 	}
-	config.setSerializationConfig(null);
+	DecodedDeviceRequestSerializer.register(serial);
     }
 
     /**
@@ -7,14 +7,18 @@
  */
 package com.sitewhere.hazelcast;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.hazelcast.core.HazelcastInstanceNotActiveException;
 import com.hazelcast.core.IQueue;
 import com.sitewhere.SiteWhere;
 import com.sitewhere.device.communication.EventProcessingLogic;
@@ -27,7 +31,11 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Implementation of {@link IInboundEventReceiver} that reads events from a
- * Hazelcast queue and pushes them into the processing pipeline.
+ * Hazelcast queue and pushes them into the processing pipeline. Each consumer
+ * thread drains up to a batch of events per queue operation. A single consumer
+ * thread is used by default so that events for a device are processed in the
+ * order they were queued. With more than one consumer thread that order is not
+ * guaranteed.
  * 
  * @author Derek
  */
@@ -45,6 +53,12 @@ public class HazelcastQueueReceiver extends InboundEventReceiver<DecodedDeviceRe
     /** Name of Hazelcast queue to listen on */
     private String queueName = ISiteWhereHazelcast.QUEUE_ALL_EVENTS;
 
+    /** Number of threads consuming from the queue */
+    private int numThreads = 1;
+
+    /** Maximum number of events taken from the queue at once */
+    private int batchSize = 100;
+
     /*
      * (non-Javadoc)
      * 
@@ -57,8 +71,10 @@ public class HazelcastQueueReceiver extends InboundEventReceiver<DecodedDeviceRe
 	this.eventQueue = SiteWhere.getServer().getHazelcastConfiguration().getHazelcastInstance()
 		.getQueue(getQueueName());
 	LOGGER.info("Receiver listening for events on Hazelcast queue: " + getQueueName());
-	this.executor = Executors.newSingleThreadExecutor(new ProcessorsThreadFactory());
-	executor.submit(new HazelcastQueueProcessor());
+	this.executor = Executors.newFixedThreadPool(getNumThreads(), new ProcessorsThreadFactory());
+	for (int i = 0; i < getNumThreads(); i++) {
+	    executor.submit(new HazelcastQueueProcessor());
+	}
     }
 
     /*
@@ -85,14 +101,33 @@ public class HazelcastQueueReceiver extends InboundEventReceiver<DecodedDeviceRe
 
 	@Override
 	public void run() {
+	    List<DecodedDeviceRequest<?>> batch = new ArrayList<DecodedDeviceRequest<?>>(getBatchSize());
 	    while (true) {
 		try {
-		    DecodedDeviceRequest<?> payload = getEventQueue().take();
-		    EventProcessingLogic.processRawPayload(HazelcastQueueReceiver.this, payload, null);
-		    LOGGER.debug("Processed event from " + payload.getHardwareId() + " from Hazelcast event queue.");
+		    DecodedDeviceRequest<?> first = getEventQueue().poll(1, TimeUnit.SECONDS);
+		    if (first == null) {
+			continue;
+		    }
+		    batch.add(first);
+		    if (getBatchSize() > 1) {
+			getEventQueue().drainTo(batch, getBatchSize() - 1);
+		    }
+		    for (DecodedDeviceRequest<?> payload : batch) {
+			try {
+			    EventProcessingLogic.processRawPayload(HazelcastQueueReceiver.this, payload, null);
+			} catch (RuntimeException e) {
+			    LOGGER.error("Unable to process event from " + payload.getHardwareId() + ".", e);
+			}
+		    }
+		    LOGGER.debug("Processed " + batch.size() + " events from Hazelcast event queue.");
 		} catch (InterruptedException e) {
 		    LOGGER.warn("Hazelcast queue processor interrupted.");
 		    return;
+		} catch (HazelcastInstanceNotActiveException e) {
+		    LOGGER.warn("Hazelcast instance shut down. Stopping queue processor.");
+		    return;
+		} finally {
+		    batch.clear();
 		}
 	    }
 	}
@@ -146,4 +181,20 @@ public class HazelcastQueueReceiver extends InboundEventReceiver<DecodedDeviceRe
     public void setQueueName(String queueName) {
 	this.queueName = queueName;
     }
+
+    public int getNumThreads() {
+	return numThreads;
+    }
+
+    public void setNumThreads(int numThreads) {
+	this.numThreads = numThreads;
+    }
+
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+	this.batchSize = batchSize;
+    }
 }
\ No newline at end of file
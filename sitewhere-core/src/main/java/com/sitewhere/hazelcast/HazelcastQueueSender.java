@@ -7,10 +7,22 @@
  */
 package com.sitewhere.hazelcast;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.hazelcast.core.HazelcastInstanceNotActiveException;
 import com.hazelcast.core.IQueue;
+import com.hazelcast.nio.serialization.HazelcastSerializationException;
 import com.sitewhere.SiteWhere;
 import com.sitewhere.device.event.processor.InboundEventProcessor;
 import com.sitewhere.rest.model.device.communication.DecodedDeviceRequest;
@@ -27,7 +39,12 @@ import com.sitewhere.spi.server.hazelcast.ISiteWhereHazelcast;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
- * Sends all events to a Hazelcast queue.
+ * Sends all events to a Hazelcast queue. Events are buffered locally and moved
+ * to the distributed queue in batches by a separate thread so that each
+ * network round trip carries many events. Setting the batch size to one puts
+ * each event on the queue directly from the calling thread. A batch that fails
+ * to send is kept and retried with backoff, one event at a time, so that the
+ * events are not lost.
  * 
  * @author Derek
  */
@@ -36,12 +53,33 @@ public class HazelcastQueueSender extends InboundEventProcessor {
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Delay before first retry of a failed batch */
+    private static final long INITIAL_RETRY_DELAY_MS = 500;
+
+    /** Longest delay between retries of a failed batch */
+    private static final long MAX_RETRY_DELAY_MS = 30 * 1000;
+
     /** Queue of events to be processed */
     private IQueue<DecodedDeviceRequest<?>> eventQueue;
 
     /** Name of Hazelcast queue receiving events */
     private String queueName = ISiteWhereHazelcast.QUEUE_ALL_EVENTS;
 
+    /** Maximum number of events added to the Hazelcast queue at once */
+    private int batchSize = 100;
+
+    /** Maximum number of events waiting to be sent before callers block */
+    private int maxBufferSize = 10000;
+
+    /** Events waiting to be sent */
+    private BlockingQueue<DecodedDeviceRequest<?>> buffer;
+
+    /** Runs the thread that moves batches to the Hazelcast queue */
+    private ExecutorService executor;
+
+    /** Indicates sender is stopping */
+    private volatile boolean stopping;
+
     /*
      * (non-Javadoc)
      * 
@@ -54,6 +92,37 @@ public class HazelcastQueueSender extends InboundEventProcessor {
 	this.eventQueue = SiteWhere.getServer().getHazelcastConfiguration().getHazelcastInstance()
 		.getQueue(getQueueName());
 	LOGGER.info("Sender posting events to Hazelcast queue: " + getQueueName());
+	if (getBatchSize() > 1) {
+	    this.stopping = false;
+	    this.buffer = new LinkedBlockingQueue<DecodedDeviceRequest<?>>(getMaxBufferSize());
+	    this.executor = Executors.newSingleThreadExecutor(new SenderThreadFactory());
+	    executor.submit(new BatchTransfer());
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponent#stop(com.sitewhere.spi.
+     * server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (executor != null) {
+	    stopping = true;
+	    executor.shutdown();
+	    try {
+		if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+		    LOGGER.warn("Timed out sending buffered events. " + buffer.size() + " events were not sent.");
+		    executor.shutdownNow();
+		}
+	    } catch (InterruptedException e) {
+		executor.shutdownNow();
+		Thread.currentThread().interrupt();
+	    }
+	}
+	this.executor = null;
     }
 
     /*
@@ -169,12 +238,102 @@ public class HazelcastQueueSender extends InboundEventProcessor {
      */
     protected void queueEvent(DecodedDeviceRequest<?> decoded) throws SiteWhereException {
 	try {
-	    getEventQueue().put(decoded);
+	    if (executor != null) {
+		buffer.put(decoded);
+	    } else {
+		getEventQueue().put(decoded);
+	    }
 	} catch (InterruptedException e) {
 	    LOGGER.warn("Interrupted while putting event on queue.", e);
 	}
     }
 
+    /**
+     * Add a batch of events to the Hazelcast queue, removing events from the
+     * batch once they are on the queue. If the queue does not have capacity
+     * for the whole batch or the batch is being retried, events are added one
+     * at a time, waiting for space as needed. Events that can not be
+     * serialized are dropped.
+     * 
+     * @param batch
+     * @param retrying
+     * @throws InterruptedException
+     */
+    protected void sendBatch(List<DecodedDeviceRequest<?>> batch, boolean retrying) throws InterruptedException {
+	if ((batch.size() > 1) && (!retrying) && (getEventQueue().addAll(batch))) {
+	    batch.clear();
+	    return;
+	}
+	Iterator<DecodedDeviceRequest<?>> it = batch.iterator();
+	while (it.hasNext()) {
+	    DecodedDeviceRequest<?> decoded = it.next();
+	    try {
+		getEventQueue().put(decoded);
+	    } catch (HazelcastSerializationException e) {
+		LOGGER.error("Dropping event for '" + decoded.getHardwareId() + "' that could not be serialized.", e);
+	    }
+	    it.remove();
+	}
+    }
+
+    /**
+     * Moves buffered events to the Hazelcast queue in batches.
+     * 
+     * @author Derek
+     */
+    private class BatchTransfer implements Runnable {
+
+	@Override
+	public void run() {
+	    List<DecodedDeviceRequest<?>> batch = new ArrayList<DecodedDeviceRequest<?>>(getBatchSize());
+	    long retryDelay = 0;
+	    while (true) {
+		try {
+		    if (batch.isEmpty()) {
+			DecodedDeviceRequest<?> first = buffer.poll(100, TimeUnit.MILLISECONDS);
+			if (first == null) {
+			    if (stopping) {
+				return;
+			    }
+			    continue;
+			}
+			batch.add(first);
+			buffer.drainTo(batch, getBatchSize() - 1);
+		    }
+		    int size = batch.size();
+		    sendBatch(batch, retryDelay > 0);
+		    retryDelay = 0;
+		    LOGGER.debug("Sent batch of " + size + " events to Hazelcast queue.");
+		} catch (InterruptedException e) {
+		    LOGGER.warn("Hazelcast queue sender interrupted. Dropping " + batch.size() + " events.");
+		    return;
+		} catch (HazelcastInstanceNotActiveException e) {
+		    LOGGER.warn("Hazelcast instance shut down. Dropping " + batch.size() + " events.");
+		    return;
+		} catch (Throwable e) {
+		    retryDelay = (retryDelay == 0) ? INITIAL_RETRY_DELAY_MS
+			    : Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+		    LOGGER.error("Unable to send " + batch.size() + " events to Hazelcast queue. Retrying in "
+			    + retryDelay + "ms.", e);
+		    try {
+			Thread.sleep(retryDelay);
+		    } catch (InterruptedException ie) {
+			LOGGER.warn("Hazelcast queue sender interrupted. Dropping " + batch.size() + " events.");
+			return;
+		    }
+		}
+	    }
+	}
+    }
+
+    /** Used for naming sender thread */
+    private class SenderThreadFactory implements ThreadFactory {
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere Hazelcast(" + getQueueName() + ") Sender");
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -200,4 +359,20 @@ public class HazelcastQueueSender extends InboundEventProcessor {
     public void setQueueName(String queueName) {
 	this.queueName = queueName;
     }
+
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+	this.batchSize = batchSize;
+    }
+
+    public int getMaxBufferSize() {
+	return maxBufferSize;
+    }
+
+    public void setMaxBufferSize(int maxBufferSize) {
+	this.maxBufferSize = maxBufferSize;
+    }
 }
\ No newline at end of file
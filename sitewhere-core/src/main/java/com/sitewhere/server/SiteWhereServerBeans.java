@@ -24,6 +24,9 @@ public interface SiteWhereServerBeans {
     /** Bean id for version checker */
     public static final String BEAN_VERSION_CHECK = "versionChecker";
 
+    /** Bean id for tenant Groovy configuration */
+    public static final String BEAN_GROOVY_CONFIGURATION = "groovyConfiguration";
+
     /*************************
      * MANAGEMENT INTERFACES *
      *************************/
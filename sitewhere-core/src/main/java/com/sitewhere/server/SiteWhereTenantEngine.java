@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -27,6 +28,9 @@ import com.sitewhere.configuration.ConfigurationUtils;
 import com.sitewhere.configuration.ResourceManagerTenantConfigurationResolver;
 import com.sitewhere.device.DeviceEventManagementTriggers;
 import com.sitewhere.device.DeviceManagementTriggers;
+import com.sitewhere.device.SpecificationDeviceIndex;
+import com.sitewhere.device.group.DeviceGroupIndex;
+import com.sitewhere.geospatial.ZoneIndex;
 import com.sitewhere.groovy.asset.GroovyAssetModelInitializer;
 import com.sitewhere.groovy.configuration.TenantGroovyConfiguration;
 import com.sitewhere.groovy.device.GroovyDeviceModelInitializer;
@@ -159,6 +163,9 @@ public class SiteWhereTenantEngine extends TenantLifecycleComponent implements I
     /** Threads used to issue engine commands */
     private ExecutorService commandExecutor = Executors.newSingleThreadExecutor();
 
+    /** Hooks run when the engine is stopped */
+    private List<Runnable> stopHooks = new CopyOnWriteArrayList<Runnable>();
+
     public SiteWhereTenantEngine(ITenant tenant, ApplicationContext parent, IGlobalConfigurationResolver global) {
 	super(LifecycleComponentType.TenantEngine);
 	setTenant(tenant);
@@ -439,6 +446,25 @@ public class SiteWhereTenantEngine extends TenantLifecycleComponent implements I
 	// Stop core management implementations.
 	stopManagementServices(stop);
 
+	// Release indexes and other resources built for the tenant.
+	stop.addStep(new SimpleLifecycleStep("Released tenant resources") {
+
+	    @Override
+	    public void execute(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+		SpecificationDeviceIndex.release(getTenant());
+		DeviceGroupIndex.release(getTenant());
+		ZoneIndex.release(getTenant());
+		for (Runnable hook : stopHooks) {
+		    stopHooks.remove(hook);
+		    try {
+			hook.run();
+		    } catch (Throwable t) {
+			LOGGER.error("Tenant stop hook failed.", t);
+		    }
+		}
+	    }
+	});
+
 	// Execute operation with progress monitoring.
 	stop.execute(monitor);
     }
@@ -654,6 +680,18 @@ public class SiteWhereTenantEngine extends TenantLifecycleComponent implements I
 	}
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.server.tenant.ISiteWhereTenantEngine#addStopHook(java.
+     * lang.Runnable)
+     */
+    @Override
+    public void addStopHook(Runnable hook) {
+	stopHooks.add(hook);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -875,12 +913,18 @@ public class SiteWhereTenantEngine extends TenantLifecycleComponent implements I
     }
 
     /**
-     * Initialize the Groovy configuration.
+     * Initialize the Groovy configuration. Uses settings from the tenant
+     * configuration if present, otherwise uses defaults.
      * 
      * @throws SiteWhereException
      */
     protected void initializeGroovyConfiguration() throws SiteWhereException {
-	this.groovyConfiguration = new TenantGroovyConfiguration();
+	if (tenantContext.containsLocalBean(SiteWhereServerBeans.BEAN_GROOVY_CONFIGURATION)) {
+	    this.groovyConfiguration = (ITenantGroovyConfiguration) tenantContext
+		    .getBean(SiteWhereServerBeans.BEAN_GROOVY_CONFIGURATION);
+	} else {
+	    this.groovyConfiguration = new TenantGroovyConfiguration();
+	}
     }
 
     /**
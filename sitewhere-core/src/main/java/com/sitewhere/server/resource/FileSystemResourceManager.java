@@ -18,6 +18,7 @@ import org.apache.commons.io.filefilter.DirectoryFileFilter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.sitewhere.SiteWhere;
 import com.sitewhere.configuration.ResourceManagerTenantConfigurationResolver;
 import com.sitewhere.rest.model.resource.MultiResourceCreateResponse;
 import com.sitewhere.rest.model.resource.Resource;
@@ -35,6 +36,7 @@ import com.sitewhere.spi.resource.ResourceType;
 import com.sitewhere.spi.resource.request.IResourceCreateRequest;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
+import com.sitewhere.spi.server.tenant.ISiteWhereTenantEngine;
 
 /**
  * Implemenatation of {@link IResourceManager} that loads resources from the
@@ -182,6 +184,7 @@ public class FileSystemResourceManager extends LifecycleComponent implements IRe
 		handleResourceExists(request, null, response, mode);
 	    }
 	}
+	invalidateScripts(null, requests);
 	return response;
     }
 
@@ -372,6 +375,9 @@ public class FileSystemResourceManager extends LifecycleComponent implements IRe
 	if (resourceFile != null) {
 	    IResource resource = createResourceFromContent(path, resourceFile);
 	    FileUtils.deleteQuietly(resourceFile);
+	    if (resource.getResourceType() == ResourceType.GroovyScript) {
+		invalidateScripts(null);
+	    }
 	    return resource;
 	}
 	return null;
@@ -433,9 +439,45 @@ public class FileSystemResourceManager extends LifecycleComponent implements IRe
 		handleResourceExists(request, qualifier, response, mode);
 	    }
 	}
+	invalidateScripts(tenantId, requests);
 	return response;
     }
 
+    /**
+     * Discard cached Groovy scripts if any of the updated resources is a
+     * script.
+     * 
+     * @param tenantId
+     * @param requests
+     */
+    protected void invalidateScripts(String tenantId, List<IResourceCreateRequest> requests) {
+	for (IResourceCreateRequest request : requests) {
+	    if (findResourceType(new File(request.getPath())) == ResourceType.GroovyScript) {
+		invalidateScripts(tenantId);
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Discard cached Groovy scripts for a tenant engine. Tenant scripts fall
+     * back to global resources, so passing no tenant id invalidates scripts
+     * for all running tenant engines.
+     * 
+     * @param tenantId
+     */
+    protected void invalidateScripts(String tenantId) {
+	if (!SiteWhere.isServerAvailable()) {
+	    return;
+	}
+	for (ISiteWhereTenantEngine engine : SiteWhere.getServer().getTenantEnginesById().values()) {
+	    if (((tenantId == null) || (tenantId.equals(engine.getTenant().getId())))
+		    && (engine.getGroovyConfiguration() != null)) {
+		engine.getGroovyConfiguration().invalidateScripts();
+	    }
+	}
+    }
+
     /**
      * Get a tenant folder based on its id.
      * 
@@ -491,6 +533,9 @@ public class FileSystemResourceManager extends LifecycleComponent implements IRe
 	if (resourceFile != null) {
 	    IResource resource = createResourceFromContent(path, resourceFile);
 	    FileUtils.deleteQuietly(resourceFile);
+	    if (resource.getResourceType() == ResourceType.GroovyScript) {
+		invalidateScripts(tenantId);
+	    }
 	    return resource;
 	}
 	return null;
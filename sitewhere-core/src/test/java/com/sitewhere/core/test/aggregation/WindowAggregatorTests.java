@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.aggregation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sitewhere.device.event.processor.aggregation.WindowAggregate;
+import com.sitewhere.device.event.processor.aggregation.WindowAggregator;
+
+/**
+ * Tests tumbling, sliding and late data behavior of {@link WindowAggregator}.
+ * 
+ * @author Derek
+ */
+public class WindowAggregatorTests {
+
+    /** Allowed difference for double comparisons */
+    private static final double DELTA = 0.000001;
+
+    @Test
+    public void testTumbling() throws Exception {
+	WindowAggregator aggregator = new WindowAggregator(1000, 1000, 0);
+	List<WindowAggregate> closed = new ArrayList<WindowAggregate>();
+	aggregator.add(100, 1.0, closed);
+	aggregator.add(500, 3.0, closed);
+	aggregator.add(900, 2.0, closed);
+	assertTrue(closed.isEmpty());
+
+	aggregator.add(1200, 10.0, closed);
+	assertEquals(1, closed.size());
+	assertWindow(closed.get(0), 0, 1000, 3, 1.0, 3.0, 6.0);
+
+	// Gap of empty windows emits nothing for them.
+	closed.clear();
+	aggregator.add(5100, 4.0, closed);
+	assertEquals(1, closed.size());
+	assertWindow(closed.get(0), 1000, 2000, 1, 10.0, 10.0, 10.0);
+    }
+
+    @Test
+    public void testSliding() throws Exception {
+	WindowAggregator aggregator = new WindowAggregator(3000, 1000, 0);
+	List<WindowAggregate> closed = new ArrayList<WindowAggregate>();
+	for (int i = 0; i < 6; i++) {
+	    aggregator.add((i * 1000) + 500, i, closed);
+	}
+	aggregator.advance(6000, closed);
+
+	// Windows ending at 1s through 6s, each covering up to three values.
+	assertEquals(6, closed.size());
+	assertWindow(closed.get(0), -2000, 1000, 1, 0, 0, 0);
+	assertWindow(closed.get(1), -1000, 2000, 2, 0, 1, 1);
+	assertWindow(closed.get(2), 0, 3000, 3, 0, 2, 3);
+	assertWindow(closed.get(3), 1000, 4000, 3, 1, 3, 6);
+	assertWindow(closed.get(4), 2000, 5000, 3, 2, 4, 9);
+	assertWindow(closed.get(5), 3000, 6000, 3, 3, 5, 12);
+	assertEquals(4.0, closed.get(5).getAverage(), DELTA);
+    }
+
+    @Test
+    public void testLateness() throws Exception {
+	WindowAggregator aggregator = new WindowAggregator(1000, 1000, 500);
+	List<WindowAggregate> closed = new ArrayList<WindowAggregate>();
+	aggregator.add(900, 1.0, closed);
+	aggregator.add(1300, 2.0, closed);
+	assertTrue(closed.isEmpty());
+
+	// Late value within allowed lateness is still counted.
+	assertTrue(aggregator.add(800, 5.0, closed));
+	aggregator.add(1600, 3.0, closed);
+	assertEquals(1, closed.size());
+	assertWindow(closed.get(0), 0, 1000, 2, 1.0, 5.0, 6.0);
+
+	// Value for a closed window is dropped.
+	assertFalse(aggregator.add(700, 9.0, closed));
+	assertEquals(1, aggregator.getDropped());
+
+	closed.clear();
+	aggregator.advance(Long.MAX_VALUE / 2, closed);
+	assertEquals(1, closed.size());
+	assertWindow(closed.get(0), 1000, 2000, 2, 2.0, 3.0, 5.0);
+	assertTrue(aggregator.isEmpty());
+    }
+
+    /**
+     * Assert values of a closed window.
+     * 
+     * @param window
+     * @param start
+     * @param end
+     * @param count
+     * @param min
+     * @param max
+     * @param sum
+     */
+    protected void assertWindow(WindowAggregate window, long start, long end, long count, double min, double max,
+	    double sum) {
+	assertEquals(start, window.getStart());
+	assertEquals(end, window.getEnd());
+	assertEquals(count, window.getCount());
+	assertEquals(min, window.getMin(), DELTA);
+	assertEquals(max, window.getMax(), DELTA);
+	assertEquals(sum, window.getSum(), DELTA);
+    }
+}
\ No newline at end of file
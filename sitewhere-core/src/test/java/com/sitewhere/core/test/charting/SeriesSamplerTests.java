@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.charting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.sitewhere.device.charting.SamplingMethod;
+import com.sitewhere.device.charting.SeriesAccumulator;
+import com.sitewhere.device.charting.SeriesBuffer;
+import com.sitewhere.device.charting.SeriesSampler;
+import com.sitewhere.rest.model.device.charting.SampledChartSeries;
+
+/**
+ * Tests sorting, accumulating and sampling of chart series.
+ * 
+ * @author Derek
+ */
+public class SeriesSamplerTests {
+
+    /** Allowed difference for double comparisons */
+    private static final double DELTA = 0.000001;
+
+    @Test
+    public void testSortDescending() throws Exception {
+	SeriesBuffer buffer = new SeriesBuffer();
+	for (int i = 99; i >= 0; i--) {
+	    buffer.add(i * 1000, i);
+	}
+	buffer.sort();
+	for (int i = 0; i < 100; i++) {
+	    assertEquals(i * 1000, buffer.getTime(i));
+	    assertEquals(i, buffer.getValue(i), DELTA);
+	}
+    }
+
+    @Test
+    public void testSortMixed() throws Exception {
+	SeriesBuffer buffer = new SeriesBuffer();
+	long[] times = { 5, 1, 4, 2, 3 };
+	for (long time : times) {
+	    buffer.add(time, time * 10);
+	}
+	buffer.sort();
+	for (int i = 0; i < times.length; i++) {
+	    assertEquals(i + 1, buffer.getTime(i));
+	    assertEquals((i + 1) * 10, buffer.getValue(i), DELTA);
+	}
+    }
+
+    @Test
+    public void testLttbKeepsEndpointsAndPeaks() throws Exception {
+	SeriesBuffer buffer = new SeriesBuffer();
+	for (int i = 0; i < 100000; i++) {
+	    buffer.add(i * 1000L, (i == 50000) ? 1000.0 : Math.sin(i / 1000.0));
+	}
+	SampledChartSeries series = SeriesSampler.lttb(buffer, 200);
+	assertEquals(200, series.getTimes().length);
+	assertEquals(0, series.getTimes()[0]);
+	assertEquals(99999000L, series.getTimes()[199]);
+	boolean peak = false;
+	for (int i = 0; i < series.getValues().length; i++) {
+	    if (i > 0) {
+		assertTrue(series.getTimes()[i] > series.getTimes()[i - 1]);
+	    }
+	    peak |= (series.getValues()[i] == 1000.0);
+	}
+	assertTrue(peak);
+    }
+
+    @Test
+    public void testBuckets() throws Exception {
+	SeriesBuffer buffer = new SeriesBuffer();
+	for (int i = 0; i < 100; i++) {
+	    buffer.add(i, i);
+	}
+	SampledChartSeries series = SeriesSampler.buckets(buffer, 10);
+	assertEquals(10, series.getTimes().length);
+	assertEquals(0, series.getTimes()[0]);
+	assertEquals(0, series.getMins()[0], DELTA);
+	assertEquals(9, series.getMaxs()[0], DELTA);
+	assertEquals(4.5, series.getValues()[0], DELTA);
+	assertEquals(94.5, series.getValues()[9], DELTA);
+    }
+
+    @Test
+    public void testBucketsWeightedByCount() throws Exception {
+	SeriesBuffer buffer = new SeriesBuffer();
+	buffer.add(0, 1.0, 0.0, 2.0, 3);
+	buffer.add(1, 5.0, 4.0, 9.0, 1);
+	SampledChartSeries series = SeriesSampler.buckets(buffer, 1);
+	assertEquals(1, series.getTimes().length);
+	assertEquals(2.0, series.getValues()[0], DELTA);
+	assertEquals(0.0, series.getMins()[0], DELTA);
+	assertEquals(9.0, series.getMaxs()[0], DELTA);
+    }
+
+    @Test
+    public void testAccumulatorKeepsRawUnderLimit() throws Exception {
+	SeriesAccumulator accumulator = new SeriesAccumulator(100);
+	for (int i = 99; i >= 0; i--) {
+	    accumulator.add(i * 1000L, i);
+	}
+	assertFalse(accumulator.isBucketed());
+	SeriesBuffer buffer = accumulator.getBuffer();
+	assertEquals(100, buffer.size());
+	assertEquals(0, buffer.getTime(0));
+	assertEquals(99000L, buffer.getTime(99));
+    }
+
+    @Test
+    public void testAccumulatorCoversWholeRange() throws Exception {
+	// A month of one second readings, newest first.
+	int seconds = 30 * 24 * 60 * 60;
+	SeriesAccumulator accumulator = new SeriesAccumulator(10000);
+	for (int i = seconds - 1; i >= 0; i--) {
+	    accumulator.add(i * 1000L, (i == 1000) ? 500.0 : 1.0);
+	}
+	assertTrue(accumulator.isBucketed());
+	SeriesBuffer buffer = accumulator.getBuffer();
+	assertTrue(buffer.size() <= 10000);
+	assertEquals(seconds, buffer.getSampleCount());
+	assertTrue(buffer.getTime(0) <= 0);
+	assertTrue(buffer.getTime(0) + accumulator.getWidth() > 0);
+
+	SampledChartSeries series = SeriesSampler.sample("x", buffer, 500, SamplingMethod.Buckets);
+	assertTrue(series.getTimes().length <= 500);
+	assertEquals(seconds, series.getSourceCount());
+	assertEquals(500.0, series.getMaxs()[0], DELTA);
+	assertEquals(1.0, series.getMins()[0], DELTA);
+	assertEquals(1.0, series.getValues()[series.getValues().length - 1], DELTA);
+    }
+
+    @Test
+    public void testAccumulatorMergesSummaries() throws Exception {
+	SeriesAccumulator accumulator = new SeriesAccumulator(2);
+	accumulator.add(30, 3.0, 2.0, 4.0, 2);
+	accumulator.add(20, 2.0);
+	accumulator.add(10, 1.0, 0.0, 8.0, 3);
+	accumulator.add(0, 6.0);
+	SeriesBuffer buffer = accumulator.getBuffer();
+	assertEquals(7, buffer.getSampleCount());
+	double sum = 0;
+	double min = Double.MAX_VALUE;
+	double max = -Double.MAX_VALUE;
+	for (int i = 0; i < buffer.size(); i++) {
+	    sum += buffer.getValue(i) * buffer.getCount(i);
+	    min = Math.min(min, buffer.getMin(i));
+	    max = Math.max(max, buffer.getMax(i));
+	}
+	assertEquals(17.0, sum, DELTA);
+	assertEquals(0.0, min, DELTA);
+	assertEquals(8.0, max, DELTA);
+    }
+}
\ No newline at end of file
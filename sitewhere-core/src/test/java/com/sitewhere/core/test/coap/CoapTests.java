@@ -7,17 +7,24 @@
  */
 package com.sitewhere.core.test.coap;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.californium.core.CoapClient;
 import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.core.network.config.NetworkConfig;
 import org.junit.Test;
 
 import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.rest.model.device.event.DeviceEventBatch;
 import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
 import com.sitewhere.rest.model.device.event.request.DeviceCommandResponseCreateRequest;
 import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
@@ -88,6 +95,29 @@ public class CoapTests {
 	System.out.println(response.getResponseText());
     }
 
+    @Test
+    public void testAddDeviceBatchBlockwise() throws Exception {
+	CoapClient client = createClientFor("devices/111-COAP-TEST-444/batch");
+	DeviceEventBatch batch = new DeviceEventBatch();
+	batch.setHardwareId("111-COAP-TEST-444");
+	for (int i = 0; i < 100; i++) {
+	    DeviceMeasurementsCreateRequest mxs = new DeviceMeasurementsCreateRequest();
+	    mxs.addOrReplaceMeasurement("pwr", 38.23 + i);
+	    mxs.addOrReplaceMeasurement("fln", 59.95);
+	    mxs.setEventDate(new Date());
+	    batch.getMeasurements().add(mxs);
+	}
+	byte[] payload = MarshalUtils.marshalJson(batch);
+	assertTrue(payload.length > NetworkConfig.getStandard().getInt(NetworkConfig.Keys.MAX_MESSAGE_SIZE));
+
+	// Payload exceeds max message size, so client uses block-wise transfer.
+	CoapResponse response = client.post(payload, MediaTypeRegistry.APPLICATION_JSON);
+	assertNotNull(response);
+	assertEquals(ResponseCode.CONTENT, response.getCode());
+	assertTrue(response.getOptions().hasBlock1());
+	assertFalse(response.getOptions().getBlock1().isM());
+    }
+
     @Test
     public void testAddDeviceAlert() {
 	CoapClient client = createClientFor("devices/111-COAP-TEST-444/alerts");
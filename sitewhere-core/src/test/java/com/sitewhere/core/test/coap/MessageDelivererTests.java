@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.coap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Exchange;
+import org.junit.After;
+import org.junit.Test;
+
+import com.sitewhere.device.communication.coap.SiteWhereMessageDeliverer;
+
+/**
+ * Tests hand-off of requests by {@link SiteWhereMessageDeliverer} without a
+ * running CoAP server.
+ * 
+ * @author Derek
+ */
+public class MessageDelivererTests {
+
+    /** Worker pool for asynchronous delivery */
+    private ThreadPoolExecutor workers;
+
+    @After
+    public void tearDown() {
+	if (workers != null) {
+	    workers.shutdownNow();
+	}
+    }
+
+    @Test
+    public void testSynchronousDeliveryUsesCallerThread() throws Exception {
+	TestDeliverer deliverer = new TestDeliverer(null);
+	deliverer.release.countDown();
+	TestExchange exchange = new TestExchange();
+	deliverer.deliverRequest(exchange);
+
+	assertFalse(exchange.accepted);
+	assertEquals(ResponseCode.CONTENT, exchange.response.getCode());
+	assertEquals(Thread.currentThread().getName(), exchange.handledBy);
+    }
+
+    @Test
+    public void testAsyncDeliveryAcceptsAndRejectsWhenBusy() throws Exception {
+	workers = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1));
+	TestDeliverer deliverer = new TestDeliverer(workers);
+
+	// First request occupies the only worker.
+	TestExchange first = new TestExchange();
+	deliverer.deliverRequest(first);
+	assertTrue(first.accepted);
+	assertTrue(deliverer.started.await(5, TimeUnit.SECONDS));
+
+	// Second request waits in the queue.
+	TestExchange second = new TestExchange();
+	deliverer.deliverRequest(second);
+	assertTrue(second.accepted);
+	assertNull(second.response);
+
+	// Third request is rejected with a retry hint.
+	TestExchange third = new TestExchange();
+	deliverer.deliverRequest(third);
+	assertFalse(third.accepted);
+	assertEquals(ResponseCode.SERVICE_UNAVAILABLE, third.response.getCode());
+	assertEquals(Long.valueOf(5), third.response.getOptions().getMaxAge());
+
+	deliverer.release.countDown();
+	assertTrue(first.responded.await(5, TimeUnit.SECONDS));
+	assertTrue(second.responded.await(5, TimeUnit.SECONDS));
+	assertEquals(ResponseCode.CONTENT, first.response.getCode());
+	assertEquals(ResponseCode.CONTENT, second.response.getCode());
+	assertNotEquals(Thread.currentThread().getName(), first.handledBy);
+	assertNotEquals(Thread.currentThread().getName(), second.handledBy);
+    }
+
+    /**
+     * Deliverer that answers every request once released.
+     */
+    private static class TestDeliverer extends SiteWhereMessageDeliverer {
+
+	/** Signals that a request is being handled */
+	private CountDownLatch started = new CountDownLatch(1);
+
+	/** Lets requests complete */
+	private CountDownLatch release = new CountDownLatch(1);
+
+	public TestDeliverer(ThreadPoolExecutor workers) {
+	    super(null, workers, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.device.communication.coap.SiteWhereMessageDeliverer#
+	 * handleRequest(org.eclipse.californium.core.network.Exchange)
+	 */
+	@Override
+	protected void handleRequest(Exchange exchange) {
+	    ((TestExchange) exchange).handledBy = Thread.currentThread().getName();
+	    started.countDown();
+	    try {
+		release.await();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return;
+	    }
+	    exchange.sendResponse(new Response(ResponseCode.CONTENT));
+	}
+    }
+
+    /**
+     * Exchange that records what is sent instead of using an endpoint.
+     */
+    private static class TestExchange extends Exchange {
+
+	/** Indicates an empty acknowledgement was sent */
+	private volatile boolean accepted;
+
+	/** Response that was sent */
+	private volatile Response response;
+
+	/** Name of thread that handled the request */
+	private volatile String handledBy;
+
+	/** Signals that a response was sent */
+	private CountDownLatch responded = new CountDownLatch(1);
+
+	public TestExchange() {
+	    super(Request.newPost(), Origin.REMOTE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.californium.core.network.Exchange#sendAccept()
+	 */
+	@Override
+	public void sendAccept() {
+	    accepted = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.californium.core.network.Exchange#sendResponse(org.eclipse.
+	 * californium.core.coap.Response)
+	 */
+	@Override
+	public void sendResponse(Response response) {
+	    this.response = response;
+	    responded.countDown();
+	}
+    }
+}
\ No newline at end of file
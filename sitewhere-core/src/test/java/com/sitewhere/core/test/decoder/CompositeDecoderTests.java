@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.core.test.Benchmarks;
+import com.sitewhere.core.test.Benchmarks.Benchmark;
+import com.sitewhere.device.communication.decoder.composite.BinaryCompositeDeviceEventDecoder;
+import com.sitewhere.device.communication.decoder.composite.BinaryDeviceContext;
+import com.sitewhere.device.communication.decoder.composite.BinaryMessageMetadata;
+import com.sitewhere.device.communication.decoder.composite.DeviceContextCache;
+import com.sitewhere.device.communication.decoder.composite.DeviceSpecificationDecoderChoice;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.device.DeviceSpecification;
+import com.sitewhere.rest.model.device.communication.DecodedDeviceRequest;
+import com.sitewhere.rest.model.tenant.Tenant;
+import com.sitewhere.server.lifecycle.TenantLifecycleComponent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.communication.EventDecodeException;
+import com.sitewhere.spi.device.communication.ICompositeDeviceEventDecoder;
+import com.sitewhere.spi.device.communication.ICompositeDeviceEventDecoder.IDeviceContext;
+import com.sitewhere.spi.device.communication.ICompositeDeviceEventDecoder.IMessageMetadata;
+import com.sitewhere.spi.device.communication.ICompositeDeviceEventDecoder.IMessageMetadataExtractor;
+import com.sitewhere.spi.device.communication.IDecodedDeviceRequest;
+import com.sitewhere.spi.device.communication.IDeviceEventDecoder;
+import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
+
+/**
+ * Tests context caching in the composite decoder and compares its throughput
+ * with building the context for every payload.
+ * 
+ * @author Derek
+ */
+public class CompositeDecoderTests {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Skips benchmarks unless enabled */
+    @Rule
+    public Benchmarks benchmarks = new Benchmarks();
+
+    /** Number of devices in benchmark */
+    private static final int DEVICES = 1000;
+
+    /** Number of payloads used to warm up the JIT */
+    private static final int WARMUP_ITERATIONS = 50000;
+
+    /** Number of timed payloads */
+    private static final int ITERATIONS = 200000;
+
+    @Test
+    public void testContextCached() throws Exception {
+	TestCompositeDecoder decoder = new TestCompositeDecoder(10);
+	List<IDecodedDeviceRequest<?>> first = decoder.decode(payload("device-3"), null);
+	decoder.decode(payload("device-3"), null);
+	decoder.decode(payload("device-3"), null);
+	assertEquals(1, decoder.lookups);
+	assertEquals(1, first.size());
+	assertEquals("spec-1", first.get(0).getHardwareId());
+
+	Map<String, Object> metadata = decoder.delegates.get(1).lastMetadata;
+	assertEquals("device-3", ((IDevice) metadata.get(IDeviceEventDecoder.META_DEVICE)).getHardwareId());
+	assertEquals("spec-1",
+		((IDeviceSpecification) metadata.get(IDeviceEventDecoder.META_DEVICE_SPECIFICATION)).getToken());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+	TestCompositeDecoder decoder = new TestCompositeDecoder(10);
+	Tenant tenant = new Tenant();
+	tenant.setId("decoder-test");
+	DeviceContextCache.register(tenant, decoder.getContextCache());
+	try {
+	    decoder.decode(payload("device-0"), null);
+	    decoder.decode(payload("device-1"), null);
+	    assertEquals(2, decoder.lookups);
+
+	    // Device moves to another specification.
+	    decoder.devices.get("device-0").setSpecificationToken("spec-1");
+	    DeviceContextCache.onDeviceChanged(tenant, "device-0");
+	    List<IDecodedDeviceRequest<?>> decoded = decoder.decode(payload("device-0"), null);
+	    assertEquals(3, decoder.lookups);
+	    assertEquals("spec-1", decoded.get(0).getHardwareId());
+
+	    // Only devices using the specification are dropped.
+	    DeviceContextCache.onSpecificationChanged(tenant, "spec-1");
+	    assertNull(decoder.getContextCache().get("device-0"));
+	    assertNull(decoder.getContextCache().get("device-1"));
+	    assertEquals(0, decoder.getContextCache().size());
+	} finally {
+	    DeviceContextCache.unregister(tenant, decoder.getContextCache());
+	}
+	DeviceContextCache.onDeviceChanged(tenant, "device-2");
+	decoder.decode(payload("device-2"), null);
+	DeviceContextCache.onDeviceChanged(tenant, "device-2");
+	assertEquals(1, decoder.getContextCache().size());
+    }
+
+    @Test
+    public void testStaleLoadNotCached() throws Exception {
+	TestCompositeDecoder decoder = new TestCompositeDecoder(1);
+	DeviceContextCache<byte[]> cache = decoder.getContextCache();
+	long loadedAt = cache.getGeneration();
+	cache.invalidateDevice("device-0");
+	cache.put(decoder.devices.get("device-0"), decoder.specifications.get("spec-0"), null, loadedAt);
+	assertNull(cache.get("device-0"));
+    }
+
+    @Test
+    public void testFullCacheEvictsEntries() throws Exception {
+	TestCompositeDecoder decoder = new TestCompositeDecoder(3);
+	DeviceContextCache<byte[]> cache = decoder.getContextCache();
+	cache.setMaxEntries(2);
+	decoder.decode(payload("device-0"), null);
+	decoder.decode(payload("device-1"), null);
+	decoder.decode(payload("device-2"), null);
+	assertEquals(2, cache.size());
+	assertNotNull(cache.get("device-2"));
+
+	decoder.decode(payload("device-2"), null);
+	assertEquals(3, decoder.lookups);
+    }
+
+    @Test
+    public void testExpiredEntryReloaded() throws Exception {
+	TestCompositeDecoder decoder = new TestCompositeDecoder(1);
+	DeviceContextCache<byte[]> cache = decoder.getContextCache();
+	decoder.decode(payload("device-0"), null);
+	long created = cache.get("device-0").getCreated();
+	assertNotNull(cache.get("device-0", created + cache.getTimeToLive() - 1));
+	assertNull(cache.get("device-0", created + cache.getTimeToLive()));
+
+	decoder.decode(payload("device-0"), null);
+	assertEquals(2, decoder.lookups);
+    }
+
+    @Test
+    public void testEventSourceMetadataPassed() throws Exception {
+	TestCompositeDecoder decoder = new TestCompositeDecoder(1);
+	Map<String, Object> source = new HashMap<String, Object>();
+	source.put("topic", "sitewhere/input");
+	source.put(IDeviceEventDecoder.META_DEVICE, "overridden");
+	decoder.decode(payload("device-0"), source);
+
+	Map<String, Object> metadata = decoder.delegates.get(0).lastMetadata;
+	assertEquals("sitewhere/input", metadata.get("topic"));
+	assertEquals("device-0", ((IDevice) metadata.get(IDeviceEventDecoder.META_DEVICE)).getHardwareId());
+	assertEquals(3, metadata.size());
+    }
+
+    @Test
+    public void testNoChoiceApplies() throws Exception {
+	TestCompositeDecoder decoder = new TestCompositeDecoder(1);
+	decoder.devices.get("device-0").setSpecificationToken("unknown");
+	decoder.specifications.put("unknown", createSpecification("unknown"));
+	assertEquals(0, decoder.decode(payload("device-0"), null).size());
+	assertEquals(0, decoder.decode(payload("device-0"), null).size());
+	assertEquals(1, decoder.lookups);
+    }
+
+    @Test
+    @Benchmark
+    public void benchmarkCompositeDecoders() throws Exception {
+	List<byte[]> payloads = new ArrayList<byte[]>();
+	for (int i = 0; i < DEVICES; i++) {
+	    payloads.add(payload("device-" + i));
+	}
+	Map<String, Object> source = new HashMap<String, Object>();
+	source.put("topic", "sitewhere/input");
+
+	TestCompositeDecoder legacy = new LegacyCompositeDecoder(DEVICES);
+	TestCompositeDecoder cached = new TestCompositeDecoder(DEVICES);
+	run(legacy, payloads, source, WARMUP_ITERATIONS);
+	run(cached, payloads, source, WARMUP_ITERATIONS);
+
+	long legacyNanos = run(legacy, payloads, source, ITERATIONS);
+	long cachedNanos = run(cached, payloads, source, ITERATIONS);
+	LOGGER.info("Uncached composite decoder: " + (ITERATIONS * 1000000000L / legacyNanos)
+		+ " payloads/sec (" + legacy.lookups + " lookups).");
+	LOGGER.info("Cached composite decoder: " + (ITERATIONS * 1000000000L / cachedNanos)
+		+ " payloads/sec (" + cached.lookups + " lookups).");
+	assertEquals(DEVICES, cached.lookups);
+    }
+
+    /**
+     * Decode payloads round-robin.
+     * 
+     * @param decoder
+     * @param payloads
+     * @param source
+     * @param iterations
+     * @return
+     * @throws EventDecodeException
+     */
+    protected long run(TestCompositeDecoder decoder, List<byte[]> payloads, Map<String, Object> source,
+	    int iterations) throws EventDecodeException {
+	long start = System.nanoTime();
+	for (int i = 0; i < iterations; i++) {
+	    decoder.decode(payloads.get(i % payloads.size()), source);
+	}
+	return System.nanoTime() - start;
+    }
+
+    /**
+     * Create a payload of the form "hardwareId:data".
+     * 
+     * @param hardwareId
+     * @return
+     */
+    protected static byte[] payload(String hardwareId) {
+	return (hardwareId + ":temp=20.5").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a specification with the given token.
+     * 
+     * @param token
+     * @return
+     */
+    protected static DeviceSpecification createSpecification(String token) {
+	DeviceSpecification specification = new DeviceSpecification();
+	specification.setToken(token);
+	specification.setName(token);
+	specification.setAssetModuleId("devices");
+	specification.setAssetId("test");
+	return specification;
+    }
+
+    /**
+     * Composite decoder backed by in-memory devices. Devices are copied through
+     * JSON on lookup to stand in for the cost of a datastore or cache read.
+     */
+    private static class TestCompositeDecoder extends BinaryCompositeDeviceEventDecoder {
+
+	/** Devices by hardware id */
+	protected Map<String, Device> devices = new HashMap<String, Device>();
+
+	/** Specifications by token */
+	protected Map<String, DeviceSpecification> specifications = new HashMap<String, DeviceSpecification>();
+
+	/** Delegate decoders by specification index */
+	protected List<RecordingDecoder> delegates = new ArrayList<RecordingDecoder>();
+
+	/** Number of context lookups */
+	protected int lookups;
+
+	public TestCompositeDecoder(int deviceCount) {
+	    for (int i = 0; i < 2; i++) {
+		String token = "spec-" + i;
+		specifications.put(token, createSpecification(token));
+		RecordingDecoder delegate = new RecordingDecoder(token);
+		delegates.add(delegate);
+		DeviceSpecificationDecoderChoice<byte[]> choice = new DeviceSpecificationDecoderChoice<byte[]>();
+		choice.setDeviceSpecificationToken(token);
+		choice.setDeviceEventDecoder(delegate);
+		getDecoderChoices().add(choice);
+	    }
+	    for (int i = 0; i < deviceCount; i++) {
+		Device device = new Device();
+		device.setHardwareId("device-" + i);
+		device.setSiteToken("site");
+		device.setSpecificationToken("spec-" + (i % 2));
+		device.setAssignmentToken("assn-" + i);
+		devices.put(device.getHardwareId(), device);
+	    }
+	    setMetadataExtractor(new PrefixExtractor());
+	}
+
+	@Override
+	public IDeviceContext<byte[]> buildContext(IMessageMetadata<byte[]> metadata) throws SiteWhereException {
+	    lookups++;
+	    BinaryDeviceContext context = new BinaryDeviceContext();
+	    Device device = devices.get(metadata.getHardwareId());
+	    if (device == null) {
+		throw new SiteWhereException("Device not found for hardware id: " + metadata.getHardwareId());
+	    }
+	    context.setDevice(MarshalUtils.unmarshalJson(MarshalUtils.marshalJson(device), Device.class));
+	    context.setDeviceSpecification(MarshalUtils.unmarshalJson(
+		    MarshalUtils.marshalJson(specifications.get(device.getSpecificationToken())),
+		    DeviceSpecification.class));
+	    context.setPayload(metadata.getPayload());
+	    return context;
+	}
+    }
+
+    /**
+     * Decoder that builds the context for every payload and copies metadata
+     * into a new map, as the composite decoder did before contexts were
+     * cached.
+     */
+    private static class LegacyCompositeDecoder extends TestCompositeDecoder {
+
+	public LegacyCompositeDecoder(int deviceCount) {
+	    super(deviceCount);
+	}
+
+	@Override
+	public List<IDecodedDeviceRequest<?>> decode(byte[] payload, Map<String, Object> eventSourceMetadata)
+		throws EventDecodeException {
+	    IMessageMetadata<byte[]> metadata = getMetadataExtractor().extractMetadata(payload, eventSourceMetadata);
+	    LOGGER.info("Extracted payload metadata: HardwareId: " + metadata.getHardwareId() + " Payload: "
+		    + metadata.getPayload().toString());
+	    try {
+		IDeviceContext<byte[]> context = buildContext(metadata);
+		LOGGER.debug("Built context: Device: " + context.getDevice() + " Specification: "
+			+ context.getDeviceSpecification());
+		Map<String, Object> combined = new HashMap<String, Object>();
+		if (eventSourceMetadata != null) {
+		    combined.putAll(eventSourceMetadata);
+		}
+		combined.put(IDeviceEventDecoder.META_DEVICE, context.getDevice());
+		combined.put(IDeviceEventDecoder.META_DEVICE_SPECIFICATION, context.getDeviceSpecification());
+		for (ICompositeDeviceEventDecoder.IDecoderChoice<byte[]> choice : getDecoderChoices()) {
+		    if (choice.appliesTo(context)) {
+			return choice.getDeviceEventDecoder().decode(context.getPayload(), combined);
+		    }
+		}
+	    } catch (SiteWhereException e) {
+		throw new EventDecodeException("Exception in composite decoder.", e);
+	    }
+	    return new ArrayList<IDecodedDeviceRequest<?>>();
+	}
+    }
+
+    /**
+     * Extracts hardware id from the text before the first colon.
+     */
+    private static class PrefixExtractor extends TenantLifecycleComponent
+	    implements IMessageMetadataExtractor<byte[]> {
+
+	public PrefixExtractor() {
+	    super(LifecycleComponentType.Other);
+	}
+
+	@Override
+	public IMessageMetadata<byte[]> extractMetadata(byte[] payload, Map<String, Object> eventSourceMetadata)
+		throws EventDecodeException {
+	    int end = 0;
+	    while ((end < payload.length) && (payload[end] != ':')) {
+		end++;
+	    }
+	    BinaryMessageMetadata metadata = new BinaryMessageMetadata();
+	    metadata.setHardwareId(new String(payload, 0, end, StandardCharsets.UTF_8));
+	    metadata.setPayload(payload);
+	    return metadata;
+	}
+
+	@Override
+	public Logger getLogger() {
+	    return LOGGER;
+	}
+    }
+
+    /**
+     * Records metadata passed by the composite decoder. Decoded requests carry
+     * the specification token of the choice in place of a hardware id.
+     */
+    private static class RecordingDecoder extends TenantLifecycleComponent implements IDeviceEventDecoder<byte[]> {
+
+	/** Specification token for choice */
+	private String token;
+
+	/** Metadata passed with last payload */
+	private Map<String, Object> lastMetadata;
+
+	public RecordingDecoder(String token) {
+	    super(LifecycleComponentType.DeviceEventDecoder);
+	    this.token = token;
+	}
+
+	@Override
+	public List<IDecodedDeviceRequest<?>> decode(byte[] payload, Map<String, Object> eventSourceMetadata)
+		throws EventDecodeException {
+	    this.lastMetadata = eventSourceMetadata;
+	    List<IDecodedDeviceRequest<?>> results = new ArrayList<IDecodedDeviceRequest<?>>();
+	    DecodedDeviceRequest<Object> decoded = new DecodedDeviceRequest<Object>();
+	    decoded.setHardwareId(token);
+	    results.add(decoded);
+	    return results;
+	}
+
+	@Override
+	public Logger getLogger() {
+	    return LOGGER;
+	}
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.deduplicator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.sitewhere.device.communication.deduplicator.RecentIdFilter;
+import com.sitewhere.device.communication.deduplicator.RecentIdFilter.Result;
+
+/**
+ * Tests recent id cache, Bloom filter fallback, window coverage and window
+ * expiry in {@link RecentIdFilter}.
+ * 
+ * @author Derek
+ */
+public class RecentIdFilterTests {
+
+    @Test
+    public void testRecentAndNew() throws Exception {
+	RecentIdFilter filter = new RecentIdFilter(1000, 1000, 0.001, 10);
+	filter.add("a", 1);
+	assertEquals(Result.Recent, filter.check("a", 1001));
+	assertEquals(Result.New, filter.check("b", 1001));
+    }
+
+    @Test
+    public void testCheckDoesNotRecord() throws Exception {
+	RecentIdFilter filter = new RecentIdFilter(1000, 1000, 0.001, 10);
+	filter.check("x", 1);
+	assertEquals(Result.New, filter.check("a", 1001));
+	assertEquals(Result.New, filter.check("a", 1002));
+    }
+
+    @Test
+    public void testMissUnknownUntilWindowCovered() throws Exception {
+	RecentIdFilter filter = new RecentIdFilter(1000, 1000, 0.001, 10);
+	assertEquals(Result.Unknown, filter.check("a", 1));
+	assertEquals(Result.Unknown, filter.check("a", 999));
+	assertEquals(Result.New, filter.check("a", 1001));
+    }
+
+    @Test
+    public void testEvictedFallsBackToUnknown() throws Exception {
+	RecentIdFilter filter = new RecentIdFilter(1000, 1000, 0.001, 2);
+	filter.add("a", 1);
+	filter.add("b", 2);
+	filter.add("c", 3);
+	assertEquals(Result.Unknown, filter.check("a", 1001));
+    }
+
+    @Test
+    public void testWindowExpiry() throws Exception {
+	RecentIdFilter filter = new RecentIdFilter(1000, 1000, 0.001, 1);
+	filter.add("a", 1);
+	filter.add("b", 2);
+
+	// Remembered through the following window.
+	assertEquals(Result.Unknown, filter.check("a", 1500));
+	filter.add("b", 1600);
+
+	// Forgotten after two windows without being seen.
+	assertEquals(Result.New, filter.check("a", 5000));
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws Exception {
+	RecentIdFilter filter = new RecentIdFilter(60000, 10000, 0.01, 10);
+	for (int i = 0; i < 5000; i++) {
+	    filter.add("seen-" + i, 1);
+	}
+	int unknown = 0;
+	for (int i = 0; i < 5000; i++) {
+	    if (filter.check("other-" + i, 60001) != Result.New) {
+		unknown++;
+	    }
+	}
+	assertTrue("Too many false positives: " + unknown, unknown < 250);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.device;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.sitewhere.device.group.DeviceGroupIndex;
+import com.sitewhere.rest.model.device.group.DeviceGroupElement;
+import com.sitewhere.rest.model.device.request.DeviceGroupElementCreateRequest;
+import com.sitewhere.rest.model.tenant.Tenant;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.group.GroupElementType;
+import com.sitewhere.spi.device.group.IDeviceGroupElement;
+import com.sitewhere.spi.device.request.IDeviceGroupElementCreateRequest;
+
+/**
+ * Tests flattening, cycle detection, invalidation and refresh in
+ * {@link DeviceGroupIndex}.
+ * 
+ * @author Derek
+ */
+public class DeviceGroupIndexTests {
+
+    /** Refresh interval used by tests */
+    private static final long REFRESH = 1000;
+
+    @Test
+    public void testNestedFlattening() throws Exception {
+	TestIndex index = new TestIndex();
+	index.add("g1", device("a"), device("b"), group("g2"));
+	index.add("g2", device("c"), device("a"));
+	assertArrayEquals(new String[] { "a", "b", "c" }, index.hardwareIds("g1", 1));
+	assertArrayEquals(new String[] { "a", "c" }, index.hardwareIds("g2", 1));
+	assertEquals(2, index.listings);
+    }
+
+    @Test
+    public void testCycleDetection() throws Exception {
+	TestIndex index = new TestIndex();
+	index.add("g1", group("g2"));
+	index.add("g2", group("g3"));
+	index.add("g3", device("a"));
+
+	assertCycle(index, "g3", group("g1"));
+	assertCycle(index, "g1", group("g1"));
+	assertCycle(index, "g2", group("g1"));
+	index.assertNoCycles("g3", requests(device("g1"), group("g4")));
+	index.assertNoCycles("g1", requests(group("g3")));
+    }
+
+    @Test
+    public void testExistingCycleIsSkipped() throws Exception {
+	TestIndex index = new TestIndex();
+	index.add("g1", device("a"), group("g2"));
+	index.add("g2", device("b"), group("g1"));
+	assertArrayEquals(new String[] { "a", "b" }, index.hardwareIds("g1", 1));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+	TestIndex index = new TestIndex();
+	index.add("g1", device("a"), group("g2"));
+	index.add("g2", device("c"));
+	index.hardwareIds("g1", 1);
+
+	index.onElementsAdded("g2", elements(device("d")));
+	assertArrayEquals(new String[] { "a", "c", "d" }, index.hardwareIds("g1", 2));
+
+	index.onElementsRemoved("g2", elements(device("c")));
+	assertArrayEquals(new String[] { "a", "d" }, index.hardwareIds("g1", 3));
+
+	index.onGroupDeleted("g2");
+	index.add("g2");
+	assertArrayEquals(new String[] { "a" }, index.hardwareIds("g1", 4));
+	assertEquals(2, index.listings);
+    }
+
+    @Test
+    public void testChangeDuringListingListsAgain() throws Exception {
+	final TestIndex index = new TestIndex();
+	index.add("g1", device("a"));
+	index.duringListing = new Runnable() {
+
+	    @Override
+	    public void run() {
+		index.duringListing = null;
+		index.add("g1", device("a"), device("b"));
+		index.onElementsAdded("g1", elements(device("b")));
+	    }
+	};
+	assertArrayEquals(new String[] { "a", "b" }, index.hardwareIds("g1", 1));
+	assertEquals(2, index.listings);
+    }
+
+    @Test
+    public void testListingDoesNotHoldLock() throws Exception {
+	final TestIndex index = new TestIndex();
+	index.add("g1", device("a"));
+	index.duringListing = new Runnable() {
+
+	    @Override
+	    public void run() {
+		Thread trigger = new Thread() {
+
+		    @Override
+		    public void run() {
+			index.onElementsAdded("g2", elements(device("b")));
+		    }
+		};
+		trigger.start();
+		try {
+		    trigger.join(5000);
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		}
+		assertFalse("Trigger blocked by listing.", trigger.isAlive());
+	    }
+	};
+	assertArrayEquals(new String[] { "a" }, index.hardwareIds("g1", 1));
+    }
+
+    @Test
+    public void testRefreshPicksUpOtherChanges() throws Exception {
+	TestIndex index = new TestIndex();
+	index.add("g1", device("a"), group("g2"));
+	index.add("g2", device("b"));
+	index.hardwareIds("g1", 1);
+
+	// Changed without triggers, as if through another instance.
+	index.add("g2", device("c"));
+	assertArrayEquals(new String[] { "a", "b" }, index.hardwareIds("g1", REFRESH));
+	assertArrayEquals(new String[] { "a", "c" }, index.hardwareIds("g1", REFRESH + 1));
+	assertEquals(4, index.listings);
+    }
+
+    /**
+     * Assert that adding an element to a group is rejected as a cycle.
+     * 
+     * @param index
+     * @param groupToken
+     * @param element
+     * @throws Exception
+     */
+    protected void assertCycle(DeviceGroupIndex index, String groupToken, IDeviceGroupElement element)
+	    throws Exception {
+	try {
+	    index.assertNoCycles(groupToken, requests(element));
+	    fail("Cycle not detected.");
+	} catch (SiteWhereException e) {
+	    // Expected.
+	}
+    }
+
+    /**
+     * Create a device element.
+     * 
+     * @param hardwareId
+     * @return
+     */
+    protected static IDeviceGroupElement device(String hardwareId) {
+	return element(GroupElementType.Device, hardwareId);
+    }
+
+    /**
+     * Create a nested group element.
+     * 
+     * @param groupToken
+     * @return
+     */
+    protected static IDeviceGroupElement group(String groupToken) {
+	return element(GroupElementType.Group, groupToken);
+    }
+
+    /**
+     * Create a group element.
+     * 
+     * @param type
+     * @param elementId
+     * @return
+     */
+    protected static IDeviceGroupElement element(GroupElementType type, String elementId) {
+	DeviceGroupElement element = new DeviceGroupElement();
+	element.setType(type);
+	element.setElementId(elementId);
+	return element;
+    }
+
+    /**
+     * Create a list of elements.
+     * 
+     * @param elements
+     * @return
+     */
+    protected static List<IDeviceGroupElement> elements(IDeviceGroupElement... elements) {
+	List<IDeviceGroupElement> result = new ArrayList<IDeviceGroupElement>();
+	for (IDeviceGroupElement element : elements) {
+	    result.add(element);
+	}
+	return result;
+    }
+
+    /**
+     * Create requests for adding elements.
+     * 
+     * @param elements
+     * @return
+     */
+    protected static List<IDeviceGroupElementCreateRequest> requests(IDeviceGroupElement... elements) {
+	List<IDeviceGroupElementCreateRequest> result = new ArrayList<IDeviceGroupElementCreateRequest>();
+	for (IDeviceGroupElement element : elements) {
+	    DeviceGroupElementCreateRequest request = new DeviceGroupElementCreateRequest();
+	    request.setType(element.getType());
+	    request.setElementId(element.getElementId());
+	    result.add(request);
+	}
+	return result;
+    }
+
+    /**
+     * Index that lists elements from a local map rather than device management.
+     * 
+     * @author Derek
+     */
+    private static class TestIndex extends DeviceGroupIndex {
+
+	/** Elements returned by listing by group token */
+	Map<String, List<IDeviceGroupElement>> elements = new HashMap<String, List<IDeviceGroupElement>>();
+
+	/** Run while listing to simulate concurrent triggers */
+	volatile Runnable duringListing;
+
+	/** Number of listings */
+	int listings;
+
+	public TestIndex() {
+	    super(createTenant(), REFRESH);
+	}
+
+	/**
+	 * Set the elements stored for a group.
+	 * 
+	 * @param groupToken
+	 * @param groupElements
+	 */
+	void add(String groupToken, IDeviceGroupElement... groupElements) {
+	    elements.put(groupToken, elements(groupElements));
+	}
+
+	/**
+	 * Get flattened hardware ids for a group.
+	 * 
+	 * @param groupToken
+	 * @param now
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	String[] hardwareIds(String groupToken, long now) throws SiteWhereException {
+	    return getDeviceHardwareIds(groupToken, now);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.device.group.DeviceGroupIndex#listElements(java.lang.
+	 * String)
+	 */
+	@Override
+	protected List<IDeviceGroupElement> listElements(String groupToken) throws SiteWhereException {
+	    listings++;
+	    List<IDeviceGroupElement> stored = elements.get(groupToken);
+	    List<IDeviceGroupElement> listed = new ArrayList<IDeviceGroupElement>();
+	    if (stored != null) {
+		listed.addAll(stored);
+	    }
+	    Runnable hook = duringListing;
+	    if (hook != null) {
+		hook.run();
+	    }
+	    return listed;
+	}
+
+	/**
+	 * Create tenant for index.
+	 * 
+	 * @return
+	 */
+	static Tenant createTenant() {
+	    Tenant tenant = new Tenant();
+	    tenant.setId("test");
+	    return tenant;
+	}
+    }
+}
\ No newline at end of file
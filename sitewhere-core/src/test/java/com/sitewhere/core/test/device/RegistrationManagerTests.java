@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.device;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sitewhere.device.communication.RegistrationManager;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.DeviceSpecification;
+import com.sitewhere.rest.model.device.Site;
+import com.sitewhere.rest.model.device.event.request.DeviceRegistrationRequest;
+import com.sitewhere.rest.model.tenant.Tenant;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.device.command.RegistrationFailureReason;
+import com.sitewhere.spi.device.command.RegistrationSuccessReason;
+import com.sitewhere.spi.device.communication.IDeviceRegistrationResult;
+import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
+import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceCreateRequest;
+
+/**
+ * Tests batched handling of registration requests in
+ * {@link RegistrationManager} against an in-memory device store.
+ * 
+ * @author Derek
+ */
+public class RegistrationManagerTests {
+
+    /** Valid specification token */
+    private static final String SPEC = "spec";
+
+    /** Valid site token */
+    private static final String SITE = "site";
+
+    /** Manager under test */
+    private TestRegistrationManager manager;
+
+    @After
+    public void tearDown() throws Exception {
+	if (manager != null) {
+	    manager.stop(null);
+	}
+    }
+
+    @Test
+    public void testDuplicateHardwareIdsInBatch() throws Exception {
+	manager = new TestRegistrationManager();
+	DeviceRegistrationRequest first = createRequest("a", SPEC, null);
+	first.setMetadata(Collections.singletonMap("version", "1"));
+	DeviceRegistrationRequest second = createRequest("a", SPEC, null);
+	second.setMetadata(Collections.singletonMap("version", "2"));
+
+	List<IDeviceRegistrationResult> results = manager.handleDeviceRegistrations(
+		Arrays.<IDeviceRegistrationRequest> asList(first, createRequest("b", SPEC, SITE), second), true);
+	assertEquals(2, results.size());
+	assertEquals(1, manager.store.deviceBatches.size());
+	assertEquals(2, manager.store.deviceBatches.get(0).size());
+	assertEquals("2", manager.store.devices.get("a").getMetadata("version"));
+	for (IDeviceRegistrationResult result : results) {
+	    assertTrue(result.isSuccessful());
+	    assertEquals(RegistrationSuccessReason.NewRegistration, result.getSuccessReason());
+	    assertEquals(manager.store.devices.get(result.getHardwareId()).getAssignmentToken(),
+		    result.getAssignmentToken());
+	}
+	assertEquals(Arrays.asList("ack:a:true", "ack:b:true"), manager.responses);
+    }
+
+    @Test
+    public void testConcurrentlyCreatedDeviceReloaded() throws Exception {
+	manager = new TestRegistrationManager();
+	manager.store.createdElsewhere.add("a");
+	manager.store.assignedElsewhere.add("b");
+
+	List<IDeviceRegistrationResult> results = manager.handleDeviceRegistrations(
+		Arrays.<IDeviceRegistrationRequest> asList(createRequest("a", SPEC, null),
+			createRequest("b", SPEC, null)),
+		true);
+	IDeviceRegistrationResult a = results.get(0);
+	assertTrue(a.isSuccessful());
+	assertEquals(RegistrationSuccessReason.AlreadyRegistered, a.getSuccessReason());
+	assertEquals(manager.store.devices.get("a").getAssignmentToken(), a.getAssignmentToken());
+
+	IDeviceRegistrationResult b = results.get(1);
+	assertTrue(b.isSuccessful());
+	assertEquals(RegistrationSuccessReason.NewRegistration, b.getSuccessReason());
+	assertEquals("elsewhere-b", b.getAssignmentToken());
+	assertEquals(Arrays.asList("ack:a:false", "ack:b:true"), manager.responses);
+    }
+
+    @Test
+    public void testInvalidSiteOrSpecification() throws Exception {
+	manager = new TestRegistrationManager();
+	manager.store.devices.put("c", createDevice("c", "other", "assn-c"));
+
+	List<IDeviceRegistrationResult> results = manager.handleDeviceRegistrations(
+		Arrays.<IDeviceRegistrationRequest> asList(createRequest("a", SPEC, "missing"),
+			createRequest("b", "missing", null), createRequest("c", SPEC, null)),
+		true);
+	assertFalse(results.get(0).isSuccessful());
+	assertNull(results.get(0).getFailureReason());
+	assertEquals(RegistrationFailureReason.InvalidSpecificationToken, results.get(1).getFailureReason());
+	assertEquals(RegistrationFailureReason.InvalidSpecificationToken, results.get(2).getFailureReason());
+	assertTrue(manager.store.deviceBatches.isEmpty());
+	assertEquals(Arrays.asList("invalidSpec:b", "invalidSpec:c"), manager.responses);
+    }
+
+    @Test
+    public void testNewDevicesNotAllowed() throws Exception {
+	manager = new TestRegistrationManager();
+	manager.setAllowNewDevices(false);
+	manager.store.devices.put("b", createDevice("b", SPEC, "assn-b"));
+
+	List<IDeviceRegistrationResult> results = manager.handleDeviceRegistrations(
+		Arrays.<IDeviceRegistrationRequest> asList(createRequest("a", SPEC, null),
+			createRequest("b", SPEC, null)),
+		true);
+	assertEquals(RegistrationFailureReason.NewDevicesNotAllowed, results.get(0).getFailureReason());
+	assertTrue(results.get(1).isSuccessful());
+	assertEquals(RegistrationSuccessReason.AlreadyRegistered, results.get(1).getSuccessReason());
+	assertEquals("assn-b", results.get(1).getAssignmentToken());
+	assertTrue(manager.store.deviceBatches.isEmpty());
+	assertTrue(manager.store.assignmentBatches.isEmpty());
+	assertEquals(Arrays.asList("ack:b:false"), manager.responses);
+    }
+
+    @Test
+    public void testBatchFlushedWhenFull() throws Exception {
+	manager = new TestRegistrationManager();
+	manager.setBatchSize(3);
+	manager.setMaxBatchWaitMs(60000);
+	manager.start(null);
+	for (int i = 0; i < 3; i++) {
+	    manager.handleDeviceRegistration(createRequest("hw-" + i, SPEC, null));
+	}
+	assertEquals(Integer.valueOf(3), manager.batches.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBatchFlushedAfterWait() throws Exception {
+	manager = new TestRegistrationManager();
+	manager.setBatchSize(100);
+	manager.setMaxBatchWaitMs(100);
+	manager.start(null);
+	long start = System.currentTimeMillis();
+	manager.handleDeviceRegistration(createRequest("a", SPEC, null));
+	manager.handleDeviceRegistration(createRequest("b", SPEC, null));
+	assertEquals(Integer.valueOf(2), manager.batches.poll(5, TimeUnit.SECONDS));
+	assertTrue(System.currentTimeMillis() - start >= 100);
+	assertEquals(2, manager.store.devices.size());
+    }
+
+    @Test
+    public void testStopProcessesQueuedRegistrations() throws Exception {
+	manager = new TestRegistrationManager();
+	manager.setBatchSize(100);
+	manager.setMaxBatchWaitMs(60000);
+	manager.start(null);
+	for (int i = 0; i < 5; i++) {
+	    manager.handleDeviceRegistration(createRequest("hw-" + i, SPEC, null));
+	}
+	long start = System.currentTimeMillis();
+	manager.stop(null);
+	assertTrue(System.currentTimeMillis() - start < 5000);
+	assertEquals(5, manager.store.devices.size());
+	assertEquals(5, manager.responses.size());
+	manager = null;
+    }
+
+    @Test
+    public void testStopWaitIsBounded() throws Exception {
+	manager = new TestRegistrationManager();
+	manager.setBatchSize(2);
+	manager.setMaxBatchWaitMs(10);
+	manager.setShutdownWaitMs(200);
+	manager.block = new CountDownLatch(1);
+	manager.start(null);
+	for (int i = 0; i < 5; i++) {
+	    manager.handleDeviceRegistration(createRequest("hw-" + i, SPEC, null));
+	}
+	assertTrue(manager.blocked.await(5, TimeUnit.SECONDS));
+
+	// Stop gives up on the queued requests without cutting off the batch.
+	long start = System.currentTimeMillis();
+	manager.stop(null);
+	assertTrue(System.currentTimeMillis() - start < 5000);
+	manager.block.countDown();
+	assertEquals(Integer.valueOf(2), manager.batches.poll(5, TimeUnit.SECONDS));
+	assertFalse(manager.interrupted);
+	assertEquals(2, manager.store.devices.size());
+	assertNull(manager.batches.poll(200, TimeUnit.MILLISECONDS));
+	manager = null;
+    }
+
+    @Test
+    public void testRateLimitedAcksDoNotHoldUpBatches() throws Exception {
+	manager = new TestRegistrationManager();
+	manager.setBatchSize(100);
+	manager.setMaxBatchWaitMs(10);
+	manager.setAckRateLimit(2);
+	manager.start(null);
+	long start = System.currentTimeMillis();
+	for (int i = 0; i < 4; i++) {
+	    manager.handleDeviceRegistration(createRequest("hw-" + i, SPEC, null));
+	}
+	assertEquals(Integer.valueOf(4), manager.batches.poll(5, TimeUnit.SECONDS));
+	assertTrue(System.currentTimeMillis() - start < 1000);
+
+	// Responses trickle out at the configured rate.
+	long deadline = System.currentTimeMillis() + 5000;
+	while ((manager.responses.size() < 4) && (System.currentTimeMillis() < deadline)) {
+	    Thread.sleep(10);
+	}
+	assertEquals(4, manager.responses.size());
+	assertTrue(System.currentTimeMillis() - start >= 1000);
+    }
+
+    /**
+     * Create a registration request.
+     * 
+     * @param hardwareId
+     * @param specification
+     * @param site
+     * @return
+     */
+    protected static DeviceRegistrationRequest createRequest(String hardwareId, String specification, String site) {
+	DeviceRegistrationRequest request = new DeviceRegistrationRequest();
+	request.setHardwareId(hardwareId);
+	request.setSpecificationToken(specification);
+	request.setSiteToken(site);
+	return request;
+    }
+
+    /**
+     * Create a device.
+     * 
+     * @param hardwareId
+     * @param specification
+     * @param assignment
+     * @return
+     */
+    protected static Device createDevice(String hardwareId, String specification, String assignment) {
+	Device device = new Device();
+	device.setHardwareId(hardwareId);
+	device.setSpecificationToken(specification);
+	device.setSiteToken(SITE);
+	device.setAssignmentToken(assignment);
+	return device;
+    }
+
+    /**
+     * Registration manager that uses an in-memory store and records responses
+     * instead of delivering them.
+     */
+    private static class TestRegistrationManager extends RegistrationManager {
+
+	/** Device store */
+	private DeviceStore store = new DeviceStore();
+
+	/** Fake device management backed by store */
+	private IDeviceManagement management = (IDeviceManagement) Proxy.newProxyInstance(
+		IDeviceManagement.class.getClassLoader(), new Class<?>[] { IDeviceManagement.class }, store);
+
+	/** Responses sent to devices */
+	private List<String> responses = Collections.synchronizedList(new ArrayList<String>());
+
+	/** Sizes of batches handled */
+	private BlockingQueue<Integer> batches = new LinkedBlockingQueue<Integer>();
+
+	/** Blocks handling of batches until released (null to not block) */
+	private CountDownLatch block;
+
+	/** Counts down when a batch is blocked */
+	private CountDownLatch blocked = new CountDownLatch(1);
+
+	/** Indicates a blocked batch was interrupted */
+	private volatile boolean interrupted = false;
+
+	public TestRegistrationManager() {
+	    Tenant tenant = new Tenant();
+	    tenant.setId("test");
+	    setTenant(tenant);
+	    setAutoAssignSiteToken(SITE);
+	    setAckRateLimit(0);
+	    setBatchSize(1);
+	}
+
+	@Override
+	public List<IDeviceRegistrationResult> handleDeviceRegistrations(List<IDeviceRegistrationRequest> requests,
+		boolean acknowledge) throws SiteWhereException {
+	    if (block != null) {
+		blocked.countDown();
+		try {
+		    block.await();
+		} catch (InterruptedException e) {
+		    interrupted = true;
+		}
+	    }
+	    List<IDeviceRegistrationResult> results = super.handleDeviceRegistrations(requests, acknowledge);
+	    batches.add(requests.size());
+	    return results;
+	}
+
+	@Override
+	protected IDeviceManagement getDeviceManagement() throws SiteWhereException {
+	    return management;
+	}
+
+	@Override
+	protected void sendRegistrationAck(String hardwareId, boolean newRegistration) throws SiteWhereException {
+	    responses.add("ack:" + hardwareId + ":" + newRegistration);
+	}
+
+	@Override
+	protected void sendInvalidSpecification(String hardwareId) throws SiteWhereException {
+	    responses.add("invalidSpec:" + hardwareId);
+	}
+
+	@Override
+	protected void sendSiteTokenRequired(String hardwareId) throws SiteWhereException {
+	    responses.add("siteRequired:" + hardwareId);
+	}
+    }
+
+    /**
+     * Handles the bulk device management calls used for registration. Devices
+     * and assignments can be marked as created by another node so that the
+     * bulk create skips them.
+     */
+    private static class DeviceStore implements InvocationHandler {
+
+	/** Devices by hardware id */
+	private Map<String, Device> devices = new HashMap<String, Device>();
+
+	/** Devices created by another node during the bulk create */
+	private Set<String> createdElsewhere = new HashSet<String>();
+
+	/** Devices assigned by another node during the bulk assign */
+	private Set<String> assignedElsewhere = new HashSet<String>();
+
+	/** Requests passed to each bulk device create */
+	private List<List<IDeviceCreateRequest>> deviceBatches = new ArrayList<List<IDeviceCreateRequest>>();
+
+	/** Requests passed to each bulk assignment create */
+	private List<List<IDeviceAssignmentCreateRequest>> assignmentBatches =
+		new ArrayList<List<IDeviceAssignmentCreateRequest>>();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+	 * java.lang.reflect.Method, java.lang.Object[])
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	    if (method.getName().equals("getDevicesByHardwareIds")) {
+		List<IDevice> found = new ArrayList<IDevice>();
+		for (String hardwareId : (List<String>) args[0]) {
+		    if (devices.containsKey(hardwareId)) {
+			found.add(devices.get(hardwareId));
+		    }
+		}
+		return found;
+	    } else if (method.getName().equals("getDeviceSpecificationsByTokens")) {
+		List<IDeviceSpecification> found = new ArrayList<IDeviceSpecification>();
+		if (((List<String>) args[0]).contains(SPEC)) {
+		    DeviceSpecification specification = new DeviceSpecification();
+		    specification.setToken(SPEC);
+		    found.add(specification);
+		}
+		return found;
+	    } else if (method.getName().equals("getSitesByTokens")) {
+		List<ISite> found = new ArrayList<ISite>();
+		if (((List<String>) args[0]).contains(SITE)) {
+		    Site site = new Site();
+		    site.setToken(SITE);
+		    found.add(site);
+		}
+		return found;
+	    } else if (method.getName().equals("getSiteByToken")) {
+		if (!SITE.equals(args[0])) {
+		    return null;
+		}
+		Site site = new Site();
+		site.setToken(SITE);
+		return site;
+	    } else if (method.getName().equals("createDevices")) {
+		List<IDeviceCreateRequest> requests = (List<IDeviceCreateRequest>) args[0];
+		deviceBatches.add(requests);
+		List<IDevice> created = new ArrayList<IDevice>();
+		for (IDeviceCreateRequest request : requests) {
+		    Device device = createDevice(request.getHardwareId(), request.getSpecificationToken(), null);
+		    device.setSiteToken(request.getSiteToken());
+		    device.setMetadata(request.getMetadata());
+		    devices.put(device.getHardwareId(), device);
+		    if (!createdElsewhere.contains(device.getHardwareId())) {
+			created.add(device);
+		    }
+		}
+		return created;
+	    } else if (method.getName().equals("createDeviceAssignments")) {
+		List<IDeviceAssignmentCreateRequest> requests = (List<IDeviceAssignmentCreateRequest>) args[0];
+		assignmentBatches.add(requests);
+		List<IDeviceAssignment> created = new ArrayList<IDeviceAssignment>();
+		for (IDeviceAssignmentCreateRequest request : requests) {
+		    Device device = devices.get(request.getDeviceHardwareId());
+		    if (assignedElsewhere.contains(device.getHardwareId())) {
+			device.setAssignmentToken("elsewhere-" + device.getHardwareId());
+			continue;
+		    }
+		    DeviceAssignment assignment = new DeviceAssignment();
+		    assignment.setToken("assn-" + device.getHardwareId());
+		    assignment.setDeviceHardwareId(device.getHardwareId());
+		    device.setAssignmentToken(assignment.getToken());
+		    created.add(assignment);
+		}
+		return created;
+	    }
+	    throw new UnsupportedOperationException(method.getName());
+	}
+    }
+}
\ No newline at end of file
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.device;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.sitewhere.device.SpecificationDeviceIndex;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.tenant.Tenant;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDevice;
+
+/**
+ * Tests listing, changes applied during a listing and checks for new devices in
+ * {@link SpecificationDeviceIndex}.
+ * 
+ * @author Derek
+ */
+public class SpecificationDeviceIndexTests {
+
+    /** Specification used by tests */
+    private static final String SPEC = "spec";
+
+    /** Refresh interval used by tests */
+    private static final long REFRESH = 1000;
+
+    @Test
+    public void testLoadOnFirstRequest() throws Exception {
+	TestIndex index = new TestIndex();
+	index.devices.add(createDevice("a", SPEC));
+	index.devices.add(createDevice("b", SPEC));
+	assertFalse(index.isIndexed("a"));
+
+	assertEquals(set("a", "b"), index.hardwareIds(1));
+	assertTrue(index.isIndexed("a"));
+	assertEquals(1, index.listings);
+
+	index.hardwareIds(2);
+	assertEquals(1, index.listings);
+    }
+
+    @Test
+    public void testChangesDuringLoadTakePrecedence() throws Exception {
+	final TestIndex index = new TestIndex();
+	index.devices.add(createDevice("a", SPEC));
+	index.devices.add(createDevice("b", SPEC));
+	index.duringListing = new Runnable() {
+
+	    @Override
+	    public void run() {
+		index.onDeviceDeleted(createDevice("a", SPEC));
+		index.onDeviceChanged(createDevice("c", SPEC));
+	    }
+	};
+	assertEquals(set("b", "c"), index.hardwareIds(1));
+	assertFalse(index.isIndexed("a"));
+	assertTrue(index.isIndexed("c"));
+    }
+
+    @Test
+    public void testTriggersUpdateLoadedEntry() throws Exception {
+	TestIndex index = new TestIndex();
+	index.devices.add(createDevice("a", SPEC));
+	index.hardwareIds(1);
+
+	index.onDeviceChanged(createDevice("b", SPEC));
+	assertEquals(set("a", "b"), index.hardwareIds(2));
+
+	index.onDeviceChanged(createDevice("a", "other"));
+	assertEquals(set("b"), index.hardwareIds(3));
+	assertFalse(index.isIndexed("a"));
+    }
+
+    @Test
+    public void testRoutingNeverListsAgain() throws Exception {
+	TestIndex index = new TestIndex();
+	index.devices.add(createDevice("a", SPEC));
+	index.hardwareIds(1);
+
+	index.devices.add(createDevice("b", SPEC));
+	assertEquals(set("a"), index.hardwareIds(10 * REFRESH));
+	assertEquals(1, index.listings);
+	assertNull(index.since);
+    }
+
+    @Test
+    public void testRefreshAddsDevicesCreatedElsewhere() throws Exception {
+	TestIndex index = new TestIndex();
+	index.devices.add(createDevice("a", SPEC));
+	index.hardwareIds(5 * REFRESH);
+
+	// Created without triggers, as if through another instance.
+	index.devices.add(createDevice("b", SPEC));
+	index.refresh(6 * REFRESH);
+	assertEquals(new Date(4 * REFRESH), index.since);
+	assertEquals(set("a", "b"), index.hardwareIds(6 * REFRESH));
+	assertTrue(index.isIndexed("b"));
+
+	index.refresh(7 * REFRESH);
+	assertEquals(new Date(5 * REFRESH), index.since);
+	assertEquals(3, index.listings);
+    }
+
+    @Test
+    public void testRefreshKeepsTriggerChanges() throws Exception {
+	final TestIndex index = new TestIndex();
+	index.hardwareIds(1);
+	index.devices.add(createDevice("a", SPEC));
+	index.duringListing = new Runnable() {
+
+	    @Override
+	    public void run() {
+		index.onDeviceDeleted(createDevice("a", SPEC));
+	    }
+	};
+	index.refresh(REFRESH);
+	assertEquals(set(), index.hardwareIds(REFRESH));
+	assertFalse(index.isIndexed("a"));
+    }
+
+    @Test
+    public void testFailedRefreshKeepsTargets() throws Exception {
+	TestIndex index = new TestIndex();
+	index.devices.add(createDevice("a", SPEC));
+	index.hardwareIds(1);
+
+	index.failListing = true;
+	index.refresh(REFRESH + 1);
+	assertEquals(set("a"), index.hardwareIds(REFRESH + 1));
+
+	// Window still starts from the last successful check.
+	index.failListing = false;
+	index.devices.add(createDevice("b", SPEC));
+	index.refresh(REFRESH + 2);
+	assertEquals(new Date(1 - REFRESH), index.since);
+	assertEquals(set("a", "b"), index.hardwareIds(REFRESH + 2));
+    }
+
+    /**
+     * Create a device.
+     * 
+     * @param hardwareId
+     * @param specificationToken
+     * @return
+     */
+    protected static Device createDevice(String hardwareId, String specificationToken) {
+	Device device = new Device();
+	device.setHardwareId(hardwareId);
+	device.setSpecificationToken(specificationToken);
+	return device;
+    }
+
+    /**
+     * Create a set of hardware ids.
+     * 
+     * @param hardwareIds
+     * @return
+     */
+    protected static Set<String> set(String... hardwareIds) {
+	Set<String> result = new HashSet<String>();
+	for (String hardwareId : hardwareIds) {
+	    result.add(hardwareId);
+	}
+	return result;
+    }
+
+    /**
+     * Index that lists devices from a local list rather than device
+     * management.
+     * 
+     * @author Derek
+     */
+    private static class TestIndex extends SpecificationDeviceIndex {
+
+	/** Devices returned by listing */
+	List<IDevice> devices = new ArrayList<IDevice>();
+
+	/** Run while listing to simulate concurrent triggers */
+	Runnable duringListing;
+
+	/** Indicates whether listing should fail */
+	boolean failListing;
+
+	/** Number of listings */
+	int listings;
+
+	/** Start of last check for new devices */
+	Date since;
+
+	public TestIndex() {
+	    super(createTenant(), REFRESH);
+	}
+
+	/**
+	 * Get hardware ids indexed for the test specification.
+	 * 
+	 * @param now
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	Set<String> hardwareIds(long now) throws SiteWhereException {
+	    Set<String> result = new HashSet<String>();
+	    for (Target target : getTargets(SPEC, now)) {
+		result.add(target.getDevice().getHardwareId());
+	    }
+	    return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.device.SpecificationDeviceIndex#listDevices(java.
+	 * lang.String)
+	 */
+	@Override
+	protected Collection<IDevice> listDevices(String specificationToken) throws SiteWhereException {
+	    listings++;
+	    if (failListing) {
+		throw new SiteWhereException("Listing failed.");
+	    }
+	    List<IDevice> listed = new ArrayList<IDevice>(devices);
+	    if (duringListing != null) {
+		duringListing.run();
+	    }
+	    return listed;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.device.SpecificationDeviceIndex#listDevicesCreatedSince(
+	 * java.lang.String, java.util.Date)
+	 */
+	@Override
+	protected Collection<IDevice> listDevicesCreatedSince(String specificationToken, Date since)
+		throws SiteWhereException {
+	    this.since = since;
+	    return listDevices(specificationToken);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.device.SpecificationDeviceIndex#refresh(long)
+	 */
+	@Override
+	protected void refresh(long now) {
+	    super.refresh(now);
+	}
+
+	/**
+	 * Create tenant for index.
+	 * 
+	 * @return
+	 */
+	static Tenant createTenant() {
+	    Tenant tenant = new Tenant();
+	    tenant.setId("test");
+	    return tenant;
+	}
+    }
+}
\ No newline at end of file
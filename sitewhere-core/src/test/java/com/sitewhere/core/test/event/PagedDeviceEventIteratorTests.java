@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sitewhere.device.DeviceEventManagementDecorator;
+import com.sitewhere.device.event.PagedDeviceEventIterator;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
+
+/**
+ * Tests that {@link PagedDeviceEventIterator} walks all pages of results and
+ * honors single page requests.
+ * 
+ * @author Derek
+ */
+public class PagedDeviceEventIteratorTests {
+
+    @Test
+    public void testIteratesAllPages() throws Exception {
+	PagingEventManagement management = new PagingEventManagement(7);
+	PagedDeviceEventIterator iterator = PagedDeviceEventIterator.forAssignment(management, "token", null,
+		new DateRangeSearchCriteria(1, 0, null, null));
+	iterator.setPageSize(3);
+	int count = 0;
+	while (iterator.hasNext()) {
+	    assertEquals("event-" + count, iterator.next().getId());
+	    count++;
+	}
+	assertEquals(7, count);
+	assertEquals(3, management.pagesLoaded);
+    }
+
+    @Test
+    public void testSinglePageRequest() throws Exception {
+	PagingEventManagement management = new PagingEventManagement(7);
+	PagedDeviceEventIterator iterator = PagedDeviceEventIterator.forAssignment(management, "token", null,
+		new DateRangeSearchCriteria(2, 2, null, null));
+	assertEquals("event-2", iterator.next().getId());
+	assertEquals("event-3", iterator.next().getId());
+	assertFalse(iterator.hasNext());
+	assertEquals(1, management.pagesLoaded);
+    }
+
+    @Test
+    public void testCloseStopsIteration() throws Exception {
+	PagingEventManagement management = new PagingEventManagement(7);
+	PagedDeviceEventIterator iterator = PagedDeviceEventIterator.forAssignment(management, "token", null,
+		new DateRangeSearchCriteria(1, 0, null, null));
+	iterator.next();
+	iterator.close();
+	assertFalse(iterator.hasNext());
+    }
+
+    /**
+     * Event management that pages through a fixed number of events.
+     */
+    private static class PagingEventManagement extends DeviceEventManagementDecorator {
+
+	/** All events */
+	private List<IDeviceEvent> events = new ArrayList<IDeviceEvent>();
+
+	/** Number of pages loaded */
+	private int pagesLoaded;
+
+	public PagingEventManagement(int count) {
+	    super(null);
+	    for (int i = 0; i < count; i++) {
+		DeviceAlert alert = new DeviceAlert();
+		alert.setId("event-" + i);
+		events.add(alert);
+	    }
+	}
+
+	@Override
+	public ISearchResults<IDeviceEvent> listDeviceEvents(String assignmentToken,
+		IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	    pagesLoaded++;
+	    int start = Math.min(events.size(), (criteria.getPageNumber() - 1) * criteria.getPageSize());
+	    int end = Math.min(events.size(), start + criteria.getPageSize());
+	    return new SearchResults<IDeviceEvent>(events.subList(start, end), events.size());
+	}
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.geospatial;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.geospatial.ZoneTest;
+import com.sitewhere.geospatial.ZoneTestEventProcessor;
+import com.sitewhere.rest.model.device.event.DeviceEventBatch;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.geospatial.ZoneContainment;
+
+/**
+ * Tests that queued zone alerts survive failed writes in
+ * {@link ZoneTestEventProcessor}.
+ * 
+ * @author Derek
+ */
+public class ZoneAlertFlushTests {
+
+    /** Processor under test */
+    private TestProcessor processor;
+
+    @Before
+    public void setUp() throws Exception {
+	processor = new TestProcessor();
+	processor.setAlertFlushInterval(60000);
+	processor.setMaxAlertAttempts(3);
+	processor.startFlusher();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	processor.stopFlusher();
+    }
+
+    @Test
+    public void testFailedWriteRetriedOnNextFlush() throws Exception {
+	processor.queue("a");
+	processor.queue("b");
+	processor.queue("a");
+	processor.failures = 1;
+	processor.flush();
+	assertEquals(1, processor.stored.size());
+
+	processor.flush();
+	assertEquals(2, processor.stored.size());
+	int alerts = 0;
+	for (DeviceEventBatch batch : processor.stored) {
+	    alerts += batch.getAlerts().size();
+	}
+	assertEquals(3, alerts);
+
+	processor.flush();
+	assertEquals(2, processor.stored.size());
+    }
+
+    @Test
+    public void testAlertDroppedAfterMaxAttempts() throws Exception {
+	processor.queue("a");
+	processor.failures = 3;
+	processor.flush();
+	processor.flush();
+	processor.flush();
+	processor.failures = 0;
+	processor.flush();
+	assertEquals(0, processor.stored.size());
+	assertEquals(3, processor.attempts);
+    }
+
+    /**
+     * Zone test processor that records alert writes instead of storing them.
+     */
+    private static class TestProcessor extends ZoneTestEventProcessor {
+
+	/** Zone test used for alerts */
+	private ZoneTest test = new ZoneTest();
+
+	/** Batches written */
+	private List<DeviceEventBatch> stored = new ArrayList<DeviceEventBatch>();
+
+	/** Number of writes that fail before writes succeed */
+	private int failures;
+
+	/** Number of writes attempted */
+	private int attempts;
+
+	public TestProcessor() {
+	    test.setZoneToken("zone");
+	    test.setCondition(ZoneContainment.Inside);
+	    test.setAlertType("inside");
+	}
+
+	void startFlusher() {
+	    startAlertFlusher();
+	}
+
+	void stopFlusher() {
+	    stopAlertFlusher();
+	}
+
+	void flush() {
+	    flushAlerts();
+	}
+
+	void queue(String assignmentToken) throws SiteWhereException {
+	    DeviceLocation location = new DeviceLocation();
+	    location.setDeviceAssignmentToken(assignmentToken);
+	    queueAlert(location, test);
+	}
+
+	@Override
+	protected void storeAlerts(String assignmentToken, DeviceEventBatch batch) throws SiteWhereException {
+	    attempts++;
+	    if (failures > 0) {
+		failures--;
+		throw new SiteWhereException("Write failed.");
+	    }
+	    stored.add(batch);
+	}
+    }
+}
\ No newline at end of file
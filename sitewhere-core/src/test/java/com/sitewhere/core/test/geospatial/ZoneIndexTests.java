@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.geospatial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.sitewhere.core.test.Benchmarks;
+import com.sitewhere.core.test.Benchmarks.Benchmark;
+import com.sitewhere.geospatial.GeoUtils;
+import com.sitewhere.geospatial.SiteZoneIndex;
+import com.sitewhere.geospatial.ZoneIndex;
+import com.sitewhere.rest.model.common.Location;
+import com.sitewhere.rest.model.device.Zone;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.tenant.Tenant;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IZone;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Compares results and throughput of the spatial zone index against testing
+ * every zone polygon individually and checks that site indexes are refreshed.
+ * 
+ * @author Derek
+ */
+public class ZoneIndexTests {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Skips benchmarks unless enabled */
+    @Rule
+    public Benchmarks benchmarks = new Benchmarks();
+
+    /** Number of zones in benchmark site */
+    private static final int ZONE_COUNT = 10000;
+
+    /** Number of locations tested */
+    private static final int LOCATION_COUNT = 2000;
+
+    @Test
+    public void testMatchesNaiveContainment() throws Exception {
+	Random random = new Random(7);
+	List<Zone> zones = createZones(random, 200);
+	List<DeviceLocation> locations = createLocations(random, 500);
+	List<Polygon> polygons = new ArrayList<Polygon>();
+	for (Zone zone : zones) {
+	    polygons.add(GeoUtils.createPolygonForZone(zone));
+	}
+	List<Set<String>> expected = naive(zones, polygons, locations);
+	List<Set<String>> actual = indexed(new SiteZoneIndex(zones), locations);
+	int matches = 0;
+	for (int i = 0; i < locations.size(); i++) {
+	    assertEquals(expected.get(i), actual.get(i));
+	    matches += actual.get(i).size();
+	}
+	assertTrue(matches > 0);
+    }
+
+    @Test
+    public void testSiteIndexRefreshedAfterInterval() throws Exception {
+	TestZoneIndex index = new TestZoneIndex(1000);
+	index.zones.addAll(createZones(new Random(7), 3));
+	SiteZoneIndex first = index.siteIndexAt("site", 0);
+	assertEquals(3, first.getZones().size());
+	assertSame(first, index.siteIndexAt("site", 999));
+	assertEquals(1, index.listings);
+
+	// Zone added through another instance is picked up after the interval.
+	Zone added = createZones(new Random(8), 1).get(0);
+	added.setToken("added");
+	index.zones.add(added);
+	assertEquals(3, index.siteIndexAt("site", 999).getZones().size());
+	assertEquals(4, index.siteIndexAt("site", 1000).getZones().size());
+	assertEquals(2, index.listings);
+    }
+
+    @Test
+    public void testReleasedIndexIsRecreated() throws Exception {
+	Tenant tenant = new Tenant();
+	tenant.setId("zone-index-test");
+	ZoneIndex index = ZoneIndex.getInstance(tenant);
+	assertSame(index, ZoneIndex.getInstance(tenant));
+	ZoneIndex.release(tenant);
+	assertNotSame(index, ZoneIndex.getInstance(tenant));
+	ZoneIndex.release(tenant);
+    }
+
+    @Test
+    @Benchmark
+    public void benchmarkZoneIndex() throws Exception {
+	Random random = new Random(42);
+	List<Zone> zones = createZones(random, ZONE_COUNT);
+	List<DeviceLocation> locations = createLocations(random, LOCATION_COUNT);
+
+	List<Polygon> polygons = new ArrayList<Polygon>();
+	for (Zone zone : zones) {
+	    polygons.add(GeoUtils.createPolygonForZone(zone));
+	}
+	SiteZoneIndex index = new SiteZoneIndex(zones);
+	assertEquals(ZONE_COUNT, index.size());
+
+	// Warm up both paths.
+	naive(zones, polygons, locations);
+	indexed(index, locations);
+
+	long start = System.nanoTime();
+	List<Set<String>> expected = naive(zones, polygons, locations);
+	long naiveNanos = System.nanoTime() - start;
+
+	start = System.nanoTime();
+	List<Set<String>> actual = indexed(index, locations);
+	long indexedNanos = System.nanoTime() - start;
+
+	int matches = 0;
+	for (int i = 0; i < locations.size(); i++) {
+	    assertEquals(expected.get(i), actual.get(i));
+	    matches += actual.get(i).size();
+	}
+	assertTrue(matches > 0);
+
+	LOGGER.info("Naive zone tests: " + (LOCATION_COUNT * 1000000000L / naiveNanos) + " locations/sec.");
+	LOGGER.info("Indexed zone tests: " + (LOCATION_COUNT * 1000000000L / indexedNanos) + " locations/sec.");
+    }
+
+    @Test
+    public void testInvalidZonesSkipped() throws Exception {
+	List<Zone> zones = createZones(new Random(1), 2);
+	Zone invalid = new Zone();
+	invalid.setToken("invalid");
+	invalid.getCoordinates().add(new Location(0.0, 0.0));
+	invalid.getCoordinates().add(new Location(1.0, 1.0));
+	zones.add(invalid);
+
+	SiteZoneIndex index = new SiteZoneIndex(zones);
+	assertEquals(2, index.size());
+	assertFalse(index.isIndexed("invalid"));
+	assertTrue(index.isIndexed(zones.get(0).getToken()));
+    }
+
+    /**
+     * Test each location against every zone polygon.
+     * 
+     * @param zones
+     * @param polygons
+     * @param locations
+     * @return
+     */
+    protected List<Set<String>> naive(List<Zone> zones, List<Polygon> polygons, List<DeviceLocation> locations) {
+	List<Set<String>> results = new ArrayList<Set<String>>();
+	for (DeviceLocation location : locations) {
+	    Point point = GeoUtils.createPointForLocation(location);
+	    Set<String> matches = new HashSet<String>();
+	    for (int i = 0; i < polygons.size(); i++) {
+		if (polygons.get(i).contains(point)) {
+		    matches.add(zones.get(i).getToken());
+		}
+	    }
+	    results.add(matches);
+	}
+	return results;
+    }
+
+    /**
+     * Test each location using the spatial index.
+     * 
+     * @param index
+     * @param locations
+     * @return
+     */
+    protected List<Set<String>> indexed(SiteZoneIndex index, List<DeviceLocation> locations) {
+	List<Set<String>> results = new ArrayList<Set<String>>();
+	for (DeviceLocation location : locations) {
+	    Set<String> matches = new HashSet<String>();
+	    for (IZone zone : index.getZonesContaining(GeoUtils.createPointForLocation(location))) {
+		matches.add(zone.getToken());
+	    }
+	    results.add(matches);
+	}
+	return results;
+    }
+
+    /**
+     * Create random convex-ish zones scattered over a one degree square.
+     * 
+     * @param random
+     * @param count
+     * @return
+     */
+    protected List<Zone> createZones(Random random, int count) {
+	List<Zone> zones = new ArrayList<Zone>();
+	for (int i = 0; i < count; i++) {
+	    double lat = 33.0 + random.nextDouble();
+	    double lon = -84.0 + random.nextDouble();
+	    double size = 0.005 + (random.nextDouble() * 0.02);
+	    int sides = 3 + random.nextInt(6);
+	    Zone zone = new Zone();
+	    zone.setToken("zone-" + i);
+	    zone.setSiteToken("site");
+	    for (int s = 0; s < sides; s++) {
+		double angle = (2 * Math.PI * s) / sides;
+		zone.getCoordinates().add(new Location(lat + (Math.sin(angle) * size), lon + (Math.cos(angle) * size)));
+	    }
+	    zones.add(zone);
+	}
+	return zones;
+    }
+
+    /**
+     * Create random locations in the same area as the zones.
+     * 
+     * @param random
+     * @param count
+     * @return
+     */
+    protected List<DeviceLocation> createLocations(Random random, int count) {
+	List<DeviceLocation> locations = new ArrayList<DeviceLocation>();
+	for (int i = 0; i < count; i++) {
+	    DeviceLocation location = new DeviceLocation();
+	    location.setSiteToken("site");
+	    location.setLatitude(33.0 + random.nextDouble());
+	    location.setLongitude(-84.0 + random.nextDouble());
+	    locations.add(location);
+	}
+	return locations;
+    }
+
+    /**
+     * Zone index that lists zones from memory.
+     */
+    private static class TestZoneIndex extends ZoneIndex {
+
+	/** Zones in the site */
+	private List<IZone> zones = new ArrayList<IZone>();
+
+	/** Number of times zones were listed */
+	private int listings;
+
+	public TestZoneIndex(long refreshInterval) {
+	    super(new Tenant(), refreshInterval);
+	}
+
+	/**
+	 * Get the site index as of the given time.
+	 * 
+	 * @param siteToken
+	 * @param now
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	SiteZoneIndex siteIndexAt(String siteToken, long now) throws SiteWhereException {
+	    return getSiteIndex(siteToken, now);
+	}
+
+	@Override
+	protected List<IZone> listZones(String siteToken) throws SiteWhereException {
+	    listings++;
+	    return new ArrayList<IZone>(zones);
+	}
+    }
+}
\ No newline at end of file
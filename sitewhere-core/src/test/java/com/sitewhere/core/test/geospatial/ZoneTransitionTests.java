@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.geospatial;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.sitewhere.geospatial.ZoneTransitionState;
+
+/**
+ * Tests enter, exit and dwell behavior of {@link ZoneTransitionState}.
+ * 
+ * @author Derek
+ */
+public class ZoneTransitionTests {
+
+    @Test
+    public void testEnterFiresOnce() throws Exception {
+	ZoneTransitionState state = new ZoneTransitionState(1);
+	assertFalse(state.update(0, false, true, 0, 1000));
+	assertTrue(state.update(0, true, true, 0, 2000));
+	assertFalse(state.update(0, true, true, 0, 3000));
+	assertFalse(state.update(0, true, true, 0, 4000));
+    }
+
+    @Test
+    public void testExitFiresOnEachExit() throws Exception {
+	ZoneTransitionState state = new ZoneTransitionState(1);
+	assertFalse(state.update(0, true, false, 0, 1000));
+	assertTrue(state.update(0, false, false, 0, 2000));
+	assertFalse(state.update(0, false, false, 0, 3000));
+	assertFalse(state.update(0, true, false, 0, 4000));
+	assertTrue(state.update(0, false, false, 0, 5000));
+    }
+
+    @Test
+    public void testFirstObservationCountsAsTransition() throws Exception {
+	ZoneTransitionState state = new ZoneTransitionState(1);
+	assertTrue(state.update(0, true, true, 0, 1000));
+	assertFalse(state.update(0, true, true, 0, 2000));
+    }
+
+    @Test
+    public void testDwell() throws Exception {
+	ZoneTransitionState state = new ZoneTransitionState(1);
+	assertFalse(state.update(0, true, true, 60000, 0));
+	assertFalse(state.update(0, true, true, 60000, 30000));
+	assertTrue(state.update(0, true, true, 60000, 60000));
+	assertFalse(state.update(0, true, true, 60000, 90000));
+
+	// Leaving and re-entering restarts the dwell period.
+	assertFalse(state.update(0, false, true, 60000, 100000));
+	assertFalse(state.update(0, true, true, 60000, 110000));
+	assertFalse(state.update(0, true, true, 60000, 150000));
+	assertTrue(state.update(0, true, true, 60000, 170000));
+    }
+
+    @Test
+    public void testTestsTrackedIndependently() throws Exception {
+	ZoneTransitionState state = new ZoneTransitionState(2);
+	assertTrue(state.update(0, true, true, 0, 1000));
+	assertFalse(state.update(1, true, false, 0, 1000));
+	assertFalse(state.update(0, false, true, 0, 2000));
+	assertTrue(state.update(1, false, false, 0, 2000));
+	assertTrue(state.isCompatible(2));
+	assertFalse(state.isCompatible(3));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.groovy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.sitewhere.core.test.Benchmarks;
+import com.sitewhere.core.test.Benchmarks.Benchmark;
+import com.sitewhere.groovy.configuration.GroovyScriptCache;
+
+import groovy.lang.Binding;
+import groovy.util.GroovyScriptEngine;
+import groovy.util.ResourceConnector;
+import groovy.util.ResourceException;
+
+/**
+ * Tests caching, reloading and throughput of {@link GroovyScriptCache}.
+ * 
+ * @author Derek
+ */
+public class GroovyScriptCacheTests {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Skips benchmarks unless enabled */
+    @Rule
+    public Benchmarks benchmarks = new Benchmarks();
+
+    /** Number of timed script executions */
+    private static final int ITERATIONS = 20000;
+
+    /** Folder containing scripts */
+    private File folder;
+
+    /** Connector that loads scripts from folder */
+    private ResourceConnector connector;
+
+    /** Engine used to compile scripts */
+    private GroovyScriptEngine engine;
+
+    @Before
+    public void setup() throws Exception {
+	folder = Files.createTempDirectory("groovy-cache").toFile();
+	connector = new ResourceConnector() {
+
+	    @Override
+	    public URLConnection getResourceConnection(String name) throws ResourceException {
+		File file = (name.startsWith("file:")) ? new File(URI.create(name)) : new File(folder, name);
+		if (!file.exists()) {
+		    throw new ResourceException("Script not found: " + name);
+		}
+		try {
+		    return file.toURI().toURL().openConnection();
+		} catch (IOException e) {
+		    throw new ResourceException(e);
+		}
+	    }
+	};
+	engine = new GroovyScriptEngine(connector);
+	engine.getConfig().setMinimumRecompilationInterval(0);
+    }
+
+    @After
+    public void cleanup() {
+	for (File file : folder.listFiles()) {
+	    file.delete();
+	}
+	folder.delete();
+    }
+
+    @Test
+    public void testBindingPerRun() throws Exception {
+	writeScript("double.groovy", "return payload * 2", 1000);
+	GroovyScriptCache cache = new GroovyScriptCache(engine, connector, 5000);
+	for (int i = 0; i < 100; i++) {
+	    assertEquals(i * 2, cache.run("double.groovy", createBinding(i)));
+	}
+    }
+
+    @Test
+    public void testNoStateBetweenRuns() throws Exception {
+	writeScript("state.groovy", "@groovy.transform.Field int count = 0\n"
+		+ "count++\n" + "def previous = binding.hasVariable('last') ? last : null\n" + "last = payload\n"
+		+ "return [count, previous]", 1000);
+	GroovyScriptCache cache = new GroovyScriptCache(engine, connector, 5000);
+	for (int i = 0; i < 10; i++) {
+	    List<?> result = (List<?>) cache.run("state.groovy", createBinding(i));
+	    assertEquals(1, result.get(0));
+	    assertNull(result.get(1));
+	}
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+	writeScript("version.groovy", "return 'v1'", 1000);
+	GroovyScriptCache cache = new GroovyScriptCache(engine, connector, 60000);
+	assertEquals("v1", cache.run("version.groovy", new Binding()));
+
+	// Check interval not reached, so only invalidation picks up the change.
+	writeScript("version.groovy", "return 'v2'", 2000);
+	assertEquals("v1", cache.run("version.groovy", new Binding()));
+	cache.clear();
+	assertEquals("v2", cache.run("version.groovy", new Binding()));
+    }
+
+    @Test
+    public void testReloadOnUpdate() throws Exception {
+	writeScript("version.groovy", "return 'v1'", 1000);
+	GroovyScriptCache cache = new GroovyScriptCache(engine, connector, 0);
+	assertEquals("v1", cache.run("version.groovy", new Binding()));
+
+	writeScript("version.groovy", "return 'v2'", 2000);
+	assertEquals("v2", cache.run("version.groovy", new Binding()));
+    }
+
+    @Test
+    public void testConcurrentRuns() throws Exception {
+	writeScript("sum.groovy", "def total = 0; for (x in 1..payload) { total += x }; return total", 1000);
+	final GroovyScriptCache cache = new GroovyScriptCache(engine, connector, 5000);
+	ExecutorService executor = Executors.newFixedThreadPool(8);
+	try {
+	    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+	    for (int t = 0; t < 8; t++) {
+		results.add(executor.submit(new Callable<Boolean>() {
+
+		    @Override
+		    public Boolean call() throws Exception {
+			for (int i = 1; i < 2000; i++) {
+			    Object total = cache.run("sum.groovy", createBinding(i));
+			    if (((Number) total).intValue() != (i * (i + 1)) / 2) {
+				return false;
+			    }
+			}
+			return true;
+		    }
+		}));
+	    }
+	    for (Future<Boolean> result : results) {
+		assertEquals(Boolean.TRUE, result.get());
+	    }
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    @Test
+    @Benchmark
+    public void testThroughput() throws Exception {
+	writeScript("decode.groovy", "def events = []; events << payload; return events", 1000);
+	GroovyScriptCache cache = new GroovyScriptCache(engine, connector, 5000);
+
+	// Warm up both paths.
+	for (int i = 0; i < 2000; i++) {
+	    engine.run("decode.groovy", createBinding(i));
+	    cache.run("decode.groovy", createBinding(i));
+	}
+
+	long start = System.nanoTime();
+	for (int i = 0; i < ITERATIONS; i++) {
+	    engine.run("decode.groovy", createBinding(i));
+	}
+	long engineNanos = System.nanoTime() - start;
+
+	start = System.nanoTime();
+	for (int i = 0; i < ITERATIONS; i++) {
+	    cache.run("decode.groovy", createBinding(i));
+	}
+	long cacheNanos = System.nanoTime() - start;
+
+	LOGGER.info("Script engine: " + (ITERATIONS * 1000000000L / engineNanos) + " runs/sec.");
+	LOGGER.info("Script cache: " + (ITERATIONS * 1000000000L / cacheNanos) + " runs/sec.");
+    }
+
+    /**
+     * Write a script with the given modification time.
+     * 
+     * @param name
+     * @param content
+     * @param lastModified
+     * @throws IOException
+     */
+    protected void writeScript(String name, String content, long lastModified) throws IOException {
+	File file = new File(folder, name);
+	Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	file.setLastModified(lastModified);
+    }
+
+    /**
+     * Create a binding with a payload variable.
+     * 
+     * @param payload
+     * @return
+     */
+    protected Binding createBinding(int payload) {
+	Binding binding = new Binding();
+	binding.setVariable("payload", payload);
+	return binding;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.hazelcast;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IQueue;
+import com.sitewhere.core.test.Benchmarks;
+import com.sitewhere.core.test.Benchmarks.Benchmark;
+import com.sitewhere.hazelcast.DecodedDeviceRequestSerializer;
+import com.sitewhere.rest.model.device.communication.DecodedDeviceRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceRegistrationRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceStreamDataCreateRequest;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.device.event.AlertSource;
+
+/**
+ * Compares per-event transfer with default serialization against batched
+ * transfer with {@link DecodedDeviceRequestSerializer} between two embedded
+ * Hazelcast members.
+ * 
+ * @author Derek
+ */
+public class HazelcastQueueTransferTests {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Skips benchmarks unless enabled */
+    @Rule
+    public Benchmarks benchmarks = new Benchmarks();
+
+    /** Number of events sent in benchmark */
+    private static final int EVENT_COUNT = 10000;
+
+    /** Batch size for batched transfer */
+    private static final int BATCH_SIZE = 100;
+
+    /** Members started by test */
+    private List<HazelcastInstance> members = new ArrayList<HazelcastInstance>();
+
+    @After
+    public void tearDown() throws Exception {
+	for (HazelcastInstance member : members) {
+	    member.getLifecycleService().terminate();
+	}
+    }
+
+    @Test
+    public void testSerializerRoundTrip() throws Exception {
+	startCluster("roundtrip", true);
+	IQueue<DecodedDeviceRequest<?>> front = members.get(0).getQueue("events");
+	IQueue<DecodedDeviceRequest<?>> back = members.get(1).getQueue("events");
+
+	DeviceMeasurementsCreateRequest mxs = createMeasurements(7);
+	Map<String, String> metadata = new HashMap<String, String>();
+	metadata.put("site", "north");
+	mxs.setMetadata(metadata);
+	front.put(new DecodedDeviceRequest<DeviceMeasurementsCreateRequest>("hw-1", "orig", mxs));
+
+	DeviceLocationCreateRequest location = new DeviceLocationCreateRequest();
+	location.setLatitude(33.75);
+	location.setLongitude(-84.39);
+	front.put(new DecodedDeviceRequest<DeviceLocationCreateRequest>("hw-2", null, location));
+
+	DeviceAlertCreateRequest alert = new DeviceAlertCreateRequest();
+	alert.setSource(AlertSource.Device);
+	alert.setLevel(AlertLevel.Critical);
+	alert.setType("fire");
+	alert.setMessage("Fire detected.");
+	front.put(new DecodedDeviceRequest<DeviceAlertCreateRequest>("hw-3", null, alert));
+
+	DeviceStreamDataCreateRequest data = new DeviceStreamDataCreateRequest();
+	data.setStreamId("video");
+	data.setSequenceNumber(42);
+	data.setData(new byte[] { 1, 2, 3 });
+	front.put(new DecodedDeviceRequest<DeviceStreamDataCreateRequest>("hw-4", null, data));
+
+	DeviceRegistrationRequest registration = new DeviceRegistrationRequest();
+	registration.setHardwareId("hw-5");
+	registration.setSpecificationToken("spec");
+	front.put(new DecodedDeviceRequest<DeviceRegistrationRequest>("hw-5", null, registration));
+
+	DecodedDeviceRequest<?> decoded = back.poll(5, TimeUnit.SECONDS);
+	assertEquals("hw-1", decoded.getHardwareId());
+	assertEquals("orig", decoded.getOriginator());
+	DeviceMeasurementsCreateRequest mxsCopy = (DeviceMeasurementsCreateRequest) decoded.getRequest();
+	assertEquals(mxs.getEventDate(), mxsCopy.getEventDate());
+	assertEquals(mxs.getMeasurements(), mxsCopy.getMeasurements());
+	assertEquals("north", mxsCopy.getMetadata().get("site"));
+
+	DeviceLocationCreateRequest locationCopy = (DeviceLocationCreateRequest) back.poll().getRequest();
+	assertEquals(33.75, locationCopy.getLatitude(), 0);
+	assertEquals(-84.39, locationCopy.getLongitude(), 0);
+	assertNull(locationCopy.getElevation());
+	assertNull(locationCopy.getEventDate());
+
+	DeviceAlertCreateRequest alertCopy = (DeviceAlertCreateRequest) back.poll().getRequest();
+	assertEquals(AlertSource.Device, alertCopy.getSource());
+	assertEquals(AlertLevel.Critical, alertCopy.getLevel());
+	assertEquals("Fire detected.", alertCopy.getMessage());
+
+	DeviceStreamDataCreateRequest dataCopy = (DeviceStreamDataCreateRequest) back.poll().getRequest();
+	assertEquals(42, dataCopy.getSequenceNumber());
+	assertArrayEquals(new byte[] { 1, 2, 3 }, dataCopy.getData());
+
+	DeviceRegistrationRequest registrationCopy = (DeviceRegistrationRequest) back.poll().getRequest();
+	assertEquals("spec", registrationCopy.getSpecificationToken());
+    }
+
+    @Test
+    @Benchmark
+    public void benchmarkTransfer() throws Exception {
+	startCluster("single", false);
+	long single = transfer(1);
+	for (HazelcastInstance member : members) {
+	    member.getLifecycleService().terminate();
+	}
+	members.clear();
+
+	startCluster("batched", true);
+	long batched = transfer(BATCH_SIZE);
+
+	LOGGER.info("Transferred " + EVENT_COUNT + " events between members. Single with default serialization: "
+		+ single + "ms, batches of " + BATCH_SIZE + " with serializer: " + batched + "ms.");
+    }
+
+    /**
+     * Send events from first member to second member and return elapsed time.
+     * 
+     * @param batchSize
+     * @return
+     * @throws Exception
+     */
+    protected long transfer(int batchSize) throws Exception {
+	IQueue<DecodedDeviceRequest<?>> front = members.get(0).getQueue("events");
+	IQueue<DecodedDeviceRequest<?>> back = members.get(1).getQueue("events");
+	long start = System.currentTimeMillis();
+	List<DecodedDeviceRequest<?>> batch = new ArrayList<DecodedDeviceRequest<?>>();
+	for (int i = 0; i < EVENT_COUNT; i++) {
+	    DecodedDeviceRequest<?> decoded = new DecodedDeviceRequest<DeviceMeasurementsCreateRequest>(
+		    "hw-" + (i % 50), null, createMeasurements(i));
+	    if (batchSize == 1) {
+		front.put(decoded);
+	    } else {
+		batch.add(decoded);
+		if (batch.size() == batchSize) {
+		    front.addAll(batch);
+		    batch.clear();
+		}
+	    }
+	}
+	front.addAll(batch);
+
+	int received = 0;
+	List<DecodedDeviceRequest<?>> drained = new ArrayList<DecodedDeviceRequest<?>>();
+	while (received < EVENT_COUNT) {
+	    if (batchSize == 1) {
+		back.take();
+		received++;
+	    } else {
+		drained.add(back.take());
+		back.drainTo(drained, batchSize - 1);
+		received += drained.size();
+		drained.clear();
+	    }
+	}
+	assertEquals(EVENT_COUNT, received);
+	return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Start a two member cluster.
+     * 
+     * @param group
+     * @param compact
+     */
+    protected void startCluster(String group, boolean compact) {
+	for (int i = 0; i < 2; i++) {
+	    Config config = new Config();
+	    config.getGroupConfig().setName(group);
+	    config.setProperty("hazelcast.logging.type", "none");
+	    config.setProperty("hazelcast.health.monitoring.level", "OFF");
+	    config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+	    config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+	    config.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+	    if (compact) {
+		DecodedDeviceRequestSerializer.register(config.getSerializationConfig());
+	    }
+	    members.add(Hazelcast.newHazelcastInstance(config));
+	}
+	assertEquals(2, members.get(0).getCluster().getMembers().size());
+    }
+
+    /**
+     * Create a measurements request.
+     * 
+     * @param seq
+     * @return
+     */
+    protected static DeviceMeasurementsCreateRequest createMeasurements(int seq) {
+	DeviceMeasurementsCreateRequest mxs = new DeviceMeasurementsCreateRequest();
+	mxs.setEventDate(new Date());
+	mxs.addOrReplaceMeasurement("engine.temp", 90.0 + seq);
+	mxs.addOrReplaceMeasurement("fuel.level", 0.5);
+	return mxs;
+    }
+}
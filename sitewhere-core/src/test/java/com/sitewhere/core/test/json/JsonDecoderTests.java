@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.core.test.Benchmarks;
+import com.sitewhere.core.test.Benchmarks.Benchmark;
+import com.sitewhere.device.communication.json.JsonBatchEventDecoder;
+import com.sitewhere.device.communication.json.JsonDeviceRequestDecoder;
+import com.sitewhere.device.communication.json.StreamingJsonEventDecoder;
+import com.sitewhere.rest.model.device.communication.DeviceRequest;
+import com.sitewhere.rest.model.device.communication.DeviceRequest.Type;
+import com.sitewhere.rest.model.device.event.DeviceEventBatch;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.communication.EventDecodeException;
+import com.sitewhere.spi.device.communication.IDecodedDeviceRequest;
+import com.sitewhere.spi.device.communication.IDeviceEventDecoder;
+import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
+
+/**
+ * Compares results and throughput of the streaming JSON decoder against the
+ * data binding decoders.
+ * 
+ * @author Derek
+ */
+public class JsonDecoderTests {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Skips benchmarks unless enabled */
+    @Rule
+    public Benchmarks benchmarks = new Benchmarks();
+
+    /** Number of events in benchmark batches */
+    private static final int BATCH_SIZE = 500;
+
+    /** Number of iterations used to warm up the JIT */
+    private static final int WARMUP_ITERATIONS = 1000;
+
+    /** Number of timed iterations */
+    private static final int ITERATIONS = 2000;
+
+    @Test
+    public void testDeviceRequest() throws Exception {
+	String json = "{\"hardwareId\":\"123-TEST\",\"originator\":\"abc\",\"type\":\"DeviceMeasurements\","
+		+ "\"request\":{\"eventDate\":1490000000000,\"updateState\":true,\"metadata\":{\"fw\":\"1.0\"},"
+		+ "\"measurements\":{\"engine.temp\":98.6,\"running\":true,\"mode\":\"eco\"}}}";
+	List<IDecodedDeviceRequest<?>> streamed = decode(new StreamingJsonEventDecoder(), json);
+	List<IDecodedDeviceRequest<?>> bound = decode(new JsonDeviceRequestDecoder(), json);
+	assertEquals(1, streamed.size());
+	IDeviceMeasurementsCreateRequest mxs = (IDeviceMeasurementsCreateRequest) streamed.get(0).getRequest();
+	IDeviceMeasurementsCreateRequest expected = (IDeviceMeasurementsCreateRequest) bound.get(0).getRequest();
+	assertEquals(expected.getEventDate(), mxs.getEventDate());
+	assertEquals(expected.getMeasurements(), mxs.getMeasurements());
+	assertEquals("abc", streamed.get(0).getOriginator());
+	assertEquals(1.0, mxs.getMeasurements().get("running"), 0.0);
+	assertEquals("eco", mxs.getMetadata().get("mode"));
+	assertEquals("1.0", mxs.getMetadata().get("fw"));
+	assertTrue(mxs.isUpdateState());
+    }
+
+    @Test
+    public void testRequestBeforeType() throws Exception {
+	String json = "{\"request\":{\"latitude\":33.75,\"longitude\":-84.39,\"elevation\":1.0},"
+		+ "\"hardwareId\":\"123-TEST\",\"type\":\"DeviceLocation\"}";
+	List<IDecodedDeviceRequest<?>> streamed = decode(new StreamingJsonEventDecoder(), json);
+	assertEquals(1, streamed.size());
+	assertEquals("123-TEST", streamed.get(0).getHardwareId());
+	IDeviceLocationCreateRequest location = (IDeviceLocationCreateRequest) streamed.get(0).getRequest();
+	assertEquals(33.75, location.getLatitude(), 0.0);
+	assertEquals(-84.39, location.getLongitude(), 0.0);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+	String json = new String(MarshalUtils.marshalJson(createBatch("123-TEST", 10)), StandardCharsets.UTF_8);
+	List<IDecodedDeviceRequest<?>> streamed = decode(new StreamingJsonEventDecoder(), json);
+	List<IDecodedDeviceRequest<?>> bound = decode(new JsonBatchEventDecoder(), json);
+	assertEquals(bound.size(), streamed.size());
+	List<IDecodedDeviceRequest<?>> boundMxs = getMeasurements(bound);
+	List<IDecodedDeviceRequest<?>> streamedMxs = getMeasurements(streamed);
+	assertEquals(10, streamedMxs.size());
+	for (int i = 0; i < streamedMxs.size(); i++) {
+	    assertSameMeasurements(boundMxs.get(i), streamedMxs.get(i));
+	}
+    }
+
+    @Test
+    public void testMixedHardwareIdArray() throws Exception {
+	StringBuilder json = new StringBuilder("[");
+	json.append(new String(MarshalUtils.marshalJson(createBatch("HW-1", 2)), StandardCharsets.UTF_8));
+	json.append(",");
+	DeviceRequest request = new DeviceRequest();
+	request.setHardwareId("HW-2");
+	request.setType(Type.DeviceAlert);
+	request.setRequest(
+		new DeviceAlertCreateRequest.Builder("engine.overheat", "Engine is overheating.").warning().build());
+	json.append(new String(MarshalUtils.marshalJson(request), StandardCharsets.UTF_8));
+	json.append("]");
+
+	List<IDecodedDeviceRequest<?>> streamed = decode(new StreamingJsonEventDecoder(), json.toString());
+	assertEquals(7, streamed.size());
+	IDecodedDeviceRequest<?> last = streamed.get(6);
+	assertEquals("HW-2", last.getHardwareId());
+	IDeviceAlertCreateRequest alert = (IDeviceAlertCreateRequest) last.getRequest();
+	assertEquals("engine.overheat", alert.getType());
+	assertEquals("Warning", alert.getLevel().name());
+    }
+
+    @Test
+    public void testIsoDates() throws Exception {
+	String json = "[{\"hardwareId\":\"HW-1\",\"locations\":[{\"eventDate\":\"2017-03-20T08:53:20.000Z\","
+		+ "\"latitude\":1.0,\"longitude\":2.0}]},{\"hardwareId\":\"HW-2\",\"locations\":[{\"eventDate\":"
+		+ "\"2017-03-20T08:53:21.000+0000\",\"latitude\":1.0,\"longitude\":2.0}]}]";
+	List<IDecodedDeviceRequest<?>> streamed = decode(new StreamingJsonEventDecoder(), json);
+	assertEquals(2, streamed.size());
+	IDeviceLocationCreateRequest first = (IDeviceLocationCreateRequest) streamed.get(0).getRequest();
+	IDeviceLocationCreateRequest second = (IDeviceLocationCreateRequest) streamed.get(1).getRequest();
+	assertEquals(1490000000000L, first.getEventDate().getTime());
+	assertEquals(1490000001000L, second.getEventDate().getTime());
+
+	StdDateFormat format = new StdDateFormat();
+	String[] values = { "2017-03-20T08:53:20Z", "1969-12-31T23:59:59.5-05:30", "2024-02-29T12:00:00.123+0100",
+		"2017-03-20T08:53:20.000+0000", "2017-03-20" };
+	StreamingJsonEventDecoder decoder = new StreamingJsonEventDecoder();
+	for (String value : values) {
+	    String alertJson = "{\"hardwareId\":\"HW-1\",\"alerts\":[{\"eventDate\":\"" + value + "\"}]}";
+	    List<IDecodedDeviceRequest<?>> decoded = decode(decoder, alertJson);
+	    IDeviceAlertCreateRequest alert = (IDeviceAlertCreateRequest) decoded.get(0).getRequest();
+	    assertEquals(value, format.parse(value), alert.getEventDate());
+	}
+    }
+
+    @Test(expected = EventDecodeException.class)
+    public void testRejectsNonObjectInEventArray() throws Exception {
+	String json = "{\"hardwareId\":\"HW-1\",\"measurements\":[42,{\"measurements\":{\"a\":1.0}}]}";
+	decode(new StreamingJsonEventDecoder(), json);
+    }
+
+    @Test(expected = EventDecodeException.class)
+    public void testRejectsNonObjectInPayloadArray() throws Exception {
+	String json = "[{\"hardwareId\":\"HW-1\",\"measurements\":[]},\"junk\"]";
+	decode(new StreamingJsonEventDecoder(), json);
+    }
+
+    @Test(expected = EventDecodeException.class)
+    public void testRejectsNestedMetadataValue() throws Exception {
+	String json = "{\"hardwareId\":\"HW-1\",\"type\":\"DeviceAlert\","
+		+ "\"request\":{\"type\":\"a\",\"metadata\":{\"k\":{\"x\":1}}}}";
+	decode(new StreamingJsonEventDecoder(), json);
+    }
+
+    @Test(expected = EventDecodeException.class)
+    public void testRejectsNonScalarHardwareId() throws Exception {
+	String json = "{\"hardwareId\":[\"HW-1\"],\"measurements\":[{\"measurements\":{\"a\":1.0}}]}";
+	decode(new StreamingJsonEventDecoder(), json);
+    }
+
+    @Test
+    @Benchmark
+    public void benchmarkBatchDecoders() throws Exception {
+	byte[] payload = MarshalUtils.marshalJson(createBatch("123-TEST", BATCH_SIZE));
+	IDeviceEventDecoder<byte[]> bound = new JsonBatchEventDecoder();
+	IDeviceEventDecoder<byte[]> streamed = new StreamingJsonEventDecoder();
+
+	run(bound, payload, WARMUP_ITERATIONS);
+	run(streamed, payload, WARMUP_ITERATIONS);
+
+	long boundNanos = run(bound, payload, ITERATIONS);
+	long streamedNanos = run(streamed, payload, ITERATIONS);
+	long events = (long) ITERATIONS * BATCH_SIZE * 3;
+	LOGGER.info("Batch decoder: " + (events * 1000000000L / boundNanos) + " events/sec.");
+	LOGGER.info("Streaming decoder: " + (events * 1000000000L / streamedNanos) + " events/sec.");
+    }
+
+    /**
+     * Run a decoder repeatedly against a payload.
+     * 
+     * @param decoder
+     * @param payload
+     * @param iterations
+     * @return
+     * @throws SiteWhereException
+     */
+    protected long run(IDeviceEventDecoder<byte[]> decoder, byte[] payload, int iterations)
+	    throws SiteWhereException {
+	long start = System.nanoTime();
+	for (int i = 0; i < iterations; i++) {
+	    decoder.decode(payload, null);
+	}
+	return System.nanoTime() - start;
+    }
+
+    /**
+     * Decode a JSON string.
+     * 
+     * @param decoder
+     * @param json
+     * @return
+     * @throws SiteWhereException
+     */
+    protected List<IDecodedDeviceRequest<?>> decode(IDeviceEventDecoder<byte[]> decoder, String json)
+	    throws SiteWhereException {
+	return decoder.decode(json.getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    /**
+     * Get decoded measurements requests in order.
+     * 
+     * @param decoded
+     * @return
+     */
+    protected List<IDecodedDeviceRequest<?>> getMeasurements(List<IDecodedDeviceRequest<?>> decoded) {
+	List<IDecodedDeviceRequest<?>> mxs = new ArrayList<IDecodedDeviceRequest<?>>();
+	for (IDecodedDeviceRequest<?> request : decoded) {
+	    if (request.getRequest() instanceof IDeviceMeasurementsCreateRequest) {
+		mxs.add(request);
+	    }
+	}
+	return mxs;
+    }
+
+    /**
+     * Verify that two decoded measurement requests hold the same data.
+     * 
+     * @param expected
+     * @param actual
+     */
+    protected void assertSameMeasurements(IDecodedDeviceRequest<?> expected, IDecodedDeviceRequest<?> actual) {
+	IDeviceMeasurementsCreateRequest e = (IDeviceMeasurementsCreateRequest) expected.getRequest();
+	IDeviceMeasurementsCreateRequest a = (IDeviceMeasurementsCreateRequest) actual.getRequest();
+	assertEquals(expected.getHardwareId(), actual.getHardwareId());
+	assertEquals(e.getEventDate(), a.getEventDate());
+	assertEquals(e.getMeasurements(), a.getMeasurements());
+	assertEquals(e.getMetadata(), a.getMetadata());
+    }
+
+    /**
+     * Create a batch with the given number of measurements, locations and
+     * alerts.
+     * 
+     * @param hardwareId
+     * @param count
+     * @return
+     */
+    protected DeviceEventBatch createBatch(String hardwareId, int count) {
+	DeviceEventBatch batch = new DeviceEventBatch();
+	batch.setHardwareId(hardwareId);
+	Date now = new Date();
+	for (int i = 0; i < count; i++) {
+	    DeviceMeasurementsCreateRequest mxs = new DeviceMeasurementsCreateRequest.Builder()
+		    .measurement("engine.temp", 90.0 + i).measurement("fuel.level", 0.5).metadata("seq", "" + i)
+		    .on(now).build();
+	    batch.getMeasurements().add(mxs);
+	    DeviceLocationCreateRequest location = new DeviceLocationCreateRequest.Builder(33.75 + i, -84.39)
+		    .withElevation(1.0).on(now).build();
+	    batch.getLocations().add(location);
+	    batch.getAlerts().add(new DeviceAlertCreateRequest.Builder(
+		    "test.alert", "Alert " + i).on(now).build());
+	}
+	return batch;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.marshaling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sitewhere.device.DeviceManagementDecorator;
+import com.sitewhere.device.marshaling.BatchReferenceResolver;
+import com.sitewhere.rest.model.device.Site;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.ISite;
+
+/**
+ * Tests that {@link BatchReferenceResolver} fetches prefetched keys once and
+ * falls back to single lookups for keys that were not prefetched.
+ * 
+ * @author Derek
+ */
+public class BatchReferenceResolverTests {
+
+    @Test
+    public void testPrefetchUsesMultiGet() throws Exception {
+	CountingDeviceManagement management = new CountingDeviceManagement("a", "b");
+	BatchReferenceResolver resolver = new BatchReferenceResolver(management, null);
+	resolver.prefetchSites(Arrays.asList("a", "b", "a", null, "missing"));
+	assertEquals(1, management.multiGets);
+	assertEquals(Arrays.asList("a", "b", "missing"), management.requested);
+
+	assertEquals("a", resolver.getSite("a").getToken());
+	assertEquals("b", resolver.getSite("b").getToken());
+	assertNull(resolver.getSite("missing"));
+	assertEquals(0, management.singleGets);
+    }
+
+    @Test
+    public void testResolvedKeysNotRefetched() throws Exception {
+	CountingDeviceManagement management = new CountingDeviceManagement("a", "b", "c");
+	BatchReferenceResolver resolver = new BatchReferenceResolver(management, null);
+	resolver.prefetchSites(Arrays.asList("a", "b"));
+	resolver.prefetchSites(Arrays.asList("a", "b"));
+	assertEquals(1, management.multiGets);
+
+	resolver.prefetchSites(Arrays.asList("b", "c"));
+	assertEquals(2, management.multiGets);
+	assertEquals(Arrays.asList("c"), management.requested);
+    }
+
+    @Test
+    public void testFallbackIsRemembered() throws Exception {
+	CountingDeviceManagement management = new CountingDeviceManagement("a");
+	BatchReferenceResolver resolver = new BatchReferenceResolver(management, null);
+	assertEquals("a", resolver.getSite("a").getToken());
+	assertEquals("a", resolver.getSite("a").getToken());
+	assertNull(resolver.getSite("missing"));
+	assertNull(resolver.getSite("missing"));
+	assertEquals(2, management.singleGets);
+	assertEquals(0, management.multiGets);
+    }
+
+    /**
+     * Device management that serves a fixed set of sites and counts lookups.
+     */
+    private static class CountingDeviceManagement extends DeviceManagementDecorator {
+
+	/** Known site tokens */
+	private List<String> tokens;
+
+	/** Number of single lookups */
+	private int singleGets;
+
+	/** Number of multi-get lookups */
+	private int multiGets;
+
+	/** Tokens passed to the last multi-get */
+	private List<String> requested;
+
+	public CountingDeviceManagement(String... tokens) {
+	    super(null);
+	    this.tokens = Arrays.asList(tokens);
+	}
+
+	@Override
+	public ISite getSiteByToken(String token) throws SiteWhereException {
+	    singleGets++;
+	    return tokens.contains(token) ? createSite(token) : null;
+	}
+
+	@Override
+	public List<ISite> getSitesByTokens(List<String> tokens) throws SiteWhereException {
+	    multiGets++;
+	    requested = new ArrayList<String>(tokens);
+	    List<ISite> results = new ArrayList<ISite>();
+	    for (String token : tokens) {
+		if (this.tokens.contains(token)) {
+		    results.add(createSite(token));
+		}
+	    }
+	    return results;
+	}
+
+	protected ISite createSite(String token) {
+	    Site site = new Site();
+	    site.setToken(token);
+	    return site;
+	}
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.presence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sitewhere.device.presence.PresenceDeadlineIndex;
+
+/**
+ * Tests expiry ordering and lazy rescheduling in {@link PresenceDeadlineIndex}.
+ * 
+ * @author Derek
+ */
+public class PresenceDeadlineIndexTests {
+
+    @Test
+    public void testExpiry() throws Exception {
+	PresenceDeadlineIndex index = createIndex();
+	index.touch("a", 100);
+	index.touch("b", 200);
+	index.touch("c", 300);
+	assertEquals(100, index.getEarliest());
+
+	List<String> expired = index.pollExpired(200);
+	assertEquals(2, expired.size());
+	assertTrue(expired.contains("a"));
+	assertTrue(expired.contains("b"));
+	assertEquals(1, index.size());
+	assertEquals(300, index.getEarliest());
+    }
+
+    @Test
+    public void testTouchDefersExpiry() throws Exception {
+	PresenceDeadlineIndex index = createIndex();
+	index.touch("a", 100);
+	index.touch("b", 150);
+	index.touch("a", 500);
+	index.touch("a", 400);
+
+	List<String> expired = index.pollExpired(300);
+	assertEquals(1, expired.size());
+	assertEquals("b", expired.get(0));
+	assertEquals(500, index.getEarliest());
+	assertTrue(index.pollExpired(499).isEmpty());
+	assertEquals(1, index.pollExpired(500).size());
+	assertEquals(-1, index.getEarliest());
+    }
+
+    @Test
+    public void testRemoveAndRetrack() throws Exception {
+	PresenceDeadlineIndex index = createIndex();
+	index.touch("a", 100);
+	index.remove("a");
+	assertEquals(-1, index.getEarliest());
+
+	index.touch("a", 100);
+	index.remove("a");
+	index.touch("a", 700);
+	assertTrue(index.pollExpired(600).isEmpty());
+	assertEquals(1, index.size());
+	assertEquals(1, index.pollExpired(700).size());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+	PresenceDeadlineIndex index = new PresenceDeadlineIndex();
+	index.touch("a", 100);
+	assertEquals(0, index.size());
+    }
+
+    /**
+     * Create an index that records interactions.
+     * 
+     * @return
+     */
+    protected PresenceDeadlineIndex createIndex() {
+	PresenceDeadlineIndex index = new PresenceDeadlineIndex();
+	index.setEnabled(true);
+	return index;
+    }
+}
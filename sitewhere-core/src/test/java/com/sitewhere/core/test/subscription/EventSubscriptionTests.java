@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.core.test.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.sitewhere.core.test.Benchmarks;
+import com.sitewhere.core.test.Benchmarks.Benchmark;
+import com.sitewhere.device.event.processor.subscription.EventSubscription;
+import com.sitewhere.device.event.processor.subscription.EventSubscriptionManager;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+import com.sitewhere.spi.device.event.processor.IEventSubscriptionSink;
+
+/**
+ * Tests buffering and coalescing in {@link EventSubscription} and fan-out to
+ * many concurrent subscribers through {@link EventSubscriptionManager}.
+ * 
+ * @author Derek
+ */
+public class EventSubscriptionTests {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Skips benchmarks unless enabled */
+    @Rule
+    public Benchmarks benchmarks = new Benchmarks();
+
+    /** Number of subscribers in load test */
+    private static final int SUBSCRIBERS = 5000;
+
+    /** Number of sites in load test */
+    private static final int SITES = 10;
+
+    /** Number of assignments in load test */
+    private static final int ASSIGNMENTS = 100;
+
+    /** Number of events published in load test */
+    private static final int EVENTS = 2000;
+
+    @Test
+    public void testCoalescesMeasurementsWhenBehind() throws Exception {
+	EventSubscription subscription = new EventSubscription("a", null, null, null, 2, new CountingSink(0));
+	for (int i = 0; i < 5; i++) {
+	    subscription.offer(createMeasurements("site", "assn", i));
+	}
+	subscription.offer(createMeasurements("site", "other", 10));
+	assertEquals(4, subscription.getPendingCount());
+
+	List<IDeviceEvent> events = subscription.drain(100);
+	assertEquals(4, events.size());
+	assertEquals(0.0, ((IDeviceMeasurements) events.get(0)).getMeasurement("seq"), 0);
+	assertEquals(1.0, ((IDeviceMeasurements) events.get(1)).getMeasurement("seq"), 0);
+	assertEquals(4.0, ((IDeviceMeasurements) events.get(2)).getMeasurement("seq"), 0);
+	assertEquals("other", events.get(3).getDeviceAssignmentToken());
+	assertEquals(0, subscription.getDroppedCount());
+	assertEquals(0, subscription.getPendingCount());
+    }
+
+    @Test
+    public void testAlertsPushOutOldestEvents() throws Exception {
+	EventSubscription subscription = new EventSubscription("a", null, null, null, 2, new CountingSink(0));
+	IDeviceEvent mx = createMeasurements("site", "assn", 1);
+	IDeviceEvent alert1 = createAlert("site", "assn", 2);
+	IDeviceEvent alert2 = createAlert("site", "assn", 3);
+	IDeviceEvent alert3 = createAlert("site", "assn", 4);
+	subscription.offer(mx);
+	subscription.offer(alert1);
+	subscription.offer(alert2);
+	subscription.offer(alert3);
+
+	// Measurement is coalesced and first alert dropped to make room.
+	List<IDeviceEvent> events = subscription.drain(100);
+	assertEquals(3, events.size());
+	assertSame(alert2, events.get(0));
+	assertSame(alert3, events.get(1));
+	assertEquals(DeviceEventType.Measurements, events.get(2).getEventType());
+	assertEquals(1, subscription.getDroppedCount());
+    }
+
+    @Test
+    public void testMatchesCriteria() throws Exception {
+	EventSubscription subscription = new EventSubscription("a", "site", null,
+		Collections.singleton(DeviceEventType.Alert), 10, new CountingSink(0));
+	assertTrue(subscription.matches(createAlert("site", "assn", 1)));
+	assertFalse(subscription.matches(createAlert("other", "assn", 1)));
+	assertFalse(subscription.matches(createMeasurements("site", "assn", 1)));
+    }
+
+    @Test
+    public void testStalledClientsAreEvicted() throws Exception {
+	EventSubscriptionManager manager = new EventSubscriptionManager("test");
+	manager.start(2, EventSubscriptionManager.DEFAULT_BATCH_SIZE, 200);
+	StalledSink stalled = new StalledSink(2);
+	try {
+	    // Stall both delivery threads.
+	    manager.subscribe(null, null, null, 100, stalled);
+	    manager.subscribe(null, null, null, 100, stalled);
+	    manager.publish(createMeasurements("site-0", "assn-0", 0));
+	    assertTrue(stalled.entered.await(5, TimeUnit.SECONDS));
+
+	    List<CountingSink> sinks = new ArrayList<CountingSink>();
+	    for (int i = 0; i < 200; i++) {
+		CountingSink sink = new CountingSink(0);
+		sinks.add(sink);
+		manager.subscribe(null, null, null, 100, sink);
+	    }
+	    Map<String, Integer> latest = new HashMap<String, Integer>();
+	    for (int i = 1; i <= 500; i++) {
+		String assignment = "assn-" + (i % ASSIGNMENTS);
+		manager.publish(createMeasurements(siteFor(assignment), assignment, i));
+		latest.put(assignment, i);
+	    }
+	    waitForDelivery(sinks, latest);
+	    for (CountingSink sink : sinks) {
+		for (Map.Entry<String, Integer> entry : latest.entrySet()) {
+		    assertEquals(entry.getValue(), sink.latest.get(entry.getKey()));
+		}
+	    }
+
+	    // Stalled subscribers are removed and replaced by extra threads.
+	    assertEquals(2, stalled.closed.get());
+	    assertEquals(sinks.size(), manager.getSubscriptionCount());
+	    assertEquals(4, manager.getDeliveryThreadCount());
+
+	    // Extra threads are released once blocked sends return.
+	    stalled.release.countDown();
+	    long deadline = System.currentTimeMillis() + 5000;
+	    while ((manager.getDeliveryThreadCount() != 2) && (System.currentTimeMillis() < deadline)) {
+		Thread.sleep(10);
+	    }
+	    assertEquals(2, manager.getDeliveryThreadCount());
+	} finally {
+	    stalled.release.countDown();
+	    manager.stop();
+	}
+    }
+
+    @Test
+    @Benchmark
+    public void benchmarkManySubscribers() throws Exception {
+	EventSubscriptionManager manager = new EventSubscriptionManager("test");
+	manager.start(4, EventSubscriptionManager.DEFAULT_BATCH_SIZE);
+	try {
+	    List<CountingSink> sinks = new ArrayList<CountingSink>();
+	    for (int i = 0; i < SUBSCRIBERS; i++) {
+		// Every tenth subscriber is slow so it falls behind and coalesces.
+		CountingSink sink = new CountingSink(((i % 10) == 0) ? 2 : 0);
+		sinks.add(sink);
+		switch (i % 3) {
+		case 0:
+		    manager.subscribe(null, null, null, 100, sink);
+		    break;
+		case 1:
+		    sink.site = "site-" + (i % SITES);
+		    manager.subscribe(sink.site, null, null, 100, sink);
+		    break;
+		default:
+		    sink.assignment = "assn-" + (i % ASSIGNMENTS);
+		    manager.subscribe(null, sink.assignment, null, 100, sink);
+		}
+	    }
+	    assertEquals(SUBSCRIBERS, manager.getSubscriptionCount());
+
+	    Map<String, Integer> latest = new HashMap<String, Integer>();
+	    long start = System.nanoTime();
+	    for (int i = 0; i < EVENTS; i++) {
+		String assignment = "assn-" + (i % ASSIGNMENTS);
+		manager.publish(createMeasurements(siteFor(assignment), assignment, i));
+		latest.put(assignment, i);
+	    }
+	    long published = System.nanoTime() - start;
+	    waitForDelivery(sinks, latest);
+	    long delivered = System.nanoTime() - start;
+
+	    long received = 0;
+	    for (CountingSink sink : sinks) {
+		assertFalse(sink.mismatched);
+		received += sink.received.get();
+		for (Map.Entry<String, Integer> entry : latest.entrySet()) {
+		    if (sink.expects(entry.getKey())) {
+			assertEquals(entry.getValue(), sink.latest.get(entry.getKey()));
+		    }
+		}
+	    }
+	    LOGGER.info("Published " + EVENTS + " events to " + SUBSCRIBERS + " subscribers in "
+		    + (published / 1000000) + "ms, delivered " + received + " in " + (delivered / 1000000) + "ms.");
+	} finally {
+	    manager.stop();
+	}
+	assertEquals(0, manager.getSubscriptionCount());
+    }
+
+    /**
+     * Wait until every subscriber has seen the latest value for each
+     * assignment it matches.
+     * 
+     * @param sinks
+     * @param latest
+     * @throws InterruptedException
+     */
+    protected void waitForDelivery(List<CountingSink> sinks, Map<String, Integer> latest)
+	    throws InterruptedException {
+	long deadline = System.currentTimeMillis() + 60000;
+	for (CountingSink sink : sinks) {
+	    for (Map.Entry<String, Integer> entry : latest.entrySet()) {
+		if (!sink.expects(entry.getKey())) {
+		    continue;
+		}
+		while ((!entry.getValue().equals(sink.latest.get(entry.getKey())))
+			&& (System.currentTimeMillis() < deadline)) {
+		    Thread.sleep(10);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Get site token used for an assignment in the load test.
+     * 
+     * @param assignment
+     * @return
+     */
+    protected static String siteFor(String assignment) {
+	int index = Integer.parseInt(assignment.substring("assn-".length()));
+	return "site-" + (index % SITES);
+    }
+
+    /**
+     * Create a measurements event.
+     * 
+     * @param site
+     * @param assignment
+     * @param seq
+     * @return
+     */
+    protected static DeviceMeasurements createMeasurements(String site, String assignment, int seq) {
+	DeviceMeasurements mxs = new DeviceMeasurements();
+	mxs.setId(String.valueOf(seq));
+	mxs.setSiteToken(site);
+	mxs.setDeviceAssignmentToken(assignment);
+	mxs.setEventDate(new Date(1000L * seq));
+	mxs.addOrReplaceMeasurement("seq", (double) seq);
+	return mxs;
+    }
+
+    /**
+     * Create an alert event.
+     * 
+     * @param site
+     * @param assignment
+     * @param seq
+     * @return
+     */
+    protected static DeviceAlert createAlert(String site, String assignment, int seq) {
+	DeviceAlert alert = new DeviceAlert();
+	alert.setId(String.valueOf(seq));
+	alert.setSiteToken(site);
+	alert.setDeviceAssignmentToken(assignment);
+	alert.setEventDate(new Date(1000L * seq));
+	alert.setType("test");
+	return alert;
+    }
+
+    /**
+     * Records the highest sequence number delivered for each assignment.
+     */
+    private static class CountingSink implements IEventSubscriptionSink {
+
+	/** Milliseconds to wait per batch to simulate a slow client */
+	private long delay;
+
+	/** Expected site (null for any) */
+	private String site;
+
+	/** Expected assignment (null for any) */
+	private String assignment;
+
+	/** Number of events received */
+	private AtomicLong received = new AtomicLong();
+
+	/** Highest sequence number by assignment */
+	private Map<String, Integer> latest = new ConcurrentHashMap<String, Integer>();
+
+	/** Indicates an event was delivered that did not match */
+	private volatile boolean mismatched = false;
+
+	public CountingSink(long delay) {
+	    this.delay = delay;
+	}
+
+	@Override
+	public void send(List<IDeviceEvent> events) throws SiteWhereException {
+	    for (IDeviceEvent event : events) {
+		String key = event.getDeviceAssignmentToken();
+		if (!expects(key)) {
+		    mismatched = true;
+		}
+		int seq = ((IDeviceMeasurements) event).getMeasurement("seq").intValue();
+		Integer current = latest.get(key);
+		if ((current == null) || (seq > current)) {
+		    latest.put(key, seq);
+		}
+	    }
+	    received.addAndGet(events.size());
+	    if (delay > 0) {
+		try {
+		    Thread.sleep(delay);
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Indicates whether events for an assignment should be delivered.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public boolean expects(String key) {
+	    if ((assignment != null) && (!assignment.equals(key))) {
+		return false;
+	    }
+	    if ((site != null) && (!site.equals(siteFor(key)))) {
+		return false;
+	    }
+	    return true;
+	}
+    }
+
+    /**
+     * Simulates a client that stops reading by blocking every send until
+     * released.
+     */
+    private static class StalledSink implements IEventSubscriptionSink {
+
+	/** Counts down as sends start */
+	private CountDownLatch entered;
+
+	/** Releases blocked sends */
+	private CountDownLatch release = new CountDownLatch(1);
+
+	/** Number of times sink was closed */
+	private AtomicLong closed = new AtomicLong();
+
+	public StalledSink(int subscribers) {
+	    this.entered = new CountDownLatch(subscribers);
+	}
+
+	@Override
+	public void send(List<IDeviceEvent> events) throws SiteWhereException {
+	    entered.countDown();
+	    try {
+		release.await();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+
+	@Override
+	public void close() {
+	    closed.incrementAndGet();
+	}
+    }
+}
\ No newline at end of file
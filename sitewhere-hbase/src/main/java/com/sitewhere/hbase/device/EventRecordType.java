@@ -39,7 +39,10 @@ public enum EventRecordType {
     StateChange((byte) 0x10),
 
     /** Device stream data record */
-    StreamData((byte) 0x11);
+    StreamData((byte) 0x11),
+
+    /** Measurement rollup record */
+    MeasurementRollup((byte) 0x12);
 
     /** Type indicator */
     private byte type;
@@ -10,6 +10,7 @@ package com.sitewhere.hbase.device;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -300,6 +301,75 @@ public class HBaseDevice {
 	}
     }
 
+    /**
+     * Get devices for a list of hardware ids. Devices not in the cache are
+     * loaded with a single multi-get.
+     * 
+     * @param context
+     * @param hardwareIds
+     * @return
+     * @throws SiteWhereException
+     */
+    public static List<IDevice> getDevicesByHardwareIds(IHBaseContext context, List<String> hardwareIds)
+	    throws SiteWhereException {
+	Tracer.push(TracerCategory.DeviceManagementApiCall, "getDevicesByHardwareIds (HBase)", LOGGER);
+	try {
+	    Map<String, IDevice> found = new HashMap<String, IDevice>();
+	    List<String> missing = new ArrayList<String>();
+	    List<Get> gets = new ArrayList<Get>();
+	    for (String hardwareId : hardwareIds) {
+		IDevice cached = (context.getCacheProvider() != null)
+			? context.getCacheProvider().getDeviceCache().get(hardwareId) : null;
+		if (cached != null) {
+		    found.put(hardwareId, cached);
+		    continue;
+		}
+		Long deviceId = context.getDeviceIdManager().getDeviceKeys().getValue(hardwareId);
+		if (deviceId != null) {
+		    Get get = new Get(getDeviceRowKey(deviceId));
+		    HBaseUtils.addPayloadFields(get);
+		    gets.add(get);
+		    missing.add(hardwareId);
+		}
+	    }
+
+	    if (gets.size() > 0) {
+		Table devices = null;
+		try {
+		    devices = getDeviceTableInterface(context);
+		    Result[] results = devices.get(gets);
+		    for (int i = 0; i < results.length; i++) {
+			byte[] type = results[i].getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
+			byte[] payload = results[i].getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
+			if ((type == null) || (payload == null)) {
+			    continue;
+			}
+			Device device = PayloadMarshalerResolver.getInstance().getMarshaler(type).decodeDevice(payload);
+			found.put(missing.get(i), device);
+			if (context.getCacheProvider() != null) {
+			    context.getCacheProvider().getDeviceCache().put(missing.get(i), device);
+			}
+		    }
+		} catch (IOException e) {
+		    throw new SiteWhereException("Unable to load devices by hardware id.", e);
+		} finally {
+		    HBaseUtils.closeCleanly(devices);
+		}
+	    }
+
+	    List<IDevice> matches = new ArrayList<IDevice>();
+	    for (String hardwareId : hardwareIds) {
+		IDevice device = found.get(hardwareId);
+		if (device != null) {
+		    matches.add(device);
+		}
+	    }
+	    return matches;
+	} finally {
+	    Tracer.pop(LOGGER);
+	}
+    }
+
     /**
      * Delete a device based on hardware id. Depending on 'force' the record
      * will be physically deleted or a marker qualifier will be added to mark it
@@ -453,7 +523,11 @@ public class HBaseDevice {
 		HBaseUtils.addPayloadFields(context.getPayloadMarshaler().getEncoding(), put, payload);
 		put.addColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_ASSIGNMENT, assignmentToken.getBytes());
 		put.addColumn(ISiteWhereHBase.FAMILY_ID, assnHistory, assignmentToken.getBytes());
-		devices.put(put);
+
+		// Only write if the device was not assigned since it was checked.
+		if (!devices.checkAndPut(primary, ISiteWhereHBase.FAMILY_ID, CURRENT_ASSIGNMENT, null, put)) {
+		    throw new SiteWhereSystemException(ErrorCode.DeviceAlreadyAssigned, ErrorLevel.ERROR);
+		}
 
 		// Make sure that cache is using updated device information.
 		if (context.getCacheProvider() != null) {
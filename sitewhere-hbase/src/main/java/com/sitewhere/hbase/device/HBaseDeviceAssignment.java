@@ -9,7 +9,11 @@ package com.sitewhere.hbase.device;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
@@ -124,9 +128,16 @@ public class HBaseDeviceAssignment {
 	    }
 
 	    // Set the back reference from the device that indicates it is
-	    // currently
-	    // assigned.
-	    HBaseDevice.setDeviceAssignment(context, request.getDeviceHardwareId(), uuid);
+	    // currently assigned. Remove the new assignment if the device was
+	    // assigned concurrently.
+	    try {
+		HBaseDevice.setDeviceAssignment(context, request.getDeviceHardwareId(), uuid);
+	    } catch (SiteWhereSystemException e) {
+		if (e.getCode() == ErrorCode.DeviceAlreadyAssigned) {
+		    removeUnlinkedAssignment(context, uuid, primary);
+		}
+		throw e;
+	    }
 
 	    return newAssignment;
 	} finally {
@@ -134,6 +145,28 @@ public class HBaseDeviceAssignment {
 	}
     }
 
+    /**
+     * Physically delete an assignment that was never linked to its device.
+     * 
+     * @param context
+     * @param token
+     * @param primary
+     * @throws SiteWhereException
+     */
+    protected static void removeUnlinkedAssignment(IHBaseContext context, String token, byte[] primary)
+	    throws SiteWhereException {
+	context.getDeviceIdManager().getAssignmentKeys().delete(token);
+	Table sites = null;
+	try {
+	    sites = getSitesTableInterface(context);
+	    sites.delete(new Delete(primary));
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to remove unlinked device assignment.", e);
+	} finally {
+	    HBaseUtils.closeCleanly(sites);
+	}
+    }
+
     /**
      * Get a device assignment based on its unique token.
      * 
@@ -196,6 +229,82 @@ public class HBaseDeviceAssignment {
 	}
     }
 
+    /**
+     * Get device assignments for a list of tokens. Assignments not in the cache
+     * are loaded with a single multi-get.
+     * 
+     * @param context
+     * @param tokens
+     * @return
+     * @throws SiteWhereException
+     */
+    public static List<IDeviceAssignment> getDeviceAssignmentsByTokens(IHBaseContext context, List<String> tokens)
+	    throws SiteWhereException {
+	Tracer.push(TracerCategory.DeviceManagementApiCall, "getDeviceAssignmentsByTokens (HBase)", LOGGER);
+	try {
+	    Map<String, IDeviceAssignment> found = new HashMap<String, IDeviceAssignment>();
+	    List<String> missing = new ArrayList<String>();
+	    List<Get> gets = new ArrayList<Get>();
+	    for (String token : tokens) {
+		IDeviceAssignment cached = (context.getCacheProvider() != null)
+			? context.getCacheProvider().getDeviceAssignmentCache().get(token) : null;
+		if (cached != null) {
+		    found.put(token, cached);
+		    continue;
+		}
+		byte[] assnKey = context.getDeviceIdManager().getAssignmentKeys().getValue(token);
+		if (assnKey != null) {
+		    Get get = new Get(getPrimaryRowkey(assnKey));
+		    HBaseUtils.addPayloadFields(get);
+		    get.addColumn(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATE);
+		    gets.add(get);
+		    missing.add(token);
+		}
+	    }
+
+	    if (gets.size() > 0) {
+		Table sites = null;
+		try {
+		    sites = getSitesTableInterface(context);
+		    Result[] results = sites.get(gets);
+		    for (int i = 0; i < results.length; i++) {
+			byte[] type = results[i].getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
+			byte[] payload = results[i].getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
+			byte[] state = results[i].getValue(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATE);
+			if ((type == null) || (payload == null)) {
+			    continue;
+			}
+			DeviceAssignment assignment = PayloadMarshalerResolver.getInstance().getMarshaler(type)
+				.decodeDeviceAssignment(payload);
+			if (state != null) {
+			    assignment.setState(PayloadMarshalerResolver.getInstance().getMarshaler(type)
+				    .decodeDeviceAssignmentState(state));
+			}
+			found.put(missing.get(i), assignment);
+			if (context.getCacheProvider() != null) {
+			    context.getCacheProvider().getDeviceAssignmentCache().put(missing.get(i), assignment);
+			}
+		    }
+		} catch (IOException e) {
+		    throw new SiteWhereException("Unable to load device assignments by token.", e);
+		} finally {
+		    HBaseUtils.closeCleanly(sites);
+		}
+	    }
+
+	    List<IDeviceAssignment> matches = new ArrayList<IDeviceAssignment>();
+	    for (String token : tokens) {
+		IDeviceAssignment assignment = found.get(token);
+		if (assignment != null) {
+		    matches.add(assignment);
+		}
+	    }
+	    return matches;
+	} finally {
+	    Tracer.pop(LOGGER);
+	}
+    }
+
     /**
      * Update metadata associated with a device assignment.
      * 
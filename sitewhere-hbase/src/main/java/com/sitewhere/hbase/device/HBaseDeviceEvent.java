@@ -44,6 +44,7 @@ import com.sitewhere.rest.model.device.event.DeviceLocation;
 import com.sitewhere.rest.model.device.event.DeviceMeasurements;
 import com.sitewhere.rest.model.device.event.DeviceStateChange;
 import com.sitewhere.rest.model.device.event.DeviceStreamData;
+import com.sitewhere.rest.model.device.event.MeasurementRollup;
 import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
 import com.sitewhere.rest.model.search.Pager;
 import com.sitewhere.rest.model.search.SearchResults;
@@ -59,6 +60,7 @@ import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
 import com.sitewhere.spi.device.event.IDeviceStreamData;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
 import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
@@ -70,6 +72,7 @@ import com.sitewhere.spi.device.event.request.IDeviceStreamDataCreateRequest;
 import com.sitewhere.spi.error.ErrorCode;
 import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+import com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria;
 
 /**
  * HBase specifics for dealing with SiteWhere device events.
@@ -169,6 +172,69 @@ public class HBaseDeviceEvent {
 	return convertMatches(context, matches);
     }
 
+    /**
+     * Store measurement rollups for an assignment. Each rollup is written to a
+     * row keyed by window end, measurement name and window size so rollups for
+     * different measurements do not overwrite each other.
+     * 
+     * @param context
+     * @param assnToken
+     * @param rollups
+     * @throws SiteWhereException
+     */
+    public static void createMeasurementRollups(IHBaseContext context, String assnToken,
+	    List<IMeasurementRollup> rollups) throws SiteWhereException {
+	byte[] assnKey = context.getDeviceIdManager().getAssignmentKeys().getValue(assnToken);
+	if (assnKey == null) {
+	    throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+	}
+	for (IMeasurementRollup rollup : rollups) {
+	    long time = rollup.getWindowEnd().getTime();
+	    byte[] rowkey = getRollupRowKey(assnKey, time, rollup);
+	    byte[] qualifier = getQualifier(EventRecordType.MeasurementRollup, time,
+		    context.getPayloadMarshaler().getEncoding());
+	    byte[] payload = context.getPayloadMarshaler().encode(rollup);
+
+	    Put put = new Put(rowkey);
+	    put.addColumn(ISiteWhereHBase.FAMILY_ID, qualifier, payload);
+	    context.getDeviceEventBuffer().add(put);
+	}
+    }
+
+    /**
+     * List measurement rollups associated with an assignment based on the given
+     * criteria. Rows are limited to the date range by the scan.
+     * 
+     * @param context
+     * @param assnToken
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    public static SearchResults<IMeasurementRollup> listMeasurementRollups(IHBaseContext context, String assnToken,
+	    IMeasurementRollupSearchCriteria criteria) throws SiteWhereException {
+	Pager<EventMatch> matches = getEventRowsForAssignment(context, assnToken, EventRecordType.MeasurementRollup,
+		new DateRangeSearchCriteria(1, 0, criteria.getStartDate(), criteria.getEndDate()));
+	Pager<IMeasurementRollup> pager = new Pager<IMeasurementRollup>(criteria);
+	for (EventMatch match : matches.getResults()) {
+	    try {
+		MeasurementRollup rollup = PayloadMarshalerResolver.getInstance().getMarshaler(match.getEncoding())
+			.decode(match.getPayload(), MeasurementRollup.class);
+		if ((criteria.getMeasurementName() != null)
+			&& (!criteria.getMeasurementName().equals(rollup.getMeasurementName()))) {
+		    continue;
+		}
+		if ((criteria.getWindowSize() != null) && (criteria.getWindowSize() != rollup.getWindowSize())) {
+		    continue;
+		}
+		pager.process(rollup);
+	    } catch (Throwable e) {
+		LOGGER.error("Unable to read payload value into measurement rollup.", e);
+	    }
+	}
+	return new SearchResults<IMeasurementRollup>(pager.getResults(), pager.getTotal());
+    }
+
     /**
      * Create a new device location entry for an assignment.
      * 
@@ -705,32 +771,11 @@ public class HBaseDeviceEvent {
      */
     protected static Pager<EventMatch> getEventRowsForAssignment(IHBaseContext context, String assnToken,
 	    EventRecordType eventType, IDateRangeSearchCriteria criteria) throws SiteWhereException {
-	byte[] assnKey = context.getDeviceIdManager().getAssignmentKeys().getValue(assnToken);
-	if (assnKey == null) {
-	    throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
-	}
-
-	// Note: Because time values are inverted, start and end keys are
-	// reversed.
-	byte[] startKey = null, endKey = null;
-	if (criteria.getEndDate() != null) {
-	    startKey = getRowKey(assnKey, criteria.getEndDate().getTime());
-	} else {
-	    startKey = getAbsoluteStartKey(assnKey);
-	}
-	if (criteria.getStartDate() != null) {
-	    endKey = getRowKey(assnKey, criteria.getStartDate().getTime() - ROW_IN_MS);
-	} else {
-	    endKey = getAbsoluteEndKey(assnKey);
-	}
-
+	Scan scan = getAssignmentScan(context, assnToken, criteria);
 	Table events = null;
 	ResultScanner scanner = null;
 	try {
 	    events = getEventsTableInterface(context);
-	    Scan scan = new Scan();
-	    scan.setStartRow(startKey);
-	    scan.setStopRow(endKey);
 	    scanner = events.getScanner(scan);
 
 	    List<EventMatch> matches = new ArrayList<EventMatch>();
@@ -740,7 +785,7 @@ public class HBaseDeviceEvent {
 		Map<byte[], byte[]> cells = current.getFamilyMap(ISiteWhereHBase.FAMILY_ID);
 		for (byte[] qual : cells.keySet()) {
 		    byte[] value = cells.get(qual);
-		    if ((qual.length > 3) && ((eventType == null) || (qual[3] == eventType.getType()))) {
+		    if ((qual.length > 3) && (isMatchingType(qual[3], eventType))) {
 			Date eventDate = getDateForEventKeyValue(current.getRow(), qual);
 			if ((criteria.getStartDate() != null) && (eventDate.before(criteria.getStartDate()))) {
 			    continue;
@@ -770,6 +815,109 @@ public class HBaseDeviceEvent {
 	}
     }
 
+    /**
+     * Create a scan over event rows for an assignment that covers the date
+     * range of the search criteria. Rows are returned newest first.
+     * 
+     * @param context
+     * @param assnToken
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static Scan getAssignmentScan(IHBaseContext context, String assnToken,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	byte[] assnKey = context.getDeviceIdManager().getAssignmentKeys().getValue(assnToken);
+	if (assnKey == null) {
+	    throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+	}
+
+	// Note: Because time values are inverted, start and end keys are
+	// reversed.
+	byte[] startKey = null, endKey = null;
+	if (criteria.getEndDate() != null) {
+	    startKey = getRowKey(assnKey, criteria.getEndDate().getTime());
+	} else {
+	    startKey = getAbsoluteStartKey(assnKey);
+	}
+	if (criteria.getStartDate() != null) {
+	    endKey = getRowKey(assnKey, criteria.getStartDate().getTime() - ROW_IN_MS);
+	} else {
+	    endKey = getAbsoluteEndKey(assnKey);
+	}
+	Scan scan = new Scan();
+	scan.setStartRow(startKey);
+	scan.setStopRow(endKey);
+	return scan;
+    }
+
+    /**
+     * Create a scan over event rows for all assignments of a site.
+     * 
+     * @param context
+     * @param siteToken
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static Scan getSiteScan(IHBaseContext context, String siteToken) throws SiteWhereException {
+	Long siteId = context.getDeviceIdManager().getSiteKeys().getValue(siteToken);
+	if (siteId == null) {
+	    throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+	}
+	Scan scan = new Scan();
+	scan.setStartRow(HBaseSite.getAssignmentRowKey(siteId));
+	scan.setStopRow(HBaseSite.getAfterAssignmentRowKey(siteId));
+	return scan;
+    }
+
+    /**
+     * Indicates if an event date falls within the date range of the search
+     * criteria.
+     * 
+     * @param eventDate
+     * @param criteria
+     * @return
+     */
+    protected static boolean isInDateRange(Date eventDate, IDateRangeSearchCriteria criteria) {
+	if ((criteria.getStartDate() != null) && (eventDate.before(criteria.getStartDate()))) {
+	    return false;
+	}
+	if ((criteria.getEndDate() != null) && (eventDate.after(criteria.getEndDate()))) {
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Unmarshal the event stored in a cell.
+     * 
+     * @param qualifier
+     * @param value
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static IDeviceEvent decodeEvent(byte[] qualifier, byte[] value) throws SiteWhereException {
+	Class<? extends IDeviceEvent> type = getEventClassForIndicator(qualifier[3]);
+	return PayloadMarshalerResolver.getInstance().getMarshaler(getEncodingFromQualifier(qualifier)).decode(value,
+		type);
+    }
+
+    /**
+     * Indicates if a record type indicator matches the requested type. Rollups
+     * are only matched when requested explicitly.
+     * 
+     * @param indicator
+     * @param eventType
+     *            requested type or null for all events
+     * @return
+     */
+    protected static boolean isMatchingType(byte indicator, EventRecordType eventType) {
+	if (eventType == null) {
+	    return indicator != EventRecordType.MeasurementRollup.getType();
+	}
+	return indicator == eventType.getType();
+    }
+
     /**
      * Decodes the event date encoded in the rowkey and qualifier for events.
      * 
@@ -807,20 +955,11 @@ public class HBaseDeviceEvent {
      */
     protected static Pager<EventMatch> getEventRowsForSite(IHBaseContext context, String siteToken,
 	    EventRecordType eventType, IDateRangeSearchCriteria criteria) throws SiteWhereException {
-	Long siteId = context.getDeviceIdManager().getSiteKeys().getValue(siteToken);
-	if (siteId == null) {
-	    throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
-	}
-	byte[] startPrefix = HBaseSite.getAssignmentRowKey(siteId);
-	byte[] afterPrefix = HBaseSite.getAfterAssignmentRowKey(siteId);
-
+	Scan scan = getSiteScan(context, siteToken);
 	Table events = null;
 	ResultScanner scanner = null;
 	try {
 	    events = getEventsTableInterface(context);
-	    Scan scan = new Scan();
-	    scan.setStartRow(startPrefix);
-	    scan.setStopRow(afterPrefix);
 	    scanner = events.getScanner(scan);
 
 	    List<EventMatch> matches = new ArrayList<EventMatch>();
@@ -995,6 +1134,27 @@ public class HBaseDeviceEvent {
 	return buffer.array();
     }
 
+    /**
+     * Get row key for a measurement rollup. The event row key is followed by
+     * the window size and measurement name.
+     * 
+     * @param assnKey
+     * @param time
+     * @param rollup
+     * @return
+     * @throws SiteWhereException
+     */
+    public static byte[] getRollupRowKey(byte[] assnKey, long time, IMeasurementRollup rollup)
+	    throws SiteWhereException {
+	byte[] rowkey = getRowKey(assnKey, time);
+	byte[] name = Bytes.toBytes(rollup.getMeasurementName());
+	ByteBuffer buffer = ByteBuffer.allocate(rowkey.length + 8 + name.length);
+	buffer.put(rowkey);
+	buffer.putLong(rollup.getWindowSize());
+	buffer.put(name);
+	return buffer.array();
+    }
+
     /**
      * Get column qualifier for storing the event.
      * 
@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.hbase.IHBaseContext;
+import com.sitewhere.hbase.ISiteWhereHBase;
+import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+
+/**
+ * Implementation of {@link IDeviceEventIterator} that reads events from HBase
+ * scanners as they are requested. Event rows for an assignment are already
+ * stored newest first, so assignment events are streamed directly from a
+ * single scanner. Rows for a site are grouped by assignment, so site events
+ * are read in pages: each page scans the site keeping only the newest events
+ * older than the last one returned, which bounds memory to a single page.
+ *
+ * @author Derek
+ */
+public abstract class HBaseDeviceEventIterator implements IDeviceEventIterator {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Default number of events held per page for site iterators */
+    public static final int DEFAULT_SITE_PAGE_SIZE = 500;
+
+    /** HBase context */
+    protected IHBaseContext context;
+
+    /** Record type or null for all events */
+    protected EventRecordType eventType;
+
+    /** Search criteria */
+    protected IDateRangeSearchCriteria criteria;
+
+    /** Number of events still to be skipped */
+    private long toSkip;
+
+    /** Number of events still to be returned or -1 for no limit */
+    private long remaining;
+
+    /** Next event to be returned */
+    private IDeviceEvent next;
+
+    /** Indicates whether iterator has been closed */
+    private boolean closed = false;
+
+    protected HBaseDeviceEventIterator(IHBaseContext context, EventRecordType eventType,
+	    IDateRangeSearchCriteria criteria) {
+	this.context = context;
+	this.eventType = eventType;
+	this.criteria = criteria;
+	if (criteria.getPageSize() > 0) {
+	    this.toSkip = (criteria.getPageNumber() >= 1) ? (criteria.getPageNumber() - 1) * criteria.getPageSize() : 0;
+	    this.remaining = criteria.getPageSize();
+	} else {
+	    this.toSkip = 0;
+	    this.remaining = -1;
+	}
+    }
+
+    /**
+     * Create an iterator over events for an assignment.
+     *
+     * @param context
+     * @param assignmentToken
+     * @param type
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    public static HBaseDeviceEventIterator forAssignment(IHBaseContext context, String assignmentToken,
+	    DeviceEventType type, IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	EventRecordType recordType = (type != null) ? getRecordType(type) : null;
+	return new AssignmentIterator(context, recordType, criteria,
+		HBaseDeviceEvent.getAssignmentScan(context, assignmentToken, criteria));
+    }
+
+    /**
+     * Create an iterator over events of a given type for a site.
+     *
+     * @param context
+     * @param siteToken
+     * @param type
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    public static HBaseDeviceEventIterator forSite(IHBaseContext context, String siteToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	if (type == null) {
+	    throw new SiteWhereException("Event type is required for listing site events.");
+	}
+	return new SiteIterator(context, getRecordType(type), criteria, HBaseDeviceEvent.getSiteScan(context, siteToken),
+		DEFAULT_SITE_PAGE_SIZE);
+    }
+
+    /**
+     * Get the record type used to store events of the given type.
+     *
+     * @param type
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static EventRecordType getRecordType(DeviceEventType type) throws SiteWhereException {
+	switch (type) {
+	case Measurements:
+	    return EventRecordType.Measurement;
+	case Location:
+	    return EventRecordType.Location;
+	case Alert:
+	    return EventRecordType.Alert;
+	case CommandInvocation:
+	    return EventRecordType.CommandInvocation;
+	case CommandResponse:
+	    return EventRecordType.CommandResponse;
+	case StateChange:
+	    return EventRecordType.StateChange;
+	default:
+	    throw new SiteWhereException("Iterating events of type '" + type + "' is not supported.");
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.sitewhere.spi.device.event.IDeviceEventIterator#hasNext()
+     */
+    @Override
+    public boolean hasNext() throws SiteWhereException {
+	while ((next == null) && (!closed) && (remaining != 0)) {
+	    IDeviceEvent event = fetch();
+	    if (event == null) {
+		close();
+	    } else if (toSkip > 0) {
+		toSkip--;
+	    } else {
+		next = event;
+		if (remaining > 0) {
+		    remaining--;
+		}
+	    }
+	}
+	return next != null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.sitewhere.spi.device.event.IDeviceEventIterator#next()
+     */
+    @Override
+    public IDeviceEvent next() throws SiteWhereException {
+	if (!hasNext()) {
+	    throw new SiteWhereException("No more events available.");
+	}
+	IDeviceEvent event = next;
+	next = null;
+	return event;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.sitewhere.spi.device.event.IDeviceEventIterator#close()
+     */
+    @Override
+    public void close() throws SiteWhereException {
+	if (!closed) {
+	    closed = true;
+	    release();
+	}
+    }
+
+    /**
+     * Get the next matching event or null if no more events are available.
+     *
+     * @return
+     * @throws SiteWhereException
+     */
+    protected abstract IDeviceEvent fetch() throws SiteWhereException;
+
+    /**
+     * Release resources held by the iterator.
+     *
+     * @throws SiteWhereException
+     */
+    protected abstract void release() throws SiteWhereException;
+
+    /**
+     * Indicates if a cell holds an event matching the record type and date
+     * range.
+     *
+     * @param qualifier
+     * @param eventDate
+     * @return
+     */
+    protected boolean isMatch(byte[] qualifier, Date eventDate) {
+	if ((qualifier.length <= 3) || (!HBaseDeviceEvent.isMatchingType(qualifier[3], eventType))) {
+	    return false;
+	}
+	return HBaseDeviceEvent.isInDateRange(eventDate, criteria);
+    }
+
+    /**
+     * Unmarshal the event stored in a cell. Returns null if the cell can not
+     * be read.
+     *
+     * @param qualifier
+     * @param value
+     * @return
+     */
+    protected IDeviceEvent decode(byte[] qualifier, byte[] value) {
+	try {
+	    return HBaseDeviceEvent.decodeEvent(qualifier, value);
+	} catch (Throwable e) {
+	    LOGGER.error("Unable to read payload value into event object.", e);
+	    return null;
+	}
+    }
+
+    /**
+     * Streams events for an assignment from a single scanner.
+     *
+     * @author Derek
+     */
+    private static class AssignmentIterator extends HBaseDeviceEventIterator {
+
+	/** Events table */
+	private Table events;
+
+	/** Scanner over event rows */
+	private ResultScanner scanner;
+
+	/** Current row key */
+	private byte[] row;
+
+	/** Remaining cells in current row */
+	private Iterator<Map.Entry<byte[], byte[]>> cells;
+
+	public AssignmentIterator(IHBaseContext context, EventRecordType eventType,
+		IDateRangeSearchCriteria criteria, Scan scan) throws SiteWhereException {
+	    super(context, eventType, criteria);
+	    try {
+		this.events = HBaseDeviceEvent.getEventsTableInterface(context);
+		this.scanner = events.getScanner(scan);
+	    } catch (IOException e) {
+		HBaseUtils.closeCleanly(events);
+		throw new SiteWhereException("Error scanning event rows.", e);
+	    }
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.sitewhere.hbase.device.HBaseDeviceEventIterator#fetch()
+	 */
+	@Override
+	protected IDeviceEvent fetch() throws SiteWhereException {
+	    try {
+		while (true) {
+		    while ((cells == null) || (!cells.hasNext())) {
+			Result result = scanner.next();
+			if (result == null) {
+			    return null;
+			}
+			row = result.getRow();
+			cells = result.getFamilyMap(ISiteWhereHBase.FAMILY_ID).entrySet().iterator();
+		    }
+		    Map.Entry<byte[], byte[]> cell = cells.next();
+		    byte[] qualifier = cell.getKey();
+		    if ((qualifier.length > 3)
+			    && (isMatch(qualifier, HBaseDeviceEvent.getDateForEventKeyValue(row, qualifier)))) {
+			IDeviceEvent event = decode(qualifier, cell.getValue());
+			if (event != null) {
+			    return event;
+			}
+		    }
+		}
+	    } catch (IOException e) {
+		throw new SiteWhereException("Error scanning event rows.", e);
+	    }
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.sitewhere.hbase.device.HBaseDeviceEventIterator#release()
+	 */
+	@Override
+	protected void release() throws SiteWhereException {
+	    cells = null;
+	    scanner.close();
+	    HBaseUtils.closeCleanly(events);
+	}
+    }
+
+    /**
+     * Reads events for a site one page at a time. Each page scans the site
+     * and keeps the newest events that come after the last event returned,
+     * ordered by date and then by row key and qualifier.
+     *
+     * @author Derek
+     */
+    private static class SiteIterator extends HBaseDeviceEventIterator {
+
+	/** Orders cells newest first, then by key */
+	private static final Comparator<SiteCell> ORDER = new Comparator<SiteCell>() {
+
+	    @Override
+	    public int compare(SiteCell first, SiteCell second) {
+		int result = Long.compare(second.getDate(), first.getDate());
+		if (result != 0) {
+		    return result;
+		}
+		return Bytes.compareTo(first.getKey(), second.getKey());
+	    }
+	};
+
+	/** Scan over site event rows */
+	private Scan scan;
+
+	/** Maximum number of events held per page */
+	private int pageSize;
+
+	/** Last cell returned */
+	private SiteCell last;
+
+	/** Indicates whether the last page has been loaded */
+	private boolean lastPage = false;
+
+	/** Cells from the current page */
+	private Iterator<SiteCell> current;
+
+	public SiteIterator(IHBaseContext context, EventRecordType eventType, IDateRangeSearchCriteria criteria,
+		Scan scan, int pageSize) {
+	    super(context, eventType, criteria);
+	    this.scan = scan;
+	    this.pageSize = pageSize;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.sitewhere.hbase.device.HBaseDeviceEventIterator#fetch()
+	 */
+	@Override
+	protected IDeviceEvent fetch() throws SiteWhereException {
+	    while (true) {
+		while ((current == null) || (!current.hasNext())) {
+		    if (lastPage) {
+			return null;
+		    }
+		    loadPage();
+		}
+		last = current.next();
+		IDeviceEvent event = decode(last.getQualifier(), last.getValue());
+		if (event != null) {
+		    return event;
+		}
+	    }
+	}
+
+	/**
+	 * Scan the site and keep the newest page of cells that come after the
+	 * last cell returned.
+	 *
+	 * @throws SiteWhereException
+	 */
+	protected void loadPage() throws SiteWhereException {
+	    PriorityQueue<SiteCell> page = new PriorityQueue<SiteCell>(pageSize + 1, Collections.reverseOrder(ORDER));
+	    Table events = null;
+	    ResultScanner scanner = null;
+	    try {
+		events = HBaseDeviceEvent.getEventsTableInterface(context);
+		scanner = events.getScanner(new Scan(scan));
+		for (Result result : scanner) {
+		    byte[] row = result.getRow();
+		    if (row.length <= 7) {
+			continue;
+		    }
+		    for (Map.Entry<byte[], byte[]> cell : result.getFamilyMap(ISiteWhereHBase.FAMILY_ID).entrySet()) {
+			byte[] qualifier = cell.getKey();
+			if (qualifier.length <= 3) {
+			    continue;
+			}
+			Date eventDate = HBaseDeviceEvent.getDateForEventKeyValue(row, qualifier);
+			if (!isMatch(qualifier, eventDate)) {
+			    continue;
+			}
+			SiteCell candidate = new SiteCell(eventDate.getTime(), Bytes.add(row, qualifier), qualifier,
+				cell.getValue());
+			if ((last != null) && (ORDER.compare(candidate, last) <= 0)) {
+			    continue;
+			}
+			if (page.size() < pageSize) {
+			    page.add(candidate);
+			} else if (ORDER.compare(candidate, page.peek()) < 0) {
+			    page.poll();
+			    page.add(candidate);
+			}
+		    }
+		}
+	    } catch (IOException e) {
+		throw new SiteWhereException("Error scanning event rows.", e);
+	    } finally {
+		if (scanner != null) {
+		    scanner.close();
+		}
+		HBaseUtils.closeCleanly(events);
+	    }
+	    List<SiteCell> sorted = new ArrayList<SiteCell>(page);
+	    Collections.sort(sorted, ORDER);
+	    lastPage = sorted.size() < pageSize;
+	    current = sorted.iterator();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.sitewhere.hbase.device.HBaseDeviceEventIterator#release()
+	 */
+	@Override
+	protected void release() throws SiteWhereException {
+	    current = null;
+	    lastPage = true;
+	}
+    }
+
+    /**
+     * Event cell held in a page of site events.
+     *
+     * @author Derek
+     */
+    private static class SiteCell {
+
+	/** Event time */
+	private long date;
+
+	/** Row key followed by qualifier */
+	private byte[] key;
+
+	/** Column qualifier */
+	private byte[] qualifier;
+
+	/** Encoded event */
+	private byte[] value;
+
+	public SiteCell(long date, byte[] key, byte[] qualifier, byte[] value) {
+	    this.date = date;
+	    this.key = key;
+	    this.qualifier = qualifier;
+	    this.value = value;
+	}
+
+	public long getDate() {
+	    return date;
+	}
+
+	public byte[] getKey() {
+	    return key;
+	}
+
+	public byte[] getQualifier() {
+	    return qualifier;
+	}
+
+	public byte[] getValue() {
+	    return value;
+	}
+    }
+}
\ No newline at end of file
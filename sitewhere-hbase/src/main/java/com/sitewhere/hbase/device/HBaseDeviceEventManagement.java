@@ -28,17 +28,20 @@ import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.command.IDeviceCommand;
+import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
 import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceEventBatch;
 import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
 import com.sitewhere.spi.device.event.IDeviceEventManagement;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
 import com.sitewhere.spi.device.event.IDeviceStreamData;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
 import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
@@ -51,6 +54,7 @@ import com.sitewhere.spi.error.ErrorCode;
 import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 import com.sitewhere.spi.search.ISearchResults;
+import com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
@@ -209,6 +213,34 @@ public class HBaseDeviceEventManagement extends TenantLifecycleComponent impleme
 	return HBaseDeviceEvent.listDeviceEvents(context, assignmentToken, criteria);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.event.IDeviceEventManagement#iterateDeviceEvents(
+     * java.lang.String, com.sitewhere.spi.device.event.DeviceEventType,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public IDeviceEventIterator iterateDeviceEvents(String assignmentToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	return HBaseDeviceEventIterator.forAssignment(context, assignmentToken, type, criteria);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * iterateDeviceEventsForSite(java.lang.String,
+     * com.sitewhere.spi.device.event.DeviceEventType,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public IDeviceEventIterator iterateDeviceEventsForSite(String siteToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	return HBaseDeviceEventIterator.forSite(context, siteToken, type, criteria);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -249,6 +281,31 @@ public class HBaseDeviceEventManagement extends TenantLifecycleComponent impleme
 	return HBaseDeviceEvent.listDeviceMeasurementsForSite(context, siteToken, criteria);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * addMeasurementRollups(java.lang.String, java.util.List)
+     */
+    @Override
+    public void addMeasurementRollups(String assignmentToken, List<IMeasurementRollup> rollups)
+	    throws SiteWhereException {
+	HBaseDeviceEvent.createMeasurementRollups(context, assignmentToken, rollups);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * listMeasurementRollups(java.lang.String,
+     * com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria)
+     */
+    @Override
+    public ISearchResults<IMeasurementRollup> listMeasurementRollups(String assignmentToken,
+	    IMeasurementRollupSearchCriteria criteria) throws SiteWhereException {
+	return HBaseDeviceEvent.listMeasurementRollups(context, assignmentToken, criteria);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -7,6 +7,7 @@
  */
 package com.sitewhere.hbase.device;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -184,6 +185,18 @@ public class HBaseDeviceManagement extends TenantLifecycleComponent
 	return HBaseDeviceSpecification.getDeviceSpecificationByToken(context, token);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#getDeviceSpecificationsByTokens(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceSpecification> getDeviceSpecificationsByTokens(List<String> tokens) throws SiteWhereException {
+	return HBaseDeviceSpecification.getDeviceSpecificationsByTokens(context, tokens);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -295,6 +308,26 @@ public class HBaseDeviceManagement extends TenantLifecycleComponent
 	return HBaseDevice.createDevice(context, device);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#createDevices(java.util.List)
+     */
+    public List<IDevice> createDevices(List<IDeviceCreateRequest> requests) throws SiteWhereException {
+	List<IDevice> results = new ArrayList<IDevice>();
+	for (IDeviceCreateRequest request : requests) {
+	    try {
+		results.add(HBaseDevice.createDevice(context, request));
+	    } catch (SiteWhereSystemException e) {
+		if (e.getCode() != ErrorCode.DuplicateHardwareId) {
+		    throw e;
+		}
+	    }
+	}
+	return results;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -306,6 +339,17 @@ public class HBaseDeviceManagement extends TenantLifecycleComponent
 	return HBaseDevice.getDeviceByHardwareId(context, hardwareId);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#getDevicesByHardwareIds(java.
+     * util.List)
+     */
+    public List<IDevice> getDevicesByHardwareIds(List<String> hardwareIds) throws SiteWhereException {
+	return HBaseDevice.getDevicesByHardwareIds(context, hardwareIds);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -390,6 +434,28 @@ public class HBaseDeviceManagement extends TenantLifecycleComponent
 	return HBaseDeviceAssignment.createDeviceAssignment(context, request);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#createDeviceAssignments(java.
+     * util.List)
+     */
+    public List<IDeviceAssignment> createDeviceAssignments(List<IDeviceAssignmentCreateRequest> requests)
+	    throws SiteWhereException {
+	List<IDeviceAssignment> results = new ArrayList<IDeviceAssignment>();
+	for (IDeviceAssignmentCreateRequest request : requests) {
+	    try {
+		results.add(HBaseDeviceAssignment.createDeviceAssignment(context, request));
+	    } catch (SiteWhereSystemException e) {
+		if ((e.getCode() != ErrorCode.InvalidHardwareId) && (e.getCode() != ErrorCode.DeviceAlreadyAssigned)) {
+		    throw e;
+		}
+	    }
+	}
+	return results;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -401,6 +467,18 @@ public class HBaseDeviceManagement extends TenantLifecycleComponent
 	return HBaseDeviceAssignment.getDeviceAssignment(context, token);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#getDeviceAssignmentsByTokens(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceAssignment> getDeviceAssignmentsByTokens(List<String> tokens) throws SiteWhereException {
+	return HBaseDeviceAssignment.getDeviceAssignmentsByTokens(context, tokens);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -631,6 +709,18 @@ public class HBaseDeviceManagement extends TenantLifecycleComponent
 	return HBaseSite.getSiteByToken(context, token);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#getSitesByTokens(java.
+     * util.List)
+     */
+    @Override
+    public List<ISite> getSitesByTokens(List<String> tokens) throws SiteWhereException {
+	return HBaseSite.getSitesByTokens(context, tokens);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -9,10 +9,13 @@ package com.sitewhere.hbase.device;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.Table;
@@ -28,6 +31,7 @@ import com.sitewhere.hbase.IHBaseContext;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.common.HBaseUtils;
 import com.sitewhere.hbase.common.IRowKeyBuilder;
+import com.sitewhere.hbase.encoder.PayloadMarshalerResolver;
 import com.sitewhere.hbase.uid.UniqueIdCounterMap;
 import com.sitewhere.hbase.uid.UniqueIdCounterMapRowKeyBuilder;
 import com.sitewhere.rest.model.device.DeviceSpecification;
@@ -158,6 +162,75 @@ public class HBaseDeviceSpecification {
 	}
     }
 
+    /**
+     * Get device specifications for a list of tokens. Specifications not in the
+     * cache are loaded with a single multi-get.
+     * 
+     * @param context
+     * @param tokens
+     * @return
+     * @throws SiteWhereException
+     */
+    public static List<IDeviceSpecification> getDeviceSpecificationsByTokens(IHBaseContext context,
+	    List<String> tokens) throws SiteWhereException {
+	Tracer.push(TracerCategory.DeviceManagementApiCall, "getDeviceSpecificationsByTokens (HBase)", LOGGER);
+	try {
+	    Map<String, IDeviceSpecification> found = new HashMap<String, IDeviceSpecification>();
+	    List<String> missing = new ArrayList<String>();
+	    List<Get> gets = new ArrayList<Get>();
+	    for (String token : tokens) {
+		IDeviceSpecification cached = (context.getCacheProvider() != null)
+			? context.getCacheProvider().getDeviceSpecificationCache().get(token) : null;
+		if (cached != null) {
+		    found.put(token, cached);
+		    continue;
+		}
+		if (context.getDeviceIdManager().getSpecificationKeys().getValue(token) != null) {
+		    Get get = new Get(KEY_BUILDER.buildPrimaryKey(context, token));
+		    HBaseUtils.addPayloadFields(get);
+		    gets.add(get);
+		    missing.add(token);
+		}
+	    }
+
+	    if (gets.size() > 0) {
+		Table devices = null;
+		try {
+		    devices = HBaseUtils.getTableInterface(context, ISiteWhereHBase.DEVICES_TABLE_NAME);
+		    Result[] results = devices.get(gets);
+		    for (int i = 0; i < results.length; i++) {
+			byte[] type = results[i].getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
+			byte[] payload = results[i].getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
+			if ((type == null) || (payload == null)) {
+			    continue;
+			}
+			DeviceSpecification specification = PayloadMarshalerResolver.getInstance().getMarshaler(type)
+				.decodeDeviceSpecification(payload);
+			found.put(missing.get(i), specification);
+			if (context.getCacheProvider() != null) {
+			    context.getCacheProvider().getDeviceSpecificationCache().put(missing.get(i), specification);
+			}
+		    }
+		} catch (IOException e) {
+		    throw new SiteWhereException("Unable to load device specifications by token.", e);
+		} finally {
+		    HBaseUtils.closeCleanly(devices);
+		}
+	    }
+
+	    List<IDeviceSpecification> matches = new ArrayList<IDeviceSpecification>();
+	    for (String token : tokens) {
+		IDeviceSpecification specification = found.get(token);
+		if (specification != null) {
+		    matches.add(specification);
+		}
+	    }
+	    return matches;
+	} finally {
+	    Tracer.pop(LOGGER);
+	}
+    }
+
     /**
      * Update an existing device specification.
      * 
@@ -9,7 +9,11 @@ package com.sitewhere.hbase.device;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
@@ -173,6 +177,74 @@ public class HBaseSite {
 	}
     }
 
+    /**
+     * Get sites for a list of tokens. Sites not in the cache are loaded with a
+     * single multi-get.
+     * 
+     * @param context
+     * @param tokens
+     * @return
+     * @throws SiteWhereException
+     */
+    public static List<ISite> getSitesByTokens(IHBaseContext context, List<String> tokens) throws SiteWhereException {
+	Tracer.push(TracerCategory.DeviceManagementApiCall, "getSitesByTokens (HBase)", LOGGER);
+	try {
+	    Map<String, ISite> found = new HashMap<String, ISite>();
+	    List<String> missing = new ArrayList<String>();
+	    List<Get> gets = new ArrayList<Get>();
+	    for (String token : tokens) {
+		ISite cached = (context.getCacheProvider() != null)
+			? context.getCacheProvider().getSiteCache().get(token) : null;
+		if (cached != null) {
+		    found.put(token, cached);
+		    continue;
+		}
+		Long siteId = context.getDeviceIdManager().getSiteKeys().getValue(token);
+		if (siteId != null) {
+		    Get get = new Get(getPrimaryRowkey(siteId));
+		    HBaseUtils.addPayloadFields(get);
+		    gets.add(get);
+		    missing.add(token);
+		}
+	    }
+
+	    if (gets.size() > 0) {
+		Table sites = null;
+		try {
+		    sites = getSitesTableInterface(context);
+		    Result[] results = sites.get(gets);
+		    for (int i = 0; i < results.length; i++) {
+			byte[] type = results[i].getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
+			byte[] payload = results[i].getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
+			if ((type == null) || (payload == null)) {
+			    continue;
+			}
+			Site site = PayloadMarshalerResolver.getInstance().getMarshaler(type).decodeSite(payload);
+			found.put(missing.get(i), site);
+			if (context.getCacheProvider() != null) {
+			    context.getCacheProvider().getSiteCache().put(missing.get(i), site);
+			}
+		    }
+		} catch (IOException e) {
+		    throw new SiteWhereException("Unable to load sites by token.", e);
+		} finally {
+		    HBaseUtils.closeCleanly(sites);
+		}
+	    }
+
+	    List<ISite> matches = new ArrayList<ISite>();
+	    for (String token : tokens) {
+		ISite site = found.get(token);
+		if (site != null) {
+		    matches.add(site);
+		}
+	    }
+	    return matches;
+	} finally {
+	    Tracer.pop(LOGGER);
+	}
+    }
+
     /**
      * Update information for an existing site.
      * 
@@ -22,6 +22,7 @@ import org.influxdb.dto.Point;
 
 import com.sitewhere.core.SiteWherePersistence;
 import com.sitewhere.device.AssignmentStateManager;
+import com.sitewhere.device.event.PagedDeviceEventIterator;
 import com.sitewhere.influx.device.InfluxDbDeviceAlert;
 import com.sitewhere.influx.device.InfluxDbDeviceCommandInvocation;
 import com.sitewhere.influx.device.InfluxDbDeviceCommandResponse;
@@ -29,6 +30,7 @@ import com.sitewhere.influx.device.InfluxDbDeviceEvent;
 import com.sitewhere.influx.device.InfluxDbDeviceLocation;
 import com.sitewhere.influx.device.InfluxDbDeviceMeasurements;
 import com.sitewhere.influx.device.InfluxDbDeviceStateChange;
+import com.sitewhere.influx.device.InfluxDbMeasurementRollup;
 import com.sitewhere.rest.model.device.event.DeviceAlert;
 import com.sitewhere.rest.model.device.event.DeviceCommandInvocation;
 import com.sitewhere.rest.model.device.event.DeviceCommandResponse;
@@ -49,11 +51,13 @@ import com.sitewhere.spi.device.event.IDeviceCommandResponse;
 import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceEventBatch;
 import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
 import com.sitewhere.spi.device.event.IDeviceEventManagement;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
 import com.sitewhere.spi.device.event.IDeviceStreamData;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
 import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
@@ -64,6 +68,7 @@ import com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceStreamDataCreateRequest;
 import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 import com.sitewhere.spi.search.ISearchResults;
+import com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
@@ -276,6 +281,34 @@ public class InfluxDbDeviceEventManagement extends TenantLifecycleComponent impl
 	return new SearchResults<IDeviceEvent>(events);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.event.IDeviceEventManagement#iterateDeviceEvents(
+     * java.lang.String, com.sitewhere.spi.device.event.DeviceEventType,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public IDeviceEventIterator iterateDeviceEvents(String assignmentToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	return PagedDeviceEventIterator.forAssignment(this, assignmentToken, type, criteria);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * iterateDeviceEventsForSite(java.lang.String,
+     * com.sitewhere.spi.device.event.DeviceEventType,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public IDeviceEventIterator iterateDeviceEventsForSite(String siteToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	return PagedDeviceEventIterator.forSite(this, siteToken, type, criteria);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -329,6 +362,33 @@ public class InfluxDbDeviceEventManagement extends TenantLifecycleComponent impl
 		getDatabase(), IDeviceMeasurements.class);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * addMeasurementRollups(java.lang.String, java.util.List)
+     */
+    @Override
+    public void addMeasurementRollups(String assignmentToken, List<IMeasurementRollup> rollups)
+	    throws SiteWhereException {
+	for (IMeasurementRollup rollup : rollups) {
+	    influx.write(getDatabase(), getRetention(), InfluxDbMeasurementRollup.createPoint(rollup));
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * listMeasurementRollups(java.lang.String,
+     * com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria)
+     */
+    @Override
+    public ISearchResults<IMeasurementRollup> listMeasurementRollups(String assignmentToken,
+	    IMeasurementRollupSearchCriteria criteria) throws SiteWhereException {
+	return InfluxDbMeasurementRollup.searchByAssignment(assignmentToken, criteria, influx, getDatabase());
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.influx.device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import org.influxdb.dto.QueryResult.Result;
+import org.influxdb.dto.QueryResult.Series;
+
+import com.sitewhere.rest.model.device.event.MeasurementRollup;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
+import com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria;
+
+/**
+ * Class for saving measurement rollups to InfluxDB. Rollups are kept in their
+ * own measurement so they are not returned by event queries.
+ * 
+ * @author Derek
+ */
+public class InfluxDbMeasurementRollup {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Collection for rollups */
+    public static final String COLLECTION_ROLLUPS = "rollups";
+
+    /** Tag for aggregated measurement name */
+    public static final String ROLLUP_MEASUREMENT = "mxname";
+
+    /** Tag for window size */
+    public static final String ROLLUP_WINDOW_SIZE = "windowsize";
+
+    /** Field for window start */
+    public static final String ROLLUP_WINDOW_START = "windowstart";
+
+    /** Field for number of values */
+    public static final String ROLLUP_COUNT = "samples";
+
+    /** Field for minimum value */
+    public static final String ROLLUP_MIN = "minimum";
+
+    /** Field for maximum value */
+    public static final String ROLLUP_MAX = "maximum";
+
+    /** Field for sum of values */
+    public static final String ROLLUP_SUM = "total";
+
+    /**
+     * Create a point for a rollup. The point time is the window end.
+     * 
+     * @param rollup
+     * @return
+     * @throws SiteWhereException
+     */
+    public static Point createPoint(IMeasurementRollup rollup) throws SiteWhereException {
+	Point.Builder builder = Point.measurement(COLLECTION_ROLLUPS);
+	builder.time(rollup.getWindowEnd().getTime(), TimeUnit.MILLISECONDS);
+	builder.tag(InfluxDbDeviceEvent.EVENT_ASSIGNMENT, rollup.getDeviceAssignmentToken());
+	builder.tag(ROLLUP_MEASUREMENT, rollup.getMeasurementName());
+	builder.tag(ROLLUP_WINDOW_SIZE, String.valueOf(rollup.getWindowSize()));
+	builder.addField(ROLLUP_WINDOW_START, rollup.getWindowStart().getTime());
+	builder.addField(ROLLUP_COUNT, rollup.getCount());
+	builder.addField(ROLLUP_MIN, rollup.getMin());
+	builder.addField(ROLLUP_MAX, rollup.getMax());
+	builder.addField(ROLLUP_SUM, rollup.getSum());
+	return builder.build();
+    }
+
+    /**
+     * Search for rollups associated with an assignment.
+     * 
+     * @param assignmentToken
+     * @param criteria
+     * @param influx
+     * @param database
+     * @return
+     * @throws SiteWhereException
+     */
+    public static SearchResults<IMeasurementRollup> searchByAssignment(String assignmentToken,
+	    IMeasurementRollupSearchCriteria criteria, InfluxDB influx, String database) throws SiteWhereException {
+	Query query = new Query("SELECT * FROM " + COLLECTION_ROLLUPS + buildWhereClause(assignmentToken, criteria)
+		+ " ORDER BY time DESC" + InfluxDbDeviceEvent.buildPagingCriteria(criteria), database);
+	LOGGER.debug("Query: " + query.getCommand());
+	QueryResult response = influx.query(query, TimeUnit.MILLISECONDS);
+	List<IMeasurementRollup> results = parseRollups(response);
+
+	Query countQuery = new Query("SELECT count(" + ROLLUP_SUM + ") FROM " + COLLECTION_ROLLUPS
+		+ buildWhereClause(assignmentToken, criteria), database);
+	LOGGER.debug("Count: " + countQuery.getCommand());
+	QueryResult countResponse = influx.query(countQuery);
+	long count = InfluxDbDeviceEvent.parseCount(countResponse);
+	return new SearchResults<IMeasurementRollup>(results, count);
+    }
+
+    /**
+     * Build where clause for rollup search criteria.
+     * 
+     * @param assignmentToken
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static String buildWhereClause(String assignmentToken, IMeasurementRollupSearchCriteria criteria)
+	    throws SiteWhereException {
+	String clause = " where " + InfluxDbDeviceEvent.EVENT_ASSIGNMENT + "='" + assignmentToken + "'";
+	if (criteria.getMeasurementName() != null) {
+	    clause += " and " + ROLLUP_MEASUREMENT + "='" + criteria.getMeasurementName() + "'";
+	}
+	if (criteria.getWindowSize() != null) {
+	    clause += " and " + ROLLUP_WINDOW_SIZE + "='" + criteria.getWindowSize() + "'";
+	}
+	return clause + InfluxDbDeviceEvent.buildDateRangeCriteria(criteria);
+    }
+
+    /**
+     * Parse rollups from a query.
+     * 
+     * @param response
+     * @return
+     * @throws SiteWhereException
+     */
+    public static List<IMeasurementRollup> parseRollups(QueryResult response) throws SiteWhereException {
+	InfluxDbDeviceEvent.handleError(response);
+
+	List<IMeasurementRollup> results = new ArrayList<IMeasurementRollup>();
+	for (Result result : response.getResults()) {
+	    if (result.getSeries() != null) {
+		for (Series series : result.getSeries()) {
+		    for (List<Object> values : series.getValues()) {
+			results.add(parse(InfluxDbDeviceEvent.getValueMap(series.getColumns(), values)));
+		    }
+		}
+	    }
+	}
+	return results;
+    }
+
+    /**
+     * Parse domain object from a value map.
+     * 
+     * @param values
+     * @return
+     * @throws SiteWhereException
+     */
+    public static MeasurementRollup parse(Map<String, Object> values) throws SiteWhereException {
+	MeasurementRollup rollup = new MeasurementRollup();
+	rollup.setDeviceAssignmentToken(InfluxDbDeviceEvent.find(values, InfluxDbDeviceEvent.EVENT_ASSIGNMENT));
+	rollup.setMeasurementName(InfluxDbDeviceEvent.find(values, ROLLUP_MEASUREMENT));
+	rollup.setWindowSize(Long.parseLong(InfluxDbDeviceEvent.find(values, ROLLUP_WINDOW_SIZE)));
+	rollup.setWindowStart(InfluxDbDeviceEvent.parseDateField(values, ROLLUP_WINDOW_START));
+	rollup.setWindowEnd(InfluxDbDeviceEvent.parseDateField(values, "time"));
+	rollup.setCount(getNumber(values, ROLLUP_COUNT).longValue());
+	rollup.setMin(getNumber(values, ROLLUP_MIN).doubleValue());
+	rollup.setMax(getNumber(values, ROLLUP_MAX).doubleValue());
+	rollup.setSum(getNumber(values, ROLLUP_SUM).doubleValue());
+	return rollup;
+    }
+
+    /**
+     * Get a numeric field, defaulting to zero if missing.
+     * 
+     * @param values
+     * @param field
+     * @return
+     */
+    protected static Number getNumber(Map<String, Object> values, String field) {
+	Object value = values.get(field);
+	return (value instanceof Number) ? (Number) value : 0;
+    }
+}
\ No newline at end of file
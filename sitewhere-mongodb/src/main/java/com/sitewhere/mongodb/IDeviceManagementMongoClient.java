@@ -53,6 +53,9 @@ public interface IDeviceManagementMongoClient {
     /** Default collection name for SiteWhere device streams data */
     public static final String DEFAULT_DEVICE_STREAM_DATA_COLLECTION_NAME = "streamdata";
 
+    /** Default collection name for SiteWhere measurement rollups */
+    public static final String DEFAULT_ROLLUPS_COLLECTION_NAME = "rollups";
+
     /** Default collection name for SiteWhere batch operations */
     public static final String DEFAULT_BATCH_OPERATIONS_COLLECTION_NAME = "batchoperations";
 
@@ -158,6 +161,15 @@ public interface IDeviceManagementMongoClient {
      */
     public MongoCollection<Document> getStreamDataCollection(ITenant tenant) throws SiteWhereException;
 
+    /**
+     * Collection for measurement rollups.
+     * 
+     * @param tenant
+     * @return
+     * @throws SiteWhereException
+     */
+    public MongoCollection<Document> getRollupsCollection(ITenant tenant) throws SiteWhereException;
+
     /**
      * Collection for batch operations.
      * 
@@ -31,6 +31,7 @@ import com.sitewhere.mongodb.device.MongoDeviceSpecification;
 import com.sitewhere.mongodb.device.MongoDeviceStateChange;
 import com.sitewhere.mongodb.device.MongoDeviceStream;
 import com.sitewhere.mongodb.device.MongoDeviceStreamData;
+import com.sitewhere.mongodb.device.MongoMeasurementRollup;
 import com.sitewhere.mongodb.device.MongoSite;
 import com.sitewhere.mongodb.device.MongoZone;
 import com.sitewhere.mongodb.scheduling.MongoSchedule;
@@ -56,6 +57,7 @@ import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
 import com.sitewhere.spi.device.event.IDeviceStreamData;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
 import com.sitewhere.spi.device.group.IDeviceGroup;
 import com.sitewhere.spi.device.group.IDeviceGroupElement;
 import com.sitewhere.spi.device.streaming.IDeviceStream;
@@ -88,6 +90,7 @@ public class MongoConverters implements IMongoConverterLookup {
 	CONVERTERS.put(IDeviceCommandInvocation.class, new MongoDeviceCommandInvocation());
 	CONVERTERS.put(IDeviceCommandResponse.class, new MongoDeviceCommandResponse());
 	CONVERTERS.put(IDeviceStateChange.class, new MongoDeviceStateChange());
+	CONVERTERS.put(IMeasurementRollup.class, new MongoMeasurementRollup());
 	CONVERTERS.put(ISite.class, new MongoSite());
 	CONVERTERS.put(IZone.class, new MongoZone());
 	CONVERTERS.put(IDeviceGroup.class, new MongoDeviceGroup());
@@ -8,7 +8,9 @@
 package com.sitewhere.mongodb;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,11 +18,14 @@ import org.bson.Document;
 import org.bson.types.ObjectId;
 
 import com.mongodb.DuplicateKeyException;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoCommandException;
 import com.mongodb.MongoTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.client.result.DeleteResult;
 import com.sitewhere.mongodb.device.IDeviceEventBuffer;
 import com.sitewhere.mongodb.device.MongoDeviceAlert;
@@ -62,6 +67,9 @@ public class MongoPersistence {
     /** Default lookup */
     private static IMongoConverterLookup LOOKUP = new MongoConverters();
 
+    /** Error code reported by MongoDB for duplicate keys */
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
     /**
      * Common handler for creating new objects. Assures that errors are handled
      * in a consistent way.
@@ -85,6 +93,41 @@ public class MongoPersistence {
 	}
     }
 
+    /**
+     * Common handler for creating many objects in one request. Inserts are
+     * unordered so that objects with duplicate keys are skipped without
+     * stopping the rest of the batch.
+     * 
+     * @param collection
+     * @param objects
+     * @return indexes of objects that were skipped as duplicates
+     * @throws SiteWhereException
+     */
+    public static Set<Integer> insertMany(MongoCollection<Document> collection, List<Document> objects)
+	    throws SiteWhereException {
+	Set<Integer> duplicates = new HashSet<Integer>();
+	if (objects.isEmpty()) {
+	    return duplicates;
+	}
+	try {
+	    long start = System.currentTimeMillis();
+	    collection.insertMany(objects, new InsertManyOptions().ordered(false));
+	    LOGGER.debug("Insert of " + objects.size() + " took " + (System.currentTimeMillis() - start) + " ms.");
+	} catch (MongoBulkWriteException e) {
+	    for (BulkWriteError error : e.getWriteErrors()) {
+		if (error.getCode() != DUPLICATE_KEY_ERROR) {
+		    throw new SiteWhereException("Error during MongoDB bulk insert.", e);
+		}
+		duplicates.add(error.getIndex());
+	    }
+	} catch (MongoCommandException e) {
+	    throw new SiteWhereException("Error during MongoDB insert.", e);
+	} catch (MongoTimeoutException e) {
+	    throw new SiteWhereException("Connection to MongoDB lost.", e);
+	}
+	return duplicates;
+    }
+
     /**
      * Insert an event, taking into account whether the device management
      * implementation in configured for bulk operations.
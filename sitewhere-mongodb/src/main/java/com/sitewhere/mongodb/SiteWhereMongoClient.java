@@ -117,6 +117,9 @@ public class SiteWhereMongoClient extends TenantLifecycleComponent
     /** Injected name used for device stream data collection */
     private String streamDataCollectionName = IDeviceManagementMongoClient.DEFAULT_DEVICE_STREAM_DATA_COLLECTION_NAME;
 
+    /** Injected name used for measurement rollups collection */
+    private String rollupsCollectionName = IDeviceManagementMongoClient.DEFAULT_ROLLUPS_COLLECTION_NAME;
+
     /** Injected name used for batch operations collection */
     private String batchOperationsCollectionName = IDeviceManagementMongoClient.DEFAULT_BATCH_OPERATIONS_COLLECTION_NAME;
 
@@ -358,6 +361,7 @@ public class SiteWhereMongoClient extends TenantLifecycleComponent
 	messages.add("Zones collection name: " + getZonesCollectionName());
 	messages.add("Events collection name: " + getEventsCollectionName());
 	messages.add("Streams collection name: " + getStreamsCollectionName());
+	messages.add("Rollups collection name: " + getRollupsCollectionName());
 	messages.add("Batch operations collection name: " + getBatchOperationsCollectionName());
 	messages.add("Batch operation elements collection name: " + getBatchOperationElementsCollectionName());
 	messages.add("");
@@ -565,6 +569,16 @@ public class SiteWhereMongoClient extends TenantLifecycleComponent
 	return getTenantDatabase(tenant).getCollection(getStreamDataCollectionName());
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.mongodb.IDeviceManagementMongoClient#
+     * getRollupsCollection(com.sitewhere.spi.tenant.ITenant)
+     */
+    public MongoCollection<Document> getRollupsCollection(ITenant tenant) throws SiteWhereException {
+	return getTenantDatabase(tenant).getCollection(getRollupsCollectionName());
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -818,6 +832,14 @@ public class SiteWhereMongoClient extends TenantLifecycleComponent
 	this.streamDataCollectionName = streamDataCollectionName;
     }
 
+    public String getRollupsCollectionName() {
+	return rollupsCollectionName;
+    }
+
+    public void setRollupsCollectionName(String rollupsCollectionName) {
+	this.rollupsCollectionName = rollupsCollectionName;
+    }
+
     public String getBatchOperationsCollectionName() {
 	return batchOperationsCollectionName;
     }
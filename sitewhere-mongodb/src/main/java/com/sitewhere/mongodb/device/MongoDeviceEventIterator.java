@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.mongodb.device;
+
+import org.bson.Document;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCursor;
+import com.sitewhere.mongodb.MongoPersistence;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
+
+/**
+ * Implementation of {@link IDeviceEventIterator} that unmarshals events from
+ * a MongoDB cursor as they are requested.
+ * 
+ * @author Derek
+ */
+public class MongoDeviceEventIterator implements IDeviceEventIterator {
+
+    /** Cursor over event documents */
+    private MongoCursor<Document> cursor;
+
+    public MongoDeviceEventIterator(MongoCursor<Document> cursor) {
+	this.cursor = cursor;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventIterator#hasNext()
+     */
+    @Override
+    public boolean hasNext() throws SiteWhereException {
+	try {
+	    return cursor.hasNext();
+	} catch (MongoException e) {
+	    throw new SiteWhereException("Unable to read next event from cursor.", e);
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventIterator#next()
+     */
+    @Override
+    public IDeviceEvent next() throws SiteWhereException {
+	try {
+	    return MongoPersistence.unmarshalEvent(cursor.next());
+	} catch (MongoException e) {
+	    throw new SiteWhereException("Unable to read next event from cursor.", e);
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventIterator#close()
+     */
+    @Override
+    public void close() throws SiteWhereException {
+	cursor.close();
+    }
+}
@@ -49,11 +49,13 @@ import com.sitewhere.spi.device.event.IDeviceCommandResponse;
 import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceEventBatch;
 import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
 import com.sitewhere.spi.device.event.IDeviceEventManagement;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
 import com.sitewhere.spi.device.event.IDeviceStreamData;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
 import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
@@ -66,6 +68,7 @@ import com.sitewhere.spi.error.ErrorCode;
 import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 import com.sitewhere.spi.search.ISearchResults;
+import com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
@@ -162,6 +165,11 @@ public class MongoDeviceEventManagement extends TenantLifecycleComponent impleme
 	getMongoClient().getEventsCollection(getTenant())
 		.createIndex(new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, 1)
 			.append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_EVENT_TYPE, 1));
+	getMongoClient().getRollupsCollection(getTenant())
+		.createIndex(new BasicDBObject(MongoMeasurementRollup.PROP_ASSIGNMENT_TOKEN, 1)
+			.append(MongoMeasurementRollup.PROP_MEASUREMENT_NAME, 1)
+			.append(MongoMeasurementRollup.PROP_WINDOW_SIZE, 1)
+			.append(MongoMeasurementRollup.PROP_WINDOW_END, -1), new IndexOptions().unique(true));
     }
 
     /*
@@ -254,6 +262,63 @@ public class MongoDeviceEventManagement extends TenantLifecycleComponent impleme
 	return results;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.event.IDeviceEventManagement#iterateDeviceEvents(
+     * java.lang.String, com.sitewhere.spi.device.event.DeviceEventType,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public IDeviceEventIterator iterateDeviceEvents(String assignmentToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	Document query = new Document(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken);
+	return iterateEvents(query, type, criteria);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * iterateDeviceEventsForSite(java.lang.String,
+     * com.sitewhere.spi.device.event.DeviceEventType,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public IDeviceEventIterator iterateDeviceEventsForSite(String siteToken, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	Document query = new Document(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken);
+	return iterateEvents(query, type, criteria);
+    }
+
+    /**
+     * Open a cursor over events matching a query. Documents are unmarshaled as
+     * the cursor is advanced rather than collected into a list.
+     * 
+     * @param query
+     * @param type
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IDeviceEventIterator iterateEvents(Document query, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	MongoCollection<Document> events = getMongoClient().getEventsCollection(getTenant());
+	if (type != null) {
+	    query.append(MongoDeviceEvent.PROP_EVENT_TYPE, type.name());
+	}
+	MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
+	Document sort = new Document(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_RECEIVED_DATE,
+		-1);
+	FindIterable<Document> found = events.find(query).sort(sort);
+	if (criteria.getPageSize() > 0) {
+	    int offset = Math.max(0, criteria.getPageNumber() - 1) * criteria.getPageSize();
+	    found = found.skip(offset).limit(criteria.getPageSize());
+	}
+	return new MongoDeviceEventIterator(found.iterator());
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -318,6 +383,47 @@ public class MongoDeviceEventManagement extends TenantLifecycleComponent impleme
 	return MongoPersistence.search(IDeviceMeasurements.class, events, query, sort, criteria);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * addMeasurementRollups(java.lang.String, java.util.List)
+     */
+    @Override
+    public void addMeasurementRollups(String assignmentToken, List<IMeasurementRollup> rollups)
+	    throws SiteWhereException {
+	List<Document> documents = new ArrayList<Document>();
+	for (IMeasurementRollup rollup : rollups) {
+	    documents.add(MongoMeasurementRollup.toDocument(rollup));
+	}
+
+	// Rollups already stored for a window are skipped.
+	MongoPersistence.insertMany(getMongoClient().getRollupsCollection(getTenant()), documents);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * listMeasurementRollups(java.lang.String,
+     * com.sitewhere.spi.search.device.IMeasurementRollupSearchCriteria)
+     */
+    @Override
+    public ISearchResults<IMeasurementRollup> listMeasurementRollups(String assignmentToken,
+	    IMeasurementRollupSearchCriteria criteria) throws SiteWhereException {
+	MongoCollection<Document> rollups = getMongoClient().getRollupsCollection(getTenant());
+	Document query = new Document(MongoMeasurementRollup.PROP_ASSIGNMENT_TOKEN, assignmentToken);
+	if (criteria.getMeasurementName() != null) {
+	    query.append(MongoMeasurementRollup.PROP_MEASUREMENT_NAME, criteria.getMeasurementName());
+	}
+	if (criteria.getWindowSize() != null) {
+	    query.append(MongoMeasurementRollup.PROP_WINDOW_SIZE, criteria.getWindowSize());
+	}
+	MongoPersistence.addDateSearchCriteria(query, MongoMeasurementRollup.PROP_WINDOW_END, criteria);
+	Document sort = new Document(MongoMeasurementRollup.PROP_WINDOW_END, -1);
+	return MongoPersistence.search(IMeasurementRollup.class, rollups, query, sort, criteria);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -9,7 +9,10 @@ package com.sitewhere.mongodb.device;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.commons.lang.StringUtils;
@@ -19,13 +22,18 @@ import org.bson.Document;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.MongoTimeoutException;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.sitewhere.core.SiteWherePersistence;
 import com.sitewhere.mongodb.IDeviceManagementMongoClient;
+import com.sitewhere.mongodb.MongoConverter;
 import com.sitewhere.mongodb.MongoPersistence;
 import com.sitewhere.mongodb.common.MongoMetadataProvider;
 import com.sitewhere.mongodb.common.MongoSiteWhereEntity;
@@ -45,6 +53,7 @@ import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.server.lifecycle.TenantLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.cache.ICache;
 import com.sitewhere.spi.common.IMetadataProvider;
 import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.ICachingDeviceManagement;
@@ -100,6 +109,9 @@ public class MongoDeviceManagement extends TenantLifecycleComponent
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Maximum number of keys passed in a single $in query */
+    private static final int MULTI_GET_BATCH_SIZE = 1000;
+
     /** Injected with global SiteWhere Mongo client */
     private IDeviceManagementMongoClient mongoClient;
 
@@ -239,6 +251,21 @@ public class MongoDeviceManagement extends TenantLifecycleComponent
 	return null;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#getDeviceSpecificationsByTokens(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceSpecification> getDeviceSpecificationsByTokens(List<String> tokens) throws SiteWhereException {
+	ICache<String, IDeviceSpecification> cache = (getCacheProvider() != null)
+		? getCacheProvider().getDeviceSpecificationCache() : null;
+	MongoCollection<Document> collection = getMongoClient().getDeviceSpecificationsCollection(getTenant());
+	return getByTokens(tokens, cache, collection, new MongoDeviceSpecification());
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -502,6 +529,42 @@ public class MongoDeviceManagement extends TenantLifecycleComponent
 	return newDevice;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#createDevices(java.util.List)
+     */
+    @Override
+    public List<IDevice> createDevices(List<IDeviceCreateRequest> requests) throws SiteWhereException {
+	List<IDevice> results = new ArrayList<IDevice>();
+	MongoCollection<Document> devices = getMongoClient().getDevicesCollection(getTenant());
+	for (int i = 0; i < requests.size(); i += MULTI_GET_BATCH_SIZE) {
+	    List<IDeviceCreateRequest> batch = requests.subList(i, Math.min(requests.size(), i + MULTI_GET_BATCH_SIZE));
+	    List<Device> newDevices = new ArrayList<Device>();
+	    List<Document> created = new ArrayList<Document>();
+	    for (IDeviceCreateRequest request : batch) {
+		Device newDevice = SiteWherePersistence.deviceCreateLogic(request);
+		newDevices.add(newDevice);
+		created.add(MongoDevice.toDocument(newDevice));
+	    }
+
+	    // Devices with hardware ids already in use are skipped.
+	    Set<Integer> duplicates = MongoPersistence.insertMany(devices, created);
+	    for (int j = 0; j < newDevices.size(); j++) {
+		if (duplicates.contains(j)) {
+		    continue;
+		}
+		Device newDevice = newDevices.get(j);
+		results.add(newDevice);
+		if (getCacheProvider() != null) {
+		    getCacheProvider().getDeviceCache().put(newDevice.getHardwareId(), newDevice);
+		}
+	    }
+	}
+	return results;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -554,6 +617,110 @@ public class MongoDeviceManagement extends TenantLifecycleComponent
 	return null;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#getDevicesByHardwareIds(java.
+     * util.List)
+     */
+    @Override
+    public List<IDevice> getDevicesByHardwareIds(List<String> hardwareIds) throws SiteWhereException {
+	Map<String, IDevice> found = new HashMap<String, IDevice>();
+	List<String> missing = new ArrayList<String>();
+	for (String hardwareId : hardwareIds) {
+	    IDevice cached = (getCacheProvider() != null) ? getCacheProvider().getDeviceCache().get(hardwareId) : null;
+	    if (cached != null) {
+		found.put(hardwareId, cached);
+	    } else {
+		missing.add(hardwareId);
+	    }
+	}
+
+	// Load devices not in cache with $in queries.
+	MongoCollection<Document> devices = getMongoClient().getDevicesCollection(getTenant());
+	for (int i = 0; i < missing.size(); i += MULTI_GET_BATCH_SIZE) {
+	    List<String> batch = missing.subList(i, Math.min(missing.size(), i + MULTI_GET_BATCH_SIZE));
+	    Document query = new Document(MongoDevice.PROP_HARDWARE_ID, new Document("$in", batch));
+	    MongoCursor<Document> cursor = devices.find(query).iterator();
+	    try {
+		while (cursor.hasNext()) {
+		    IDevice device = MongoDevice.fromDocument(cursor.next());
+		    found.put(device.getHardwareId(), device);
+		    if (getCacheProvider() != null) {
+			getCacheProvider().getDeviceCache().put(device.getHardwareId(), device);
+		    }
+		}
+	    } finally {
+		cursor.close();
+	    }
+	}
+
+	List<IDevice> results = new ArrayList<IDevice>();
+	for (String hardwareId : hardwareIds) {
+	    IDevice device = found.get(hardwareId);
+	    if (device != null) {
+		results.add(device);
+	    }
+	}
+	return results;
+    }
+
+    /**
+     * Get entities for a list of tokens. Entities not in the cache are loaded
+     * with $in queries on the token field. Results are returned in the order
+     * of the tokens with missing entities skipped.
+     * 
+     * @param tokens
+     * @param cache
+     * @param collection
+     * @param converter
+     * @return
+     * @throws SiteWhereException
+     */
+    protected <T> List<T> getByTokens(List<String> tokens, ICache<String, T> cache,
+	    MongoCollection<Document> collection, MongoConverter<T> converter) throws SiteWhereException {
+	Map<String, T> found = new HashMap<String, T>();
+	List<String> missing = new ArrayList<String>();
+	for (String token : tokens) {
+	    T cached = (cache != null) ? cache.get(token) : null;
+	    if (cached != null) {
+		found.put(token, cached);
+	    } else {
+		missing.add(token);
+	    }
+	}
+
+	// All converted entities store their token in the same field.
+	for (int i = 0; i < missing.size(); i += MULTI_GET_BATCH_SIZE) {
+	    List<String> batch = missing.subList(i, Math.min(missing.size(), i + MULTI_GET_BATCH_SIZE));
+	    Document query = new Document(MongoSite.PROP_TOKEN, new Document("$in", batch));
+	    MongoCursor<Document> cursor = collection.find(query).iterator();
+	    try {
+		while (cursor.hasNext()) {
+		    Document document = cursor.next();
+		    String token = document.getString(MongoSite.PROP_TOKEN);
+		    T entity = converter.convert(document);
+		    found.put(token, entity);
+		    if (cache != null) {
+			cache.put(token, entity);
+		    }
+		}
+	    } finally {
+		cursor.close();
+	    }
+	}
+
+	List<T> results = new ArrayList<T>();
+	for (String token : tokens) {
+	    T entity = found.get(token);
+	    if (entity != null) {
+		results.add(entity);
+	    }
+	}
+	return results;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -719,6 +886,142 @@ public class MongoDeviceManagement extends TenantLifecycleComponent
 	return newAssignment;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#createDeviceAssignments(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceAssignment> createDeviceAssignments(List<IDeviceAssignmentCreateRequest> requests)
+	    throws SiteWhereException {
+	List<IDeviceAssignment> results = new ArrayList<IDeviceAssignment>();
+	MongoCollection<Document> devices = getMongoClient().getDevicesCollection(getTenant());
+	MongoCollection<Document> assignments = getMongoClient().getDeviceAssignmentsCollection(getTenant());
+	for (int i = 0; i < requests.size(); i += MULTI_GET_BATCH_SIZE) {
+	    List<IDeviceAssignmentCreateRequest> batch = requests.subList(i,
+		    Math.min(requests.size(), i + MULTI_GET_BATCH_SIZE));
+
+	    // Load current device data for all devices in the batch.
+	    List<String> hardwareIds = new ArrayList<String>();
+	    for (IDeviceAssignmentCreateRequest request : batch) {
+		hardwareIds.add(request.getDeviceHardwareId());
+	    }
+	    Map<String, Document> deviceDocs = new HashMap<String, Document>();
+	    Document query = new Document(MongoDevice.PROP_HARDWARE_ID, new Document("$in", hardwareIds));
+	    MongoCursor<Document> cursor = devices.find(query).iterator();
+	    try {
+		while (cursor.hasNext()) {
+		    Document deviceDb = cursor.next();
+		    deviceDocs.put(deviceDb.getString(MongoDevice.PROP_HARDWARE_ID), deviceDb);
+		}
+	    } finally {
+		cursor.close();
+	    }
+
+	    // Skip devices that do not exist or are already assigned.
+	    List<DeviceAssignment> newAssignments = new ArrayList<DeviceAssignment>();
+	    List<Document> created = new ArrayList<Document>();
+	    for (IDeviceAssignmentCreateRequest request : batch) {
+		Document deviceDb = deviceDocs.remove(request.getDeviceHardwareId());
+		if ((deviceDb == null) || (deviceDb.get(MongoDevice.PROP_ASSIGNMENT_TOKEN) != null)) {
+		    continue;
+		}
+		DeviceAssignment newAssignment = SiteWherePersistence.deviceAssignmentCreateLogic(request,
+			MongoDevice.fromDocument(deviceDb));
+		if (newAssignment.getToken() == null) {
+		    newAssignment.setToken(UUID.randomUUID().toString());
+		}
+		newAssignments.add(newAssignment);
+		created.add(MongoDeviceAssignment.toDocument(newAssignment));
+	    }
+	    Set<Integer> duplicates = MongoPersistence.insertMany(assignments, created);
+
+	    // Update devices to point to created assignments unless they were
+	    // assigned after being loaded.
+	    List<DeviceAssignment> inserted = new ArrayList<DeviceAssignment>();
+	    List<WriteModel<Document>> updates = new ArrayList<WriteModel<Document>>();
+	    for (int j = 0; j < newAssignments.size(); j++) {
+		if (duplicates.contains(j)) {
+		    continue;
+		}
+		DeviceAssignment newAssignment = newAssignments.get(j);
+		inserted.add(newAssignment);
+		updates.add(new UpdateOneModel<Document>(
+			new Document(MongoDevice.PROP_HARDWARE_ID, newAssignment.getDeviceHardwareId())
+				.append(MongoDevice.PROP_ASSIGNMENT_TOKEN, null),
+			new Document("$set",
+				new Document(MongoDevice.PROP_ASSIGNMENT_TOKEN, newAssignment.getToken()))));
+	    }
+	    if (updates.isEmpty()) {
+		continue;
+	    }
+	    try {
+		BulkWriteResult written = devices.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+		if (written.getMatchedCount() < updates.size()) {
+		    inserted = removeUnlinkedAssignments(inserted);
+		}
+	    } catch (MongoTimeoutException e) {
+		throw new SiteWhereException("Connection to MongoDB lost.", e);
+	    }
+
+	    // Cached devices no longer reflect their current assignment.
+	    for (DeviceAssignment assignment : inserted) {
+		results.add(assignment);
+		if (getCacheProvider() != null) {
+		    getCacheProvider().getDeviceAssignmentCache().put(assignment.getToken(), assignment);
+		    getCacheProvider().getDeviceCache().remove(assignment.getDeviceHardwareId());
+		}
+	    }
+	}
+	return results;
+    }
+
+    /**
+     * Delete inserted assignments that their devices do not point to because
+     * the devices were assigned concurrently. Returns the assignments that
+     * were kept.
+     * 
+     * @param inserted
+     * @return
+     * @throws SiteWhereException
+     */
+    protected List<DeviceAssignment> removeUnlinkedAssignments(List<DeviceAssignment> inserted)
+	    throws SiteWhereException {
+	List<String> hardwareIds = new ArrayList<String>();
+	for (DeviceAssignment assignment : inserted) {
+	    hardwareIds.add(assignment.getDeviceHardwareId());
+	}
+	Map<String, String> current = new HashMap<String, String>();
+	MongoCollection<Document> devices = getMongoClient().getDevicesCollection(getTenant());
+	MongoCursor<Document> cursor = devices
+		.find(new Document(MongoDevice.PROP_HARDWARE_ID, new Document("$in", hardwareIds))).iterator();
+	try {
+	    while (cursor.hasNext()) {
+		Document deviceDb = cursor.next();
+		current.put(deviceDb.getString(MongoDevice.PROP_HARDWARE_ID),
+			deviceDb.getString(MongoDevice.PROP_ASSIGNMENT_TOKEN));
+	    }
+	} finally {
+	    cursor.close();
+	}
+	List<DeviceAssignment> kept = new ArrayList<DeviceAssignment>();
+	List<String> unlinked = new ArrayList<String>();
+	for (DeviceAssignment assignment : inserted) {
+	    if (assignment.getToken().equals(current.get(assignment.getDeviceHardwareId()))) {
+		kept.add(assignment);
+	    } else {
+		unlinked.add(assignment.getToken());
+	    }
+	}
+	if (!unlinked.isEmpty()) {
+	    getMongoClient().getDeviceAssignmentsCollection(getTenant())
+		    .deleteMany(new Document(MongoDeviceAssignment.PROP_TOKEN, new Document("$in", unlinked)));
+	}
+	return kept;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -745,6 +1048,21 @@ public class MongoDeviceManagement extends TenantLifecycleComponent
 	return null;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#getDeviceAssignmentsByTokens(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceAssignment> getDeviceAssignmentsByTokens(List<String> tokens) throws SiteWhereException {
+	ICache<String, IDeviceAssignment> cache = (getCacheProvider() != null)
+		? getCacheProvider().getDeviceAssignmentCache() : null;
+	MongoCollection<Document> collection = getMongoClient().getDeviceAssignmentsCollection(getTenant());
+	return getByTokens(tokens, cache, collection, new MongoDeviceAssignment());
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -1147,6 +1465,21 @@ public class MongoDeviceManagement extends TenantLifecycleComponent
 	return null;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#getSitesByTokens(java.
+     * util.List)
+     */
+    @Override
+    public List<ISite> getSitesByTokens(List<String> tokens) throws SiteWhereException {
+	ICache<String, ISite> cache = (getCacheProvider() != null)
+		? getCacheProvider().getSiteCache() : null;
+	MongoCollection<Document> collection = getMongoClient().getSitesCollection(getTenant());
+	return getByTokens(tokens, cache, collection, new MongoSite());
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.mongodb.device;
+
+import java.util.Date;
+
+import org.bson.Document;
+
+import com.sitewhere.mongodb.MongoConverter;
+import com.sitewhere.rest.model.device.event.MeasurementRollup;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
+
+/**
+ * Handles loading/saving {@link MeasurementRollup} objects to a MongoDB
+ * datastore.
+ * 
+ * @author Derek
+ */
+public class MongoMeasurementRollup implements MongoConverter<IMeasurementRollup> {
+
+    /** Property for parent assignment token */
+    public static final String PROP_ASSIGNMENT_TOKEN = "assignmentToken";
+
+    /** Property for aggregated measurement name */
+    public static final String PROP_MEASUREMENT_NAME = "measurementName";
+
+    /** Property for window size */
+    public static final String PROP_WINDOW_SIZE = "windowSize";
+
+    /** Property for window start */
+    public static final String PROP_WINDOW_START = "windowStart";
+
+    /** Property for window end */
+    public static final String PROP_WINDOW_END = "windowEnd";
+
+    /** Property for number of values */
+    public static final String PROP_COUNT = "count";
+
+    /** Property for minimum value */
+    public static final String PROP_MIN = "min";
+
+    /** Property for maximum value */
+    public static final String PROP_MAX = "max";
+
+    /** Property for sum of values */
+    public static final String PROP_SUM = "sum";
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.mongodb.MongoConverter#convert(java.lang.Object)
+     */
+    @Override
+    public Document convert(IMeasurementRollup source) {
+	return MongoMeasurementRollup.toDocument(source);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.mongodb.MongoConverter#convert(org.bson.Document)
+     */
+    @Override
+    public IMeasurementRollup convert(Document source) {
+	return MongoMeasurementRollup.fromDocument(source);
+    }
+
+    /**
+     * Copy information from SPI into Mongo {@link Document}.
+     * 
+     * @param source
+     * @param target
+     */
+    public static void toDocument(IMeasurementRollup source, Document target) {
+	target.append(PROP_ASSIGNMENT_TOKEN, source.getDeviceAssignmentToken());
+	target.append(PROP_MEASUREMENT_NAME, source.getMeasurementName());
+	target.append(PROP_WINDOW_SIZE, source.getWindowSize());
+	target.append(PROP_WINDOW_START, source.getWindowStart());
+	target.append(PROP_WINDOW_END, source.getWindowEnd());
+	target.append(PROP_COUNT, source.getCount());
+	target.append(PROP_MIN, source.getMin());
+	target.append(PROP_MAX, source.getMax());
+	target.append(PROP_SUM, source.getSum());
+    }
+
+    /**
+     * Copy information from Mongo {@link Document} to model object.
+     * 
+     * @param source
+     * @param target
+     */
+    public static void fromDocument(Document source, MeasurementRollup target) {
+	String assignmentToken = (String) source.get(PROP_ASSIGNMENT_TOKEN);
+	String measurementName = (String) source.get(PROP_MEASUREMENT_NAME);
+	Number windowSize = (Number) source.get(PROP_WINDOW_SIZE);
+	Date windowStart = (Date) source.get(PROP_WINDOW_START);
+	Date windowEnd = (Date) source.get(PROP_WINDOW_END);
+	Number count = (Number) source.get(PROP_COUNT);
+	Number min = (Number) source.get(PROP_MIN);
+	Number max = (Number) source.get(PROP_MAX);
+	Number sum = (Number) source.get(PROP_SUM);
+
+	target.setDeviceAssignmentToken(assignmentToken);
+	target.setMeasurementName(measurementName);
+	target.setWindowSize((windowSize != null) ? windowSize.longValue() : 0);
+	target.setWindowStart(windowStart);
+	target.setWindowEnd(windowEnd);
+	target.setCount((count != null) ? count.longValue() : 0);
+	target.setMin((min != null) ? min.doubleValue() : 0);
+	target.setMax((max != null) ? max.doubleValue() : 0);
+	target.setSum((sum != null) ? sum.doubleValue() : 0);
+    }
+
+    /**
+     * Convert SPI object to Mongo {@link Document}.
+     * 
+     * @param source
+     * @return
+     */
+    public static Document toDocument(IMeasurementRollup source) {
+	Document result = new Document();
+	MongoMeasurementRollup.toDocument(source, result);
+	return result;
+    }
+
+    /**
+     * Convert a {@link Document} into the SPI equivalent.
+     * 
+     * @param source
+     * @return
+     */
+    public static MeasurementRollup fromDocument(Document source) {
+	MeasurementRollup result = new MeasurementRollup();
+	MongoMeasurementRollup.fromDocument(source, result);
+	return result;
+    }
+}
\ No newline at end of file
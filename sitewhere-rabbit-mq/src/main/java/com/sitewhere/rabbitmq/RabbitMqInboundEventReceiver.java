@@ -8,10 +8,12 @@
 package com.sitewhere.rabbitmq;
 
 import java.io.IOException;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
@@ -21,11 +23,10 @@ import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.Consumer;
 import com.rabbitmq.client.DefaultConsumer;
 import com.rabbitmq.client.Envelope;
-import com.rabbitmq.client.ShutdownSignalException;
 import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
 import com.sitewhere.device.communication.EventProcessingLogic;
 import com.sitewhere.device.communication.InboundEventReceiver;
 import com.sitewhere.spi.SiteWhereException;
@@ -33,6 +34,10 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Binary inbound event source that consumes messages from a RabbitMQ broker.
+ * Each consumer uses its own channel with a prefetch limit and manual
+ * acknowledgement. Messages are acknowledged in batches once they have been
+ * handed off to the inbound processing strategy, so a crash before that point
+ * results in redelivery rather than data loss.
  * 
  * @author Derek
  */
@@ -53,6 +58,15 @@ public class RabbitMqInboundEventReceiver extends InboundEventReceiver<byte[]> {
     /** Default period in which to attempt connects/re-connects to RabbitMQ */
     private static final int DEFAULT_RECONNECT_INTERVAL = 10;
 
+    /** Default number of unacknowledged messages delivered to each consumer */
+    private static final int DEFAULT_PREFETCH_COUNT = 100;
+
+    /** Default number of messages acknowledged together */
+    private static final int DEFAULT_ACK_BATCH_SIZE = 25;
+
+    /** Default interval in milliseconds for flushing partial ack batches */
+    private static final int DEFAULT_ACK_FLUSH_INTERVAL_MS = 1000;
+
     /** Connection URI */
     private String connectionUri = DEFAULT_CONNECTION_URI;
 
@@ -68,14 +82,23 @@ public class RabbitMqInboundEventReceiver extends InboundEventReceiver<byte[]> {
     /** Indicates if queue should be durable */
     private boolean durable = false;
 
+    /** Number of unacknowledged messages delivered to each consumer */
+    private int prefetchCount = DEFAULT_PREFETCH_COUNT;
+
+    /** Number of messages acknowledged together */
+    private int ackBatchSize = DEFAULT_ACK_BATCH_SIZE;
+
+    /** Interval in milliseconds for flushing partial ack batches */
+    private int ackFlushIntervalMs = DEFAULT_ACK_FLUSH_INTERVAL_MS;
+
     /** RabbitMQ connection factory **/
     private ConnectionFactory factory;
 
     /** RabbitMQ connection */
     private Connection connection;
 
-    /** RabbitMQ channel */
-    private Channel channel;
+    /** Consumers, each with a dedicated channel */
+    private List<AckingConsumer> consumers = new CopyOnWriteArrayList<AckingConsumer>();
 
     /** Used for consumer thread pool */
     private ExecutorService executors;
@@ -86,6 +109,9 @@ public class RabbitMqInboundEventReceiver extends InboundEventReceiver<byte[]> {
     /** Shedules reconnection attempts */
     private ScheduledExecutorService connectionExecutor;
 
+    /** Holds reference to scheduled ack flush task */
+    private ScheduledFuture<?> ackFlushFuture;
+
     /*
      * (non-Javadoc)
      * 
@@ -106,6 +132,11 @@ public class RabbitMqInboundEventReceiver extends InboundEventReceiver<byte[]> {
 	}
 
 	connect();
+
+	// Acknowledge partial batches when message flow slows down.
+	Runnable flush = () -> flushAcks();
+	ackFlushFuture = connectionExecutor.scheduleWithFixedDelay(flush, getAckFlushIntervalMs(),
+		getAckFlushIntervalMs(), TimeUnit.MILLISECONDS);
     }
 
     /*
@@ -145,24 +176,24 @@ public class RabbitMqInboundEventReceiver extends InboundEventReceiver<byte[]> {
 		}
 	    });
 
-	    this.channel = connection.createChannel();
-
 	    LOGGER.info("RabbitMQ receiver connected to: " + getConnectionUri());
 
-	    channel.queueDeclare(getQueueName(), isDurable(), false, false, null);
-
-	    LOGGER.info("RabbitMQ receiver using " + (isDurable() ? "durable " : "") + "queue: " + getQueueName());
-
-	    // Add consumer callback for channel.
-	    Consumer consumer = new DefaultConsumer(channel) {
-		@Override
-		public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties,
-			byte[] body) throws IOException {
-		    EventProcessingLogic.processRawPayload(RabbitMqInboundEventReceiver.this, body, null);
+	    // Create a channel with its own prefetch window for each consumer.
+	    consumers.clear();
+	    for (int i = 0; i < getNumConsumers(); i++) {
+		Channel channel = connection.createChannel();
+		if (i == 0) {
+		    channel.queueDeclare(getQueueName(), isDurable(), false, false, null);
+		    LOGGER.info("RabbitMQ receiver using " + (isDurable() ? "durable " : "") + "queue: "
+			    + getQueueName());
 		}
-	    };
-
-	    channel.basicConsume(getQueueName(), true, consumer);
+		channel.basicQos(getPrefetchCount());
+		AckingConsumer consumer = new AckingConsumer(channel);
+		channel.basicConsume(getQueueName(), false, consumer);
+		consumers.add(consumer);
+	    }
+	    LOGGER.info("RabbitMQ receiver started " + getNumConsumers() + " consumers with prefetch of "
+		    + getPrefetchCount() + " and ack batch size of " + getAckBatchSize() + ".");
 
 	} catch (Exception e) {
 	    LOGGER.error("Connection Error", e);
@@ -186,11 +217,18 @@ public class RabbitMqInboundEventReceiver extends InboundEventReceiver<byte[]> {
 	if (connectionFuture != null && !connectionFuture.isDone()) {
 	    connectionFuture.cancel(true);
 	}
+	if (ackFlushFuture != null) {
+	    ackFlushFuture.cancel(false);
+	}
 
 	try {
-	    if (channel != null) {
-		channel.close();
+	    for (AckingConsumer consumer : consumers) {
+		consumer.flush();
+		if (consumer.getChannel().isOpen()) {
+		    consumer.getChannel().close();
+		}
 	    }
+	    consumers.clear();
 	    if (connection != null) {
 		connection.close();
 	    }
@@ -202,6 +240,82 @@ public class RabbitMqInboundEventReceiver extends InboundEventReceiver<byte[]> {
 	executors.shutdownNow();
     }
 
+    /**
+     * Acknowledge any messages that have been processed but not yet
+     * acknowledged.
+     */
+    protected void flushAcks() {
+	for (AckingConsumer consumer : consumers) {
+	    try {
+		consumer.flush();
+	    } catch (IOException e) {
+		LOGGER.warn("Unable to acknowledge RabbitMQ messages.", e);
+	    }
+	}
+    }
+
+    /**
+     * Consumer that hands messages to the inbound processing pipeline and
+     * acknowledges them in batches using the 'multiple' flag.
+     * 
+     * @author Derek
+     */
+    private class AckingConsumer extends DefaultConsumer {
+
+	/** Delivery tag of last message processed */
+	private long lastDeliveryTag;
+
+	/** Number of processed messages not yet acknowledged */
+	private int pending;
+
+	public AckingConsumer(Channel channel) {
+	    super(channel);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.rabbitmq.client.DefaultConsumer#handleDelivery(java.lang.
+	 * String, com.rabbitmq.client.Envelope,
+	 * com.rabbitmq.client.AMQP.BasicProperties, byte[])
+	 */
+	@Override
+	public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties,
+		byte[] body) throws IOException {
+	    try {
+		EventProcessingLogic.processRawPayload(RabbitMqInboundEventReceiver.this, body, null);
+	    } catch (Throwable t) {
+		// Requeue on first failure. Drop if it has already been
+		// redelivered to avoid looping on a poison message.
+		LOGGER.error("Unable to process RabbitMQ message.", t);
+		synchronized (this) {
+		    flush();
+		    getChannel().basicNack(envelope.getDeliveryTag(), false, !envelope.isRedeliver());
+		}
+		return;
+	    }
+	    synchronized (this) {
+		lastDeliveryTag = envelope.getDeliveryTag();
+		pending++;
+		if (pending >= getAckBatchSize()) {
+		    flush();
+		}
+	    }
+	}
+
+	/**
+	 * Acknowledge all processed messages up to the last delivery tag.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+	    if ((pending > 0) && (getChannel().isOpen())) {
+		getChannel().basicAck(lastDeliveryTag, true);
+	    }
+	    pending = 0;
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -262,4 +376,28 @@ public class RabbitMqInboundEventReceiver extends InboundEventReceiver<byte[]> {
     public void setDurable(boolean durable) {
 	this.durable = durable;
     }
+
+    public int getPrefetchCount() {
+	return prefetchCount;
+    }
+
+    public void setPrefetchCount(int prefetchCount) {
+	this.prefetchCount = prefetchCount;
+    }
+
+    public int getAckBatchSize() {
+	return ackBatchSize;
+    }
+
+    public void setAckBatchSize(int ackBatchSize) {
+	this.ackBatchSize = ackBatchSize;
+    }
+
+    public int getAckFlushIntervalMs() {
+	return ackFlushIntervalMs;
+    }
+
+    public void setAckFlushIntervalMs(int ackFlushIntervalMs) {
+	this.ackFlushIntervalMs = ackFlushIntervalMs;
+    }
 }
\ No newline at end of file
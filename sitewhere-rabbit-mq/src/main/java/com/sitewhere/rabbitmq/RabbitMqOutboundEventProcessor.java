@@ -7,7 +7,6 @@
  */
 package com.sitewhere.rabbitmq;
 
-import java.io.IOException;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -37,7 +36,9 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Extension of {@link FilteredOutboundEventProcessor} that sends messages to
- * RabbitMQ via AMQP.
+ * RabbitMQ via AMQP. Messages are published through a
+ * {@link RabbitMqPublisherPool} so that outbound processing threads do not
+ * contend for a single channel.
  * 
  * @author Derek
  */
@@ -56,20 +57,32 @@ public class RabbitMqOutboundEventProcessor extends FilteredOutboundEventProcess
     /** Default topic name */
     private static final String DEFAULT_TOPIC = "sitewhere.output";
 
+    /** Default maximum number of publisher channels */
+    private static final int DEFAULT_NUM_CHANNELS = 10;
+
+    /** Max time in milliseconds to wait for outstanding confirms on shutdown */
+    private static final long CONFIRM_SHUTDOWN_TIMEOUT_MS = 5000;
+
     /** Connection URI */
     private String connectionUri = DEFAULT_CONNECTION_URI;
 
     /** Topic name */
     private String topic = DEFAULT_TOPIC;
 
+    /** Maximum number of publisher channels */
+    private int numChannels = DEFAULT_NUM_CHANNELS;
+
+    /** Indicates if publisher confirms are enabled */
+    private boolean publisherConfirms = true;
+
     /** Exchange name */
     private String exchange;
 
     /** RabbitMQ connection */
     private Connection connection;
 
-    /** RabbitMQ channel */
-    private Channel channel;
+    /** Pool of channels used for publishing */
+    private RabbitMqPublisherPool publisherPool;
 
     /** Multicaster for events */
     private IDeviceEventMulticaster<String> multicaster;
@@ -101,10 +114,13 @@ public class RabbitMqOutboundEventProcessor extends FilteredOutboundEventProcess
 	    ConnectionFactory factory = new ConnectionFactory();
 	    factory.setUri(getConnectionUri());
 	    this.connection = factory.newConnection();
-	    this.channel = connection.createChannel();
 	    this.exchange = getTenant().getId() + DEFAULT_EXCHANGE_SUFFIX;
+	    Channel channel = connection.createChannel();
 	    channel.exchangeDeclare(exchange, "topic");
-	    LOGGER.info("RabbitMQ outbound processor connected to: " + getConnectionUri());
+	    channel.close();
+	    this.publisherPool = new RabbitMqPublisherPool(connection, getNumChannels(), isPublisherConfirms());
+	    LOGGER.info("RabbitMQ outbound processor connected to: " + getConnectionUri() + " using up to "
+		    + getNumChannels() + " channels" + (isPublisherConfirms() ? " with publisher confirms." : "."));
 	} catch (Exception e) {
 	    throw new SiteWhereException("Unable to start RabbitMQ event processor.", e);
 	}
@@ -130,8 +146,11 @@ public class RabbitMqOutboundEventProcessor extends FilteredOutboundEventProcess
 	}
 
 	try {
-	    if (channel != null) {
-		channel.close();
+	    if (publisherPool != null) {
+		publisherPool.close(CONFIRM_SHUTDOWN_TIMEOUT_MS);
+		LOGGER.info("RabbitMQ outbound processor published " + publisherPool.getPublishedCount()
+			+ " messages (" + publisherPool.getConfirmedCount() + " confirmed, "
+			+ publisherPool.getFailedCount() + " failed).");
 	    }
 	    if (connection != null) {
 		connection.close();
@@ -243,12 +262,8 @@ public class RabbitMqOutboundEventProcessor extends FilteredOutboundEventProcess
      * @throws SiteWhereException
      */
     protected void publish(IDeviceEvent event, String topic) throws SiteWhereException {
-	try {
-	    channel.basicPublish(exchange, topic, null, MarshalUtils.marshalJson(event));
-	    LOGGER.debug("Publishing event " + event.getId() + " to topic: " + topic);
-	} catch (IOException e) {
-	    throw new SiteWhereException("Unable to publish to RabbitMQ topic.", e);
-	}
+	publisherPool.publish(exchange, topic, MarshalUtils.marshalJson(event));
+	LOGGER.debug("Publishing event " + event.getId() + " to topic: " + topic);
     }
 
     /*
@@ -306,4 +321,24 @@ public class RabbitMqOutboundEventProcessor extends FilteredOutboundEventProcess
     public void setTopic(String topic) {
 	this.topic = topic;
     }
+
+    public int getNumChannels() {
+	return numChannels;
+    }
+
+    public void setNumChannels(int numChannels) {
+	this.numChannels = numChannels;
+    }
+
+    public boolean isPublisherConfirms() {
+	return publisherConfirms;
+    }
+
+    public void setPublisherConfirms(boolean publisherConfirms) {
+	this.publisherConfirms = publisherConfirms;
+    }
+
+    public RabbitMqPublisherPool getPublisherPool() {
+	return publisherPool;
+    }
 }
\ No newline at end of file
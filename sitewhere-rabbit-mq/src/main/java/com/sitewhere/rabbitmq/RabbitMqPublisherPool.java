@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rabbitmq;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Pool of RabbitMQ channels used for publishing. AMQP channels should not be
+ * shared between threads, so each publish borrows a channel for its exclusive
+ * use and returns it afterward. When publisher confirms are enabled, broker
+ * acks and nacks are tracked asynchronously per channel so publishing threads
+ * never block waiting on the broker.
+ * 
+ * @author Derek
+ */
+public class RabbitMqPublisherPool {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Max time in seconds to wait for a channel to become available */
+    private static final int BORROW_TIMEOUT_SEC = 30;
+
+    /** RabbitMQ connection */
+    private Connection connection;
+
+    /** Maximum number of channels */
+    private int maxChannels;
+
+    /** Indicates if publisher confirms are enabled */
+    private boolean useConfirms;
+
+    /** Channels available for use */
+    private BlockingQueue<PublisherChannel> available;
+
+    /** Number of channels created */
+    private AtomicInteger created = new AtomicInteger();
+
+    /** Number of messages published */
+    private AtomicLong publishedCount = new AtomicLong();
+
+    /** Number of messages confirmed by broker */
+    private AtomicLong confirmedCount = new AtomicLong();
+
+    /** Number of messages rejected by broker */
+    private AtomicLong failedCount = new AtomicLong();
+
+    public RabbitMqPublisherPool(Connection connection, int maxChannels, boolean useConfirms) {
+	this.connection = connection;
+	this.maxChannels = maxChannels;
+	this.useConfirms = useConfirms;
+	this.available = new ArrayBlockingQueue<PublisherChannel>(maxChannels);
+    }
+
+    /**
+     * Publish a message using a pooled channel.
+     * 
+     * @param exchange
+     * @param routingKey
+     * @param body
+     * @throws SiteWhereException
+     */
+    public void publish(String exchange, String routingKey, byte[] body) throws SiteWhereException {
+	PublisherChannel channel = borrow();
+	try {
+	    channel.publish(exchange, routingKey, body);
+	    publishedCount.incrementAndGet();
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to publish to RabbitMQ topic.", e);
+	} finally {
+	    release(channel);
+	}
+    }
+
+    /**
+     * Borrow a channel, creating one if the pool has not reached its maximum
+     * size.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    protected PublisherChannel borrow() throws SiteWhereException {
+	PublisherChannel channel = available.poll();
+	if (channel != null) {
+	    return channel;
+	}
+	if (created.incrementAndGet() <= maxChannels) {
+	    try {
+		return new PublisherChannel(connection.createChannel());
+	    } catch (IOException e) {
+		created.decrementAndGet();
+		throw new SiteWhereException("Unable to create RabbitMQ channel.", e);
+	    }
+	}
+	created.decrementAndGet();
+	try {
+	    channel = available.poll(BORROW_TIMEOUT_SEC, TimeUnit.SECONDS);
+	    if (channel == null) {
+		throw new SiteWhereException("Timed out waiting for RabbitMQ channel.");
+	    }
+	    return channel;
+	} catch (InterruptedException e) {
+	    throw new SiteWhereException("Interrupted waiting for RabbitMQ channel.", e);
+	}
+    }
+
+    /**
+     * Return a channel to the pool. Closed channels are discarded so they may
+     * be replaced.
+     * 
+     * @param channel
+     */
+    protected void release(PublisherChannel channel) {
+	if (channel.getChannel().isOpen()) {
+	    available.offer(channel);
+	} else {
+	    channel.discard();
+	    created.decrementAndGet();
+	}
+    }
+
+    /**
+     * Close all pooled channels, waiting up to the given timeout for
+     * outstanding confirms.
+     * 
+     * @param timeoutMs
+     */
+    public void close(long timeoutMs) {
+	PublisherChannel channel;
+	while ((channel = available.poll()) != null) {
+	    try {
+		if (useConfirms && channel.getChannel().isOpen()) {
+		    channel.getChannel().waitForConfirms(timeoutMs);
+		}
+	    } catch (Exception e) {
+		LOGGER.warn("Not all RabbitMQ messages were confirmed before shutdown.", e);
+	    }
+	    channel.discard();
+	    try {
+		if (channel.getChannel().isOpen()) {
+		    channel.getChannel().close();
+		}
+	    } catch (Exception e) {
+		LOGGER.warn("Unable to close RabbitMQ channel.", e);
+	    }
+	}
+	created.set(0);
+    }
+
+    /**
+     * Get number of messages published.
+     * 
+     * @return
+     */
+    public long getPublishedCount() {
+	return publishedCount.get();
+    }
+
+    /**
+     * Get number of messages confirmed by the broker.
+     * 
+     * @return
+     */
+    public long getConfirmedCount() {
+	return confirmedCount.get();
+    }
+
+    /**
+     * Get number of messages the broker failed to accept.
+     * 
+     * @return
+     */
+    public long getFailedCount() {
+	return failedCount.get();
+    }
+
+    /**
+     * Get number of messages awaiting confirmation.
+     * 
+     * @return
+     */
+    public long getUnconfirmedCount() {
+	if (!useConfirms) {
+	    return 0;
+	}
+	return publishedCount.get() - confirmedCount.get() - failedCount.get();
+    }
+
+    /**
+     * Wraps a channel and tracks messages awaiting broker confirmation.
+     * 
+     * @author Derek
+     */
+    private class PublisherChannel implements ConfirmListener {
+
+	/** Wrapped channel */
+	private Channel channel;
+
+	/** Routing keys of unconfirmed messages indexed by sequence number */
+	private ConcurrentNavigableMap<Long, String> unconfirmed = new ConcurrentSkipListMap<Long, String>();
+
+	public PublisherChannel(Channel channel) throws IOException {
+	    this.channel = channel;
+	    if (useConfirms) {
+		channel.confirmSelect();
+		channel.addConfirmListener(this);
+	    }
+	}
+
+	/**
+	 * Publish a message, tracking it for confirmation if enabled.
+	 * 
+	 * @param exchange
+	 * @param routingKey
+	 * @param body
+	 * @throws IOException
+	 */
+	public void publish(String exchange, String routingKey, byte[] body) throws IOException {
+	    if (useConfirms) {
+		unconfirmed.put(channel.getNextPublishSeqNo(), routingKey);
+	    }
+	    channel.basicPublish(exchange, routingKey, null, body);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.rabbitmq.client.ConfirmListener#handleAck(long, boolean)
+	 */
+	@Override
+	public void handleAck(long deliveryTag, boolean multiple) throws IOException {
+	    confirmedCount.addAndGet(remove(deliveryTag, multiple));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.rabbitmq.client.ConfirmListener#handleNack(long, boolean)
+	 */
+	@Override
+	public void handleNack(long deliveryTag, boolean multiple) throws IOException {
+	    int count = remove(deliveryTag, multiple);
+	    failedCount.addAndGet(count);
+	    LOGGER.error("RabbitMQ broker rejected " + count + " message(s) up to delivery tag " + deliveryTag + ".");
+	}
+
+	/**
+	 * Remove confirmed messages from tracking.
+	 * 
+	 * @param deliveryTag
+	 * @param multiple
+	 * @return
+	 */
+	protected int remove(long deliveryTag, boolean multiple) {
+	    if (multiple) {
+		ConcurrentNavigableMap<Long, String> confirmed = unconfirmed.headMap(deliveryTag, true);
+		int count = confirmed.size();
+		confirmed.clear();
+		return count;
+	    }
+	    return (unconfirmed.remove(deliveryTag) != null) ? 1 : 0;
+	}
+
+	/**
+	 * Stop tracking confirms for a channel that is no longer used. Messages
+	 * still awaiting confirmation are counted as failed.
+	 */
+	public void discard() {
+	    int lost = unconfirmed.size();
+	    if (lost > 0) {
+		failedCount.addAndGet(lost);
+		LOGGER.warn(lost + " RabbitMQ message(s) were not confirmed before channel was closed.");
+	    }
+	    unconfirmed.clear();
+	}
+
+	public Channel getChannel() {
+	    return channel;
+	}
+    }
+}
\ No newline at end of file
@@ -55,6 +55,7 @@ public class DeviceCommunicationModel extends ConfigurationModel {
 	addElement(createProtobufEventDecoderElement());
 	addElement(createJsonDeviceRequestDecoderElement());
 	addElement(createJsonBatchEventDecoderElement());
+	addElement(createStreamingJsonEventDecoderElement());
 	addElement(createGroovyEventDecoderElement());
 	addElement(createCompositeEventDecoderElement());
 	addElement(createCompositeEventDecoderChoicesElement());
@@ -67,6 +68,7 @@ public class DeviceCommunicationModel extends ConfigurationModel {
 
 	// Device event deduplicators.
 	addElement(createAlternateIdDeduplicatorElement());
+	addElement(createWindowedAlternateIdDeduplicatorElement());
 	addElement(createGroovyEventDeduplicatorElement());
 
 	// Device services.
@@ -190,6 +192,13 @@ public class DeviceCommunicationModel extends ConfigurationModel {
 	builder.attribute(
 		(new AttributeNode.Builder("Consumer threads", "numConsumers", AttributeType.Integer).defaultValue("5")
 			.description("Number of thread used by consumers to pull data from the queue.").build()));
+	builder.attribute(
+		(new AttributeNode.Builder("Prefetch count", "prefetchCount", AttributeType.Integer).defaultValue("100")
+			.description("Maximum number of unacknowledged messages delivered to each consumer.")
+			.build()));
+	builder.attribute(
+		(new AttributeNode.Builder("Ack batch size", "ackBatchSize", AttributeType.Integer).defaultValue("25")
+			.description("Number of processed messages acknowledged together.").build()));
 
 	return builder.build();
     }
@@ -289,6 +298,26 @@ public class DeviceCommunicationModel extends ConfigurationModel {
 		.description("Name of JMS queue for consumers to pull messages from.").makeRequired().build()));
 	builder.attribute((new AttributeNode.Builder("Number of consumers", "numConsumers", AttributeType.Integer)
 		.description("Number of consumers used to read data from the queue into SiteWhere.").build()));
+	builder.attribute((new AttributeNode.Builder("Consumer mode", "consumerMode", AttributeType.String)
+		.description("Determines how consumers acknowledge messages. Client acknowledge and "
+			+ "transacted modes acknowledge or commit once per batch.")
+		.choice("AutoAcknowledge").choice("ClientAcknowledge").choice("Transacted")
+		.defaultValue("AutoAcknowledge").build()));
+	builder.attribute((new AttributeNode.Builder("Batch size", "batchSize", AttributeType.Integer)
+		.defaultValue("100").description("Maximum number of messages acknowledged or committed together.")
+		.build()));
+	builder.attribute((new AttributeNode.Builder("Prefetch size", "prefetchSize", AttributeType.Integer)
+		.defaultValue("1000").description("Number of messages pushed to each consumer ahead of processing.")
+		.build()));
+	builder.attribute((new AttributeNode.Builder("Persistent", "persistent", AttributeType.Boolean)
+		.defaultValue("true").description("Indicates if the broker persists messages to disk.").build()));
+	builder.attribute((new AttributeNode.Builder("Journal disk syncs", "journalDiskSyncs", AttributeType.Boolean)
+		.defaultValue("true").description("Indicates if the KahaDB journal is synced to disk on every write.")
+		.build()));
+	builder.attribute((new AttributeNode.Builder("Concurrent store and dispatch", "concurrentStoreAndDispatch",
+		AttributeType.Boolean).defaultValue("true")
+			.description("Indicates if KahaDB stores messages asynchronously while dispatching them.")
+			.build()));
 
 	return builder.build();
     }
@@ -452,6 +481,11 @@ public class DeviceCommunicationModel extends ConfigurationModel {
 	builder.description("Event source that pulls decoded events from a Hazelcast queue. Primarily used to "
 		+ "allow one instance of SiteWhere to decode events and feed them to multiple subordinate instances for processing.");
 	addEventSourceAttributes(builder);
+	builder.attribute((new AttributeNode.Builder("Consumer threads", "numThreads", AttributeType.Integer)
+		.defaultValue("1").description("Number of threads consuming events from the queue. Events for a "
+			+ "device may be processed out of order when more than one thread is used.").build()));
+	builder.attribute((new AttributeNode.Builder("Batch size", "batchSize", AttributeType.Integer)
+		.defaultValue("100").description("Maximum number of events taken from the queue at once.").build()));
 
 	// Only accept binary event decoders.
 	builder.specializes(ElementRole.EventSource_EventDecoder, ElementRole.EventSource_BinaryEventDecoder);
@@ -480,6 +514,18 @@ public class DeviceCommunicationModel extends ConfigurationModel {
 		.description("Host name used when binding server socket.").defaultValue("localhost").build()));
 	builder.attribute((new AttributeNode.Builder("Port", "port", AttributeType.Integer)
 		.description("Port used when binding server socket.").defaultValue("5683").build()));
+	builder.attribute((new AttributeNode.Builder("Asynchronous delivery", "asyncDelivery", AttributeType.Boolean)
+		.description("Acknowledge requests immediately and process them with a pool of worker threads.")
+		.defaultValue("false").build()));
+	builder.attribute((new AttributeNode.Builder("Worker threads", "numWorkers", AttributeType.Integer)
+		.description("Number of worker threads used for asynchronous delivery.").defaultValue("5").build()));
+	builder.attribute((new AttributeNode.Builder("Max queued requests", "maxQueuedRequests", AttributeType.Integer)
+		.description("Number of requests queued for workers before clients are told to retry later.")
+		.defaultValue("1000").build()));
+	builder.attribute((new AttributeNode.Builder("Preferred block size", "preferredBlockSize", AttributeType.Integer)
+		.description("Block size used for block-wise transfers.").defaultValue("512").build()));
+	builder.attribute((new AttributeNode.Builder("Max message size", "maxMessageSize", AttributeType.Integer)
+		.description("Maximum message size before block-wise transfer is used.").defaultValue("1024").build()));
 
 	return builder.build();
     }
@@ -565,6 +611,22 @@ public class DeviceCommunicationModel extends ConfigurationModel {
 	return builder.build();
     }
 
+    /**
+     * Create element configuration for streaming JSON event decoder.
+     * 
+     * @return
+     */
+    protected ElementNode createStreamingJsonEventDecoderElement() {
+	ElementNode.Builder builder = new ElementNode.Builder("Streaming JSON Event Decoder",
+		IEventSourcesParser.BinaryDecoders.StreamingJsonEventDecoder.getLocalName(), "cogs",
+		ElementRole.EventSource_BinaryEventDecoder);
+
+	builder.description("Event decoder that uses a streaming parser to handle JSON device requests, "
+		+ "event batches, or arrays containing events for many devices. Measurements, locations "
+		+ "and alerts are decoded without intermediate objects.");
+	return builder.build();
+    }
+
     /**
      * Create element configuration for Groovy event decoder.
      * 
@@ -693,6 +755,31 @@ public class DeviceCommunicationModel extends ConfigurationModel {
 	return builder.build();
     }
 
+    /**
+     * Create element configuration for windowed alternate id deduplicator.
+     * 
+     * @return
+     */
+    protected ElementNode createWindowedAlternateIdDeduplicatorElement() {
+	ElementNode.Builder builder = new ElementNode.Builder("Windowed Alternate Id Deduplicator",
+		IEventSourcesParser.Deduplicators.WindowedAlternateIdDeduplicator.getLocalName(), "cogs",
+		ElementRole.EventSource_EventDeduplicator);
+
+	builder.description("Deduplicator that checks event alternate ids against recently seen ids in memory "
+		+ "and only queries the datastore when the result is uncertain.");
+	builder.attribute((new AttributeNode.Builder("Window (seconds)", "window", AttributeType.Integer)
+		.description("Number of seconds that alternate ids are remembered.").defaultValue("3600").build()));
+	builder.attribute((new AttributeNode.Builder("Expected ids", "expectedIds", AttributeType.Integer)
+		.description("Expected number of alternate ids per window. Used to size the Bloom filters.")
+		.defaultValue("100000").build()));
+	builder.attribute((new AttributeNode.Builder("False positive rate", "falsePositiveRate", AttributeType.Decimal)
+		.description("Bloom filter false positive rate. False positives fall back to a datastore query.")
+		.defaultValue("0.01").build()));
+	builder.attribute((new AttributeNode.Builder("Recent id cache size", "recentIdCacheSize", AttributeType.Integer)
+		.description("Number of most recent alternate ids held exactly.").defaultValue("10000").build()));
+	return builder.build();
+    }
+
     /**
      * Create element configuration for Groovy event deduplicator.
      * 
@@ -750,6 +837,24 @@ public class DeviceCommunicationModel extends ConfigurationModel {
 		.description("Site token used for registering new devices if auto-assign is enabled "
 			+ "and no site token is passed.")
 		.build()));
+	builder.attribute((new AttributeNode.Builder("Batch size", "batchSize", AttributeType.Integer)
+		.description("Maximum number of registrations handled together. Set to 1 to handle each "
+			+ "registration as it arrives.")
+		.defaultValue("100").build()));
+	builder.attribute((new AttributeNode.Builder("Max batch wait (ms)", "maxBatchWaitMs", AttributeType.Integer)
+		.description("Maximum time a registration waits for more registrations to fill a batch.")
+		.defaultValue("250").build()));
+	builder.attribute((new AttributeNode.Builder("Max queue size", "maxQueueSize", AttributeType.Integer)
+		.description("Maximum number of registrations waiting to be handled. Inbound processing "
+			+ "blocks when the queue is full.")
+		.defaultValue("10000").build()));
+	builder.attribute((new AttributeNode.Builder("Response rate limit", "ackRateLimit", AttributeType.Decimal)
+		.description("Maximum registration responses sent to devices per second. Set to 0 for no limit.")
+		.defaultValue("500").build()));
+	builder.attribute((new AttributeNode.Builder("Shutdown wait (ms)", "shutdownWaitMs", AttributeType.Integer)
+		.description("Maximum time to wait for queued registrations and responses when stopping. "
+			+ "Any not processed in time are dropped.")
+		.defaultValue("10000").build()));
 	return builder.build();
     }
 
@@ -811,8 +916,8 @@ public class DeviceCommunicationModel extends ConfigurationModel {
 	builder.description("Determines device presence information by monitoring the last interaction date"
 		+ "for the device and firing an event if too much time has elapsed.");
 	builder.attribute((new AttributeNode.Builder("Check interval", "checkInterval", AttributeType.String)
-		.description("Time duration (ISO8601 or \"1h 10m 30s\" format) that indicates amount of time to "
-			+ "to wait between performing presence checks.")
+		.description("Deprecated. Presence is now checked as soon as a device passes its missing "
+			+ "interval, so this value is ignored.")
 		.defaultValue("10m").build()));
 	builder.attribute(
 		(new AttributeNode.Builder("Presence missing interval", "presenceMissingInterval", AttributeType.String)
@@ -49,6 +49,8 @@ public class EventProcessingModel extends ConfigurationModel {
 	addElement(createDweetEventProcessorElement());
 	addElement(createWso2CepEventProcessorElement());
 	addElement(createGroovyEventProcessorElement());
+	addElement(createMeasurementAggregationProcessorElement());
+	addElement(createEventSubscriptionProcessorElement());
 
 	// Zone test elements.
 	addElement(createZoneTestElement());
@@ -193,6 +195,10 @@ public class EventProcessingModel extends ConfigurationModel {
 		+ "configured to allow events to be processed by other SiteWhere instances in the "
 		+ "same Hazelcast group. By adding this processor and removing all others, this "
 		+ "instance will load-balance event processing between subordinate instances.");
+	builder.attribute((new AttributeNode.Builder("Batch size", "batchSize", AttributeType.Integer)
+		.defaultValue("100").description("Maximum number of events added to the queue at once.").build()));
+	builder.attribute((new AttributeNode.Builder("Max buffer size", "maxBufferSize", AttributeType.Integer)
+		.defaultValue("10000").description("Maximum number of events buffered before callers wait.").build()));
 
 	return builder.build();
     }
@@ -269,6 +275,9 @@ public class EventProcessingModel extends ConfigurationModel {
 		.choice("critical").build()));
 	builder.attribute((new AttributeNode.Builder("Alert message", "alertMessage", AttributeType.String)
 		.description("Message shown for alert.").build()));
+	builder.attribute((new AttributeNode.Builder("Dwell time (seconds)", "dwellTime", AttributeType.Integer)
+		.description("Number of seconds the condition must hold before the alert fires.").defaultValue("0")
+		.build()));
 	return builder.build();
     }
 
@@ -283,6 +292,22 @@ public class EventProcessingModel extends ConfigurationModel {
 		ElementRole.OutboundProcessingChain_ZoneTestEventProcessor);
 	builder.description("Allows alerts to be generated if location events are inside "
 		+ "or outside of a zone based on criteria.");
+	builder.attribute((new AttributeNode.Builder("Alert on transitions only", "transitionsOnly",
+		AttributeType.Boolean).description("Only fire alerts when a device enters or exits a zone.")
+			.defaultValue("true").build()));
+	builder.attribute((new AttributeNode.Builder("Distributed state", "distributedState", AttributeType.Boolean)
+		.description("Store last known zone containment in Hazelcast.").defaultValue("false").build()));
+	builder.attribute((new AttributeNode.Builder("Alert flush interval (ms)", "alertFlushInterval",
+		AttributeType.Integer).description("Interval between writes of queued alerts.").defaultValue("250")
+			.build()));
+	builder.attribute((new AttributeNode.Builder("Max alert batch size", "maxAlertBatchSize", AttributeType.Integer)
+		.description("Maximum number of alerts written in a single flush cycle.").defaultValue("500").build()));
+	builder.attribute((new AttributeNode.Builder("Max queued alerts", "maxQueuedAlerts", AttributeType.Integer)
+		.description("Number of queued alerts before writes happen on the processing thread.")
+		.defaultValue("10000").build()));
+	builder.attribute((new AttributeNode.Builder("Max alert attempts", "maxAlertAttempts", AttributeType.Integer)
+		.description("Number of times a queued alert is written before it is dropped.").defaultValue("5")
+		.build()));
 	return builder.build();
     }
 
@@ -343,6 +368,20 @@ public class EventProcessingModel extends ConfigurationModel {
 		ElementRole.OutboundProcessingChain_SiddhiEventProcessor);
 	builder.description("Processes events through an embedded Siddhi instance to allow complex event "
 		+ "processing (CEP) funcitonality.");
+	builder.attribute((new AttributeNode.Builder("Batch size", "batchSize", AttributeType.Integer)
+		.description("Maximum number of events sent to a Siddhi stream at once.").defaultValue("1").build()));
+	builder.attribute((new AttributeNode.Builder("Batch flush interval (ms)", "batchFlushInterval",
+		AttributeType.Integer).description("Interval at which partially filled batches are sent.")
+			.defaultValue("100").build()));
+	builder.attribute((new AttributeNode.Builder("Processing threads", "processingThreads", AttributeType.Integer)
+		.description("Threads that send events to Siddhi. Zero sends on the outbound processing thread.")
+		.defaultValue("0").build()));
+	builder.attribute((new AttributeNode.Builder("Max queued events", "maxQueuedEvents", AttributeType.Integer)
+		.description("Events queued per processing thread before outbound processing blocks.")
+		.defaultValue("10000").build()));
+	builder.attribute((new AttributeNode.Builder("Partition by assignment", "partitionByAssignment",
+		AttributeType.Boolean).description("Define AssignmentPartition on the assignment of each stream.")
+			.defaultValue("false").build()));
 	return builder.build();
     }
 
@@ -397,6 +436,12 @@ public class EventProcessingModel extends ConfigurationModel {
 		.description("URI that provides information about the RabbitMQ instance to connect to.").build()));
 	builder.attribute((new AttributeNode.Builder("Topic", "topic", AttributeType.String)
 		.defaultValue("sitewhere.output").description("Topic used if no route builder is specified.").build()));
+	builder.attribute((new AttributeNode.Builder("Publisher channels", "numChannels", AttributeType.Integer)
+		.defaultValue("10").description("Maximum number of channels used for concurrent publishing.").build()));
+	builder.attribute(
+		(new AttributeNode.Builder("Publisher confirms", "publisherConfirms", AttributeType.Boolean)
+			.defaultValue("true").description("Indicates whether the broker should confirm published messages.")
+			.build()));
 	return builder.build();
     }
 
@@ -447,6 +492,22 @@ public class EventProcessingModel extends ConfigurationModel {
 		.build()));
 	builder.attribute((new AttributeNode.Builder("Event hub name", "eventHubName", AttributeType.String)
 		.description("Name of EventHub to connect to.").makeRequired().build()));
+	builder.attribute((new AttributeNode.Builder("Batching enabled", "batchingEnabled", AttributeType.Boolean)
+		.defaultValue("false")
+		.description("Indicates if events are packed into JSON array messages and sent asynchronously.")
+		.build()));
+	builder.attribute((new AttributeNode.Builder("Max batch bytes", "maxBatchBytes", AttributeType.Integer)
+		.defaultValue("261120").description("Maximum size of a batch in bytes.").build()));
+	builder.attribute((new AttributeNode.Builder("Max batch delay (ms)", "maxBatchDelayMs", AttributeType.Integer)
+		.defaultValue("100").description("Maximum time a batch is held open before being sent.").build()));
+	builder.attribute(
+		(new AttributeNode.Builder("Max pending batches", "maxPendingBatches", AttributeType.Integer)
+			.defaultValue("100").description("Maximum number of batches waiting to be sent.").build()));
+	builder.attribute(
+		(new AttributeNode.Builder("Partition by assignment", "partitionByAssignment", AttributeType.Boolean)
+			.defaultValue("true")
+			.description("Use assignment token as partition key so events for an assignment stay in order.")
+			.build()));
 	return builder.build();
     }
 
@@ -466,6 +527,17 @@ public class EventProcessingModel extends ConfigurationModel {
 		.description("Amazon AWS secret key for account owning SQS queue.").makeRequired().build()));
 	builder.attribute((new AttributeNode.Builder("SQS queue URL", "queueUrl", AttributeType.String)
 		.description("Unique URL for SQS queue.").makeRequired().build()));
+	builder.attribute((new AttributeNode.Builder("Endpoint", "endpoint", AttributeType.String)
+		.description("SQS service endpoint. Defaults to the US East region endpoint.").build()));
+	builder.attribute((new AttributeNode.Builder("Batching enabled", "batchingEnabled", AttributeType.Boolean)
+		.defaultValue("true").description("Indicates if events are sent asynchronously in batch requests.")
+		.build()));
+	builder.attribute((new AttributeNode.Builder("Max batch delay (ms)", "maxBatchDelayMs", AttributeType.Integer)
+		.defaultValue("100").description("Maximum time a batch is held open before being sent.").build()));
+	builder.attribute((new AttributeNode.Builder("Max in-flight requests", "maxInFlight", AttributeType.Integer)
+		.defaultValue("50").description("Maximum number of batch requests awaiting a response.").build()));
+	builder.attribute((new AttributeNode.Builder("Max retries", "maxRetries", AttributeType.Integer)
+		.defaultValue("3").description("Number of times a message that failed to send is retried.").build()));
 	return builder.build();
     }
 
@@ -483,6 +555,17 @@ public class EventProcessingModel extends ConfigurationModel {
 		.description(
 			"Access key obtained from the InitialState.com website that specifies the account that the events will be associated with.")
 		.makeRequired().build()));
+	builder.attribute((new AttributeNode.Builder("Max batch size", "maxBatchSize", AttributeType.Integer)
+		.defaultValue("100").description("Maximum number of events sent to a bucket in one request.").build()));
+	builder.attribute((new AttributeNode.Builder("Max batch delay (ms)", "maxBatchDelayMs", AttributeType.Integer)
+		.defaultValue("1000").description("Maximum time events are buffered before being sent.").build()));
+	builder.attribute((new AttributeNode.Builder("Delivery threads", "deliveryThreads", AttributeType.Integer)
+		.defaultValue("2").description("Number of threads delivering events to the service.").build()));
+	builder.attribute(
+		(new AttributeNode.Builder("Max pending batches", "maxPendingBatches", AttributeType.Integer)
+			.defaultValue("100").description("Maximum number of batches waiting for delivery.").build()));
+	builder.attribute((new AttributeNode.Builder("Max retries", "maxRetries", AttributeType.Integer)
+		.defaultValue("5").description("Number of times a failed batch is resent.").build()));
 	return builder.build();
     }
 
@@ -498,6 +581,16 @@ public class EventProcessingModel extends ConfigurationModel {
 	builder.description(
 		"Sends events to the Dweet.io cloud service where they can be viewed and integrated with other services. "
 			+ "The unique 'thing' name will be the unique token for the device assignment the event is associated with.");
+	builder.attribute((new AttributeNode.Builder("Max batch delay (ms)", "maxBatchDelayMs", AttributeType.Integer)
+		.defaultValue("1000")
+		.description("Minimum time between dweets for a thing. Only the latest event is sent.").build()));
+	builder.attribute((new AttributeNode.Builder("Delivery threads", "deliveryThreads", AttributeType.Integer)
+		.defaultValue("2").description("Number of threads delivering events to the service.").build()));
+	builder.attribute(
+		(new AttributeNode.Builder("Max pending batches", "maxPendingBatches", AttributeType.Integer)
+			.defaultValue("1000").description("Maximum number of batches waiting for delivery.").build()));
+	builder.attribute((new AttributeNode.Builder("Max retries", "maxRetries", AttributeType.Integer)
+		.defaultValue("3").description("Number of times a failed batch is resent.").build()));
 	return builder.build();
     }
 
@@ -538,6 +631,51 @@ public class EventProcessingModel extends ConfigurationModel {
 	return builder.build();
     }
 
+    /**
+     * Create a measurement aggregation event processor.
+     * 
+     * @return
+     */
+    protected ElementNode createMeasurementAggregationProcessorElement() {
+	ElementNode.Builder builder = new ElementNode.Builder("Measurement Aggregation Processor",
+		IOutboundProcessingChainParser.Elements.MeasurementAggregationProcessor.getLocalName(), "line-chart",
+		ElementRole.OutboundProcessingChain_FilteredEventProcessor);
+	builder.description("Computes count, min, max, sum and average of measurements over time windows "
+		+ "and stores a rollup for each window as it closes.");
+	builder.attribute((new AttributeNode.Builder("Window size (s)", "windowSize", AttributeType.Integer)
+		.description("Length of each aggregation window in seconds.").defaultValue("60").build()));
+	builder.attribute((new AttributeNode.Builder("Window slide (s)", "windowSlide", AttributeType.Integer)
+		.description("Seconds between window starts. Defaults to window size for tumbling windows.")
+		.build()));
+	builder.attribute((new AttributeNode.Builder("Allowed lateness (s)", "allowedLateness", AttributeType.Integer)
+		.description("Seconds a measurement may arrive out of order and still be counted.").defaultValue("5")
+		.build()));
+	builder.attribute((new AttributeNode.Builder("Measurement names", "measurementNames", AttributeType.String)
+		.description("Comma-delimited measurement names to aggregate. All if not set.").build()));
+	return builder.build();
+    }
+
+    /**
+     * Create an event subscription event processor.
+     * 
+     * @return
+     */
+    protected ElementNode createEventSubscriptionProcessorElement() {
+	ElementNode.Builder builder = new ElementNode.Builder("Event Subscription Processor",
+		IOutboundProcessingChainParser.Elements.EventSubscriptionProcessor.getLocalName(), "rss",
+		ElementRole.OutboundProcessingChain_FilteredEventProcessor);
+	builder.description("Pushes events to live subscribers connected to the REST event stream. "
+		+ "Measurements are coalesced for subscribers that fall behind.");
+	builder.attribute((new AttributeNode.Builder("Delivery threads", "deliveryThreads", AttributeType.Integer)
+		.description("Number of threads delivering events to subscribers.").defaultValue("2").build()));
+	builder.attribute((new AttributeNode.Builder("Batch size", "batchSize", AttributeType.Integer)
+		.description("Maximum number of events sent to a subscriber at once.").defaultValue("100").build()));
+	builder.attribute((new AttributeNode.Builder("Send timeout (ms)", "sendTimeout", AttributeType.Integer)
+		.description("Time a send to a subscriber may block before the subscriber is disconnected.")
+		.defaultValue("10000").build()));
+	return builder.build();
+    }
+
     /**
      * Create filter criteria element.
      * 
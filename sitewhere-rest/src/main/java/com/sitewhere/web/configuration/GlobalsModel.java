@@ -64,25 +64,26 @@ public class GlobalsModel extends ConfigurationModel {
      * 
      * @return
      */
-    @SuppressWarnings("deprecation")
     protected ElementNode createGroovyConfigurationElement() {
 	ElementNode.Builder builder = new ElementNode.Builder("Override Groovy Configuration",
 		IGlobalsParser.Elements.GroovyConfiguration.getLocalName(), "cogs", ElementRole.Globals_Global);
 
 	builder.namespace(IConfigurationElements.SITEWHERE_COMMUNITY_NS);
-	builder.description("Overrides global Groovy settings for a tenant. <strong>This element is no longer "
-		+ " supported, since the Groovy configuration now looks for tenant resources first, then falls "
-		+ "back to the global resource of the same name if not found.</strong>");
+	builder.description("Overrides Groovy script engine settings for a tenant. Scripts are loaded from tenant "
+		+ "resources first, then fall back to the global resource of the same name if not found.");
 	builder.attributeGroup("flags", "Groovy Engine Flags");
-	builder.attributeGroup("location", "Script Location");
+	builder.attributeGroup("cache", "Script Cache");
 	builder.attribute((new AttributeNode.Builder("Enable debugging", "debug", AttributeType.Boolean)
 		.description("Turns on Groovy script engine debugging if true.").group("flags").build()));
 	builder.attribute((new AttributeNode.Builder("Enable verbose mode", "verbose", AttributeType.Boolean)
 		.description("Turns on Groovy script engine verbose flag if true.").group("flags").build()));
-	builder.attribute((new AttributeNode.Builder("External script root", "externalScriptRoot", AttributeType.String)
-		.description("Sets script root to an external URL rathen than using the default filesystem path.")
-		.group("location").build()));
-	builder.makeDeprecated();
+	builder.attribute((new AttributeNode.Builder("Compile static", "compileStatic", AttributeType.Boolean)
+		.description("Compiles tenant scripts with static type checking if true. Scripts that read "
+			+ "binding variables dynamically will not compile.")
+		.defaultValue("false").group("flags").build()));
+	builder.attribute((new AttributeNode.Builder("Script check interval (ms)", "scriptCheckInterval",
+		AttributeType.Integer).description("Minimum number of milliseconds between checks for updated "
+			+ "script resources.").defaultValue("5000").group("cache").build()));
 
 	return builder.build();
     }
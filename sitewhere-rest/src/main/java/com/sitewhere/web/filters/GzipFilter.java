@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.filters;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Compresses REST responses with gzip for clients that accept it. Bodies
+ * smaller than the threshold are sent uncompressed since the CPU cost is not
+ * worth the handful of bytes saved.
+ * 
+ * @author Derek
+ */
+public class GzipFilter extends OncePerRequestFilter {
+
+    /** Default minimum body size in bytes before compressing */
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    /** Minimum body size in bytes before compressing */
+    private int threshold = DEFAULT_THRESHOLD;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.springframework.web.filter.OncePerRequestFilter#doFilterInternal(
+     * javax.servlet.http.HttpServletRequest ,
+     * javax.servlet.http.HttpServletResponse, javax.servlet.FilterChain)
+     */
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+	    throws ServletException, IOException {
+	if (isAsyncDispatch(request)) {
+	    // Result of an asynchronous call is written to the original wrapper.
+	    chain.doFilter(request, response);
+	    GzipResponseWrapper wrapper = findWrapper(response);
+	    if ((wrapper != null) && (!isAsyncStarted(request))) {
+		wrapper.finish();
+	    }
+	    return;
+	}
+	if (!acceptsGzip(request)) {
+	    chain.doFilter(request, response);
+	    return;
+	}
+	GzipResponseWrapper wrapper = new GzipResponseWrapper(response, getThreshold());
+	chain.doFilter(request, wrapper);
+	if (!isAsyncStarted(request)) {
+	    wrapper.finish();
+	}
+    }
+
+    /**
+     * Asynchronous dispatches must pass through the filter so that the
+     * compressed stream is completed once the result has been written.
+     * 
+     * @see org.springframework.web.filter.OncePerRequestFilter#
+     * shouldNotFilterAsyncDispatch()
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+	return false;
+    }
+
+    /**
+     * Find the gzip wrapper in a chain of response wrappers.
+     * 
+     * @param response
+     * @return
+     */
+    protected GzipResponseWrapper findWrapper(ServletResponse response) {
+	while (response instanceof ServletResponseWrapper) {
+	    if (response instanceof GzipResponseWrapper) {
+		return (GzipResponseWrapper) response;
+	    }
+	    response = ((ServletResponseWrapper) response).getResponse();
+	}
+	return null;
+    }
+
+    /**
+     * Indicates whether the client accepts gzip encoded responses.
+     * 
+     * @param request
+     * @return
+     */
+    protected boolean acceptsGzip(HttpServletRequest request) {
+	String accepts = request.getHeader("Accept-Encoding");
+	return (accepts != null) && (accepts.toLowerCase().contains("gzip"));
+    }
+
+    public int getThreshold() {
+	return threshold;
+    }
+
+    public void setThreshold(int threshold) {
+	this.threshold = threshold;
+    }
+}
\ No newline at end of file
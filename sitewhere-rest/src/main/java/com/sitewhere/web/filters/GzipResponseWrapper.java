@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.filters;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response wrapper that gzips the body once it grows past a threshold.
+ * Content length set by downstream code is ignored since it no longer matches
+ * the compressed body.
+ * 
+ * @author Derek
+ */
+public class GzipResponseWrapper extends HttpServletResponseWrapper {
+
+    /** Header name for content length */
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    /** Content type prefixes that are worth compressing */
+    private static final String[] COMPRESSIBLE_TYPES = { "application/json", "application/x-ndjson",
+	    "application/javascript", "application/xml", "text/" };
+
+    /** Content types that are streamed to the client as written */
+    private static final String[] STREAMED_TYPES = { "text/event-stream" };
+
+    /** Minimum body size before compressing */
+    private int threshold;
+
+    /** Output stream returned to callers */
+    private GzipServletOutputStream stream;
+
+    /** Writer returned to callers */
+    private PrintWriter writer;
+
+    public GzipResponseWrapper(HttpServletResponse response, int threshold) {
+	super(response);
+	this.threshold = threshold;
+    }
+
+    /**
+     * Indicates whether the current response can usefully be compressed.
+     * 
+     * @return
+     */
+    public boolean isCompressible() {
+	if ((getStatus() == HttpServletResponse.SC_NOT_MODIFIED)
+		|| (getStatus() == HttpServletResponse.SC_NO_CONTENT)) {
+	    return false;
+	}
+	if (containsHeader("Content-Encoding")) {
+	    return false;
+	}
+	String type = getContentType();
+	if (type == null) {
+	    return false;
+	}
+	for (String streamed : STREAMED_TYPES) {
+	    if (type.startsWith(streamed)) {
+		return false;
+	    }
+	}
+	for (String compressible : COMPRESSIBLE_TYPES) {
+	    if (type.startsWith(compressible)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Called when output is switched to gzip.
+     */
+    protected void startCompression() {
+	setHeader("Content-Encoding", "gzip");
+	addHeader("Vary", "Accept-Encoding");
+    }
+
+    /**
+     * Complete the response after the filter chain has returned.
+     * 
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+	if (writer != null) {
+	    writer.close();
+	} else if (stream != null) {
+	    stream.close();
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.servlet.ServletResponseWrapper#getOutputStream()
+     */
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+	if (writer != null) {
+	    throw new IllegalStateException("Writer has already been requested.");
+	}
+	if (stream == null) {
+	    stream = new GzipServletOutputStream(this, threshold);
+	}
+	return stream;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.servlet.ServletResponseWrapper#getWriter()
+     */
+    @Override
+    public PrintWriter getWriter() throws IOException {
+	if (writer == null) {
+	    if (stream != null) {
+		throw new IllegalStateException("Output stream has already been requested.");
+	    }
+	    stream = new GzipServletOutputStream(this, threshold);
+	    writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+	}
+	return writer;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.servlet.ServletResponseWrapper#flushBuffer()
+     */
+    @Override
+    public void flushBuffer() throws IOException {
+	if (writer != null) {
+	    writer.flush();
+	} else if (stream != null) {
+	    stream.flush();
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.servlet.ServletResponseWrapper#setContentLength(int)
+     */
+    @Override
+    public void setContentLength(int len) {
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.servlet.ServletResponseWrapper#setContentLengthLong(long)
+     */
+    @Override
+    public void setContentLengthLong(long len) {
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.servlet.http.HttpServletResponseWrapper#setHeader(java.lang.
+     * String, java.lang.String)
+     */
+    @Override
+    public void setHeader(String name, String value) {
+	if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+	    super.setHeader(name, value);
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.servlet.http.HttpServletResponseWrapper#addHeader(java.lang.
+     * String, java.lang.String)
+     */
+    @Override
+    public void addHeader(String name, String value) {
+	if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+	    super.addHeader(name, value);
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.servlet.http.HttpServletResponseWrapper#setIntHeader(java.lang.
+     * String, int)
+     */
+    @Override
+    public void setIntHeader(String name, int value) {
+	if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+	    super.setIntHeader(name, value);
+	}
+    }
+}
\ No newline at end of file
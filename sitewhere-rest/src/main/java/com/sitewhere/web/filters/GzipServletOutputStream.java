@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Output stream that holds back the start of a response until it is known
+ * whether compression is worthwhile. Once more than the threshold has been
+ * written, the response is switched to gzip (or passed through unchanged if
+ * the content type can not be compressed). Responses that finish below the
+ * threshold are written as-is with an accurate content length.
+ * 
+ * @author Derek
+ */
+public class GzipServletOutputStream extends ServletOutputStream {
+
+    /** Size of buffer used by gzip stream */
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    /** Response being written */
+    private GzipResponseWrapper response;
+
+    /** Number of bytes held back before deciding */
+    private int threshold;
+
+    /** Holds start of response until threshold is reached */
+    private ByteArrayOutputStream buffer;
+
+    /** Stream being written once a decision has been made */
+    private OutputStream output;
+
+    /** Indicates whether stream has been closed */
+    private boolean closed = false;
+
+    public GzipServletOutputStream(GzipResponseWrapper response, int threshold) {
+	this.response = response;
+	this.threshold = threshold;
+	this.buffer = new ByteArrayOutputStream(threshold);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException {
+	write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+	if (closed) {
+	    throw new IOException("Stream has already been closed.");
+	}
+	if (output == null) {
+	    if (buffer.size() + len <= threshold) {
+		buffer.write(b, off, len);
+		return;
+	    }
+	    startOutput(response.isCompressible());
+	}
+	output.write(b, off, len);
+    }
+
+    /**
+     * Open the output stream and write any buffered content to it.
+     * 
+     * @param compress
+     * @throws IOException
+     */
+    protected void startOutput(boolean compress) throws IOException {
+	if (compress) {
+	    response.startCompression();
+	    output = new GZIPOutputStream(response.getResponse().getOutputStream(), GZIP_BUFFER_SIZE, true);
+	} else {
+	    output = response.getResponse().getOutputStream();
+	}
+	buffer.writeTo(output);
+	buffer = null;
+    }
+
+    /**
+     * Flushes written data once compression has been decided. Flushes before
+     * the threshold is reached are ignored so that small bodies serialized with
+     * an explicit flush are not compressed needlessly. Content that can not be
+     * compressed (such as event streams) is passed through on the first flush
+     * so it is not held back.
+     * 
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+	if (closed) {
+	    return;
+	}
+	if ((output == null) && (!response.isCompressible())) {
+	    startOutput(false);
+	}
+	if (output != null) {
+	    output.flush();
+	}
+    }
+
+    /**
+     * Complete the response. Bodies that never reached the threshold are
+     * written uncompressed.
+     * 
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+	if (closed) {
+	    return;
+	}
+	if (output == null) {
+	    response.getResponse().setContentLength(buffer.size());
+	    startOutput(false);
+	}
+	if (output instanceof GZIPOutputStream) {
+	    ((GZIPOutputStream) output).finish();
+	}
+	output.flush();
+	closed = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.servlet.ServletOutputStream#isReady()
+     */
+    @Override
+    public boolean isReady() {
+	return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.servlet.ServletOutputStream#setWriteListener(javax.servlet.
+     * WriteListener)
+     */
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+    }
+
+    public boolean isClosed() {
+	return closed;
+    }
+}
\ No newline at end of file
@@ -18,6 +18,7 @@ import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -42,6 +43,12 @@ public class JsonpFilter implements Filter {
      */
     public static final Pattern SAFE_PATTERN = Pattern.compile("[a-zA-Z0-9_\\.]+");
 
+    /**
+     * Suffix for streaming API calls. These write directly to the response and
+     * are never buffered for padding.
+     */
+    public static final String STREAMING_SUFFIX = "/stream";
+
     /*
      * (non-Javadoc)
      * 
@@ -63,7 +70,7 @@ public class JsonpFilter implements Filter {
 
 	Map<String, String[]> parms = httpRequest.getParameterMap();
 
-	if (parms.containsKey(CALLBACK_PARAMETER)) {
+	if ((parms.containsKey(CALLBACK_PARAMETER)) && (!httpRequest.getRequestURI().endsWith(STREAMING_SUFFIX))) {
 
 	    // Make sure that callback value is a function name and not code.
 	    String callback = parms.get(CALLBACK_PARAMETER)[0];
@@ -72,10 +79,19 @@ public class JsonpFilter implements Filter {
 	    }
 	    httpResponse.setContentType("text/javascript;charset=UTF-8");
 
-	    OutputStream out = httpResponse.getOutputStream();
-	    GenericResponseWrapper wrapper = new GenericResponseWrapper(httpResponse);
-	    chain.doFilter(request, wrapper);
+	    // Asynchronous calls are dispatched again with the original wrapper.
+	    GenericResponseWrapper wrapper = findWrapper(response);
+	    if (wrapper != null) {
+		chain.doFilter(request, response);
+	    } else {
+		wrapper = new GenericResponseWrapper(httpResponse);
+		chain.doFilter(request, wrapper);
+	    }
+	    if (request.isAsyncStarted()) {
+		return;
+	    }
 
+	    OutputStream out = wrapper.getResponse().getOutputStream();
 	    out.write(new String(callback + "(").getBytes());
 	    out.write(wrapper.getData());
 	    out.write(new String(");").getBytes());
@@ -87,6 +103,22 @@ public class JsonpFilter implements Filter {
 	}
     }
 
+    /**
+     * Find a wrapper created by an earlier pass through the filter.
+     * 
+     * @param response
+     * @return
+     */
+    protected GenericResponseWrapper findWrapper(ServletResponse response) {
+	while (response instanceof ServletResponseWrapper) {
+	    if (response instanceof GenericResponseWrapper) {
+		return (GenericResponseWrapper) response;
+	    }
+	    response = ((ServletResponseWrapper) response).getResponse();
+	}
+	return null;
+    }
+
     /*
      * (non-Javadoc)
      * 
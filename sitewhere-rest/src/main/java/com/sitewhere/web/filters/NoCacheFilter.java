@@ -17,7 +17,9 @@ import javax.servlet.http.HttpServletResponse;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 /**
- * Adds header to prevent caching of REST calls in crappy browsers.
+ * Adds header to prevent caching of REST calls in crappy browsers. Responses
+ * may still be stored so that they can be revalidated with an entity tag, but
+ * must not be reused without asking the server.
  * 
  * @author Derek
  */
@@ -33,7 +35,7 @@ public class NoCacheFilter extends OncePerRequestFilter {
      */
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
 	    throws ServletException, IOException {
-	response.addHeader("Cache-Control", "max-age=0,no-cache,no-store,post-check=0,pre-check=0");
+	response.addHeader("Cache-Control", "max-age=0,no-cache,post-check=0,pre-check=0");
 	response.addHeader("Expires", "Mon, 26 Jul 1997 05:00:00 GMT");
 	chain.doFilter(request, response);
     }
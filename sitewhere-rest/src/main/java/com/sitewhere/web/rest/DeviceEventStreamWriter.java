@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.rest.model.device.asset.DeviceAlertWithAsset;
+import com.sitewhere.rest.model.device.asset.DeviceCommandInvocationWithAsset;
+import com.sitewhere.rest.model.device.asset.DeviceCommandResponseWithAsset;
+import com.sitewhere.rest.model.device.asset.DeviceLocationWithAsset;
+import com.sitewhere.rest.model.device.asset.DeviceMeasurementsWithAsset;
+import com.sitewhere.rest.model.device.asset.DeviceStateChangeWithAsset;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.asset.IAssetModuleManager;
+import com.sitewhere.spi.device.event.IDeviceAlert;
+import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
+import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+import com.sitewhere.spi.device.event.IDeviceStateChange;
+
+/**
+ * Writes events from an {@link IDeviceEventIterator} directly to the servlet
+ * output stream as they are read. Events are written either as a single JSON
+ * array or as newline-delimited JSON with one event per line. Output is
+ * flushed periodically so the container sends it in chunks rather than
+ * buffering the whole response.
+ * 
+ * @author Derek
+ */
+public class DeviceEventStreamWriter {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Content type for JSON array output */
+    public static final String CONTENT_TYPE_JSON = "application/json;charset=UTF-8";
+
+    /** Content type for newline-delimited JSON output */
+    public static final String CONTENT_TYPE_NDJSON = "application/x-ndjson;charset=UTF-8";
+
+    /** Number of events written between flushes */
+    public static final int FLUSH_INTERVAL = 100;
+
+    /**
+     * Output formats supported by the writer.
+     * 
+     * @author Derek
+     */
+    public static enum Format {
+
+	/** Single JSON array */
+	Json,
+
+	/** One JSON object per line */
+	Ndjson;
+
+	/**
+	 * Get format based on a request parameter value. Defaults to a JSON
+	 * array.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static Format fromParameter(String value) {
+	    if ("ndjson".equalsIgnoreCase(value)) {
+		return Ndjson;
+	    }
+	    return Json;
+	}
+    }
+
+    /** Output format */
+    private Format format;
+
+    /** Asset module manager used to add asset info (null to skip) */
+    private IAssetModuleManager assets;
+
+    public DeviceEventStreamWriter(Format format, IAssetModuleManager assets) {
+	this.format = format;
+	this.assets = assets;
+    }
+
+    /**
+     * Write all events from the iterator to the response. The iterator is
+     * closed when writing completes or fails.
+     * 
+     * @param events
+     * @param response
+     * @return number of events written
+     * @throws SiteWhereException
+     */
+    public long write(IDeviceEventIterator events, HttpServletResponse response) throws SiteWhereException {
+	long count = 0;
+	try {
+	    response.setContentType((getFormat() == Format.Ndjson) ? CONTENT_TYPE_NDJSON : CONTENT_TYPE_JSON);
+	    JsonGenerator json = MarshalUtils.MAPPER.getFactory().createGenerator(response.getOutputStream());
+	    if (getFormat() == Format.Ndjson) {
+		json.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+	    } else {
+		json.writeStartArray();
+	    }
+	    while (events.hasNext()) {
+		json.writeObject(wrap(events.next()));
+		if ((++count % FLUSH_INTERVAL) == 0) {
+		    json.flush();
+		}
+	    }
+	    if (getFormat() == Format.Ndjson) {
+		if (count > 0) {
+		    json.writeRaw('\n');
+		}
+	    } else {
+		json.writeEndArray();
+	    }
+	    json.close();
+	    return count;
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to stream events after writing " + count + " of them.", e);
+	} finally {
+	    try {
+		events.close();
+	    } catch (SiteWhereException e) {
+		LOGGER.warn("Unable to close event iterator.", e);
+	    }
+	}
+    }
+
+    /**
+     * Wrap an event with asset information if an asset module manager was
+     * provided.
+     * 
+     * @param event
+     * @return
+     * @throws SiteWhereException
+     */
+    protected Object wrap(IDeviceEvent event) throws SiteWhereException {
+	if (getAssets() == null) {
+	    return event;
+	}
+	switch (event.getEventType()) {
+	case Measurements:
+	    return new DeviceMeasurementsWithAsset((IDeviceMeasurements) event, getAssets());
+	case Location:
+	    return new DeviceLocationWithAsset((IDeviceLocation) event, getAssets());
+	case Alert:
+	    return new DeviceAlertWithAsset((IDeviceAlert) event, getAssets());
+	case CommandInvocation:
+	    return new DeviceCommandInvocationWithAsset((IDeviceCommandInvocation) event, getAssets());
+	case CommandResponse:
+	    return new DeviceCommandResponseWithAsset((IDeviceCommandResponse) event, getAssets());
+	case StateChange:
+	    return new DeviceStateChangeWithAsset((IDeviceStateChange) event, getAssets());
+	default:
+	    return event;
+	}
+    }
+
+    public Format getFormat() {
+	return format;
+    }
+
+    public IAssetModuleManager getAssets() {
+	return assets;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.TreeMap;
+
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sitewhere.rest.model.asset.HardwareAsset;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.asset.IAsset;
+import com.sitewhere.spi.asset.IAssetModuleManager;
+import com.sitewhere.spi.common.ISiteWhereEntity;
+import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.search.ISearchResults;
+
+/**
+ * Computes entity tags for REST responses from entity keys and modification
+ * dates rather than from the response body, so an unchanged entity can be
+ * answered with a "304 Not Modified" before it is marshaled. Every entity
+ * included in a response must be folded into its tag. Assets carry no
+ * modification date, so their fields are folded in directly. Responses built
+ * from state that has no modification date, such as assignments with their
+ * current state, are tagged from the serialized body instead. Tags are weak
+ * since the same entity may be sent with or without compression.
+ * 
+ * @author Derek
+ */
+public class EntityTags {
+
+    /** Used to serialize response bodies */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Get tag for a response body from its serialized form.
+     * 
+     * @param body
+     * @return
+     * @throws SiteWhereException
+     */
+    public static String forBody(Object body) throws SiteWhereException {
+	try {
+	    return "W/\"" + DigestUtils.md5DigestAsHex(MAPPER.writeValueAsBytes(body)) + "\"";
+	} catch (JsonProcessingException e) {
+	    throw new SiteWhereException("Unable to serialize response for entity tag.", e);
+	}
+    }
+
+    /**
+     * Get tag for a single site.
+     * 
+     * @param site
+     * @return
+     */
+    public static String forSite(ISite site) {
+	StringBuilder state = new StringBuilder();
+	appendEntity(state, site.getToken(), site);
+	return toTag(state);
+    }
+
+    /**
+     * Get tag for a single device specification along with its asset.
+     * 
+     * @param specification
+     * @param manager
+     * @return
+     * @throws SiteWhereException
+     */
+    public static String forSpecification(IDeviceSpecification specification, IAssetModuleManager manager)
+	    throws SiteWhereException {
+	StringBuilder state = new StringBuilder();
+	appendSpecification(state, specification, manager);
+	return toTag(state);
+    }
+
+    /**
+     * Get tag for a page of sites.
+     * 
+     * @param results
+     * @return
+     */
+    public static String forSites(ISearchResults<ISite> results) {
+	StringBuilder state = new StringBuilder();
+	state.append(results.getNumResults()).append('|');
+	for (ISite site : results.getResults()) {
+	    appendEntity(state, site.getToken(), site);
+	}
+	return toTag(state);
+    }
+
+    /**
+     * Get tag for a page of device specifications.
+     * 
+     * @param results
+     * @return
+     */
+    public static String forSpecifications(ISearchResults<IDeviceSpecification> results, IAssetModuleManager manager)
+	    throws SiteWhereException {
+	StringBuilder state = new StringBuilder();
+	state.append(results.getNumResults()).append('|');
+	for (IDeviceSpecification specification : results.getResults()) {
+	    appendSpecification(state, specification, manager);
+	}
+	return toTag(state);
+    }
+
+    /**
+     * Append the fields that identify a version of a specification and its
+     * asset.
+     * 
+     * @param state
+     * @param specification
+     * @param manager
+     * @throws SiteWhereException
+     */
+    protected static void appendSpecification(StringBuilder state, IDeviceSpecification specification,
+	    IAssetModuleManager manager) throws SiteWhereException {
+	appendEntity(state, specification.getToken(), specification);
+	appendAsset(state, manager.getAssetById(specification.getAssetModuleId(), specification.getAssetId()));
+    }
+
+    /**
+     * Append the marshaled fields of an asset that may be null.
+     * 
+     * @param state
+     * @param asset
+     */
+    protected static void appendAsset(StringBuilder state, IAsset asset) {
+	if (asset == null) {
+	    state.append("null|");
+	    return;
+	}
+	state.append(asset.getId()).append('|').append(asset.getName()).append('|').append(asset.getType()).append('|')
+		.append(asset.getAssetCategoryId()).append('|').append(asset.getImageUrl()).append('|');
+	if (asset.getProperties() != null) {
+	    state.append(new TreeMap<String, String>(asset.getProperties())).append('|');
+	}
+	if (asset instanceof HardwareAsset) {
+	    HardwareAsset hardware = (HardwareAsset) asset;
+	    state.append(hardware.getSku()).append('|').append(hardware.getDescription()).append('|');
+	}
+    }
+
+    /**
+     * Append the fields that identify a version of an entity.
+     * 
+     * @param state
+     * @param key
+     * @param entity
+     */
+    protected static void appendEntity(StringBuilder state, String key, ISiteWhereEntity entity) {
+	state.append(key).append('|');
+	appendDate(state, (entity.getUpdatedDate() != null) ? entity.getUpdatedDate() : entity.getCreatedDate());
+	state.append(entity.isDeleted()).append('|');
+    }
+
+    /**
+     * Append a date that may be null.
+     * 
+     * @param state
+     * @param date
+     */
+    protected static void appendDate(StringBuilder state, Date date) {
+	state.append((date != null) ? date.getTime() : 0).append('|');
+    }
+
+    /**
+     * Hash the accumulated state into a weak entity tag.
+     * 
+     * @param state
+     * @return
+     */
+    protected static String toTag(StringBuilder state) {
+	return "W/\"" + DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+}
\ No newline at end of file
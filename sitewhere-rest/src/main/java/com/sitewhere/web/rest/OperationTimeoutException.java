@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Thrown when a long-running REST operation started but did not complete
+ * before the timeout. The operation keeps running and may still succeed, so
+ * the client is not invited to retry. Mapped to a "504 Gateway Timeout"
+ * response.
+ * 
+ * @author Derek
+ */
+public class OperationTimeoutException extends SiteWhereException {
+
+    /** Serial version UID */
+    private static final long serialVersionUID = -2158393416829011406L;
+
+    public OperationTimeoutException(String message) {
+	super(message);
+    }
+}
\ No newline at end of file
@@ -18,6 +18,7 @@ import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sitewhere.SiteWhere;
@@ -110,6 +111,20 @@ public class RestController {
 	return token;
     }
 
+    /**
+     * Compare an entity tag with the "If-None-Match" header of a GET request.
+     * The tag is added to the response and, if it matches, the status is set
+     * to "304 Not Modified" and the caller should return without a body.
+     * 
+     * @param etag
+     * @param request
+     * @param response
+     * @return
+     */
+    protected boolean checkNotModified(String etag, HttpServletRequest request, HttpServletResponse response) {
+	return new ServletWebRequest(request, response).checkNotModified(etag);
+    }
+
     /**
      * Send message back to called indicating successful add.
      * 
@@ -182,6 +197,42 @@ public class RestController {
 	}
     }
 
+    /**
+     * Handles exception thrown when a long-running operation is rejected or
+     * cancelled before it started because the tenant executor is saturated.
+     * 
+     * @param e
+     * @param response
+     */
+    @ExceptionHandler
+    protected void handleServerBusy(ServerBusyException e, HttpServletResponse response) {
+	LOGGER.warn(e.getMessage());
+	try {
+	    response.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+	    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+	} catch (IOException e1) {
+	    LOGGER.error(e1);
+	}
+    }
+
+    /**
+     * Handles exception thrown when a long-running operation started but did
+     * not complete in time. No "Retry-After" header is sent since the operation
+     * may still complete.
+     * 
+     * @param e
+     * @param response
+     */
+    @ExceptionHandler
+    protected void handleOperationTimeout(OperationTimeoutException e, HttpServletResponse response) {
+	LOGGER.warn(e.getMessage());
+	try {
+	    response.sendError(HttpServletResponse.SC_GATEWAY_TIMEOUT, e.getMessage());
+	} catch (IOException e1) {
+	    LOGGER.error(e1);
+	}
+    }
+
     /**
      * Handles exception thrown when a tenant operation is requested on an
      * unavailable tenant.
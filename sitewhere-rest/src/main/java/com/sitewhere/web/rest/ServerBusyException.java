@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Thrown when a long-running REST operation can not be accepted because the
+ * tenant executor is saturated, or when it was cancelled before it started.
+ * Mapped to a "503 Service Unavailable" response with a "Retry-After" header.
+ * 
+ * @author Derek
+ */
+public class ServerBusyException extends SiteWhereException {
+
+    /** Serial version UID */
+    private static final long serialVersionUID = 4469185962335719347L;
+
+    /** Number of seconds client should wait before retrying */
+    private int retryAfterSeconds;
+
+    public ServerBusyException(String message, int retryAfterSeconds) {
+	super(message);
+	this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public ServerBusyException(String message, int retryAfterSeconds, Throwable cause) {
+	super(message, cause);
+	this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+	return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.processor.IEventSubscriptionSink;
+
+/**
+ * Sends subscribed events to a client as Server-Sent Events. Each event is
+ * named with its event type and carries the event id so browsers can
+ * distinguish event types with separate listeners.
+ * 
+ * @author Derek
+ */
+public class SseEventSubscriptionSink implements IEventSubscriptionSink {
+
+    /** Emitter for the client connection */
+    private SseEmitter emitter;
+
+    public SseEventSubscriptionSink(SseEmitter emitter) {
+	this.emitter = emitter;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.spi.device.event.processor.IEventSubscriptionSink#send(java
+     * .util.List)
+     */
+    @Override
+    public void send(List<IDeviceEvent> events) throws SiteWhereException {
+	try {
+	    for (IDeviceEvent event : events) {
+		SseEmitter.SseEventBuilder builder = SseEmitter.event().name(event.getEventType().name())
+			.data(event, MediaType.APPLICATION_JSON);
+		if (event.getId() != null) {
+		    builder.id(event.getId());
+		}
+		emitter.send(builder);
+	    }
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to send events to subscriber.", e);
+	} catch (IllegalStateException e) {
+	    throw new SiteWhereException("Subscriber connection has already completed.", e);
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.spi.device.event.processor.IEventSubscriptionSink#
+     * close()
+     */
+    @Override
+    public void close() {
+	emitter.complete();
+    }
+
+    public SseEmitter getEmitter() {
+	return emitter;
+    }
+}
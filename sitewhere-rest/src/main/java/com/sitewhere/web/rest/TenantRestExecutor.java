@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.sitewhere.SiteWhere;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.server.tenant.ISiteWhereTenantEngine;
+import com.sitewhere.spi.tenant.ITenant;
+
+/**
+ * Runs long-running REST operations for a tenant on a bounded thread pool so
+ * they do not hold servlet container threads. Work is returned to Spring MVC
+ * as a {@link DeferredResult}. When the queue is full, submission fails with
+ * {@link ServerBusyException} rather than blocking. Operations still queued
+ * when the timeout expires are cancelled and also reported as busy, since
+ * nothing was done. Operations that already started are left to finish and
+ * reported with {@link OperationTimeoutException}, which does not invite a
+ * retry, because retrying a non-idempotent operation would repeat it.
+ * 
+ * @author Derek
+ */
+public class TenantRestExecutor {
+
+    /** Default number of threads per tenant */
+    public static final int DEFAULT_THREAD_COUNT = 4;
+
+    /** Default number of queued operations per tenant */
+    public static final int DEFAULT_QUEUE_SIZE = 50;
+
+    /** Default operation timeout in milliseconds */
+    public static final long DEFAULT_TIMEOUT_MS = 60 * 1000;
+
+    /** Default seconds a client should wait before retrying */
+    public static final int DEFAULT_RETRY_AFTER_SECONDS = 5;
+
+    /** Executors by tenant id */
+    private static ConcurrentMap<String, TenantRestExecutor> EXECUTORS = new ConcurrentHashMap<String, TenantRestExecutor>();
+
+    /** Thread pool for operations */
+    private ThreadPoolExecutor executor;
+
+    /** Operation timeout in milliseconds */
+    private long timeout = DEFAULT_TIMEOUT_MS;
+
+    /** Seconds a client should wait before retrying */
+    private int retryAfterSeconds = DEFAULT_RETRY_AFTER_SECONDS;
+
+    public TenantRestExecutor(String name, int threadCount, int queueSize) {
+	this.executor = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+		new ArrayBlockingQueue<Runnable>(queueSize), new RestThreadFactory(name),
+		new ThreadPoolExecutor.AbortPolicy());
+	executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get executor for a tenant, creating it if necessary. A new executor is
+     * shut down and dropped when the tenant engine stops.
+     * 
+     * @param tenant
+     * @return
+     * @throws SiteWhereException
+     */
+    public static TenantRestExecutor getInstance(ITenant tenant) throws SiteWhereException {
+	final String tenantId = tenant.getId();
+	TenantRestExecutor executor = EXECUTORS.get(tenantId);
+	if (executor == null) {
+	    final TenantRestExecutor created = new TenantRestExecutor(tenantId, DEFAULT_THREAD_COUNT,
+		    DEFAULT_QUEUE_SIZE);
+	    executor = EXECUTORS.putIfAbsent(tenantId, created);
+	    if (executor == null) {
+		executor = created;
+		ISiteWhereTenantEngine engine = SiteWhere.getServer().getTenantEngine(tenantId);
+		if (engine != null) {
+		    engine.addStopHook(new Runnable() {
+
+			@Override
+			public void run() {
+			    EXECUTORS.remove(tenantId, created);
+			    created.shutdown();
+			}
+		    });
+		}
+	    } else {
+		created.shutdown();
+	    }
+	}
+	return executor;
+    }
+
+    /**
+     * Submit an operation. The security context of the calling thread is
+     * carried over so that auditing fields are populated for the current user.
+     * 
+     * @param operation
+     * @return
+     * @throws ServerBusyException
+     */
+    public <T> DeferredResult<T> submit(final Callable<T> operation) throws ServerBusyException {
+	final DeferredResult<T> result = new DeferredResult<T>(getTimeout());
+	final AtomicBoolean claimed = new AtomicBoolean();
+	final Future<?> future;
+	try {
+	    future = executor.submit(new DelegatingSecurityContextRunnable(new Runnable() {
+
+		@Override
+		public void run() {
+		    if (!claimed.compareAndSet(false, true)) {
+			return;
+		    }
+		    try {
+			result.setResult(operation.call());
+		    } catch (Throwable t) {
+			result.setErrorResult(t);
+		    }
+		}
+	    }));
+	} catch (RejectedExecutionException e) {
+	    throw new ServerBusyException("Server is too busy to accept the request.", getRetryAfterSeconds());
+	}
+	result.onTimeout(new Runnable() {
+
+	    @Override
+	    public void run() {
+		result.setErrorResult(getTimeoutError(claimed, future));
+	    }
+	});
+	return result;
+    }
+
+    /**
+     * Get the error reported for an operation that timed out. The operation
+     * and the timeout race to claim it, so an operation that has not started
+     * never runs and can safely be retried. One that is running is not
+     * interrupted, since that would not undo work already done.
+     * 
+     * @param claimed
+     * @param future
+     * @return
+     */
+    protected SiteWhereException getTimeoutError(AtomicBoolean claimed, Future<?> future) {
+	if (claimed.compareAndSet(false, true)) {
+	    future.cancel(false);
+	    return new ServerBusyException("Request was not started within " + getTimeout() + "ms.",
+		    getRetryAfterSeconds());
+	}
+	return new OperationTimeoutException("Request did not complete in " + getTimeout()
+		+ "ms. The operation is still running and may complete.");
+    }
+
+    /**
+     * Stop accepting operations and interrupt running ones.
+     */
+    public void shutdown() {
+	executor.shutdownNow();
+    }
+
+    /**
+     * Get number of operations waiting for a thread.
+     * 
+     * @return
+     */
+    public int getQueuedCount() {
+	return executor.getQueue().size();
+    }
+
+    public long getTimeout() {
+	return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+	this.timeout = timeout;
+    }
+
+    public int getRetryAfterSeconds() {
+	return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(int retryAfterSeconds) {
+	this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /** Used for naming REST operation threads */
+    private class RestThreadFactory implements ThreadFactory {
+
+	/** Tenant id used in thread names */
+	private String name;
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public RestThreadFactory(String name) {
+	    this.name = name;
+	}
+
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, "SiteWhere REST(" + name + ") " + counter.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+}
@@ -43,6 +43,7 @@ import com.sitewhere.SiteWhere;
 import com.sitewhere.Tracer;
 import com.sitewhere.core.DataUtils;
 import com.sitewhere.device.charting.ChartBuilder;
+import com.sitewhere.device.charting.SamplingMethod;
 import com.sitewhere.device.communication.symbology.DefaultEntityUriProvider;
 import com.sitewhere.device.marshaling.DeviceAssignmentMarshalHelper;
 import com.sitewhere.device.marshaling.DeviceCommandInvocationMarshalHelper;
@@ -67,6 +68,7 @@ import com.sitewhere.rest.model.device.request.DeviceStreamCreateRequest;
 import com.sitewhere.rest.model.device.streaming.DeviceStream;
 import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
 import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.rest.model.search.device.MeasurementRollupSearchCriteria;
 import com.sitewhere.server.scheduling.ScheduledJobHelper;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
@@ -75,15 +77,20 @@ import com.sitewhere.spi.device.DeviceAssignmentType;
 import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.charting.IChartSeries;
+import com.sitewhere.spi.device.charting.ISampledChartSeries;
 import com.sitewhere.spi.device.command.IDeviceCommand;
+import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
 import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
 import com.sitewhere.spi.device.event.IDeviceStreamData;
+import com.sitewhere.spi.device.event.IMeasurementRollup;
 import com.sitewhere.spi.device.streaming.IDeviceStream;
 import com.sitewhere.spi.device.symbology.IEntityUriProvider;
 import com.sitewhere.spi.device.symbology.ISymbolGenerator;
@@ -95,6 +102,8 @@ import com.sitewhere.spi.scheduling.request.IScheduledJobCreateRequest;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.debug.TracerCategory;
 import com.sitewhere.spi.user.SiteWhereRoles;
+import com.sitewhere.web.rest.DeviceEventStreamWriter;
+import com.sitewhere.web.rest.EntityTags;
 import com.sitewhere.web.rest.RestController;
 import com.sitewhere.web.rest.annotations.Concerns;
 import com.sitewhere.web.rest.annotations.Concerns.ConcernType;
@@ -123,6 +132,9 @@ public class AssignmentsController extends RestController {
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Number of rollups read per page when sampling */
+    private static final int ROLLUP_PAGE_SIZE = 5000;
+
     /**
      * Used by AJAX calls to create a device assignment.
      * 
@@ -182,7 +194,7 @@ public class AssignmentsController extends RestController {
 	    @Example(stage = Stage.Response, json = Assignments.CreateAssociatedResponse.class, description = "getDeviceAssignmentResponse.md") })
     public DeviceAssignment getDeviceAssignment(
 	    @ApiParam(value = "Assignment token", required = true) @PathVariable String token,
-	    HttpServletRequest servletRequest) throws SiteWhereException {
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "getDeviceAssignment", LOGGER);
 	try {
 	    IDeviceAssignment assignment = assureAssignment(token, servletRequest);
@@ -190,7 +202,12 @@ public class AssignmentsController extends RestController {
 	    helper.setIncludeAsset(true);
 	    helper.setIncludeDevice(true);
 	    helper.setIncludeSite(true);
-	    return helper.convert(assignment, SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest)));
+	    DeviceAssignment result = helper.convert(assignment,
+		    SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest)));
+	    if (checkNotModified(EntityTags.forBody(result), servletRequest, response)) {
+		return null;
+	    }
+	    return result;
 	} finally {
 	    Tracer.stop(LOGGER);
 	}
@@ -296,6 +313,46 @@ public class AssignmentsController extends RestController {
 	}
     }
 
+    /**
+     * Stream events for a device assignment. Events are read from a cursor and
+     * written to the response as they are loaded rather than being collected
+     * into a single result list.
+     * 
+     * @param token
+     * @param type
+     * @param format
+     * @param startDate
+     * @param endDate
+     * @param servletRequest
+     * @param response
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/{token}/events/stream", method = RequestMethod.GET)
+    @ApiOperation(value = "Stream events for device assignment")
+    @Secured({ SiteWhereRoles.REST })
+    public void streamEvents(@ApiParam(value = "Assignment token", required = true) @PathVariable String token,
+	    @ApiParam(value = "Event type (all types if not specified)", required = false) @RequestParam(required = false) DeviceEventType type,
+	    @ApiParam(value = "Output format (json or ndjson)", required = false) @RequestParam(required = false, defaultValue = "json") String format,
+	    @ApiParam(value = "Start date", required = false) @RequestParam(required = false) String startDate,
+	    @ApiParam(value = "End date", required = false) @RequestParam(required = false) String endDate,
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
+	Tracer.start(TracerCategory.RestApiCall, "streamEvents", LOGGER);
+	try {
+	    Date parsedStartDate = parseDateOrSendBadResponse(startDate, response);
+	    Date parsedEndDate = parseDateOrSendBadResponse(endDate, response);
+	    if (response.isCommitted()) {
+		return;
+	    }
+	    DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(1, 0, parsedStartDate, parsedEndDate);
+	    IDeviceEventIterator events = SiteWhere.getServer().getDeviceEventManagement(getTenant(servletRequest))
+		    .iterateDeviceEvents(token, type, criteria);
+	    new DeviceEventStreamWriter(DeviceEventStreamWriter.Format.fromParameter(format), null).write(events,
+		    response);
+	} finally {
+	    Tracer.stop(LOGGER);
+	}
+    }
+
     /**
      * List all device measurements for a given assignment.
      * 
@@ -394,6 +451,121 @@ public class AssignmentsController extends RestController {
 	}
     }
 
+    /**
+     * List device measurements for a given assignment as chart series reduced
+     * to a maximum number of points per series. All measurements or rollups in
+     * the date range are read. Each series keeps up to maxRecords raw values;
+     * beyond that, values are summarized into time buckets covering the whole
+     * range before sampling.
+     * 
+     * @param token
+     * @param maxPoints
+     * @param maxRecords
+     * @param method
+     * @param rollupWindow
+     * @param startDate
+     * @param endDate
+     * @param measurementIds
+     * @param servletRequest
+     * @param response
+     * @return
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/{token}/measurements/series/sampled", method = RequestMethod.GET)
+    @ResponseBody
+    @ApiOperation(value = "List assignment measurements as downsampled chart series")
+    @Secured({ SiteWhereRoles.REST })
+    @Documented
+    public List<ISampledChartSeries> listMeasurementsAsSampledChartSeries(
+	    @ApiParam(value = "Assignment token", required = true) @PathVariable String token,
+	    @ApiParam(value = "Maximum points per series", required = false) @RequestParam(required = false, defaultValue = "500") int maxPoints,
+	    @ApiParam(value = "Maximum raw values per series before bucketing", required = false) @RequestParam(required = false, defaultValue = "10000") int maxRecords,
+	    @ApiParam(value = "Sampling method (lttb or buckets)", required = false) @RequestParam(required = false, defaultValue = "lttb") String method,
+	    @ApiParam(value = "Use rollups for window size (seconds)", required = false) @RequestParam(required = false) Long rollupWindow,
+	    @ApiParam(value = "Start date", required = false) @RequestParam(required = false) String startDate,
+	    @ApiParam(value = "End date", required = false) @RequestParam(required = false) String endDate,
+	    @ApiParam(value = "Measurement Ids", required = false) @RequestParam(required = false) String[] measurementIds,
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
+	Tracer.start(TracerCategory.RestApiCall, "listMeasurementsAsSampledChartSeries", LOGGER);
+	try {
+	    Date parsedStartDate = parseDateOrSendBadResponse(startDate, response);
+	    Date parsedEndDate = parseDateOrSendBadResponse(endDate, response);
+	    int maxRaw = Math.max(maxRecords, 2);
+	    ChartBuilder builder = new ChartBuilder();
+	    IDeviceEventManagement events = SiteWhere.getServer().getDeviceEventManagement(getTenant(servletRequest));
+	    if (rollupWindow != null) {
+		int page = 1;
+		while (true) {
+		    MeasurementRollupSearchCriteria rollupCriteria = new MeasurementRollupSearchCriteria(page,
+			    ROLLUP_PAGE_SIZE, parsedStartDate, parsedEndDate);
+		    rollupCriteria.setWindowSize(rollupWindow);
+		    if ((measurementIds != null) && (measurementIds.length == 1)) {
+			rollupCriteria.setMeasurementName(measurementIds[0]);
+		    }
+		    List<IMeasurementRollup> rollups = events.listMeasurementRollups(token, rollupCriteria).getResults();
+		    builder.addRollups(rollups, measurementIds, maxRaw);
+		    if (rollups.size() < ROLLUP_PAGE_SIZE) {
+			break;
+		    }
+		    page++;
+		}
+		return builder.sampleAccumulated(maxPoints, SamplingMethod.fromName(method));
+	    }
+	    DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(1, 0, parsedStartDate, parsedEndDate);
+	    return builder.processSampled(events.iterateDeviceEvents(token, DeviceEventType.Measurements, criteria),
+		    measurementIds, maxPoints, maxRaw, SamplingMethod.fromName(method));
+	} finally {
+	    Tracer.stop(LOGGER);
+	}
+    }
+
+    /**
+     * List measurement rollups computed by windowed aggregation for a given
+     * assignment.
+     * 
+     * @param token
+     * @param measurementName
+     * @param windowSize
+     * @param page
+     * @param pageSize
+     * @param startDate
+     * @param endDate
+     * @param servletRequest
+     * @param response
+     * @return
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/{token}/measurements/rollups", method = RequestMethod.GET)
+    @ResponseBody
+    @ApiOperation(value = "List measurement rollups for device assignment")
+    @Secured({ SiteWhereRoles.REST })
+    @Documented
+    public ISearchResults<IMeasurementRollup> listMeasurementRollups(
+	    @ApiParam(value = "Assignment token", required = true) @PathVariable String token,
+	    @ApiParam(value = "Measurement name", required = false) @RequestParam(required = false) String measurementName,
+	    @ApiParam(value = "Window size (seconds)", required = false) @RequestParam(required = false) Long windowSize,
+	    @ApiParam(value = "Page number", required = false) @RequestParam(required = false, defaultValue = "1") @Concerns(values = {
+		    ConcernType.Paging }) int page,
+	    @ApiParam(value = "Page size", required = false) @RequestParam(required = false, defaultValue = "100") @Concerns(values = {
+		    ConcernType.Paging }) int pageSize,
+	    @ApiParam(value = "Start date", required = false) @RequestParam(required = false) String startDate,
+	    @ApiParam(value = "End date", required = false) @RequestParam(required = false) String endDate,
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
+	Tracer.start(TracerCategory.RestApiCall, "listMeasurementRollups", LOGGER);
+	try {
+	    Date parsedStartDate = parseDateOrSendBadResponse(startDate, response);
+	    Date parsedEndDate = parseDateOrSendBadResponse(endDate, response);
+	    MeasurementRollupSearchCriteria criteria = new MeasurementRollupSearchCriteria(page, pageSize,
+		    parsedStartDate, parsedEndDate);
+	    criteria.setMeasurementName(measurementName);
+	    criteria.setWindowSize(windowSize);
+	    return SiteWhere.getServer().getDeviceEventManagement(getTenant(servletRequest))
+		    .listMeasurementRollups(token, criteria);
+	} finally {
+	    Tracer.stop(LOGGER);
+	}
+    }
+
     /**
      * Create measurements to be associated with a device assignment.
      * 
@@ -476,7 +648,7 @@ public class AssignmentsController extends RestController {
 	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "pushLatestLocationToState", LOGGER);
 	try {
-	    IDeviceAssignment assignment = getDeviceAssignment(token, servletRequest);
+	    IDeviceAssignment assignment = assureAssignment(token, servletRequest);
 	    DeviceAssignmentState state = (DeviceAssignmentState) assignment.getState();
 	    ISearchResults<IDeviceLocation> locations = listLocations(token, 1, 1, null, null, servletRequest,
 		    response);
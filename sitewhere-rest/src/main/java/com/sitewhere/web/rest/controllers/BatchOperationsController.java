@@ -10,6 +10,7 @@ package com.sitewhere.web.rest.controllers;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -24,6 +25,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.sitewhere.SiteWhere;
 import com.sitewhere.Tracer;
@@ -46,8 +48,10 @@ import com.sitewhere.spi.scheduling.IScheduledJob;
 import com.sitewhere.spi.scheduling.request.IScheduledJobCreateRequest;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.debug.TracerCategory;
+import com.sitewhere.spi.tenant.ITenant;
 import com.sitewhere.spi.user.SiteWhereRoles;
 import com.sitewhere.web.rest.RestController;
+import com.sitewhere.web.rest.TenantRestExecutor;
 import com.sitewhere.web.rest.annotations.Concerns;
 import com.sitewhere.web.rest.annotations.Concerns.ConcernType;
 import com.sitewhere.web.rest.annotations.Documented;
@@ -155,13 +159,21 @@ public class BatchOperationsController extends RestController {
     @Documented(examples = {
 	    @Example(stage = Stage.Request, json = BatchOperations.BatchCommandInvocationCreateRequest.class, description = "createBatchCommandInvocationRequest.md"),
 	    @Example(stage = Stage.Response, json = BatchOperations.GetBatchOperationResponse.class, description = "createBatchCommandInvocationResponse.md") })
-    public IBatchOperation createBatchCommandInvocation(@RequestBody BatchCommandInvocationRequest request,
-	    HttpServletRequest servletRequest) throws SiteWhereException {
+    public DeferredResult<IBatchOperation> createBatchCommandInvocation(
+	    @RequestBody final BatchCommandInvocationRequest request, HttpServletRequest servletRequest)
+	    throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "createBatchCommandInvocation", LOGGER);
 	try {
-	    IBatchOperation result = SiteWhere.getServer().getDeviceManagement(getTenant(servletRequest))
-		    .createBatchCommandInvocation(request);
-	    return BatchOperation.copy(result);
+	    final ITenant tenant = getTenant(servletRequest);
+	    return TenantRestExecutor.getInstance(tenant).submit(new Callable<IBatchOperation>() {
+
+		@Override
+		public IBatchOperation call() throws Exception {
+		    IBatchOperation result = SiteWhere.getServer().getDeviceManagement(tenant)
+			    .createBatchCommandInvocation(request);
+		    return BatchOperation.copy(result);
+		}
+	    });
 	} finally {
 	    Tracer.stop(LOGGER);
 	}
@@ -185,23 +197,31 @@ public class BatchOperationsController extends RestController {
 	    @Example(stage = Stage.Request, json = BatchOperations.BatchCommandInvocationByCriteriaGroupRequest.class, description = "createBatchCommandByCriteriaGroupRequest.md"),
 	    @Example(stage = Stage.Request, json = BatchOperations.BatchCommandInvocationByCriteriaGroupRoleRequest.class, description = "createBatchCommandByCriteriaGroupRoleRequest.md"),
 	    @Example(stage = Stage.Response, json = BatchOperations.GetBatchOperationResponse.class, description = "createBatchCommandByCriteriaResponse.md") })
-    public IBatchOperation createBatchCommandByCriteria(@RequestBody BatchCommandForCriteriaRequest request,
-	    HttpServletRequest servletRequest) throws SiteWhereException {
+    public DeferredResult<IBatchOperation> createBatchCommandByCriteria(
+	    @RequestBody final BatchCommandForCriteriaRequest request, HttpServletRequest servletRequest)
+	    throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "createBatchCommandByCriteria", LOGGER);
 	try {
-	    // Resolve hardware ids for devices matching criteria.
-	    List<String> hardwareIds = BatchUtils.getHardwareIds(request, getTenant(servletRequest));
+	    final ITenant tenant = getTenant(servletRequest);
+	    return TenantRestExecutor.getInstance(tenant).submit(new Callable<IBatchOperation>() {
+
+		@Override
+		public IBatchOperation call() throws Exception {
+		    // Resolve hardware ids for devices matching criteria.
+		    List<String> hardwareIds = BatchUtils.getHardwareIds(request, tenant);
 
-	    // Create batch command invocation.
-	    BatchCommandInvocationRequest invoke = new BatchCommandInvocationRequest();
-	    invoke.setToken(request.getToken());
-	    invoke.setCommandToken(request.getCommandToken());
-	    invoke.setParameterValues(request.getParameterValues());
-	    invoke.setHardwareIds(hardwareIds);
+		    // Create batch command invocation.
+		    BatchCommandInvocationRequest invoke = new BatchCommandInvocationRequest();
+		    invoke.setToken(request.getToken());
+		    invoke.setCommandToken(request.getCommandToken());
+		    invoke.setParameterValues(request.getParameterValues());
+		    invoke.setHardwareIds(hardwareIds);
 
-	    IBatchOperation result = SiteWhere.getServer().getDeviceManagement(getTenant(servletRequest))
-		    .createBatchCommandInvocation(invoke);
-	    return BatchOperation.copy(result);
+		    IBatchOperation result = SiteWhere.getServer().getDeviceManagement(tenant)
+			    .createBatchCommandInvocation(invoke);
+		    return BatchOperation.copy(result);
+		}
+	    });
 	} finally {
 	    Tracer.stop(LOGGER);
 	}
@@ -9,6 +9,7 @@ package com.sitewhere.web.rest.controllers;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -23,6 +24,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.sitewhere.SiteWhere;
 import com.sitewhere.Tracer;
@@ -34,6 +36,7 @@ import com.sitewhere.rest.model.search.SearchCriteria;
 import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.asset.IAssetModuleManager;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.group.IDeviceGroup;
 import com.sitewhere.spi.device.group.IDeviceGroupElement;
@@ -42,8 +45,10 @@ import com.sitewhere.spi.error.ErrorCode;
 import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.debug.TracerCategory;
+import com.sitewhere.spi.tenant.ITenant;
 import com.sitewhere.spi.user.SiteWhereRoles;
 import com.sitewhere.web.rest.RestController;
+import com.sitewhere.web.rest.TenantRestExecutor;
 import com.sitewhere.web.rest.annotations.Concerns;
 import com.sitewhere.web.rest.annotations.Concerns.ConcernType;
 import com.sitewhere.web.rest.annotations.Documented;
@@ -241,9 +246,9 @@ public class DeviceGroupsController extends RestController {
     @Secured({ SiteWhereRoles.REST })
     @Documented(examples = {
 	    @Example(stage = Stage.Response, json = DeviceGroups.ListDeviceGroupElementsResponse.class, description = "listDeviceGroupElementsResponse.md") })
-    public ISearchResults<IDeviceGroupElement> listDeviceGroupElements(
-	    @ApiParam(value = "Unique token that identifies device group", required = true) @PathVariable String groupToken,
-	    @ApiParam(value = "Include detailed element information", required = false) @RequestParam(defaultValue = "false") boolean includeDetails,
+    public DeferredResult<ISearchResults<IDeviceGroupElement>> listDeviceGroupElements(
+	    @ApiParam(value = "Unique token that identifies device group", required = true) @PathVariable final String groupToken,
+	    @ApiParam(value = "Include detailed element information", required = false) @RequestParam(defaultValue = "false") final boolean includeDetails,
 	    @ApiParam(value = "Page number", required = false) @RequestParam(required = false, defaultValue = "1") @Concerns(values = {
 		    ConcernType.Paging }) int page,
 	    @ApiParam(value = "Page size", required = false) @RequestParam(required = false, defaultValue = "100") @Concerns(values = {
@@ -251,17 +256,24 @@ public class DeviceGroupsController extends RestController {
 	    HttpServletRequest servletRequest) throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "listDeviceGroupElements", LOGGER);
 	try {
-	    DeviceGroupElementMarshalHelper helper = new DeviceGroupElementMarshalHelper(getTenant(servletRequest))
-		    .setIncludeDetails(includeDetails);
-	    SearchCriteria criteria = new SearchCriteria(page, pageSize);
-	    ISearchResults<IDeviceGroupElement> results = SiteWhere.getServer()
-		    .getDeviceManagement(getTenant(servletRequest)).listDeviceGroupElements(groupToken, criteria);
-	    List<IDeviceGroupElement> elmConv = new ArrayList<IDeviceGroupElement>();
-	    for (IDeviceGroupElement elm : results.getResults()) {
-		elmConv.add(
-			helper.convert(elm, SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	    }
-	    return new SearchResults<IDeviceGroupElement>(elmConv, results.getNumResults());
+	    final ITenant tenant = getTenant(servletRequest);
+	    final SearchCriteria criteria = new SearchCriteria(page, pageSize);
+	    return TenantRestExecutor.getInstance(tenant).submit(new Callable<ISearchResults<IDeviceGroupElement>>() {
+
+		@Override
+		public ISearchResults<IDeviceGroupElement> call() throws Exception {
+		    DeviceGroupElementMarshalHelper helper = new DeviceGroupElementMarshalHelper(tenant)
+			    .setIncludeDetails(includeDetails);
+		    ISearchResults<IDeviceGroupElement> results = SiteWhere.getServer().getDeviceManagement(tenant)
+			    .listDeviceGroupElements(groupToken, criteria);
+		    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(tenant);
+		    List<IDeviceGroupElement> elmConv = new ArrayList<IDeviceGroupElement>();
+		    for (IDeviceGroupElement elm : results.getResults()) {
+			elmConv.add(helper.convert(elm, assets));
+		    }
+		    return new SearchResults<IDeviceGroupElement>(elmConv, results.getNumResults());
+		}
+	    });
 	} finally {
 	    Tracer.stop(LOGGER);
 	}
@@ -283,28 +295,35 @@ public class DeviceGroupsController extends RestController {
     @Documented(examples = {
 	    @Example(stage = Stage.Request, json = DeviceGroups.AddGroupElementsRequest.class, description = "addDeviceGroupElementsRequest.md"),
 	    @Example(stage = Stage.Response, json = DeviceGroups.ListDeviceGroupElementsResponse.class, description = "addDeviceGroupElementsResponse.md") })
-    public ISearchResults<IDeviceGroupElement> addDeviceGroupElements(
-	    @ApiParam(value = "Unique token that identifies device group", required = true) @PathVariable String groupToken,
-	    @RequestBody List<DeviceGroupElementCreateRequest> request, HttpServletRequest servletRequest)
+    public DeferredResult<ISearchResults<IDeviceGroupElement>> addDeviceGroupElements(
+	    @ApiParam(value = "Unique token that identifies device group", required = true) @PathVariable final String groupToken,
+	    @RequestBody final List<DeviceGroupElementCreateRequest> request, HttpServletRequest servletRequest)
 	    throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "addDeviceGroupElements", LOGGER);
 	try {
-	    IDeviceManagement devices = SiteWhere.getServer().getDeviceManagement(getTenant(servletRequest));
+	    final ITenant tenant = getTenant(servletRequest);
+	    return TenantRestExecutor.getInstance(tenant).submit(new Callable<ISearchResults<IDeviceGroupElement>>() {
 
-	    DeviceGroupElementMarshalHelper helper = new DeviceGroupElementMarshalHelper(getTenant(servletRequest))
-		    .setIncludeDetails(false);
-	    List<IDeviceGroupElementCreateRequest> elements = (List<IDeviceGroupElementCreateRequest>) (List<? extends IDeviceGroupElementCreateRequest>) request;
+		@Override
+		public ISearchResults<IDeviceGroupElement> call() throws Exception {
+		    IDeviceManagement devices = SiteWhere.getServer().getDeviceManagement(tenant);
 
-	    // Validate the list of new elements.
-	    validateDeviceGroupElements(request, devices);
+		    DeviceGroupElementMarshalHelper helper = new DeviceGroupElementMarshalHelper(tenant)
+			    .setIncludeDetails(false);
+		    List<IDeviceGroupElementCreateRequest> elements = (List<IDeviceGroupElementCreateRequest>) (List<? extends IDeviceGroupElementCreateRequest>) request;
 
-	    List<IDeviceGroupElement> results = devices.addDeviceGroupElements(groupToken, elements, true);
-	    List<IDeviceGroupElement> converted = new ArrayList<IDeviceGroupElement>();
-	    for (IDeviceGroupElement elm : results) {
-		converted.add(
-			helper.convert(elm, SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	    }
-	    return new SearchResults<IDeviceGroupElement>(converted);
+		    // Validate the list of new elements.
+		    validateDeviceGroupElements(request, devices);
+
+		    List<IDeviceGroupElement> results = devices.addDeviceGroupElements(groupToken, elements, true);
+		    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(tenant);
+		    List<IDeviceGroupElement> converted = new ArrayList<IDeviceGroupElement>();
+		    for (IDeviceGroupElement elm : results) {
+			converted.add(helper.convert(elm, assets));
+		    }
+		    return new SearchResults<IDeviceGroupElement>(converted);
+		}
+	    });
 	} finally {
 	    Tracer.stop(LOGGER);
 	}
@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,6 +32,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.sitewhere.SiteWhere;
 import com.sitewhere.Tracer;
@@ -43,18 +45,22 @@ import com.sitewhere.rest.model.device.event.DeviceEventBatch;
 import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
 import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
 import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceRegistrationRequest;
 import com.sitewhere.rest.model.device.request.DeviceCreateRequest;
 import com.sitewhere.rest.model.search.SearchCriteria;
 import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.rest.model.search.device.DeviceSearchCriteria;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.asset.IAssetModuleManager;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.communication.IDeviceRegistrationResult;
 import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
 import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
 import com.sitewhere.spi.device.symbology.IEntityUriProvider;
 import com.sitewhere.spi.device.symbology.ISymbolGenerator;
 import com.sitewhere.spi.device.symbology.ISymbolGeneratorManager;
@@ -63,8 +69,10 @@ import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.search.device.IDeviceSearchCriteria;
 import com.sitewhere.spi.server.debug.TracerCategory;
+import com.sitewhere.spi.tenant.ITenant;
 import com.sitewhere.spi.user.SiteWhereRoles;
 import com.sitewhere.web.rest.RestController;
+import com.sitewhere.web.rest.TenantRestExecutor;
 import com.sitewhere.web.rest.annotations.Concerns;
 import com.sitewhere.web.rest.annotations.Concerns.ConcernType;
 import com.sitewhere.web.rest.annotations.Documented;
@@ -118,6 +126,44 @@ public class DevicesController extends RestController {
 	}
     }
 
+    /**
+     * Provision many devices at once using the same path as devices that
+     * register themselves. Devices are created and assigned in bulk and one
+     * result is returned per hardware id.
+     * 
+     * @param requests
+     * @param acknowledge
+     * @param servletRequest
+     * @return
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/registrations", method = RequestMethod.POST)
+    @ResponseBody
+    @ApiOperation(value = "Register devices in bulk")
+    @Secured({ SiteWhereRoles.REST })
+    @Documented
+    public DeferredResult<List<IDeviceRegistrationResult>> registerDevices(
+	    @RequestBody final List<DeviceRegistrationRequest> requests,
+	    @ApiParam(value = "Send registration responses to devices", required = false) @RequestParam(required = false, defaultValue = "false") final boolean acknowledge,
+	    HttpServletRequest servletRequest) throws SiteWhereException {
+	Tracer.start(TracerCategory.RestApiCall, "registerDevices", LOGGER);
+	try {
+	    final ITenant tenant = getTenant(servletRequest);
+	    return TenantRestExecutor.getInstance(tenant).submit(new Callable<List<IDeviceRegistrationResult>>() {
+
+		@Override
+		public List<IDeviceRegistrationResult> call() throws Exception {
+		    List<IDeviceRegistrationRequest> registrations = new ArrayList<IDeviceRegistrationRequest>(
+			    requests);
+		    return SiteWhere.getServer().getDeviceCommunication(tenant).getRegistrationManager()
+			    .handleDeviceRegistrations(registrations, acknowledge);
+		}
+	    });
+	} finally {
+	    Tracer.stop(LOGGER);
+	}
+    }
+
     /**
      * Used by AJAX calls to find a device by hardware id.
      * 
@@ -283,11 +329,9 @@ public class DevicesController extends RestController {
 	    helper.setIncludeAsset(includeAsset);
 	    helper.setIncludeDevice(includeDevice);
 	    helper.setIncludeSite(includeSite);
-	    List<IDeviceAssignment> converted = new ArrayList<IDeviceAssignment>();
-	    for (IDeviceAssignment assignment : history.getResults()) {
-		converted.add(helper.convert(assignment,
-			SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	    }
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    List<IDeviceAssignment> converted = new ArrayList<IDeviceAssignment>(
+		    helper.convert(history.getResults(), assets));
 	    return new SearchResults<IDeviceAssignment>(converted, history.getNumResults());
 	} finally {
 	    Tracer.stop(LOGGER);
@@ -418,11 +462,8 @@ public class DevicesController extends RestController {
 	    helper.setIncludeAsset(true);
 	    helper.setIncludeSpecification(includeSpecification);
 	    helper.setIncludeAssignment(includeAssignment);
-	    List<IDevice> devicesConv = new ArrayList<IDevice>();
-	    for (IDevice device : results.getResults()) {
-		devicesConv.add(
-			helper.convert(device, SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	    }
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    List<IDevice> devicesConv = new ArrayList<IDevice>(helper.convert(results.getResults(), assets));
 	    return new SearchResults<IDevice>(devicesConv, results.getNumResults());
 	} finally {
 	    Tracer.stop(LOGGER);
@@ -460,11 +501,8 @@ public class DevicesController extends RestController {
 	    helper.setIncludeAsset(true);
 	    helper.setIncludeSpecification(includeSpecification);
 	    helper.setIncludeAssignment(includeAssignment);
-	    List<IDevice> devicesConv = new ArrayList<IDevice>();
-	    for (IDevice device : results.getResults()) {
-		devicesConv.add(
-			helper.convert(device, SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	    }
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    List<IDevice> devicesConv = new ArrayList<IDevice>(helper.convert(results.getResults(), assets));
 	    return new SearchResults<IDevice>(devicesConv, results.getNumResults());
 	} finally {
 	    Tracer.stop(LOGGER);
@@ -501,11 +539,8 @@ public class DevicesController extends RestController {
 	    helper.setIncludeAsset(true);
 	    helper.setIncludeSpecification(includeSpecification);
 	    helper.setIncludeAssignment(includeAssignment);
-	    List<IDevice> devicesConv = new ArrayList<IDevice>();
-	    for (IDevice device : matches) {
-		devicesConv.add(
-			helper.convert(device, SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	    }
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    List<IDevice> devicesConv = new ArrayList<IDevice>(helper.convert(matches, assets));
 	    return new SearchResults<IDevice>(devicesConv, matches.size());
 	} finally {
 	    Tracer.stop(LOGGER);
@@ -543,11 +578,8 @@ public class DevicesController extends RestController {
 	    helper.setIncludeAsset(true);
 	    helper.setIncludeSpecification(includeSpecification);
 	    helper.setIncludeAssignment(includeAssignment);
-	    List<IDevice> devicesConv = new ArrayList<IDevice>();
-	    for (IDevice device : matches) {
-		devicesConv.add(
-			helper.convert(device, SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	    }
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    List<IDevice> devicesConv = new ArrayList<IDevice>(helper.convert(matches, assets));
 	    return new SearchResults<IDevice>(devicesConv, matches.size());
 	} finally {
 	    Tracer.stop(LOGGER);
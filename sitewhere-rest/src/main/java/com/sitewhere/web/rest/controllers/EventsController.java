@@ -7,6 +7,10 @@
  */
 package com.sitewhere.web.rest.controllers;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.logging.log4j.LogManager;
@@ -18,16 +22,22 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.sitewhere.SiteWhere;
 import com.sitewhere.Tracer;
+import com.sitewhere.device.event.processor.subscription.EventSubscription;
+import com.sitewhere.device.event.processor.subscription.EventSubscriptionManager;
 import com.sitewhere.rest.model.device.event.request.DeviceEventCreateRequest;
 import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.server.debug.TracerCategory;
 import com.sitewhere.spi.user.SiteWhereRoles;
 import com.sitewhere.web.rest.RestController;
+import com.sitewhere.web.rest.SseEventSubscriptionSink;
 import com.sitewhere.web.rest.annotations.Documented;
 import com.sitewhere.web.rest.annotations.DocumentedController;
 import com.sitewhere.web.rest.annotations.Example;
@@ -52,6 +62,12 @@ public class EventsController extends RestController {
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Time before an event stream is closed and the client must reconnect */
+    private static final long STREAM_TIMEOUT_MS = 30 * 60 * 1000;
+
+    /** Largest buffer a subscriber may request */
+    private static final int MAX_BUFFER_SIZE = 10000;
+
     /**
      * Used by AJAX calls to find an event by unique id.
      * 
@@ -77,6 +93,53 @@ public class EventsController extends RestController {
 	}
     }
 
+    /**
+     * Subscribe to events as they are processed. Events are pushed to the
+     * client as Server-Sent Events named by event type. Requires an event
+     * subscription processor in the tenant outbound processing chain.
+     * 
+     * @param siteToken
+     * @param assignmentToken
+     * @param types
+     * @param bufferSize
+     * @param servletRequest
+     * @return
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/stream", method = RequestMethod.GET, produces = "text/event-stream")
+    @ApiOperation(value = "Subscribe to live events")
+    @Secured({ SiteWhereRoles.REST })
+    public SseEmitter subscribeToEvents(
+	    @ApiParam(value = "Only events for site", required = false) @RequestParam(required = false) String siteToken,
+	    @ApiParam(value = "Only events for assignment", required = false) @RequestParam(required = false) String assignmentToken,
+	    @ApiParam(value = "Only events of given types", required = false) @RequestParam(value = "type", required = false) List<DeviceEventType> types,
+	    @ApiParam(value = "Events buffered before coalescing", required = false) @RequestParam(required = false, defaultValue = "1000") int bufferSize,
+	    HttpServletRequest servletRequest) throws SiteWhereException {
+	Tracer.start(TracerCategory.RestApiCall, "subscribeToEvents", LOGGER);
+	try {
+	    if ((bufferSize <= 0) || (bufferSize > MAX_BUFFER_SIZE)) {
+		throw new SiteWhereException("Buffer size must be between 1 and " + MAX_BUFFER_SIZE + ".");
+	    }
+	    Set<DeviceEventType> eventTypes = (types != null) ? new HashSet<DeviceEventType>(types) : null;
+	    SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+	    final EventSubscriptionManager manager = EventSubscriptionManager.getInstance(getTenant(servletRequest));
+	    final EventSubscription subscription = manager.subscribe(siteToken, assignmentToken, eventTypes,
+		    bufferSize, new SseEventSubscriptionSink(emitter));
+	    Runnable unsubscribe = new Runnable() {
+
+		@Override
+		public void run() {
+		    manager.unsubscribe(subscription);
+		}
+	    };
+	    emitter.onCompletion(unsubscribe);
+	    emitter.onTimeout(unsubscribe);
+	    return emitter;
+	} finally {
+	    Tracer.stop(LOGGER);
+	}
+    }
+
     /**
      * Update information for an existing device event.
      * 
@@ -9,6 +9,7 @@ package com.sitewhere.web.rest.controllers;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -23,6 +24,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.sitewhere.SiteWhere;
@@ -36,8 +38,10 @@ import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.search.external.IDeviceEventSearchProvider;
 import com.sitewhere.spi.search.external.ISearchProvider;
 import com.sitewhere.spi.server.debug.TracerCategory;
+import com.sitewhere.spi.tenant.ITenant;
 import com.sitewhere.spi.user.SiteWhereRoles;
 import com.sitewhere.web.rest.RestController;
+import com.sitewhere.web.rest.TenantRestExecutor;
 import com.sitewhere.web.rest.annotations.Documented;
 import com.sitewhere.web.rest.annotations.DocumentedController;
 import com.sitewhere.web.rest.annotations.Example;
@@ -97,22 +101,21 @@ public class SearchController extends RestController {
     @ResponseBody
     @ApiOperation(value = "Search for events in provider")
     @Secured({ SiteWhereRoles.REST })
-    public List<IDeviceEvent> searchDeviceEvents(
+    public DeferredResult<List<IDeviceEvent>> searchDeviceEvents(
 	    @ApiParam(value = "Search provider id", required = true) @PathVariable String providerId,
 	    HttpServletRequest request, HttpServletRequest servletRequest) throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "searchDeviceEvents", LOGGER);
 	try {
-	    ISearchProvider provider = SiteWhere.getServer().getSearchProviderManager(getTenant(servletRequest))
-		    .getSearchProvider(providerId);
-	    if (provider == null) {
-		throw new SiteWhereSystemException(ErrorCode.InvalidSearchProviderId, ErrorLevel.ERROR,
-			HttpServletResponse.SC_NOT_FOUND);
-	    }
-	    if (!(provider instanceof IDeviceEventSearchProvider)) {
-		throw new SiteWhereException("Search provider does not provide event search capability.");
-	    }
-	    String query = request.getQueryString();
-	    return ((IDeviceEventSearchProvider) provider).executeQuery(query);
+	    ITenant tenant = getTenant(servletRequest);
+	    final IDeviceEventSearchProvider provider = assureEventSearchProvider(providerId, tenant);
+	    final String query = request.getQueryString();
+	    return TenantRestExecutor.getInstance(tenant).submit(new Callable<List<IDeviceEvent>>() {
+
+		@Override
+		public List<IDeviceEvent> call() throws Exception {
+		    return provider.executeQuery(query);
+		}
+	    });
 	} finally {
 	    Tracer.stop(LOGGER);
 	}
@@ -131,22 +134,44 @@ public class SearchController extends RestController {
     @ResponseBody
     @ApiOperation(value = "Execute search and return raw results")
     @Secured({ SiteWhereRoles.REST })
-    public JsonNode rawSearch(@ApiParam(value = "Search provider id", required = true) @PathVariable String providerId,
-	    @RequestBody String query, HttpServletRequest servletRequest) throws SiteWhereException {
+    public DeferredResult<JsonNode> rawSearch(
+	    @ApiParam(value = "Search provider id", required = true) @PathVariable String providerId,
+	    @RequestBody final String query, HttpServletRequest servletRequest) throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "searchDeviceEvents", LOGGER);
 	try {
-	    ISearchProvider provider = SiteWhere.getServer().getSearchProviderManager(getTenant(servletRequest))
-		    .getSearchProvider(providerId);
-	    if (provider == null) {
-		throw new SiteWhereSystemException(ErrorCode.InvalidSearchProviderId, ErrorLevel.ERROR,
-			HttpServletResponse.SC_NOT_FOUND);
-	    }
-	    if (!(provider instanceof IDeviceEventSearchProvider)) {
-		throw new SiteWhereException("Search provider does not provide event search capability.");
-	    }
-	    return ((IDeviceEventSearchProvider) provider).executeQueryWithRawResponse(query);
+	    ITenant tenant = getTenant(servletRequest);
+	    final IDeviceEventSearchProvider provider = assureEventSearchProvider(providerId, tenant);
+	    return TenantRestExecutor.getInstance(tenant).submit(new Callable<JsonNode>() {
+
+		@Override
+		public JsonNode call() throws Exception {
+		    return provider.executeQueryWithRawResponse(query);
+		}
+	    });
 	} finally {
 	    Tracer.stop(LOGGER);
 	}
     }
+
+    /**
+     * Get a search provider that supports event search. Throw an exception if
+     * not found.
+     * 
+     * @param providerId
+     * @param tenant
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IDeviceEventSearchProvider assureEventSearchProvider(String providerId, ITenant tenant)
+	    throws SiteWhereException {
+	ISearchProvider provider = SiteWhere.getServer().getSearchProviderManager(tenant).getSearchProvider(providerId);
+	if (provider == null) {
+	    throw new SiteWhereSystemException(ErrorCode.InvalidSearchProviderId, ErrorLevel.ERROR,
+		    HttpServletResponse.SC_NOT_FOUND);
+	}
+	if (!(provider instanceof IDeviceEventSearchProvider)) {
+	    throw new SiteWhereException("Search provider does not provide event search capability.");
+	}
+	return (IDeviceEventSearchProvider) provider;
+    }
 }
\ No newline at end of file
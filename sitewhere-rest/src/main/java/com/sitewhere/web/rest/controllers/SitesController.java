@@ -12,6 +12,7 @@ import java.util.Date;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -52,9 +53,11 @@ import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.IZone;
+import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEventIterator;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
@@ -63,6 +66,8 @@ import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.debug.TracerCategory;
 import com.sitewhere.spi.user.SiteWhereRoles;
+import com.sitewhere.web.rest.DeviceEventStreamWriter;
+import com.sitewhere.web.rest.EntityTags;
 import com.sitewhere.web.rest.RestController;
 import com.sitewhere.web.rest.annotations.Concerns;
 import com.sitewhere.web.rest.annotations.Concerns.ConcernType;
@@ -131,13 +136,16 @@ public class SitesController extends RestController {
 	    @Example(stage = Stage.Response, json = Sites.CreateSiteResponse.class, description = "getSiteByTokenResponse.md") })
     public Site getSiteByToken(
 	    @ApiParam(value = "Unique token that identifies site", required = true) @PathVariable String siteToken,
-	    HttpServletRequest servletRequest) throws SiteWhereException {
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "getSiteByToken", LOGGER);
 	try {
 	    ISite site = SiteWhere.getServer().getDeviceManagement(getTenant(servletRequest)).getSiteByToken(siteToken);
 	    if (site == null) {
 		throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
 	    }
+	    if (checkNotModified(EntityTags.forSite(site), servletRequest, response)) {
+		return null;
+	    }
 	    return Site.copy(site);
 	} finally {
 	    Tracer.stop(LOGGER);
@@ -218,12 +226,17 @@ public class SitesController extends RestController {
 		    ConcernType.Paging }) int page,
 	    @ApiParam(value = "Page size", required = false) @RequestParam(required = false, defaultValue = "100") @Concerns(values = {
 		    ConcernType.Paging }) int pageSize,
-	    HttpServletRequest servletRequest) throws SiteWhereException {
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "listSites", LOGGER);
 	try {
 	    SearchCriteria criteria = new SearchCriteria(page, pageSize);
 	    ISearchResults<ISite> matches = SiteWhere.getServer().getDeviceManagement(getTenant(servletRequest))
 		    .listSites(criteria);
+	    // Assignments and zones change without updating the site.
+	    boolean cacheable = (!includeAssignments) && (!includeZones);
+	    if ((cacheable) && (checkNotModified(EntityTags.forSites(matches), servletRequest, response))) {
+		return null;
+	    }
 	    SiteMarshalHelper helper = new SiteMarshalHelper(getTenant(servletRequest));
 	    helper.setIncludeZones(includeZones);
 	    helper.setIncludeAssignements(includeAssignments);
@@ -487,6 +500,45 @@ public class SitesController extends RestController {
 	}
     }
 
+    /**
+     * Stream events of a given type for a site. Events are read from a cursor
+     * and written to the response as they are loaded rather than being
+     * collected into a single result list.
+     * 
+     * @param siteToken
+     * @param type
+     * @param format
+     * @param startDate
+     * @param endDate
+     * @param servletRequest
+     * @param response
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/{siteToken}/events/stream", method = RequestMethod.GET)
+    @ApiOperation(value = "Stream events of a given type for site")
+    @Secured({ SiteWhereRoles.REST })
+    public void streamDeviceEventsForSite(
+	    @ApiParam(value = "Unique token that identifies site", required = true) @PathVariable String siteToken,
+	    @ApiParam(value = "Event type", required = true) @RequestParam(required = true) DeviceEventType type,
+	    @ApiParam(value = "Output format (json or ndjson)", required = false) @RequestParam(required = false, defaultValue = "json") String format,
+	    @ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+	    @ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
+	Tracer.start(TracerCategory.RestApiCall, "streamDeviceEventsForSite", LOGGER);
+	try {
+	    DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(1, 0, startDate, endDate);
+	    IDeviceEventIterator events = SiteWhere.getServer().getDeviceEventManagement(getTenant(servletRequest))
+		    .iterateDeviceEventsForSite(siteToken, type, criteria);
+
+	    // Marshal with asset info since multiple assignments might match.
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    new DeviceEventStreamWriter(DeviceEventStreamWriter.Format.fromParameter(format), assets).write(events,
+		    response);
+	} finally {
+	    Tracer.stop(LOGGER);
+	}
+    }
+
     /**
      * Find device assignments associated with a site.
      * 
@@ -524,11 +576,8 @@ public class SitesController extends RestController {
 	    helper.setIncludeAsset(includeAsset);
 	    helper.setIncludeDevice(includeDevice);
 	    helper.setIncludeSite(includeSite);
-	    List<DeviceAssignment> converted = new ArrayList<DeviceAssignment>();
-	    for (IDeviceAssignment assignment : matches.getResults()) {
-		converted.add(helper.convert(assignment,
-			SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	    }
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    List<DeviceAssignment> converted = helper.convert(matches.getResults(), assets);
 	    return new SearchResults<DeviceAssignment>(converted, matches.getNumResults());
 	} finally {
 	    Tracer.stop(LOGGER);
@@ -556,11 +605,8 @@ public class SitesController extends RestController {
 		    .getDeviceAssignmentsWithLastInteraction(siteToken, criteria);
 	    DeviceAssignmentMarshalHelper helper = new DeviceAssignmentMarshalHelper(getTenant(servletRequest));
 	    helper.setIncludeAsset(false);
-	    List<DeviceAssignment> converted = new ArrayList<DeviceAssignment>();
-	    for (IDeviceAssignment assignment : matches.getResults()) {
-		converted.add(helper.convert(assignment,
-			SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	    }
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    List<DeviceAssignment> converted = helper.convert(matches.getResults(), assets);
 	    return new SearchResults<DeviceAssignment>(converted, matches.getNumResults());
 	} finally {
 	    Tracer.stop(LOGGER);
@@ -595,11 +641,8 @@ public class SitesController extends RestController {
 		    .getDeviceManagement(getTenant(servletRequest)).getMissingDeviceAssignments(siteToken, criteria);
 	    DeviceAssignmentMarshalHelper helper = new DeviceAssignmentMarshalHelper(getTenant(servletRequest));
 	    helper.setIncludeAsset(false);
-	    List<DeviceAssignment> converted = new ArrayList<DeviceAssignment>();
-	    for (IDeviceAssignment assignment : matches.getResults()) {
-		converted.add(helper.convert(assignment,
-			SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	    }
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    List<DeviceAssignment> converted = helper.convert(matches.getResults(), assets);
 	    return new SearchResults<DeviceAssignment>(converted, matches.getNumResults());
 	} finally {
 	    Tracer.stop(LOGGER);
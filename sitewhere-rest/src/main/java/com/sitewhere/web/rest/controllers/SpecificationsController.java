@@ -44,6 +44,7 @@ import com.sitewhere.rest.model.search.device.DeviceSearchCriteria;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.asset.IAsset;
+import com.sitewhere.spi.asset.IAssetModuleManager;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceSpecification;
@@ -55,6 +56,7 @@ import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.debug.TracerCategory;
 import com.sitewhere.spi.tenant.ITenant;
 import com.sitewhere.spi.user.SiteWhereRoles;
+import com.sitewhere.web.rest.EntityTags;
 import com.sitewhere.web.rest.RestController;
 import com.sitewhere.web.rest.annotations.Concerns;
 import com.sitewhere.web.rest.annotations.Concerns.ConcernType;
@@ -130,13 +132,17 @@ public class SpecificationsController extends RestController {
     public IDeviceSpecification getDeviceSpecificationByToken(
 	    @ApiParam(value = "Token", required = true) @PathVariable String token,
 	    @ApiParam(value = "Include detailed asset information", required = false) @RequestParam(defaultValue = "true") boolean includeAsset,
-	    HttpServletRequest servletRequest) throws SiteWhereException {
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "getDeviceSpecificationByToken", LOGGER);
 	try {
 	    IDeviceSpecification result = assertDeviceSpecificationByToken(token, servletRequest);
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    if (checkNotModified(EntityTags.forSpecification(result, assets), servletRequest, response)) {
+		return null;
+	    }
 	    DeviceSpecificationMarshalHelper helper = new DeviceSpecificationMarshalHelper(getTenant(servletRequest));
 	    helper.setIncludeAsset(includeAsset);
-	    return helper.convert(result, SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest)));
+	    return helper.convert(result, assets);
 	} finally {
 	    Tracer.stop(LOGGER);
 	}
@@ -249,18 +255,21 @@ public class SpecificationsController extends RestController {
 		    ConcernType.Paging }) int page,
 	    @ApiParam(value = "Page size", required = false) @RequestParam(required = false, defaultValue = "100") @Concerns(values = {
 		    ConcernType.Paging }) int pageSize,
-	    HttpServletRequest servletRequest) throws SiteWhereException {
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
 	Tracer.start(TracerCategory.RestApiCall, "listDeviceSpecifications", LOGGER);
 	try {
 	    SearchCriteria criteria = new SearchCriteria(page, pageSize);
 	    ISearchResults<IDeviceSpecification> results = SiteWhere.getServer()
 		    .getDeviceManagement(getTenant(servletRequest)).listDeviceSpecifications(includeDeleted, criteria);
+	    IAssetModuleManager assets = SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest));
+	    if (checkNotModified(EntityTags.forSpecifications(results, assets), servletRequest, response)) {
+		return null;
+	    }
 	    DeviceSpecificationMarshalHelper helper = new DeviceSpecificationMarshalHelper(getTenant(servletRequest));
 	    helper.setIncludeAsset(includeAsset);
 	    List<IDeviceSpecification> specsConv = new ArrayList<IDeviceSpecification>();
 	    for (IDeviceSpecification device : results.getResults()) {
-		specsConv.add(
-			helper.convert(device, SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
+		specsConv.add(helper.convert(device, assets));
 	    }
 	    Collections.sort(specsConv, new Comparator<IDeviceSpecification>() {
 		public int compare(IDeviceSpecification o1, IDeviceSpecification o2) {
@@ -7,7 +7,9 @@
  */
 package com.sitewhere.web.rest.documentation;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.sitewhere.device.DeviceManagementDecorator;
@@ -76,6 +78,24 @@ public class MockDeviceManagement extends DeviceManagementDecorator {
 	return sites.get(token);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#getSitesByTokens(java.
+     * util.List)
+     */
+    @Override
+    public List<ISite> getSitesByTokens(List<String> tokens) throws SiteWhereException {
+	List<ISite> results = new ArrayList<ISite>();
+	for (String token : tokens) {
+	    ISite site = sites.get(token);
+	    if (site != null) {
+		results.add(site);
+	    }
+	}
+	return results;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -87,6 +107,24 @@ public class MockDeviceManagement extends DeviceManagementDecorator {
 	return specifications.get(token);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#getDeviceSpecificationsByTokens(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceSpecification> getDeviceSpecificationsByTokens(List<String> tokens) throws SiteWhereException {
+	List<IDeviceSpecification> results = new ArrayList<IDeviceSpecification>();
+	for (String token : tokens) {
+	    IDeviceSpecification specification = specifications.get(token);
+	    if (specification != null) {
+		results.add(specification);
+	    }
+	}
+	return results;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -99,6 +137,25 @@ public class MockDeviceManagement extends DeviceManagementDecorator {
 	return devices.get(hardwareId);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#getDevicesByHardwareIds(
+     * java.util.List)
+     */
+    @Override
+    public List<IDevice> getDevicesByHardwareIds(List<String> hardwareIds) throws SiteWhereException {
+	List<IDevice> results = new ArrayList<IDevice>();
+	for (String hardwareId : hardwareIds) {
+	    IDevice device = devices.get(hardwareId);
+	    if (device != null) {
+		results.add(device);
+	    }
+	}
+	return results;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -111,6 +168,24 @@ public class MockDeviceManagement extends DeviceManagementDecorator {
 	return assignments.get(token);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.sitewhere.device.DeviceManagementDecorator#getDeviceAssignmentsByTokens(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceAssignment> getDeviceAssignmentsByTokens(List<String> tokens) throws SiteWhereException {
+	List<IDeviceAssignment> results = new ArrayList<IDeviceAssignment>();
+	for (String token : tokens) {
+	    IDeviceAssignment assignment = assignments.get(token);
+	    if (assignment != null) {
+		results.add(assignment);
+	    }
+	}
+	return results;
+    }
+
     /*
      * (non-Javadoc)
      * 
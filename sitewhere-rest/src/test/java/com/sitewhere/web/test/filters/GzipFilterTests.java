@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.test.filters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.rest.model.device.Site;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.web.filters.FilterServletOutputStream;
+import com.sitewhere.web.filters.GzipFilter;
+import com.sitewhere.web.filters.GzipResponseWrapper;
+import com.sitewhere.web.test.Benchmarks;
+import com.sitewhere.web.test.Benchmarks.Benchmark;
+
+/**
+ * Tests compression of REST responses with {@link GzipResponseWrapper} and
+ * measures its bandwidth and CPU cost.
+ * 
+ * @author Derek
+ */
+public class GzipFilterTests {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Skips benchmarks unless enabled */
+    @Rule
+    public Benchmarks benchmarks = new Benchmarks();
+
+    /** Number of timed compressions */
+    private static final int ITERATIONS = 200;
+
+    @Test
+    public void testLargeBodyCompressed() throws Exception {
+	byte[] body = createSiteList(100);
+	CapturedResponse captured = new CapturedResponse("application/json;charset=UTF-8");
+	writeThroughWrapper(captured, body);
+
+	assertEquals("gzip", captured.headers.get("Content-Encoding"));
+	assertEquals("Accept-Encoding", captured.headers.get("Vary"));
+	assertArrayEquals(body, gunzip(captured.output.toByteArray()));
+
+	int compressed = captured.output.size();
+	LOGGER.info("Site list: " + body.length + " bytes raw, " + compressed + " bytes gzip ("
+		+ (100 * compressed / body.length) + "%).");
+	assertTrue(compressed * 4 < body.length);
+    }
+
+    @Test
+    public void testSmallBodyNotCompressed() throws Exception {
+	byte[] body = createSiteList(1);
+	assertTrue(body.length < GzipFilter.DEFAULT_THRESHOLD);
+	CapturedResponse captured = new CapturedResponse("application/json;charset=UTF-8");
+	writeThroughWrapper(captured, body);
+
+	assertNull(captured.headers.get("Content-Encoding"));
+	assertEquals(String.valueOf(body.length), captured.headers.get("Content-Length"));
+	assertArrayEquals(body, captured.output.toByteArray());
+    }
+
+    @Test
+    public void testBinaryBodyNotCompressed() throws Exception {
+	byte[] body = createSiteList(100);
+	CapturedResponse captured = new CapturedResponse("application/octet-stream");
+	writeThroughWrapper(captured, body);
+
+	assertNull(captured.headers.get("Content-Encoding"));
+	assertArrayEquals(body, captured.output.toByteArray());
+    }
+
+    @Test
+    public void testEventStreamPassedThroughOnFlush() throws Exception {
+	byte[] event = "event:Alert\ndata:{}\n\n".getBytes();
+	CapturedResponse captured = new CapturedResponse("text/event-stream;charset=UTF-8");
+	GzipResponseWrapper wrapper = new GzipResponseWrapper(captured.proxy, GzipFilter.DEFAULT_THRESHOLD);
+	wrapper.getOutputStream().write(event);
+	wrapper.getOutputStream().flush();
+
+	assertNull(captured.headers.get("Content-Encoding"));
+	assertArrayEquals(event, captured.output.toByteArray());
+	wrapper.finish();
+    }
+
+    @Test
+    @Benchmark
+    public void benchmarkCompressionCpuCost() throws Exception {
+	byte[] body = createSiteList(100);
+	ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	// Warm up before timing.
+	for (int i = 0; i < ITERATIONS; i++) {
+	    writeThroughWrapper(new CapturedResponse("application/json"), body);
+	}
+	long start = threads.getCurrentThreadCpuTime();
+	long compressed = 0;
+	for (int i = 0; i < ITERATIONS; i++) {
+	    CapturedResponse captured = new CapturedResponse("application/json");
+	    writeThroughWrapper(captured, body);
+	    compressed += captured.output.size();
+	}
+	long cpu = threads.getCurrentThreadCpuTime() - start;
+	long perCall = cpu / ITERATIONS;
+	long saved = (((long) body.length) * ITERATIONS) - compressed;
+	LOGGER.info("Gzip of " + body.length + " bytes: " + (perCall / 1000) + " us CPU per response, "
+		+ (saved / ITERATIONS) + " bytes saved per response.");
+	assertTrue(saved > 0);
+    }
+
+    /**
+     * Write a body through the wrapper the way a message converter would.
+     * 
+     * @param captured
+     * @param body
+     * @throws IOException
+     */
+    protected void writeThroughWrapper(CapturedResponse captured, byte[] body) throws IOException {
+	GzipResponseWrapper wrapper = new GzipResponseWrapper(captured.proxy, GzipFilter.DEFAULT_THRESHOLD);
+	wrapper.setContentLength(body.length);
+	for (int i = 0; i < body.length; i += 512) {
+	    wrapper.getOutputStream().write(body, i, Math.min(512, body.length - i));
+	}
+	wrapper.getOutputStream().flush();
+	wrapper.finish();
+    }
+
+    /**
+     * Create JSON for a page of sites similar to a dashboard listing.
+     * 
+     * @param count
+     * @return
+     * @throws Exception
+     */
+    protected byte[] createSiteList(int count) throws Exception {
+	List<ISite> sites = new ArrayList<ISite>();
+	for (int i = 0; i < count; i++) {
+	    Site site = new Site();
+	    site.setToken("site-" + i + "-bb105f8d-3150-41f5-b9d1-db04965668d3");
+	    site.setName("Construction Site " + i);
+	    site.setDescription("A construction site with many high-value assets that should be tracked.");
+	    site.setImageUrl("https://s3.amazonaws.com/sitewhere-demo/construction/construction.jpg");
+	    site.setCreatedDate(new Date(1400000000000L + i));
+	    site.setCreatedBy("admin");
+	    site.addOrReplaceMetadata("city", "Atlanta");
+	    site.addOrReplaceMetadata("zipCode", "30303");
+	    sites.add(site);
+	}
+	return MarshalUtils.MAPPER.writeValueAsBytes(new SearchResults<ISite>(sites));
+    }
+
+    /**
+     * Decompress gzip data.
+     * 
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    protected static byte[] gunzip(byte[] data) throws IOException {
+	GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	byte[] chunk = new byte[4096];
+	int read;
+	while ((read = in.read(chunk)) != -1) {
+	    out.write(chunk, 0, read);
+	}
+	return out.toByteArray();
+    }
+
+    /**
+     * Captures what is written to a proxied servlet response.
+     */
+    private static class CapturedResponse implements InvocationHandler {
+
+	/** Response headers */
+	private Map<String, String> headers = new HashMap<String, String>();
+
+	/** Response body */
+	private ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+	/** Content type */
+	private String contentType;
+
+	/** Proxy for servlet response */
+	private HttpServletResponse proxy;
+
+	public CapturedResponse(String contentType) {
+	    this.contentType = contentType;
+	    this.proxy = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+		    new Class<?>[] { HttpServletResponse.class }, this);
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	    String name = method.getName();
+	    if (name.equals("getOutputStream")) {
+		return new FilterServletOutputStream(output);
+	    } else if (name.equals("getContentType")) {
+		return contentType;
+	    } else if (name.equals("getStatus")) {
+		return HttpServletResponse.SC_OK;
+	    } else if (name.equals("getCharacterEncoding")) {
+		return "UTF-8";
+	    } else if (name.equals("containsHeader")) {
+		return headers.containsKey(args[0]);
+	    } else if ((name.equals("setHeader")) || (name.equals("addHeader"))) {
+		headers.put((String) args[0], (String) args[1]);
+	    } else if (name.equals("setContentLength")) {
+		headers.put("Content-Length", String.valueOf(args[0]));
+	    }
+	    return null;
+	}
+    }
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.test.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sitewhere.rest.model.asset.HardwareAsset;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.DeviceAssignmentState;
+import com.sitewhere.rest.model.device.DeviceSpecification;
+import com.sitewhere.rest.model.device.Site;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.server.asset.AssetModuleManager;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.asset.IAsset;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.web.rest.EntityTags;
+
+/**
+ * Tests that {@link EntityTags} only change when entity state changes.
+ * 
+ * @author Derek
+ */
+public class EntityTagsTests {
+
+    @Test
+    public void testSiteTag() throws Exception {
+	Site site = createSite("a");
+	String tag = EntityTags.forSite(site);
+	assertTrue(tag.startsWith("W/\""));
+	assertEquals(tag, EntityTags.forSite(createSite("a")));
+	assertNotEquals(tag, EntityTags.forSite(createSite("b")));
+
+	site.setUpdatedDate(new Date(2000L));
+	assertNotEquals(tag, EntityTags.forSite(site));
+    }
+
+    @Test
+    public void testSiteListTag() throws Exception {
+	List<ISite> sites = new ArrayList<ISite>();
+	sites.add(createSite("a"));
+	sites.add(createSite("b"));
+	String tag = EntityTags.forSites(new SearchResults<ISite>(sites, 2));
+	assertEquals(tag, EntityTags.forSites(new SearchResults<ISite>(new ArrayList<ISite>(sites), 2)));
+	assertNotEquals(tag, EntityTags.forSites(new SearchResults<ISite>(sites, 3)));
+
+	sites.remove(1);
+	assertNotEquals(tag, EntityTags.forSites(new SearchResults<ISite>(sites, 2)));
+    }
+
+    @Test
+    public void testSpecificationAssetChangesTag() throws Exception {
+	final HardwareAsset asset = new HardwareAsset();
+	asset.setId("asset");
+	asset.setName("Sensor");
+	AssetModuleManager manager = new AssetModuleManager() {
+
+	    @Override
+	    public IAsset getAssetById(String assetModuleId, String id) throws SiteWhereException {
+		return asset;
+	    }
+	};
+	DeviceSpecification specification = new DeviceSpecification();
+	specification.setToken("spec");
+	specification.setCreatedDate(new Date(1000L));
+	String tag = EntityTags.forSpecification(specification, manager);
+	assertEquals(tag, EntityTags.forSpecification(specification, manager));
+
+	asset.setName("Renamed");
+	String renamed = EntityTags.forSpecification(specification, manager);
+	assertNotEquals(tag, renamed);
+
+	asset.setDescription("Updated");
+	assertNotEquals(renamed, EntityTags.forSpecification(specification, manager));
+    }
+
+    @Test
+    public void testAssignmentStateChangesBodyTag() throws Exception {
+	DeviceAssignment assignment = createAssignment();
+	String tag = EntityTags.forBody(assignment);
+	assertTrue(tag.startsWith("W/\""));
+	assertEquals(tag, EntityTags.forBody(createAssignment()));
+
+	// State changes without touching the assignment modification date.
+	assignment.getState().setLastInteractionDate(new Date(3000L));
+	String interacted = EntityTags.forBody(assignment);
+	assertNotEquals(tag, interacted);
+
+	assignment.setSite(createSite("b"));
+	assertNotEquals(interacted, EntityTags.forBody(assignment));
+    }
+
+    protected DeviceAssignment createAssignment() {
+	DeviceAssignment assignment = new DeviceAssignment();
+	assignment.setToken("assignment");
+	assignment.setCreatedDate(new Date(1000L));
+	assignment.setState(new DeviceAssignmentState());
+	assignment.setSite(createSite("a"));
+	return assignment;
+    }
+
+    protected Site createSite(String token) {
+	Site site = new Site();
+	site.setToken(token);
+	site.setCreatedDate(new Date(1000L));
+	return site;
+    }
+}
\ No newline at end of file
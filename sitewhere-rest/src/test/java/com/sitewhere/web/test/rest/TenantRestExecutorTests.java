@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.test.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.web.rest.OperationTimeoutException;
+import com.sitewhere.web.rest.ServerBusyException;
+import com.sitewhere.web.rest.TenantRestExecutor;
+
+/**
+ * Tests that {@link TenantRestExecutor} delivers results, rejects work when
+ * saturated and only invites a retry for operations that never started.
+ * 
+ * @author Derek
+ */
+public class TenantRestExecutorTests {
+
+    @Test
+    public void testResultDelivered() throws Exception {
+	TenantRestExecutor executor = new TenantRestExecutor("test", 1, 1);
+	try {
+	    DeferredResult<String> result = executor.submit(new Callable<String>() {
+
+		@Override
+		public String call() throws Exception {
+		    return "done";
+		}
+	    });
+	    waitForResult(result);
+	    assertEquals("done", result.getResult());
+	} finally {
+	    executor.shutdown();
+	}
+    }
+
+    @Test
+    public void testErrorDelivered() throws Exception {
+	TenantRestExecutor executor = new TenantRestExecutor("test", 1, 1);
+	try {
+	    DeferredResult<String> result = executor.submit(new Callable<String>() {
+
+		@Override
+		public String call() throws Exception {
+		    throw new IllegalStateException("failed");
+		}
+	    });
+	    waitForResult(result);
+	    assertTrue(result.getResult() instanceof IllegalStateException);
+	} finally {
+	    executor.shutdown();
+	}
+    }
+
+    @Test
+    public void testRejectedWhenSaturated() throws Exception {
+	TenantRestExecutor executor = new TenantRestExecutor("test", 1, 1);
+	executor.setRetryAfterSeconds(7);
+	final CountDownLatch started = new CountDownLatch(1);
+	final CountDownLatch release = new CountDownLatch(1);
+	Callable<String> blocking = new Callable<String>() {
+
+	    @Override
+	    public String call() throws Exception {
+		started.countDown();
+		release.await();
+		return "done";
+	    }
+	};
+	try {
+	    executor.submit(blocking);
+	    assertTrue(started.await(5, TimeUnit.SECONDS));
+	    executor.submit(blocking);
+	    assertEquals(1, executor.getQueuedCount());
+	    try {
+		executor.submit(blocking);
+		fail("Expected saturated executor to reject operation.");
+	    } catch (ServerBusyException e) {
+		assertEquals(7, e.getRetryAfterSeconds());
+	    }
+	} finally {
+	    release.countDown();
+	    executor.shutdown();
+	}
+    }
+
+    @Test
+    public void testTimeoutBeforeStartIsRetryable() throws Exception {
+	TestExecutor executor = new TestExecutor();
+	try {
+	    FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+
+		@Override
+		public String call() throws Exception {
+		    return "done";
+		}
+	    });
+	    AtomicBoolean claimed = new AtomicBoolean();
+	    SiteWhereException error = executor.timeoutError(claimed, future);
+	    assertTrue(error instanceof ServerBusyException);
+	    assertTrue(claimed.get());
+	    assertTrue(future.isCancelled());
+	} finally {
+	    executor.shutdown();
+	}
+    }
+
+    @Test
+    public void testTimeoutWhileRunningIsNotRetryable() throws Exception {
+	TestExecutor executor = new TestExecutor();
+	try {
+	    FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+
+		@Override
+		public String call() throws Exception {
+		    return "done";
+		}
+	    });
+	    SiteWhereException error = executor.timeoutError(new AtomicBoolean(true), future);
+	    assertTrue(error instanceof OperationTimeoutException);
+	    assertTrue(!future.isCancelled());
+	} finally {
+	    executor.shutdown();
+	}
+    }
+
+    /**
+     * Wait for a deferred result to be set.
+     * 
+     * @param result
+     * @throws InterruptedException
+     */
+    protected void waitForResult(DeferredResult<?> result) throws InterruptedException {
+	long deadline = System.currentTimeMillis() + 5000;
+	while (!result.hasResult() && (System.currentTimeMillis() < deadline)) {
+	    Thread.sleep(10);
+	}
+	assertTrue(result.hasResult());
+    }
+
+    /**
+     * Exposes timeout handling for tests.
+     * 
+     * @author Derek
+     */
+    private static class TestExecutor extends TenantRestExecutor {
+
+	public TestExecutor() {
+	    super("test", 1, 1);
+	}
+
+	/**
+	 * Get the error reported for a timed out operation.
+	 * 
+	 * @param claimed
+	 * @param future
+	 * @return
+	 */
+	SiteWhereException timeoutError(AtomicBoolean claimed, Future<?> future) {
+	    return getTimeoutError(claimed, future);
+	}
+    }
+}
\ No newline at end of file
@@ -2,7 +2,10 @@ package com.sitewhere.spi.server.groovy;
 
 import com.sitewhere.spi.server.lifecycle.ITenantLifecycleComponent;
 
+import groovy.lang.Binding;
 import groovy.util.GroovyScriptEngine;
+import groovy.util.ResourceException;
+import groovy.util.ScriptException;
 
 /**
  * Supports access to a common Groovy configuration for tenant components.
@@ -17,4 +20,21 @@ public interface ITenantGroovyConfiguration extends ITenantLifecycleComponent {
      * @return
      */
     public GroovyScriptEngine getGroovyScriptEngine();
+
+    /**
+     * Run a script using a cached compiled class. A new script instance is
+     * created for each run.
+     * 
+     * @param scriptPath
+     * @param binding
+     * @return
+     * @throws ResourceException
+     * @throws ScriptException
+     */
+    public Object run(String scriptPath, Binding binding) throws ResourceException, ScriptException;
+
+    /**
+     * Discard all cached scripts so they are reloaded on next use.
+     */
+    public void invalidateScripts();
 }
\ No newline at end of file
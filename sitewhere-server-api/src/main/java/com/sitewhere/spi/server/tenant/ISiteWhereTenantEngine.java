@@ -178,4 +178,12 @@ public interface ISiteWhereTenantEngine extends ITenantLifecycleComponent, ILife
      * @throws SiteWhereException
      */
     public ICommandResponse issueCommand(String command, ILifecycleProgressMonitor monitor) throws SiteWhereException;
+
+    /**
+     * Add a hook that is run once when the tenant engine is stopped. Used to
+     * release resources created for the tenant outside of its configuration.
+     * 
+     * @param hook
+     */
+    public void addStopHook(Runnable hook);
 }
\ No newline at end of file
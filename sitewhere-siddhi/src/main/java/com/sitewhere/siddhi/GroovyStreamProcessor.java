@@ -74,8 +74,7 @@ public class GroovyStreamProcessor extends StreamCallback implements ITenantAwar
 		binding.setVariable(VAR_ACTIONS, actions);
 		binding.setVariable(VAR_LOGGER, LOGGER);
 		try {
-		    SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).getGroovyScriptEngine()
-			    .run(getScriptPath(), binding);
+		    SiteWhere.getServer().getTenantGroovyConfiguration(getTenant()).run(getScriptPath(), binding);
 		} catch (ResourceException e) {
 		    LOGGER.error("Unable to access Groovy decoder script.", e);
 		} catch (ScriptException e) {
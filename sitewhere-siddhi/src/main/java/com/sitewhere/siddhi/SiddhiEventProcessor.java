@@ -9,6 +9,15 @@ package com.sitewhere.siddhi;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -29,6 +38,14 @@ import com.sitewhere.spi.server.tenant.ITenantAware;
  * Implementation of {@link IOutboundEventProcessor} that injects events into
  * Siddhi for complex event processing.
  * 
+ * Events may be accumulated and sent to each stream in batches. If processing
+ * threads are configured, events are handed to worker threads chosen by
+ * assignment token, so events for an assignment stay in order while queries
+ * for different assignments run in parallel. If assignment partitioning is
+ * enabled, a partition named {@value #ASSIGNMENT_PARTITION} is defined over
+ * the assignment attribute of each stream so that queries declared with
+ * "partition by AssignmentPartition" keep separate state per assignment.
+ * 
  * @author Derek
  */
 public class SiddhiEventProcessor extends FilteredOutboundEventProcessor {
@@ -51,6 +68,22 @@ public class SiddhiEventProcessor extends FilteredOutboundEventProcessor {
 	    + "id string, site string, assignment string, assetmodule string, asset string, eventdate long,"
 	    + "source string, level string, type string, message string);";
 
+    /** Name of partition defined on assignment token */
+    public static final String ASSIGNMENT_PARTITION = "AssignmentPartition";
+
+    /** Defines the assignment partition */
+    private static String DEFINE_ASSIGNMENT_PARTITION = "define partition " + ASSIGNMENT_PARTITION
+	    + " by MeasurementStream.assignment, LocationStream.assignment, AlertStream.assignment;";
+
+    /** Index of measurement stream */
+    private static final int MEASUREMENT_STREAM = 0;
+
+    /** Index of location stream */
+    private static final int LOCATION_STREAM = 1;
+
+    /** Index of alert stream */
+    private static final int ALERT_STREAM = 2;
+
     /** Siddhi manager */
     private SiddhiManager manager;
 
@@ -66,6 +99,33 @@ public class SiddhiEventProcessor extends FilteredOutboundEventProcessor {
     /** List of queries that are registered with Siddhi */
     private List<SiddhiQuery> queries = new ArrayList<SiddhiQuery>();
 
+    /** Number of events sent to a stream at once (1 disables batching) */
+    private int batchSize = 1;
+
+    /** Interval in milliseconds at which partial batches are sent */
+    private long batchFlushInterval = 100;
+
+    /** Number of worker threads (0 sends on the outbound processing thread) */
+    private int processingThreads = 0;
+
+    /** Number of events queued for each worker before callers block */
+    private int maxQueuedEvents = 10000;
+
+    /** Indicates if the assignment partition is defined */
+    private boolean partitionByAssignment = false;
+
+    /** Batchers used when sending on the outbound processing thread */
+    private StreamBatcher[] batchers;
+
+    /** Sends partial batches */
+    private ScheduledExecutorService flusher;
+
+    /** Workers that send events to Siddhi */
+    private Worker[] workers;
+
+    /** Executor running workers */
+    private ExecutorService workerExecutor;
+
     /*
      * (non-Javadoc)
      * 
@@ -80,7 +140,117 @@ public class SiddhiEventProcessor extends FilteredOutboundEventProcessor {
 
 	manager = new SiddhiManager();
 	createStreams();
+	if (partitionByAssignment) {
+	    getManager().definePartition(DEFINE_ASSIGNMENT_PARTITION);
+	}
 	registerQueries();
+
+	this.batchers = null;
+	this.workers = null;
+	if (processingThreads > 0) {
+	    this.workers = new Worker[processingThreads];
+	    this.workerExecutor = Executors.newFixedThreadPool(processingThreads, new WorkerThreadFactory());
+	    for (int i = 0; i < processingThreads; i++) {
+		workers[i] = new Worker(createBatchers());
+		workerExecutor.execute(workers[i]);
+	    }
+	} else if (batchSize > 1) {
+	    this.batchers = createBatchers();
+	    this.flusher = Executors.newSingleThreadScheduledExecutor(new FlusherThreadFactory());
+	    flusher.scheduleWithFixedDelay(new Runnable() {
+
+		@Override
+		public void run() {
+		    flush(batchers);
+		}
+	    }, batchFlushInterval, batchFlushInterval, TimeUnit.MILLISECONDS);
+	}
+	LOGGER.info("Started Siddhi processor with batch size " + batchSize + " and " + processingThreads
+		+ " processing threads.");
+    }
+
+    /**
+     * Create a batcher for each stream. Returns null if batching is disabled.
+     * 
+     * @return
+     */
+    protected StreamBatcher[] createBatchers() {
+	if (batchSize <= 1) {
+	    return null;
+	}
+	StreamBatcher[] created = new StreamBatcher[3];
+	created[MEASUREMENT_STREAM] = new StreamBatcher(getMxInputHandler(), batchSize);
+	created[LOCATION_STREAM] = new StreamBatcher(getLocationInputHandler(), batchSize);
+	created[ALERT_STREAM] = new StreamBatcher(getAlertInputHandler(), batchSize);
+	return created;
+    }
+
+    /**
+     * Send any partially filled batches.
+     * 
+     * @param streamBatchers
+     */
+    protected void flush(StreamBatcher[] streamBatchers) {
+	if (streamBatchers == null) {
+	    return;
+	}
+	try {
+	    for (StreamBatcher batcher : streamBatchers) {
+		batcher.flush();
+	    }
+	} catch (InterruptedException e) {
+	    LOGGER.warn("Interrupted while sending batched events to Siddhi.");
+	} catch (Throwable t) {
+	    LOGGER.error("Unable to send batched events to Siddhi.", t);
+	}
+    }
+
+    /**
+     * Send data to a stream. Data is queued to the worker for the assignment
+     * if workers are enabled, otherwise it is sent (or batched) on the calling
+     * thread.
+     * 
+     * @param stream
+     * @param assignment
+     * @param data
+     * @throws InterruptedException
+     */
+    protected void send(int stream, String assignment, Object[] data) throws InterruptedException {
+	if (workers != null) {
+	    int index = (assignment != null) ? ((assignment.hashCode() & 0x7fffffff) % workers.length) : 0;
+	    workers[index].getQueue().put(new PendingEvent(stream, data));
+	} else {
+	    send(batchers, stream, data);
+	}
+    }
+
+    /**
+     * Send data using batchers if available or directly to the input handler.
+     * 
+     * @param streamBatchers
+     * @param stream
+     * @param data
+     * @throws InterruptedException
+     */
+    protected void send(StreamBatcher[] streamBatchers, int stream, Object[] data) throws InterruptedException {
+	if (streamBatchers != null) {
+	    streamBatchers[stream].add(System.currentTimeMillis(), data);
+	    return;
+	}
+	switch (stream) {
+	case MEASUREMENT_STREAM: {
+	    getMxInputHandler().send(data);
+	    break;
+	}
+	case LOCATION_STREAM: {
+	    getLocationInputHandler().send(data);
+	    break;
+	}
+	case ALERT_STREAM: {
+	    getAlertInputHandler().send(data);
+	    break;
+	}
+	}
     }
 
     /**
@@ -120,14 +290,17 @@ public class SiddhiEventProcessor extends FilteredOutboundEventProcessor {
      */
     @Override
     public void onMeasurementsNotFiltered(IDeviceMeasurements measurements) throws SiteWhereException {
-	for (String mxname : measurements.getMeasurements().keySet()) {
-	    Double mxvalue = measurements.getMeasurement(mxname);
+	String id = measurements.getId();
+	String site = measurements.getSiteToken();
+	String assignment = measurements.getDeviceAssignmentToken();
+	String assetModule = measurements.getAssetModuleId();
+	String asset = measurements.getAssetId();
+	Long eventDate = measurements.getEventDate().getTime();
+	for (Map.Entry<String, Double> entry : measurements.getMeasurements().entrySet()) {
 	    try {
 		// Send a separate stream event per individual measurement.
-		getMxInputHandler().send(new Object[] { measurements.getId(), measurements.getSiteToken(),
-			measurements.getDeviceAssignmentToken(), measurements.getAssetModuleId(),
-			measurements.getAssetId(), measurements.getEventDate().getTime(), mxname,
-			mxvalue.floatValue() });
+		send(MEASUREMENT_STREAM, assignment, new Object[] { id, site, assignment, assetModule, asset,
+			eventDate, entry.getKey(), entry.getValue().floatValue() });
 	    } catch (InterruptedException e) {
 		throw new SiteWhereException("Unable to process measurement in Siddhi.", e);
 	    }
@@ -143,10 +316,11 @@ public class SiddhiEventProcessor extends FilteredOutboundEventProcessor {
     @Override
     public void onLocationNotFiltered(IDeviceLocation location) throws SiteWhereException {
 	try {
-	    getLocationInputHandler().send(new Object[] { location.getId(), location.getSiteToken(),
-		    location.getDeviceAssignmentToken(), location.getAssetModuleId(), location.getAssetId(),
-		    location.getEventDate().getTime(), location.getLatitude().floatValue(),
-		    location.getLongitude().floatValue(), location.getElevation().floatValue() });
+	    send(LOCATION_STREAM, location.getDeviceAssignmentToken(),
+		    new Object[] { location.getId(), location.getSiteToken(), location.getDeviceAssignmentToken(),
+			    location.getAssetModuleId(), location.getAssetId(), location.getEventDate().getTime(),
+			    location.getLatitude().floatValue(), location.getLongitude().floatValue(),
+			    location.getElevation().floatValue() });
 	} catch (InterruptedException e) {
 	    throw new SiteWhereException("Unable to process alert in Siddhi.", e);
 	}
@@ -161,8 +335,8 @@ public class SiddhiEventProcessor extends FilteredOutboundEventProcessor {
     @Override
     public void onAlertNotFiltered(IDeviceAlert alert) throws SiteWhereException {
 	try {
-	    getAlertInputHandler()
-		    .send(new Object[] { alert.getId(), alert.getSiteToken(), alert.getDeviceAssignmentToken(),
+	    send(ALERT_STREAM, alert.getDeviceAssignmentToken(),
+		    new Object[] { alert.getId(), alert.getSiteToken(), alert.getDeviceAssignmentToken(),
 			    alert.getAssetModuleId(), alert.getAssetId(), alert.getEventDate().getTime(),
 			    alert.getSource().name(), alert.getLevel().name(), alert.getType(), alert.getMessage() });
 	} catch (InterruptedException e) {
@@ -180,6 +354,28 @@ public class SiddhiEventProcessor extends FilteredOutboundEventProcessor {
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.stop(monitor);
+	if (flusher != null) {
+	    flusher.shutdown();
+	    try {
+		flusher.awaitTermination(batchFlushInterval * 4, TimeUnit.MILLISECONDS);
+	    } catch (InterruptedException e) {
+		LOGGER.warn("Interrupted waiting for Siddhi batch flusher to stop.");
+	    }
+	    flusher = null;
+	    flush(batchers);
+	}
+	if (workerExecutor != null) {
+	    for (Worker worker : workers) {
+		worker.shutdown();
+	    }
+	    workerExecutor.shutdown();
+	    try {
+		workerExecutor.awaitTermination(batchFlushInterval * 10, TimeUnit.MILLISECONDS);
+	    } catch (InterruptedException e) {
+		LOGGER.warn("Interrupted waiting for Siddhi workers to stop.");
+	    }
+	    workerExecutor = null;
+	}
 	if (manager != null) {
 	    manager.shutdown();
 	    manager = null;
@@ -235,4 +431,158 @@ public class SiddhiEventProcessor extends FilteredOutboundEventProcessor {
     public void setQueries(List<SiddhiQuery> queries) {
 	this.queries = queries;
     }
+
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+	this.batchSize = batchSize;
+    }
+
+    public long getBatchFlushInterval() {
+	return batchFlushInterval;
+    }
+
+    public void setBatchFlushInterval(long batchFlushInterval) {
+	this.batchFlushInterval = batchFlushInterval;
+    }
+
+    public int getProcessingThreads() {
+	return processingThreads;
+    }
+
+    public void setProcessingThreads(int processingThreads) {
+	this.processingThreads = processingThreads;
+    }
+
+    public int getMaxQueuedEvents() {
+	return maxQueuedEvents;
+    }
+
+    public void setMaxQueuedEvents(int maxQueuedEvents) {
+	this.maxQueuedEvents = maxQueuedEvents;
+    }
+
+    public boolean isPartitionByAssignment() {
+	return partitionByAssignment;
+    }
+
+    public void setPartitionByAssignment(boolean partitionByAssignment) {
+	this.partitionByAssignment = partitionByAssignment;
+    }
+
+    /**
+     * Event data waiting to be sent to a stream.
+     * 
+     * @author Derek
+     */
+    private static class PendingEvent {
+
+	/** Stream index */
+	private int stream;
+
+	/** Event data */
+	private Object[] data;
+
+	public PendingEvent(int stream, Object[] data) {
+	    this.stream = stream;
+	    this.data = data;
+	}
+
+	public int getStream() {
+	    return stream;
+	}
+
+	public Object[] getData() {
+	    return data;
+	}
+    }
+
+    /**
+     * Takes queued events for a subset of assignments and sends them to
+     * Siddhi, batching whatever has accumulated since the last send.
+     * 
+     * @author Derek
+     */
+    private class Worker implements Runnable {
+
+	/** Queued events */
+	private BlockingQueue<PendingEvent> queue = new ArrayBlockingQueue<PendingEvent>(maxQueuedEvents);
+
+	/** Batchers for this worker */
+	private StreamBatcher[] workerBatchers;
+
+	/** Indicates if worker should keep running */
+	private volatile boolean running = true;
+
+	public Worker(StreamBatcher[] workerBatchers) {
+	    this.workerBatchers = workerBatchers;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+	    List<PendingEvent> drained = new ArrayList<PendingEvent>();
+	    while (running || !queue.isEmpty()) {
+		try {
+		    PendingEvent first = queue.poll(batchFlushInterval, TimeUnit.MILLISECONDS);
+		    if (first == null) {
+			continue;
+		    }
+		    drained.add(first);
+		    queue.drainTo(drained, Math.max(batchSize, 1) - 1);
+		    for (PendingEvent event : drained) {
+			send(workerBatchers, event.getStream(), event.getData());
+		    }
+		    flush(workerBatchers);
+		} catch (InterruptedException e) {
+		    if (running) {
+			LOGGER.warn("Siddhi worker interrupted.");
+		    }
+		} catch (Throwable t) {
+		    LOGGER.error("Unable to send events to Siddhi.", t);
+		} finally {
+		    drained.clear();
+		}
+	    }
+	}
+
+	/**
+	 * Stop after queued events are sent.
+	 */
+	public void shutdown() {
+	    running = false;
+	}
+
+	public BlockingQueue<PendingEvent> getQueue() {
+	    return queue;
+	}
+    }
+
+    /** Used for naming Siddhi batch flusher threads */
+    private class FlusherThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere Siddhi Batch Flusher " + counter.incrementAndGet());
+	}
+    }
+
+    /** Used for naming Siddhi worker threads */
+    private class WorkerThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "SiteWhere Siddhi Worker " + counter.incrementAndGet());
+	}
+    }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.siddhi;
+
+import org.wso2.siddhi.core.event.in.InEvent;
+import org.wso2.siddhi.core.event.in.InListEvent;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+
+/**
+ * Accumulates events for a Siddhi stream and sends them to the stream
+ * junction as a single list event once the batch is full or when flushed.
+ * 
+ * @author Derek
+ */
+public class StreamBatcher {
+
+    /** Handler for stream events are sent to */
+    private InputHandler handler;
+
+    /** Maximum events per batch */
+    private int batchSize;
+
+    /** Events waiting to be sent */
+    private InEvent[] pending;
+
+    /** Number of pending events */
+    private int count;
+
+    public StreamBatcher(InputHandler handler, int batchSize) {
+	this.handler = handler;
+	this.batchSize = batchSize;
+	this.pending = new InEvent[batchSize];
+    }
+
+    /**
+     * Add an event to the batch, sending the batch if it is full.
+     * 
+     * @param timestamp
+     * @param data
+     * @throws InterruptedException
+     */
+    public synchronized void add(long timestamp, Object[] data) throws InterruptedException {
+	pending[count++] = new InEvent(handler.getStreamId(), timestamp, data);
+	if (count == batchSize) {
+	    flush();
+	}
+    }
+
+    /**
+     * Send any pending events. A new array is allocated for the next batch
+     * since the junction may still hold the one that was sent.
+     * 
+     * @throws InterruptedException
+     */
+    public synchronized void flush() throws InterruptedException {
+	if (count == 0) {
+	    return;
+	}
+	InEvent[] events = pending;
+	if (count < batchSize) {
+	    events = new InEvent[count];
+	    System.arraycopy(pending, 0, events, 0, count);
+	} else {
+	    pending = new InEvent[batchSize];
+	}
+	for (int i = 0; i < count; i++) {
+	    pending[i] = null;
+	}
+	count = 0;
+	handler.send(new InListEvent(events));
+    }
+}
\ No newline at end of file
@@ -92,6 +92,9 @@ public interface IEventSourcesParser {
 	/** SiteWhere JSON batch decoder */
 	JsonBatchEventDecoder("json-batch-event-decoder"),
 
+	/** SiteWhere JSON decoder based on streaming parser */
+	StreamingJsonEventDecoder("streaming-json-event-decoder"),
+
 	/** Uses Groovy script to parse events */
 	GroovyEventDecoder("groovy-event-decoder"),
 
@@ -290,6 +293,9 @@ public interface IEventSourcesParser {
 	/** Uses alternate id to find duplicate events */
 	AlternateIdDeduplicator("alternate-id-deduplicator"),
 
+	/** Checks recent alternate ids in memory before the datastore */
+	WindowedAlternateIdDeduplicator("windowed-alternate-id-deduplicator"),
+
 	/** Uses Groovy script to find duplicate events */
 	GroovyEventDeduplicator("groovy-event-deduplicator");
 
@@ -21,8 +21,7 @@ public interface IGlobalsParser {
 	/** Global Solr configuration */
 	SolrConfiguration("solr-configuration"),
 
-	/** Global Groovy configuration */
-	@Deprecated
+	/** Tenant Groovy configuration */
 	GroovyConfiguration("groovy-configuration");
 
 	/** Event code */
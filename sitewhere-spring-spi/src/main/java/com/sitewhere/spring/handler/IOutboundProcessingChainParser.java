@@ -66,7 +66,13 @@ public interface IOutboundProcessingChainParser {
 	SiddhiEventProcessor("siddhi-event-processor"),
 
 	/** Outbound event processor that delegates to a Groovy script */
-	GroovyEventProcessor("groovy-event-processor");
+	GroovyEventProcessor("groovy-event-processor"),
+
+	/** Computes windowed aggregates for measurements */
+	MeasurementAggregationProcessor("measurement-aggregation-processor"),
+
+	/** Pushes events to live subscribers */
+	EventSubscriptionProcessor("event-subscription-processor");
 
 	/** Event code */
 	private String localName;
@@ -93,6 +93,31 @@ public class DeviceServicesParser {
 	    manager.addPropertyValue("autoAssignToken", autoAssignToken.getValue());
 	}
 
+	Attr batchSize = element.getAttributeNode("batchSize");
+	if (batchSize != null) {
+	    manager.addPropertyValue("batchSize", batchSize.getValue());
+	}
+
+	Attr maxBatchWaitMs = element.getAttributeNode("maxBatchWaitMs");
+	if (maxBatchWaitMs != null) {
+	    manager.addPropertyValue("maxBatchWaitMs", maxBatchWaitMs.getValue());
+	}
+
+	Attr maxQueueSize = element.getAttributeNode("maxQueueSize");
+	if (maxQueueSize != null) {
+	    manager.addPropertyValue("maxQueueSize", maxQueueSize.getValue());
+	}
+
+	Attr ackRateLimit = element.getAttributeNode("ackRateLimit");
+	if (ackRateLimit != null) {
+	    manager.addPropertyValue("ackRateLimit", ackRateLimit.getValue());
+	}
+
+	Attr shutdownWaitMs = element.getAttributeNode("shutdownWaitMs");
+	if (shutdownWaitMs != null) {
+	    manager.addPropertyValue("shutdownWaitMs", shutdownWaitMs.getValue());
+	}
+
 	return manager.getBeanDefinition();
     }
 
@@ -36,8 +36,10 @@ import com.sitewhere.device.communication.coap.CoapServerEventReceiver;
 import com.sitewhere.device.communication.decoder.composite.BinaryCompositeDeviceEventDecoder;
 import com.sitewhere.device.communication.decoder.composite.DeviceSpecificationDecoderChoice;
 import com.sitewhere.device.communication.deduplicator.AlternateIdDeduplicator;
+import com.sitewhere.device.communication.deduplicator.WindowedAlternateIdDeduplicator;
 import com.sitewhere.device.communication.json.JsonBatchEventDecoder;
 import com.sitewhere.device.communication.json.JsonDeviceRequestDecoder;
+import com.sitewhere.device.communication.json.StreamingJsonEventDecoder;
 import com.sitewhere.device.communication.mqtt.MqttInboundEventReceiver;
 import com.sitewhere.device.communication.protobuf.ProtobufDeviceEventDecoder;
 import com.sitewhere.device.communication.socket.BinarySocketInboundEventReceiver;
@@ -329,7 +331,7 @@ public class EventSourcesParser extends SiteWhereBeanListParser {
 	}
 
 	Attr queueName = element.getAttributeNode("queueName");
-	if (connectionUri != null) {
+	if (queueName != null) {
 	    mqtt.addPropertyValue("queueName", queueName.getValue());
 	}
 
@@ -339,10 +341,20 @@ public class EventSourcesParser extends SiteWhereBeanListParser {
 	}
 
 	Attr numConsumers = element.getAttributeNode("numConsumers");
-	if (connectionUri != null) {
+	if (numConsumers != null) {
 	    mqtt.addPropertyValue("numConsumers", numConsumers.getValue());
 	}
 
+	Attr prefetchCount = element.getAttributeNode("prefetchCount");
+	if (prefetchCount != null) {
+	    mqtt.addPropertyValue("prefetchCount", prefetchCount.getValue());
+	}
+
+	Attr ackBatchSize = element.getAttributeNode("ackBatchSize");
+	if (ackBatchSize != null) {
+	    mqtt.addPropertyValue("ackBatchSize", ackBatchSize.getValue());
+	}
+
 	return mqtt.getBeanDefinition();
     }
 
@@ -518,6 +530,36 @@ public class EventSourcesParser extends SiteWhereBeanListParser {
 	    mq.addPropertyValue("numConsumers", numConsumers.getValue());
 	}
 
+	Attr consumerMode = element.getAttributeNode("consumerMode");
+	if (consumerMode != null) {
+	    mq.addPropertyValue("consumerMode", consumerMode.getValue());
+	}
+
+	Attr batchSize = element.getAttributeNode("batchSize");
+	if (batchSize != null) {
+	    mq.addPropertyValue("batchSize", batchSize.getValue());
+	}
+
+	Attr prefetchSize = element.getAttributeNode("prefetchSize");
+	if (prefetchSize != null) {
+	    mq.addPropertyValue("prefetchSize", prefetchSize.getValue());
+	}
+
+	Attr persistent = element.getAttributeNode("persistent");
+	if (persistent != null) {
+	    mq.addPropertyValue("persistent", persistent.getValue());
+	}
+
+	Attr journalDiskSyncs = element.getAttributeNode("journalDiskSyncs");
+	if (journalDiskSyncs != null) {
+	    mq.addPropertyValue("journalDiskSyncs", journalDiskSyncs.getValue());
+	}
+
+	Attr concurrentStoreAndDispatch = element.getAttributeNode("concurrentStoreAndDispatch");
+	if (concurrentStoreAndDispatch != null) {
+	    mq.addPropertyValue("concurrentStoreAndDispatch", concurrentStoreAndDispatch.getValue());
+	}
+
 	return mq.getBeanDefinition();
     }
 
@@ -1030,6 +1072,36 @@ public class EventSourcesParser extends SiteWhereBeanListParser {
 	    receiver.addPropertyValue("hostname", hostname.getValue());
 	}
 
+	Attr port = element.getAttributeNode("port");
+	if (port != null) {
+	    receiver.addPropertyValue("port", port.getValue());
+	}
+
+	Attr asyncDelivery = element.getAttributeNode("asyncDelivery");
+	if (asyncDelivery != null) {
+	    receiver.addPropertyValue("asyncDelivery", asyncDelivery.getValue());
+	}
+
+	Attr numWorkers = element.getAttributeNode("numWorkers");
+	if (numWorkers != null) {
+	    receiver.addPropertyValue("numWorkers", numWorkers.getValue());
+	}
+
+	Attr maxQueuedRequests = element.getAttributeNode("maxQueuedRequests");
+	if (maxQueuedRequests != null) {
+	    receiver.addPropertyValue("maxQueuedRequests", maxQueuedRequests.getValue());
+	}
+
+	Attr preferredBlockSize = element.getAttributeNode("preferredBlockSize");
+	if (preferredBlockSize != null) {
+	    receiver.addPropertyValue("preferredBlockSize", preferredBlockSize.getValue());
+	}
+
+	Attr maxMessageSize = element.getAttributeNode("maxMessageSize");
+	if (maxMessageSize != null) {
+	    receiver.addPropertyValue("maxMessageSize", maxMessageSize.getValue());
+	}
+
 	return receiver.getBeanDefinition();
     }
 
@@ -1069,6 +1141,17 @@ public class EventSourcesParser extends SiteWhereBeanListParser {
      */
     protected AbstractBeanDefinition createHazelcastQueueEventReceiver(Element element, ParserContext context) {
 	BeanDefinitionBuilder receiver = BeanDefinitionBuilder.rootBeanDefinition(HazelcastQueueReceiver.class);
+
+	Attr numThreads = element.getAttributeNode("numThreads");
+	if (numThreads != null) {
+	    receiver.addPropertyValue("numThreads", numThreads.getValue());
+	}
+
+	Attr batchSize = element.getAttributeNode("batchSize");
+	if (batchSize != null) {
+	    receiver.addPropertyValue("batchSize", batchSize.getValue());
+	}
+
 	return receiver.getBeanDefinition();
     }
 
@@ -1116,6 +1199,10 @@ public class EventSourcesParser extends SiteWhereBeanListParser {
 		decoder = parseJsonBatchDecoder(parent, child, context);
 		break;
 	    }
+	    case StreamingJsonEventDecoder: {
+		decoder = parseStreamingJsonDecoder(parent, child, context);
+		break;
+	    }
 	    case GroovyEventDecoder: {
 		decoder = parseGroovyDecoder(parent, child, context);
 		break;
@@ -1233,6 +1320,20 @@ public class EventSourcesParser extends SiteWhereBeanListParser {
 	return builder.getBeanDefinition();
     }
 
+    /**
+     * Create parser for JSON streaming decoder.
+     * 
+     * @param parent
+     * @param decoder
+     * @param context
+     * @return
+     */
+    protected AbstractBeanDefinition parseStreamingJsonDecoder(Element parent, Element decoder,
+	    ParserContext context) {
+	BeanDefinitionBuilder builder = BeanDefinitionBuilder.rootBeanDefinition(StreamingJsonEventDecoder.class);
+	return builder.getBeanDefinition();
+    }
+
     /**
      * Parse decoder that uses a Groovy script to decode events.
      * 
@@ -1466,6 +1567,10 @@ public class EventSourcesParser extends SiteWhereBeanListParser {
 		deduplicator = parseAlternateIdDeduplicator(parent, child, context);
 		break;
 	    }
+	    case WindowedAlternateIdDeduplicator: {
+		deduplicator = parseWindowedAlternateIdDeduplicator(parent, child, context);
+		break;
+	    }
 	    case GroovyEventDeduplicator: {
 		deduplicator = parseGroovyEventDeduplicator(parent, child, context);
 		break;
@@ -1495,6 +1600,42 @@ public class EventSourcesParser extends SiteWhereBeanListParser {
 	return builder.getBeanDefinition();
     }
 
+    /**
+     * Parse bean definition for windowed alternate id deduplicator.
+     * 
+     * @param parent
+     * @param decoder
+     * @param context
+     * @return
+     */
+    protected AbstractBeanDefinition parseWindowedAlternateIdDeduplicator(Element parent, Element decoder,
+	    ParserContext context) {
+	BeanDefinitionBuilder builder = BeanDefinitionBuilder
+		.rootBeanDefinition(WindowedAlternateIdDeduplicator.class);
+
+	Attr window = decoder.getAttributeNode("window");
+	if (window != null) {
+	    builder.addPropertyValue("window", window.getValue());
+	}
+
+	Attr expectedIds = decoder.getAttributeNode("expectedIds");
+	if (expectedIds != null) {
+	    builder.addPropertyValue("expectedIds", expectedIds.getValue());
+	}
+
+	Attr falsePositiveRate = decoder.getAttributeNode("falsePositiveRate");
+	if (falsePositiveRate != null) {
+	    builder.addPropertyValue("falsePositiveRate", falsePositiveRate.getValue());
+	}
+
+	Attr recentIdCacheSize = decoder.getAttributeNode("recentIdCacheSize");
+	if (recentIdCacheSize != null) {
+	    builder.addPropertyValue("recentIdCacheSize", recentIdCacheSize.getValue());
+	}
+
+	return builder.getBeanDefinition();
+    }
+
     /**
      * Parse bean definition for Groovy event deduplicator.
      * 
@@ -20,6 +20,8 @@ import org.springframework.util.xml.DomUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
 
+import com.sitewhere.groovy.configuration.TenantGroovyConfiguration;
+import com.sitewhere.server.SiteWhereServerBeans;
 import com.sitewhere.solr.SiteWhereSolrConfiguration;
 import com.sitewhere.spring.handler.IGlobalsParser.Elements;
 
@@ -97,12 +99,39 @@ public class GlobalsParser extends AbstractBeanDefinitionParser {
     }
 
     /**
-     * Parse the global Groovy configuration.
+     * Parse the tenant Groovy configuration.
      * 
      * @param element
      * @param context
      */
     protected void parseGroovyConfiguration(Element element, ParserContext context) {
-	LOGGER.warn("Groovy configuration element has been deprecated.");
+	BeanDefinitionBuilder config = BeanDefinitionBuilder.rootBeanDefinition(TenantGroovyConfiguration.class);
+
+	Attr debug = element.getAttributeNode("debug");
+	if (debug != null) {
+	    config.addPropertyValue("debug", debug.getValue());
+	}
+
+	Attr verbose = element.getAttributeNode("verbose");
+	if (verbose != null) {
+	    config.addPropertyValue("verbose", verbose.getValue());
+	}
+
+	Attr compileStatic = element.getAttributeNode("compileStatic");
+	if (compileStatic != null) {
+	    config.addPropertyValue("compileStatic", compileStatic.getValue());
+	}
+
+	Attr scriptCheckInterval = element.getAttributeNode("scriptCheckInterval");
+	if (scriptCheckInterval != null) {
+	    config.addPropertyValue("scriptCheckInterval", scriptCheckInterval.getValue());
+	}
+
+	if (element.getAttributeNode("externalScriptRoot") != null) {
+	    LOGGER.warn("Groovy configuration attribute 'externalScriptRoot' is no longer supported.");
+	}
+
+	context.getRegistry().registerBeanDefinition(SiteWhereServerBeans.BEAN_GROOVY_CONFIGURATION,
+		config.getBeanDefinition());
     }
 }
@@ -135,6 +135,17 @@ public class InboundProcessingChainParser {
      */
     protected AbstractBeanDefinition parseHazelcastQueueProcessor(Element element, ParserContext context) {
 	BeanDefinitionBuilder processor = BeanDefinitionBuilder.rootBeanDefinition(HazelcastQueueSender.class);
+
+	Attr batchSize = element.getAttributeNode("batchSize");
+	if (batchSize != null) {
+	    processor.addPropertyValue("batchSize", batchSize.getValue());
+	}
+
+	Attr maxBufferSize = element.getAttributeNode("maxBufferSize");
+	if (maxBufferSize != null) {
+	    processor.addPropertyValue("maxBufferSize", maxBufferSize.getValue());
+	}
+
 	return processor.getBeanDefinition();
     }
 }
\ No newline at end of file
@@ -26,6 +26,8 @@ import com.sitewhere.cloud.providers.initialstate.InitialStateEventProcessor;
 import com.sitewhere.device.communication.DeviceCommandEventProcessor;
 import com.sitewhere.device.communication.mqtt.MqttOutboundEventProcessor;
 import com.sitewhere.device.event.processor.DefaultOutboundEventProcessorChain;
+import com.sitewhere.device.event.processor.aggregation.MeasurementAggregationProcessor;
+import com.sitewhere.device.event.processor.subscription.EventSubscriptionProcessor;
 import com.sitewhere.device.event.processor.filter.FilterOperation;
 import com.sitewhere.device.event.processor.filter.SiteFilter;
 import com.sitewhere.device.event.processor.filter.SpecificationFilter;
@@ -135,6 +137,14 @@ public class OutboundProcessingChainParser extends SiteWhereBeanDefinitionParser
 		processors.add(parseGroovyEventProcessor(child, context));
 		break;
 	    }
+	    case MeasurementAggregationProcessor: {
+		processors.add(parseMeasurementAggregationProcessor(child, context));
+		break;
+	    }
+	    case EventSubscriptionProcessor: {
+		processors.add(parseEventSubscriptionProcessor(child, context));
+		break;
+	    }
 	    }
 	}
 	chain.addPropertyValue("processors", processors);
@@ -204,10 +214,45 @@ public class OutboundProcessingChainParser extends SiteWhereBeanDefinitionParser
 	    }
 	    test.setAlertLevel(level);
 
+	    Attr dwellTime = testElm.getAttributeNode("dwellTime");
+	    if (dwellTime != null) {
+		test.setDwellTime(Long.parseLong(dwellTime.getValue()));
+	    }
+
 	    tests.add(test);
 	}
 	processor.addPropertyValue("zoneTests", tests);
 
+	Attr transitionsOnly = element.getAttributeNode("transitionsOnly");
+	if (transitionsOnly != null) {
+	    processor.addPropertyValue("transitionsOnly", transitionsOnly.getValue());
+	}
+
+	Attr distributedState = element.getAttributeNode("distributedState");
+	if (distributedState != null) {
+	    processor.addPropertyValue("distributedState", distributedState.getValue());
+	}
+
+	Attr alertFlushInterval = element.getAttributeNode("alertFlushInterval");
+	if (alertFlushInterval != null) {
+	    processor.addPropertyValue("alertFlushInterval", alertFlushInterval.getValue());
+	}
+
+	Attr maxAlertBatchSize = element.getAttributeNode("maxAlertBatchSize");
+	if (maxAlertBatchSize != null) {
+	    processor.addPropertyValue("maxAlertBatchSize", maxAlertBatchSize.getValue());
+	}
+
+	Attr maxQueuedAlerts = element.getAttributeNode("maxQueuedAlerts");
+	if (maxQueuedAlerts != null) {
+	    processor.addPropertyValue("maxQueuedAlerts", maxQueuedAlerts.getValue());
+	}
+
+	Attr maxAlertAttempts = element.getAttributeNode("maxAlertAttempts");
+	if (maxAlertAttempts != null) {
+	    processor.addPropertyValue("maxAlertAttempts", maxAlertAttempts.getValue());
+	}
+
 	// Parse nested filters.
 	processor.addPropertyValue("filters", parseFilters(element, context));
 
@@ -317,6 +362,16 @@ public class OutboundProcessingChainParser extends SiteWhereBeanDefinitionParser
 	    processor.addPropertyValue("topic", topic.getValue());
 	}
 
+	Attr numChannels = element.getAttributeNode("numChannels");
+	if (numChannels != null) {
+	    processor.addPropertyValue("numChannels", numChannels.getValue());
+	}
+
+	Attr publisherConfirms = element.getAttributeNode("publisherConfirms");
+	if (publisherConfirms != null) {
+	    processor.addPropertyValue("publisherConfirms", publisherConfirms.getValue());
+	}
+
 	// Parse nested filters.
 	processor.addPropertyValue("filters", parseFilters(element, context));
 
@@ -397,6 +452,31 @@ public class OutboundProcessingChainParser extends SiteWhereBeanDefinitionParser
 	}
 	processor.addPropertyValue("eventHubName", eventHubName.getValue());
 
+	Attr batchingEnabled = element.getAttributeNode("batchingEnabled");
+	if (batchingEnabled != null) {
+	    processor.addPropertyValue("batchingEnabled", batchingEnabled.getValue());
+	}
+
+	Attr maxBatchBytes = element.getAttributeNode("maxBatchBytes");
+	if (maxBatchBytes != null) {
+	    processor.addPropertyValue("maxBatchBytes", maxBatchBytes.getValue());
+	}
+
+	Attr maxBatchDelayMs = element.getAttributeNode("maxBatchDelayMs");
+	if (maxBatchDelayMs != null) {
+	    processor.addPropertyValue("maxBatchDelayMs", maxBatchDelayMs.getValue());
+	}
+
+	Attr maxPendingBatches = element.getAttributeNode("maxPendingBatches");
+	if (maxPendingBatches != null) {
+	    processor.addPropertyValue("maxPendingBatches", maxPendingBatches.getValue());
+	}
+
+	Attr partitionByAssignment = element.getAttributeNode("partitionByAssignment");
+	if (partitionByAssignment != null) {
+	    processor.addPropertyValue("partitionByAssignment", partitionByAssignment.getValue());
+	}
+
 	// Parse nested filters.
 	processor.addPropertyValue("filters", parseFilters(element, context));
 
@@ -431,6 +511,31 @@ public class OutboundProcessingChainParser extends SiteWhereBeanDefinitionParser
 	}
 	processor.addPropertyValue("queueUrl", queueUrl.getValue());
 
+	Attr endpoint = element.getAttributeNode("endpoint");
+	if (endpoint != null) {
+	    processor.addPropertyValue("endpoint", endpoint.getValue());
+	}
+
+	Attr batchingEnabled = element.getAttributeNode("batchingEnabled");
+	if (batchingEnabled != null) {
+	    processor.addPropertyValue("batchingEnabled", batchingEnabled.getValue());
+	}
+
+	Attr maxBatchDelayMs = element.getAttributeNode("maxBatchDelayMs");
+	if (maxBatchDelayMs != null) {
+	    processor.addPropertyValue("maxBatchDelayMs", maxBatchDelayMs.getValue());
+	}
+
+	Attr maxInFlight = element.getAttributeNode("maxInFlight");
+	if (maxInFlight != null) {
+	    processor.addPropertyValue("maxInFlight", maxInFlight.getValue());
+	}
+
+	Attr maxRetries = element.getAttributeNode("maxRetries");
+	if (maxRetries != null) {
+	    processor.addPropertyValue("maxRetries", maxRetries.getValue());
+	}
+
 	// Parse nested filters.
 	processor.addPropertyValue("filters", parseFilters(element, context));
 
@@ -454,6 +559,31 @@ public class OutboundProcessingChainParser extends SiteWhereBeanDefinitionParser
 	}
 	processor.addPropertyValue("streamingAccessKey", streamingAccessKey.getValue());
 
+	Attr maxBatchSize = element.getAttributeNode("maxBatchSize");
+	if (maxBatchSize != null) {
+	    processor.addPropertyValue("maxBatchSize", maxBatchSize.getValue());
+	}
+
+	Attr maxBatchDelayMs = element.getAttributeNode("maxBatchDelayMs");
+	if (maxBatchDelayMs != null) {
+	    processor.addPropertyValue("maxBatchDelayMs", maxBatchDelayMs.getValue());
+	}
+
+	Attr deliveryThreads = element.getAttributeNode("deliveryThreads");
+	if (deliveryThreads != null) {
+	    processor.addPropertyValue("deliveryThreads", deliveryThreads.getValue());
+	}
+
+	Attr maxPendingBatches = element.getAttributeNode("maxPendingBatches");
+	if (maxPendingBatches != null) {
+	    processor.addPropertyValue("maxPendingBatches", maxPendingBatches.getValue());
+	}
+
+	Attr maxRetries = element.getAttributeNode("maxRetries");
+	if (maxRetries != null) {
+	    processor.addPropertyValue("maxRetries", maxRetries.getValue());
+	}
+
 	// Parse nested filters.
 	processor.addPropertyValue("filters", parseFilters(element, context));
 
@@ -470,6 +600,26 @@ public class OutboundProcessingChainParser extends SiteWhereBeanDefinitionParser
     protected AbstractBeanDefinition parseDweetIoEventProcessor(Element element, ParserContext context) {
 	BeanDefinitionBuilder processor = BeanDefinitionBuilder.rootBeanDefinition(DweetIoEventProcessor.class);
 
+	Attr maxBatchDelayMs = element.getAttributeNode("maxBatchDelayMs");
+	if (maxBatchDelayMs != null) {
+	    processor.addPropertyValue("maxBatchDelayMs", maxBatchDelayMs.getValue());
+	}
+
+	Attr deliveryThreads = element.getAttributeNode("deliveryThreads");
+	if (deliveryThreads != null) {
+	    processor.addPropertyValue("deliveryThreads", deliveryThreads.getValue());
+	}
+
+	Attr maxPendingBatches = element.getAttributeNode("maxPendingBatches");
+	if (maxPendingBatches != null) {
+	    processor.addPropertyValue("maxPendingBatches", maxPendingBatches.getValue());
+	}
+
+	Attr maxRetries = element.getAttributeNode("maxRetries");
+	if (maxRetries != null) {
+	    processor.addPropertyValue("maxRetries", maxRetries.getValue());
+	}
+
 	// Parse nested filters.
 	processor.addPropertyValue("filters", parseFilters(element, context));
 
@@ -551,6 +701,76 @@ public class OutboundProcessingChainParser extends SiteWhereBeanDefinitionParser
 	return processor.getBeanDefinition();
     }
 
+    /**
+     * Parse configuration for event processor that computes windowed
+     * aggregates for measurements.
+     * 
+     * @param element
+     * @param context
+     * @return
+     */
+    protected AbstractBeanDefinition parseMeasurementAggregationProcessor(Element element, ParserContext context) {
+	BeanDefinitionBuilder processor = BeanDefinitionBuilder
+		.rootBeanDefinition(MeasurementAggregationProcessor.class);
+
+	Attr windowSize = element.getAttributeNode("windowSize");
+	if (windowSize != null) {
+	    processor.addPropertyValue("windowSize", windowSize.getValue());
+	}
+
+	Attr windowSlide = element.getAttributeNode("windowSlide");
+	if (windowSlide != null) {
+	    processor.addPropertyValue("windowSlide", windowSlide.getValue());
+	}
+
+	Attr allowedLateness = element.getAttributeNode("allowedLateness");
+	if (allowedLateness != null) {
+	    processor.addPropertyValue("allowedLateness", allowedLateness.getValue());
+	}
+
+	Attr measurementNames = element.getAttributeNode("measurementNames");
+	if (measurementNames != null) {
+	    processor.addPropertyValue("measurementNames", measurementNames.getValue());
+	}
+
+	// Parse nested filters.
+	processor.addPropertyValue("filters", parseFilters(element, context));
+
+	return processor.getBeanDefinition();
+    }
+
+    /**
+     * Parse configuration for event processor that pushes events to live
+     * subscribers.
+     * 
+     * @param element
+     * @param context
+     * @return
+     */
+    protected AbstractBeanDefinition parseEventSubscriptionProcessor(Element element, ParserContext context) {
+	BeanDefinitionBuilder processor = BeanDefinitionBuilder.rootBeanDefinition(EventSubscriptionProcessor.class);
+
+	Attr deliveryThreads = element.getAttributeNode("deliveryThreads");
+	if (deliveryThreads != null) {
+	    processor.addPropertyValue("deliveryThreads", deliveryThreads.getValue());
+	}
+
+	Attr batchSize = element.getAttributeNode("batchSize");
+	if (batchSize != null) {
+	    processor.addPropertyValue("batchSize", batchSize.getValue());
+	}
+
+	Attr sendTimeout = element.getAttributeNode("sendTimeout");
+	if (sendTimeout != null) {
+	    processor.addPropertyValue("sendTimeout", sendTimeout.getValue());
+	}
+
+	// Parse nested filters.
+	processor.addPropertyValue("filters", parseFilters(element, context));
+
+	return processor.getBeanDefinition();
+    }
+
     /**
      * Parse configuration for event processor that uses Siddhi to perform
      * complex event processing.
@@ -569,6 +789,31 @@ public class OutboundProcessingChainParser extends SiteWhereBeanDefinitionParser
 	}
 	processor.addPropertyValue("queries", queries);
 
+	Attr batchSize = element.getAttributeNode("batchSize");
+	if (batchSize != null) {
+	    processor.addPropertyValue("batchSize", batchSize.getValue());
+	}
+
+	Attr batchFlushInterval = element.getAttributeNode("batchFlushInterval");
+	if (batchFlushInterval != null) {
+	    processor.addPropertyValue("batchFlushInterval", batchFlushInterval.getValue());
+	}
+
+	Attr processingThreads = element.getAttributeNode("processingThreads");
+	if (processingThreads != null) {
+	    processor.addPropertyValue("processingThreads", processingThreads.getValue());
+	}
+
+	Attr maxQueuedEvents = element.getAttributeNode("maxQueuedEvents");
+	if (maxQueuedEvents != null) {
+	    processor.addPropertyValue("maxQueuedEvents", maxQueuedEvents.getValue());
+	}
+
+	Attr partitionByAssignment = element.getAttributeNode("partitionByAssignment");
+	if (partitionByAssignment != null) {
+	    processor.addPropertyValue("partitionByAssignment", partitionByAssignment.getValue());
+	}
+
 	// Parse nested filters.
 	processor.addPropertyValue("filters", parseFilters(element, context));
 
@@ -9,6 +9,8 @@ package com.sitewhere.web;
 
 import java.util.Arrays;
 
+import javax.servlet.DispatcherType;
+
 import org.apache.catalina.Context;
 import org.apache.catalina.webresources.StandardRoot;
 import org.apache.logging.log4j.LogManager;
@@ -35,6 +37,7 @@ import com.hazelcast.core.HazelcastInstance;
 import com.sitewhere.SiteWhere;
 import com.sitewhere.SiteWhereApplication;
 import com.sitewhere.hazelcast.NoShutdownHazelcastInstance;
+import com.sitewhere.web.filters.GzipFilter;
 import com.sitewhere.web.filters.JsonpFilter;
 import com.sitewhere.web.filters.MethodOverrideFilter;
 import com.sitewhere.web.filters.NoCacheFilter;
@@ -155,6 +158,16 @@ public class SiteWhereWebApplication extends SiteWhereApplication {
 	return registration;
     }
 
+    @Bean
+    public FilterRegistrationBean gzipFilter() {
+	GzipFilter filter = new GzipFilter();
+	FilterRegistrationBean registration = new FilterRegistrationBean();
+	registration.setFilter(filter);
+	registration.addUrlPatterns(RestMvcConfiguration.REST_API_MATCHER);
+	registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+	return registration;
+    }
+
     @Bean
     public FilterRegistrationBean noCacheFilter() {
 	NoCacheFilter filter = new NoCacheFilter();
@@ -170,6 +183,7 @@ public class SiteWhereWebApplication extends SiteWhereApplication {
 	FilterRegistrationBean registration = new FilterRegistrationBean();
 	registration.setFilter(filter);
 	registration.addUrlPatterns(RestMvcConfiguration.REST_API_MATCHER);
+	registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
 	return registration;
     }
 